@@ -43,7 +43,7 @@ DROP FUNCTION update_sequence();
 
 DROP TABLE IF EXISTS materialflowresources_warehousestock;
 
-CREATE OR REPLACE FUNCTION create_warehouse_stock_view() RETURNS VOID AS $$ BEGIN IF EXISTS (SELECT * FROM information_schema.columns WHERE table_name = 'basic_parameter' AND column_name = 'tenantid') THEN CREATE OR REPLACE VIEW materialflowresources_warehousestock AS SELECT row_number() OVER () AS id, location_id, product_id, (SELECT SUM(warehouseminimalstate_warehouseminimumstate.minimumstate) FROM warehouseminimalstate_warehouseminimumstate WHERE warehouseminimalstate_warehouseminimumstate.product_id = materialflowresources_resource.product_id AND warehouseminimalstate_warehouseminimumstate.location_id = materialflowresources_resource.location_id) AS minimumstate, (SELECT COALESCE(SUM(deliveries_orderedproduct.orderedquantity), 0::numeric) AS sum FROM deliveries_orderedproduct, deliveries_delivery WHERE deliveries_orderedproduct.delivery_id = deliveries_delivery.id AND deliveries_delivery.location_id = materialflowresources_resource.location_id AND deliveries_delivery.active = true AND deliveries_orderedproduct.product_id = materialflowresources_resource.product_id AND deliveries_delivery.state IN ('01draft', '02prepared', '03duringCorrection', '05approved')) AS orderedquantity, SUM(quantity) AS quantity, tenantid FROM materialflowresources_resource GROUP BY tenantid, location_id, product_id; ELSE CREATE OR REPLACE VIEW materialflowresources_warehousestock AS SELECT row_number() OVER () AS id, location_id, product_id, (SELECT SUM(warehouseminimalstate_warehouseminimumstate.minimumstate) FROM warehouseminimalstate_warehouseminimumstate WHERE warehouseminimalstate_warehouseminimumstate.product_id = materialflowresources_resource.product_id AND warehouseminimalstate_warehouseminimumstate.location_id = materialflowresources_resource.location_id) AS minimumstate, (SELECT COALESCE(SUM(deliveries_orderedproduct.orderedquantity),0) AS sum FROM deliveries_orderedproduct, deliveries_delivery WHERE deliveries_orderedproduct.delivery_id = deliveries_delivery.id AND deliveries_delivery.active = true AND deliveries_delivery.location_id = materialflowresources_resource.location_id AND deliveries_orderedproduct.product_id = materialflowresources_resource.product_id AND deliveries_delivery.state IN ('01draft', '02prepared', '03duringCorrection', '05approved')) AS orderedquantity, SUM(quantity) AS quantity FROM materialflowresources_resource GROUP BY location_id, product_id; END IF; END; $$ LANGUAGE 'plpgsql';
+CREATE OR REPLACE FUNCTION create_warehouse_stock_view() RETURNS VOID AS $$ BEGIN IF EXISTS (SELECT * FROM information_schema.columns WHERE table_name = 'basic_parameter' AND column_name = 'tenantid') THEN CREATE OR REPLACE VIEW materialflowresources_warehousestock AS SELECT stock.id, stock.location_id, stock.product_id, stock.minimumstate::numeric AS minimumstate, stock.orderedquantity::numeric AS orderedquantity, stock.quantity::numeric AS quantity, stock.tenantid FROM materialflowresources_resourcestock stock WHERE stock.quantity > 0; ELSE CREATE OR REPLACE VIEW materialflowresources_warehousestock AS SELECT stock.id, stock.location_id, stock.product_id, stock.minimumstate::numeric AS minimumstate, stock.orderedquantity::numeric AS orderedquantity, stock.quantity::numeric AS quantity FROM materialflowresources_resourcestock stock WHERE stock.quantity > 0; END IF; END; $$ LANGUAGE 'plpgsql';
 
 SELECT create_warehouse_stock_view();
 
@@ -54,9 +54,7 @@ DROP FUNCTION create_warehouse_stock_view();
 
 DROP TABLE IF EXISTS materialflowresources_warehousestocklistdto;
 
-CREATE OR REPLACE VIEW materialflowresources_orderedquantity AS SELECT COALESCE(SUM(orderedproduct.orderedquantity), 0::numeric) AS orderedquantity, resource.id AS resource_id FROM materialflowresources_resource resource JOIN deliveries_orderedproduct orderedproduct ON (orderedproduct.product_id = resource.product_id) JOIN deliveries_delivery delivery ON (orderedproduct.delivery_id = delivery.id AND delivery.active = true AND delivery.location_id = resource.location_id AND (delivery.state::text = ANY (ARRAY['01draft'::character varying::text, '02prepared'::character varying::text, '03duringCorrection'::character varying::text, '05approved'::character varying::text]))) GROUP BY resource.id;
-
-CREATE OR REPLACE VIEW materialflowresources_warehousestocklistdto_internal AS SELECT row_number() OVER () AS id, resource.location_id, resource.product_id::integer, SUM(resource.quantity) AS quantity, COALESCE(orderedquantity.orderedquantity, 0::numeric) AS orderedquantity, (SELECT SUM(warehouseminimalstate_warehouseminimumstate.minimumstate) AS sum FROM warehouseminimalstate_warehouseminimumstate WHERE warehouseminimalstate_warehouseminimumstate.product_id = resource.product_id AND warehouseminimalstate_warehouseminimumstate.location_id = resource.location_id) AS minimumstate FROM materialflowresources_resource resource LEFT JOIN materialflowresources_orderedquantity orderedquantity ON (orderedquantity.resource_id = resource.id) GROUP BY resource.location_id, resource.product_id, orderedquantity.orderedquantity;
+CREATE OR REPLACE VIEW materialflowresources_warehousestocklistdto_internal AS SELECT stock.id, stock.location_id, stock.product_id::integer, stock.quantity::numeric AS quantity, stock.orderedquantity::numeric AS orderedquantity, stock.minimumstate::numeric AS minimumstate FROM materialflowresources_resourcestock stock WHERE stock.quantity > 0;
 
 CREATE OR REPLACE VIEW materialflowresources_warehousestocklistdto AS SELECT internal.*, location.number AS locationNumber, location.name AS locationName, product.number AS productNumber, product.name AS productName, product.unit AS productUnit FROM materialflowresources_warehousestocklistdto_internal internal JOIN materialflow_location location ON (location.id = internal.location_id) JOIN basic_product product ON (product.id = internal.product_id);
 
@@ -207,12 +205,12 @@ CREATE OR REPLACE VIEW materialflowresources_documentdto AS SELECT document.id A
 
 DROP TABLE IF EXISTS materialflowresources_resourcestockdto;
 
-CREATE OR REPLACE VIEW materialflowresources_orderedquantitystock AS SELECT COALESCE(SUM(orderedproduct.orderedquantity), 0::numeric) AS orderedquantity, resource.id AS resource_id FROM materialflowresources_resourcestock resource JOIN deliveries_orderedproduct orderedproduct ON (orderedproduct.product_id = resource.product_id) JOIN deliveries_delivery delivery ON (orderedproduct.delivery_id = delivery.id AND delivery.active = true AND delivery.location_id = resource.location_id AND (delivery.state::text = ANY (ARRAY['01draft'::character varying::text, '02prepared'::character varying::text, '03duringCorrection'::character varying::text, '05approved'::character varying::text]))) GROUP BY resource.id;
-
-CREATE OR REPLACE VIEW materialflowresources_resourcestockdto_internal AS SELECT row_number() OVER () AS id, resource.location_id, resource.product_id::integer, resource.quantity AS quantity, COALESCE(orderedquantity.orderedquantity, 0::numeric) AS orderedquantity, (SELECT SUM(warehouseminimalstate_warehouseminimumstate.minimumstate) AS sum FROM warehouseminimalstate_warehouseminimumstate WHERE warehouseminimalstate_warehouseminimumstate.product_id = resource.product_id AND warehouseminimalstate_warehouseminimumstate.location_id = resource.location_id) AS minimumstate, reservedQuantity, availableQuantity FROM materialflowresources_resourcestock resource LEFT JOIN materialflowresources_orderedquantitystock orderedquantity ON (orderedquantity.resource_id = resource.id) GROUP BY resource.location_id, resource.product_id, orderedquantity.orderedquantity, reservedQuantity, availableQuantity, quantity;
+CREATE OR REPLACE VIEW materialflowresources_resourcestockdto_internal AS SELECT stock.id, stock.location_id, stock.product_id::integer, stock.quantity AS quantity, stock.orderedquantity::numeric AS orderedquantity, stock.minimumstate::numeric AS minimumstate, stock.reservedquantity, stock.availablequantity FROM materialflowresources_resourcestock stock;
 
 CREATE OR REPLACE VIEW materialflowresources_resourcestockdto AS SELECT internal.*, location.number AS locationNumber, location.name AS locationName, product.number AS productNumber, product.name AS productName, product.unit AS productUnit FROM materialflowresources_resourcestockdto_internal internal JOIN materialflow_location location ON (location.id = internal.location_id) JOIN basic_product product ON (product.id = internal.product_id);
 
+CREATE UNIQUE INDEX materialflowresources_resourcestock_location_product_idx ON materialflowresources_resourcestock (location_id, product_id);
+
 -- end
 
 
@@ -308,3 +306,27 @@ CREATE OR REPLACE VIEW materialflowresources_palletstoragestatedto AS SELECT ROW
 -- end
 
 CREATE SEQUENCE technologies_barcodeoperationcomponent_number_seq;
+
+
+-- INDEX: materialflowresources_resource - FIFO/LIFO/FEFO/LEFO resource picking (ResourcePickingService)
+
+CREATE INDEX materialflowresources_resource_picking_time_idx ON materialflowresources_resource (location_id, product_id, conversion, time, id) WHERE availablequantity > 0;
+
+CREATE INDEX materialflowresources_resource_picking_expirationdate_idx ON materialflowresources_resource (location_id, product_id, conversion, expirationdate, id) WHERE availablequantity > 0;
+
+-- end
+
+
+-- INDEX: trigram search of products, additional codes, pallet numbers and storage locations (LookupSearchService)
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE INDEX basic_product_number_trgm_idx ON basic_product USING gin (number gin_trgm_ops) WHERE active = true;
+
+CREATE INDEX basic_additionalcode_code_trgm_idx ON basic_additionalcode USING gin (code gin_trgm_ops);
+
+CREATE INDEX basic_palletnumber_number_trgm_idx ON basic_palletnumber USING gin (number gin_trgm_ops) WHERE active = true;
+
+CREATE INDEX materialflowresources_storagelocation_number_trgm_idx ON materialflowresources_storagelocation USING gin (number gin_trgm_ops) WHERE active = true;
+
+-- end
@@ -43,7 +43,7 @@ DROP FUNCTION update_sequence();
 
 DROP TABLE IF EXISTS materialflowresources_warehousestock;
 
-CREATE OR REPLACE FUNCTION create_warehouse_stock_view() RETURNS VOID AS $$ BEGIN IF EXISTS (SELECT * FROM information_schema.columns WHERE table_name = 'basic_parameter' AND column_name = 'tenantid') THEN CREATE OR REPLACE VIEW materialflowresources_warehousestock AS SELECT row_number() OVER () AS id, location_id, product_id, (SELECT SUM(warehouseminimalstate_warehouseminimumstate.minimumstate) FROM warehouseminimalstate_warehouseminimumstate WHERE warehouseminimalstate_warehouseminimumstate.product_id = materialflowresources_resource.product_id AND warehouseminimalstate_warehouseminimumstate.location_id = materialflowresources_resource.location_id) AS minimumstate, (SELECT COALESCE(SUM(deliveries_orderedproduct.orderedquantity), 0::numeric) AS sum FROM deliveries_orderedproduct, deliveries_delivery WHERE deliveries_orderedproduct.delivery_id = deliveries_delivery.id AND deliveries_delivery.location_id = materialflowresources_resource.location_id AND deliveries_delivery.active = true AND deliveries_orderedproduct.product_id = materialflowresources_resource.product_id AND deliveries_delivery.state IN ('01draft', '02prepared', '03duringCorrection', '05approved')) AS orderedquantity, SUM(quantity) AS quantity, tenantid FROM materialflowresources_resource GROUP BY tenantid, location_id, product_id; ELSE CREATE OR REPLACE VIEW materialflowresources_warehousestock AS SELECT row_number() OVER () AS id, location_id, product_id, (SELECT SUM(warehouseminimalstate_warehouseminimumstate.minimumstate) FROM warehouseminimalstate_warehouseminimumstate WHERE warehouseminimalstate_warehouseminimumstate.product_id = materialflowresources_resource.product_id AND warehouseminimalstate_warehouseminimumstate.location_id = materialflowresources_resource.location_id) AS minimumstate, (SELECT COALESCE(SUM(deliveries_orderedproduct.orderedquantity),0) AS sum FROM deliveries_orderedproduct, deliveries_delivery WHERE deliveries_orderedproduct.delivery_id = deliveries_delivery.id AND deliveries_delivery.active = true AND deliveries_delivery.location_id = materialflowresources_resource.location_id AND deliveries_orderedproduct.product_id = materialflowresources_resource.product_id AND deliveries_delivery.state IN ('01draft', '02prepared', '03duringCorrection', '05approved')) AS orderedquantity, SUM(quantity) AS quantity FROM materialflowresources_resource GROUP BY location_id, product_id; END IF; END; $$ LANGUAGE 'plpgsql';
+CREATE OR REPLACE FUNCTION create_warehouse_stock_view() RETURNS VOID AS $$ BEGIN IF EXISTS (SELECT * FROM information_schema.columns WHERE table_name = 'basic_parameter' AND column_name = 'tenantid') THEN CREATE OR REPLACE VIEW materialflowresources_warehousestock AS SELECT stock.id, stock.location_id, stock.product_id, stock.minimumstate::numeric AS minimumstate, stock.orderedquantity::numeric AS orderedquantity, stock.quantity::numeric AS quantity, stock.tenantid FROM materialflowresources_resourcestock stock WHERE stock.quantity > 0; ELSE CREATE OR REPLACE VIEW materialflowresources_warehousestock AS SELECT stock.id, stock.location_id, stock.product_id, stock.minimumstate::numeric AS minimumstate, stock.orderedquantity::numeric AS orderedquantity, stock.quantity::numeric AS quantity FROM materialflowresources_resourcestock stock WHERE stock.quantity > 0; END IF; END; $$ LANGUAGE 'plpgsql';
 
 SELECT create_warehouse_stock_view();
 
@@ -54,9 +54,7 @@ DROP FUNCTION create_warehouse_stock_view();
 
 DROP TABLE IF EXISTS materialflowresources_warehousestocklistdto;
 
-CREATE OR REPLACE VIEW materialflowresources_orderedquantity AS SELECT COALESCE(SUM(orderedproduct.orderedquantity), 0::numeric) AS orderedquantity, resource.id AS resource_id FROM materialflowresources_resource resource JOIN deliveries_orderedproduct orderedproduct ON (orderedproduct.product_id = resource.product_id) JOIN deliveries_delivery delivery ON (orderedproduct.delivery_id = delivery.id AND delivery.active = true AND delivery.location_id = resource.location_id AND (delivery.state::text = ANY (ARRAY['01draft'::character varying::text, '02prepared'::character varying::text, '03duringCorrection'::character varying::text, '05approved'::character varying::text]))) GROUP BY resource.id;
-
-CREATE OR REPLACE VIEW materialflowresources_warehousestocklistdto_internal AS SELECT row_number() OVER () AS id, resource.location_id, resource.product_id::integer, SUM(resource.quantity) AS quantity, COALESCE(orderedquantity.orderedquantity, 0::numeric) AS orderedquantity, (SELECT SUM(warehouseminimalstate_warehouseminimumstate.minimumstate) AS sum FROM warehouseminimalstate_warehouseminimumstate WHERE warehouseminimalstate_warehouseminimumstate.product_id = resource.product_id AND warehouseminimalstate_warehouseminimumstate.location_id = resource.location_id) AS minimumstate FROM materialflowresources_resource resource LEFT JOIN materialflowresources_orderedquantity orderedquantity ON (orderedquantity.resource_id = resource.id) GROUP BY resource.location_id, resource.product_id, orderedquantity.orderedquantity;
+CREATE OR REPLACE VIEW materialflowresources_warehousestocklistdto_internal AS SELECT stock.id, stock.location_id, stock.product_id::integer, stock.quantity::numeric AS quantity, stock.orderedquantity::numeric AS orderedquantity, stock.minimumstate::numeric AS minimumstate FROM materialflowresources_resourcestock stock WHERE stock.quantity > 0;
 
 CREATE OR REPLACE VIEW materialflowresources_warehousestocklistdto AS SELECT internal.*, location.number AS locationNumber, location.name AS locationName, product.number AS productNumber, product.name AS productName, product.unit AS productUnit FROM materialflowresources_warehousestocklistdto_internal internal JOIN materialflow_location location ON (location.id = internal.location_id) JOIN basic_product product ON (product.id = internal.product_id);
 
@@ -229,12 +227,12 @@ CREATE OR REPLACE VIEW materialflowresources_documentdto AS SELECT document.inBu
 
 DROP TABLE IF EXISTS materialflowresources_resourcestockdto;
 
-CREATE OR REPLACE VIEW materialflowresources_orderedquantitystock AS SELECT COALESCE(SUM(orderedproduct.orderedquantity), 0::numeric) AS orderedquantity, resource.id AS resource_id FROM materialflowresources_resourcestock resource JOIN deliveries_orderedproduct orderedproduct ON (orderedproduct.product_id = resource.product_id) JOIN deliveries_delivery delivery ON (orderedproduct.delivery_id = delivery.id AND delivery.active = true AND delivery.location_id = resource.location_id AND (delivery.state::text = ANY (ARRAY['01draft'::character varying::text, '02prepared'::character varying::text, '03duringCorrection'::character varying::text, '05approved'::character varying::text]))) GROUP BY resource.id;
-
-CREATE OR REPLACE VIEW materialflowresources_resourcestockdto_internal AS SELECT row_number() OVER () AS id, resource.location_id, resource.product_id::integer, resource.quantity AS quantity, COALESCE(orderedquantity.orderedquantity, 0::numeric) AS orderedquantity, (SELECT SUM(warehouseminimalstate_warehouseminimumstate.minimumstate) AS sum FROM warehouseminimalstate_warehouseminimumstate WHERE warehouseminimalstate_warehouseminimumstate.product_id = resource.product_id AND warehouseminimalstate_warehouseminimumstate.location_id = resource.location_id) AS minimumstate, reservedQuantity, availableQuantity FROM materialflowresources_resourcestock resource LEFT JOIN materialflowresources_orderedquantitystock orderedquantity ON (orderedquantity.resource_id = resource.id) GROUP BY resource.location_id, resource.product_id, orderedquantity.orderedquantity, reservedQuantity, availableQuantity, quantity;
+CREATE OR REPLACE VIEW materialflowresources_resourcestockdto_internal AS SELECT stock.id, stock.location_id, stock.product_id::integer, stock.quantity AS quantity, stock.orderedquantity::numeric AS orderedquantity, stock.minimumstate::numeric AS minimumstate, stock.reservedquantity, stock.availablequantity FROM materialflowresources_resourcestock stock;
 
 CREATE OR REPLACE VIEW materialflowresources_resourcestockdto AS SELECT internal.*, location.number AS locationNumber, location.name AS locationName, product.number AS productNumber, product.name AS productName, product.unit AS productUnit FROM materialflowresources_resourcestockdto_internal internal JOIN materialflow_location location ON (location.id = internal.location_id) JOIN basic_product product ON (product.id = internal.product_id);
 
+CREATE UNIQUE INDEX materialflowresources_resourcestock_location_product_idx ON materialflowresources_resourcestock (location_id, product_id);
+
 -- end
 
 
@@ -499,3 +497,65 @@ CREATE OR REPLACE VIEW materialflowresources_palletstoragestatedto AS SELECT ROW
 -- end
 
 CREATE SEQUENCE technologies_barcodeoperationcomponent_number_seq;
+
+
+-- INDEX: materialflowresources_resource - FIFO/LIFO/FEFO/LEFO resource picking (ResourcePickingService)
+
+CREATE INDEX materialflowresources_resource_picking_time_idx ON materialflowresources_resource (location_id, product_id, conversion, time, id) WHERE availablequantity > 0;
+
+CREATE INDEX materialflowresources_resource_picking_expirationdate_idx ON materialflowresources_resource (location_id, product_id, conversion, expirationdate, id) WHERE availablequantity > 0;
+
+-- end
+
+
+-- TABLE: materialflow_stockledgercheckpoint - running balances of transfers for MaterialFlowService.calculateShouldBeInLocation
+
+-- materialflow_create_stockledgercheckpoints locks materialflow_transfer against writes, so transfers committed while a checkpoint is built are never missed by it
+
+CREATE INDEX materialflow_transfer_locationto_product_time_idx ON materialflow_transfer (locationto_id, product_id, time);
+
+CREATE INDEX materialflow_transfer_locationfrom_product_time_idx ON materialflow_transfer (locationfrom_id, product_id, time);
+
+CREATE INDEX materialflow_stockcorrection_location_product_date_idx ON materialflow_stockcorrection (location_id, product_id, stockcorrectiondate);
+
+CREATE UNIQUE INDEX materialflow_stockledgercheckpoint_location_product_time_idx ON materialflow_stockledgercheckpoint (location_id, product_id, checkpointtime);
+
+CREATE OR REPLACE FUNCTION materialflow_update_stockledgercheckpoints() RETURNS trigger AS $$ BEGIN IF TG_OP IN ('UPDATE', 'DELETE') AND OLD.time IS NOT NULL THEN UPDATE materialflow_stockledgercheckpoint SET quantityin = quantityin - OLD.quantity WHERE location_id = OLD.locationto_id AND product_id = OLD.product_id AND checkpointtime >= OLD.time; UPDATE materialflow_stockledgercheckpoint SET quantityout = quantityout - OLD.quantity WHERE location_id = OLD.locationfrom_id AND product_id = OLD.product_id AND checkpointtime >= OLD.time; END IF; IF TG_OP IN ('INSERT', 'UPDATE') AND NEW.time IS NOT NULL THEN UPDATE materialflow_stockledgercheckpoint SET quantityin = quantityin + NEW.quantity WHERE location_id = NEW.locationto_id AND product_id = NEW.product_id AND checkpointtime >= NEW.time; UPDATE materialflow_stockledgercheckpoint SET quantityout = quantityout + NEW.quantity WHERE location_id = NEW.locationfrom_id AND product_id = NEW.product_id AND checkpointtime >= NEW.time; END IF; RETURN NULL; END; $$ LANGUAGE 'plpgsql';
+
+CREATE TRIGGER materialflow_transfer_trigger_stockledgercheckpoints AFTER INSERT OR UPDATE OR DELETE ON materialflow_transfer FOR EACH ROW EXECUTE PROCEDURE materialflow_update_stockledgercheckpoints();
+
+CREATE OR REPLACE FUNCTION materialflow_transferredquantity(_location_id bigint, _product_id bigint, _time timestamp, _incoming boolean) RETURNS numeric AS $$ DECLARE _checkpointtime timestamp; _quantity numeric; _transferred numeric; BEGIN SELECT ledgercheckpoint.checkpointtime, CASE WHEN _incoming THEN ledgercheckpoint.quantityin ELSE ledgercheckpoint.quantityout END INTO _checkpointtime, _quantity FROM materialflow_stockledgercheckpoint ledgercheckpoint WHERE ledgercheckpoint.location_id = _location_id AND ledgercheckpoint.product_id = _product_id AND ledgercheckpoint.checkpointtime <= _time ORDER BY ledgercheckpoint.checkpointtime DESC LIMIT 1; IF _incoming THEN SELECT SUM(transfer.quantity) INTO _transferred FROM materialflow_transfer transfer WHERE transfer.locationto_id = _location_id AND transfer.product_id = _product_id AND transfer.time > COALESCE(_checkpointtime, '-infinity') AND transfer.time <= _time; ELSE SELECT SUM(transfer.quantity) INTO _transferred FROM materialflow_transfer transfer WHERE transfer.locationfrom_id = _location_id AND transfer.product_id = _product_id AND transfer.time > COALESCE(_checkpointtime, '-infinity') AND transfer.time <= _time; END IF; RETURN COALESCE(_quantity, 0) + COALESCE(_transferred, 0); END; $$ LANGUAGE 'plpgsql' STABLE;
+
+CREATE OR REPLACE FUNCTION materialflow_shouldbeinlocation(_location_id bigint, _product_id bigint, _time timestamp) RETURNS numeric AS $$ DECLARE _correctiondate timestamp; _found numeric; _quantity numeric; BEGIN SELECT correction.stockcorrectiondate, correction.found INTO _correctiondate, _found FROM materialflow_stockcorrection correction WHERE correction.location_id = _location_id AND correction.product_id = _product_id ORDER BY correction.stockcorrectiondate DESC LIMIT 1; IF _correctiondate IS NULL THEN _quantity := materialflow_transferredquantity(_location_id, _product_id, _time, true) - materialflow_transferredquantity(_location_id, _product_id, _time, false); ELSIF _time > _correctiondate THEN _quantity := _found + materialflow_transferredquantity(_location_id, _product_id, _time, true) - materialflow_transferredquantity(_location_id, _product_id, _correctiondate, true) - materialflow_transferredquantity(_location_id, _product_id, _time, false) + materialflow_transferredquantity(_location_id, _product_id, _correctiondate, false); ELSE _quantity := _found; END IF; RETURN GREATEST(COALESCE(_quantity, 0), 0); END; $$ LANGUAGE 'plpgsql' STABLE;
+
+CREATE OR REPLACE FUNCTION materialflow_create_stockledgercheckpoints(_checkpointtime timestamp) RETURNS VOID AS $$ BEGIN LOCK TABLE materialflow_transfer IN SHARE ROW EXCLUSIVE MODE; INSERT INTO materialflow_stockledgercheckpoint (location_id, product_id, checkpointtime, quantityin, quantityout) SELECT ledger.location_id, ledger.product_id, _checkpointtime, materialflow_transferredquantity(ledger.location_id, ledger.product_id, _checkpointtime, true), materialflow_transferredquantity(ledger.location_id, ledger.product_id, _checkpointtime, false) FROM (SELECT transfer.locationto_id AS location_id, transfer.product_id FROM materialflow_transfer transfer WHERE transfer.locationto_id IS NOT NULL UNION SELECT transfer.locationfrom_id AS location_id, transfer.product_id FROM materialflow_transfer transfer WHERE transfer.locationfrom_id IS NOT NULL) ledger WHERE NOT EXISTS (SELECT 1 FROM materialflow_stockledgercheckpoint ledgercheckpoint WHERE ledgercheckpoint.location_id = ledger.location_id AND ledgercheckpoint.product_id = ledger.product_id AND ledgercheckpoint.checkpointtime = _checkpointtime); END; $$ LANGUAGE 'plpgsql';
+
+-- end
+
+
+-- TYPE: private copies of pattern technologies for orders
+
+CREATE OR REPLACE FUNCTION technologies_copiedcolumns(_tablename text, _excludedcolumns text[]) RETURNS text AS $$ BEGIN RETURN (SELECT string_agg(quote_ident(column_name), ', ' ORDER BY ordinal_position) FROM information_schema.columns WHERE table_schema = current_schema() AND table_name = _tablename AND column_name <> ALL (_excludedcolumns)); END; $$ LANGUAGE 'plpgsql' STABLE;
+
+CREATE OR REPLACE FUNCTION technologies_tableexists(_tablename text) RETURNS boolean AS $$ BEGIN RETURN EXISTS (SELECT 1 FROM information_schema.tables WHERE table_schema = current_schema() AND table_name = _tablename); END; $$ LANGUAGE 'plpgsql' STABLE;
+
+CREATE OR REPLACE FUNCTION technologies_copyoperationfields(_columns text[]) RETURNS void AS $$ BEGIN IF (SELECT COUNT(*) FROM information_schema.columns WHERE table_schema = current_schema() AND table_name IN ('technologies_technologyoperationcomponent', 'technologies_operation') AND column_name = ANY (_columns)) < 2 * array_length(_columns, 1) THEN RETURN; END IF; EXECUTE 'UPDATE technologies_technologyoperationcomponent toc SET ' || (SELECT string_agg(quote_ident(_column) || ' = COALESCE(operation.' || quote_ident(_column) || ', toc.' || quote_ident(_column) || ')', ', ') FROM unnest(_columns) AS _column) || ' FROM technologies_copiedoperationcomponent copied, technologies_operation operation WHERE toc.id = copied.copyid AND operation.id = toc.operation_id AND toc.entitytype IS DISTINCT FROM ''referenceTechnology'' AND ' || (SELECT string_agg('toc.' || quote_ident(_column) || ' IS NULL', ' AND ') FROM unnest(_columns) AS _column); END; $$ LANGUAGE 'plpgsql';
+
+CREATE OR REPLACE FUNCTION technologies_copytechnology(_technologyid bigint, _number varchar) RETURNS bigint AS $$ DECLARE _copyid bigint; _columns text; _timecalculations boolean; BEGIN _columns := technologies_copiedcolumns('technologies_technology', ARRAY['id', 'number', 'technologyprototype_id', 'master', 'externalsynchronized', 'template', 'state', 'technologytype']); EXECUTE 'INSERT INTO technologies_technology (number, technologyprototype_id, master, externalsynchronized, template, state, technologytype, ' || _columns || ') SELECT $2, $1, false, true, false, ''01draft'', ''01patternTechnology'', ' || _columns || ' FROM technologies_technology WHERE id = $1 RETURNING id' INTO _copyid USING _technologyid, _number; _timecalculations := EXISTS (SELECT 1 FROM information_schema.columns WHERE table_schema = current_schema() AND table_name = 'technologies_technologyoperationcomponent' AND column_name = 'techopercomptimecalculation_id'); CREATE TEMP TABLE IF NOT EXISTS technologies_copiedoperationcomponent (sourceid bigint, copyid bigint, timecalculationid bigint) ON COMMIT DELETE ROWS; DELETE FROM technologies_copiedoperationcomponent; EXECUTE 'INSERT INTO technologies_copiedoperationcomponent (sourceid, copyid) SELECT id, nextval(''technologies_technologyoperationcomponent_id_seq'') FROM technologies_technologyoperationcomponent WHERE technology_id = $1' USING _technologyid; IF _timecalculations THEN EXECUTE 'UPDATE technologies_copiedoperationcomponent SET timecalculationid = nextval(''timenormsforoperations_techopercomptimecalculation_id_seq'')'; EXECUTE 'INSERT INTO timenormsforoperations_techopercomptimecalculation (id, duration, machineworktime, laborworktime) SELECT timecalculationid, 0, 0, 0 FROM technologies_copiedoperationcomponent'; END IF; _columns := technologies_copiedcolumns('technologies_technologyoperationcomponent', ARRAY['id', 'technology_id', 'parent_id', 'techopercomptimecalculation_id', 'hascorrections']); IF _timecalculations THEN EXECUTE 'INSERT INTO technologies_technologyoperationcomponent (id, technology_id, parent_id, techopercomptimecalculation_id, ' || _columns || ') SELECT copied.copyid, $1, copiedparent.copyid, copied.timecalculationid, ' || _columns || ' FROM technologies_technologyoperationcomponent toc JOIN technologies_copiedoperationcomponent copied ON copied.sourceid = toc.id LEFT JOIN technologies_copiedoperationcomponent copiedparent ON copiedparent.sourceid = toc.parent_id' USING _copyid; ELSE EXECUTE 'INSERT INTO technologies_technologyoperationcomponent (id, technology_id, parent_id, ' || _columns || ') SELECT copied.copyid, $1, copiedparent.copyid, ' || _columns || ' FROM technologies_technologyoperationcomponent toc JOIN technologies_copiedoperationcomponent copied ON copied.sourceid = toc.id LEFT JOIN technologies_copiedoperationcomponent copiedparent ON copiedparent.sourceid = toc.parent_id' USING _copyid; END IF; _columns := technologies_copiedcolumns('technologies_operationproductincomponent', ARRAY['id', 'operationcomponent_id']); EXECUTE 'INSERT INTO technologies_operationproductincomponent (operationcomponent_id, ' || _columns || ') SELECT copied.copyid, ' || _columns || ' FROM technologies_operationproductincomponent opic JOIN technologies_copiedoperationcomponent copied ON copied.sourceid = opic.operationcomponent_id'; _columns := technologies_copiedcolumns('technologies_operationproductoutcomponent', ARRAY['id', 'operationcomponent_id']); EXECUTE 'INSERT INTO technologies_operationproductoutcomponent (operationcomponent_id, ' || _columns || ') SELECT copied.copyid, ' || _columns || ' FROM technologies_operationproductoutcomponent opoc JOIN technologies_copiedoperationcomponent copied ON copied.sourceid = opoc.operationcomponent_id'; IF technologies_tableexists('jointable_technologyoperationcomponent_workstation') THEN EXECUTE 'INSERT INTO jointable_technologyoperationcomponent_workstation (technologyoperationcomponent_id, workstation_id) SELECT copied.copyid, tocworkstation.workstation_id FROM jointable_technologyoperationcomponent_workstation tocworkstation JOIN technologies_copiedoperationcomponent copied ON copied.sourceid = tocworkstation.technologyoperationcomponent_id'; END IF; PERFORM technologies_copyoperationfields(ARRAY['tpz', 'tj', 'productioninonecycle', 'nextoperationafterproducedtype', 'nextoperationafterproducedquantity', 'nextoperationafterproducedquantityunit', 'timenextoperation', 'machineutilization', 'laborutilization', 'productioninonecycleunit', 'areproductquantitiesdivisible', 'istjdivisible']); IF EXISTS (SELECT 1 FROM information_schema.columns WHERE table_schema = current_schema() AND table_name = 'technologies_technologyoperationcomponent' AND column_name = 'productioninonecycleunit') AND technologies_tableexists('basic_parameter') THEN EXECUTE 'UPDATE technologies_technologyoperationcomponent toc SET productioninonecycleunit = (SELECT unit FROM basic_parameter ORDER BY id LIMIT 1) FROM technologies_copiedoperationcomponent copied WHERE toc.id = copied.copyid AND COALESCE(toc.productioninonecycleunit, '''') = '''''; END IF; PERFORM technologies_copyoperationfields(ARRAY['pieceworkcost', 'numberofoperations', 'laborhourlycost', 'machinehourlycost']); PERFORM technologies_copyoperationfields(ARRAY['issubcontracting']); DELETE FROM technologies_copiedoperationcomponent; RETURN _copyid; END; $$ LANGUAGE 'plpgsql';
+
+-- end
+
+
+-- INDEX: trigram search of products, additional codes, pallet numbers and storage locations (LookupSearchService)
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE INDEX basic_product_number_trgm_idx ON basic_product USING gin (number gin_trgm_ops) WHERE active = true;
+
+CREATE INDEX basic_additionalcode_code_trgm_idx ON basic_additionalcode USING gin (code gin_trgm_ops);
+
+CREATE INDEX basic_palletnumber_number_trgm_idx ON basic_palletnumber USING gin (number gin_trgm_ops) WHERE active = true;
+
+CREATE INDEX materialflowresources_storagelocation_number_trgm_idx ON materialflowresources_storagelocation USING gin (number gin_trgm_ops) WHERE active = true;
+
+-- end
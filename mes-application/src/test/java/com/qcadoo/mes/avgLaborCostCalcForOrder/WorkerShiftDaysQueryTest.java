@@ -0,0 +1,348 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.avgLaborCostCalcForOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.assignmentToShift.constants.StaffAssignmentToShiftState;
+import com.qcadoo.mes.assignmentToShift.states.constants.AssignmentToShiftState;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Runs worker shift days query of AverageCostService against PostgreSQL and compares its rows with the day by day lookup of
+ * the latest assignment to shift. Run with -DtestDbJdbcUrl=jdbc:postgresql:mes_test (and optionally -DtestDbUsername,
+ * -DtestDbPassword), skipped otherwise. Tables are created in temporary schema, which is dropped afterwards.
+ */
+public class WorkerShiftDaysQueryTest {
+
+    private static final String[] ASSIGNMENT_STATES = { AssignmentToShiftState.DRAFT.getStringValue(),
+            AssignmentToShiftState.ACCEPTED.getStringValue(), AssignmentToShiftState.DURING_CORRECTION.getStringValue(),
+            AssignmentToShiftState.CORRECTED.getStringValue() };
+
+    private static final String[] STAFF_STATES = { StaffAssignmentToShiftState.SIMPLE.getStringValue(),
+            StaffAssignmentToShiftState.ACCEPTED.getStringValue(), StaffAssignmentToShiftState.CORRECTED.getStringValue() };
+
+    private static final String L_WORK_ON_LINE = "01workOnLine";
+
+    private static final DateTime START = new DateTime(2017, 1, 2, 8, 0, 0);
+
+    private static final DateTime FINISH = START.plusDays(59);
+
+    private final String jdbcUrl = System.getProperty("testDbJdbcUrl");
+
+    private final String schema = "workershiftdays_test_" + System.currentTimeMillis();
+
+    private final Random random = new Random(42);
+
+    private final List<Assignment> assignments = Lists.newArrayList();
+
+    private final Map<Long, BigDecimal> workerCosts = Maps.newHashMap();
+
+    private Connection connection;
+
+    private AverageCostService averageCostService;
+
+    @Before
+    public void init() throws SQLException {
+        assumeTrue(jdbcUrl != null);
+
+        connection = DriverManager.getConnection(jdbcUrl, System.getProperty("testDbUsername", "postgres"),
+                System.getProperty("testDbPassword", "postgres123"));
+
+        execute("CREATE SCHEMA " + schema);
+        execute("SET search_path TO " + schema + ", public");
+        execute("CREATE TABLE basic_shift (id bigint)");
+        execute("CREATE TABLE basic_staff (id bigint, laborhourlycost numeric(12,5))");
+        execute("CREATE TABLE assignmenttoshift_assignmenttoshift (id bigint, shift_id bigint, startdate date, "
+                + "state character varying(255))");
+        execute("CREATE TABLE assignmenttoshift_staffassignmenttoshift (id bigint, assignmenttoshift_id bigint, "
+                + "worker_id bigint, occupationtypeenum character varying(255), productionline_id bigint, "
+                + "state character varying(255))");
+
+        generateData();
+
+        averageCostService = new AverageCostService();
+
+        ReflectionTestUtils.setField(averageCostService, "jdbcTemplate",
+                new NamedParameterJdbcTemplate(new SingleConnectionDataSource(connection, true)));
+    }
+
+    @After
+    public void cleanUp() throws SQLException {
+        if (connection != null) {
+            execute("DROP SCHEMA " + schema + " CASCADE");
+
+            connection.close();
+        }
+    }
+
+    @Test
+    public void shouldReturnStaffOfLatestAssignmentForEachDayAndShift() {
+        // given
+        Set<Long> shiftIds = Sets.newHashSet(1L, 2L);
+        Entity productionLine = mock(Entity.class);
+        given(productionLine.getId()).willReturn(1L);
+
+        // when
+        List<AverageCostService.WorkerShiftDay> rows = averageCostService
+                .getWorkerShiftDays(Lists.newArrayList(START, FINISH), shiftIds, productionLine);
+
+        // then
+        assertEquals(expectedRows(shiftIds, 1L), toStrings(rows));
+    }
+
+    @Test
+    public void shouldReturnStaffWithoutProductionLineWhenProductionLineIsNotGiven() {
+        // given
+        Set<Long> shiftIds = Sets.newHashSet(1L, 2L, 3L);
+
+        // when
+        List<AverageCostService.WorkerShiftDay> rows = averageCostService
+                .getWorkerShiftDays(Lists.newArrayList(START, FINISH), shiftIds, null);
+
+        // then
+        assertEquals(expectedRows(shiftIds, null), toStrings(rows));
+    }
+
+    private void generateData() throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("INSERT INTO basic_staff VALUES (?, ?)")) {
+            for (long workerId = 1; workerId <= 12; workerId++) {
+                BigDecimal cost = new BigDecimal(15 + random.nextInt(40)).add(new BigDecimal("0.25"));
+
+                workerCosts.put(workerId, cost);
+
+                statement.setLong(1, workerId);
+                statement.setBigDecimal(2, cost);
+                statement.addBatch();
+            }
+
+            statement.executeBatch();
+        }
+
+        long assignmentId = 1;
+        long staffId = 1;
+
+        try (PreparedStatement shiftStatement = connection.prepareStatement("INSERT INTO basic_shift VALUES (?)");
+                PreparedStatement assignmentStatement = connection
+                        .prepareStatement("INSERT INTO assignmenttoshift_assignmenttoshift VALUES (?, ?, ?, ?)");
+                PreparedStatement staffStatement = connection
+                        .prepareStatement("INSERT INTO assignmenttoshift_staffassignmenttoshift VALUES (?, ?, ?, ?, ?, ?)")) {
+            for (long shiftId = 1; shiftId <= 4; shiftId++) {
+                shiftStatement.setLong(1, shiftId);
+                shiftStatement.addBatch();
+
+                LocalDate startDate = START.toLocalDate().minusDays(20);
+
+                for (int i = 0; i < 8; i++) {
+                    // zero days apart now and then, so that two assignments start on the same day
+                    startDate = startDate.plusDays(random.nextInt(15));
+
+                    Assignment assignment = new Assignment(assignmentId++, shiftId, startDate,
+                            ASSIGNMENT_STATES[random.nextInt(ASSIGNMENT_STATES.length)]);
+
+                    assignmentStatement.setLong(1, assignment.id);
+                    assignmentStatement.setLong(2, shiftId);
+                    assignmentStatement.setDate(3, new Date(startDate.toDate().getTime()));
+                    assignmentStatement.setString(4, assignment.state);
+                    assignmentStatement.addBatch();
+
+                    int staffCount = 1 + random.nextInt(6);
+
+                    for (int j = 0; j < staffCount; j++) {
+                        Staff staff = new Staff(staffId++, 1L + random.nextInt(workerCosts.size()),
+                                random.nextInt(10) < 8 ? L_WORK_ON_LINE : "02otherCase",
+                                random.nextInt(5) == 0 ? null : 1L + random.nextInt(2),
+                                STAFF_STATES[random.nextInt(STAFF_STATES.length)]);
+
+                        staffStatement.setLong(1, staff.id);
+                        staffStatement.setLong(2, assignment.id);
+                        staffStatement.setLong(3, staff.workerId);
+                        staffStatement.setString(4, staff.occupationTypeEnum);
+                        staffStatement.setObject(5, staff.productionLineId, Types.BIGINT);
+                        staffStatement.setString(6, staff.state);
+                        staffStatement.addBatch();
+
+                        assignment.staff.add(staff);
+                    }
+
+                    assignments.add(assignment);
+                }
+            }
+
+            shiftStatement.executeBatch();
+            assignmentStatement.executeBatch();
+            staffStatement.executeBatch();
+        }
+    }
+
+    // the lookup as it was done before, for each day and shift
+    private List<String> expectedRows(final Set<Long> shiftIds, final Long productionLineId) {
+        List<String> rows = Lists.newArrayList();
+
+        for (LocalDate day = START.toLocalDate(); !day.isAfter(FINISH.toLocalDate()); day = day.plusDays(1)) {
+            for (Long shiftId : Sets.newTreeSet(shiftIds)) {
+                Assignment assignment = findLatestAssignment(shiftId, day);
+
+                if (assignment == null) {
+                    continue;
+                }
+
+                for (Staff staff : findStaff(assignment, productionLineId)) {
+                    rows.add(toString(shiftId, day, assignment.id, staff.workerId, workerCosts.get(staff.workerId)));
+                }
+            }
+        }
+
+        return rows;
+    }
+
+    private Assignment findLatestAssignment(final Long shiftId, final LocalDate day) {
+        Assignment latest = null;
+
+        for (Assignment assignment : assignments) {
+            if (assignment.shiftId.equals(shiftId) && !assignment.startDate.isAfter(day)
+                    && (latest == null || !assignment.startDate.isBefore(latest.startDate))) {
+                latest = assignment;
+            }
+        }
+
+        return latest;
+    }
+
+    private List<Staff> findStaff(final Assignment assignment, final Long productionLineId) {
+        String staffState = null;
+
+        if (AssignmentToShiftState.CORRECTED.getStringValue().equals(assignment.state)) {
+            staffState = StaffAssignmentToShiftState.CORRECTED.getStringValue();
+        } else if (AssignmentToShiftState.ACCEPTED.getStringValue().equals(assignment.state)
+                || AssignmentToShiftState.DURING_CORRECTION.getStringValue().equals(assignment.state)) {
+            staffState = StaffAssignmentToShiftState.ACCEPTED.getStringValue();
+        }
+
+        List<Staff> staff = Lists.newArrayList();
+
+        for (Staff candidate : assignment.staff) {
+            boolean sameProductionLine = productionLineId == null ? candidate.productionLineId == null
+                    : productionLineId.equals(candidate.productionLineId);
+
+            if (L_WORK_ON_LINE.equals(candidate.occupationTypeEnum) && sameProductionLine
+                    && candidate.state.equals(staffState)) {
+                staff.add(candidate);
+            }
+        }
+
+        return staff;
+    }
+
+    private List<String> toStrings(final List<AverageCostService.WorkerShiftDay> rows) {
+        return rows.stream().map(row -> toString(row.getShiftId(), row.getDay(), row.getAssignmentToShiftId(),
+                row.getWorkerId(), row.getLaborHourlyCost())).collect(Collectors.toList());
+    }
+
+    private String toString(final Long shiftId, final LocalDate day, final Long assignmentToShiftId, final Long workerId,
+            final BigDecimal laborHourlyCost) {
+        return day + " shift " + shiftId + " assignment " + assignmentToShiftId + " worker " + workerId + " cost "
+                + laborHourlyCost.stripTrailingZeros().toPlainString();
+    }
+
+    private void execute(final String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private static final class Assignment {
+
+        private final Long id;
+
+        private final Long shiftId;
+
+        private final LocalDate startDate;
+
+        private final String state;
+
+        private final List<Staff> staff = Lists.newArrayList();
+
+        private Assignment(final Long id, final Long shiftId, final LocalDate startDate, final String state) {
+            this.id = id;
+            this.shiftId = shiftId;
+            this.startDate = startDate;
+            this.state = state;
+        }
+
+    }
+
+    private static final class Staff {
+
+        private final Long id;
+
+        private final Long workerId;
+
+        private final String occupationTypeEnum;
+
+        private final Long productionLineId;
+
+        private final String state;
+
+        private Staff(final Long id, final Long workerId, final String occupationTypeEnum, final Long productionLineId,
+                final String state) {
+            this.id = id;
+            this.workerId = workerId;
+            this.occupationTypeEnum = occupationTypeEnum;
+            this.productionLineId = productionLineId;
+            this.state = state;
+        }
+
+    }
+
+}
@@ -0,0 +1,243 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.qcadoo.mes.basic.controllers.dataProvider.DataProvider;
+import com.qcadoo.mes.basic.controllers.dataProvider.LookupSearchService;
+import com.qcadoo.mes.basic.controllers.dataProvider.dto.ProductDTO;
+import com.qcadoo.mes.basic.controllers.dataProvider.responses.DataResponse;
+
+/**
+ * Runs product lookup search of DataProvider against trigram indexes from views.sql. Needs PostgreSQL database with pg_trgm
+ * extension available, run with -DtestDbJdbcUrl=jdbc:postgresql:mes_test (and optionally -DtestDbUsername, -DtestDbPassword),
+ * skipped otherwise. Tables are created in temporary schema, which is dropped afterwards.
+ */
+public class LookupSearchIndexTest {
+
+    private static final String L_VIEWS_SQL = "src/main/resources/views.sql";
+
+    private static final String L_SECTION_START = "-- INDEX: trigram search of products";
+
+    private static final String L_SECTION_END = "-- end";
+
+    private static final String L_PRODUCT_NUMBER_INDEX = "basic_product_number_trgm_idx";
+
+    private final String jdbcUrl = System.getProperty("testDbJdbcUrl");
+
+    private final String schema = "lookupsearch_test_" + System.currentTimeMillis();
+
+    private final List<String> activeNumbers = new ArrayList<String>();
+
+    private final List<String> queries = new ArrayList<String>();
+
+    private Connection connection;
+
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private DataProvider dataProvider;
+
+    @Before
+    public void init() throws SQLException, IOException {
+        assumeTrue(jdbcUrl != null);
+
+        connection = DriverManager.getConnection(jdbcUrl, System.getProperty("testDbUsername", "postgres"),
+                System.getProperty("testDbPassword", "postgres123"));
+
+        execute("CREATE SCHEMA " + schema);
+        execute("SET search_path TO " + schema + ", public");
+        execute("CREATE TABLE basic_product (id bigint, number character varying(255), name character varying(1024), "
+                + "active boolean)");
+        execute("CREATE TABLE basic_additionalcode (id bigint, code character varying(255), product_id bigint)");
+        execute("CREATE TABLE basic_palletnumber (id bigint, number character varying(255), active boolean)");
+        execute("CREATE TABLE materialflowresources_storagelocation (id bigint, number character varying(255), "
+                + "active boolean, location_id bigint, product_id bigint)");
+
+        for (String statement : readTrigramIndexStatements()) {
+            execute(statement);
+        }
+
+        insertProducts();
+
+        jdbcTemplate = new NamedParameterJdbcTemplate(new SingleConnectionDataSource(connection, true)) {
+
+            @Override
+            public <T> List<T> query(final String sql, final Map<String, ?> paramMap, final RowMapper<T> rowMapper) {
+                queries.add(sql);
+
+                return super.query(sql, paramMap, rowMapper);
+            }
+
+        };
+
+        LookupSearchService lookupSearchService = new LookupSearchService();
+        dataProvider = new DataProvider();
+
+        ReflectionTestUtils.setField(lookupSearchService, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(dataProvider, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(dataProvider, "lookupSearchService", lookupSearchService);
+    }
+
+    @After
+    public void cleanUp() throws SQLException {
+        if (connection != null) {
+            execute("DROP SCHEMA " + schema + " CASCADE");
+
+            connection.close();
+        }
+    }
+
+    @Test
+    public void shouldFindSameProductsAsSubstringSearchWithPrefixMatchesFirst() {
+        for (String searchedText : new String[] { "SCR", "m8-1", "-10", "x_y", "50%", "NONE" }) {
+            // given
+            String lowerCaseText = searchedText.toLowerCase(Locale.ENGLISH);
+            List<String> expected = activeNumbers.stream()
+                    .filter(number -> number.toLowerCase(Locale.ENGLISH).contains(lowerCaseText)).sorted()
+                    .collect(Collectors.toList());
+
+            // when
+            DataResponse response = dataProvider.getProductsResponseByQuery(searchedText);
+
+            // then
+            List<String> found = numbers(response);
+
+            assertEquals(searchedText, Math.min(expected.size(), LookupSearchService.MAX_RESULTS), found.size());
+            assertEquals(searchedText, Math.min(expected.size(), LookupSearchService.MAX_RESULTS + 1),
+                    response.getNumberOfResults());
+            assertTrue(searchedText, expected.containsAll(found));
+
+            boolean prefixMatches = true;
+
+            for (String number : found) {
+                boolean prefixMatch = number.toLowerCase(Locale.ENGLISH).startsWith(lowerCaseText);
+
+                assertTrue(searchedText + ": " + found, prefixMatches || !prefixMatch);
+
+                prefixMatches = prefixMatch;
+            }
+        }
+    }
+
+    @Test
+    public void shouldSearchProductsThroughTrigramIndex() throws SQLException {
+        // given
+        execute("ANALYZE basic_product");
+        execute("SET enable_seqscan = off");
+
+        dataProvider.getProductsResponseByQuery("M8-1");
+
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put("searchPattern", "%M8-1%");
+        parameters.put("searchPrefixPattern", "M8-1%");
+
+        // when
+        List<String> plan = jdbcTemplate.queryForList("EXPLAIN " + queries.get(queries.size() - 1), parameters,
+                String.class);
+
+        // then
+        assertTrue(plan.toString(), plan.stream().anyMatch(line -> line.contains(L_PRODUCT_NUMBER_INDEX)));
+    }
+
+    private void insertProducts() throws SQLException {
+        Random random = new Random(1234);
+        String[] prefixes = { "SCREW-M8-", "SCREW-M10-", "NUT-M8-", "WASHER M8-", "XSCREW-", "BOLT_x_y-", "PAINT 50%-" };
+
+        try (PreparedStatement statement = connection
+                .prepareStatement("INSERT INTO basic_product (id, number, name, active) VALUES (?, ?, ?, ?)")) {
+            for (int id = 1; id <= 5000; id++) {
+                String number = prefixes[random.nextInt(prefixes.length)] + random.nextInt(100000);
+                boolean active = random.nextInt(10) > 0;
+
+                if (active) {
+                    activeNumbers.add(number);
+                }
+
+                statement.setLong(1, id);
+                statement.setString(2, number);
+                statement.setString(3, "product " + id);
+                statement.setBoolean(4, active);
+                statement.addBatch();
+            }
+
+            statement.executeBatch();
+        }
+    }
+
+    private List<String> numbers(final DataResponse response) {
+        return response.getEntities().stream().map(entity -> ((ProductDTO) entity).getNumber()).collect(Collectors.toList());
+    }
+
+    private void execute(final String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private List<String> readTrigramIndexStatements() throws IOException {
+        List<String> statements = new ArrayList<String>();
+        boolean inSection = false;
+
+        for (String line : Files.readAllLines(Paths.get(L_VIEWS_SQL), StandardCharsets.UTF_8)) {
+            if (line.startsWith(L_SECTION_START)) {
+                inSection = true;
+            } else if (inSection && line.startsWith(L_SECTION_END)) {
+                break;
+            } else if (inSection && line.startsWith("CREATE")) {
+                statements.add(line);
+            }
+        }
+
+        return statements;
+    }
+
+}
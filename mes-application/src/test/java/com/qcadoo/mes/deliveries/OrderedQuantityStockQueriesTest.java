@@ -0,0 +1,252 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.deliveries;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.deliveries.constants.DeliveryFields;
+import com.qcadoo.mes.deliveries.constants.OrderedProductFields;
+import com.qcadoo.mes.deliveries.states.constants.DeliveryStateStringValues;
+import com.qcadoo.mes.materialFlowResources.service.WarehouseStockService;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.testing.model.EntityListMock;
+
+/**
+ * Updates ordered quantities of resource stocks through OrderedQuantityStockService and WarehouseStockService for a small
+ * fixture: delivery 1 orders 6 pieces of product 11 and 9 pieces of product 13, which has no stock, to location 1, delivery 2
+ * orders 4 pieces of product 11 to location 2. Needs PostgreSQL database, run with -DtestDbJdbcUrl=jdbc:postgresql:mes_test
+ * (and optionally -DtestDbUsername, -DtestDbPassword), skipped otherwise. Tables are created in temporary schema, which is
+ * dropped afterwards.
+ */
+public class OrderedQuantityStockQueriesTest {
+
+    private final String jdbcUrl = System.getProperty("testDbJdbcUrl");
+
+    private final String schema = "orderedquantity_test_" + System.currentTimeMillis();
+
+    private Connection connection;
+
+    private OrderedQuantityStockService orderedQuantityStockService;
+
+    private DataDefinition deliveryDD;
+
+    private DataDefinition orderedProductDD;
+
+    @Before
+    public void init() throws SQLException {
+        assumeTrue(jdbcUrl != null);
+
+        connection = DriverManager.getConnection(jdbcUrl, System.getProperty("testDbUsername", "postgres"),
+                System.getProperty("testDbPassword", "postgres123"));
+
+        execute("CREATE SCHEMA " + schema);
+        execute("SET search_path TO " + schema);
+        execute("CREATE TABLE deliveries_delivery (id bigint PRIMARY KEY, location_id bigint, active boolean, "
+                + "state varchar(255))");
+        execute("CREATE TABLE deliveries_orderedproduct (id bigint PRIMARY KEY, delivery_id bigint, product_id bigint, "
+                + "orderedquantity numeric(14, 5))");
+        execute("CREATE TABLE materialflowresources_resourcestock (id bigserial PRIMARY KEY, location_id bigint, "
+                + "product_id bigint, quantity numeric(14, 5), reservedquantity numeric(14, 5), "
+                + "availablequantity numeric(14, 5), orderedquantity numeric(14, 5), minimumstate numeric(14, 5))");
+
+        execute("INSERT INTO deliveries_delivery VALUES (1, 1, true, '02prepared'), (2, 2, true, '01draft')");
+        execute("INSERT INTO deliveries_orderedproduct VALUES (1, 1, 11, 6), (2, 1, 13, 9), (3, 2, 11, 4)");
+        execute("INSERT INTO materialflowresources_resourcestock (location_id, product_id, quantity, reservedquantity, "
+                + "availablequantity, orderedquantity, minimumstate) VALUES (1, 11, 10, 0, 10, 6, 0), "
+                + "(2, 11, 3, 0, 3, 4, 0), (1, 12, 2, 0, 2, 0, 0)");
+
+        WarehouseStockService warehouseStockService = new WarehouseStockService();
+        ReflectionTestUtils.setField(warehouseStockService, "jdbcTemplate",
+                new NamedParameterJdbcTemplate(new SingleConnectionDataSource(connection, true)));
+
+        orderedQuantityStockService = new OrderedQuantityStockService();
+        ReflectionTestUtils.setField(orderedQuantityStockService, "warehouseStockService", warehouseStockService);
+
+        deliveryDD = mock(DataDefinition.class);
+        orderedProductDD = mock(DataDefinition.class);
+    }
+
+    @After
+    public void cleanUp() throws SQLException {
+        if (connection != null) {
+            execute("DROP SCHEMA " + schema + " CASCADE");
+
+            connection.close();
+        }
+    }
+
+    @Test
+    public void shouldAddQuantityOfNewOrderedProduct() throws SQLException {
+        // given
+        Entity delivery = mockDelivery(1L, 1L, DeliveryStateStringValues.PREPARED);
+
+        // when
+        orderedQuantityStockService.updateForOrderedProduct(orderedProductDD, mockOrderedProduct(null, delivery, 11L, "5"));
+        orderedQuantityStockService.updateForOrderedProduct(orderedProductDD, mockOrderedProduct(null, delivery, 13L, "2"));
+
+        // then
+        assertOrderedQuantity(1L, 11L, "11");
+        assertOrderedQuantity(2L, 11L, "4");
+        assertNoStock(13L);
+    }
+
+    @Test
+    public void shouldMoveQuantityOfOrderedProductToChangedProduct() throws SQLException {
+        // given
+        Entity delivery = mockDelivery(1L, 1L, DeliveryStateStringValues.PREPARED);
+        given(orderedProductDD.get(1L)).willReturn(mockOrderedProduct(1L, delivery, 11L, "6"));
+
+        // when
+        orderedQuantityStockService.updateForOrderedProduct(orderedProductDD, mockOrderedProduct(1L, delivery, 12L, "7"));
+
+        // then
+        assertOrderedQuantity(1L, 11L, "0");
+        assertOrderedQuantity(1L, 12L, "7");
+    }
+
+    @Test
+    public void shouldMoveOrderedQuantitiesOfDeliveryToChangedLocation() throws SQLException {
+        // given
+        Entity deliveryFromDB = mockDelivery(1L, 1L, DeliveryStateStringValues.PREPARED);
+        given(deliveryFromDB.getHasManyField(DeliveryFields.ORDERED_PRODUCTS)).willReturn(EntityListMock.create(
+                Lists.newArrayList(mockOrderedProduct(1L, deliveryFromDB, 11L, "6"),
+                        mockOrderedProduct(2L, deliveryFromDB, 13L, "9"))));
+        given(deliveryDD.get(1L)).willReturn(deliveryFromDB);
+
+        // when
+        orderedQuantityStockService.updateForDelivery(deliveryDD, mockDelivery(1L, 2L, DeliveryStateStringValues.PREPARED));
+
+        // then
+        assertOrderedQuantity(1L, 11L, "0");
+        assertOrderedQuantity(2L, 11L, "10");
+        assertNoStock(13L);
+    }
+
+    @Test
+    public void shouldRemoveOrderedQuantitiesOfReceivedDelivery() throws SQLException {
+        // given
+        Entity deliveryFromDB = mockDelivery(1L, 1L, DeliveryStateStringValues.PREPARED);
+        given(deliveryFromDB.getHasManyField(DeliveryFields.ORDERED_PRODUCTS)).willReturn(EntityListMock.create(
+                Lists.newArrayList(mockOrderedProduct(1L, deliveryFromDB, 11L, "6"))));
+        given(deliveryDD.get(1L)).willReturn(deliveryFromDB);
+
+        // when
+        orderedQuantityStockService.updateForDelivery(deliveryDD, mockDelivery(1L, 1L, DeliveryStateStringValues.RECEIVED));
+
+        // then
+        assertOrderedQuantity(1L, 11L, "0");
+        assertOrderedQuantity(2L, 11L, "4");
+    }
+
+    @Test
+    public void shouldRemoveOrderedQuantitiesOfDeletedDelivery() throws SQLException {
+        // given
+        Entity delivery = mockDelivery(2L, 2L, DeliveryStateStringValues.DRAFT);
+        given(delivery.getHasManyField(DeliveryFields.ORDERED_PRODUCTS)).willReturn(EntityListMock.create(
+                Lists.newArrayList(mockOrderedProduct(3L, delivery, 11L, "4"))));
+
+        // when
+        orderedQuantityStockService.updateForDeletedDelivery(delivery);
+
+        // then
+        assertOrderedQuantity(1L, 11L, "6");
+        assertOrderedQuantity(2L, 11L, "0");
+    }
+
+    private Entity mockDelivery(final Long id, final Long locationId, final String state) {
+        Entity delivery = mock(Entity.class);
+        Entity location = mock(Entity.class);
+
+        given(location.getId()).willReturn(locationId);
+        given(delivery.getId()).willReturn(id);
+        given(delivery.getStringField(DeliveryFields.STATE)).willReturn(state);
+        given(delivery.getField(DeliveryFields.ACTIVE)).willReturn(true);
+        given(delivery.getBooleanField(DeliveryFields.ACTIVE)).willReturn(true);
+        given(delivery.getBelongsToField(DeliveryFields.LOCATION)).willReturn(location);
+
+        return delivery;
+    }
+
+    private Entity mockOrderedProduct(final Long id, final Entity delivery, final Long productId, final String orderedQuantity) {
+        Entity orderedProduct = mock(Entity.class);
+        Entity product = mock(Entity.class);
+
+        given(product.getId()).willReturn(productId);
+        given(orderedProduct.getId()).willReturn(id);
+        given(orderedProduct.getBelongsToField(OrderedProductFields.DELIVERY)).willReturn(delivery);
+        given(orderedProduct.getBelongsToField(OrderedProductFields.PRODUCT)).willReturn(product);
+        given(orderedProduct.getDecimalField(OrderedProductFields.ORDERED_QUANTITY)).willReturn(new BigDecimal(orderedQuantity));
+
+        return orderedProduct;
+    }
+
+    private void assertOrderedQuantity(final Long locationId, final Long productId, final String orderedQuantity)
+            throws SQLException {
+        try (Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT orderedquantity FROM materialflowresources_resourcestock "
+                        + "WHERE location_id = " + locationId + " AND product_id = " + productId)) {
+            assertTrue(resultSet.next());
+
+            assertEquals(0, new BigDecimal(orderedQuantity).compareTo(resultSet.getBigDecimal(1)));
+        }
+    }
+
+    private void assertNoStock(final Long productId) throws SQLException {
+        try (Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT count(*) FROM materialflowresources_resourcestock "
+                        + "WHERE product_id = " + productId)) {
+            resultSet.next();
+
+            assertEquals(0, resultSet.getInt(1));
+        }
+    }
+
+    private void execute(final String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+}
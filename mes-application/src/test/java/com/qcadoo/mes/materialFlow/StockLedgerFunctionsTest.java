@@ -0,0 +1,417 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks stock ledger functions from views.sql against the sum of transfers, which MaterialFlowService used to compute in
+ * Java. Needs PostgreSQL database, run with -DtestDbJdbcUrl=jdbc:postgresql:mes_test (and optionally -DtestDbUsername,
+ * -DtestDbPassword), skipped otherwise. Tables are created in temporary schema, which is dropped afterwards.
+ */
+public class StockLedgerFunctionsTest {
+
+    private static final String L_VIEWS_SQL = "src/main/resources/views.sql";
+
+    private static final String L_SECTION_START = "-- TABLE: materialflow_stockledgercheckpoint";
+
+    private static final String L_SECTION_END = "-- end";
+
+    private static final LocalDateTime L_START = LocalDateTime.of(2017, 1, 1, 0, 0);
+
+    private static final Long L_LOCATION_1 = 1L;
+
+    private static final Long L_LOCATION_2 = 2L;
+
+    private static final Long L_PRODUCT_1 = 11L;
+
+    private static final Long L_PRODUCT_2 = 12L;
+
+    private final String jdbcUrl = System.getProperty("testDbJdbcUrl");
+
+    private final String schema = "stockledger_test_" + System.currentTimeMillis();
+
+    private final List<Transfer> transfers = new ArrayList<Transfer>();
+
+    private final List<Correction> corrections = new ArrayList<Correction>();
+
+    private Connection connection;
+
+    @Before
+    public void init() throws SQLException, IOException {
+        assumeTrue(jdbcUrl != null);
+
+        connection = connect();
+
+        execute(connection, "CREATE SCHEMA " + schema);
+        execute(connection, "SET search_path TO " + schema);
+        execute(connection, "CREATE TABLE materialflow_transfer (id bigserial PRIMARY KEY, locationto_id bigint, "
+                + "locationfrom_id bigint, product_id bigint, quantity numeric(12, 5), time timestamp)");
+        execute(connection, "CREATE TABLE materialflow_stockcorrection (id bigserial PRIMARY KEY, location_id bigint, "
+                + "product_id bigint, stockcorrectiondate timestamp, found numeric(12, 5))");
+        execute(connection, "CREATE TABLE materialflow_stockledgercheckpoint (id bigserial PRIMARY KEY, location_id bigint, "
+                + "product_id bigint, checkpointtime timestamp, quantityin numeric, quantityout numeric)");
+
+        for (String statement : readStockLedgerStatements()) {
+            execute(connection, statement);
+        }
+    }
+
+    @After
+    public void cleanUp() throws SQLException {
+        if (connection != null) {
+            execute(connection, "DROP SCHEMA " + schema + " CASCADE");
+
+            connection.close();
+        }
+    }
+
+    @Test
+    public void shouldAnswerSameQuantitiesAsSumOfTransfers() throws SQLException {
+        // given
+        Random random = new Random(1234);
+
+        for (int i = 0; i < 300; i++) {
+            insertTransfer(connection, randomTransfer(random, 90));
+        }
+
+        insertCorrection(new Correction(L_LOCATION_1, L_PRODUCT_1, time(20), new BigDecimal("15")));
+        insertCorrection(new Correction(L_LOCATION_1, L_PRODUCT_1, time(45), new BigDecimal("7.5")));
+        insertCorrection(new Correction(L_LOCATION_2, L_PRODUCT_2, time(70), new BigDecimal("100")));
+
+        createCheckpoints(connection, time(30));
+        createCheckpoints(connection, time(60));
+
+        for (int i = 0; i < 20; i++) {
+            Transfer transfer = transfers.get(random.nextInt(transfers.size()));
+
+            transfer.quantity = randomQuantity(random);
+            transfer.time = time(random.nextInt(90));
+
+            updateTransfer(transfer);
+        }
+
+        Iterator<Transfer> iterator = transfers.iterator();
+
+        for (int i = 0; i < 10 && iterator.hasNext(); i++) {
+            deleteTransfer(iterator.next());
+            iterator.remove();
+        }
+
+        for (int i = 0; i < 30; i++) {
+            insertTransfer(connection, randomTransfer(random, 90));
+        }
+
+        // when & then
+        for (int day : new int[] { 0, 10, 20, 29, 30, 31, 45, 59, 60, 61, 70, 89, 95 }) {
+            for (Long locationId : new Long[] { L_LOCATION_1, L_LOCATION_2 }) {
+                for (Long productId : new Long[] { L_PRODUCT_1, L_PRODUCT_2 }) {
+                    assertQuantity(locationId, productId, time(day));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shouldNotMissTransferCommittedWhileCheckpointsAreCreated() throws Exception {
+        // given
+        insertTransfer(connection, new Transfer(L_LOCATION_1, null, L_PRODUCT_1, new BigDecimal("10"), time(1)));
+
+        Connection otherConnection = connect();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            otherConnection.setAutoCommit(false);
+            execute(otherConnection, "SET search_path TO " + schema);
+
+            insertTransfer(otherConnection, new Transfer(L_LOCATION_1, null, L_PRODUCT_1, new BigDecimal("5"), time(5)));
+
+            // when
+            Future<?> checkpoints = executor.submit(() -> {
+                try (Connection checkpointConnection = connect()) {
+                    execute(checkpointConnection, "SET search_path TO " + schema);
+
+                    createCheckpoints(checkpointConnection, time(30));
+                }
+
+                return null;
+            });
+
+            Thread.sleep(500);
+
+            assertFalse(checkpoints.isDone());
+
+            otherConnection.commit();
+
+            checkpoints.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+            otherConnection.close();
+        }
+
+        // then
+        assertQuantity(L_LOCATION_1, L_PRODUCT_1, time(40));
+    }
+
+    private void assertQuantity(final Long locationId, final Long productId, final Timestamp forDate) throws SQLException {
+        BigDecimal expected = sumOfTransfers(locationId, productId, forDate);
+        BigDecimal actual;
+
+        try (PreparedStatement statement = connection.prepareStatement("SELECT materialflow_shouldbeinlocation(?, ?, ?)")) {
+            statement.setLong(1, locationId);
+            statement.setLong(2, productId);
+            statement.setTimestamp(3, forDate);
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+
+                actual = resultSet.getBigDecimal(1);
+            }
+        }
+
+        assertEquals("location " + locationId + ", product " + productId + ", date " + forDate, 0, expected.compareTo(actual));
+    }
+
+    private BigDecimal sumOfTransfers(final Long locationId, final Long productId, final Timestamp forDate) {
+        Correction lastCorrection = null;
+
+        for (Correction correction : corrections) {
+            if (correction.locationId.equals(locationId) && correction.productId.equals(productId)
+                    && (lastCorrection == null || correction.date.after(lastCorrection.date))) {
+                lastCorrection = correction;
+            }
+        }
+
+        BigDecimal quantity = lastCorrection == null ? BigDecimal.ZERO : lastCorrection.found;
+
+        for (Transfer transfer : transfers) {
+            if (!transfer.productId.equals(productId) || transfer.time.after(forDate)
+                    || (lastCorrection != null && !transfer.time.after(lastCorrection.date))) {
+                continue;
+            }
+            if (locationId.equals(transfer.locationToId)) {
+                quantity = quantity.add(transfer.quantity);
+            }
+            if (locationId.equals(transfer.locationFromId)) {
+                quantity = quantity.subtract(transfer.quantity);
+            }
+        }
+
+        return quantity.max(BigDecimal.ZERO);
+    }
+
+    private Transfer randomTransfer(final Random random, final int days) {
+        Long locationToId = random.nextBoolean() ? L_LOCATION_1 : L_LOCATION_2;
+        Long locationFromId = L_LOCATION_1.equals(locationToId) ? L_LOCATION_2 : L_LOCATION_1;
+
+        switch (random.nextInt(3)) {
+            case 0:
+                locationToId = null;
+                break;
+            case 1:
+                locationFromId = null;
+                break;
+            default:
+                break;
+        }
+
+        return new Transfer(locationToId, locationFromId, random.nextBoolean() ? L_PRODUCT_1 : L_PRODUCT_2,
+                randomQuantity(random), time(random.nextInt(days)));
+    }
+
+    private BigDecimal randomQuantity(final Random random) {
+        return BigDecimal.valueOf(random.nextInt(100000), 3);
+    }
+
+    private Timestamp time(final int day) {
+        return Timestamp.valueOf(L_START.plusDays(day).plusHours(day % 24));
+    }
+
+    private void insertTransfer(final Connection insertConnection, final Transfer transfer) throws SQLException {
+        try (PreparedStatement statement = insertConnection.prepareStatement("INSERT INTO materialflow_transfer "
+                + "(locationto_id, locationfrom_id, product_id, quantity, time) VALUES (?, ?, ?, ?, ?) RETURNING id")) {
+            setLocation(statement, 1, transfer.locationToId);
+            setLocation(statement, 2, transfer.locationFromId);
+            statement.setLong(3, transfer.productId);
+            statement.setBigDecimal(4, transfer.quantity);
+            statement.setTimestamp(5, transfer.time);
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+
+                transfer.id = resultSet.getLong(1);
+            }
+        }
+
+        transfers.add(transfer);
+    }
+
+    private void setLocation(final PreparedStatement statement, final int index, final Long locationId) throws SQLException {
+        if (locationId == null) {
+            statement.setNull(index, Types.BIGINT);
+        } else {
+            statement.setLong(index, locationId);
+        }
+    }
+
+    private void updateTransfer(final Transfer transfer) throws SQLException {
+        try (PreparedStatement statement = connection
+                .prepareStatement("UPDATE materialflow_transfer SET quantity = ?, time = ? WHERE id = ?")) {
+            statement.setBigDecimal(1, transfer.quantity);
+            statement.setTimestamp(2, transfer.time);
+            statement.setLong(3, transfer.id);
+            statement.executeUpdate();
+        }
+    }
+
+    private void deleteTransfer(final Transfer transfer) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("DELETE FROM materialflow_transfer WHERE id = ?")) {
+            statement.setLong(1, transfer.id);
+            statement.executeUpdate();
+        }
+    }
+
+    private void insertCorrection(final Correction correction) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("INSERT INTO materialflow_stockcorrection "
+                + "(location_id, product_id, stockcorrectiondate, found) VALUES (?, ?, ?, ?)")) {
+            statement.setLong(1, correction.locationId);
+            statement.setLong(2, correction.productId);
+            statement.setTimestamp(3, correction.date);
+            statement.setBigDecimal(4, correction.found);
+            statement.executeUpdate();
+        }
+
+        corrections.add(correction);
+    }
+
+    private void createCheckpoints(final Connection checkpointConnection, final Timestamp checkpointTime) throws SQLException {
+        try (PreparedStatement statement = checkpointConnection
+                .prepareStatement("SELECT materialflow_create_stockledgercheckpoints(?)")) {
+            statement.setTimestamp(1, checkpointTime);
+            statement.execute();
+        }
+    }
+
+    private Connection connect() throws SQLException {
+        return DriverManager.getConnection(jdbcUrl, System.getProperty("testDbUsername", "postgres"),
+                System.getProperty("testDbPassword", "postgres123"));
+    }
+
+    private void execute(final Connection executeConnection, final String sql) throws SQLException {
+        try (Statement statement = executeConnection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private List<String> readStockLedgerStatements() throws IOException {
+        List<String> statements = new ArrayList<String>();
+        boolean inSection = false;
+
+        for (String line : Files.readAllLines(Paths.get(L_VIEWS_SQL), StandardCharsets.UTF_8)) {
+            if (line.startsWith(L_SECTION_START)) {
+                inSection = true;
+            } else if (inSection && line.startsWith(L_SECTION_END)) {
+                break;
+            } else if (inSection && line.startsWith("CREATE")) {
+                statements.add(line);
+            }
+        }
+
+        return statements;
+    }
+
+    private static final class Transfer {
+
+        private Long id;
+
+        private final Long locationToId;
+
+        private final Long locationFromId;
+
+        private final Long productId;
+
+        private BigDecimal quantity;
+
+        private Timestamp time;
+
+        private Transfer(final Long locationToId, final Long locationFromId, final Long productId, final BigDecimal quantity,
+                final Timestamp time) {
+            this.locationToId = locationToId;
+            this.locationFromId = locationFromId;
+            this.productId = productId;
+            this.quantity = quantity;
+            this.time = time;
+        }
+
+    }
+
+    private static final class Correction {
+
+        private final Long locationId;
+
+        private final Long productId;
+
+        private final Timestamp date;
+
+        private final BigDecimal found;
+
+        private Correction(final Long locationId, final Long productId, final Timestamp date, final BigDecimal found) {
+            this.locationId = locationId;
+            this.productId = productId;
+            this.date = date;
+            this.found = found;
+        }
+
+    }
+
+}
@@ -0,0 +1,230 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.qcadoo.mes.materialFlowResources.service.ResourceStockServiceImpl;
+import com.qcadoo.mes.materialFlowResources.service.WarehouseStockService;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Accepts documents concurrently through ResourceStockServiceImpl and checks that no resource stock update is lost and that
+ * concurrent first receipts end up in one stock row. Needs PostgreSQL database (9.5 or newer), run with
+ * -DtestDbJdbcUrl=jdbc:postgresql:mes_test (and optionally -DtestDbUsername, -DtestDbPassword), skipped otherwise. Tables are
+ * created in temporary schema, which is dropped afterwards.
+ */
+public class ResourceStockConcurrencyTest {
+
+    private static final String L_VIEWS_SQL = "src/main/resources/views.sql";
+
+    private static final String L_UNIQUE_INDEX = "CREATE UNIQUE INDEX materialflowresources_resourcestock_location_product_idx";
+
+    private static final int L_THREADS = 8;
+
+    private static final int L_ACCEPTANCES_PER_THREAD = 50;
+
+    private static final BigDecimal L_INITIAL_QUANTITY = new BigDecimal("1000");
+
+    private final String jdbcUrl = System.getProperty("testDbJdbcUrl");
+
+    private final String schema = "resourcestock_test_" + System.currentTimeMillis();
+
+    private Connection connection;
+
+    private Entity location;
+
+    private Entity storedProduct;
+
+    private Entity newProduct;
+
+    private WarehouseStockService warehouseStockService;
+
+    @Before
+    public void init() throws SQLException, IOException {
+        assumeTrue(jdbcUrl != null);
+
+        connection = connect();
+
+        execute(connection, "CREATE SCHEMA " + schema);
+        execute(connection, "SET search_path TO " + schema);
+        execute(connection, "CREATE TABLE materialflowresources_resourcestock (id bigserial PRIMARY KEY, location_id bigint, "
+                + "product_id bigint, quantity numeric(14, 5), reservedquantity numeric(14, 5), "
+                + "availablequantity numeric(14, 5), orderedquantity numeric(14, 5), minimumstate numeric(14, 5))");
+        execute(connection, readUniqueIndexStatement());
+        execute(connection, "INSERT INTO materialflowresources_resourcestock (location_id, product_id, quantity, "
+                + "reservedquantity, availablequantity, orderedquantity, minimumstate) VALUES (1, 11, " + L_INITIAL_QUANTITY
+                + ", 0, " + L_INITIAL_QUANTITY + ", 0, 0)");
+
+        location = mockEntity(1L);
+        storedProduct = mockEntity(11L);
+        newProduct = mockEntity(12L);
+
+        warehouseStockService = mock(WarehouseStockService.class);
+        given(warehouseStockService.getOrderedQuantity(anyLong(), anyLong())).willReturn(BigDecimal.ZERO);
+        given(warehouseStockService.getMinimumState(anyLong(), anyLong())).willReturn(BigDecimal.ZERO);
+    }
+
+    @After
+    public void cleanUp() throws SQLException {
+        if (connection != null) {
+            execute(connection, "DROP SCHEMA " + schema + " CASCADE");
+
+            connection.close();
+        }
+    }
+
+    @Test
+    public void shouldKeepResourceStocksConsistentUnderConcurrentAcceptances() throws Exception {
+        // given
+        ExecutorService executor = Executors.newFixedThreadPool(L_THREADS);
+        List<Future<Void>> acceptances = new ArrayList<Future<Void>>();
+
+        // when
+        for (int thread = 0; thread < L_THREADS; thread++) {
+            acceptances.add(executor.submit(new Callable<Void>() {
+
+                @Override
+                public Void call() throws Exception {
+                    acceptDocuments();
+
+                    return null;
+                }
+
+            }));
+        }
+
+        for (Future<Void> acceptance : acceptances) {
+            acceptance.get(5, TimeUnit.MINUTES);
+        }
+
+        executor.shutdown();
+
+        // then
+        BigDecimal acceptanceCount = new BigDecimal(L_THREADS * L_ACCEPTANCES_PER_THREAD);
+
+        assertStock(storedProduct, 1, L_INITIAL_QUANTITY.subtract(acceptanceCount),
+                new BigDecimal("0.5").multiply(acceptanceCount),
+                L_INITIAL_QUANTITY.subtract(new BigDecimal("1.5").multiply(acceptanceCount)));
+        assertStock(newProduct, 1, new BigDecimal(2).multiply(acceptanceCount), BigDecimal.ZERO,
+                new BigDecimal(2).multiply(acceptanceCount));
+    }
+
+    // each acceptance releases one piece of stored product, reserves half a piece of it and receives two pieces of new product
+    private void acceptDocuments() throws SQLException {
+        try (Connection threadConnection = connect()) {
+            execute(threadConnection, "SET search_path TO " + schema);
+
+            threadConnection.setAutoCommit(false);
+
+            ResourceStockServiceImpl resourceStockService = new ResourceStockServiceImpl();
+
+            ReflectionTestUtils.setField(resourceStockService, "jdbcTemplate",
+                    new NamedParameterJdbcTemplate(new SingleConnectionDataSource(threadConnection, true)));
+            ReflectionTestUtils.setField(resourceStockService, "warehouseStockService", warehouseStockService);
+
+            for (int i = 0; i < L_ACCEPTANCES_PER_THREAD; i++) {
+                resourceStockService.removeResourceStock(storedProduct, location, BigDecimal.ONE);
+                resourceStockService.updateResourceStock(storedProduct, location, new BigDecimal("0.5"));
+                resourceStockService.addResourceStock(newProduct, location, new BigDecimal("2"));
+
+                threadConnection.commit();
+            }
+        }
+    }
+
+    private void assertStock(final Entity product, final int expectedRows, final BigDecimal expectedQuantity,
+            final BigDecimal expectedReservedQuantity, final BigDecimal expectedAvailableQuantity) throws SQLException {
+        try (Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT count(*), sum(quantity), sum(reservedquantity), "
+                        + "sum(availablequantity) FROM materialflowresources_resourcestock WHERE product_id = "
+                        + product.getId())) {
+            resultSet.next();
+
+            assertEquals(expectedRows, resultSet.getInt(1));
+            assertEquals(0, expectedQuantity.compareTo(resultSet.getBigDecimal(2)));
+            assertEquals(0, expectedReservedQuantity.compareTo(resultSet.getBigDecimal(3)));
+            assertEquals(0, expectedAvailableQuantity.compareTo(resultSet.getBigDecimal(4)));
+        }
+    }
+
+    private Entity mockEntity(final Long id) {
+        Entity entity = mock(Entity.class);
+
+        given(entity.getId()).willReturn(id);
+
+        return entity;
+    }
+
+    private Connection connect() throws SQLException {
+        return DriverManager.getConnection(jdbcUrl, System.getProperty("testDbUsername", "postgres"),
+                System.getProperty("testDbPassword", "postgres123"));
+    }
+
+    private void execute(final Connection connection, final String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private String readUniqueIndexStatement() throws IOException {
+        for (String line : Files.readAllLines(Paths.get(L_VIEWS_SQL), StandardCharsets.UTF_8)) {
+            if (line.startsWith(L_UNIQUE_INDEX)) {
+                return line;
+            }
+        }
+
+        throw new IllegalStateException("No resource stock unique index in " + L_VIEWS_SQL);
+    }
+
+}
@@ -0,0 +1,273 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.materialFlowResources.service.WarehouseStockService;
+
+/**
+ * Runs the stock queries of WarehouseStockService and the warehouse stock list view against a small fixture: product 11 is
+ * stored in two locations, product 12 is partly reserved, product 13 has no stock and is only ordered, product 14 has
+ * resources but no resource stock yet. Needs PostgreSQL database, run with -DtestDbJdbcUrl=jdbc:postgresql:mes_test (and
+ * optionally -DtestDbUsername, -DtestDbPassword), skipped otherwise. Tables are created in temporary schema, which is dropped
+ * afterwards.
+ */
+public class WarehouseStockQueriesTest {
+
+    private static final String L_VIEWS_SQL = "src/main/resources/views.sql";
+
+    private static final String L_WAREHOUSE_STOCK_LIST_VIEW = "CREATE OR REPLACE VIEW "
+            + "materialflowresources_warehousestocklistdto_internal";
+
+    private final String jdbcUrl = System.getProperty("testDbJdbcUrl");
+
+    private final String schema = "warehousestock_test_" + System.currentTimeMillis();
+
+    private Connection connection;
+
+    private WarehouseStockService warehouseStockService;
+
+    @Before
+    public void init() throws SQLException {
+        assumeTrue(jdbcUrl != null);
+
+        connection = DriverManager.getConnection(jdbcUrl, System.getProperty("testDbUsername", "postgres"),
+                System.getProperty("testDbPassword", "postgres123"));
+
+        execute("CREATE SCHEMA " + schema);
+        execute("SET search_path TO " + schema);
+        execute("CREATE TABLE materialflowresources_resource (id bigserial PRIMARY KEY, location_id bigint, product_id bigint, "
+                + "quantity numeric(14, 5))");
+        execute("CREATE TABLE materialflowresources_reservation (id bigserial PRIMARY KEY, location_id bigint, "
+                + "product_id bigint, quantity numeric(14, 5))");
+        execute("CREATE TABLE deliveries_delivery (id bigint PRIMARY KEY, location_id bigint, active boolean, "
+                + "state varchar(255))");
+        execute("CREATE TABLE deliveries_orderedproduct (id bigint PRIMARY KEY, delivery_id bigint, product_id bigint, "
+                + "orderedquantity numeric(14, 5))");
+        execute("CREATE TABLE warehouseminimalstate_warehouseminimumstate (id bigint PRIMARY KEY, location_id bigint, "
+                + "product_id bigint, minimumstate numeric(14, 5))");
+        execute("CREATE TABLE materialflowresources_resourcestock (id bigserial PRIMARY KEY, location_id bigint, "
+                + "product_id bigint, quantity numeric(14, 5), reservedquantity numeric(14, 5), "
+                + "availablequantity numeric(14, 5), orderedquantity numeric(14, 5), minimumstate numeric(14, 5))");
+
+        execute("INSERT INTO materialflowresources_resource (location_id, product_id, quantity) VALUES (1, 11, 10), "
+                + "(1, 11, 5), (1, 12, 8), (2, 11, 4), (1, 14, 3)");
+        execute("INSERT INTO materialflowresources_reservation (location_id, product_id, quantity) VALUES (1, 12, 2)");
+        execute("INSERT INTO deliveries_delivery VALUES (1, 1, true, '02prepared'), (2, 1, true, '06received'), "
+                + "(3, 1, false, '01draft'), (4, 2, true, '05approved')");
+        execute("INSERT INTO deliveries_orderedproduct VALUES (1, 1, 11, 6), (2, 1, 13, 9), (3, 2, 11, 100), (4, 3, 11, 50), "
+                + "(5, 4, 11, 7), (6, 1, 11, 1)");
+        execute("INSERT INTO warehouseminimalstate_warehouseminimumstate VALUES (1, 1, 11, 5), (2, 1, 11, 2), (3, 2, 12, 4)");
+        execute("INSERT INTO materialflowresources_resourcestock (location_id, product_id, quantity, reservedquantity, "
+                + "availablequantity, orderedquantity, minimumstate) VALUES (1, 11, 15, 0, 15, 7, 7), (1, 12, 8, 2, 6, 0, 0), "
+                + "(2, 11, 4, 0, 4, 7, 0)");
+
+        warehouseStockService = new WarehouseStockService();
+        ReflectionTestUtils.setField(warehouseStockService, "jdbcTemplate",
+                new NamedParameterJdbcTemplate(new SingleConnectionDataSource(connection, true)));
+    }
+
+    @After
+    public void cleanUp() throws SQLException {
+        if (connection != null) {
+            execute("DROP SCHEMA " + schema + " CASCADE");
+
+            connection.close();
+        }
+    }
+
+    @Test
+    public void shouldReturnOrderedQuantityOfActiveOrderingDeliveriesAtLocation() {
+        // when & then
+        assertQuantity("7", warehouseStockService.getOrderedQuantity(1L, 11L));
+        assertQuantity("7", warehouseStockService.getOrderedQuantity(2L, 11L));
+        assertQuantity("9", warehouseStockService.getOrderedQuantity(1L, 13L));
+        assertQuantity("0", warehouseStockService.getOrderedQuantity(1L, 12L));
+        assertQuantity("0", warehouseStockService.getOrderedQuantity(2L, 13L));
+    }
+
+    @Test
+    public void shouldReturnMinimumStateSummedPerLocationAndProduct() {
+        // when & then
+        assertQuantity("7", warehouseStockService.getMinimumState(1L, 11L));
+        assertQuantity("4", warehouseStockService.getMinimumState(2L, 12L));
+        assertQuantity("0", warehouseStockService.getMinimumState(1L, 12L));
+        assertQuantity("0", warehouseStockService.getMinimumState(1L, 13L));
+    }
+
+    @Test
+    public void shouldUpdateOrderedQuantityWithPendingQuantityOfSavedOrderedProduct() throws SQLException {
+        // when
+        warehouseStockService.updateOrderedQuantity(1L, 11L, null, 6L, new BigDecimal("4"));
+        warehouseStockService.updateOrderedQuantity(1L, 13L, null, 2L, new BigDecimal("3"));
+
+        // then
+        assertStock(1L, 11L, "15", "0", "15", "10", "7");
+        assertStock(2L, 11L, "4", "0", "4", "7", "0");
+        assertNoStock(1L, 13L);
+    }
+
+    @Test
+    public void shouldUpdateOrderedQuantityWithoutDeletedDelivery() throws SQLException {
+        // when
+        warehouseStockService.updateOrderedQuantity(1L, 11L, 1L, null, BigDecimal.ZERO);
+
+        // then
+        assertStock(1L, 11L, "15", "0", "15", "0", "7");
+    }
+
+    @Test
+    public void shouldUpdateMinimumStateWithPendingMinimumState() throws SQLException {
+        // when
+        warehouseStockService.updateMinimumState(1L, 11L, 1L, new BigDecimal("3"));
+        warehouseStockService.updateMinimumState(1L, 12L, null, new BigDecimal("1.5"));
+        warehouseStockService.updateMinimumState(2L, 12L, 3L, new BigDecimal("6"));
+
+        // then
+        assertStock(1L, 11L, "15", "0", "15", "7", "5");
+        assertStock(1L, 12L, "8", "2", "6", "0", "1.5");
+        assertNoStock(2L, 12L);
+    }
+
+    @Test
+    public void shouldRebuildInconsistentResourceStocks() throws SQLException {
+        // given
+        execute("UPDATE materialflowresources_resourcestock SET reservedquantity = 0 WHERE location_id = 1 AND product_id = 12");
+        execute("INSERT INTO materialflowresources_resourcestock (location_id, product_id, quantity, reservedquantity, "
+                + "availablequantity, orderedquantity, minimumstate) VALUES (1, 15, 5, 0, 5, 0, 0)");
+
+        // when
+        long inconsistentResourceStocks = warehouseStockService.countInconsistentResourceStocks();
+
+        warehouseStockService.rebuildResourceStocksIfInconsistent();
+
+        // then
+        assertEquals(2L, inconsistentResourceStocks);
+        assertEquals(0L, warehouseStockService.countInconsistentResourceStocks());
+        assertStock(1L, 11L, "15", "0", "15", "7", "7");
+        assertStock(1L, 12L, "8", "2", "6", "0", "0");
+        assertStock(2L, 11L, "4", "0", "4", "7", "0");
+        assertStock(1L, 14L, "3", "0", "3", "0", "0");
+        assertStock(1L, 15L, "0", "0", "0", "0", "0");
+        assertNoStock(1L, 13L);
+    }
+
+    @Test
+    public void shouldListOnlyStocksWithQuantity() throws SQLException, IOException {
+        // given
+        execute("INSERT INTO materialflowresources_resourcestock (location_id, product_id, quantity, reservedquantity, "
+                + "availablequantity, orderedquantity, minimumstate) VALUES (1, 13, 0, 0, 0, 9, 0)");
+        execute(readStatement(L_WAREHOUSE_STOCK_LIST_VIEW));
+
+        // when
+        List<String> rows = Lists.newArrayList();
+
+        try (Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT location_id, product_id, quantity, orderedquantity, "
+                        + "minimumstate FROM materialflowresources_warehousestocklistdto_internal "
+                        + "ORDER BY location_id, product_id")) {
+            while (resultSet.next()) {
+                rows.add(resultSet.getLong(1) + "/" + resultSet.getLong(2) + ": "
+                        + resultSet.getBigDecimal(3).stripTrailingZeros().toPlainString() + ", "
+                        + resultSet.getBigDecimal(4).stripTrailingZeros().toPlainString() + ", "
+                        + resultSet.getBigDecimal(5).stripTrailingZeros().toPlainString());
+            }
+        }
+
+        // then
+        assertEquals(Lists.newArrayList("1/11: 15, 7, 7", "1/12: 8, 0, 0", "2/11: 4, 7, 0"), rows);
+    }
+
+    private void assertStock(final Long locationId, final Long productId, final String quantity, final String reservedQuantity,
+            final String availableQuantity, final String orderedQuantity, final String minimumState) throws SQLException {
+        try (Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT quantity, reservedquantity, availablequantity, "
+                        + "orderedquantity, minimumstate FROM materialflowresources_resourcestock WHERE location_id = "
+                        + locationId + " AND product_id = " + productId)) {
+            assertTrue(resultSet.next());
+
+            assertQuantity(quantity, resultSet.getBigDecimal(1));
+            assertQuantity(reservedQuantity, resultSet.getBigDecimal(2));
+            assertQuantity(availableQuantity, resultSet.getBigDecimal(3));
+            assertQuantity(orderedQuantity, resultSet.getBigDecimal(4));
+            assertQuantity(minimumState, resultSet.getBigDecimal(5));
+            assertFalse(resultSet.next());
+        }
+    }
+
+    private void assertNoStock(final Long locationId, final Long productId) throws SQLException {
+        try (Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT count(*) FROM materialflowresources_resourcestock "
+                        + "WHERE location_id = " + locationId + " AND product_id = " + productId)) {
+            resultSet.next();
+
+            assertEquals(0, resultSet.getInt(1));
+        }
+    }
+
+    private void assertQuantity(final String expected, final BigDecimal actual) {
+        assertEquals(expected + " <> " + actual, 0, new BigDecimal(expected).compareTo(actual));
+    }
+
+    private void execute(final String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private String readStatement(final String prefix) throws IOException {
+        for (String line : Files.readAllLines(Paths.get(L_VIEWS_SQL), StandardCharsets.UTF_8)) {
+            if (line.startsWith(prefix)) {
+                return line;
+            }
+        }
+
+        throw new IllegalStateException("No statement starting with " + prefix + " in " + L_VIEWS_SQL);
+    }
+
+}
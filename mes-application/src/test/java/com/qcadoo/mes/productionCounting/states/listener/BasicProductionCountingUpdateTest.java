@@ -0,0 +1,276 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionCounting.states.listener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.productionCounting.constants.TrackingOperationProductInComponentFields;
+import com.qcadoo.mes.productionCounting.constants.TrackingOperationProductOutComponentFields;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.NumberService;
+
+/**
+ * Applies basic production counting updates of ProductionTrackingListenerService to PostgreSQL database, concurrently and with
+ * negative results. Run with -DtestDbJdbcUrl=jdbc:postgresql:mes_test (and optionally -DtestDbUsername, -DtestDbPassword),
+ * skipped otherwise. The table is created in temporary schema, which is dropped afterwards.
+ */
+public class BasicProductionCountingUpdateTest {
+
+    private static final Map<Long, Long> L_BASIC_PRODUCTION_COUNTING_IDS_BY_PRODUCT = ImmutableMap.of(11L, 1L, 12L, 2L, 13L, 3L);
+
+    private final String jdbcUrl = System.getProperty("testDbJdbcUrl");
+
+    private final String schema = "basicproductioncounting_test_" + System.currentTimeMillis();
+
+    private Connection connection;
+
+    private ProductionTrackingListenerService productionTrackingListenerService;
+
+    @Before
+    public void init() throws SQLException {
+        assumeTrue(jdbcUrl != null);
+
+        connection = connect();
+
+        execute(connection, "CREATE SCHEMA " + schema);
+        execute(connection, "SET search_path TO " + schema);
+        execute(connection, "CREATE TABLE basicproductioncounting_basicproductioncounting (id bigint PRIMARY KEY, "
+                + "usedquantity numeric(14, 5), producedquantity numeric(14, 5))");
+
+        NumberService numberService = mock(NumberService.class);
+        given(numberService.getMathContext()).willReturn(MathContext.DECIMAL64);
+
+        productionTrackingListenerService = new ProductionTrackingListenerService();
+        ReflectionTestUtils.setField(productionTrackingListenerService, "numberService", numberService);
+    }
+
+    @After
+    public void cleanUp() throws SQLException {
+        if (connection != null) {
+            execute(connection, "DROP SCHEMA " + schema + " CASCADE");
+
+            connection.close();
+        }
+    }
+
+    @Test
+    public void shouldApplyBothConcurrentDeltas() throws Exception {
+        // given
+        execute(connection, "INSERT INTO basicproductioncounting_basicproductioncounting VALUES (1, 10, 20)");
+
+        Connection firstConnection = connectToSchema();
+        Connection secondConnection = connectToSchema();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            // when
+            update(firstConnection, Lists.newArrayList(inComponent(11L, "2")), Lists.newArrayList(outComponent(11L, "3")),
+                    productionTrackingListenerService.new Addition());
+
+            Future<?> secondUpdate = executor.submit(() -> {
+                update(secondConnection, Lists.newArrayList(inComponent(11L, "4")),
+                        Lists.newArrayList(outComponent(11L, "5")), productionTrackingListenerService.new Substraction());
+                secondConnection.commit();
+
+                return null;
+            });
+
+            assertWaitsForLock(secondUpdate);
+
+            firstConnection.commit();
+            secondUpdate.get(1, TimeUnit.MINUTES);
+        } finally {
+            executor.shutdown();
+            firstConnection.close();
+            secondConnection.close();
+        }
+
+        // then
+        assertQuantities(1L, "8", "18");
+    }
+
+    @Test
+    public void shouldLeaveWholeRowUnchangedWhenAnyQuantityWouldBeNegative() throws SQLException {
+        // given
+        execute(connection, "INSERT INTO basicproductioncounting_basicproductioncounting VALUES (1, 1, 10), (2, 5, 5), "
+                + "(3, NULL, NULL)");
+
+        // when
+        update(connection,
+                Lists.newArrayList(inComponent(11L, "2"), inComponent(12L, "1")),
+                Lists.newArrayList(outComponent(11L, "3"), outComponent(12L, "3"), outComponent(13L, "-2")),
+                productionTrackingListenerService.new Substraction());
+
+        // then
+        assertQuantities(1L, "1", "10");
+        assertQuantities(2L, "4", "2");
+        assertQuantities(3L, null, "2");
+    }
+
+    @Test
+    public void shouldCheckNegativeResultAgainstConcurrentlyCommittedQuantities() throws Exception {
+        // given
+        execute(connection, "INSERT INTO basicproductioncounting_basicproductioncounting VALUES (1, 3, 3)");
+
+        Connection firstConnection = connectToSchema();
+        Connection secondConnection = connectToSchema();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            // when
+            update(firstConnection, Lists.newArrayList(inComponent(11L, "2")), Lists.newArrayList(outComponent(11L, "1")),
+                    productionTrackingListenerService.new Substraction());
+
+            Future<?> secondUpdate = executor.submit(() -> {
+                update(secondConnection, Lists.newArrayList(inComponent(11L, "2")),
+                        Lists.newArrayList(outComponent(11L, "1")), productionTrackingListenerService.new Substraction());
+                secondConnection.commit();
+
+                return null;
+            });
+
+            assertWaitsForLock(secondUpdate);
+
+            firstConnection.commit();
+            secondUpdate.get(1, TimeUnit.MINUTES);
+        } finally {
+            executor.shutdown();
+            firstConnection.close();
+            secondConnection.close();
+        }
+
+        // then
+        assertQuantities(1L, "1", "2");
+    }
+
+    private void update(final Connection updateConnection, final List<Entity> inComponents, final List<Entity> outComponents,
+            final ProductionTrackingListenerService.Operation operation) {
+        List<SqlParameterSource> updates = productionTrackingListenerService.getBasicProductionCountingUpdates(
+                L_BASIC_PRODUCTION_COUNTING_IDS_BY_PRODUCT, inComponents, outComponents, operation);
+
+        new NamedParameterJdbcTemplate(new SingleConnectionDataSource(updateConnection, true)).batchUpdate(
+                ProductionTrackingListenerService.UPDATE_BASIC_PRODUCTION_COUNTING_QUERY,
+                updates.toArray(new SqlParameterSource[updates.size()]));
+    }
+
+    private void assertWaitsForLock(final Future<?> update) throws Exception {
+        try {
+            update.get(500, TimeUnit.MILLISECONDS);
+
+            fail("Update of locked row should wait for the other transaction");
+        } catch (TimeoutException e) {
+            // the row is locked by the first, not yet committed update
+        }
+    }
+
+    private void assertQuantities(final Long id, final String usedQuantity, final String producedQuantity)
+            throws SQLException {
+        try (Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT usedquantity, producedquantity "
+                        + "FROM basicproductioncounting_basicproductioncounting WHERE id = " + id)) {
+            resultSet.next();
+
+            assertQuantity(usedQuantity, resultSet.getBigDecimal(1));
+            assertQuantity(producedQuantity, resultSet.getBigDecimal(2));
+        }
+    }
+
+    private void assertQuantity(final String expected, final BigDecimal actual) {
+        if (expected == null) {
+            assertNull(actual);
+        } else {
+            assertEquals(0, new BigDecimal(expected).compareTo(actual));
+        }
+    }
+
+    private Entity inComponent(final Long productId, final String quantity) {
+        return mockComponent(productId, TrackingOperationProductInComponentFields.USED_QUANTITY, quantity);
+    }
+
+    private Entity outComponent(final Long productId, final String quantity) {
+        return mockComponent(productId, TrackingOperationProductOutComponentFields.USED_QUANTITY, quantity);
+    }
+
+    private Entity mockComponent(final Long productId, final String quantityField, final String quantity) {
+        Entity product = mock(Entity.class);
+        Entity component = mock(Entity.class);
+
+        given(product.getId()).willReturn(productId);
+        given(component.getBelongsToField("product")).willReturn(product);
+        given(component.getDecimalField(quantityField)).willReturn(new BigDecimal(quantity));
+
+        return component;
+    }
+
+    private Connection connectToSchema() throws SQLException {
+        Connection schemaConnection = connect();
+
+        execute(schemaConnection, "SET search_path TO " + schema);
+        schemaConnection.setAutoCommit(false);
+
+        return schemaConnection;
+    }
+
+    private Connection connect() throws SQLException {
+        return DriverManager.getConnection(jdbcUrl, System.getProperty("testDbUsername", "postgres"),
+                System.getProperty("testDbPassword", "postgres123"));
+    }
+
+    private void execute(final Connection connection, final String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+}
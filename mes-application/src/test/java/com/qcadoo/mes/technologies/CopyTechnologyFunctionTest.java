@@ -0,0 +1,544 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks technologies_copytechnology function from views.sql. It copies technologies without DataDefinition.copy, so model
+ * fields, which are not copyable or get defaults on copy, are checked against the function. Copying itself needs PostgreSQL
+ * database, run with -DtestDbJdbcUrl=jdbc:postgresql:mes_test (and optionally -DtestDbUsername, -DtestDbPassword), skipped
+ * otherwise. Tables are created in temporary schema, which is dropped afterwards.
+ */
+public class CopyTechnologyFunctionTest {
+
+    private static final String L_VIEWS_SQL = "src/main/resources/views.sql";
+
+    private static final String L_PLUGINS = "../mes-plugins";
+
+    private static final String L_TECHNOLOGIES_MODEL = L_PLUGINS
+            + "/mes-plugins-technologies/src/main/resources/technologies/model/";
+
+    private static final String L_TIME_CALCULATION_MODEL = L_PLUGINS
+            + "/mes-plugins-time-norms-for-operations/src/main/resources/timeNormsForOperations/model/"
+            + "techOperCompTimeCalculation.xml";
+
+    private static final String L_SECTION_START = "-- TYPE: private copies of pattern technologies for orders";
+
+    private static final String L_SECTION_END = "-- end";
+
+    private static final Pattern L_NOT_COPYABLE_FIELD = Pattern
+            .compile("<(?:model:)?(\\w+)\\s+name=\"(\\w+)\"[^>]*?copyable=\"false\"", Pattern.DOTALL);
+
+    private static final Pattern L_MODEL_FIELD = Pattern.compile("<model:model-field([^>]*)>(.*?)</model:model-field>",
+            Pattern.DOTALL);
+
+    private static final Pattern L_DEFAULT_FIELD = Pattern.compile("<(\\w+)\\s+name=\"(\\w+)\"[^>]*?default=\"(\\w+)\"");
+
+    private static final String[] L_OPERATION_FIELD_COLUMNS = { "tpz integer", "tj integer", "productioninonecycle numeric",
+            "nextoperationafterproducedtype varchar(255)", "nextoperationafterproducedquantity numeric",
+            "nextoperationafterproducedquantityunit varchar(255)", "timenextoperation integer", "machineutilization numeric",
+            "laborutilization numeric", "productioninonecycleunit varchar(255)", "areproductquantitiesdivisible boolean",
+            "istjdivisible boolean", "pieceworkcost numeric", "numberofoperations integer", "laborhourlycost numeric",
+            "machinehourlycost numeric", "issubcontracting boolean" };
+
+    private static final Pattern L_TIME_CALCULATION_INSERT = Pattern
+            .compile("INSERT INTO timenormsforoperations_techopercomptimecalculation \\(id, ([^)]*)\\) "
+                    + "SELECT timecalculationid, (.*?) FROM technologies_copiedoperationcomponent");
+
+    private final String jdbcUrl = System.getProperty("testDbJdbcUrl");
+
+    private final String schema = "copytechnology_test_" + System.currentTimeMillis();
+
+    private Connection connection;
+
+    @Before
+    public void init() throws SQLException, IOException {
+        if (jdbcUrl == null) {
+            return;
+        }
+
+        connection = DriverManager.getConnection(jdbcUrl, System.getProperty("testDbUsername", "postgres"),
+                System.getProperty("testDbPassword", "postgres123"));
+
+        execute("CREATE SCHEMA " + schema);
+        execute("SET search_path TO " + schema);
+        execute("CREATE TABLE technologies_technology (id bigserial PRIMARY KEY, number varchar(255), name varchar(2048), "
+                + "product_id bigint, technologyprototype_id bigint, master boolean, externalsynchronized boolean, "
+                + "template boolean, state varchar(255), technologytype varchar(255), description varchar(2048))");
+        execute("CREATE TABLE technologies_technologyoperationcomponent (id bigserial PRIMARY KEY, technology_id bigint, "
+                + "parent_id bigint, operation_id bigint, nodenumber varchar(255), tj integer, "
+                + "techopercomptimecalculation_id bigint, hascorrections boolean)");
+        execute("CREATE TABLE technologies_operationproductincomponent (id bigserial PRIMARY KEY, operationcomponent_id bigint, "
+                + "product_id bigint, quantity numeric(14, 5))");
+        execute("CREATE TABLE technologies_operationproductoutcomponent (id bigserial PRIMARY KEY, operationcomponent_id bigint, "
+                + "product_id bigint, quantity numeric(14, 5))");
+        execute("CREATE TABLE jointable_technologyoperationcomponent_workstation (technologyoperationcomponent_id bigint, "
+                + "workstation_id bigint)");
+        execute("CREATE TABLE timenormsforoperations_techopercomptimecalculation (id bigserial PRIMARY KEY, "
+                + "operationoffset integer, effectiveoperationrealizationtime integer, effectivedatefrom timestamp, "
+                + "effectivedateto timestamp, duration integer, machineworktime integer, laborworktime integer)");
+
+        for (String statement : readCopyTechnologyStatements()) {
+            execute(statement);
+        }
+    }
+
+    @After
+    public void cleanUp() throws SQLException {
+        if (connection != null) {
+            execute("DROP SCHEMA " + schema + " CASCADE");
+
+            connection.close();
+        }
+    }
+
+    @Test
+    public void shouldNotCopyFieldsWhichAreNotCopyable() throws IOException {
+        // given
+        String function = readCopyTechnologyFunction();
+
+        // when
+        Set<String> technologyColumns = getNotCopyableColumns("technology");
+        Set<String> operationComponentColumns = getNotCopyableColumns("technologyOperationComponent");
+
+        // then
+        assertFalse(technologyColumns.isEmpty());
+        assertFalse(operationComponentColumns.isEmpty());
+
+        for (String column : technologyColumns) {
+            assertTrue(column, getExcludedColumns(function, "technologies_technology").contains(column));
+        }
+        for (String column : operationComponentColumns) {
+            assertTrue(column, getExcludedColumns(function, "technologies_technologyoperationcomponent").contains(column));
+        }
+    }
+
+    @Test
+    public void shouldCreateTimeCalculationsWithModelDefaults() throws IOException {
+        // given
+        String model = new String(Files.readAllBytes(Paths.get(L_TIME_CALCULATION_MODEL)), StandardCharsets.UTF_8);
+        Map<String, String> modelDefaults = new TreeMap<String, String>();
+
+        Matcher fieldMatcher = L_DEFAULT_FIELD.matcher(model);
+
+        while (fieldMatcher.find()) {
+            modelDefaults.put(fieldMatcher.group(2).toLowerCase(), fieldMatcher.group(3));
+        }
+
+        // when
+        Matcher insertMatcher = L_TIME_CALCULATION_INSERT.matcher(readCopyTechnologyFunction());
+
+        assertTrue(insertMatcher.find());
+
+        List<String> columns = Arrays.asList(insertMatcher.group(1).split(",\\s*"));
+        List<String> values = Arrays.asList(insertMatcher.group(2).split(",\\s*"));
+        Map<String, String> functionDefaults = new TreeMap<String, String>();
+
+        for (int i = 0; i < columns.size(); i++) {
+            functionDefaults.put(columns.get(i), values.get(i));
+        }
+
+        // then
+        assertEquals(modelDefaults, functionDefaults);
+    }
+
+    @Test
+    public void shouldCopyTechnologyWithOperationTree() throws SQLException {
+        assumeTrue(connection != null);
+
+        // given
+        long technologyId = createPatternTechnology();
+
+        // when
+        long copyId = copyTechnology(technologyId, "T1 - O1 - 001");
+
+        // then
+        Map<String, Object> copy = queryRow("SELECT * FROM technologies_technology WHERE id = " + copyId);
+
+        assertEquals("T1 - O1 - 001", copy.get("number"));
+        assertEquals("T1", copy.get("name"));
+        assertEquals(100L, copy.get("product_id"));
+        assertEquals("pattern", copy.get("description"));
+        assertEquals(technologyId, copy.get("technologyprototype_id"));
+        assertEquals(false, copy.get("master"));
+        assertEquals(true, copy.get("externalsynchronized"));
+        assertEquals(false, copy.get("template"));
+        assertEquals("01draft", copy.get("state"));
+        assertEquals("01patternTechnology", copy.get("technologytype"));
+
+        assertEquals(getOperationTree(technologyId), getOperationTree(copyId));
+        assertEquals(getProducts(technologyId, "technologies_operationproductincomponent"),
+                getProducts(copyId, "technologies_operationproductincomponent"));
+        assertEquals(getProducts(technologyId, "technologies_operationproductoutcomponent"),
+                getProducts(copyId, "technologies_operationproductoutcomponent"));
+        assertEquals(getWorkstations(technologyId), getWorkstations(copyId));
+
+        for (Map<String, Object> operationComponent : queryRows("SELECT * FROM technologies_technologyoperationcomponent "
+                + "WHERE technology_id = " + copyId)) {
+            assertNull(operationComponent.get("hascorrections"));
+
+            Map<String, Object> timeCalculation = queryRow("SELECT * FROM timenormsforoperations_techopercomptimecalculation "
+                    + "WHERE id = " + operationComponent.get("techopercomptimecalculation_id"));
+
+            assertNull(timeCalculation.get("operationoffset"));
+            assertNull(timeCalculation.get("effectivedatefrom"));
+            assertEquals(0, timeCalculation.get("duration"));
+            assertEquals(0, timeCalculation.get("machineworktime"));
+            assertEquals(0, timeCalculation.get("laborworktime"));
+        }
+
+        assertEquals(4L, queryRow("SELECT COUNT(DISTINCT techopercomptimecalculation_id) AS count "
+                + "FROM technologies_technologyoperationcomponent WHERE technology_id = " + copyId).get("count"));
+        assertEquals(4L, queryRow("SELECT COUNT(*) AS count FROM technologies_technologyoperationcomponent "
+                + "WHERE technology_id = " + technologyId + " AND hascorrections").get("count"));
+    }
+
+    @Test
+    public void shouldCopyTechnologyTwiceIntoSeparateTrees() throws SQLException {
+        assumeTrue(connection != null);
+
+        // given
+        long technologyId = createPatternTechnology();
+
+        // when
+        long firstCopyId = copyTechnology(technologyId, "T1 - O1 - 001");
+        long secondCopyId = copyTechnology(technologyId, "T1 - O2 - 001");
+
+        // then
+        assertNotEquals(firstCopyId, secondCopyId);
+        assertEquals(getOperationTree(firstCopyId), getOperationTree(secondCopyId));
+        assertEquals(8L, queryRow("SELECT COUNT(DISTINCT techopercomptimecalculation_id) AS count "
+                + "FROM technologies_technologyoperationcomponent WHERE technology_id IN (" + firstCopyId + ", " + secondCopyId
+                + ")").get("count"));
+    }
+
+    @Test
+    public void shouldCopyTechnologyWithoutOptionalPluginTables() throws SQLException {
+        assumeTrue(connection != null);
+
+        // given
+        long technologyId = createPatternTechnology();
+
+        execute("ALTER TABLE technologies_technologyoperationcomponent DROP COLUMN techopercomptimecalculation_id");
+        execute("DROP TABLE jointable_technologyoperationcomponent_workstation");
+
+        // when
+        long copyId = copyTechnology(technologyId, "T1 - O1 - 001");
+
+        // then
+        assertEquals(getOperationTree(technologyId), getOperationTree(copyId));
+    }
+
+    @Test
+    public void shouldFillPluginFieldsOfOperationComponentsAsOnCreateHooks() throws SQLException {
+        assumeTrue(connection != null);
+
+        // given
+        execute("CREATE TABLE technologies_operation (id bigint PRIMARY KEY)");
+        execute("CREATE TABLE basic_parameter (id bigserial PRIMARY KEY, unit varchar(255))");
+        addOperationFieldColumns("technologies_operation");
+        addOperationFieldColumns("technologies_technologyoperationcomponent");
+        execute("ALTER TABLE technologies_technologyoperationcomponent ADD COLUMN entitytype varchar(255)");
+
+        execute("INSERT INTO basic_parameter (unit) VALUES ('szt')");
+        execute("INSERT INTO technologies_operation (id, tpz, tj, productioninonecycle, pieceworkcost, laborhourlycost, "
+                + "issubcontracting) VALUES (50, 7, 70, 2, 3, 12.5, true)");
+
+        long technologyId = createPatternTechnology();
+
+        execute("UPDATE technologies_technologyoperationcomponent SET tj = NULL WHERE technology_id = " + technologyId
+                + " AND nodenumber = '1.2.'");
+        execute("UPDATE technologies_technologyoperationcomponent SET tpz = 1, productioninonecycleunit = 'kg', "
+                + "laborhourlycost = 30, issubcontracting = false WHERE technology_id = " + technologyId
+                + " AND nodenumber <> '1.2.'");
+
+        // when
+        long copyId = copyTechnology(technologyId, "T1 - O1 - 001");
+
+        // then
+        Map<String, Object> filled = queryRow("SELECT * FROM technologies_technologyoperationcomponent WHERE technology_id = "
+                + copyId + " AND nodenumber = '1.2.'");
+
+        assertEquals(7, filled.get("tpz"));
+        assertEquals(70, filled.get("tj"));
+        assertEquals(0, new BigDecimal(2).compareTo((BigDecimal) filled.get("productioninonecycle")));
+        assertEquals("szt", filled.get("productioninonecycleunit"));
+        assertEquals(0, new BigDecimal(3).compareTo((BigDecimal) filled.get("pieceworkcost")));
+        assertEquals(0, new BigDecimal("12.5").compareTo((BigDecimal) filled.get("laborhourlycost")));
+        assertEquals(true, filled.get("issubcontracting"));
+
+        Map<String, Object> kept = queryRow("SELECT * FROM technologies_technologyoperationcomponent WHERE technology_id = "
+                + copyId + " AND nodenumber = '1.1.'");
+
+        assertEquals(1, kept.get("tpz"));
+        assertEquals(4, kept.get("tj"));
+        assertNull(kept.get("productioninonecycle"));
+        assertEquals("kg", kept.get("productioninonecycleunit"));
+        assertNull(kept.get("pieceworkcost"));
+        assertEquals(0, new BigDecimal(30).compareTo((BigDecimal) kept.get("laborhourlycost")));
+        assertEquals(false, kept.get("issubcontracting"));
+    }
+
+    private void addOperationFieldColumns(final String tableName) throws SQLException {
+        for (String column : L_OPERATION_FIELD_COLUMNS) {
+            execute("ALTER TABLE " + tableName + " ADD COLUMN IF NOT EXISTS " + column);
+        }
+    }
+
+    private long createPatternTechnology() throws SQLException {
+        long technologyId = (Long) queryRow("INSERT INTO technologies_technology (number, name, product_id, master, "
+                + "externalsynchronized, template, state, technologytype, description) VALUES ('T1', 'T1', 100, true, false, "
+                + "false, '02accepted', NULL, 'pattern') RETURNING id").get("id");
+
+        long root = createOperationComponent(technologyId, null, "1.");
+        long first = createOperationComponent(technologyId, root, "1.1.");
+        createOperationComponent(technologyId, root, "1.2.");
+        createOperationComponent(technologyId, first, "1.1.1.");
+
+        execute("INSERT INTO technologies_operationproductincomponent (operationcomponent_id, product_id, quantity) "
+                + "SELECT id, 200 + tj, tj * 1.5 FROM technologies_technologyoperationcomponent WHERE technology_id = "
+                + technologyId);
+        execute("INSERT INTO technologies_operationproductoutcomponent (operationcomponent_id, product_id, quantity) "
+                + "SELECT id, 300 + tj, 1 FROM technologies_technologyoperationcomponent WHERE technology_id = " + technologyId);
+        execute("INSERT INTO jointable_technologyoperationcomponent_workstation (technologyoperationcomponent_id, "
+                + "workstation_id) VALUES (" + root + ", 1), (" + root + ", 2), (" + first + ", 3)");
+
+        return technologyId;
+    }
+
+    private long createOperationComponent(final long technologyId, final Long parentId, final String nodeNumber)
+            throws SQLException {
+        long timeCalculationId = (Long) queryRow("INSERT INTO timenormsforoperations_techopercomptimecalculation "
+                + "(operationoffset, effectiveoperationrealizationtime, effectivedatefrom, duration, machineworktime, "
+                + "laborworktime) VALUES (5, 10, now(), 15, 20, 25) RETURNING id").get("id");
+
+        return (Long) queryRow("INSERT INTO technologies_technologyoperationcomponent (technology_id, parent_id, "
+                + "operation_id, nodenumber, tj, techopercomptimecalculation_id, hascorrections) VALUES (" + technologyId
+                + ", " + parentId + ", 50, '" + nodeNumber + "', " + nodeNumber.length() + ", " + timeCalculationId
+                + ", true) RETURNING id").get("id");
+    }
+
+    private long copyTechnology(final long technologyId, final String number) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT technologies_copytechnology(?, ?)")) {
+            statement.setLong(1, technologyId);
+            statement.setString(2, number);
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+
+                return resultSet.getLong(1);
+            }
+        }
+    }
+
+    private Map<String, String> getOperationTree(final long technologyId) throws SQLException {
+        Map<String, String> tree = new TreeMap<String, String>();
+
+        for (Map<String, Object> row : queryRows("SELECT toc.nodenumber, toc.operation_id, toc.tj, parent.nodenumber AS parent "
+                + "FROM technologies_technologyoperationcomponent toc LEFT JOIN technologies_technologyoperationcomponent "
+                + "parent ON parent.id = toc.parent_id WHERE toc.technology_id = " + technologyId)) {
+            tree.put((String) row.get("nodenumber"), row.get("parent") + " " + row.get("operation_id") + " " + row.get("tj"));
+        }
+
+        assertEquals(4, tree.size());
+
+        return tree;
+    }
+
+    private Map<String, String> getProducts(final long technologyId, final String tableName) throws SQLException {
+        Map<String, String> products = new TreeMap<String, String>();
+
+        for (Map<String, Object> row : queryRows("SELECT toc.nodenumber, component.product_id, component.quantity FROM "
+                + tableName + " component JOIN technologies_technologyoperationcomponent toc ON toc.id = "
+                + "component.operationcomponent_id WHERE toc.technology_id = " + technologyId)) {
+            products.put((String) row.get("nodenumber"), row.get("product_id") + " " + row.get("quantity"));
+        }
+
+        assertEquals(4, products.size());
+
+        return products;
+    }
+
+    private Set<String> getWorkstations(final long technologyId) throws SQLException {
+        Set<String> workstations = new HashSet<String>();
+
+        for (Map<String, Object> row : queryRows("SELECT toc.nodenumber, workstation.workstation_id FROM "
+                + "jointable_technologyoperationcomponent_workstation workstation JOIN technologies_technologyoperationcomponent "
+                + "toc ON toc.id = workstation.technologyoperationcomponent_id WHERE toc.technology_id = " + technologyId)) {
+            workstations.add(row.get("nodenumber") + " " + row.get("workstation_id"));
+        }
+
+        assertEquals(3, workstations.size());
+
+        return workstations;
+    }
+
+    private Set<String> getNotCopyableColumns(final String modelName) throws IOException {
+        Set<String> columns = new HashSet<String>();
+
+        Path modelFile = Paths.get(L_TECHNOLOGIES_MODEL, modelName + ".xml");
+
+        addNotCopyableColumns(columns, new String(Files.readAllBytes(modelFile), StandardCharsets.UTF_8));
+
+        try (DirectoryStream<Path> plugins = Files.newDirectoryStream(Paths.get(L_PLUGINS))) {
+            for (Path plugin : plugins) {
+                Path descriptor = plugin.resolve("src/main/resources/qcadoo-plugin.xml");
+
+                if (!Files.exists(descriptor)) {
+                    continue;
+                }
+
+                Matcher matcher = L_MODEL_FIELD.matcher(new String(Files.readAllBytes(descriptor), StandardCharsets.UTF_8));
+
+                while (matcher.find()) {
+                    String attributes = matcher.group(1);
+
+                    if (attributes.contains("plugin=\"technologies\"") && attributes.contains("model=\"" + modelName + "\"")) {
+                        addNotCopyableColumns(columns, matcher.group(2));
+                    }
+                }
+            }
+        }
+
+        return columns;
+    }
+
+    private void addNotCopyableColumns(final Set<String> columns, final String fields) {
+        Matcher matcher = L_NOT_COPYABLE_FIELD.matcher(fields);
+
+        while (matcher.find()) {
+            String type = matcher.group(1);
+            String column = matcher.group(2).toLowerCase();
+
+            if ("hasMany".equals(type) || "manyToMany".equals(type) || "tree".equals(type)) {
+                continue;
+            }
+
+            columns.add("belongsTo".equals(type) ? column + "_id" : column);
+        }
+    }
+
+    private Set<String> getExcludedColumns(final String function, final String tableName) {
+        Matcher matcher = Pattern.compile("technologies_copiedcolumns\\('" + tableName + "', ARRAY\\[([^\\]]*)\\]\\)").matcher(
+                function);
+
+        assertTrue(tableName, matcher.find());
+
+        return new HashSet<String>(Arrays.asList(matcher.group(1).replace("'", "").split(",\\s*")));
+    }
+
+    private String readCopyTechnologyFunction() throws IOException {
+        for (String statement : readCopyTechnologyStatements()) {
+            if (statement.contains("FUNCTION technologies_copytechnology(")) {
+                return statement;
+            }
+        }
+
+        throw new IllegalStateException("technologies_copytechnology not found in " + L_VIEWS_SQL);
+    }
+
+    private List<String> readCopyTechnologyStatements() throws IOException {
+        List<String> statements = new ArrayList<String>();
+        boolean inSection = false;
+
+        for (String line : Files.readAllLines(Paths.get(L_VIEWS_SQL), StandardCharsets.UTF_8)) {
+            if (line.startsWith(L_SECTION_START)) {
+                inSection = true;
+            } else if (inSection && line.startsWith(L_SECTION_END)) {
+                break;
+            } else if (inSection && line.startsWith("CREATE")) {
+                statements.add(line);
+            }
+        }
+
+        return statements;
+    }
+
+    private Map<String, Object> queryRow(final String sql) throws SQLException {
+        List<Map<String, Object>> rows = queryRows(sql);
+
+        assertEquals(sql, 1, rows.size());
+
+        return rows.get(0);
+    }
+
+    private List<Map<String, Object>> queryRows(final String sql) throws SQLException {
+        List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+
+        try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery(sql)) {
+            while (resultSet.next()) {
+                Map<String, Object> row = new HashMap<String, Object>();
+
+                for (int i = 1; i <= resultSet.getMetaData().getColumnCount(); i++) {
+                    row.put(resultSet.getMetaData().getColumnLabel(i), resultSet.getObject(i));
+                }
+
+                rows.add(row);
+            }
+        }
+
+        return rows;
+    }
+
+    private void execute(final String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+}
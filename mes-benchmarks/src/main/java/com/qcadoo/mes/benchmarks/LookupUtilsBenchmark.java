@@ -0,0 +1,112 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.benchmarks;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.GridResponse;
+import com.qcadoo.mes.basic.LookupUtils;
+import com.qcadoo.mes.benchmarks.support.Stubs;
+import com.qcadoo.mes.materialFlowResources.ResourceDTO;
+
+/**
+ * Building lookup grid queries and parameters out of filter record, with database round trips returning fixed results.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class LookupUtilsBenchmark {
+
+    private static final String QUERY = "select %s from (select r.*, sl.number as storageLocation, pn.number as palletNumber, "
+            + "ac.code as additionalCode, bp.unit as unit FROM materialflowresources_resource r "
+            + "LEFT JOIN materialflowresources_storagelocation sl on sl.id = storageLocation_id "
+            + "LEFT JOIN basic_additionalcode ac on ac.id = additionalcode_id "
+            + "LEFT JOIN basic_product bp on bp.number = :product "
+            + "LEFT JOIN basic_palletnumber pn on pn.id = palletnumber_id WHERE r.product_id = bp.id "
+            + "AND r.conversion = :conversion AND r.availablequantity > 0) as resources";
+
+    private static final long RECORDS_COUNT = 12345L;
+
+    private LookupUtils lookupUtils;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        lookupUtils = new LookupUtils();
+        Stubs.inject(lookupUtils, "jdbcTemplate", new NamedParameterJdbcTemplate(new JdbcTemplate()) {
+
+            @Override
+            public <T> T queryForObject(final String sql, final Map<String, ?> paramMap, final Class<T> requiredType)
+                    throws DataAccessException {
+                return requiredType.cast(RECORDS_COUNT);
+            }
+
+            @Override
+            public <T> List<T> query(final String sql, final Map<String, ?> paramMap, final RowMapper<T> rowMapper)
+                    throws DataAccessException {
+                return Collections.emptyList();
+            }
+
+        });
+    }
+
+    @Benchmark
+    public GridResponse<ResourceDTO> getGridResponse() {
+        ResourceDTO record = new ResourceDTO();
+        record.setNumber("RES-1");
+        record.setBatch("B");
+        record.setQuantity(BigDecimal.TEN);
+        record.setStorageLocation("A-01");
+
+        Map<String, Object> parameters = Maps.newHashMap();
+        parameters.put("product", "PRODUCT-1");
+        parameters.put("conversion", BigDecimal.ONE);
+
+        return lookupUtils.getGridResponse(QUERY, "number", "asc", 3, 50, record, parameters);
+    }
+
+}
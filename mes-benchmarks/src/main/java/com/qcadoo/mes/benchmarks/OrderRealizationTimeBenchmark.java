@@ -0,0 +1,129 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.benchmarks;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.benchmarks.support.SampleDataGenerator;
+import com.qcadoo.mes.benchmarks.support.StubModel;
+import com.qcadoo.mes.benchmarks.support.Stubs;
+import com.qcadoo.mes.operationTimeCalculations.OrderRealizationTimeServiceImpl;
+import com.qcadoo.mes.technologies.ProductQuantitiesServiceImpl;
+import com.qcadoo.mes.technologies.ProductionLinesService;
+import com.qcadoo.mes.technologies.tree.CompiledTechnologyService;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Estimation of operation time consumptions of whole technology, including tpz and additional time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class OrderRealizationTimeBenchmark {
+
+    @Param({ "4", "40" })
+    public int operationComponents;
+
+    private ProductQuantitiesServiceImpl productQuantitiesService;
+
+    private OrderRealizationTimeServiceImpl orderRealizationTimeService;
+
+    private Entity technology;
+
+    private Entity productionLine;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StubModel model = new StubModel();
+        SampleDataGenerator generator = new SampleDataGenerator(model, 42L);
+
+        Entity parameter = model.create(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PARAMETER);
+        parameter.setField("workstationsQuantityFromProductionLine", true);
+        model.save(parameter);
+
+        ParameterService parameterService = new ParameterService();
+        Stubs.inject(parameterService, "dataDefinitionService", model.getDataDefinitionService());
+
+        ProductionLinesService productionLinesService = Stubs.proxy(ProductionLinesService.class,
+                (proxy, method, args) -> "getWorkstationTypesCount".equals(method.getName()) ? Integer.valueOf(1) : Stubs
+                        .defaultValue(method));
+
+        productQuantitiesService = new ProductQuantitiesServiceImpl();
+        Stubs.inject(productQuantitiesService, "numberService", Stubs.numberService());
+        Stubs.inject(productQuantitiesService, "dataDefinitionService", model.getDataDefinitionService());
+        Stubs.inject(productQuantitiesService, "compiledTechnologyService", new CompiledTechnologyService());
+
+        orderRealizationTimeService = new OrderRealizationTimeServiceImpl();
+        Stubs.inject(orderRealizationTimeService, "productQuantitiesService", productQuantitiesService);
+        Stubs.inject(orderRealizationTimeService, "numberService", Stubs.numberService());
+        Stubs.inject(orderRealizationTimeService, "productionLinesService", productionLinesService);
+        Stubs.inject(orderRealizationTimeService, "parameterService", parameterService);
+
+        List<Entity> products = generator.generateProducts(Math.max(50, operationComponents * 6));
+        List<Entity> operations = generator.generateOperations(20);
+
+        technology = generator.generateTechnology(products.get(0), products, operations, operationComponents, "02accepted");
+        productionLine = model.save(model.create("productionLines", "productionLine"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        productQuantitiesService.shutdownExplosionPool();
+    }
+
+    @Benchmark
+    public Map<Entity, Integer> estimateOperationTimeConsumptions() {
+        return orderRealizationTimeService.estimateOperationTimeConsumptions(technology, BigDecimal.TEN, true, true,
+                productionLine);
+    }
+
+    @Benchmark
+    public Map<Entity, Integer> estimateMaxOperationTimeConsumptionsForWorkstations() {
+        return orderRealizationTimeService.estimateMaxOperationTimeConsumptionsForWorkstations(technology, BigDecimal.TEN, true,
+                true, productionLine);
+    }
+
+}
@@ -0,0 +1,121 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.benchmarks;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.benchmarks.support.SampleDataGenerator;
+import com.qcadoo.mes.benchmarks.support.StubModel;
+import com.qcadoo.mes.benchmarks.support.Stubs;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.productionLines.constants.ProductionLineFields;
+import com.qcadoo.mes.productionPerShift.PpsTimeHelper;
+import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftConstants;
+import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftFields;
+import com.qcadoo.mes.productionPerShift.domain.ProgressForDaysContainer;
+import com.qcadoo.mes.productionPerShift.services.PpsTechNormAlgorithmService;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Automatic production per shift planning with technology norm, day by day over production line shifts, until planned
+ * quantity is reached.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class PpsAlgorithmBenchmark {
+
+    @Param({ "3" })
+    public int shifts;
+
+    @Param({ "1000", "20000" })
+    public String plannedQuantity;
+
+    private PpsTechNormAlgorithmService ppsTechNormAlgorithmService;
+
+    private Entity productionPerShift;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StubModel model = new StubModel();
+        SampleDataGenerator generator = new SampleDataGenerator(model, 42L);
+
+        ppsTechNormAlgorithmService = new PpsTechNormAlgorithmService();
+        Stubs.inject(ppsTechNormAlgorithmService, "numberService", Stubs.numberService());
+        Stubs.inject(ppsTechNormAlgorithmService, "dataDefinitionService", model.getDataDefinitionService());
+        Stubs.inject(ppsTechNormAlgorithmService, "ppsTimeHelper", new PpsTimeHelper());
+
+        List<Entity> products = generator.generateProducts(50);
+        List<Entity> operations = generator.generateOperations(20);
+        List<Entity> shiftEntities = Lists.newArrayList();
+
+        for (int i = 0; i < shifts; i++) {
+            shiftEntities.add(generator.generateShift());
+        }
+
+        Entity productionLine = model.create("productionLines", "productionLine");
+        productionLine.setField(ProductionLineFields.SHIFTS, shiftEntities);
+        productionLine = model.save(productionLine);
+
+        Entity technology = generator.generateTechnology(products.get(0), products, operations, 4, "02accepted");
+        Entity order = generator.generateOrder(technology, new BigDecimal(plannedQuantity), new DateTime()
+                .withTimeAtStartOfDay().plusDays(1).plusHours(10).toDate());
+        order.setField(OrderFields.PRODUCTION_LINE, productionLine);
+
+        productionPerShift = model.create(ProductionPerShiftConstants.PLUGIN_IDENTIFIER,
+                ProductionPerShiftConstants.MODEL_PRODUCTION_PER_SHIFT);
+        productionPerShift.setField(ProductionPerShiftFields.ORDER, order);
+        productionPerShift = model.save(productionPerShift);
+    }
+
+    @Benchmark
+    public ProgressForDaysContainer generateProgressForDays() {
+        ProgressForDaysContainer progressForDaysContainer = new ProgressForDaysContainer();
+
+        ppsTechNormAlgorithmService.generateProgressForDays(progressForDaysContainer, productionPerShift);
+
+        return progressForDaysContainer;
+    }
+
+}
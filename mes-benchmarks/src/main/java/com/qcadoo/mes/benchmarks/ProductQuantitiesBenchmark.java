@@ -0,0 +1,136 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.benchmarks;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.benchmarks.support.SampleDataGenerator;
+import com.qcadoo.mes.benchmarks.support.StubModel;
+import com.qcadoo.mes.benchmarks.support.Stubs;
+import com.qcadoo.mes.technologies.ProductQuantitiesServiceImpl;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentHolder;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentWithQuantityContainer;
+import com.qcadoo.mes.technologies.tree.CompiledTechnologyService;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * BOM explosion of technologies: single technology and many orders at once. Draft technologies are never cached, so they
+ * measure compilation together with explosion.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ProductQuantitiesBenchmark {
+
+    @Param({ "4", "40" })
+    public int operationComponents;
+
+    @Param({ "02accepted", "01draft" })
+    public String technologyState;
+
+    @Param({ "1", "100" })
+    public int orders;
+
+    private ProductQuantitiesServiceImpl productQuantitiesService;
+
+    private Entity technology;
+
+    private List<Entity> orderEntities;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StubModel model = new StubModel();
+        SampleDataGenerator generator = new SampleDataGenerator(model, 42L);
+
+        CompiledTechnologyService compiledTechnologyService = new CompiledTechnologyService();
+
+        productQuantitiesService = new ProductQuantitiesServiceImpl();
+        Stubs.inject(productQuantitiesService, "numberService", Stubs.numberService());
+        Stubs.inject(productQuantitiesService, "dataDefinitionService", model.getDataDefinitionService());
+        Stubs.inject(productQuantitiesService, "compiledTechnologyService", compiledTechnologyService);
+
+        List<Entity> products = generator.generateProducts(Math.max(50, operationComponents * 6));
+        List<Entity> operations = generator.generateOperations(20);
+        List<Entity> technologies = Lists.newArrayList();
+
+        for (int i = 0; i < 10; i++) {
+            technologies.add(generator.generateTechnology(products.get(i), products, operations, operationComponents,
+                    technologyState));
+        }
+
+        technology = technologies.get(0);
+        orderEntities = Lists.newArrayListWithCapacity(orders);
+
+        for (int i = 0; i < orders; i++) {
+            orderEntities.add(generator.generateOrder(technologies.get(i % technologies.size()),
+                    new BigDecimal(generator.getRandom().nextInt(10) + 1), new Date()));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        productQuantitiesService.shutdownExplosionPool();
+    }
+
+    @Benchmark
+    public OperationProductComponentWithQuantityContainer explodeTechnology() {
+        Map<Long, BigDecimal> operationRuns = Maps.newHashMap();
+
+        return productQuantitiesService.getProductComponentQuantities(technology, BigDecimal.TEN, operationRuns);
+    }
+
+    @Benchmark
+    public OperationProductComponentWithQuantityContainer explodeOrders() {
+        Map<Long, BigDecimal> operationRuns = Maps.newHashMap();
+        Set<OperationProductComponentHolder> nonComponents = Sets.newHashSet();
+
+        return productQuantitiesService.getProductComponentWithQuantities(orderEntities, operationRuns, nonComponents);
+    }
+
+}
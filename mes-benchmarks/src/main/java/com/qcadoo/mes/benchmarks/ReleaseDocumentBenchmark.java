@@ -0,0 +1,207 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.benchmarks;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.constants.ProductFields;
+import com.qcadoo.mes.benchmarks.support.SampleDataGenerator;
+import com.qcadoo.mes.benchmarks.support.StubModel;
+import com.qcadoo.mes.benchmarks.support.Stubs;
+import com.qcadoo.mes.materialFlow.constants.MaterialFlowConstants;
+import com.qcadoo.mes.materialFlowResources.constants.DocumentFields;
+import com.qcadoo.mes.materialFlowResources.constants.LocationFieldsMFR;
+import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
+import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
+import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.mes.materialFlowResources.constants.WarehouseAlgorithm;
+import com.qcadoo.mes.materialFlowResources.service.ReservationsService;
+import com.qcadoo.mes.materialFlowResources.service.ResourceBatchService;
+import com.qcadoo.mes.materialFlowResources.service.ResourceConsumption;
+import com.qcadoo.mes.materialFlowResources.service.ResourceManagementServiceImpl;
+import com.qcadoo.mes.materialFlowResources.service.ResourcePickingService;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Allocation of release document positions to resources picked with warehouse algorithm. Picking, locking and batch
+ * update of resources are SQL bound, so they are replaced with in-memory resources, fresh for each document.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ReleaseDocumentBenchmark {
+
+    private static final int RESOURCES_PER_PRODUCT = 10;
+
+    @Param({ "10", "200" })
+    public int positions;
+
+    private ResourceManagementServiceImpl resourceManagementService;
+
+    private Map<Long, List<Entity>> resourcesByProduct;
+
+    private Entity document;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StubModel model = new StubModel();
+        SampleDataGenerator generator = new SampleDataGenerator(model, 42L);
+        Random random = generator.getRandom();
+
+        resourceManagementService = new ResourceManagementServiceImpl(model.getDataDefinitionService(), Stubs.numberService(),
+                null);
+        Stubs.inject(resourceManagementService, "reservationsService", new ReservationsService() {
+
+            @Override
+            public Entity getReservationForPosition(final Entity position) {
+                return null;
+            }
+
+            @Override
+            public boolean reservationsEnabledForDocumentPositions() {
+                return false;
+            }
+
+            @Override
+            public void deleteReservationFromDocumentPosition(final Entity position) {
+            }
+
+        });
+        Stubs.inject(resourceManagementService, "resourcePickingService", new ResourcePickingService() {
+
+            @Override
+            public Iterable<Entity> pickResources(final Entity warehouse, final Entity product, final Entity additionalCode,
+                    final BigDecimal conversion, final WarehouseAlgorithm warehouseAlgorithm) {
+                List<Entity> resources = Lists.newArrayList();
+
+                for (Entity resource : resourcesByProduct.get(product.getId())) {
+                    resources.add(resource.copy());
+                }
+
+                return resources;
+            }
+
+        });
+        Stubs.inject(resourceManagementService, "resourceBatchService", new ResourceBatchService() {
+
+            @Override
+            public void lockResources(final Entity warehouse, final Collection<Long> productIds,
+                    final Collection<Long> resourceIds) {
+            }
+
+            @Override
+            public void apply(final ResourceConsumption consumption) {
+            }
+
+        });
+
+        Entity warehouse = model.create(MaterialFlowConstants.PLUGIN_IDENTIFIER, MaterialFlowConstants.MODEL_LOCATION);
+        warehouse.setField(LocationFieldsMFR.ALGORITHM, WarehouseAlgorithm.FIFO.getStringValue());
+        warehouse = model.save(warehouse);
+
+        List<Entity> products = generator.generateProducts(positions);
+        List<Entity> positionEntities = Lists.newArrayList();
+
+        resourcesByProduct = Maps.newHashMap();
+        document = model.create(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER, MaterialFlowResourcesConstants.MODEL_DOCUMENT);
+        document.setField(DocumentFields.LOCATION_FROM, warehouse);
+
+        for (Entity product : products) {
+            List<Entity> resources = Lists.newArrayList();
+            BigDecimal quantityInWarehouse = BigDecimal.ZERO;
+
+            for (int i = 0; i < RESOURCES_PER_PRODUCT; i++) {
+                BigDecimal quantity = new BigDecimal(random.nextInt(20) + 5);
+
+                Entity resource = model.create(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                        MaterialFlowResourcesConstants.MODEL_RESOURCE);
+                resource.setId(product.getId() * RESOURCES_PER_PRODUCT + i);
+                resource.setField(ResourceFields.PRODUCT, product);
+                resource.setField(ResourceFields.LOCATION, warehouse);
+                resource.setField(ResourceFields.QUANTITY, quantity);
+                resource.setField(ResourceFields.AVAILABLE_QUANTITY, quantity);
+                resource.setField(ResourceFields.RESERVED_QUANTITY, BigDecimal.ZERO);
+                resource.setField(ResourceFields.CONVERSION, BigDecimal.ONE);
+                resource.setField(ResourceFields.PRICE, new BigDecimal(random.nextInt(100) + 1));
+                resource.setField(ResourceFields.BATCH, generator.generateString(10));
+                resource.setField(ResourceFields.ATRRIBUTE_VALUES, Lists.newArrayList());
+
+                resources.add(resource);
+                quantityInWarehouse = quantityInWarehouse.add(quantity);
+            }
+
+            resourcesByProduct.put(product.getId(), resources);
+
+            BigDecimal quantity = quantityInWarehouse.multiply(new BigDecimal(random.nextInt(50) + 25)).divide(
+                    new BigDecimal(100), 0, BigDecimal.ROUND_DOWN);
+
+            Entity position = model.create(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                    MaterialFlowResourcesConstants.MODEL_POSITION);
+            position.setField(PositionFields.DOCUMENT, document);
+            position.setField(PositionFields.PRODUCT, product);
+            position.setField(PositionFields.QUANTITY, quantity);
+            position.setField(PositionFields.GIVEN_QUANTITY, quantity);
+            position.setField(PositionFields.GIVEN_UNIT, product.getStringField(ProductFields.UNIT));
+            position.setField(PositionFields.CONVERSION, BigDecimal.ONE);
+
+            positionEntities.add(model.save(position));
+        }
+
+        document.setField(DocumentFields.POSITIONS, positionEntities);
+        document = model.save(document);
+    }
+
+    @Benchmark
+    public Entity updateResourcesForReleaseDocuments() {
+        Entity releaseDocument = document.copy();
+
+        resourceManagementService.updateResourcesForReleaseDocuments(releaseDocument);
+
+        return releaseDocument;
+    }
+
+}
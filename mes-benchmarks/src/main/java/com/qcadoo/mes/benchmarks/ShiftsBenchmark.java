@@ -0,0 +1,96 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.benchmarks;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.qcadoo.mes.basic.ShiftsServiceImpl;
+import com.qcadoo.mes.benchmarks.support.SampleDataGenerator;
+import com.qcadoo.mes.benchmarks.support.StubModel;
+import com.qcadoo.mes.benchmarks.support.Stubs;
+
+/**
+ * Finding order end date in shifts working time, with cached shift calendar and with calendar compiled on each call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ShiftsBenchmark {
+
+    @Param({ "3" })
+    public int shifts;
+
+    @Param({ "28800", "2592000" })
+    public long seconds;
+
+    private ShiftsServiceImpl shiftsService;
+
+    private Date dateFrom;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StubModel model = new StubModel();
+        SampleDataGenerator generator = new SampleDataGenerator(model, 42L);
+
+        for (int i = 0; i < shifts; i++) {
+            generator.generateShift();
+        }
+
+        shiftsService = new ShiftsServiceImpl();
+        Stubs.inject(shiftsService, "dataDefinitionService", model.getDataDefinitionService());
+
+        dateFrom = new DateTime().withTimeAtStartOfDay().plusDays(1).toDate();
+    }
+
+    @Benchmark
+    public Date findDateToForOrder() {
+        return shiftsService.findDateToForOrder(dateFrom, seconds);
+    }
+
+    @Benchmark
+    public Date findDateToForOrderWithCalendarCompilation() {
+        shiftsService.invalidateShiftCalendar();
+
+        return shiftsService.findDateToForOrder(dateFrom, seconds);
+    }
+
+}
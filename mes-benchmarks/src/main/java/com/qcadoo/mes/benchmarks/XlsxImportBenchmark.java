@@ -0,0 +1,165 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.basic.constants.ProductFields;
+import com.qcadoo.mes.basic.product.importing.ImportStatus;
+import com.qcadoo.mes.basic.product.importing.XlsxImportService;
+import com.qcadoo.mes.benchmarks.support.StubModel;
+import com.qcadoo.mes.benchmarks.support.Stubs;
+import com.qcadoo.model.api.DataDefinitionService;
+
+/**
+ * Product import of a generated workbook: streamed reading, binding and saving in chunks, with saves kept in memory. The
+ * import services are package private, so they are wired through reflection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XlsxImportBenchmark {
+
+    private static final int CHUNK_SIZE = 500;
+
+    private static final String[] UNITS = { "szt", "kg", "m" };
+
+    private static final String IMPORTING_PACKAGE = "com.qcadoo.mes.basic.product.importing.";
+
+    private static final String[] REQUIRED_FIELDS = { ProductFields.NUMBER, ProductFields.NAME, ProductFields.UNIT };
+
+    private static final String[] OPTIONAL_FIELDS = { ProductFields.GLOBAL_TYPE_OF_MATERIAL, ProductFields.EAN,
+            ProductFields.CATEGORY, ProductFields.DESCRIPTION, ProductFields.PRODUCER, ProductFields.ASSORTMENT,
+            ProductFields.PARENT };
+
+    private static final String[] DECIMAL_FIELDS = { "nominalCost", "lastPurchaseCost", "averageCost" };
+
+    private static final Class<?>[] NO_PARAMETERS = new Class<?>[0];
+
+    @Param({ "1000", "50000" })
+    public int rows;
+
+    private byte[] workbook;
+
+    private XlsxImportService xlsxImportService;
+
+    @Setup(Level.Trial)
+    public void generateWorkbook() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        SXSSFWorkbook document = new SXSSFWorkbook();
+
+        try {
+            Sheet sheet = document.createSheet();
+            sheet.createRow(0).createCell(0).setCellValue(ProductFields.NUMBER);
+
+            for (int i = 1; i <= rows; i++) {
+                Row row = sheet.createRow(i);
+                row.createCell(0).setCellValue("P" + i);
+                row.createCell(1).setCellValue("Product " + i);
+                row.createCell(3).setCellValue(UNITS[i % UNITS.length]);
+                row.createCell(4).setCellValue(String.valueOf(5900000000000L + i));
+                row.createCell(6).setCellValue("Generated product number " + i);
+                row.createCell(10).setCellValue(i % 100 + ".25");
+            }
+
+            document.write(outputStream);
+        } finally {
+            document.dispose();
+        }
+
+        workbook = outputStream.toByteArray();
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        StubModel model = new StubModel();
+        model.getDataDefinition(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT);
+
+        Class<?> cellBinderType = importingType("CellBinder");
+        Class<?> cellParserType = importingType("CellParser");
+        Class<?> cellBinderRegistryType = importingType("CellBinderRegistry");
+
+        Object cellBinderRegistry = Stubs.construct(cellBinderRegistryType, NO_PARAMETERS);
+        Object bigDecimalCellParser = Stubs.construct(importingType("BigDecimalCellParser"), NO_PARAMETERS);
+
+        for (String fieldName : REQUIRED_FIELDS) {
+            Stubs.invoke(cellBinderRegistryType, cellBinderRegistry, "setCellBinder", new Class<?>[] { cellBinderType },
+                    Stubs.invoke(cellBinderType, null, "required", new Class<?>[] { String.class }, fieldName));
+        }
+        for (String fieldName : OPTIONAL_FIELDS) {
+            Stubs.invoke(cellBinderRegistryType, cellBinderRegistry, "setCellBinder", new Class<?>[] { cellBinderType },
+                    Stubs.invoke(cellBinderType, null, "optional", new Class<?>[] { String.class }, fieldName));
+        }
+        for (String fieldName : DECIMAL_FIELDS) {
+            Stubs.invoke(cellBinderRegistryType, cellBinderRegistry, "setCellBinder", new Class<?>[] { cellBinderType },
+                    Stubs.invoke(cellBinderType, null, "optional", new Class<?>[] { String.class, cellParserType }, fieldName,
+                            bigDecimalCellParser));
+        }
+
+        Class<?> rowProcessorFactoryType = importingType("RowProcessorFactory");
+        Class<?> spreadsheetRowReaderType = importingType("SpreadsheetRowReader");
+        Class<?> importChunkPersisterType = importingType("ImportChunkPersister");
+
+        xlsxImportService = (XlsxImportService) Stubs.construct(XlsxImportService.class,
+                new Class<?>[] { rowProcessorFactoryType, cellBinderRegistryType, spreadsheetRowReaderType,
+                        importChunkPersisterType, int.class },
+                Stubs.construct(rowProcessorFactoryType, new Class<?>[] { DataDefinitionService.class },
+                        model.getDataDefinitionService()),
+                cellBinderRegistry, Stubs.construct(spreadsheetRowReaderType, NO_PARAMETERS),
+                Stubs.construct(importChunkPersisterType, NO_PARAMETERS), CHUNK_SIZE);
+    }
+
+    @Benchmark
+    public ImportStatus importFrom() throws IOException {
+        return xlsxImportService.importFrom(new ByteArrayInputStream(workbook));
+    }
+
+    private static Class<?> importingType(final String simpleName) {
+        return Stubs.type(IMPORTING_PACKAGE + simpleName);
+    }
+
+}
@@ -0,0 +1,297 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.benchmarks.support;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.basic.constants.ProductFields;
+import com.qcadoo.mes.basic.constants.ShiftFields;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.orders.constants.OrdersConstants;
+import com.qcadoo.mes.technologies.constants.OperationProductInComponentFields;
+import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Generates sample data the same way GeneratedSamplesLoader does: random operations with norms, technologies built from
+ * operation components attached to random earlier components, 3 to 5 product components split randomly between inputs and
+ * outputs, shifts with random working days and hours. Generator is seeded, so that generated data is reproducible.
+ * 
+ * Unlike samples loader, product flow of generated technologies is consistent: root component produces technology product
+ * and every other component produces one of its parent inputs, so that product quantities are actually propagated.
+ */
+public class SampleDataGenerator {
+
+    private static final String CHARS_AND_DIGITS = "QWERTYUIOPLKJHGFDSAZXCVBNMmnbvcxzasdfghjklpoiuytrewq0123456789";
+
+    private static final String[] WORK_SHIFT = { ShiftFields.MONDAY_WORKING, ShiftFields.TUESDAY_WORKING,
+            ShiftFields.WENSDAY_WORKING, ShiftFields.THURSDAY_WORKING, ShiftFields.FRIDAY_WORKING, ShiftFields.SATURDAY_WORKING,
+            ShiftFields.SUNDAY_WORKING };
+
+    private static final String[] SHIFT_HOURS = { ShiftFields.MONDAY_HOURS, ShiftFields.TUESDAY_HOURS,
+            ShiftFields.WENSDAY_HOURS, ShiftFields.THURSDAY_HOURS, ShiftFields.FRIDAY_HOURS, ShiftFields.SATURDAY_HOURS,
+            ShiftFields.SUNDAY_HOURS };
+
+    private static final String L_OPERATION = "operation";
+
+    private static final String L_TPZ = "tpz";
+
+    private static final String L_TJ = "tj";
+
+    private static final String L_TIME_NEXT_OPERATION = "timeNextOperation";
+
+    private final StubModel model;
+
+    private final Random random;
+
+    public SampleDataGenerator(final StubModel model, final long seed) {
+        this.model = model;
+        this.random = new Random(seed);
+    }
+
+    public List<Entity> generateProducts(final int count) {
+        List<Entity> products = Lists.newArrayListWithCapacity(count);
+
+        for (int i = 0; i < count; i++) {
+            Entity product = model.create(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT);
+
+            String number = generateString(random.nextInt(34) + 5);
+
+            product.setField(ProductFields.NUMBER, number);
+            product.setField(ProductFields.NAME, "Product-" + number);
+            product.setField(ProductFields.UNIT, "szt");
+
+            products.add(model.save(product));
+        }
+
+        return products;
+    }
+
+    public List<Entity> generateOperations(final int count) {
+        List<Entity> operations = Lists.newArrayListWithCapacity(count);
+
+        for (int i = 0; i < count; i++) {
+            Entity operation = model.create(TechnologiesConstants.PLUGIN_IDENTIFIER, TechnologiesConstants.MODEL_OPERATION);
+
+            String number = generateString(random.nextInt(40) + 5);
+
+            operation.setField("number", number);
+            operation.setField("name", "Operation-" + number);
+            operation.setField(L_TPZ, random.nextInt(1000));
+            operation.setField(L_TJ, random.nextInt(1000));
+            operation.setField("productionInOneCycle", random.nextInt(20));
+            operation.setField(L_TIME_NEXT_OPERATION, random.nextInt(30));
+
+            operations.add(model.save(operation));
+        }
+
+        return operations;
+    }
+
+    /**
+     * Generates accepted or draft technology of given product, with given number of operation components.
+     */
+    public Entity generateTechnology(final Entity product, final List<Entity> products, final List<Entity> operations,
+            final int operationComponentsCount, final String state) {
+        Entity technology = model.create(TechnologiesConstants.PLUGIN_IDENTIFIER, TechnologiesConstants.MODEL_TECHNOLOGY);
+
+        technology.setField(TechnologyFields.NUMBER, generateString(random.nextInt(40) + 5));
+        technology.setField(TechnologyFields.PRODUCT, product);
+        technology.setField(TechnologyFields.STATE, state);
+        technology.setField(TechnologyFields.STANDARD_PERFORMANCE_TECHNOLOGY, new BigDecimal(random.nextInt(5) + 1));
+        technology = model.save(technology);
+
+        List<Entity> operationComponents = Lists.newArrayList();
+
+        for (int i = 0; i < operationComponentsCount; i++) {
+            Entity parent = operationComponents.isEmpty() ? null : operationComponents.get(random.nextInt(operationComponents
+                    .size()));
+
+            operationComponents.add(addOperationComponent(technology, parent,
+                    operations.get(random.nextInt(operations.size())), products, random.nextInt(3) + 3));
+        }
+
+        technology.setField(TechnologyFields.OPERATION_COMPONENTS, operationComponents);
+
+        return technology;
+    }
+
+    private Entity addOperationComponent(final Entity technology, final Entity parent, final Entity operation,
+            final List<Entity> products, final int productsComponentsQuantity) {
+        Entity operationComponent = model.create(TechnologiesConstants.PLUGIN_IDENTIFIER,
+                TechnologiesConstants.MODEL_TECHNOLOGY_OPERATION_COMPONENT);
+
+        int productInComponentQuantity = random.nextInt(productsComponentsQuantity);
+        int productOutComponentQuantity = productsComponentsQuantity - productInComponentQuantity;
+
+        operationComponent.setField(TechnologyOperationComponentFields.TECHNOLOGY, technology);
+        operationComponent.setField(TechnologyOperationComponentFields.PARENT, parent);
+        operationComponent.setField(TechnologyOperationComponentFields.OPERATION, operation);
+        operationComponent.setField(TechnologyOperationComponentFields.ENTITY_TYPE, L_OPERATION);
+        operationComponent.setField(L_TPZ, operation.getField(L_TPZ));
+        operationComponent.setField(L_TJ, operation.getField(L_TJ));
+        operationComponent.setField("productionInOneCycle", operation.getField("productionInOneCycle"));
+        operationComponent.setField("nextOperationAfterProducedType", "01all");
+        operationComponent.setField("nextOperationAfterProducedQuantity", "0");
+        operationComponent.setField(L_TIME_NEXT_OPERATION, operation.getField(L_TIME_NEXT_OPERATION));
+        operationComponent.setField(TechnologyOperationComponentFields.QUANTITY_OF_WORKSTATIONS, 1);
+        operationComponent.setField(TechnologyOperationComponentFields.ARE_PRODUCT_QUANTITIES_DIVISIBLE, random.nextBoolean());
+        operationComponent.setField(TechnologyOperationComponentFields.IS_TJ_DIVISIBLE, random.nextBoolean());
+        operationComponent.setField(TechnologyOperationComponentFields.CHILDREN, Lists.newArrayList());
+        operationComponent = model.save(operationComponent);
+
+        List<Entity> outProducts = Lists.newArrayList(getProducedProduct(technology, parent));
+        List<Entity> inProducts = Lists.newArrayList();
+
+        while (outProducts.size() < productOutComponentQuantity) {
+            addRandomProduct(outProducts, products);
+        }
+        while (inProducts.size() < productInComponentQuantity) {
+            addRandomProduct(inProducts, products);
+        }
+
+        operationComponent.setField(TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS,
+                createProductComponents(operationComponent, outProducts,
+                        TechnologiesConstants.MODEL_OPERATION_PRODUCT_OUT_COMPONENT));
+        operationComponent.setField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS,
+                createProductComponents(operationComponent, inProducts,
+                        TechnologiesConstants.MODEL_OPERATION_PRODUCT_IN_COMPONENT));
+
+        if (parent != null) {
+            parent.getManyToManyField(TechnologyOperationComponentFields.CHILDREN).add(operationComponent);
+        }
+
+        return operationComponent;
+    }
+
+    private Entity getProducedProduct(final Entity technology, final Entity parent) {
+        if (parent == null) {
+            return technology.getBelongsToField(TechnologyFields.PRODUCT);
+        }
+
+        List<Entity> parentInComponents = parent
+                .getManyToManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS);
+
+        if (parentInComponents.isEmpty()) {
+            Entity product = technology.getBelongsToField(TechnologyFields.PRODUCT);
+            parentInComponents.addAll(createProductComponents(parent, Lists.newArrayList(product),
+                    TechnologiesConstants.MODEL_OPERATION_PRODUCT_IN_COMPONENT));
+            parent.setField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS, parentInComponents);
+        }
+
+        return parentInComponents.get(random.nextInt(parentInComponents.size())).getBelongsToField(
+                OperationProductInComponentFields.PRODUCT);
+    }
+
+    private void addRandomProduct(final List<Entity> selectedProducts, final List<Entity> products) {
+        Entity product = products.get(random.nextInt(products.size()));
+
+        while (selectedProducts.contains(product)) {
+            product = products.get(random.nextInt(products.size()));
+        }
+
+        selectedProducts.add(product);
+    }
+
+    private List<Entity> createProductComponents(final Entity operationComponent, final List<Entity> products,
+            final String modelName) {
+        List<Entity> productComponents = Lists.newArrayList();
+
+        for (Entity product : products) {
+            Entity productComponent = model.create(TechnologiesConstants.PLUGIN_IDENTIFIER, modelName);
+
+            productComponent.setField(OperationProductInComponentFields.PRODUCT, product);
+            productComponent.setField(OperationProductInComponentFields.OPERATION_COMPONENT, operationComponent);
+            productComponent.setField(OperationProductInComponentFields.QUANTITY, new BigDecimal(random.nextInt(50) + 5));
+
+            productComponents.add(model.save(productComponent));
+        }
+
+        return productComponents;
+    }
+
+    public Entity generateOrder(final Entity technology, final BigDecimal plannedQuantity, final Date startDate) {
+        Entity order = model.create(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER);
+
+        order.setField(OrderFields.NUMBER, generateString(20));
+        order.setField(OrderFields.TECHNOLOGY, technology);
+        order.setField(OrderFields.PRODUCT, technology.getBelongsToField(TechnologyFields.PRODUCT));
+        order.setField(OrderFields.PLANNED_QUANTITY, plannedQuantity);
+        order.setField(OrderFields.START_DATE, startDate);
+        order.setField(OrderFields.STATE, "01pending");
+
+        return model.save(order);
+    }
+
+    /**
+     * Generates shift with random working days and hours between 8:00 and 20:00. At least one day is working, so that time
+     * based algorithms always terminate.
+     */
+    public Entity generateShift() {
+        Entity shift = model.create(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_SHIFT);
+
+        shift.setField(ShiftFields.NAME, "Shift-" + generateString(random.nextInt(40) + 5));
+
+        int workingDay = random.nextInt(WORK_SHIFT.length);
+
+        for (int i = 0; i < SHIFT_HOURS.length; i++) {
+            shift.setField(WORK_SHIFT[i], i == workingDay || random.nextBoolean());
+            shift.setField(SHIFT_HOURS[i], generateWorkingHours());
+        }
+
+        shift.setField(ShiftFields.TIMETABLE_EXCEPTIONS, Lists.newArrayList());
+
+        return model.save(shift);
+    }
+
+    private String generateWorkingHours() {
+        int workBeginMinutes = 8 * 60 + random.nextInt(6 * 60);
+        int workEndMinutes = workBeginMinutes + 60 + random.nextInt(20 * 60 - workBeginMinutes - 60);
+
+        return String.format("%02d:%02d-%02d:%02d", workBeginMinutes / 60, workBeginMinutes % 60, workEndMinutes / 60,
+                workEndMinutes % 60);
+    }
+
+    public String generateString(final int length) {
+        StringBuilder string = new StringBuilder(length);
+
+        for (int i = 0; i < length; i++) {
+            string.append(CHARS_AND_DIGITS.charAt(random.nextInt(CHARS_AND_DIGITS.length())));
+        }
+
+        return string.toString();
+    }
+
+    public Random getRandom() {
+        return random;
+    }
+
+}
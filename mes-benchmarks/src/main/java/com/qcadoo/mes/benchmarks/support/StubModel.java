@@ -0,0 +1,333 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.benchmarks.support;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityList;
+import com.qcadoo.model.api.EntityTree;
+import com.qcadoo.model.api.EntityTreeNode;
+import com.qcadoo.model.api.FieldDefinition;
+import com.qcadoo.model.api.search.SearchResult;
+
+/**
+ * In-memory stand-in for qcadoo model. Entities are dynamic proxies backed by field maps, data definitions keep saved
+ * entities in insertion order. Searches return all saved entities of a model, restrictions are not evaluated.
+ */
+public final class StubModel {
+
+    private static final String L_CHILDREN = "children";
+
+    private static final String L_PARENT = "parent";
+
+    private final Map<String, DataDefinition> dataDefinitions = Maps.newHashMap();
+
+    private final Map<DataDefinition, Map<Long, Entity>> entities = Maps.newHashMap();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final DataDefinitionService dataDefinitionService = Stubs.proxy(DataDefinitionService.class,
+            (proxy, method, args) -> {
+                if ("get".equals(method.getName()) && args != null && args.length == 2) {
+                    return getDataDefinition((String) args[0], (String) args[1]);
+                }
+
+                return Stubs.defaultValue(method);
+            });
+
+    public DataDefinitionService getDataDefinitionService() {
+        return dataDefinitionService;
+    }
+
+    public DataDefinition getDataDefinition(final String pluginIdentifier, final String modelName) {
+        return dataDefinitions.computeIfAbsent(pluginIdentifier + "." + modelName, key -> {
+            DataDefinition dataDefinition = Stubs.proxy(DataDefinition.class, new DataDefinitionHandler(pluginIdentifier,
+                    modelName));
+            entities.put(dataDefinition, Maps.newLinkedHashMap());
+
+            return dataDefinition;
+        });
+    }
+
+    /**
+     * Creates not saved entity, which can be also used as a node of technology tree.
+     */
+    public Entity create(final String pluginIdentifier, final String modelName) {
+        return newEntity(getDataDefinition(pluginIdentifier, modelName), null, Maps.newHashMap());
+    }
+
+    public Entity save(final Entity entity) {
+        if (entity.getId() == null) {
+            entity.setId(sequence.incrementAndGet());
+        }
+
+        entities.get(entity.getDataDefinition()).put(entity.getId(), entity);
+
+        return entity;
+    }
+
+    private Entity newEntity(final DataDefinition dataDefinition, final Long id, final Map<String, Object> fields) {
+        return (Entity) Proxy.newProxyInstance(StubModel.class.getClassLoader(), new Class<?>[] { EntityTreeNode.class },
+                new EntityHandler(dataDefinition, id, fields));
+    }
+
+    private static EntityList entityList(final List<Entity> list) {
+        return Stubs.proxy(EntityList.class, new ListHandler(list));
+    }
+
+    private static EntityTree entityTree(final List<Entity> list) {
+        return Stubs.proxy(EntityTree.class, new ListHandler(list) {
+
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                if ("getRoot".equals(method.getName())) {
+                    for (Entity node : list) {
+                        if (node.getBelongsToField(L_PARENT) == null) {
+                            return node;
+                        }
+                    }
+
+                    return null;
+                }
+
+                return super.invoke(proxy, method, args);
+            }
+
+        });
+    }
+
+    private static class ListHandler implements InvocationHandler {
+
+        private final List<Entity> list;
+
+        ListHandler(final List<Entity> list) {
+            this.list = list;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            if (method.getDeclaringClass().isInstance(list)) {
+                return method.invoke(list, args);
+            }
+
+            return Stubs.defaultValue(method);
+        }
+
+    }
+
+    private final class DataDefinitionHandler implements InvocationHandler {
+
+        private final String pluginIdentifier;
+
+        private final String modelName;
+
+        DataDefinitionHandler(final String pluginIdentifier, final String modelName) {
+            this.pluginIdentifier = pluginIdentifier;
+            this.modelName = modelName;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            DataDefinition dataDefinition = (DataDefinition) proxy;
+
+            switch (method.getName()) {
+                case "getName":
+                    return modelName;
+                case "getPluginIdentifier":
+                    return pluginIdentifier;
+                case "create":
+                    return newEntity(dataDefinition, args == null ? null : (Long) args[0], Maps.newHashMap());
+                case "save":
+                    return save((Entity) args[0]);
+                case "get":
+                    return entities.get(dataDefinition).get(args[0]);
+                case "find":
+                    return searchBuilder(method.getReturnType(), dataDefinition);
+                case "getField":
+                    return Stubs.proxy(FieldDefinition.class, (fieldProxy, fieldMethod, fieldArgs) -> "getName"
+                            .equals(fieldMethod.getName()) ? args[0] : Stubs.defaultValue(fieldMethod));
+                default:
+                    return Stubs.defaultValue(method);
+            }
+        }
+
+    }
+
+    private Object searchBuilder(final Class<?> builderType, final DataDefinition dataDefinition) {
+        return Stubs.proxy(builderType, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "list":
+                    List<Entity> found = Lists.newArrayList(entities.get(dataDefinition).values());
+
+                    return Stubs.proxy(SearchResult.class, (resultProxy, resultMethod, resultArgs) -> {
+                        if ("getEntities".equals(resultMethod.getName())) {
+                            return found;
+                        } else if ("getTotalNumberOfEntities".equals(resultMethod.getName())) {
+                            return found.size();
+                        }
+
+                        return Stubs.defaultValue(resultMethod);
+                    });
+                case "uniqueResult":
+                    return entities.get(dataDefinition).values().stream().findFirst().orElse(null);
+                default:
+                    return method.getReturnType().isInstance(proxy) ? proxy : Stubs.defaultValue(method);
+            }
+        });
+    }
+
+    private final class EntityHandler implements InvocationHandler {
+
+        private final DataDefinition dataDefinition;
+
+        private final Map<String, Object> fields;
+
+        private Long id;
+
+        private boolean valid = true;
+
+        EntityHandler(final DataDefinition dataDefinition, final Long id, final Map<String, Object> fields) {
+            this.dataDefinition = dataDefinition;
+            this.id = id;
+            this.fields = fields;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            String name = method.getName();
+            Object value = args != null && args.length == 1 && args[0] instanceof String ? fields.get(args[0]) : null;
+
+            switch (name) {
+                case "equals":
+                    return isEqual(proxy, args[0]);
+                case "hashCode":
+                    return id == null ? System.identityHashCode(proxy) : Objects.hash(dataDefinition, id);
+                case "toString":
+                    return dataDefinition.getName() + "[id=" + id + "]";
+                case "getId":
+                    return id;
+                case "setId":
+                    id = (Long) args[0];
+                    return null;
+                case "getDataDefinition":
+                    return dataDefinition;
+                case "setField":
+                    fields.put((String) args[0], args[1]);
+                    return null;
+                case "getFields":
+                    return fields;
+                case "getField":
+                    return value;
+                case "getStringField":
+                    return value == null ? null : value.toString();
+                case "getBooleanField":
+                    return value instanceof Boolean ? value : "1".equals(value) || "true".equals(value);
+                case "getDecimalField":
+                    return toDecimal(value);
+                case "getIntegerField":
+                    return value instanceof Number ? Integer.valueOf(((Number) value).intValue())
+                            : value == null ? null : Integer.valueOf(value.toString());
+                case "getLongField":
+                    return value instanceof Number ? Long.valueOf(((Number) value).longValue()) : null;
+                case "getDateField":
+                    return value instanceof Number ? new Date(((Number) value).longValue()) : value;
+                case "getBelongsToField":
+                    return value instanceof Entity ? value : null;
+                case "getHasManyField":
+                    return entityList(asList(value));
+                case "getManyToManyField":
+                    return asList(value);
+                case "getTreeField":
+                    return entityTree(asList(value));
+                case "getChildren":
+                    return asList(fields.get(L_CHILDREN));
+                case "copy":
+                    return newEntity(dataDefinition, id, Maps.newHashMap(fields));
+                case "isValid":
+                    return valid;
+                case "isFieldValid":
+                    return true;
+                case "setNotValid":
+                case "addError":
+                case "addGlobalError":
+                    valid = false;
+                    return null;
+                case "getErrors":
+                    return Collections.emptyMap();
+                case "getGlobalErrors":
+                case "getGlobalMessages":
+                    return Collections.emptyList();
+                default:
+                    return Stubs.defaultValue(method);
+            }
+        }
+
+        private boolean isEqual(final Object proxy, final Object other) {
+            if (proxy == other) {
+                return true;
+            }
+
+            if (id == null || !(other instanceof Entity)) {
+                return false;
+            }
+
+            Entity otherEntity = (Entity) other;
+
+            return id.equals(otherEntity.getId()) && dataDefinition.equals(otherEntity.getDataDefinition());
+        }
+
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Entity> asList(final Object value) {
+        if (value == null) {
+            return Lists.newArrayList();
+        }
+
+        return (List<Entity>) value;
+    }
+
+    private static BigDecimal toDecimal(final Object value) {
+        if (value == null || value instanceof BigDecimal) {
+            return (BigDecimal) value;
+        }
+
+        return new BigDecimal(value.toString());
+    }
+
+}
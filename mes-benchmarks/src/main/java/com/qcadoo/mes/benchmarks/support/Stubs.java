@@ -0,0 +1,191 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.benchmarks.support;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+import com.qcadoo.model.api.NumberService;
+
+/**
+ * Helpers for wiring services outside of Spring context.
+ */
+public final class Stubs {
+
+    private static final int SCALE = 5;
+
+    private Stubs() {
+    }
+
+    /**
+     * Creates proxy of given interface. Object methods are identity based, other methods are answered by given handler.
+     */
+    public static <T> T proxy(final Class<T> type, final InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(Stubs.class.getClassLoader(), new Class<?>[] { type },
+                (proxy, method, args) -> {
+                    if (isObjectMethod(method)) {
+                        return invokeObjectMethod(proxy, method, args);
+                    }
+
+                    return handler.invoke(proxy, method, args);
+                }));
+    }
+
+    static boolean isObjectMethod(final Method method) {
+        return Object.class.equals(method.getDeclaringClass());
+    }
+
+    static Object invokeObjectMethod(final Object proxy, final Method method, final Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                return proxy.getClass().getInterfaces()[0].getSimpleName() + "@"
+                        + Integer.toHexString(System.identityHashCode(proxy));
+        }
+    }
+
+    /**
+     * @return value returned by not stubbed methods: null, false or zero
+     */
+    public static Object defaultValue(final Method method) {
+        Class<?> returnType = method.getReturnType();
+
+        if (!returnType.isPrimitive() || void.class.equals(returnType)) {
+            return null;
+        } else if (boolean.class.equals(returnType)) {
+            return false;
+        } else if (char.class.equals(returnType)) {
+            return '\0';
+        } else if (long.class.equals(returnType)) {
+            return 0L;
+        } else if (double.class.equals(returnType)) {
+            return 0d;
+        } else if (float.class.equals(returnType)) {
+            return 0f;
+        } else if (short.class.equals(returnType)) {
+            return (short) 0;
+        } else if (byte.class.equals(returnType)) {
+            return (byte) 0;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Number service with fixed math context and scale, close to the one used by the application.
+     */
+    public static NumberService numberService() {
+        return proxy(NumberService.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getMathContext":
+                    return MathContext.DECIMAL64;
+                case "setScale":
+                    return args[0] == null ? null : ((BigDecimal) args[0]).setScale(
+                            args.length > 1 ? (Integer) args[1] : SCALE, RoundingMode.HALF_EVEN);
+                case "format":
+                    return args[0] instanceof BigDecimal ? ((BigDecimal) args[0]).toPlainString() : String.valueOf(args[0]);
+                default:
+                    return defaultValue(method);
+            }
+        });
+    }
+
+    /**
+     * Creates instance of given class through its declared constructor, also when the class or constructor is not public.
+     */
+    public static Object construct(final Class<?> type, final Class<?>[] parameterTypes, final Object... args) {
+        try {
+            Constructor<?> constructor = type.getDeclaredConstructor(parameterTypes);
+            constructor.setAccessible(true);
+
+            return constructor.newInstance(args);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Invokes declared method of given class on given target (null for static methods), also when the class or method is not
+     * public.
+     */
+    public static Object invoke(final Class<?> type, final Object target, final String methodName,
+            final Class<?>[] parameterTypes, final Object... args) {
+        try {
+            Method method = type.getDeclaredMethod(methodName, parameterTypes);
+            method.setAccessible(true);
+
+            return method.invoke(target, args);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return class of given name, loaded by the class loader of benchmarks
+     */
+    public static Class<?> type(final String className) {
+        try {
+            return Class.forName(className);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * Sets value of all fields with given name, declared in class of given target or its super classes.
+     */
+    public static void inject(final Object target, final String fieldName, final Object value) {
+        boolean injected = false;
+
+        for (Class<?> type = target.getClass(); type != null; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                if (field.getName().equals(fieldName)) {
+                    field.setAccessible(true);
+
+                    try {
+                        field.set(target, value);
+                    } catch (IllegalAccessException e) {
+                        throw new IllegalStateException(e);
+                    }
+
+                    injected = true;
+                }
+            }
+        }
+
+        if (!injected) {
+            throw new IllegalArgumentException("No field " + fieldName + " in " + target.getClass().getName());
+        }
+    }
+
+}
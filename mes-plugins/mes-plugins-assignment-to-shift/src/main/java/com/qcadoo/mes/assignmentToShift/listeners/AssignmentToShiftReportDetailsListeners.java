@@ -35,13 +35,12 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
 import com.lowagie.text.DocumentException;
-import com.lowagie.text.PageSize;
 import com.qcadoo.mes.assignmentToShift.constants.AssignmentToShiftConstants;
 import com.qcadoo.mes.assignmentToShift.print.xls.AssignmentToShiftXlsService;
+import com.qcadoo.mes.basic.print.xls.XlsxReportPrintService;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.file.FileService;
-import com.qcadoo.report.api.ReportService;
 import com.qcadoo.view.api.ComponentState;
 import com.qcadoo.view.api.ComponentState.MessageType;
 import com.qcadoo.view.api.ViewDefinitionState;
@@ -56,14 +55,14 @@ public class AssignmentToShiftReportDetailsListeners {
     private FileService fileService;
 
     @Autowired
-    private ReportService reportService;
+    private XlsxReportPrintService xlsxReportPrintService;
 
     @Autowired
     private AssignmentToShiftXlsService assignmentReportXlsService;
 
     public void printAssignmentToShiftReport(final ViewDefinitionState view, final ComponentState state, final String[] args) {
-        reportService.printGeneratedReport(view, state, new String[] { args[0], AssignmentToShiftConstants.PLUGIN_IDENTIFIER,
-                AssignmentToShiftConstants.MODEL_ASSIGNMENT_TO_SHIFT_REPORT });
+        xlsxReportPrintService.printGeneratedReport(view, state, new String[] { args[0],
+                AssignmentToShiftConstants.PLUGIN_IDENTIFIER, AssignmentToShiftConstants.MODEL_ASSIGNMENT_TO_SHIFT_REPORT });
     }
 
     public void generateAssignmentToShiftReport(final ViewDefinitionState view, final ComponentState state, final String[] args) {
@@ -108,7 +107,7 @@ public class AssignmentToShiftReportDetailsListeners {
                 localePrefix);
 
         try {
-            assignmentReportXlsService.generateDocument(assignmentToShiftReportWithFileName, locale, PageSize.A3);
+            assignmentReportXlsService.generateDocument(assignmentToShiftReportWithFileName, locale);
 
         } catch (IOException e) {
             throw new IllegalStateException("Problem with saving report", e);
@@ -23,45 +23,62 @@
  */
 package com.qcadoo.mes.assignmentToShift.print.xls;
 
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
-import org.apache.commons.lang3.StringUtils;
 import org.joda.time.DateTime;
 import org.joda.time.Days;
+import org.joda.time.LocalDate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.qcadoo.mes.assignmentToShift.constants.AssignmentToShiftConstants;
 import com.qcadoo.mes.assignmentToShift.constants.AssignmentToShiftFields;
 import com.qcadoo.mes.assignmentToShift.constants.AssignmentToShiftReportFields;
+import com.qcadoo.mes.assignmentToShift.constants.OccupationType;
 import com.qcadoo.mes.assignmentToShift.constants.StaffAssignmentToShiftFields;
 import com.qcadoo.mes.assignmentToShift.constants.StaffAssignmentToShiftState;
+import com.qcadoo.mes.assignmentToShift.print.xls.AssignmentToShiftXlsModel.StaffAssignment;
 import com.qcadoo.mes.assignmentToShift.states.constants.AssignmentToShiftState;
-import com.qcadoo.mes.basic.ShiftsService;
-import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.mes.basic.constants.StaffFields;
+import com.qcadoo.mes.basic.shift.Shift;
 import com.qcadoo.mes.productionLines.constants.ProductionLinesConstants;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
-import com.qcadoo.model.api.search.SearchCriteriaBuilder;
-import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.model.api.search.JoinType;
 import com.qcadoo.model.api.search.SearchOrders;
+import com.qcadoo.model.api.search.SearchProjections;
 import com.qcadoo.model.api.search.SearchRestrictions;
+import com.qcadoo.model.constants.DictionaryFields;
+import com.qcadoo.model.constants.DictionaryItemFields;
+import com.qcadoo.model.constants.QcadooModelConstants;
 
 @Service
 public class AssignmentToShiftXlsHelper {
 
-    private static final String L_EMPTY = "";
+    private static final String L_OCCUPATION_TYPE = "occupationType";
 
-    @Autowired
-    private DataDefinitionService dataDefinitionService;
+    private static final String L_ID = "id";
+
+    private static final String L_DOT_ID = ".id";
+
+    private static final String L_ASSIGNMENT_TO_SHIFT_ID = "assignmentToShiftId";
+
+    private static final String L_PRODUCTION_LINE_ID = "productionLineId";
+
+    private static final String L_WORKER_NAME = "workerName";
+
+    private static final String L_WORKER_SURNAME = "workerSurname";
 
     @Autowired
-    private ShiftsService shiftsService;
+    private DataDefinitionService dataDefinitionService;
 
     public List<DateTime> getDaysBetweenGivenDates(final Entity assignmentToShiftReport) {
         List<DateTime> days = Lists.newLinkedList();
@@ -103,209 +120,213 @@ public class AssignmentToShiftXlsHelper {
                         assignmentToShiftReport.getBelongsToField(AssignmentToShiftReportFields.FACTORY))).list().getEntities();
     }
 
-    public List<Entity> getAssignmentToShift(final Entity shift, final Entity factory, final Date date) {
-        boolean shiftWorks = shiftsService.checkIfShiftWorkAtDate(date, shift);
-
-        if (shiftWorks) {
-            List<Entity> assignmentsToShift = dataDefinitionService
-                    .get(AssignmentToShiftConstants.PLUGIN_IDENTIFIER, AssignmentToShiftConstants.MODEL_ASSIGNMENT_TO_SHIFT)
-                    .find()
-                    .add(SearchRestrictions.belongsTo(AssignmentToShiftFields.SHIFT, shift))
-                    .add(SearchRestrictions.belongsTo(AssignmentToShiftFields.FACTORY, factory))
-                    .add(SearchRestrictions.or(SearchRestrictions.eq(AssignmentToShiftFields.STATE,
-                            AssignmentToShiftState.ACCEPTED.getStringValue()), SearchRestrictions.eq(
-                            AssignmentToShiftFields.STATE, AssignmentToShiftState.CORRECTED.getStringValue())))
-                    .add(SearchRestrictions.le(AssignmentToShiftFields.START_DATE, date))
-                    .addOrder(SearchOrders.desc(AssignmentToShiftFields.START_DATE)).list().getEntities();
-            return findCurrentAssignmentsToShift(date, assignmentsToShift);
-
-        } else {
-            return Lists.newArrayList();
-        }
-    }
+    public AssignmentToShiftXlsModel loadReportModel(final Entity assignmentToShiftReport) {
+        List<DateTime> days = getDaysBetweenGivenDates(assignmentToShiftReport);
+        Shift shift = new Shift(assignmentToShiftReport.getBelongsToField(AssignmentToShiftReportFields.SHIFT));
 
-    private List<Entity> findCurrentAssignmentsToShift(final Date date, List<Entity> assignmentsToShift) {
+        List<Entity> assignmentsToShift = getAssignmentsToShiftStartedUntil(
+                assignmentToShiftReport.getBelongsToField(AssignmentToShiftReportFields.SHIFT),
+                assignmentToShiftReport.getBelongsToField(AssignmentToShiftReportFields.FACTORY),
+                Iterables.getLast(days).toDate());
 
-        List<Entity> currentAssignments = Lists.newArrayList();
+        Map<LocalDate, List<Entity>> currentAssignmentsToShiftPerDay = Maps.newHashMap();
+        Map<Long, Entity> currentAssignmentsToShift = Maps.newHashMap();
 
-        Map<Entity, List<Entity>> assignmentsForCrews = assignmentsToShift.stream()
-                .filter(assignment -> assignment.getBelongsToField(AssignmentToShiftFields.CREW) != null)
-                .collect(Collectors.groupingBy(assignment -> assignment.getBelongsToField(AssignmentToShiftFields.CREW)));
-        assignmentsForCrews.put(
-                null,
-                assignmentsToShift.stream()
-                        .filter(assignment -> assignment.getBelongsToField(AssignmentToShiftFields.CREW) == null)
-                        .collect(Collectors.toList()));
-        List<Entity> crews = dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_CREW).find().list()
-                .getEntities();
-        for (Entity crew : crews) {
-            currentAssignments.addAll(findCurrentAssignmentsToShiftForCrew(date, assignmentsForCrews.get(crew)));
-        }
-        currentAssignments.addAll(findCurrentAssignmentsToShiftForCrew(date, assignmentsForCrews.get(null)));
-        return currentAssignments;
-    }
+        for (DateTime day : days) {
+            if (shift.worksAt(day.getDayOfWeek())) {
+                List<Entity> currentAssignmentsToShiftForDay = findCurrentAssignmentsToShift(day.toLocalDate(),
+                        assignmentsToShift);
 
-    private List<Entity> findCurrentAssignmentsToShiftForCrew(final Date date, List<Entity> assignmentsToShiftForCrew) {
+                currentAssignmentsToShiftPerDay.put(day.toLocalDate(), currentAssignmentsToShiftForDay);
 
-        List<Entity> currentAssignments = Lists.newArrayList();
-        if (assignmentsToShiftForCrew == null) {
-            return currentAssignments;
-        }
-        Date currentDate = date;
-        for (Entity assignmentToShift : assignmentsToShiftForCrew) {
-            Date assignmentDate = assignmentToShift.getDateField(AssignmentToShiftFields.START_DATE);
-            if (assignmentDate.before(currentDate)) {
-                if (currentAssignments.isEmpty()) {
-                    currentAssignments.add(assignmentToShift);
-                } else {
-                    return currentAssignments;
+                for (Entity assignmentToShift : currentAssignmentsToShiftForDay) {
+                    currentAssignmentsToShift.put(assignmentToShift.getId(), assignmentToShift);
                 }
-            } else if (assignmentDate.compareTo(currentDate) == 0) {
-                currentAssignments.add(assignmentToShift);
             }
-            currentDate = assignmentDate;
-        }
-        return currentAssignments;
-    }
-
-    public String getListOfWorkers(final List<Entity> staffAssignmentToShifts) {
-        if (staffAssignmentToShifts == null) {
-            return L_EMPTY;
         }
 
-        StringBuilder listOfWorkers = new StringBuilder();
-
-        for (Entity staffAssignmentToShift : staffAssignmentToShifts) {
-            Entity worker = staffAssignmentToShift.getBelongsToField(StaffAssignmentToShiftFields.WORKER);
+        ListMultimap<Long, StaffAssignment> staffAssignments = getStaffAssignments(currentAssignmentsToShift);
+        Map<LocalDate, List<StaffAssignment>> staffAssignmentsPerDay = Maps.newHashMap();
 
-            listOfWorkers.append(worker.getStringField(StaffFields.NAME));
-            listOfWorkers.append(" ");
-            listOfWorkers.append(worker.getStringField(StaffFields.SURNAME));
+        for (Map.Entry<LocalDate, List<Entity>> dayAssignmentsToShift : currentAssignmentsToShiftPerDay.entrySet()) {
+            List<StaffAssignment> staffAssignmentsForDay = Lists.newArrayList();
 
-            if (staffAssignmentToShifts.indexOf(staffAssignmentToShift) != (staffAssignmentToShifts.size() - 1)) {
-                listOfWorkers.append(", ");
+            for (Entity assignmentToShift : dayAssignmentsToShift.getValue()) {
+                staffAssignmentsForDay.addAll(staffAssignments.get(assignmentToShift.getId()));
             }
+
+            staffAssignmentsPerDay.put(dayAssignmentsToShift.getKey(), staffAssignmentsForDay);
         }
 
-        return listOfWorkers.toString();
-    }
+        List<Entity> occupationTypes = getOccupationTypes();
 
-    public List<String> getListOfWorker(final List<Entity> staffAssignmentToShifts) {
-        List<String> listOfWorkers = Lists.newArrayList();
+        return new AssignmentToShiftXlsModel(days, getProductionLines(),
+                findOccupationType(occupationTypes, OccupationType.WORK_ON_LINE.getStringValue()),
+                getOccupationTypesWithoutTechnicalCode(occupationTypes),
+                findOccupationType(occupationTypes, OccupationType.OTHER_CASE.getStringValue()), staffAssignmentsPerDay);
+    }
 
-        if (staffAssignmentToShifts == null) {
-            return listOfWorkers;
-        }
+    private List<Entity> getAssignmentsToShiftStartedUntil(final Entity shift, final Entity factory, final Date date) {
+        return dataDefinitionService
+                .get(AssignmentToShiftConstants.PLUGIN_IDENTIFIER, AssignmentToShiftConstants.MODEL_ASSIGNMENT_TO_SHIFT)
+                .find()
+                .add(SearchRestrictions.belongsTo(AssignmentToShiftFields.SHIFT, shift))
+                .add(SearchRestrictions.belongsTo(AssignmentToShiftFields.FACTORY, factory))
+                .add(SearchRestrictions.in(AssignmentToShiftFields.STATE,
+                        Lists.newArrayList(AssignmentToShiftState.ACCEPTED.getStringValue(),
+                                AssignmentToShiftState.CORRECTED.getStringValue())))
+                .add(SearchRestrictions.le(AssignmentToShiftFields.START_DATE, date))
+                .addOrder(SearchOrders.desc(AssignmentToShiftFields.START_DATE)).list().getEntities();
+    }
 
-        for (Entity staffAssignmentToShift : staffAssignmentToShifts) {
-            Entity workerEntity = staffAssignmentToShift.getBelongsToField(StaffAssignmentToShiftFields.WORKER);
+    /**
+     * Returns assignments to shift valid at given day - for each crew (and for assignments without crew) these are the ones with
+     * the latest start date not after the day. Crews are ordered by id, assignments without crew go last.
+     */
+    static List<Entity> findCurrentAssignmentsToShift(final LocalDate day, final List<Entity> assignmentsToShift) {
+        Map<Long, LocalDate> latestStartDates = Maps.newHashMap();
 
-            StringBuilder worker = new StringBuilder();
+        for (Entity assignmentToShift : assignmentsToShift) {
+            LocalDate startDate = getStartDate(assignmentToShift);
 
-            worker.append(workerEntity.getStringField(StaffFields.NAME));
-            worker.append(" ");
-            worker.append(workerEntity.getStringField(StaffFields.SURNAME));
+            if (startDate.isAfter(day)) {
+                continue;
+            }
 
-            String description = staffAssignmentToShift.getStringField(StaffAssignmentToShiftFields.DESCRIPTION);
+            Long crewId = getCrewId(assignmentToShift);
+            LocalDate latestStartDate = latestStartDates.get(crewId);
 
-            if (StringUtils.isNotEmpty(description)) {
-                worker.append(", ");
-                worker.append(description);
+            if ((latestStartDate == null) || startDate.isAfter(latestStartDate)) {
+                latestStartDates.put(crewId, startDate);
             }
-
-            listOfWorkers.add(worker.toString());
         }
 
-        return listOfWorkers;
-    }
+        List<Entity> currentAssignmentsToShift = Lists.newArrayList();
 
-    public String getListOfWorkersWithOtherCases(final List<Entity> staffAssignmentToShifts) {
-        if (staffAssignmentToShifts == null) {
-            return L_EMPTY;
+        for (Entity assignmentToShift : assignmentsToShift) {
+            if (getStartDate(assignmentToShift).equals(latestStartDates.get(getCrewId(assignmentToShift)))) {
+                currentAssignmentsToShift.add(assignmentToShift);
+            }
         }
 
-        StringBuilder listOfWorkersWithOtherCases = new StringBuilder();
-
-        for (Entity staffAssignmentToShift : staffAssignmentToShifts) {
-            Entity worker = staffAssignmentToShift.getBelongsToField(StaffAssignmentToShiftFields.WORKER);
+        currentAssignmentsToShift.sort(Comparator.comparing(AssignmentToShiftXlsHelper::getCrewId,
+                Comparator.nullsLast(Comparator.naturalOrder())));
 
-            listOfWorkersWithOtherCases.append(worker.getStringField(StaffFields.NAME));
-            listOfWorkersWithOtherCases.append(" ");
-            listOfWorkersWithOtherCases.append(worker.getStringField(StaffFields.SURNAME));
-            listOfWorkersWithOtherCases.append(" - ");
-            listOfWorkersWithOtherCases.append(staffAssignmentToShift
-                    .getStringField(StaffAssignmentToShiftFields.OCCUPATION_TYPE_NAME));
-
-            if (staffAssignmentToShifts.indexOf(staffAssignmentToShift) != (staffAssignmentToShifts.size() - 1)) {
-                listOfWorkersWithOtherCases.append(", ");
-            }
-        }
+        return currentAssignmentsToShift;
+    }
 
-        return listOfWorkersWithOtherCases.toString();
+    private static LocalDate getStartDate(final Entity assignmentToShift) {
+        return LocalDate.fromDateFields(assignmentToShift.getDateField(AssignmentToShiftFields.START_DATE));
     }
 
-    public List<String> getListOfWorkerWithOtherCases(final List<Entity> staffAssignmentToShifts) {
-        List<String> listOfWorkers = Lists.newArrayList();
+    private static Long getCrewId(final Entity assignmentToShift) {
+        Entity crew = assignmentToShift.getBelongsToField(AssignmentToShiftFields.CREW);
 
-        if (staffAssignmentToShifts == null) {
-            return listOfWorkers;
+        if (crew == null) {
+            return null;
         }
 
-        for (Entity staffAssignmentToShift : staffAssignmentToShifts) {
-            StringBuilder listOfWorkersWithOtherCases = new StringBuilder();
-
-            Entity worker = staffAssignmentToShift.getBelongsToField(StaffAssignmentToShiftFields.WORKER);
-
-            String occupationTypeName = staffAssignmentToShift.getStringField(StaffAssignmentToShiftFields.OCCUPATION_TYPE_NAME);
-            String description = staffAssignmentToShift.getStringField(StaffAssignmentToShiftFields.DESCRIPTION);
+        return crew.getId();
+    }
 
-            listOfWorkersWithOtherCases.append(worker.getStringField(StaffFields.NAME));
-            listOfWorkersWithOtherCases.append(" ");
-            listOfWorkersWithOtherCases.append(worker.getStringField(StaffFields.SURNAME));
+    private ListMultimap<Long, StaffAssignment> getStaffAssignments(final Map<Long, Entity> assignmentsToShift) {
+        ListMultimap<Long, StaffAssignment> staffAssignments = ArrayListMultimap.create();
 
-            if (StringUtils.isNotEmpty(description)) {
-                listOfWorkersWithOtherCases.append(", ");
-                listOfWorkersWithOtherCases.append(description);
-            }
+        if (assignmentsToShift.isEmpty()) {
+            return staffAssignments;
+        }
 
-            if (StringUtils.isNotEmpty(occupationTypeName)) {
-                listOfWorkersWithOtherCases.append(" - ");
-                listOfWorkersWithOtherCases.append(occupationTypeName);
+        List<Entity> projections = dataDefinitionService
+                .get(AssignmentToShiftConstants.PLUGIN_IDENTIFIER, AssignmentToShiftConstants.MODEL_STAFF_ASSIGNMENT_TO_SHIFT)
+                .find()
+                .createAlias(StaffAssignmentToShiftFields.ASSIGNMENT_TO_SHIFT, StaffAssignmentToShiftFields.ASSIGNMENT_TO_SHIFT,
+                        JoinType.INNER)
+                .createAlias(StaffAssignmentToShiftFields.WORKER, StaffAssignmentToShiftFields.WORKER, JoinType.INNER)
+                .createAlias(StaffAssignmentToShiftFields.PRODUCTION_LINE, StaffAssignmentToShiftFields.PRODUCTION_LINE,
+                        JoinType.LEFT)
+                .add(SearchRestrictions.in(StaffAssignmentToShiftFields.ASSIGNMENT_TO_SHIFT + L_DOT_ID,
+                        assignmentsToShift.keySet()))
+                .add(SearchRestrictions.in(StaffAssignmentToShiftFields.STATE,
+                        Lists.newArrayList(StaffAssignmentToShiftState.ACCEPTED.getStringValue(),
+                                StaffAssignmentToShiftState.CORRECTED.getStringValue())))
+                .setProjection(SearchProjections.list()
+                        .add(SearchProjections.alias(SearchProjections.field(L_ID), L_ID))
+                        .add(SearchProjections.alias(
+                                SearchProjections.field(StaffAssignmentToShiftFields.ASSIGNMENT_TO_SHIFT + L_DOT_ID),
+                                L_ASSIGNMENT_TO_SHIFT_ID))
+                        .add(SearchProjections.alias(
+                                SearchProjections.field(StaffAssignmentToShiftFields.PRODUCTION_LINE + L_DOT_ID),
+                                L_PRODUCTION_LINE_ID))
+                        .add(SearchProjections.alias(SearchProjections.field(StaffAssignmentToShiftFields.STATE),
+                                StaffAssignmentToShiftFields.STATE))
+                        .add(SearchProjections.alias(SearchProjections.field(StaffAssignmentToShiftFields.OCCUPATION_TYPE),
+                                StaffAssignmentToShiftFields.OCCUPATION_TYPE))
+                        .add(SearchProjections.alias(SearchProjections.field(StaffAssignmentToShiftFields.OCCUPATION_TYPE_NAME),
+                                StaffAssignmentToShiftFields.OCCUPATION_TYPE_NAME))
+                        .add(SearchProjections.alias(SearchProjections.field(StaffAssignmentToShiftFields.DESCRIPTION),
+                                StaffAssignmentToShiftFields.DESCRIPTION))
+                        .add(SearchProjections.alias(
+                                SearchProjections.field(StaffAssignmentToShiftFields.WORKER + "." + StaffFields.NAME),
+                                L_WORKER_NAME))
+                        .add(SearchProjections.alias(
+                                SearchProjections.field(StaffAssignmentToShiftFields.WORKER + "." + StaffFields.SURNAME),
+                                L_WORKER_SURNAME)))
+                .addOrder(SearchOrders.asc(L_ID)).list().getEntities();
+
+        for (Entity projection : projections) {
+            Long assignmentToShiftId = (Long) projection.getField(L_ASSIGNMENT_TO_SHIFT_ID);
+            Entity assignmentToShift = assignmentsToShift.get(assignmentToShiftId);
+
+            if (getExpectedStaffState(assignmentToShift).equals(projection.getStringField(StaffAssignmentToShiftFields.STATE))) {
+                staffAssignments.put(assignmentToShiftId,
+                        new StaffAssignment((Long) projection.getField(L_PRODUCTION_LINE_ID),
+                                projection.getStringField(StaffAssignmentToShiftFields.OCCUPATION_TYPE),
+                                projection.getStringField(StaffAssignmentToShiftFields.OCCUPATION_TYPE_NAME),
+                                projection.getStringField(StaffAssignmentToShiftFields.DESCRIPTION),
+                                projection.getStringField(L_WORKER_NAME), projection.getStringField(L_WORKER_SURNAME)));
             }
+        }
 
-            listOfWorkers.add(listOfWorkersWithOtherCases.toString());
+        return staffAssignments;
+    }
 
+    private String getExpectedStaffState(final Entity assignmentToShift) {
+        if (AssignmentToShiftState.CORRECTED.getStringValue().equals(
+                assignmentToShift.getStringField(AssignmentToShiftFields.STATE))) {
+            return StaffAssignmentToShiftState.CORRECTED.getStringValue();
         }
 
-        return listOfWorkers;
+        return StaffAssignmentToShiftState.ACCEPTED.getStringValue();
     }
 
-    public List<Entity> getStaffsList(final Entity assignmentToShift, final String occupationType, final Entity productionLine) {
-        List<Entity> staffs = Lists.newArrayList();
+    private List<Entity> getOccupationTypes() {
+        return dataDefinitionService.get(QcadooModelConstants.PLUGIN_IDENTIFIER, QcadooModelConstants.MODEL_DICTIONARY_ITEM)
+                .find().createAlias(DictionaryItemFields.DICTIONARY, DictionaryItemFields.DICTIONARY, JoinType.INNER)
+                .add(SearchRestrictions.eq(DictionaryItemFields.DICTIONARY + "." + DictionaryFields.NAME, L_OCCUPATION_TYPE))
+                .addOrder(SearchOrders.asc(L_ID)).list().getEntities();
+    }
 
-        if (assignmentToShift == null) {
-            return staffs;
+    private Entity findOccupationType(final List<Entity> occupationTypes, final String technicalCode) {
+        for (Entity occupationType : occupationTypes) {
+            if (technicalCode.equals(occupationType.getStringField(DictionaryItemFields.TECHNICAL_CODE))) {
+                return occupationType;
+            }
         }
 
-        SearchCriterion criterion = SearchRestrictions.eq(StaffAssignmentToShiftFields.OCCUPATION_TYPE, occupationType);
-
-        SearchCriteriaBuilder builder = assignmentToShift.getHasManyField(AssignmentToShiftFields.STAFF_ASSIGNMENT_TO_SHIFTS)
-                .find().add(criterion)
-                .add(SearchRestrictions.belongsTo(StaffAssignmentToShiftFields.PRODUCTION_LINE, productionLine));
+        return null;
+    }
 
-        String assignmentState = assignmentToShift.getStringField(AssignmentToShiftFields.STATE);
+    private List<Entity> getOccupationTypesWithoutTechnicalCode(final List<Entity> occupationTypes) {
+        List<Entity> occupationTypesWithoutTechnicalCode = Lists.newArrayList();
 
-        if (AssignmentToShiftState.CORRECTED.getStringValue().equals(assignmentState)) {
-            staffs = builder
-                    .add(SearchRestrictions.eq(StaffAssignmentToShiftFields.STATE,
-                            StaffAssignmentToShiftState.CORRECTED.getStringValue())).list().getEntities();
-        } else if (!AssignmentToShiftState.DRAFT.getStringValue().equals(assignmentState)) {
-            staffs = builder
-                    .add(SearchRestrictions.eq(StaffAssignmentToShiftFields.STATE,
-                            StaffAssignmentToShiftState.ACCEPTED.getStringValue())).list().getEntities();
+        for (Entity occupationType : occupationTypes) {
+            if ((occupationType.getStringField(DictionaryItemFields.TECHNICAL_CODE) == null)
+                    && occupationType.getBooleanField(DictionaryItemFields.ACTIVE)) {
+                occupationTypesWithoutTechnicalCode.add(occupationType);
+            }
         }
 
-        return staffs;
+        return occupationTypesWithoutTechnicalCode;
     }
 
     public List<Entity> getProductionLines() {
@@ -0,0 +1,177 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.assignmentToShift.print.xls;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.commons.lang3.StringUtils;
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Data of the assignment to shift report, loaded once for the whole date range so that the sheet can be rendered without any
+ * further queries.
+ */
+public class AssignmentToShiftXlsModel {
+
+    private final List<DateTime> days;
+
+    private final List<Entity> productionLines;
+
+    private final Entity workOnLineOccupationType;
+
+    private final List<Entity> occupationTypesWithoutTechnicalCode;
+
+    private final Entity otherCaseOccupationType;
+
+    private final Map<LocalDate, List<StaffAssignment>> staffAssignmentsPerDay;
+
+    public AssignmentToShiftXlsModel(final List<DateTime> days, final List<Entity> productionLines,
+            final Entity workOnLineOccupationType, final List<Entity> occupationTypesWithoutTechnicalCode,
+            final Entity otherCaseOccupationType, final Map<LocalDate, List<StaffAssignment>> staffAssignmentsPerDay) {
+        this.days = ImmutableList.copyOf(days);
+        this.productionLines = ImmutableList.copyOf(productionLines);
+        this.workOnLineOccupationType = workOnLineOccupationType;
+        this.occupationTypesWithoutTechnicalCode = ImmutableList.copyOf(occupationTypesWithoutTechnicalCode);
+        this.otherCaseOccupationType = otherCaseOccupationType;
+        this.staffAssignmentsPerDay = ImmutableMap.copyOf(staffAssignmentsPerDay);
+    }
+
+    public List<DateTime> getDays() {
+        return days;
+    }
+
+    public int getNumberOfDays() {
+        return days.size() - 1;
+    }
+
+    public List<Entity> getProductionLines() {
+        return productionLines;
+    }
+
+    public Entity getWorkOnLineOccupationType() {
+        return workOnLineOccupationType;
+    }
+
+    public List<Entity> getOccupationTypesWithoutTechnicalCode() {
+        return occupationTypesWithoutTechnicalCode;
+    }
+
+    public Entity getOtherCaseOccupationType() {
+        return otherCaseOccupationType;
+    }
+
+    /**
+     * Returns staff of the assignments to shift valid at given day, with given occupation type and production line (null
+     * production line means staff not assigned to any line).
+     */
+    public List<StaffAssignment> getStaffAssignments(final DateTime day, final String occupationType,
+            final Long productionLineId) {
+        List<StaffAssignment> staffAssignments = staffAssignmentsPerDay.get(day.toLocalDate());
+
+        if (staffAssignments == null) {
+            return Collections.emptyList();
+        }
+
+        List<StaffAssignment> filteredStaffAssignments = Lists.newArrayList();
+
+        for (StaffAssignment staffAssignment : staffAssignments) {
+            if (Objects.equals(occupationType, staffAssignment.getOccupationType())
+                    && Objects.equals(productionLineId, staffAssignment.getProductionLineId())) {
+                filteredStaffAssignments.add(staffAssignment);
+            }
+        }
+
+        return filteredStaffAssignments;
+    }
+
+    public static class StaffAssignment {
+
+        private final Long productionLineId;
+
+        private final String occupationType;
+
+        private final String occupationTypeName;
+
+        private final String description;
+
+        private final String workerName;
+
+        private final String workerSurname;
+
+        public StaffAssignment(final Long productionLineId, final String occupationType, final String occupationTypeName,
+                final String description, final String workerName, final String workerSurname) {
+            this.productionLineId = productionLineId;
+            this.occupationType = occupationType;
+            this.occupationTypeName = occupationTypeName;
+            this.description = description;
+            this.workerName = workerName;
+            this.workerSurname = workerSurname;
+        }
+
+        public Long getProductionLineId() {
+            return productionLineId;
+        }
+
+        public String getOccupationType() {
+            return occupationType;
+        }
+
+        public String getWorker() {
+            StringBuilder worker = new StringBuilder();
+
+            worker.append(workerName);
+            worker.append(" ");
+            worker.append(workerSurname);
+
+            if (StringUtils.isNotEmpty(description)) {
+                worker.append(", ");
+                worker.append(description);
+            }
+
+            return worker.toString();
+        }
+
+        public String getWorkerWithOtherCase() {
+            StringBuilder worker = new StringBuilder(getWorker());
+
+            if (StringUtils.isNotEmpty(occupationTypeName)) {
+                worker.append(" - ");
+                worker.append(occupationTypeName);
+            }
+
+            return worker.toString();
+        }
+
+    }
+
+}
@@ -28,10 +28,8 @@ import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 
-import org.apache.poi.hssf.usermodel.HSSFCell;
-import org.apache.poi.hssf.usermodel.HSSFRow;
-import org.apache.poi.hssf.usermodel.HSSFSheet;
-import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.usermodel.PrintSetup;
+import org.apache.poi.ss.usermodel.Row;
 import org.joda.time.DateTime;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -42,21 +40,17 @@ import com.qcadoo.mes.assignmentToShift.constants.AssignmentToShiftFields;
 import com.qcadoo.mes.assignmentToShift.constants.AssignmentToShiftReportConstants;
 import com.qcadoo.mes.assignmentToShift.constants.AssignmentToShiftReportFields;
 import com.qcadoo.mes.assignmentToShift.constants.OccupationType;
+import com.qcadoo.mes.assignmentToShift.print.xls.AssignmentToShiftXlsModel.StaffAssignment;
 import com.qcadoo.mes.basic.constants.FactoryFields;
 import com.qcadoo.mes.basic.constants.ShiftFields;
+import com.qcadoo.mes.basic.print.xls.StreamingXlsxReportService;
+import com.qcadoo.mes.basic.print.xls.XlsRowWriter;
 import com.qcadoo.mes.productionLines.constants.ProductionLineFields;
-import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
-import com.qcadoo.model.api.search.SearchRestrictions;
-import com.qcadoo.model.constants.DictionaryFields;
 import com.qcadoo.model.constants.DictionaryItemFields;
-import com.qcadoo.model.constants.QcadooModelConstants;
-import com.qcadoo.report.api.xls.XlsDocumentService;
 
 @Service
-public class AssignmentToShiftXlsService extends XlsDocumentService {
-
-    public static final String L_OCCUPATION_TYPE = "occupationType";
+public class AssignmentToShiftXlsService extends StreamingXlsxReportService {
 
     @Autowired
     private TranslationService translationService;
@@ -67,22 +61,26 @@ public class AssignmentToShiftXlsService extends XlsDocumentService {
     @Autowired
     private AssignmentToShiftXlsStyleHelper assignmentToShiftXlsStyleHelper;
 
-    @Autowired
-    private DataDefinitionService dataDefinitionService;
-
     @Override
     public String getReportTitle(final Locale locale) {
         return translationService.translate(AssignmentToShiftReportConstants.TITLE, locale);
     }
 
     @Override
-    protected void addHeader(final HSSFSheet sheet, final Locale locale, final Entity assignmentToShiftReport) {
-        createHeaderForAuthor(sheet, locale, assignmentToShiftReport);
-        createHeaderForAssignmentToShift(sheet, locale, assignmentToShiftReport);
+    protected void buildSheet(final XlsRowWriter writer, final Entity assignmentToShiftReport, final Locale locale) {
+        writer.getSheet().getPrintSetup().setPaperSize(PrintSetup.A3_PAPERSIZE);
+
+        addHeader(writer, locale, assignmentToShiftReport);
+        addSeries(writer, assignmentToShiftReport);
+    }
+
+    private void addHeader(final XlsRowWriter writer, final Locale locale, final Entity assignmentToShiftReport) {
+        createHeaderForAuthor(writer, locale, assignmentToShiftReport);
+        createHeaderForAssignmentToShift(writer, locale, assignmentToShiftReport);
     }
 
-    private void createHeaderForAuthor(final HSSFSheet sheet, final Locale locale, final Entity assignmentToShiftReport) {
-        HSSFRow headerAuthorLine = sheet.createRow(1);
+    private void createHeaderForAuthor(final XlsRowWriter writer, final Locale locale, final Entity assignmentToShiftReport) {
+        Row headerAuthorLine = writer.skipRows(1).nextRow();
 
         String shift = translationService.translate(AssignmentToShiftReportConstants.COLUMN_HEADER_SHIFT, locale) + " "
                 + assignmentToShiftReport.getBelongsToField(AssignmentToShiftFields.SHIFT).getStringField(ShiftFields.NAME);
@@ -94,351 +92,165 @@ public class AssignmentToShiftXlsService extends XlsDocumentService {
                 + DateFormat.getDateInstance()
                         .format(assignmentToShiftReport.getField(AssignmentToShiftReportFields.UPDATE_DATE));
 
-        HSSFCell headerAuthorLineCell0 = headerAuthorLine.createCell(0);
-        headerAuthorLineCell0.setCellValue(shift);
-        HSSFCell headerAuthorLineCell3 = headerAuthorLine.createCell(3);
-        headerAuthorLineCell3.setCellValue(date);
-        HSSFCell headerAuthorLineCell6 = headerAuthorLine.createCell(6);
-        headerAuthorLineCell6.setCellValue(user);
+        headerAuthorLine.createCell(0).setCellValue(shift);
+        headerAuthorLine.createCell(3).setCellValue(date);
+        headerAuthorLine.createCell(6).setCellValue(user);
 
         headerAuthorLine.setHeightInPoints(30);
 
-        HSSFRow headerAuthorFactoryLine = sheet.createRow(2);
-        HSSFCell headerAuthorFactoryLineCell0 = headerAuthorFactoryLine.createCell(0);
-        headerAuthorFactoryLineCell0.setCellValue(factory);
+        Row headerAuthorFactoryLine = writer.nextRow();
+        headerAuthorFactoryLine.createCell(0).setCellValue(factory);
 
         headerAuthorFactoryLine.setHeightInPoints(20);
 
-        assignmentToShiftXlsStyleHelper.addMarginsAndStylesForAuthor(sheet, 1,
+        assignmentToShiftXlsStyleHelper.addMarginsAndStylesForAuthor(writer, headerAuthorLine,
                 assignmentToShiftXlsHelper.getNumberOfDaysBetweenGivenDates(assignmentToShiftReport));
-        assignmentToShiftXlsStyleHelper.addMarginsAndStylesForAuthorFactory(sheet, 2,
+        assignmentToShiftXlsStyleHelper.addMarginsAndStylesForAuthorFactory(writer, headerAuthorFactoryLine,
                 assignmentToShiftXlsHelper.getNumberOfDaysBetweenGivenDates(assignmentToShiftReport));
     }
 
-    private void createHeaderForAssignmentToShift(final HSSFSheet sheet, final Locale locale,
+    private void createHeaderForAssignmentToShift(final XlsRowWriter writer, final Locale locale,
             final Entity assignmentToShiftReport) {
         List<DateTime> days = assignmentToShiftXlsHelper.getDaysBetweenGivenDates(assignmentToShiftReport);
 
+        writer.skipRows(1);
+
         if (days != null) {
-            HSSFRow headerAssignmentToShift = sheet.createRow(4);
+            Row headerAssignmentToShift = writer.nextRow();
 
             String occupationType = translationService.translate(AssignmentToShiftReportConstants.COLUMN_HEADER_OCCUPATIONTYPE,
                     locale);
 
-            HSSFCell cell0 = headerAssignmentToShift.createCell(0);
-            cell0.setCellValue(occupationType);
+            headerAssignmentToShift.createCell(0).setCellValue(occupationType);
 
             int columnNumber = 1;
             for (DateTime day : days) {
-                HSSFCell cellDay = headerAssignmentToShift.createCell(columnNumber);
-
-                cellDay.setCellValue(translationService.translate(AssignmentToShiftReportConstants.COLUMN_HEADER_DAY, locale,
-                        DateFormat.getDateInstance().format(new Date(day.getMillis()))));
+                headerAssignmentToShift.createCell(columnNumber).setCellValue(
+                        translationService.translate(AssignmentToShiftReportConstants.COLUMN_HEADER_DAY, locale,
+                                DateFormat.getDateInstance().format(new Date(day.getMillis()))));
 
                 columnNumber += 3;
             }
 
             headerAssignmentToShift.setHeightInPoints(14);
 
-            assignmentToShiftXlsStyleHelper.addMarginsAndStylesForAssignmentToShift(sheet, 4,
+            assignmentToShiftXlsStyleHelper.addMarginsAndStylesForAssignmentToShift(writer, headerAssignmentToShift,
                     assignmentToShiftXlsHelper.getNumberOfDaysBetweenGivenDates(assignmentToShiftReport));
+        } else {
+            writer.skipRows(1);
         }
     }
 
-    @Override
-    protected void addSeries(final HSSFSheet sheet, final Entity assignmentToShiftReport) {
-        List<DateTime> days = assignmentToShiftXlsHelper.getDaysBetweenGivenDates(assignmentToShiftReport);
-
-        if (days != null) {
-            int rowNum = 5;
-
-            List<Entity> occupationTypesWithoutTechnicalCode = getOccupationTypeDictionaryWithoutTechnicalCode();
-            List<Entity> productionlines = assignmentToShiftXlsHelper.getProductionLines();
+    protected void addSeries(final XlsRowWriter writer, final Entity assignmentToShiftReport) {
+        AssignmentToShiftXlsModel reportModel = assignmentToShiftXlsHelper.loadReportModel(assignmentToShiftReport);
 
-            if (!productionlines.isEmpty()) {
-                rowNum = fillColumnWithStaffForWorkOnLine(sheet, rowNum, assignmentToShiftReport, days, productionlines,
-                        getDictionaryItemWithProductionOnLine());
-            }
+        Entity workOnLineOccupationType = reportModel.getWorkOnLineOccupationType();
 
-            for (Entity dictionaryItem : occupationTypesWithoutTechnicalCode) {
-                rowNum = fillColumnWithStaffForOtherTypes(sheet, rowNum, assignmentToShiftReport, days, dictionaryItem);
+        if (workOnLineOccupationType != null) {
+            for (Entity productionLine : reportModel.getProductionLines()) {
+                fillColumnWithStaffForWorkOnLine(writer, reportModel, productionLine, workOnLineOccupationType);
             }
-
-            fillColumnWithStaffForOtherTypes(sheet, rowNum, assignmentToShiftReport, days, getDictionaryItemWithOtherCase());
-
-            sheet.autoSizeColumn(0);
         }
-    }
-
-    private int fillColumnWithStaffForWorkOnLine(final HSSFSheet sheet, int rowNum, final Entity assignmentToShiftReport,
-            final List<DateTime> days, final List<Entity> productionLines, final Entity dictionaryItem) {
-        if ((assignmentToShiftReport != null) && (days != null) && (productionLines != null)) {
-            for (Entity productionLine : productionLines) {
-                int rowNumFromLastSection = rowNum;
-                int numberOfColumnsForWorkers = getNumberOfRowsForWorkers(assignmentToShiftReport, days, productionLine,
-                        dictionaryItem);
-
-                for (int i = 0; i < numberOfColumnsForWorkers; i++) {
-                    HSSFRow row = sheet.createRow(rowNum);
-                    rowNum++;
-                }
-
-                String productionLineValue = null;
-
-                if (productionLine.getStringField(ProductionLineFields.PLACE) == null) {
-                    productionLineValue = productionLine.getStringField(ProductionLineFields.NUMBER);
-                } else {
-                    productionLineValue = productionLine.getStringField(ProductionLineFields.NUMBER) + "-"
-                            + productionLine.getStringField(ProductionLineFields.PLACE);
-                }
-
-                HSSFRow firstRowInSection = null;
-
-                if (sheet.getRow(rowNumFromLastSection) == null) {
-                    firstRowInSection = sheet.createRow(rowNumFromLastSection);
-
-                    rowNum++;
-                } else {
-                    firstRowInSection = sheet.getRow(rowNumFromLastSection);
-
-                }
-
-                HSSFCell cell = firstRowInSection.createCell(0);
-                cell.setCellValue(productionLineValue);
-                sheet.addMergedRegion(new CellRangeAddress(rowNumFromLastSection, rowNum - 1, 0, 0));
-
-                int columnNumber = 1;
-                int maxLength = 0;
-
-                for (DateTime day : days) {
-                    List<Entity> assignmentsToShift = assignmentToShiftXlsHelper.getAssignmentToShift(
-                            assignmentToShiftReport.getBelongsToField(AssignmentToShiftReportFields.SHIFT),
-                            assignmentToShiftReport.getBelongsToField(AssignmentToShiftReportFields.FACTORY), day.toDate());
-
-                    if (assignmentsToShift == null || assignmentsToShift.isEmpty()) {
-                        columnNumber += 3;
 
-                        continue;
-                    }
-                    List<Entity> staffs = Lists.newArrayList();
-                    for (Entity assignmentToShift : assignmentsToShift) {
-                        List<Entity> staffsForDay = assignmentToShiftXlsHelper.getStaffsList(assignmentToShift,
-                                dictionaryItem.getStringField(DictionaryItemFields.NAME), productionLine);
-                        staffs.addAll(staffsForDay);
-                    }
-                    if (staffs.isEmpty()) {
-                        columnNumber += 3;
-
-                        continue;
-                    }
-
-                    String staffsValue = assignmentToShiftXlsHelper.getListOfWorkers(staffs);
-
-                    List<String> workers = assignmentToShiftXlsHelper.getListOfWorker(staffs);
-
-                    int rowIndex = rowNumFromLastSection;
-
-                    for (String worker : workers) {
-                        sheet.getRow(rowIndex).createCell(columnNumber).setCellValue(worker);
-                        rowIndex++;
-                    }
-
-                    if (workers.isEmpty()) {
-                        sheet.getRow(rowIndex).createCell(columnNumber).setCellValue(" ");
-
-                    }
-
-                    if (maxLength < staffsValue.length()) {
-                        maxLength = staffsValue.length();
-                    }
-
-                    columnNumber += 3;
-                }
+        for (Entity occupationType : reportModel.getOccupationTypesWithoutTechnicalCode()) {
+            fillColumnWithStaffForOtherTypes(writer, reportModel, occupationType);
+        }
 
-                for (int i = rowNumFromLastSection; i < rowNum; i++) {
-                    assignmentToShiftXlsStyleHelper.addMarginsAndStylesForSeries(sheet, i,
-                            assignmentToShiftXlsHelper.getNumberOfDaysBetweenGivenDates(assignmentToShiftReport));
+        Entity otherCaseOccupationType = reportModel.getOtherCaseOccupationType();
 
-                }
-            }
+        if (otherCaseOccupationType != null) {
+            fillColumnWithStaffForOtherTypes(writer, reportModel, otherCaseOccupationType);
         }
 
-        return rowNum;
+        writer.getSheet().setColumnWidth(0, 8000);
     }
 
-    private int getNumberOfRowsForWorkers(final Entity assignmentToShiftReport, final List<DateTime> days,
-            final Entity productionLine, final Entity dictionaryItem) {
-        int numberOfWorkers = 0;
+    private void fillColumnWithStaffForWorkOnLine(final XlsRowWriter writer,
+            final AssignmentToShiftXlsModel reportModel, final Entity productionLine, final Entity occupationType) {
+        String productionLineValue;
 
-        for (DateTime day : days) {
-            List<Entity> assignmentsToShift = assignmentToShiftXlsHelper.getAssignmentToShift(
-                    assignmentToShiftReport.getBelongsToField(AssignmentToShiftFields.SHIFT),
-                    assignmentToShiftReport.getBelongsToField(AssignmentToShiftReportFields.FACTORY), day.toDate());
+        if (productionLine.getStringField(ProductionLineFields.PLACE) == null) {
+            productionLineValue = productionLine.getStringField(ProductionLineFields.NUMBER);
+        } else {
+            productionLineValue = productionLine.getStringField(ProductionLineFields.NUMBER) + "-"
+                    + productionLine.getStringField(ProductionLineFields.PLACE);
+        }
 
-            List<Entity> staffs = Lists.newArrayList();
-            for (Entity assignmentToShift : assignmentsToShift) {
-                staffs.addAll(assignmentToShiftXlsHelper.getStaffsList(assignmentToShift,
-                        dictionaryItem.getStringField(DictionaryItemFields.NAME), productionLine));
-            }
+        List<List<String>> workersPerDay = Lists.newArrayList();
 
-            List<String> workers = assignmentToShiftXlsHelper.getListOfWorker(staffs);
+        for (DateTime day : reportModel.getDays()) {
+            List<String> workers = Lists.newArrayList();
 
-            if (workers.size() > numberOfWorkers) {
-                numberOfWorkers = workers.size();
+            for (StaffAssignment staffAssignment : reportModel.getStaffAssignments(day,
+                    occupationType.getStringField(DictionaryItemFields.NAME), productionLine.getId())) {
+                workers.add(staffAssignment.getWorker());
             }
+
+            workersPerDay.add(workers);
         }
 
-        return numberOfWorkers;
+        fillSection(writer, reportModel, productionLineValue, workersPerDay);
     }
 
-    private int getNumberOfRowsForWorkersForOtherTypes(final Entity assignmentToShiftReport, final List<DateTime> days,
-            final Entity dictionaryItem) {
-        int numberOfWorkers = 0;
+    private void fillColumnWithStaffForOtherTypes(final XlsRowWriter writer, final AssignmentToShiftXlsModel reportModel,
+            final Entity occupationType) {
+        boolean isOtherCase = OccupationType.OTHER_CASE.getStringValue().equals(
+                occupationType.getStringField(DictionaryItemFields.TECHNICAL_CODE));
 
-        for (DateTime day : days) {
-            List<Entity> assignmentsToShift = assignmentToShiftXlsHelper.getAssignmentToShift(
-                    assignmentToShiftReport.getBelongsToField(AssignmentToShiftFields.SHIFT),
-                    assignmentToShiftReport.getBelongsToField(AssignmentToShiftReportFields.FACTORY), day.toDate());
-
-            List<Entity> staffs = Lists.newArrayList();
-            for (Entity assignmentToShift : assignmentsToShift) {
-                staffs.addAll(assignmentToShiftXlsHelper.getStaffsList(assignmentToShift,
-                        dictionaryItem.getStringField(DictionaryItemFields.NAME), null));
-            }
+        List<List<String>> workersPerDay = Lists.newArrayList();
 
+        for (DateTime day : reportModel.getDays()) {
             List<String> workers = Lists.newArrayList();
 
-            if (OccupationType.OTHER_CASE.getStringValue()
-                    .equals(dictionaryItem.getStringField(DictionaryItemFields.TECHNICAL_CODE))) {
-                workers = assignmentToShiftXlsHelper.getListOfWorkerWithOtherCases(staffs);
-            } else {
-                workers = assignmentToShiftXlsHelper.getListOfWorker(staffs);
+            for (StaffAssignment staffAssignment : reportModel.getStaffAssignments(day,
+                    occupationType.getStringField(DictionaryItemFields.NAME), null)) {
+                if (isOtherCase) {
+                    workers.add(staffAssignment.getWorkerWithOtherCase());
+                } else {
+                    workers.add(staffAssignment.getWorker());
+                }
             }
 
-            if (workers.size() > numberOfWorkers) {
-                numberOfWorkers = workers.size();
-            }
+            workersPerDay.add(workers);
         }
 
-        return numberOfWorkers;
+        fillSection(writer, reportModel, occupationType.getStringField(DictionaryItemFields.NAME), workersPerDay);
     }
 
-    private int fillColumnWithStaffForOtherTypes(final HSSFSheet sheet, int rowNum, final Entity assignmentToShiftReport,
-            final List<DateTime> days, final Entity dictionaryItem) {
-        if ((assignmentToShiftReport != null) && (days != null) && (dictionaryItem != null)) {
-            int rowNumFromLastSection = rowNum;
+    private void fillSection(final XlsRowWriter writer, final AssignmentToShiftXlsModel reportModel, final String sectionValue,
+            final List<List<String>> workersPerDay) {
+        int firstRowNumber = writer.getRowNumber();
+        int numberOfRowsForWorkers = 1;
 
-            int numberOfColumnsForWorkers = getNumberOfRowsForWorkersForOtherTypes(assignmentToShiftReport, days, dictionaryItem);
-
-            for (int i = 0; i < numberOfColumnsForWorkers; i++) {
-                HSSFRow row = sheet.createRow(rowNum);
-                rowNum++;
-            }
-
-            String occupationTypeValue = dictionaryItem.getStringField(DictionaryItemFields.NAME);
-
-            HSSFRow firstRowInSection = null;
+        for (List<String> workers : workersPerDay) {
+            numberOfRowsForWorkers = Math.max(numberOfRowsForWorkers, workers.size());
+        }
 
-            if (sheet.getRow(rowNumFromLastSection) == null) {
-                firstRowInSection = sheet.createRow(rowNumFromLastSection);
-                rowNum++;
-            } else {
-                firstRowInSection = sheet.getRow(rowNumFromLastSection);
+        for (int rowIndex = 0; rowIndex < numberOfRowsForWorkers; rowIndex++) {
+            Row row = writer.nextRow();
 
+            if (rowIndex == 0) {
+                row.createCell(0).setCellValue(sectionValue);
             }
 
-            HSSFCell cell = firstRowInSection.createCell(0);
-            cell.setCellValue(occupationTypeValue);
-            sheet.addMergedRegion(new CellRangeAddress(rowNumFromLastSection, rowNum - 1, 0, 0));
-
             int columnNumber = 1;
 
-            for (DateTime day : days) {
-                List<Entity> assignmentsToShift = assignmentToShiftXlsHelper.getAssignmentToShift(
-                        assignmentToShiftReport.getBelongsToField(AssignmentToShiftReportFields.SHIFT),
-                        assignmentToShiftReport.getBelongsToField(AssignmentToShiftReportFields.FACTORY), day.toDate());
-
-                if (assignmentsToShift == null || assignmentsToShift.isEmpty()) {
-                    columnNumber += 3;
-
-                    continue;
-                }
-                List<Entity> staffs = Lists.newArrayList();
-                for (Entity assignmentToShift : assignmentsToShift) {
-                    staffs.addAll(assignmentToShiftXlsHelper.getStaffsList(assignmentToShift,
-                            dictionaryItem.getStringField(DictionaryItemFields.NAME), null));
-                }
-
-                if (staffs.isEmpty()) {
-                    columnNumber += 3;
-
-                    continue;
-                }
-
-                List<String> workers = Lists.newArrayList();
-
-                if (OccupationType.OTHER_CASE.getStringValue()
-                        .equals(dictionaryItem.getStringField(DictionaryItemFields.TECHNICAL_CODE))) {
-                    workers = assignmentToShiftXlsHelper.getListOfWorkerWithOtherCases(staffs);
-                } else {
-                    workers = assignmentToShiftXlsHelper.getListOfWorker(staffs);
-                }
-
-                int rowIndex = rowNumFromLastSection;
-
-                for (String worker : workers) {
-                    sheet.getRow(rowIndex).createCell(columnNumber).setCellValue(worker);
-                    rowIndex++;
-                }
-
-                if (workers.isEmpty()) {
-                    sheet.getRow(rowIndex).createCell(columnNumber).setCellValue(" ");
-
+            for (List<String> workers : workersPerDay) {
+                if (rowIndex < workers.size()) {
+                    row.createCell(columnNumber).setCellValue(workers.get(rowIndex));
                 }
 
                 columnNumber += 3;
             }
 
-            for (int i = rowNumFromLastSection; i < rowNum; i++) {
-                assignmentToShiftXlsStyleHelper.addMarginsAndStylesForSeries(sheet, i,
-                        assignmentToShiftXlsHelper.getNumberOfDaysBetweenGivenDates(assignmentToShiftReport));
-            }
+            assignmentToShiftXlsStyleHelper.addMarginsAndStylesForSeries(writer, row, reportModel.getNumberOfDays());
         }
 
-        return rowNum;
-    }
-
-    private List<Entity> getOccupationTypeDictionaryWithoutTechnicalCode() {
-        Entity occupationTypeDictionary = dataDefinitionService
-                .get(QcadooModelConstants.PLUGIN_IDENTIFIER, QcadooModelConstants.MODEL_DICTIONARY).find()
-                .add(SearchRestrictions.eq(DictionaryFields.NAME, L_OCCUPATION_TYPE)).uniqueResult();
-
-        return dataDefinitionService.get(QcadooModelConstants.PLUGIN_IDENTIFIER, QcadooModelConstants.MODEL_DICTIONARY_ITEM)
-                .find().add(SearchRestrictions.belongsTo(DictionaryItemFields.DICTIONARY, occupationTypeDictionary))
-                .add(SearchRestrictions.isNull(DictionaryItemFields.TECHNICAL_CODE)).add(SearchRestrictions.eq("active", true))
-                .list().getEntities();
-    }
+        int lastRowNumber = writer.getRowNumber() - 1;
 
-    private Entity getDictionaryItemWithProductionOnLine() {
-        Entity occupationTypeDictionary = dataDefinitionService
-                .get(QcadooModelConstants.PLUGIN_IDENTIFIER, QcadooModelConstants.MODEL_DICTIONARY).find()
-                .add(SearchRestrictions.eq(DictionaryFields.NAME, L_OCCUPATION_TYPE)).uniqueResult();
-
-        return dataDefinitionService.get(QcadooModelConstants.PLUGIN_IDENTIFIER, QcadooModelConstants.MODEL_DICTIONARY_ITEM)
-                .find().add(SearchRestrictions.belongsTo(DictionaryItemFields.DICTIONARY, occupationTypeDictionary))
-                .add(SearchRestrictions.eq(DictionaryItemFields.TECHNICAL_CODE, OccupationType.WORK_ON_LINE.getStringValue()))
-                .uniqueResult();
-    }
-
-    private Entity getDictionaryItemWithOtherCase() {
-        Entity occupationTypeDictionary = dataDefinitionService
-                .get(QcadooModelConstants.PLUGIN_IDENTIFIER, QcadooModelConstants.MODEL_DICTIONARY).find()
-                .add(SearchRestrictions.eq(DictionaryFields.NAME, L_OCCUPATION_TYPE)).uniqueResult();
-
-        return dataDefinitionService.get(QcadooModelConstants.PLUGIN_IDENTIFIER, QcadooModelConstants.MODEL_DICTIONARY_ITEM)
-                .find().add(SearchRestrictions.belongsTo(DictionaryItemFields.DICTIONARY, occupationTypeDictionary))
-                .add(SearchRestrictions.eq(DictionaryItemFields.TECHNICAL_CODE, OccupationType.OTHER_CASE.getStringValue()))
-                .uniqueResult();
+        if (lastRowNumber > firstRowNumber) {
+            writer.mergeCells(firstRowNumber, lastRowNumber, 0, 0);
+        }
     }
 
 }
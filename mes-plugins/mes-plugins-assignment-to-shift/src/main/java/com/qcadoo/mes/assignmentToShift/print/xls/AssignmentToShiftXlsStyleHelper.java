@@ -23,124 +23,100 @@
  */
 package com.qcadoo.mes.assignmentToShift.print.xls;
 
-import org.apache.poi.hssf.usermodel.HSSFCell;
-import org.apache.poi.hssf.usermodel.HSSFCellStyle;
-import org.apache.poi.hssf.usermodel.HSSFFont;
-import org.apache.poi.hssf.usermodel.HSSFSheet;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
-import org.apache.poi.hssf.util.HSSFColor;
-import org.apache.poi.ss.usermodel.Font;
-import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.Row;
 import org.springframework.stereotype.Service;
 
+import com.qcadoo.mes.basic.print.xls.XlsRowWriter;
+import com.qcadoo.mes.basic.print.xls.XlsStyle;
+
 @Service
 public class AssignmentToShiftXlsStyleHelper {
 
-    public void setGreyDataStyleBorderTopAlignLeftBold(final HSSFSheet sheet, final HSSFCell cell) {
-        cell.setCellStyle(getHeaderStyle(sheet.getWorkbook(), HSSFCellStyle.BORDER_MEDIUM, HSSFCellStyle.BORDER_NONE,
-                HSSFCellStyle.BORDER_NONE, HSSFCellStyle.BORDER_NONE, HSSFCellStyle.ALIGN_LEFT, Font.BOLDWEIGHT_BOLD));
-    }
+    private static final XlsStyle HEADER_STYLE = XlsStyle.DEFAULT.bold().withFontHeight((short) 12)
+            .withAlignment(CellStyle.ALIGN_LEFT).withVerticalAlignment(CellStyle.VERTICAL_CENTER).withIndention((short) 3)
+            .wrapped().withFill(IndexedColors.GREY_25_PERCENT.getIndex());
 
-    public void setGreyDataStyleBorderBottomAlignLeftBold(final HSSFSheet sheet, final HSSFCell cell) {
-        cell.setCellStyle(getHeaderStyle(sheet.getWorkbook(), HSSFCellStyle.BORDER_NONE, HSSFCellStyle.BORDER_NONE,
-                HSSFCellStyle.BORDER_NONE, HSSFCellStyle.BORDER_MEDIUM, HSSFCellStyle.ALIGN_LEFT, Font.BOLDWEIGHT_BOLD));
-    }
+    private static final XlsStyle GREY_DATA_STYLE_BORDER_TOP_ALIGN_LEFT_BOLD = HEADER_STYLE.withBorders(
+            CellStyle.BORDER_MEDIUM, CellStyle.BORDER_NONE, CellStyle.BORDER_NONE, CellStyle.BORDER_NONE);
 
-    public void setGreyDataStyleAlignRightBold(final HSSFSheet sheet, final HSSFCell cell) {
-        cell.setCellStyle(getHeaderStyle(sheet.getWorkbook(), HSSFCellStyle.BORDER_MEDIUM, HSSFCellStyle.BORDER_NONE,
-                HSSFCellStyle.BORDER_NONE, HSSFCellStyle.BORDER_MEDIUM, HSSFCellStyle.ALIGN_RIGHT, Font.BOLDWEIGHT_BOLD));
-    }
+    private static final XlsStyle GREY_DATA_STYLE_BORDER_BOTTOM_ALIGN_LEFT_BOLD = HEADER_STYLE.withBorders(
+            CellStyle.BORDER_NONE, CellStyle.BORDER_NONE, CellStyle.BORDER_NONE, CellStyle.BORDER_MEDIUM);
 
-    public void setGreyDataStyleBorderTopLeftAlignLeftBold(final HSSFSheet sheet, final HSSFCell cell) {
-        cell.setCellStyle(getHeaderStyle(sheet.getWorkbook(), HSSFCellStyle.BORDER_MEDIUM, HSSFCellStyle.BORDER_MEDIUM,
-                HSSFCellStyle.BORDER_NONE, HSSFCellStyle.BORDER_NONE, HSSFCellStyle.ALIGN_LEFT, Font.BOLDWEIGHT_BOLD));
-    }
+    private static final XlsStyle GREY_DATA_STYLE_ALIGN_RIGHT_BOLD = HEADER_STYLE.withBorders(CellStyle.BORDER_MEDIUM,
+            CellStyle.BORDER_NONE, CellStyle.BORDER_NONE, CellStyle.BORDER_MEDIUM).withAlignment(CellStyle.ALIGN_RIGHT);
 
-    public void setGreyDataStyleBorderTopRightAlignLeftBold(final HSSFSheet sheet, final HSSFCell cell) {
-        cell.setCellStyle(getHeaderStyle(sheet.getWorkbook(), HSSFCellStyle.BORDER_MEDIUM, HSSFCellStyle.BORDER_NONE,
-                HSSFCellStyle.BORDER_MEDIUM, HSSFCellStyle.BORDER_NONE, HSSFCellStyle.ALIGN_LEFT, Font.BOLDWEIGHT_BOLD));
-    }
+    private static final XlsStyle GREY_DATA_STYLE_BORDER_TOP_LEFT_ALIGN_LEFT_BOLD = HEADER_STYLE.withBorders(
+            CellStyle.BORDER_MEDIUM, CellStyle.BORDER_MEDIUM, CellStyle.BORDER_NONE, CellStyle.BORDER_NONE);
 
-    public void setGreyDataStyleBorderLeftBottomAlignLeftBold(final HSSFSheet sheet, final HSSFCell cell) {
-        cell.setCellStyle(getHeaderStyle(sheet.getWorkbook(), HSSFCellStyle.BORDER_NONE, HSSFCellStyle.BORDER_MEDIUM,
-                HSSFCellStyle.BORDER_NONE, HSSFCellStyle.BORDER_MEDIUM, HSSFCellStyle.ALIGN_LEFT, Font.BOLDWEIGHT_BOLD));
-    }
+    private static final XlsStyle GREY_DATA_STYLE_BORDER_TOP_RIGHT_ALIGN_LEFT_BOLD = HEADER_STYLE.withBorders(
+            CellStyle.BORDER_MEDIUM, CellStyle.BORDER_NONE, CellStyle.BORDER_MEDIUM, CellStyle.BORDER_NONE);
 
-    public void setGreyDataStyleBorderRightBottomAlignLeftBold(final HSSFSheet sheet, final HSSFCell cell) {
-        cell.setCellStyle(getHeaderStyle(sheet.getWorkbook(), HSSFCellStyle.BORDER_NONE, HSSFCellStyle.BORDER_NONE,
-                HSSFCellStyle.BORDER_MEDIUM, HSSFCellStyle.BORDER_MEDIUM, HSSFCellStyle.ALIGN_LEFT, Font.BOLDWEIGHT_BOLD));
-    }
+    private static final XlsStyle GREY_DATA_STYLE_BORDER_LEFT_BOTTOM_ALIGN_LEFT_BOLD = HEADER_STYLE.withBorders(
+            CellStyle.BORDER_NONE, CellStyle.BORDER_MEDIUM, CellStyle.BORDER_NONE, CellStyle.BORDER_MEDIUM);
 
-    public void setWhiteDataStyleBorderBoxAlignLeft(final HSSFSheet sheet, final HSSFCell cell) {
-        cell.setCellStyle(getSeriesStyle(sheet.getWorkbook(), HSSFCellStyle.BORDER_THIN, HSSFCellStyle.BORDER_THIN,
-                HSSFCellStyle.BORDER_THIN, HSSFCellStyle.BORDER_THIN, HSSFCellStyle.ALIGN_LEFT, Font.BOLDWEIGHT_NORMAL));
-    }
+    private static final XlsStyle GREY_DATA_STYLE_BORDER_RIGHT_BOTTOM_ALIGN_LEFT_BOLD = HEADER_STYLE.withBorders(
+            CellStyle.BORDER_NONE, CellStyle.BORDER_NONE, CellStyle.BORDER_MEDIUM, CellStyle.BORDER_MEDIUM);
 
-    public void setWhiteDataStyleBorderBoxAlignCenter(final HSSFSheet sheet, final HSSFCell cell) {
-        cell.setCellStyle(getSeriesStyle(sheet.getWorkbook(), HSSFCellStyle.BORDER_THIN, HSSFCellStyle.BORDER_THIN,
-                HSSFCellStyle.BORDER_THIN, HSSFCellStyle.BORDER_THIN, HSSFCellStyle.ALIGN_CENTER, Font.BOLDWEIGHT_NORMAL));
-    }
+    private static final XlsStyle WHITE_DATA_STYLE_BORDER_BOX_ALIGN_LEFT = XlsStyle.DEFAULT.withFontHeight((short) 11)
+            .withBorders().withAlignment(CellStyle.ALIGN_LEFT).withVerticalAlignment(CellStyle.VERTICAL_CENTER).wrapped();
 
-    public void setWhiteDataStyleBorderBoxAlignLeftBold(final HSSFSheet sheet, final HSSFCell cell) {
-        cell.setCellStyle(getSeriesStyle(sheet.getWorkbook(), HSSFCellStyle.BORDER_THIN, HSSFCellStyle.BORDER_THIN,
-                HSSFCellStyle.BORDER_THIN, HSSFCellStyle.BORDER_THIN, HSSFCellStyle.ALIGN_LEFT, Font.BOLDWEIGHT_BOLD));
-    }
+    private static final XlsStyle WHITE_DATA_STYLE_BORDER_BOX_ALIGN_CENTER = WHITE_DATA_STYLE_BORDER_BOX_ALIGN_LEFT
+            .withAlignment(CellStyle.ALIGN_CENTER);
 
-    public void setWhiteDataStyleBorderBoxAlignCenterBold(final HSSFSheet sheet, final HSSFCell cell) {
-        cell.setCellStyle(getSeriesStyle(sheet.getWorkbook(), HSSFCellStyle.BORDER_THIN, HSSFCellStyle.BORDER_THIN,
-                HSSFCellStyle.BORDER_THIN, HSSFCellStyle.BORDER_THIN, HSSFCellStyle.ALIGN_CENTER, Font.BOLDWEIGHT_BOLD));
-    }
+    private static final XlsStyle WHITE_DATA_STYLE_BORDER_BOX_ALIGN_LEFT_BOLD = WHITE_DATA_STYLE_BORDER_BOX_ALIGN_LEFT.bold();
 
-    private HSSFCellStyle getHeaderStyle(final HSSFWorkbook workbook, final short borderTop, final short borderLeft,
-            final short borderRight, final short borderBottom, final short alignment, final short boldweight) {
-        HSSFCellStyle style = workbook.createCellStyle();
+    private static final XlsStyle WHITE_DATA_STYLE_BORDER_BOX_ALIGN_CENTER_BOLD = WHITE_DATA_STYLE_BORDER_BOX_ALIGN_CENTER
+            .bold();
 
-        style.setBorderTop(borderTop);
-        style.setBorderLeft(borderLeft);
-        style.setBorderRight(borderRight);
-        style.setBorderBottom(borderBottom);
+    public void setGreyDataStyleBorderTopAlignLeftBold(final XlsRowWriter writer, final Cell cell) {
+        writer.setCellStyle(cell, GREY_DATA_STYLE_BORDER_TOP_ALIGN_LEFT_BOLD);
+    }
 
-        style.setAlignment(alignment);
-        style.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
-        style.setIndention((short) 3);
-        style.setWrapText(true);
+    public void setGreyDataStyleBorderBottomAlignLeftBold(final XlsRowWriter writer, final Cell cell) {
+        writer.setCellStyle(cell, GREY_DATA_STYLE_BORDER_BOTTOM_ALIGN_LEFT_BOLD);
+    }
 
-        style.setFillForegroundColor(HSSFColor.GREY_25_PERCENT.index);
-        style.setFillPattern(HSSFCellStyle.SOLID_FOREGROUND);
+    public void setGreyDataStyleAlignRightBold(final XlsRowWriter writer, final Cell cell) {
+        writer.setCellStyle(cell, GREY_DATA_STYLE_ALIGN_RIGHT_BOLD);
+    }
 
-        Font font = workbook.createFont();
-        font.setFontName(HSSFFont.FONT_ARIAL);
-        font.setFontHeightInPoints((short) 12);
-        font.setBoldweight(boldweight);
+    public void setGreyDataStyleBorderTopLeftAlignLeftBold(final XlsRowWriter writer, final Cell cell) {
+        writer.setCellStyle(cell, GREY_DATA_STYLE_BORDER_TOP_LEFT_ALIGN_LEFT_BOLD);
+    }
 
-        style.setFont(font);
+    public void setGreyDataStyleBorderTopRightAlignLeftBold(final XlsRowWriter writer, final Cell cell) {
+        writer.setCellStyle(cell, GREY_DATA_STYLE_BORDER_TOP_RIGHT_ALIGN_LEFT_BOLD);
+    }
 
-        return style;
+    public void setGreyDataStyleBorderLeftBottomAlignLeftBold(final XlsRowWriter writer, final Cell cell) {
+        writer.setCellStyle(cell, GREY_DATA_STYLE_BORDER_LEFT_BOTTOM_ALIGN_LEFT_BOLD);
     }
 
-    private HSSFCellStyle getSeriesStyle(final HSSFWorkbook workbook, final short borderTop, final short borderLeft,
-            final short borderRight, final short borderBottom, final short alignment, final short boldweight) {
-        HSSFCellStyle style = workbook.createCellStyle();
+    public void setGreyDataStyleBorderRightBottomAlignLeftBold(final XlsRowWriter writer, final Cell cell) {
+        writer.setCellStyle(cell, GREY_DATA_STYLE_BORDER_RIGHT_BOTTOM_ALIGN_LEFT_BOLD);
+    }
 
-        style.setBorderTop(borderTop);
-        style.setBorderLeft(borderLeft);
-        style.setBorderRight(borderRight);
-        style.setBorderBottom(borderBottom);
+    public void setWhiteDataStyleBorderBoxAlignLeft(final XlsRowWriter writer, final Cell cell) {
+        writer.setCellStyle(cell, WHITE_DATA_STYLE_BORDER_BOX_ALIGN_LEFT);
+    }
 
-        style.setAlignment(alignment);
-        style.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
-        style.setWrapText(true);
+    public void setWhiteDataStyleBorderBoxAlignCenter(final XlsRowWriter writer, final Cell cell) {
+        writer.setCellStyle(cell, WHITE_DATA_STYLE_BORDER_BOX_ALIGN_CENTER);
+    }
 
-        Font font = workbook.createFont();
-        font.setFontName(HSSFFont.FONT_ARIAL);
-        font.setFontHeightInPoints((short) 11);
-        font.setBoldweight(boldweight);
-        style.setFont(font);
+    public void setWhiteDataStyleBorderBoxAlignLeftBold(final XlsRowWriter writer, final Cell cell) {
+        writer.setCellStyle(cell, WHITE_DATA_STYLE_BORDER_BOX_ALIGN_LEFT_BOLD);
+    }
 
-        return style;
+    public void setWhiteDataStyleBorderBoxAlignCenterBold(final XlsRowWriter writer, final Cell cell) {
+        writer.setCellStyle(cell, WHITE_DATA_STYLE_BORDER_BOX_ALIGN_CENTER_BOLD);
     }
 
-    public void addMarginsAndStylesForAuthor(final HSSFSheet sheet, final int rowNumber, final int numberOfDays) {
+    public void addMarginsAndStylesForAuthor(final XlsRowWriter writer, final Row row, final int numberOfDays) {
+        int rowNumber = row.getRowNum();
         int firstColumnNumber = 0;
         int lastColumnNumber;
         int margin = 3;
@@ -152,26 +128,24 @@ public class AssignmentToShiftXlsStyleHelper {
         }
 
         for (int columnNumber = firstColumnNumber; columnNumber <= lastColumnNumber; columnNumber++) {
-            if (sheet.getRow(rowNumber).getCell(columnNumber) == null) {
-                sheet.getRow(rowNumber).createCell(columnNumber);
-            }
+            Cell cell = getOrCreateCell(row, columnNumber);
 
             if (columnNumber == firstColumnNumber) {
-                setGreyDataStyleBorderTopLeftAlignLeftBold(sheet, sheet.getRow(rowNumber).getCell(columnNumber));
+                setGreyDataStyleBorderTopLeftAlignLeftBold(writer, cell);
             } else if (columnNumber == lastColumnNumber) {
-                setGreyDataStyleBorderTopRightAlignLeftBold(sheet, sheet.getRow(rowNumber).getCell(columnNumber));
+                setGreyDataStyleBorderTopRightAlignLeftBold(writer, cell);
             } else {
-                setGreyDataStyleBorderTopAlignLeftBold(sheet, sheet.getRow(rowNumber).getCell(columnNumber));
+                setGreyDataStyleBorderTopAlignLeftBold(writer, cell);
             }
         }
 
-        sheet.addMergedRegion(new CellRangeAddress(rowNumber, rowNumber, firstColumnNumber, firstColumnNumber + margin - 1));
-        sheet.addMergedRegion(new CellRangeAddress(rowNumber, rowNumber, firstColumnNumber + margin, firstColumnNumber
-                + (margin * 2) - 1));
-        sheet.addMergedRegion(new CellRangeAddress(rowNumber, rowNumber, firstColumnNumber + (margin * 2), lastColumnNumber));
+        writer.mergeCells(rowNumber, rowNumber, firstColumnNumber, firstColumnNumber + margin - 1);
+        writer.mergeCells(rowNumber, rowNumber, firstColumnNumber + margin, firstColumnNumber + (margin * 2) - 1);
+        writer.mergeCells(rowNumber, rowNumber, firstColumnNumber + (margin * 2), lastColumnNumber);
     }
 
-    public void addMarginsAndStylesForAuthorFactory(final HSSFSheet sheet, final int rowNumber, final int numberOfDays) {
+    public void addMarginsAndStylesForAuthorFactory(final XlsRowWriter writer, final Row row, final int numberOfDays) {
+        int rowNumber = row.getRowNum();
         int firstColumnNumber = 0;
         int lastColumnNumber;
         int margin = 3;
@@ -183,62 +157,66 @@ public class AssignmentToShiftXlsStyleHelper {
         }
 
         for (int columnNumber = firstColumnNumber; columnNumber <= lastColumnNumber; columnNumber++) {
-            if (sheet.getRow(rowNumber).getCell(columnNumber) == null) {
-                sheet.getRow(rowNumber).createCell(columnNumber);
-            }
+            Cell cell = getOrCreateCell(row, columnNumber);
 
             if (columnNumber == firstColumnNumber) {
-                setGreyDataStyleBorderLeftBottomAlignLeftBold(sheet, sheet.getRow(rowNumber).getCell(columnNumber));
+                setGreyDataStyleBorderLeftBottomAlignLeftBold(writer, cell);
             } else if (columnNumber == lastColumnNumber) {
-                setGreyDataStyleBorderRightBottomAlignLeftBold(sheet, sheet.getRow(rowNumber).getCell(columnNumber));
+                setGreyDataStyleBorderRightBottomAlignLeftBold(writer, cell);
             } else {
-                setGreyDataStyleBorderBottomAlignLeftBold(sheet, sheet.getRow(rowNumber).getCell(columnNumber));
+                setGreyDataStyleBorderBottomAlignLeftBold(writer, cell);
             }
         }
 
-        sheet.addMergedRegion(new CellRangeAddress(rowNumber, rowNumber, firstColumnNumber, lastColumnNumber));
+        writer.mergeCells(rowNumber, rowNumber, firstColumnNumber, lastColumnNumber);
     }
 
-    public void addMarginsAndStylesForAssignmentToShift(final HSSFSheet sheet, final int rowNumber, final int numberOfDays) {
+    public void addMarginsAndStylesForAssignmentToShift(final XlsRowWriter writer, final Row row, final int numberOfDays) {
+        int rowNumber = row.getRowNum();
         int margin = 3;
         int firstColumn = 0;
         int lastColumn = (numberOfDays + 1) * margin;
 
         for (int columnNumber = firstColumn; columnNumber <= lastColumn; columnNumber++) {
-            if (sheet.getRow(rowNumber).getCell(columnNumber) == null) {
-                sheet.getRow(rowNumber).createCell(columnNumber);
-            }
-
-            setWhiteDataStyleBorderBoxAlignCenterBold(sheet, sheet.getRow(rowNumber).getCell(columnNumber));
+            setWhiteDataStyleBorderBoxAlignCenterBold(writer, getOrCreateCell(row, columnNumber));
         }
 
         for (int columnNumber = 1; columnNumber <= lastColumn; columnNumber += margin) {
-            sheet.addMergedRegion(new CellRangeAddress(rowNumber, rowNumber, columnNumber, columnNumber + 2));
+            writer.mergeCells(rowNumber, rowNumber, columnNumber, columnNumber + 2);
         }
     }
 
-    public void addMarginsAndStylesForSeries(final HSSFSheet sheet, final int rowNumber, final int numberOfDays) {
+    public void addMarginsAndStylesForSeries(final XlsRowWriter writer, final Row row, final int numberOfDays) {
+        int rowNumber = row.getRowNum();
         int margin = 3;
         int firstColumn = 0;
         int lastColumn = (numberOfDays + 1) * margin;
 
         for (int columnNumber = firstColumn; columnNumber <= lastColumn; columnNumber++) {
-            if (sheet.getRow(rowNumber).getCell(columnNumber) == null) {
-                sheet.getRow(rowNumber).createCell(columnNumber);
-            }
+            Cell cell = getOrCreateCell(row, columnNumber);
 
             if (columnNumber == firstColumn) {
-                setWhiteDataStyleBorderBoxAlignCenterBold(sheet, sheet.getRow(rowNumber).getCell(columnNumber));
+                setWhiteDataStyleBorderBoxAlignCenterBold(writer, cell);
             } else {
-                setWhiteDataStyleBorderBoxAlignLeft(sheet, sheet.getRow(rowNumber).getCell(columnNumber));
+                setWhiteDataStyleBorderBoxAlignLeft(writer, cell);
             }
         }
 
         for (int columnNumber = 1; columnNumber <= lastColumn; columnNumber += margin) {
-            sheet.addMergedRegion(new CellRangeAddress(rowNumber, rowNumber, columnNumber, columnNumber + 2));
+            writer.mergeCells(rowNumber, rowNumber, columnNumber, columnNumber + 2);
         }
     }
 
+    private Cell getOrCreateCell(final Row row, final int columnNumber) {
+        Cell cell = row.getCell(columnNumber);
+
+        if (cell == null) {
+            cell = row.createCell(columnNumber);
+        }
+
+        return cell;
+    }
+
     public int getHeightForRow(final int stringLength, final int inLine, final int points) {
         if (stringLength > inLine) {
             int rows = stringLength / inLine;
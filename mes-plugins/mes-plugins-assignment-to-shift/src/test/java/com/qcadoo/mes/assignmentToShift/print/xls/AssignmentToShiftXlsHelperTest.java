@@ -0,0 +1,86 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.assignmentToShift.print.xls;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.util.List;
+
+import org.joda.time.LocalDate;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.assignmentToShift.constants.AssignmentToShiftFields;
+import com.qcadoo.model.api.Entity;
+
+public class AssignmentToShiftXlsHelperTest {
+
+    private static final LocalDate DAY = new LocalDate(2016, 5, 10);
+
+    @Test
+    public void shouldFindLatestAssignmentsToShiftForEachCrew() {
+        // given
+        Entity firstCrew = mockCrew(1L);
+        Entity secondCrew = mockCrew(2L);
+
+        Entity futureWithoutCrew = mockAssignmentToShift(DAY.plusDays(1), null);
+        Entity currentForSecondCrew = mockAssignmentToShift(DAY, secondCrew);
+        Entity currentWithoutCrew = mockAssignmentToShift(DAY.minusDays(1), null);
+        Entity firstCurrentForFirstCrew = mockAssignmentToShift(DAY.minusDays(2), firstCrew);
+        Entity secondCurrentForFirstCrew = mockAssignmentToShift(DAY.minusDays(2), firstCrew);
+        Entity previousForSecondCrew = mockAssignmentToShift(DAY.minusDays(3), secondCrew);
+        Entity previousWithoutCrew = mockAssignmentToShift(DAY.minusDays(4), null);
+
+        List<Entity> assignmentsToShift = Lists.newArrayList(futureWithoutCrew, currentForSecondCrew, currentWithoutCrew,
+                firstCurrentForFirstCrew, secondCurrentForFirstCrew, previousForSecondCrew, previousWithoutCrew);
+
+        // when
+        List<Entity> currentAssignmentsToShift = AssignmentToShiftXlsHelper.findCurrentAssignmentsToShift(DAY,
+                assignmentsToShift);
+
+        // then
+        assertEquals(Lists.newArrayList(firstCurrentForFirstCrew, secondCurrentForFirstCrew, currentForSecondCrew,
+                currentWithoutCrew), currentAssignmentsToShift);
+    }
+
+    private Entity mockCrew(final Long id) {
+        Entity crew = mock(Entity.class);
+
+        given(crew.getId()).willReturn(id);
+
+        return crew;
+    }
+
+    private Entity mockAssignmentToShift(final LocalDate startDate, final Entity crew) {
+        Entity assignmentToShift = mock(Entity.class);
+
+        given(assignmentToShift.getDateField(AssignmentToShiftFields.START_DATE)).willReturn(startDate.toDate());
+        given(assignmentToShift.getBelongsToField(AssignmentToShiftFields.CREW)).willReturn(crew);
+
+        return assignmentToShift;
+    }
+
+}
@@ -0,0 +1,191 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.assignmentToShift.print.xls;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.assignmentToShift.constants.OccupationType;
+import com.qcadoo.mes.assignmentToShift.print.xls.AssignmentToShiftXlsModel.StaffAssignment;
+import com.qcadoo.mes.basic.print.xls.StreamingXlsxDocument;
+import com.qcadoo.mes.basic.print.xls.StreamingXlsxView;
+import com.qcadoo.mes.basic.print.xls.XlsRowWriter;
+import com.qcadoo.mes.productionLines.constants.ProductionLineFields;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.constants.DictionaryItemFields;
+
+public class AssignmentToShiftXlsServiceTest {
+
+    private static final DateTime DAY_1 = new DateTime(2016, 5, 9, 0, 0);
+
+    private static final DateTime DAY_2 = DAY_1.plusDays(1);
+
+    private static final DateTime DAY_3 = DAY_1.plusDays(2);
+
+    private AssignmentToShiftXlsService assignmentToShiftXlsService;
+
+    @Mock
+    private AssignmentToShiftXlsHelper assignmentToShiftXlsHelper;
+
+    @Mock
+    private AssignmentToShiftXlsStyleHelper assignmentToShiftXlsStyleHelper;
+
+    @Mock
+    private Entity assignmentToShiftReport;
+
+    private SXSSFWorkbook workbook;
+
+    private XlsRowWriter writer;
+
+    private Sheet sheet;
+
+    @Before
+    public void init() {
+        assignmentToShiftXlsService = new AssignmentToShiftXlsService();
+
+        MockitoAnnotations.initMocks(this);
+
+        ReflectionTestUtils.setField(assignmentToShiftXlsService, "assignmentToShiftXlsHelper", assignmentToShiftXlsHelper);
+        ReflectionTestUtils.setField(assignmentToShiftXlsService, "assignmentToShiftXlsStyleHelper",
+                assignmentToShiftXlsStyleHelper);
+
+        workbook = new SXSSFWorkbook(StreamingXlsxView.ROW_WINDOW);
+        writer = new StreamingXlsxDocument(workbook).createSheet("report");
+        sheet = writer.getSheet();
+    }
+
+    @After
+    public void dispose() {
+        workbook.dispose();
+    }
+
+    @Test
+    public void shouldRenderSeriesFromReportModel() {
+        // given
+        Entity workOnLine = mockOccupationType("Work on line", OccupationType.WORK_ON_LINE.getStringValue());
+        Entity cleaning = mockOccupationType("Cleaning", null);
+        Entity otherCase = mockOccupationType("Other", OccupationType.OTHER_CASE.getStringValue());
+
+        Entity firstLine = mockProductionLine(1L, "L1", null);
+        Entity secondLine = mockProductionLine(2L, "L2", "Hall");
+
+        Map<LocalDate, List<StaffAssignment>> staffAssignmentsPerDay = ImmutableMap.<LocalDate, List<StaffAssignment>> of(
+                DAY_1.toLocalDate(),
+                Lists.newArrayList(new StaffAssignment(1L, "Work on line", null, "crane", "Jan", "Kowalski"),
+                        new StaffAssignment(null, "Cleaning", null, null, "Ewa", "Zielinska"),
+                        new StaffAssignment(1L, "Work on line", null, "", "Piotr", "Wisniewski")),
+                DAY_3.toLocalDate(),
+                Lists.newArrayList(new StaffAssignment(1L, "Work on line", null, null, "Anna", "Nowak"),
+                        new StaffAssignment(null, "Other", "Training", null, "Adam", "Mazur"),
+                        new StaffAssignment(2L, "Cleaning", null, null, "Olga", "Lis")));
+
+        AssignmentToShiftXlsModel reportModel = new AssignmentToShiftXlsModel(Lists.newArrayList(DAY_1, DAY_2, DAY_3),
+                Lists.newArrayList(firstLine, secondLine), workOnLine, Lists.newArrayList(cleaning), otherCase,
+                staffAssignmentsPerDay);
+
+        given(assignmentToShiftXlsHelper.loadReportModel(assignmentToShiftReport)).willReturn(reportModel);
+
+        // when
+        assignmentToShiftXlsService.addSeries(writer.skipRows(5), assignmentToShiftReport);
+
+        // then
+        assertRow(5, "L1", "Jan Kowalski, crane", null, "Anna Nowak");
+        assertRow(6, null, "Piotr Wisniewski", null, null);
+        assertRow(7, "L2-Hall", null, null, null);
+        assertRow(8, "Cleaning", "Ewa Zielinska", null, null);
+        assertRow(9, "Other", null, null, "Adam Mazur - Training");
+        assertNull(sheet.getRow(10));
+
+        assertEquals(1, sheet.getNumMergedRegions());
+        assertEquals(5, sheet.getMergedRegion(0).getFirstRow());
+        assertEquals(6, sheet.getMergedRegion(0).getLastRow());
+
+        verify(assignmentToShiftXlsStyleHelper, times(5)).addMarginsAndStylesForSeries(any(XlsRowWriter.class), any(Row.class),
+                anyInt());
+    }
+
+    private void assertRow(final int rowNum, final String section, final String... workersPerDay) {
+        Row row = sheet.getRow(rowNum);
+
+        assertEquals(section, getCellValue(row, 0));
+
+        for (int day = 0; day < workersPerDay.length; day++) {
+            assertEquals(workersPerDay[day], getCellValue(row, 1 + day * 3));
+        }
+    }
+
+    private String getCellValue(final Row row, final int column) {
+        Cell cell = row.getCell(column);
+
+        if (cell == null) {
+            return null;
+        }
+
+        return cell.getStringCellValue();
+    }
+
+    private Entity mockOccupationType(final String name, final String technicalCode) {
+        Entity occupationType = mock(Entity.class);
+
+        given(occupationType.getStringField(DictionaryItemFields.NAME)).willReturn(name);
+        given(occupationType.getStringField(DictionaryItemFields.TECHNICAL_CODE)).willReturn(technicalCode);
+
+        return occupationType;
+    }
+
+    private Entity mockProductionLine(final Long id, final String number, final String place) {
+        Entity productionLine = mock(Entity.class);
+
+        given(productionLine.getId()).willReturn(id);
+        given(productionLine.getStringField(ProductionLineFields.NUMBER)).willReturn(number);
+        given(productionLine.getStringField(ProductionLineFields.PLACE)).willReturn(place);
+
+        return productionLine;
+    }
+
+}
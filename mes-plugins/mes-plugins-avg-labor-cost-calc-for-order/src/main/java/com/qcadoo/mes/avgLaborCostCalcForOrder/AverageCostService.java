@@ -23,30 +23,31 @@
  */
 package com.qcadoo.mes.avgLaborCostCalcForOrder;
 
-import static com.qcadoo.mes.assignmentToShift.constants.AssignmentToShiftFields.SHIFT;
-import static com.qcadoo.mes.assignmentToShift.constants.AssignmentToShiftFields.START_DATE;
-import static com.qcadoo.mes.assignmentToShift.constants.StaffAssignmentToShiftFields.WORKER;
 import static com.qcadoo.mes.avgLaborCostCalcForOrder.constants.AvgLaborCostCalcForOrderFields.AVERAGE_LABOR_HOURLY_COST;
 
 import java.math.BigDecimal;
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import org.joda.time.DateTime;
 import org.joda.time.Days;
+import org.joda.time.LocalDate;
 import org.joda.time.Period;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Table;
 import com.qcadoo.mes.assignmentToShift.constants.AssignmentToShiftConstants;
-import com.qcadoo.mes.assignmentToShift.constants.AssignmentToShiftFields;
-import com.qcadoo.mes.assignmentToShift.constants.StaffAssignmentToShiftFields;
 import com.qcadoo.mes.assignmentToShift.constants.StaffAssignmentToShiftState;
 import com.qcadoo.mes.assignmentToShift.states.constants.AssignmentToShiftState;
 import com.qcadoo.mes.avgLaborCostCalcForOrder.constants.AssignmentWorkerToShiftFields;
@@ -55,16 +56,37 @@ import com.qcadoo.mes.avgLaborCostCalcForOrder.constants.AvgLaborCostCalcForOrde
 import com.qcadoo.mes.basic.ShiftsService;
 import com.qcadoo.mes.basic.ShiftsServiceImpl.ShiftHour;
 import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
-import com.qcadoo.model.api.search.SearchCriteriaBuilder;
-import com.qcadoo.model.api.search.SearchOrders;
 import com.qcadoo.model.api.search.SearchRestrictions;
 
 @Service
 public class AverageCostService {
 
+    private static final String WORKING_LITERAL = "Working";
+
+    private static final String L_WORK_ON_LINE = "01workOnLine";
+
+    // one row for each day, shift and worker assigned to the latest assignment to shift started before that day
+    static final String WORKER_SHIFT_DAYS_QUERY = "SELECT calendar.shift_id AS shiftId, calendar.day AS day, "
+            + "latest.id AS assignmentToShiftId, staff.worker_id AS workerId, worker.laborhourlycost AS laborHourlyCost "
+            + "FROM (SELECT shift.id AS shift_id, days.day FROM basic_shift shift "
+            + "CROSS JOIN generate_series(CAST(:firstDay AS timestamp), CAST(:lastDay AS timestamp), interval '1 day') "
+            + "AS days(day) WHERE shift.id IN (:shiftIds)) calendar "
+            + "JOIN LATERAL (SELECT assignment.id, assignment.state FROM assignmenttoshift_assignmenttoshift assignment "
+            + "WHERE assignment.shift_id = calendar.shift_id AND assignment.startdate <= calendar.day "
+            + "ORDER BY assignment.startdate DESC, assignment.id DESC LIMIT 1) latest ON true "
+            + "JOIN assignmenttoshift_staffassignmenttoshift staff ON staff.assignmenttoshift_id = latest.id "
+            + "JOIN basic_staff worker ON worker.id = staff.worker_id "
+            + "WHERE staff.occupationtypeenum = :workOnLine "
+            + "AND (staff.productionline_id = :productionLineId "
+            + "OR (CAST(:productionLineId AS bigint) IS NULL AND staff.productionline_id IS NULL)) "
+            + "AND ((latest.state = :correctedAssignment AND staff.state = :correctedStaff) "
+            + "OR (latest.state IN (:acceptedAssignments) AND staff.state = :acceptedStaff)) "
+            + "ORDER BY calendar.day, calendar.shift_id, staff.id";
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
@@ -74,13 +96,17 @@ public class AverageCostService {
     @Autowired
     private ShiftsService shiftsService;
 
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
     public Entity generateAssignmentWorkerToShiftAndAverageCost(final Entity entity, final Date start, final Date finish,
             final Entity productionLine) {
         Entity avgLaborCostCalcForOrder = entity.getDataDefinition().get(entity.getId());
         List<DateTime> days = getDaysBetweenGivenDates(start, finish);
         List<Entity> shifts = getAllShifts();
-        Map<Entity, BigDecimal> workersWithHoursWorked = generateMapWorkersWithHoursWorked(days, shifts, productionLine);
-        BigDecimal averageCost = countAverageCost(workersWithHoursWorked);
+        Table<Long, LocalDate, BigDecimal> shiftHours = getShiftHoursCalendar(days, shifts);
+        Map<Long, WorkerHours> workersWithHoursWorked = generateMapWorkersWithHoursWorked(days, shiftHours, productionLine);
+        BigDecimal averageCost = countAverageCost(workersWithHoursWorked.values());
         if (averageCost == null) {
             avgLaborCostCalcForOrder.addError(entity.getDataDefinition().getField(AVERAGE_LABOR_HOURLY_COST),
                     "avgLaborCostCalcForOrder.avgLaborCostCalcForOrder.averageLaborHourlyCost.isZero");
@@ -91,115 +117,119 @@ public class AverageCostService {
         } else {
             avgLaborCostCalcForOrder.setField(AVERAGE_LABOR_HOURLY_COST, averageCost);
             avgLaborCostCalcForOrder.setField(AvgLaborCostCalcForOrderFields.ASSIGNMENT_WORKER_TO_SHIFTS,
-                    createAssignmentWorkerToShift(workersWithHoursWorked));
+                    createAssignmentWorkerToShift(workersWithHoursWorked.values()));
         }
         return avgLaborCostCalcForOrder;
     }
 
-    private Map<Entity, BigDecimal> generateMapWorkersWithHoursWorked(final List<DateTime> days, final List<Entity> shifts,
-            final Entity productionLine) {
-        Map<Entity, BigDecimal> workersWithHours = new HashMap<Entity, BigDecimal>();
-        for (DateTime day : days) {
-            for (Entity shift : shifts) {
-                Entity assignmentToShift = getAssignmentToShift(shift, day.toDate());
-                if (assignmentToShift == null) {
-                    continue;
-                }
-                List<Entity> staffs = getStaffAssignmentToShiftDependOnAssignmentToShiftState(assignmentToShift, productionLine);
-                for (Entity staff : staffs) {
-                    if (workersWithHours.containsKey(staff)) {
-                        BigDecimal countHours = workersWithHours.get(staff).add(getWorkedHoursOfWorker(shift, day));
-                        workersWithHours.put(staff, countHours);
-                    } else {
-                        workersWithHours.put(staff, getWorkedHoursOfWorker(shift, day));
+    private Table<Long, LocalDate, BigDecimal> getShiftHoursCalendar(final List<DateTime> days, final List<Entity> shifts) {
+        Table<Long, LocalDate, BigDecimal> shiftHours = HashBasedTable.create();
+        Date firstDay = days.get(0).toDate();
+        Date afterLastDay = days.get(days.size() - 1).plusDays(1).toDate();
+        for (Entity shift : shifts) {
+            List<ShiftHour> workedHours = null;
+            for (DateTime day : days) {
+                if (shift.getBooleanField(shiftsService.getWeekDayName(day) + WORKING_LITERAL)) {
+                    if (workedHours == null) {
+                        workedHours = shiftsService.getHoursForShift(shift, firstDay, afterLastDay);
                     }
+                    shiftHours.put(shift.getId(), day.toLocalDate(), getWorkedHoursOfWorker(workedHours, day));
                 }
             }
         }
+        return shiftHours;
+    }
+
+    private Map<Long, WorkerHours> generateMapWorkersWithHoursWorked(final List<DateTime> days,
+            final Table<Long, LocalDate, BigDecimal> shiftHours, final Entity productionLine) {
+        Map<Long, WorkerHours> workersWithHours = Maps.newLinkedHashMap();
+        if (shiftHours.isEmpty()) {
+            return workersWithHours;
+        }
+        for (WorkerShiftDay workerShiftDay : getWorkerShiftDays(days, shiftHours.rowKeySet(), productionLine)) {
+            BigDecimal hours = shiftHours.get(workerShiftDay.getShiftId(), workerShiftDay.getDay());
+            if (hours != null) {
+                workersWithHours.computeIfAbsent(workerShiftDay.getWorkerId(), workerId -> new WorkerHours(workerShiftDay))
+                        .add(hours);
+            }
+        }
         return workersWithHours;
     }
 
-    private BigDecimal countAverageCost(final Map<Entity, BigDecimal> workersWithHoursWorked) {
+    List<WorkerShiftDay> getWorkerShiftDays(final List<DateTime> days, final Set<Long> shiftIds,
+            final Entity productionLine) {
+        Map<String, Object> params = Maps.newHashMap();
+        params.put("firstDay", days.get(0).toDate());
+        params.put("lastDay", days.get(days.size() - 1).toDate());
+        params.put("shiftIds", shiftIds);
+        params.put("workOnLine", L_WORK_ON_LINE);
+        params.put("productionLineId", productionLine == null ? null : productionLine.getId());
+        params.put("correctedAssignment", AssignmentToShiftState.CORRECTED.getStringValue());
+        params.put("correctedStaff", StaffAssignmentToShiftState.CORRECTED.getStringValue());
+        params.put("acceptedAssignments", Lists.newArrayList(AssignmentToShiftState.ACCEPTED.getStringValue(),
+                AssignmentToShiftState.DURING_CORRECTION.getStringValue()));
+        params.put("acceptedStaff", StaffAssignmentToShiftState.ACCEPTED.getStringValue());
+        return jdbcTemplate.query(WORKER_SHIFT_DAYS_QUERY, params,
+                (rs, rowNum) -> new WorkerShiftDay(rs.getLong("shiftId"), LocalDate.fromDateFields(rs.getTimestamp("day")),
+                        rs.getLong("assignmentToShiftId"), rs.getLong("workerId"), rs.getBigDecimal("laborHourlyCost")));
+    }
+
+    private BigDecimal countAverageCost(final Collection<WorkerHours> workersWithHoursWorked) {
         BigDecimal averageCost = BigDecimal.ZERO;
         BigDecimal countHours = BigDecimal.ZERO;
-        for (Entry<Entity, BigDecimal> workerWithHours : workersWithHoursWorked.entrySet()) {
-            BigDecimal quantityOfHours = workerWithHours.getValue();
-            BigDecimal costOfWorkerHours = workerWithHours.getKey().getBelongsToField(StaffAssignmentToShiftFields.WORKER)
-                    .getDecimalField("laborHourlyCost").multiply(quantityOfHours);
-            averageCost = averageCost.add(costOfWorkerHours);
-            countHours = countHours.add(quantityOfHours);
-        }
-        if (countHours.equals(BigDecimal.ZERO)) {
+        for (WorkerHours workerHours : workersWithHoursWorked) {
+            averageCost = averageCost.add(workerHours.getLaborHourlyCost().multiply(workerHours.getHours()));
+            countHours = countHours.add(workerHours.getHours());
+        }
+        if (countHours.compareTo(BigDecimal.ZERO) == 0) {
             return null;
         }
         return numberService.setScale(averageCost.divide(countHours, numberService.getMathContext()));
     }
 
-    private BigDecimal getWorkedHoursOfWorker(final Entity shift, final DateTime dateOfDay) {
+    // sums hours of the parts of shift hours falling within the day, the same way as if they were taken for that day only
+    private BigDecimal getWorkedHoursOfWorker(final List<ShiftHour> workedHours, final DateTime dateOfDay) {
         BigDecimal hours = BigDecimal.ZERO;
-        List<ShiftHour> workedHours = shiftsService.getHoursForShift(shift, dateOfDay.toDate(), dateOfDay.plusDays(1).toDate());
+        DateTime dayEnd = dateOfDay.plusDays(1);
         for (ShiftHour shiftHour : workedHours) {
             DateTime dateFrom = new DateTime(shiftHour.getDateFrom());
             DateTime dateTo = new DateTime(shiftHour.getDateTo());
-            Period p = new Period(dateFrom, dateTo);
+            if (!dateTo.isAfter(dateOfDay) || !dateFrom.isBefore(dayEnd)) {
+                continue;
+            }
+            Period p = new Period(dateFrom.isBefore(dateOfDay) ? dateOfDay : dateFrom, dateTo.isAfter(dayEnd) ? dayEnd : dateTo);
             hours = hours.add(new BigDecimal(p.getHours()));
         }
         return hours;
     }
 
-    private Entity getAssignmentToShift(final Entity shift, final Date date) {
-        boolean shiftWorks = shiftsService.checkIfShiftWorkAtDate(date, shift);
-        if (shiftWorks) {
-            return dataDefinitionService
-                    .get(AssignmentToShiftConstants.PLUGIN_IDENTIFIER, AssignmentToShiftConstants.MODEL_ASSIGNMENT_TO_SHIFT)
-                    .find().add(SearchRestrictions.belongsTo(SHIFT, shift)).add(SearchRestrictions.le(START_DATE, date))
-                    .addOrder(SearchOrders.desc(START_DATE)).setMaxResults(1).uniqueResult();
-        } else {
-            return null;
-        }
-    }
+    private List<Entity> createAssignmentWorkerToShift(final Collection<WorkerHours> workersWithHoursWorked) {
+        Map<Long, Entity> workers = getEntitiesById(
+                dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_STAFF),
+                workersWithHoursWorked.stream().map(WorkerHours::getWorkerId).collect(Collectors.toSet()));
+        Map<Long, Entity> assignmentsToShift = getEntitiesById(
+                dataDefinitionService.get(AssignmentToShiftConstants.PLUGIN_IDENTIFIER,
+                        AssignmentToShiftConstants.MODEL_ASSIGNMENT_TO_SHIFT),
+                workersWithHoursWorked.stream().map(WorkerHours::getAssignmentToShiftId).collect(Collectors.toSet()));
+        DataDefinition assignmentWorkerToShiftDD = dataDefinitionService.get(
+                AvgLaborCostCalcForOrderConstants.PLUGIN_IDENTIFIER,
+                AvgLaborCostCalcForOrderConstants.MODEL_ASSIGNMENT_WORKER_TO_SHIFT);
 
-    private List<Entity> getStaffAssignmentToShiftDependOnAssignmentToShiftState(final Entity assignmentToShift,
-            final Entity productionLine) {
-        List<Entity> staffAssignmentToShifts = new ArrayList<Entity>();
-        String state = assignmentToShift.getStringField(AssignmentToShiftFields.STATE);
-        SearchCriteriaBuilder searchCriteriaBuilder = assignmentToShift.getHasManyField("staffAssignmentToShifts").find()
-                .add(SearchRestrictions.eq("occupationTypeEnum", "01workOnLine"))
-                .add(SearchRestrictions.belongsTo(StaffAssignmentToShiftFields.PRODUCTION_LINE, productionLine));
-        if (state.equals(AssignmentToShiftState.CORRECTED.getStringValue())) {
-            staffAssignmentToShifts = searchCriteriaBuilder
-                    .add(SearchRestrictions.eq("state", StaffAssignmentToShiftState.CORRECTED.getStringValue())).list()
-                    .getEntities();
-        } else if (state.equals(AssignmentToShiftState.ACCEPTED.getStringValue())
-                || state.equals(AssignmentToShiftState.DURING_CORRECTION.getStringValue())) {
-            staffAssignmentToShifts = searchCriteriaBuilder
-                    .add(SearchRestrictions.eq("state", StaffAssignmentToShiftState.ACCEPTED.getStringValue())).list()
-                    .getEntities();
-        }
-        return staffAssignmentToShifts;
+        List<Entity> assignmentWorkerToShifts = Lists.newArrayListWithCapacity(workersWithHoursWorked.size());
+        for (WorkerHours workerHours : workersWithHoursWorked) {
+            Entity assignmentWorkerToShift = assignmentWorkerToShiftDD.create();
+            assignmentWorkerToShift.setField(AssignmentWorkerToShiftFields.ASSIGNMENT_TO_SHIFT,
+                    assignmentsToShift.get(workerHours.getAssignmentToShiftId()));
+            assignmentWorkerToShift.setField(AssignmentWorkerToShiftFields.WORKER, workers.get(workerHours.getWorkerId()));
+            assignmentWorkerToShift.setField(AssignmentWorkerToShiftFields.WORKED_HOURS, workerHours.getHours());
+            assignmentWorkerToShifts.add(assignmentWorkerToShift);
+        }
+        return assignmentWorkerToShifts;
     }
 
-    private List<Entity> createAssignmentWorkerToShift(final Map<Entity, BigDecimal> workersWithHoursWorked) {
-        Map<Long, Entity> workers = new HashMap<Long, Entity>();
-        for (Entry<Entity, BigDecimal> workerWithHours : workersWithHoursWorked.entrySet()) {
-            Entity worker = workerWithHours.getKey().getBelongsToField(WORKER);
-            Long workerId = worker.getId();
-            Entity assignmentWorkerToShift = dataDefinitionService.get(AvgLaborCostCalcForOrderConstants.PLUGIN_IDENTIFIER,
-                    AvgLaborCostCalcForOrderConstants.MODEL_ASSIGNMENT_WORKER_TO_SHIFT).create();
-            if (workers.containsKey(workerId)) {
-                assignmentWorkerToShift = workers.get(workerId);
-                BigDecimal countHours = assignmentWorkerToShift.getDecimalField(AssignmentWorkerToShiftFields.WORKED_HOURS).add(
-                        workerWithHours.getValue());
-                assignmentWorkerToShift.setField(AssignmentWorkerToShiftFields.WORKED_HOURS, countHours);
-            } else {
-                assignmentWorkerToShift.setField(AssignmentWorkerToShiftFields.ASSIGNMENT_TO_SHIFT, workerWithHours.getKey()
-                        .getBelongsToField("assignmentToShift"));
-                assignmentWorkerToShift.setField(AssignmentWorkerToShiftFields.WORKER, worker);
-                assignmentWorkerToShift.setField(AssignmentWorkerToShiftFields.WORKED_HOURS, workerWithHours.getValue());
-            }
-            workers.put(worker.getId(), assignmentWorkerToShift);
-        }
-        return Lists.newArrayList(workers.values());
+    private Map<Long, Entity> getEntitiesById(final DataDefinition dataDefinition, final Set<Long> ids) {
+        return dataDefinition.find().add(SearchRestrictions.in("id", ids)).list().getEntities().stream()
+                .collect(Collectors.toMap(Entity::getId, Function.identity()));
     }
 
     private List<DateTime> getDaysBetweenGivenDates(final Date start, final Date finish) {
@@ -224,4 +254,85 @@ public class AverageCostService {
         return dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_SHIFT).find().list()
                 .getEntities();
     }
+
+    static final class WorkerShiftDay {
+
+        private final Long shiftId;
+
+        private final LocalDate day;
+
+        private final Long assignmentToShiftId;
+
+        private final Long workerId;
+
+        private final BigDecimal laborHourlyCost;
+
+        WorkerShiftDay(final Long shiftId, final LocalDate day, final Long assignmentToShiftId, final Long workerId,
+                final BigDecimal laborHourlyCost) {
+            this.shiftId = shiftId;
+            this.day = day;
+            this.assignmentToShiftId = assignmentToShiftId;
+            this.workerId = workerId;
+            this.laborHourlyCost = laborHourlyCost;
+        }
+
+        Long getShiftId() {
+            return shiftId;
+        }
+
+        LocalDate getDay() {
+            return day;
+        }
+
+        Long getAssignmentToShiftId() {
+            return assignmentToShiftId;
+        }
+
+        Long getWorkerId() {
+            return workerId;
+        }
+
+        BigDecimal getLaborHourlyCost() {
+            return laborHourlyCost;
+        }
+
+    }
+
+    private static final class WorkerHours {
+
+        private final Long assignmentToShiftId;
+
+        private final Long workerId;
+
+        private final BigDecimal laborHourlyCost;
+
+        private BigDecimal hours = BigDecimal.ZERO;
+
+        private WorkerHours(final WorkerShiftDay firstDay) {
+            this.assignmentToShiftId = firstDay.assignmentToShiftId;
+            this.workerId = firstDay.workerId;
+            this.laborHourlyCost = firstDay.laborHourlyCost == null ? BigDecimal.ZERO : firstDay.laborHourlyCost;
+        }
+
+        private void add(final BigDecimal workedHours) {
+            hours = hours.add(workedHours);
+        }
+
+        Long getAssignmentToShiftId() {
+            return assignmentToShiftId;
+        }
+
+        Long getWorkerId() {
+            return workerId;
+        }
+
+        BigDecimal getLaborHourlyCost() {
+            return laborHourlyCost;
+        }
+
+        BigDecimal getHours() {
+            return hours;
+        }
+
+    }
 }
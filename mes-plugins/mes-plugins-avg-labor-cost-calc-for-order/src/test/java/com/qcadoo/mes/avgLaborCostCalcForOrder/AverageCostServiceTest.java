@@ -0,0 +1,475 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.avgLaborCostCalcForOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.joda.time.Period;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.assignmentToShift.constants.AssignmentToShiftConstants;
+import com.qcadoo.mes.assignmentToShift.constants.StaffAssignmentToShiftState;
+import com.qcadoo.mes.assignmentToShift.states.constants.AssignmentToShiftState;
+import com.qcadoo.mes.avgLaborCostCalcForOrder.AverageCostService.WorkerShiftDay;
+import com.qcadoo.mes.avgLaborCostCalcForOrder.constants.AssignmentWorkerToShiftFields;
+import com.qcadoo.mes.avgLaborCostCalcForOrder.constants.AvgLaborCostCalcForOrderConstants;
+import com.qcadoo.mes.avgLaborCostCalcForOrder.constants.AvgLaborCostCalcForOrderFields;
+import com.qcadoo.mes.basic.ShiftsService;
+import com.qcadoo.mes.basic.ShiftsServiceImpl.ShiftHour;
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.NumberService;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.model.api.search.SearchResult;
+
+public class AverageCostServiceTest {
+
+    private static final String[] WEEK_DAYS = { "monday", "tuesday", "wensday", "thursday", "friday", "saturday", "sunday" };
+
+    private static final String[] ASSIGNMENT_STATES = { AssignmentToShiftState.DRAFT.getStringValue(),
+            AssignmentToShiftState.ACCEPTED.getStringValue(), AssignmentToShiftState.DURING_CORRECTION.getStringValue(),
+            AssignmentToShiftState.CORRECTED.getStringValue() };
+
+    private static final String[] STAFF_STATES = { StaffAssignmentToShiftState.SIMPLE.getStringValue(),
+            StaffAssignmentToShiftState.ACCEPTED.getStringValue(), StaffAssignmentToShiftState.CORRECTED.getStringValue() };
+
+    private static final DateTime START = new DateTime(2017, 1, 2, 8, 0, 0);
+
+    private static final DateTime FINISH = START.plusDays(89);
+
+    private static final Long PRODUCTION_LINE_ID = 1L;
+
+    private final Random random = new Random(42);
+
+    private final List<Entity> shifts = Lists.newArrayList();
+
+    private final Map<Long, Boolean[]> shiftWorkingDays = Maps.newHashMap();
+
+    private final List<Assignment> assignments = Lists.newArrayList();
+
+    private final Map<Long, BigDecimal> workerCosts = Maps.newHashMap();
+
+    private AverageCostService averageCostService;
+
+    private ShiftsService shiftsService;
+
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private Entity avgLaborCostCalcForOrder;
+
+    private Entity productionLine;
+
+    @Before
+    public void init() {
+        generateData();
+
+        shiftsService = mock(ShiftsService.class);
+        given(shiftsService.getWeekDayName(any(DateTime.class))).willAnswer(
+                invocation -> WEEK_DAYS[((DateTime) invocation.getArguments()[0]).getDayOfWeek() - 1]);
+        given(shiftsService.getHoursForShift(any(Entity.class), any(Date.class), any(Date.class))).willAnswer(
+                invocation -> hoursForShift((Entity) invocation.getArguments()[0], (Date) invocation.getArguments()[1],
+                        (Date) invocation.getArguments()[2]));
+
+        jdbcTemplate = mock(NamedParameterJdbcTemplate.class);
+        given(jdbcTemplate.query(anyString(), anyMap(), any(RowMapper.class))).willAnswer(
+                invocation -> queryWorkerShiftDays((Map<String, Object>) invocation.getArguments()[1]));
+
+        NumberService numberService = mock(NumberService.class);
+        given(numberService.getMathContext()).willReturn(MathContext.DECIMAL64);
+        given(numberService.setScale(any(BigDecimal.class))).willAnswer(
+                invocation -> ((BigDecimal) invocation.getArguments()[0]).setScale(5, RoundingMode.HALF_EVEN));
+
+        DataDefinitionService dataDefinitionService = mock(DataDefinitionService.class);
+        DataDefinition shiftDD = mockDataDefinition(shifts);
+        List<Entity> workers = Lists.newArrayList();
+        for (Long workerId : workerCosts.keySet()) {
+            workers.add(mockEntity(workerId));
+        }
+        List<Entity> assignmentEntities = Lists.newArrayList();
+        for (Assignment assignment : assignments) {
+            assignmentEntities.add(mockEntity(assignment.id));
+        }
+        given(dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_SHIFT)).willReturn(shiftDD);
+        DataDefinition staffDD = mockDataDefinition(workers);
+        given(dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_STAFF)).willReturn(staffDD);
+        DataDefinition assignmentDD = mockDataDefinition(assignmentEntities);
+        given(dataDefinitionService.get(AssignmentToShiftConstants.PLUGIN_IDENTIFIER,
+                AssignmentToShiftConstants.MODEL_ASSIGNMENT_TO_SHIFT)).willReturn(assignmentDD);
+        DataDefinition assignmentWorkerToShiftDD = mock(DataDefinition.class);
+        given(assignmentWorkerToShiftDD.create()).willAnswer(invocation -> mockEntity(null));
+        given(dataDefinitionService.get(AvgLaborCostCalcForOrderConstants.PLUGIN_IDENTIFIER,
+                AvgLaborCostCalcForOrderConstants.MODEL_ASSIGNMENT_WORKER_TO_SHIFT)).willReturn(assignmentWorkerToShiftDD);
+
+        avgLaborCostCalcForOrder = mock(Entity.class);
+        DataDefinition avgLaborCostCalcForOrderDD = mock(DataDefinition.class);
+        given(avgLaborCostCalcForOrder.getId()).willReturn(1L);
+        given(avgLaborCostCalcForOrder.getDataDefinition()).willReturn(avgLaborCostCalcForOrderDD);
+        given(avgLaborCostCalcForOrderDD.get(1L)).willReturn(avgLaborCostCalcForOrder);
+
+        productionLine = mock(Entity.class);
+        given(productionLine.getId()).willReturn(PRODUCTION_LINE_ID);
+
+        averageCostService = new AverageCostService();
+        ReflectionTestUtils.setField(averageCostService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(averageCostService, "numberService", numberService);
+        ReflectionTestUtils.setField(averageCostService, "shiftsService", shiftsService);
+        ReflectionTestUtils.setField(averageCostService, "jdbcTemplate", jdbcTemplate);
+    }
+
+    @Test
+    public final void shouldCalculateSameHoursAndAverageCostAsDayByDayCalculation() {
+        // given
+        Map<Long, BigDecimal> expectedHours = calculateHoursDayByDay();
+        BigDecimal expectedCost = BigDecimal.ZERO;
+        BigDecimal expectedTotalHours = BigDecimal.ZERO;
+        for (Map.Entry<Long, BigDecimal> workerHours : expectedHours.entrySet()) {
+            expectedCost = expectedCost.add(workerCosts.get(workerHours.getKey()).multiply(workerHours.getValue()));
+            expectedTotalHours = expectedTotalHours.add(workerHours.getValue());
+        }
+        BigDecimal expectedAverageCost = expectedCost.divide(expectedTotalHours, MathContext.DECIMAL64).setScale(5,
+                RoundingMode.HALF_EVEN);
+
+        // when
+        averageCostService.generateAssignmentWorkerToShiftAndAverageCost(avgLaborCostCalcForOrder, START.toDate(),
+                FINISH.toDate(), productionLine);
+
+        // then
+        ArgumentCaptor<Collection> rowsCaptor = ArgumentCaptor.forClass(Collection.class);
+        verify(avgLaborCostCalcForOrder).setField(AvgLaborCostCalcForOrderFields.AVERAGE_LABOR_HOURLY_COST, expectedAverageCost);
+        verify(avgLaborCostCalcForOrder).setField(eq(AvgLaborCostCalcForOrderFields.ASSIGNMENT_WORKER_TO_SHIFTS),
+                rowsCaptor.capture());
+        Map<Long, BigDecimal> actualHours = Maps.newHashMap();
+        for (Object row : rowsCaptor.getValue()) {
+            Entity assignmentWorkerToShift = (Entity) row;
+            Entity worker = (Entity) assignmentWorkerToShift.getField(AssignmentWorkerToShiftFields.WORKER);
+            actualHours.put(worker.getId(),
+                    (BigDecimal) assignmentWorkerToShift.getField(AssignmentWorkerToShiftFields.WORKED_HOURS));
+        }
+        assertEquals(expectedHours, actualHours);
+        verify(jdbcTemplate, times(1)).query(anyString(), anyMap(), any(RowMapper.class));
+        verify(shiftsService, never()).checkIfShiftWorkAtDate(any(Date.class), any(Entity.class));
+    }
+
+    @Test
+    public final void shouldGetHoursOnceForEachShiftForWholePeriod() {
+        // given
+        Date afterFinish = FINISH.plusDays(1).toDate();
+        List<Entity> workingShifts = Lists.newArrayList();
+        for (Entity shift : shifts) {
+            if (Arrays.asList(shiftWorkingDays.get(shift.getId())).contains(true)) {
+                workingShifts.add(shift);
+            }
+        }
+
+        // when
+        averageCostService.generateAssignmentWorkerToShiftAndAverageCost(avgLaborCostCalcForOrder, START.toDate(),
+                FINISH.toDate(), productionLine);
+
+        // then
+        for (Entity shift : workingShifts) {
+            verify(shiftsService).getHoursForShift(shift, START.toDate(), afterFinish);
+        }
+        verify(shiftsService, times(workingShifts.size())).getHoursForShift(any(Entity.class), any(Date.class), any(Date.class));
+    }
+
+    @Test
+    public final void shouldQueryWorkerShiftDaysOnceForWholePeriodAndWorkingShifts() {
+        // given
+        Set<Long> workingShiftIds = Sets.newHashSet();
+        for (Map.Entry<Long, Boolean[]> workingDays : shiftWorkingDays.entrySet()) {
+            if (Arrays.asList(workingDays.getValue()).contains(true)) {
+                workingShiftIds.add(workingDays.getKey());
+            }
+        }
+        ArgumentCaptor<Map> paramsCaptor = ArgumentCaptor.forClass(Map.class);
+
+        // when
+        averageCostService.generateAssignmentWorkerToShiftAndAverageCost(avgLaborCostCalcForOrder, START.toDate(),
+                FINISH.toDate(), productionLine);
+
+        // then
+        verify(jdbcTemplate).query(eq(AverageCostService.WORKER_SHIFT_DAYS_QUERY), paramsCaptor.capture(),
+                any(RowMapper.class));
+        Map<String, Object> params = paramsCaptor.getValue();
+        assertEquals(START.toDate(), params.get("firstDay"));
+        assertEquals(FINISH.toDate(), params.get("lastDay"));
+        assertEquals(workingShiftIds, Sets.newHashSet((Collection<Long>) params.get("shiftIds")));
+        assertEquals(PRODUCTION_LINE_ID, params.get("productionLineId"));
+        assertEquals("01workOnLine", params.get("workOnLine"));
+        assertEquals(AssignmentToShiftState.CORRECTED.getStringValue(), params.get("correctedAssignment"));
+        assertEquals(StaffAssignmentToShiftState.CORRECTED.getStringValue(), params.get("correctedStaff"));
+        assertEquals(Lists.newArrayList(AssignmentToShiftState.ACCEPTED.getStringValue(),
+                AssignmentToShiftState.DURING_CORRECTION.getStringValue()), params.get("acceptedAssignments"));
+        assertEquals(StaffAssignmentToShiftState.ACCEPTED.getStringValue(), params.get("acceptedStaff"));
+    }
+
+    @Test
+    public final void shouldQueryWorkerShiftDaysWithoutProductionLine() {
+        // given
+        ArgumentCaptor<Map> paramsCaptor = ArgumentCaptor.forClass(Map.class);
+
+        // when
+        averageCostService.generateAssignmentWorkerToShiftAndAverageCost(avgLaborCostCalcForOrder, START.toDate(),
+                FINISH.toDate(), null);
+
+        // then
+        verify(jdbcTemplate).query(eq(AverageCostService.WORKER_SHIFT_DAYS_QUERY), paramsCaptor.capture(),
+                any(RowMapper.class));
+        assertTrue(paramsCaptor.getValue().containsKey("productionLineId"));
+        assertNull(paramsCaptor.getValue().get("productionLineId"));
+    }
+
+    private void generateData() {
+        for (long workerId = 1; workerId <= 12; workerId++) {
+            workerCosts.put(workerId, new BigDecimal(15 + random.nextInt(40)).add(new BigDecimal("0.25")));
+        }
+        long assignmentId = 1;
+        for (long shiftId = 1; shiftId <= 3; shiftId++) {
+            Entity shift = mockEntity(shiftId);
+            Boolean[] workingDays = new Boolean[WEEK_DAYS.length];
+            for (int i = 0; i < WEEK_DAYS.length; i++) {
+                workingDays[i] = random.nextInt(10) < 7;
+                given(shift.getBooleanField(WEEK_DAYS[i] + "Working")).willReturn(workingDays[i]);
+            }
+            shifts.add(shift);
+            shiftWorkingDays.put(shiftId, workingDays);
+
+            LocalDate startDate = START.toLocalDate().minusDays(20);
+            for (int i = 0; i < 8; i++) {
+                startDate = startDate.plusDays(1 + random.nextInt(15));
+                Assignment assignment = new Assignment(assignmentId++, shiftId, startDate,
+                        ASSIGNMENT_STATES[random.nextInt(ASSIGNMENT_STATES.length)]);
+                int staffCount = 1 + random.nextInt(6);
+                for (int j = 0; j < staffCount; j++) {
+                    assignment.staff.add(new Staff(1L + random.nextInt(workerCosts.size()),
+                            random.nextInt(10) < 8 ? "01workOnLine" : "02otherCase", 1L + random.nextInt(2),
+                            STAFF_STATES[random.nextInt(STAFF_STATES.length)]));
+                }
+                assignments.add(assignment);
+            }
+        }
+    }
+
+    // hours of the given shift within the given range; the shift 3 works overnight, across the day boundaries
+    private List<ShiftHour> hoursForShift(final Entity shift, final Date dateFrom, final Date dateTo) {
+        DateTime rangeFrom = new DateTime(dateFrom);
+        DateTime rangeTo = new DateTime(dateTo);
+        List<ShiftHour> shiftHours = Lists.newArrayList();
+        for (DateTime day = rangeFrom.minusDays(1); day.isBefore(rangeTo); day = day.plusDays(1)) {
+            DateTime from = day.plusHours((int) (shift.getId() * 7));
+            DateTime to = from.plusHours((int) ((shift.getId() * 7 + day.getDayOfYear()) % 9));
+            if (from.isBefore(rangeFrom)) {
+                from = rangeFrom;
+            }
+            if (to.isAfter(rangeTo)) {
+                to = rangeTo;
+            }
+            if (from.isBefore(to)) {
+                shiftHours.add(new ShiftHour(from.toDate(), to.toDate()));
+            }
+        }
+        return shiftHours;
+    }
+
+    // the calculation as it was done before, with a query for each day and shift
+    private Map<Long, BigDecimal> calculateHoursDayByDay() {
+        Map<Staff, BigDecimal> staffHours = Maps.newLinkedHashMap();
+        for (DateTime day = START; !day.isAfter(FINISH); day = day.plusDays(1)) {
+            for (Entity shift : shifts) {
+                if (!shiftWorkingDays.get(shift.getId())[day.getDayOfWeek() - 1]) {
+                    continue;
+                }
+                Assignment assignment = findLatestAssignment(shift.getId(), day.toLocalDate());
+                if (assignment == null) {
+                    continue;
+                }
+                BigDecimal hours = BigDecimal.ZERO;
+                for (ShiftHour shiftHour : hoursForShift(shift, day.toDate(), day.plusDays(1).toDate())) {
+                    hours = hours.add(new BigDecimal(new Period(new DateTime(shiftHour.getDateFrom()),
+                            new DateTime(shiftHour.getDateTo())).getHours()));
+                }
+                for (Staff staff : findStaff(assignment, PRODUCTION_LINE_ID)) {
+                    BigDecimal current = staffHours.get(staff);
+                    staffHours.put(staff, current == null ? hours : current.add(hours));
+                }
+            }
+        }
+        Map<Long, BigDecimal> workerHours = Maps.newHashMap();
+        for (Map.Entry<Staff, BigDecimal> entry : staffHours.entrySet()) {
+            BigDecimal current = workerHours.get(entry.getKey().workerId);
+            workerHours.put(entry.getKey().workerId, current == null ? entry.getValue() : current.add(entry.getValue()));
+        }
+        return workerHours;
+    }
+
+    // answers the worker shift days query from the generated data
+    private List<WorkerShiftDay> queryWorkerShiftDays(final Map<String, Object> params) {
+        DateTime firstDay = new DateTime(params.get("firstDay"));
+        DateTime lastDay = new DateTime(params.get("lastDay"));
+        Collection<Long> shiftIds = (Collection<Long>) params.get("shiftIds");
+        Long productionLineId = (Long) params.get("productionLineId");
+
+        List<WorkerShiftDay> rows = Lists.newArrayList();
+        for (DateTime day = firstDay; !day.isAfter(lastDay); day = day.plusDays(1)) {
+            for (Long shiftId : shiftIds) {
+                Assignment assignment = findLatestAssignment(shiftId, day.toLocalDate());
+                if (assignment == null) {
+                    continue;
+                }
+                for (Staff staff : findStaff(assignment, productionLineId)) {
+                    rows.add(new WorkerShiftDay(shiftId, day.toLocalDate(), assignment.id, staff.workerId,
+                            workerCosts.get(staff.workerId)));
+                }
+            }
+        }
+        return rows;
+    }
+
+    private Assignment findLatestAssignment(final Long shiftId, final LocalDate day) {
+        Assignment latest = null;
+        for (Assignment assignment : assignments) {
+            if (assignment.shiftId.equals(shiftId) && !assignment.startDate.isAfter(day)
+                    && (latest == null || assignment.startDate.isAfter(latest.startDate))) {
+                latest = assignment;
+            }
+        }
+        return latest;
+    }
+
+    private List<Staff> findStaff(final Assignment assignment, final Long productionLineId) {
+        String staffState = null;
+        if (AssignmentToShiftState.CORRECTED.getStringValue().equals(assignment.state)) {
+            staffState = StaffAssignmentToShiftState.CORRECTED.getStringValue();
+        } else if (AssignmentToShiftState.ACCEPTED.getStringValue().equals(assignment.state)
+                || AssignmentToShiftState.DURING_CORRECTION.getStringValue().equals(assignment.state)) {
+            staffState = StaffAssignmentToShiftState.ACCEPTED.getStringValue();
+        }
+        List<Staff> staff = Lists.newArrayList();
+        for (Staff candidate : assignment.staff) {
+            if ("01workOnLine".equals(candidate.occupationTypeEnum) && candidate.productionLineId.equals(productionLineId)
+                    && candidate.state.equals(staffState)) {
+                staff.add(candidate);
+            }
+        }
+        return staff;
+    }
+
+    private DataDefinition mockDataDefinition(final List<Entity> entities) {
+        DataDefinition dataDefinition = mock(DataDefinition.class);
+        SearchCriteriaBuilder searchCriteriaBuilder = mock(SearchCriteriaBuilder.class);
+        SearchResult searchResult = mock(SearchResult.class);
+        given(dataDefinition.find()).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.add(any(SearchCriterion.class))).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.list()).willReturn(searchResult);
+        given(searchResult.getEntities()).willReturn(entities);
+        return dataDefinition;
+    }
+
+    private Entity mockEntity(final Long id) {
+        Map<String, Object> fields = Maps.newHashMap();
+        Entity entity = mock(Entity.class);
+        given(entity.getId()).willReturn(id);
+        willAnswer(invocation -> fields.put((String) invocation.getArguments()[0], invocation.getArguments()[1])).given(entity)
+                .setField(anyString(), any());
+        given(entity.getField(anyString())).willAnswer(invocation -> fields.get(invocation.getArguments()[0]));
+        return entity;
+    }
+
+    private static final class Assignment {
+
+        private final Long id;
+
+        private final Long shiftId;
+
+        private final LocalDate startDate;
+
+        private final String state;
+
+        private final List<Staff> staff = Lists.newArrayList();
+
+        private Assignment(final Long id, final Long shiftId, final LocalDate startDate, final String state) {
+            this.id = id;
+            this.shiftId = shiftId;
+            this.startDate = startDate;
+            this.state = state;
+        }
+
+    }
+
+    private static final class Staff {
+
+        private final Long workerId;
+
+        private final String occupationTypeEnum;
+
+        private final Long productionLineId;
+
+        private final String state;
+
+        private Staff(final Long workerId, final String occupationTypeEnum, final Long productionLineId, final String state) {
+            this.workerId = workerId;
+            this.occupationTypeEnum = occupationTypeEnum;
+            this.productionLineId = productionLineId;
+            this.state = state;
+        }
+
+    }
+
+}
@@ -25,15 +25,15 @@ package com.qcadoo.mes.basicProductionCounting.hooks;
 
 import com.qcadoo.mes.basicProductionCounting.BasicProductionCountingService;
 import com.qcadoo.mes.basicProductionCounting.constants.OrderFieldsBPC;
+import com.qcadoo.mes.orders.OrderChanges;
+import com.qcadoo.mes.orders.OrderPreviousStateService;
 import com.qcadoo.mes.orders.constants.OrderFields;
 import com.qcadoo.mes.orders.states.constants.OrderStateStringValues;
-import com.qcadoo.model.api.BigDecimalUtils;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
 import java.util.List;
 
 @Service
@@ -42,19 +42,20 @@ public class OrderHooksBPC {
     @Autowired
     private BasicProductionCountingService basicProductionCountingService;
 
+    @Autowired
+    private OrderPreviousStateService orderPreviousStateService;
+
     public void onSave(final DataDefinition orderDD, final Entity order) {
         updateProductionCountingQuantitiesAndOperationRuns(order);
         updateProducedQuantity(order);
     }
 
     private void updateProductionCountingQuantitiesAndOperationRuns(final Entity order) {
-        BigDecimal plannedQuantity = order.getDecimalField(OrderFields.PLANNED_QUANTITY);
-
         String state = order.getStringField(OrderFields.STATE);
 
         if (OrderStateStringValues.ACCEPTED.equals(state) || OrderStateStringValues.IN_PROGRESS.equals(state)
                 || OrderStateStringValues.INTERRUPTED.equals(state)) {
-            if (hasPlannedQuantityChanged(order, plannedQuantity)) {
+            if (hasPlannedQuantityChanged(order)) {
                 basicProductionCountingService.updateProductionCountingQuantitiesAndOperationRuns(order);
             } else {
                 if (checkIfProductionCountingQuantitiesAndOperationsRunsAreEmpty(order)) {
@@ -74,30 +75,17 @@ public class OrderHooksBPC {
         }
     }
 
-    private boolean hasPlannedQuantityChanged(final Entity order, final BigDecimal plannedQuantity) {
-        Entity existingOrder = getExistingOrder(order);
+    private boolean hasPlannedQuantityChanged(final Entity order) {
+        OrderChanges orderChanges = orderPreviousStateService.getChanges(order.getDataDefinition(), order);
 
-        if (existingOrder == null) {
+        if (orderChanges.isNew()) {
             return false;
         }
 
-        BigDecimal existingOrderPlannedQuantity = existingOrder.getDecimalField(OrderFields.PLANNED_QUANTITY);
-        if (existingOrderPlannedQuantity == null) {
+        if (orderChanges.getOldValue(OrderFields.PLANNED_QUANTITY) == null) {
             return true;
         }
-        return !BigDecimalUtils.valueEquals(existingOrderPlannedQuantity, plannedQuantity);
-    }
-
-    private Entity getExistingOrder(final Entity order) {
-        if (order.getId() == null) {
-            return null;
-        }
-        StringBuilder query = new StringBuilder();
-        query.append("SELECT ord.id as id, ord.plannedQuantity as plannedQuantity ");
-        query.append("FROM #orders_order ord WHERE id = :id");
-        Entity orderDB = order.getDataDefinition().find(query.toString()).setLong("id", order.getId()).setMaxResults(1).uniqueResult();
-
-        return orderDB;
+        return orderChanges.isChanged(OrderFields.PLANNED_QUANTITY);
     }
 
     boolean checkIfProductionCountingQuantitiesAndOperationsRunsAreEmpty(final Entity order) {
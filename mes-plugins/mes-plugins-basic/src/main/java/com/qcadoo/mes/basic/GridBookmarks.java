@@ -0,0 +1,99 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Sort keys of the last records of already served lookup grid pages, kept in the user session so that the next page can be
+ * sought right after them instead of skipping all previous records.
+ */
+final class GridBookmarks implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int MAX_QUERIES = 20;
+
+    private static final int MAX_PAGES_PER_QUERY = 200;
+
+    private final Map<String, NavigableMap<Integer, Key>> pagesByQuery = new LinkedHashMap<String, NavigableMap<Integer, Key>>(
+            16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, NavigableMap<Integer, Key>> eldest) {
+            return size() > MAX_QUERIES;
+        }
+
+    };
+
+    synchronized Map.Entry<Integer, Key> findNearestBefore(final String query, final int page) {
+        NavigableMap<Integer, Key> pages = pagesByQuery.get(query);
+
+        if (pages == null) {
+            return null;
+        }
+
+        return pages.floorEntry(page - 1);
+    }
+
+    synchronized void put(final String query, final int page, final Key key) {
+        NavigableMap<Integer, Key> pages = pagesByQuery.computeIfAbsent(query, q -> new TreeMap<>());
+
+        pages.put(page, key);
+
+        if (pages.size() > MAX_PAGES_PER_QUERY) {
+            pages.remove(pages.firstKey());
+        }
+    }
+
+    static final class Key implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Object sortValue;
+
+        private final Object id;
+
+        Key(final Object sortValue, final Object id) {
+            this.sortValue = sortValue;
+            this.id = id;
+        }
+
+        Object getSortValue() {
+            return sortValue;
+        }
+
+        Object getId() {
+            return id;
+        }
+
+    }
+
+}
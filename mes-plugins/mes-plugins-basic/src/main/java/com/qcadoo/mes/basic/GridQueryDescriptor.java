@@ -0,0 +1,137 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Reflection work needed to filter and sort lookup grid records of one DTO class, done once per class.
+ */
+final class GridQueryDescriptor {
+
+    private static final String L_ID = "id";
+
+    private final List<SearchField> searchFields = new ArrayList<>();
+
+    private final Map<String, Field> fieldsByLowerCaseName = Maps.newHashMap();
+
+    GridQueryDescriptor(final Class<?> recordClass) {
+        for (Field field : recordClass.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) || field.isSynthetic()) {
+                continue;
+            }
+
+            field.setAccessible(true);
+
+            searchFields.add(new SearchField(field));
+            fieldsByLowerCaseName.put(field.getName().toLowerCase(), field);
+        }
+    }
+
+    boolean isSortable(final String sidx) {
+        return fieldsByLowerCaseName.containsKey(sidx);
+    }
+
+    boolean hasId() {
+        return fieldsByLowerCaseName.containsKey(L_ID);
+    }
+
+    Object getId(final Object record) {
+        return getValue(fieldsByLowerCaseName.get(L_ID), record);
+    }
+
+    Object getSortValue(final String sidx, final Object record) {
+        return getValue(fieldsByLowerCaseName.get(sidx), record);
+    }
+
+    String buildWhere(final Object record, final Map<String, Object> parameters) {
+        if (record == null) {
+            return "";
+        }
+
+        List<String> items = new ArrayList<>();
+
+        for (SearchField searchField : searchFields) {
+            Object value = getValue(searchField.field, record);
+
+            if (value == null) {
+                continue;
+            }
+
+            String name = searchField.field.getName();
+
+            if ((value instanceof Number) || (value instanceof Date) || (value instanceof Boolean)) {
+                items.add(String.format("%s = :%s", name, name));
+                parameters.put(name, value);
+            } else if (value instanceof String) {
+                if (searchField.exactMatch) {
+                    items.add(String.format("lower(%s) = lower(:%s)", name, name));
+                    parameters.put(name, value);
+                } else {
+                    items.add(String.format("lower(%s) like lower(:%s)", name, name));
+                    parameters.put(name, "%" + value + "%");
+                }
+            } else {
+                parameters.put(name, value);
+            }
+        }
+
+        if (items.isEmpty()) {
+            return "";
+        }
+
+        return " WHERE " + items.stream().collect(Collectors.joining(" AND "));
+    }
+
+    private Object getValue(final Field field, final Object record) {
+        try {
+            return field.get(record);
+        } catch (IllegalArgumentException | IllegalAccessException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static final class SearchField {
+
+        private final Field field;
+
+        private final boolean exactMatch;
+
+        private SearchField(final Field field) {
+            this.field = field;
+            this.exactMatch = field.isAnnotationPresent(SearchAttribute.class)
+                    && (field.getAnnotation(SearchAttribute.class).searchType() == SearchAttribute.SEARCH_TYPE.EXACT_MATCH);
+        }
+
+    }
+
+}
@@ -1,24 +1,45 @@
 package com.qcadoo.mes.basic;
 
-import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 
 import com.google.common.base.Preconditions;
 
 @Service
 public class LookupUtils {
 
+    public static final long ESTIMATED_COUNT_THRESHOLD = 100000L;
+
+    private static final String L_ID = "id";
+
+    private static final String L_DESC = "desc";
+
+    private static final String L_SEEK_SORT_VALUE = "gridSeekSortValue";
+
+    private static final String L_SEEK_ID = "gridSeekId";
+
+    private static final String L_GRID_BOOKMARKS = LookupUtils.class.getName() + ".gridBookmarks";
+
+    private static final Pattern PLAN_ROWS = Pattern.compile("rows=(\\d+)");
+
+    private final ConcurrentMap<Class<?>, GridQueryDescriptor> descriptors = new ConcurrentHashMap<>();
+
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
@@ -26,101 +47,194 @@ public class LookupUtils {
         return getGridResponse(query, sidx, sord, page, perPage, recordExample, new HashMap<>());
     }
 
-    public <R> GridResponse<R> getGridResponse(String query, String sidx, String sord, Integer page, int perPage, R recordExample, Map<String, Object> parameters) {
+    public <R> GridResponse<R> getGridResponse(String query, String sidx, String sord, Integer page, int perPage, R recordExample,
+            Map<String, Object> parameters) {
+        return getGridResponse(query, sidx, sord, page, perPage, recordExample, parameters, false);
+    }
+
+    public <R> GridResponse<R> getGridResponse(String query, String sidx, String sord, Integer page, int perPage, R recordExample,
+            Map<String, Object> parameters, boolean estimateCount) {
+        return getGridResponse(query, sidx, sord, page, perPage, recordExample, parameters, estimateCount, null);
+    }
+
+    /**
+     * Returns a page of lookup grid records. Pages following an already served page of the same query are sought by the sort
+     * column and id instead of skipping previous records with OFFSET. When estimateCount is set and the planner expects at
+     * least ESTIMATED_COUNT_THRESHOLD records, its estimate is returned instead of the exact count. When primaryOrder (e.g.
+     * "expirationdate asc") is given, records are ordered by it first, then by the sort column and id, and pages are skipped
+     * with OFFSET.
+     */
+    public <R> GridResponse<R> getGridResponse(String query, String sidx, String sord, Integer page, int perPage, R recordExample,
+            Map<String, Object> parameters, boolean estimateCount, String primaryOrder) {
         sidx = sidx != null ? sidx.toLowerCase() : "";
         sord = sord != null ? sord.toLowerCase() : "";
 
-        Preconditions.checkState(Arrays.asList("asc", "desc", "").contains(sord));
-        Preconditions.checkState(Arrays.asList(recordExample.getClass().getDeclaredFields()).stream().map(Field::getName).map(String::toLowerCase).collect(Collectors.toList()).contains(sidx));
+        GridQueryDescriptor descriptor = descriptors.computeIfAbsent(recordExample.getClass(), GridQueryDescriptor::new);
 
-        query += addQueryWhereForObject(recordExample);
+        Preconditions.checkState(Arrays.asList("asc", "desc", "").contains(sord));
+        Preconditions.checkState(descriptor.isSortable(sidx));
 
-        parameters.putAll(getParametersForObject(recordExample));
+        String where = descriptor.buildWhere(recordExample, parameters);
 
-        String queryCount = String.format(query, "COUNT(*)", "");
-        String queryRecords = String.format(query, "*", "ORDER BY " + sidx + " " + sord) + String.format(" LIMIT %d OFFSET %d", perPage, perPage * (page - 1));
+        String queryCount = String.format(query, "COUNT(*)", "") + where;
+        String queryAll = String.format(query, "*", "") + where;
 
-        Integer countRecords = jdbcTemplate.queryForObject(queryCount, parameters, Long.class).intValue();
-        List<R> records = jdbcTemplate.query(queryRecords, parameters, new BeanPropertyRowMapper(recordExample.getClass()));
+        Integer countRecords = countRecords(queryCount, queryAll, parameters, estimateCount);
+        List<R> records = findRecords(descriptor, queryAll, sidx, sord, page, perPage, recordExample, parameters,
+                StringUtils.trimToNull(primaryOrder));
 
         return new GridResponse<>(page, Double.valueOf(Math.ceil((1.0 * countRecords) / perPage)).intValue(), countRecords, records);
     }
 
-    private String addQueryWhereForObject(Object object) {
-        List<String> items = new ArrayList<>();
+    private Integer countRecords(final String queryCount, final String queryAll, final Map<String, Object> parameters,
+            final boolean estimateCount) {
+        if (estimateCount) {
+            long estimatedCount = estimateCount(queryAll, parameters);
+
+            if (estimatedCount >= ESTIMATED_COUNT_THRESHOLD) {
+                return (int) Math.min(estimatedCount, Integer.MAX_VALUE);
+            }
+        }
+
+        return jdbcTemplate.queryForObject(queryCount, parameters, Long.class).intValue();
+    }
+
+    private long estimateCount(final String queryAll, final Map<String, Object> parameters) {
+        List<String> plan = jdbcTemplate.queryForList("EXPLAIN " + queryAll, parameters, String.class);
+
+        if (!plan.isEmpty()) {
+            Matcher matcher = PLAN_ROWS.matcher(plan.get(0));
+
+            if (matcher.find()) {
+                return Long.parseLong(matcher.group(1));
+            }
+        }
+
+        return 0L;
+    }
+
+    private <R> List<R> findRecords(final GridQueryDescriptor descriptor, final String queryAll, final String sidx,
+            final String sord, final Integer page, final int perPage, final R recordExample,
+            final Map<String, Object> parameters, final String primaryOrder) {
+        boolean descending = L_DESC.equals(sord);
+        boolean sortById = sidx.isEmpty() || L_ID.equals(sidx);
+        boolean bookmarkable = descriptor.hasId() && (primaryOrder == null);
+        boolean seekable = bookmarkable && (page > 1);
 
-        if (object != null) {
-            for (Field field : object.getClass().getDeclaredFields()) {
-                try {
-                    field.setAccessible(true);
-                    Object value = field.get(object);
-                    if (value != null) {
-                        if (value instanceof Number) {
-                            items.add(String.format("%s = :%s", field.getName(), field.getName()));
+        GridBookmarks bookmarks = seekable ? getGridBookmarks() : null;
+        String bookmarksKey = queryAll + " " + sidx + " " + sord + " " + perPage + " " + parameters;
 
-                        } else if (value instanceof Date) {
-                            items.add(String.format("%s = :%s", field.getName(), field.getName()));
+        Map.Entry<Integer, GridBookmarks.Key> bookmark = (bookmarks == null) ? null
+                : bookmarks.findNearestBefore(bookmarksKey, page);
 
-                        } else if (value instanceof Boolean) {
-                            items.add(String.format("%s = :%s", field.getName(), field.getName()));
+        StringBuilder queryRecords = new StringBuilder("SELECT * FROM (").append(queryAll).append(") grid");
+        Map<String, Object> recordsParameters = parameters;
+        int offset = perPage * (page - 1);
 
-                        } else if (value instanceof String) {
-                            SearchAttribute.SEARCH_TYPE searchType = field.isAnnotationPresent(SearchAttribute.class) ? field.getAnnotation(SearchAttribute.class).searchType() : SearchAttribute.SEARCH_TYPE.LIKE;
+        if (bookmark != null) {
+            GridBookmarks.Key key = bookmark.getValue();
 
-                            if (searchType == SearchAttribute.SEARCH_TYPE.EXACT_MATCH) {
-                                items.add(String.format("lower(%s) = lower(:%s)", field.getName(), field.getName()));
+            recordsParameters = new HashMap<>(parameters);
+            recordsParameters.put(L_SEEK_ID, key.getId());
+            recordsParameters.put(L_SEEK_SORT_VALUE, key.getSortValue());
 
-                            } else {
-                                items.add(String.format("lower(%s) like lower(:%s)", field.getName(), field.getName()));
-                            }
-                        }
-                    }
+            queryRecords.append(" WHERE ").append(buildSeekCondition(sidx, sortById, descending, key.getSortValue() == null));
+            offset = perPage * (page - 1 - bookmark.getKey());
+        }
+
+        queryRecords.append(buildOrderBy(descriptor, sidx, sord, sortById, primaryOrder));
+        queryRecords.append(String.format(" LIMIT %d", perPage));
+
+        if (offset > 0) {
+            queryRecords.append(String.format(" OFFSET %d", offset));
+        }
 
-                } catch (IllegalArgumentException | IllegalAccessException ex) {
-                    throw new RuntimeException(ex);
-                }
+        List<R> records = jdbcTemplate.query(queryRecords.toString(), recordsParameters,
+                new BeanPropertyRowMapper(recordExample.getClass()));
+
+        if (bookmarkable && (records.size() == perPage)) {
+            R last = records.get(records.size() - 1);
+            GridBookmarks sessionBookmarks = (bookmarks == null) ? getGridBookmarks() : bookmarks;
+
+            if (sessionBookmarks != null) {
+                sessionBookmarks.put(bookmarksKey, page,
+                        new GridBookmarks.Key(sortById ? null : descriptor.getSortValue(sidx, last), descriptor.getId(last)));
             }
         }
 
-        String where = "";
+        return records;
+    }
+
+    private String buildSeekCondition(final String sidx, final boolean sortById, final boolean descending,
+            final boolean nullSortValue) {
+        String idCondition = String.format("id %s :%s", descending ? "<" : ">", L_SEEK_ID);
+
+        if (sortById) {
+            return idCondition;
+        }
 
-        if (!items.isEmpty()) {
-            where = " WHERE " + items.stream().collect(Collectors.joining(" AND "));
+        // default PostgreSQL ordering puts nulls last when ascending and first when descending
+        if (nullSortValue) {
+            if (descending) {
+                return String.format("((%s IS NULL AND %s) OR %s IS NOT NULL)", sidx, idCondition, sidx);
+            } else {
+                return String.format("(%s IS NULL AND %s)", sidx, idCondition);
+            }
         }
 
-        return where;
+        String condition = String.format("(%s %s :%s OR (%s = :%s AND %s)", sidx, descending ? "<" : ">", L_SEEK_SORT_VALUE,
+                sidx, L_SEEK_SORT_VALUE, idCondition);
+
+        if (descending) {
+            return condition + ")";
+        } else {
+            return condition + String.format(" OR %s IS NULL)", sidx);
+        }
     }
 
-    private Map<String, Object> getParametersForObject(Object object) {
-        Map<String, Object> parameters = new HashMap<>();
-
-        if (object != null) {
-            for (Field field : object.getClass().getDeclaredFields()) {
-                try {
-                    field.setAccessible(true);
-                    Object value = field.get(object);
-                    if (value != null) {
-                        if (value instanceof String) {
-                            SearchAttribute.SEARCH_TYPE searchType = field.isAnnotationPresent(SearchAttribute.class) ? field.getAnnotation(SearchAttribute.class).searchType() : SearchAttribute.SEARCH_TYPE.LIKE;
-
-                            if (searchType == SearchAttribute.SEARCH_TYPE.EXACT_MATCH) {
-                                parameters.put(field.getName(), value);
-
-                            } else {
-                                parameters.put(field.getName(), "%" + value + "%");
-                            }
-
-                        } else {
-                            parameters.put(field.getName(), value);
-                        }
-                    }
-
-                } catch (IllegalArgumentException | IllegalAccessException ex) {
-                    throw new RuntimeException(ex);
-                }
+    private String buildOrderBy(final GridQueryDescriptor descriptor, final String sidx, final String sord,
+            final boolean sortById, final String primaryOrder) {
+        if (primaryOrder != null) {
+            List<String> orders = new ArrayList<>();
+
+            orders.add(primaryOrder);
+
+            if (!sortById) {
+                orders.add(String.format("%s %s", sidx, sord).trim());
+            }
+            if (descriptor.hasId()) {
+                orders.add(String.format("id %s", sord).trim());
             }
+
+            return " ORDER BY " + orders.stream().collect(Collectors.joining(", "));
+        } else if (!descriptor.hasId()) {
+            return sidx.isEmpty() ? "" : String.format(" ORDER BY %s %s", sidx, sord);
+        } else if (sortById) {
+            return String.format(" ORDER BY id %s", sord);
+        } else {
+            return String.format(" ORDER BY %s %s, id %s", sidx, sord, sord);
+        }
+    }
+
+    private GridBookmarks getGridBookmarks() {
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+
+        if (requestAttributes == null) {
+            return null;
         }
 
-        return parameters;
+        synchronized (requestAttributes.getSessionMutex()) {
+            GridBookmarks bookmarks = (GridBookmarks) requestAttributes.getAttribute(L_GRID_BOOKMARKS,
+                    RequestAttributes.SCOPE_SESSION);
+
+            if (bookmarks == null) {
+                bookmarks = new GridBookmarks();
+
+                requestAttributes.setAttribute(L_GRID_BOOKMARKS, bookmarks, RequestAttributes.SCOPE_SESSION);
+            }
+
+            return bookmarks;
+        }
     }
+
 }
@@ -26,10 +26,15 @@ package com.qcadoo.mes.basic;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.google.common.base.Preconditions;
 import com.qcadoo.mes.basic.constants.BasicConstants;
@@ -38,6 +43,7 @@ import com.qcadoo.mes.basic.constants.ReportColumnWidthFields;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
+import com.qcadoo.tenant.api.MultiTenantService;
 
 /**
  * Service for accessing parameters
@@ -51,9 +57,18 @@ public class ParameterService {
 
     private static final Integer LARGE_CHAR_IN_PIXEL = 11;
 
+    private final AtomicLong parameterVersion = new AtomicLong();
+
+    private final Object parameterSnapshotKey = new Object();
+
+    private final ConcurrentMap<Integer, ParameterSnapshot> parameterSnapshots = new ConcurrentHashMap<>();
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private MultiTenantService multiTenantService;
+
     /**
      * Returns basic parameter entity id for current user
      * 
@@ -88,6 +103,57 @@ public class ParameterService {
         return parameter;
     }
 
+    /**
+     * Returns basic parameter values for current user's tenant. Values are kept in memory until parameters are saved, within
+     * the saving transaction they are read like in {@link #getParameter()}, so that uncommitted values never leak to other
+     * transactions.
+     * 
+     * @return parameter snapshot
+     * 
+     */
+    public ParameterSnapshot getParameterSnapshot() {
+        if (TransactionSynchronizationManager.hasResource(parameterSnapshotKey)) {
+            return new ParameterSnapshot(getParameter(), parameterVersion.get());
+        }
+
+        Integer tenantId = multiTenantService.getCurrentTenantId();
+        long version = parameterVersion.get();
+
+        ParameterSnapshot snapshot = parameterSnapshots.get(tenantId);
+
+        if (snapshot == null || snapshot.getVersion() != version) {
+            snapshot = new ParameterSnapshot(getParameter(), version);
+
+            // parameters saved while loading, snapshot may already be stale
+            if (parameterVersion.get() == version) {
+                parameterSnapshots.put(tenantId, snapshot);
+            }
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Marks all parameter snapshots as stale, again after transaction completion. Should be called whenever parameters are saved.
+     */
+    public void invalidateParameterSnapshot() {
+        parameterVersion.incrementAndGet();
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()
+                && !TransactionSynchronizationManager.hasResource(parameterSnapshotKey)) {
+            TransactionSynchronizationManager.bindResource(parameterSnapshotKey, Boolean.TRUE);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(final int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(parameterSnapshotKey);
+                    parameterVersion.incrementAndGet();
+                }
+
+            });
+        }
+    }
+
     private Entity createParameter(final DataDefinition dataDefinition) {
         Entity parameter = dataDefinition.create();
         parameter = dataDefinition.save(parameter);
@@ -0,0 +1,142 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+import com.google.common.collect.Maps;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Immutable copy of basic parameter values, served by {@link ParameterService#getParameterSnapshot()}. Belongs to fields are
+ * kept as ids, collections are not copied.
+ * 
+ * @since 1.4
+ */
+public final class ParameterSnapshot {
+
+    private final Long id;
+
+    private final long version;
+
+    private final Map<String, Object> values;
+
+    private final ConcurrentMap<String, Object> derivedValues = new ConcurrentHashMap<>();
+
+    ParameterSnapshot(final Entity parameter, final long version) {
+        this.id = parameter.getId();
+        this.version = version;
+
+        Map<String, Object> values = Maps.newHashMap();
+
+        for (Entry<String, Object> field : parameter.getFields().entrySet()) {
+            Object value = field.getValue();
+
+            if (value instanceof Entity) {
+                values.put(field.getKey(), ((Entity) value).getId());
+            } else if (value instanceof Date) {
+                values.put(field.getKey(), new Date(((Date) value).getTime()));
+            } else if (!(value instanceof Collection)) {
+                values.put(field.getKey(), value);
+            }
+        }
+
+        this.values = Collections.unmodifiableMap(values);
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    public Object getField(final String fieldName) {
+        Object value = values.get(fieldName);
+
+        if (value instanceof Date) {
+            return new Date(((Date) value).getTime());
+        }
+
+        return value;
+    }
+
+    public String getStringField(final String fieldName) {
+        Object value = values.get(fieldName);
+
+        return value == null ? null : value.toString();
+    }
+
+    public boolean getBooleanField(final String fieldName) {
+        Object value = values.get(fieldName);
+
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+
+        return value != null && "1".equals(value.toString());
+    }
+
+    public Integer getIntegerField(final String fieldName) {
+        Object value = values.get(fieldName);
+
+        return value == null ? null : ((Number) value).intValue();
+    }
+
+    public BigDecimal getDecimalField(final String fieldName) {
+        Object value = values.get(fieldName);
+
+        if (value == null || value instanceof BigDecimal) {
+            return (BigDecimal) value;
+        }
+
+        return new BigDecimal(value.toString());
+    }
+
+    public Date getDateField(final String fieldName) {
+        return (Date) getField(fieldName);
+    }
+
+    public Long getBelongsToFieldId(final String fieldName) {
+        return (Long) values.get(fieldName);
+    }
+
+    /**
+     * Returns value derived from parameters (or from models edited together with them), computing it once per snapshot.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getDerivedValue(final String key, final Supplier<T> loader) {
+        return (T) derivedValues.computeIfAbsent(key, k -> loader.get());
+    }
+
+}
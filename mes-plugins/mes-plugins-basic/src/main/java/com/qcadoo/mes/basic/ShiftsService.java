@@ -32,6 +32,7 @@ import org.joda.time.LocalTime;
 
 import com.qcadoo.mes.basic.ShiftsServiceImpl.ShiftHour;
 import com.qcadoo.mes.basic.shift.Shift;
+import com.qcadoo.mes.basic.shift.ShiftCalendar;
 import com.qcadoo.model.api.Entity;
 
 //FIXME maku: replace bounded time/date ranges with JodaTime's intervals.
@@ -46,6 +47,14 @@ public interface ShiftsService {
 
     Date findDateToForOrder(final Date dateFrom, final long seconds);
 
+    /**
+     * Returns precompiled working time calendar of all shifts (including their timetable exceptions) of current tenant. The
+     * calendar is compiled lazily and kept until any shift or timetable exception gets saved or deleted.
+     */
+    ShiftCalendar getShiftCalendar();
+
+    void invalidateShiftCalendar();
+
     List<ShiftHour> getHoursForShift(final Entity shift, final Date dateFrom, final Date dateTo);
 
     Entity getShiftFromDateWithTime(final Date date);
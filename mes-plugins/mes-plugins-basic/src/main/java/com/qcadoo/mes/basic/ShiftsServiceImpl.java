@@ -33,6 +33,9 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import org.joda.time.DateTime;
@@ -43,6 +46,8 @@ import org.joda.time.LocalDate;
 import org.joda.time.LocalTime;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.StringUtils;
 
 import com.google.common.base.Function;
@@ -55,10 +60,12 @@ import com.qcadoo.mes.basic.constants.ShiftFields;
 import com.qcadoo.mes.basic.constants.ShiftTimetableExceptionFields;
 import com.qcadoo.mes.basic.constants.TimetableExceptionType;
 import com.qcadoo.mes.basic.shift.Shift;
+import com.qcadoo.mes.basic.shift.ShiftCalendar;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.search.SearchRestrictions;
+import com.qcadoo.tenant.api.MultiTenantService;
 import com.qcadoo.view.api.ComponentState;
 import com.qcadoo.view.api.ViewDefinitionState;
 import com.qcadoo.view.api.components.FieldComponent;
@@ -102,6 +109,13 @@ public class ShiftsServiceImpl implements ShiftsService {
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    private final AtomicLong shiftCalendarVersion = new AtomicLong();
+
+    private final ConcurrentMap<Integer, ShiftCalendar> shiftCalendars = new ConcurrentHashMap<>();
+
     private static final String[] WEEK_DAYS = { L_MONDAY, L_TUESDAY, L_WENSDAY, L_THURSDAY, L_FRIDAY, L_SATURDAY, L_SUNDAY };
 
     private static final Map<Integer, String> DAY_OF_WEEK = buildDayNumToNameMap();
@@ -403,55 +417,120 @@ public class ShiftsServiceImpl implements ShiftsService {
 
     @Override
     public Date findDateToForOrder(final Date dateFrom, final long seconds) {
-        if (dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_SHIFT).find().list()
-                .getTotalNumberOfEntities() == 0) {
+        Long dateTo = getShiftCalendar().addWorkingTime(dateFrom.getTime(), seconds * 1000L);
+        if (dateTo == null) {
             return null;
         }
-        long start = dateFrom.getTime();
-        long remaining = seconds;
-        while (remaining >= 0) {
-            List<ShiftsServiceImpl.ShiftHour> hours = getHoursForAllShifts(new Date(start), new Date(start + STEP));
-            for (ShiftsServiceImpl.ShiftHour hour : hours) {
-                long diff = (hour.getDateTo().getTime() - hour.getDateFrom().getTime()) / 1000;
-                if (diff >= remaining) {
-                    return new Date(hour.getDateFrom().getTime() + (remaining * 1000));
-                } else {
-                    remaining -= diff;
-                }
-            }
-            start += STEP;
-            if (start > MAX_TIMESTAMP) {
-                return null;
-            }
-        }
-        return null;
+        return new Date(dateTo);
     }
 
     @Override
     public Date findDateFromForOrder(final Date dateTo, final long seconds) {
-        if (dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_SHIFT).find().list()
-                .getTotalNumberOfEntities() == 0) {
+        Long dateFrom = getShiftCalendar().subtractWorkingTime(dateTo.getTime(), seconds * 1000L);
+        if (dateFrom == null) {
             return null;
         }
-        long stop = dateTo.getTime();
-        long remaining = seconds;
-        while (remaining >= 0) {
-            List<ShiftsServiceImpl.ShiftHour> hours = getHoursForAllShifts(new Date(stop - STEP), new Date(stop));
-            for (int i = hours.size() - 1; i >= 0; i--) {
-                ShiftsServiceImpl.ShiftHour hour = hours.get(i);
-                long diff = (hour.getDateTo().getTime() - hour.getDateFrom().getTime()) / 1000;
-                if (diff >= remaining) {
-                    return new Date(hour.getDateTo().getTime() - (remaining * 1000));
+        return new Date(dateFrom);
+    }
+
+    @Override
+    public ShiftCalendar getShiftCalendar() {
+        Integer tenantId = multiTenantService.getCurrentTenantId();
+        ShiftCalendar calendar = shiftCalendars.get(tenantId);
+        if (calendar == null) {
+            long version = shiftCalendarVersion.get();
+            calendar = compileShiftCalendar(getShifts());
+            synchronized (shiftCalendarVersion) {
+                // don't publish calendar compiled from data, which was changed in the meantime
+                if (version == shiftCalendarVersion.get()) {
+                    shiftCalendars.put(tenantId, calendar);
+                }
+            }
+        }
+        return calendar;
+    }
+
+    private ShiftCalendar compileShiftCalendar(final List<Entity> shifts) {
+        if (shifts == null || shifts.isEmpty()) {
+            return ShiftCalendar.empty();
+        }
+        ShiftCalendar.Builder builder = ShiftCalendar.builder(MIN_TIMESTAMP, MAX_TIMESTAMP + STEP);
+        LocalDate firstDay = new LocalDate(MIN_TIMESTAMP).minusDays(1);
+        LocalDate lastDay = new LocalDate(MAX_TIMESTAMP + STEP);
+
+        for (Entity shift : shifts) {
+            LocalTime[][][] hoursPerDay = new LocalTime[WEEK_DAYS.length][][];
+            for (int i = 0; i < WEEK_DAYS.length; i++) {
+                String day = WEEK_DAYS[i];
+                String hours = shift.getStringField(day + HOURS_LITERAL);
+                if (shift.getBooleanField(day + WORKING_LITERAL) && StringUtils.hasText(hours)) {
+                    hoursPerDay[i] = convertDayHoursToInt(hours);
                 } else {
-                    remaining -= diff;
+                    hoursPerDay[i] = new LocalTime[][] {};
+                }
+            }
+            for (LocalDate day = firstDay; !day.isAfter(lastDay); day = day.plusDays(1)) {
+                for (LocalTime[] dayHour : hoursPerDay[day.getDayOfWeek() - 1]) {
+                    long from = toMillis(day, dayHour[0]);
+                    long to = toMillis(day, dayHour[1]);
+                    if (from > to) {
+                        to = toMillis(day.plusDays(1), dayHour[1]);
+                    }
+                    builder.addWorkTime(from, to);
                 }
             }
-            stop -= STEP;
-            if (stop < MIN_TIMESTAMP) {
-                return null;
+            for (Entity exception : shift.getHasManyField(TIMETABLE_EXCEPTIONS_FIELD)) {
+                long from = exception.getDateField(FROM_DATE_FIELD).getTime();
+                long to = exception.getDateField(TO_DATE_FIELD).getTime();
+                if (TimetableExceptionType.WORK_TIME.getStringValue().equals(exception.getStringField(TYPE_FIELD))) {
+                    builder.addWorkTime(from, to);
+                } else if (TimetableExceptionType.FREE_TIME.getStringValue().equals(exception.getStringField(TYPE_FIELD))) {
+                    builder.addFreeTime(from, to);
+                }
             }
+            builder.nextShift();
         }
-        return null;
+        return builder.build();
+    }
+
+    private long toMillis(final LocalDate day, final LocalTime time) {
+        try {
+            return day.toLocalDateTime(time).toDateTime().getMillis();
+        } catch (IllegalArgumentException e) {
+            // local time does not exist (DST gap)
+            return day.toDateTimeAtStartOfDay().plusMillis(time.getMillisOfDay()).getMillis();
+        }
+    }
+
+    @Override
+    public void invalidateShiftCalendar() {
+        resetShiftCalendar();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(final int status) {
+                    resetShiftCalendar();
+                }
+
+            });
+        }
+    }
+
+    private void resetShiftCalendar() {
+        synchronized (shiftCalendarVersion) {
+            shiftCalendarVersion.incrementAndGet();
+            shiftCalendars.clear();
+        }
+    }
+
+    public void onSaveShiftOrException(final DataDefinition dataDefinition, final Entity entity) {
+        invalidateShiftCalendar();
+    }
+
+    public boolean onDeleteShiftOrException(final DataDefinition dataDefinition, final Entity entity) {
+        invalidateShiftCalendar();
+        return true;
     }
 
     @Override
@@ -0,0 +1,81 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.controllers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import com.qcadoo.mes.basic.print.xls.StreamingXlsxReportService;
+import com.qcadoo.mes.basic.print.xls.StreamingXlsxView;
+import com.qcadoo.mes.basic.print.xls.XlsxReportPrintService;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+
+@Controller
+public class SavedXlsxReportController {
+
+    private static final String L_FILE_NAME = "fileName";
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @RequestMapping(value = "generateSavedXlsxReport/{pluginIdentifier}/{modelName}.xlsx", method = RequestMethod.GET)
+    public void generateSavedReport(@PathVariable("pluginIdentifier") final String pluginIdentifier,
+            @PathVariable("modelName") final String modelName, @RequestParam("id") final Long reportId,
+            final HttpServletResponse response) throws IOException {
+        Entity report = dataDefinitionService.get(pluginIdentifier, modelName).get(reportId);
+
+        if ((report == null) || !StringUtils.hasText(report.getStringField(L_FILE_NAME))) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+
+            return;
+        }
+
+        File file = new File(StreamingXlsxReportService.getFilePath(report));
+
+        if (!file.exists()) {
+            // reports generated before have only the xls file, served by the framework
+            response.sendRedirect(XlsxReportPrintService.getLegacySavedReportUrl(pluginIdentifier, modelName, reportId));
+
+            return;
+        }
+
+        response.setContentType(StreamingXlsxView.CONTENT_TYPE);
+        response.setHeader("Content-Disposition", "attachment; filename=\"" + file.getName() + "\"");
+        Files.copy(file.toPath(), response.getOutputStream());
+        response.flushBuffer();
+    }
+
+}
@@ -1,6 +1,5 @@
 package com.qcadoo.mes.basic.controllers.dataProvider;
 
-import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.qcadoo.mes.basic.controllers.dataProvider.dto.AbstractDTO;
 import com.qcadoo.mes.basic.controllers.dataProvider.dto.AdditionalCodeDTO;
@@ -12,7 +11,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
-import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.stereotype.Service;
 
 import java.util.Collections;
@@ -30,44 +28,21 @@ public class DataProvider {
     @Autowired
     private DictionaryService dictionaryService;
 
-    private static final int MAX_RESULTS = 20;
+    @Autowired
+    private LookupSearchService lookupSearchService;
 
-    private String prepareProductsQuery() {
-        return "SELECT product.id as id, product.number as code, product.number as number, product.name as name "
-                + "FROM basic_product product WHERE product.active = true and product.number ilike :query ;";
-    }
+    private static final int MAX_RESULTS = LookupSearchService.MAX_RESULTS;
 
-    private String prepareProductsQueryWithLimit(int limit) {
-        return "SELECT product.id as id, product.number as code, product.number as number, product.name as name "
-                + "FROM basic_product product WHERE product.active = true and product.number ilike :query LIMIT " + limit + ";";
-    }
+    private static final String L_PRODUCTS_QUERY = "SELECT product.id as id, product.number as code, product.number as number, "
+            + "product.name as name FROM basic_product product WHERE product.active = true";
 
-    private String prepareAdditionalCodeQuery(String productnumber) {
-        String productNumberCondition = Strings.isNullOrEmpty(productnumber) ? "" : "and product.number = '" + productnumber + "'";
+    private static final String L_ADDITIONAL_CODES_QUERY = "SELECT additionalcode.id as id, additionalcode.code as code, "
+            + "product.number as productnumber FROM basic_additionalcode additionalcode "
+            + "JOIN basic_product product ON (additionalcode.product_id = product.id) "
+            + "WHERE (product.number = :productnumber OR COALESCE(:productnumber, '') = '')";
 
-        return "SELECT additionalcode.id as id, additionalcode.code as code, product.number as productnumber "
-                + "FROM basic_additionalcode additionalcode "
-                + "JOIN basic_product product ON (additionalcode.product_id = product.id " + productNumberCondition + ")"
-                + "WHERE additionalcode.code ilike :query;";
-    }
-
-    private String prepareAdditionalCodeQueryWithLimit(int limit) {
-        return "SELECT additionalcode.id as id, additionalcode.code as code, product.number as productnumber "
-                + "FROM basic_additionalcode additionalcode "
-                + "JOIN basic_product product ON (additionalcode.product_id = product.id and (product.number = :productnumber OR COALESCE(:productnumber,'')='' ))"
-                + "WHERE additionalcode.code ilike :query LIMIT " + limit + ";";
-    }
-
-    private String preparePalletNumbersQuery() {
-        return "SELECT palletnumber.id as id, palletnumber.number as code, palletnumber.number as number "
-                + "FROM basic_palletnumber palletnumber WHERE palletnumber.active = true and palletnumber.number ilike :query;";
-    }
-
-    private String preparePalletNumbersQueryWithLimit(int limit) {
-        return "SELECT palletnumber.id as id, palletnumber.number as code, palletnumber.number as number "
-                + "FROM basic_palletnumber palletnumber WHERE palletnumber.active = true and palletnumber.number ilike :query LIMIT "
-                + limit + ";";
-    }
+    private static final String L_PALLET_NUMBERS_QUERY = "SELECT palletnumber.id as id, palletnumber.number as code, "
+            + "palletnumber.number as number FROM basic_palletnumber palletnumber WHERE palletnumber.active = true";
 
     private int countQueryResults(String preparedQuery, String query, Map<String, Object> paramMap) {
         String countQuery = "SELECT count(*) as cnt FROM (" + preparedQuery.replace(";", "") + ") sq;";
@@ -76,16 +51,17 @@ public class DataProvider {
     }
 
     public DataResponse getProductsResponseByQuery(String query) {
-        return getDataResponse(query, prepareProductsQuery(), getProductsByQuery(query), new HashMap<String, Object>());
+        return lookupSearchService.search(L_PRODUCTS_QUERY, "product.number", query, new HashMap<>(), ProductDTO.class);
     }
 
     public DataResponse getAdditionalCodesResponseByQuery(String query, String productnumber) {
-        return getDataResponse(query, prepareAdditionalCodeQuery(productnumber), getAdditionalCodesByQuery(query, productnumber),
-                new HashMap<String, Object>());
+        return lookupSearchService.search(L_ADDITIONAL_CODES_QUERY, "additionalcode.code", query,
+                getAdditionalCodesParameters(productnumber), AdditionalCodeDTO.class);
     }
 
     public DataResponse getPalletNumbersResponseByQuery(String query) {
-        return getDataResponse(query, preparePalletNumbersQuery(), getPalletNumbersByQuery(query), new HashMap<String, Object>());
+        return lookupSearchService.search(L_PALLET_NUMBERS_QUERY, "palletnumber.number", query, new HashMap<>(),
+                PalletNumberDTO.class);
     }
 
     public DataResponse getDataResponse(String query, String preparedQuery, List<AbstractDTO> entities,
@@ -97,6 +73,10 @@ public class DataProvider {
         return new DataResponse(entities, numberOfResults);
     }
 
+    /**
+     * @deprecated reads every active product, use {@link #getProductsByQuery(String)} for lookups
+     */
+    @Deprecated
     public List<ProductDTO> getAllProducts(String sidx, String sord) {
         // TODO sort
         String _query = "SELECT product.id, product.number as code, product.number, product.name, product.ean, product.globaltypeofmaterial, product.category "
@@ -109,15 +89,8 @@ public class DataProvider {
     }
 
     public List<AbstractDTO> getProductsByQuery(String query) {
-        String _query = prepareProductsQueryWithLimit(MAX_RESULTS);
-
-        Map<String, Object> parameters = new HashMap<>();
-        parameters.put("query", "%" + query + "%");
-        SqlParameterSource nParameters = new MapSqlParameterSource(parameters);
-
-        List<AbstractDTO> products = jdbcTemplate.query(_query, nParameters, new BeanPropertyRowMapper(ProductDTO.class));
-
-        return products;
+        return lookupSearchService.find(L_PRODUCTS_QUERY, "product.number", query, new HashMap<>(), ProductDTO.class,
+                MAX_RESULTS);
     }
 
     public List<AdditionalCodeDTO> getAllAdditionalCodes(String sidx, String sord) {
@@ -133,16 +106,15 @@ public class DataProvider {
     }
 
     public List<AbstractDTO> getAdditionalCodesByQuery(String query, String productnumber) {
-        String _query = prepareAdditionalCodeQueryWithLimit(MAX_RESULTS);
+        return lookupSearchService.find(L_ADDITIONAL_CODES_QUERY, "additionalcode.code", query,
+                getAdditionalCodesParameters(productnumber), AdditionalCodeDTO.class, MAX_RESULTS);
+    }
 
+    private Map<String, Object> getAdditionalCodesParameters(String productnumber) {
         Map<String, Object> parameters = new HashMap<>();
-        parameters.put("query", "%" + query + "%");
         parameters.put("productnumber", productnumber);
-        SqlParameterSource nParameters = new MapSqlParameterSource(parameters);
-
-        List<AbstractDTO> codes = jdbcTemplate.query(_query, nParameters, new BeanPropertyRowMapper(AdditionalCodeDTO.class));
 
-        return codes;
+        return parameters;
     }
 
     public List<PalletNumberDTO> getAllPalletNumbers(String sidx, String sord) {
@@ -156,15 +128,8 @@ public class DataProvider {
     }
 
     public List<AbstractDTO> getPalletNumbersByQuery(String query) {
-        String _query = preparePalletNumbersQueryWithLimit(MAX_RESULTS);
-
-        Map<String, Object> parameters = new HashMap<>();
-        parameters.put("query", "%" + query + "%");
-        SqlParameterSource nParameters = new MapSqlParameterSource(parameters);
-
-        List<AbstractDTO> pallets = jdbcTemplate.query(_query, nParameters, new BeanPropertyRowMapper(PalletNumberDTO.class));
-
-        return pallets;
+        return lookupSearchService.find(L_PALLET_NUMBERS_QUERY, "palletnumber.number", query, new HashMap<>(),
+                PalletNumberDTO.class, MAX_RESULTS);
     }
 
     public List<Map<String, String>> getUnits() {
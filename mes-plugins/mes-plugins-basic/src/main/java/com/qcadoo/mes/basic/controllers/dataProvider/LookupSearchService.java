@@ -0,0 +1,77 @@
+package com.qcadoo.mes.basic.controllers.dataProvider;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.google.common.base.Strings;
+import com.qcadoo.mes.basic.controllers.dataProvider.dto.AbstractDTO;
+import com.qcadoo.mes.basic.controllers.dataProvider.responses.DataResponse;
+
+/**
+ * Autocomplete search over a single text column, backed by pg_trgm GIN indexes (see views.sql). Records starting with the query
+ * come before records only containing it, at most MAX_RESULTS records are read and no count query is run.
+ */
+@Service
+public class LookupSearchService {
+
+    public static final int MAX_RESULTS = 20;
+
+    private static final String L_SEARCH_PATTERN = "searchPattern";
+
+    private static final String L_SEARCH_PREFIX_PATTERN = "searchPrefixPattern";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Searches records of the given query, which has to end with a WHERE clause, whose searchColumn contains the searched text.
+     * When more than MAX_RESULTS records match, the best MAX_RESULTS are returned and numberOfResults is MAX_RESULTS + 1.
+     */
+    public DataResponse search(final String query, final String searchColumn, final String searchedText,
+            final Map<String, Object> parameters, final Class<? extends AbstractDTO> dtoClass) {
+        List<AbstractDTO> entities = find(query, searchColumn, searchedText, parameters, dtoClass, MAX_RESULTS + 1);
+
+        if (entities.size() > MAX_RESULTS) {
+            return new DataResponse(entities.subList(0, MAX_RESULTS), MAX_RESULTS + 1);
+        }
+
+        return new DataResponse(entities, entities.size());
+    }
+
+    public List<AbstractDTO> find(final String query, final String searchColumn, final String searchedText,
+            final Map<String, Object> parameters, final Class<? extends AbstractDTO> dtoClass, final int limit) {
+        Map<String, Object> searchParameters = new HashMap<>(parameters);
+        StringBuilder searchQuery = new StringBuilder(query);
+
+        if (Strings.isNullOrEmpty(searchedText)) {
+            searchQuery.append(" ORDER BY ").append(searchColumn);
+        } else {
+            String escapedText = escapeLikePattern(searchedText);
+
+            searchParameters.put(L_SEARCH_PATTERN, "%" + escapedText + "%");
+            searchParameters.put(L_SEARCH_PREFIX_PATTERN, escapedText + "%");
+
+            searchQuery.append(String.format(" AND %s ILIKE :%s", searchColumn, L_SEARCH_PATTERN));
+            searchQuery.append(String.format(" ORDER BY (%s ILIKE :%s) DESC, %s", searchColumn, L_SEARCH_PREFIX_PATTERN,
+                    searchColumn));
+        }
+
+        searchQuery.append(" LIMIT ").append(limit);
+
+        return jdbcTemplate.query(searchQuery.toString(), searchParameters, new BeanPropertyRowMapper(dtoClass));
+    }
+
+    /**
+     * Makes LIKE wildcards typed by the user match literally, using the default backslash escape character.
+     */
+    public static String escapeLikePattern(final String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+}
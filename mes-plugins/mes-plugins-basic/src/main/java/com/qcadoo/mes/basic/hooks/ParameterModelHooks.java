@@ -26,8 +26,10 @@ package com.qcadoo.mes.basic.hooks;
 import java.util.Currency;
 import java.util.Locale;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.search.SearchRestrictions;
@@ -38,6 +40,9 @@ public class ParameterModelHooks {
 
     private static final String FIELD_CURRENCY = "currency";
 
+    @Autowired
+    private ParameterService parameterService;
+
     public void setDefaultCurrency(final DataDefinition parameterDD, final Entity parameter) {
         String defaultCurrencyAlphabeticCode = Currency.getInstance(Locale.getDefault()).getCurrencyCode();
         DataDefinition currencyDataDef = ((BelongsToType) parameterDD.getField(FIELD_CURRENCY).getType()).getDataDefinition();
@@ -46,4 +51,8 @@ public class ParameterModelHooks {
         parameter.setField(FIELD_CURRENCY, defaultCurrency);
     }
 
+    public void onSave(final DataDefinition parameterDD, final Entity parameter) {
+        parameterService.invalidateParameterSnapshot();
+    }
+
 }
@@ -33,7 +33,6 @@ import com.qcadoo.model.api.validators.ErrorMessage;
 import com.qcadoo.view.api.ComponentState;
 import com.qcadoo.view.api.ViewDefinitionState;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -94,10 +93,16 @@ public class ProductImportListeners {
             state.addMessage(translatedErrorMessage("basic.productsImport.error.file.invalid"));
         } else {
             try (FileInputStream fis = new FileInputStream(filePath)) {
-                final ImportStatus importStatus = xlsxImportService.importFrom(new XSSFWorkbook(fis));
+                final ImportStatus importStatus = xlsxImportService.importFrom(fis);
                 if (importStatus.hasErrors()) {
                     // TODO Find out how to present more detailed error messages to the user
                     prepareMessages(importStatus, view);
+                    if (importStatus.getRowsImported() > 0) {
+                        view.addMessage("basic.productsImport.error.partiallyImported",
+                                ComponentState.MessageType.INFO,
+                                false,
+                                String.valueOf(importStatus.getRowsImported()));
+                    }
                 } else if (0 == importStatus.getRowsProcessed()) {
                     view.addMessage(translatedErrorMessage("basic.productsImport.error.file.empty"));
                 } else {
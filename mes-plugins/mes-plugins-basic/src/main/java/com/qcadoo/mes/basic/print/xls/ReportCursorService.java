@@ -0,0 +1,96 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print.xls;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
+import org.springframework.jdbc.core.namedparam.ParsedSql;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Service;
+
+/**
+ * Reads report rows through a database cursor and hands them over one by one, instead of materializing the whole result
+ * as a list. PostgreSQL only honours the fetch size when auto commit is off, so it is switched off for the time of the
+ * query if needed.
+ */
+@Service
+public class ReportCursorService {
+
+    public static final int FETCH_SIZE = 500;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    public <T> void query(final String query, final Map<String, ?> parameters, final RowMapper<T> rowMapper,
+            final Consumer<T> consumer) {
+        SqlParameterSource parameterSource = new MapSqlParameterSource(parameters);
+        ParsedSql parsedSql = NamedParameterUtils.parseSqlStatement(query);
+        String sql = NamedParameterUtils.substituteNamedParameters(parsedSql, parameterSource);
+        Object[] arguments = NamedParameterUtils.buildValueArray(parsedSql, parameterSource, null);
+
+        jdbcTemplate.getJdbcOperations().execute((ConnectionCallback<Void>) connection -> {
+            boolean autoCommit = connection.getAutoCommit();
+            if (autoCommit) {
+                connection.setAutoCommit(false);
+            }
+            try {
+                read(connection, sql, arguments, rowMapper, consumer);
+            } finally {
+                if (autoCommit) {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+            }
+            return null;
+        });
+    }
+
+    private <T> void read(final Connection connection, final String sql, final Object[] arguments,
+            final RowMapper<T> rowMapper, final Consumer<T> consumer) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY)) {
+            statement.setFetchSize(FETCH_SIZE);
+            new ArgumentPreparedStatementSetter(arguments).setValues(statement);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                int rowNumber = 0;
+                while (resultSet.next()) {
+                    consumer.accept(rowMapper.mapRow(resultSet, rowNumber++));
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,70 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print.xls;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Collects consecutive rows with the same key, e.g. joined rows of one event read from a cursor ordered by that key, and
+ * passes each group on as soon as it is complete. Only the current group is kept in memory.
+ */
+public class RowGroupCollector<K, T> implements Consumer<T> {
+
+    private final Function<T, K> keyFunction;
+
+    private final Consumer<List<T>> groupConsumer;
+
+    private List<T> group = Lists.newArrayList();
+
+    private K groupKey;
+
+    public RowGroupCollector(final Function<T, K> keyFunction, final Consumer<List<T>> groupConsumer) {
+        this.keyFunction = keyFunction;
+        this.groupConsumer = groupConsumer;
+    }
+
+    @Override
+    public void accept(final T row) {
+        K key = keyFunction.apply(row);
+        if (!group.isEmpty() && !Objects.equals(groupKey, key)) {
+            flush();
+        }
+        groupKey = key;
+        group.add(row);
+    }
+
+    public void flush() {
+        if (!group.isEmpty()) {
+            List<T> completeGroup = group;
+            group = Lists.newArrayList();
+            groupConsumer.accept(completeGroup);
+        }
+    }
+
+}
@@ -0,0 +1,47 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print.xls;
+
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+public class StreamingXlsxDocument {
+
+    private final SXSSFWorkbook workbook;
+
+    private final XlsStyleRegistry styles;
+
+    public StreamingXlsxDocument(final SXSSFWorkbook workbook) {
+        this.workbook = workbook;
+        this.styles = new XlsStyleRegistry(workbook);
+    }
+
+    public XlsRowWriter createSheet(final String name) {
+        return new XlsRowWriter(workbook.createSheet(name), styles);
+    }
+
+    public XlsStyleRegistry getStyles() {
+        return styles;
+    }
+
+}
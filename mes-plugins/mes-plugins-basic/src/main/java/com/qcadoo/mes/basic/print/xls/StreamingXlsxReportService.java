@@ -0,0 +1,69 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print.xls;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+import org.apache.poi.ss.util.WorkbookUtil;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Base service for saved xlsx reports. The document is streamed like in {@link StreamingXlsxView} and written next to the
+ * other documents of the report, to the file named by the report's fileName field with the {@link #EXTENSION} extension.
+ * Saved files are printed through {@link XlsxReportPrintService}.
+ */
+public abstract class StreamingXlsxReportService {
+
+    public static final String EXTENSION = "xlsx";
+
+    private static final String L_FILE_NAME = "fileName";
+
+    public void generateDocument(final Entity entity, final Locale locale) throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(StreamingXlsxView.ROW_WINDOW);
+        workbook.setCompressTempFiles(true);
+        try (OutputStream outputStream = new FileOutputStream(getFilePath(entity))) {
+            StreamingXlsxDocument document = new StreamingXlsxDocument(workbook);
+
+            buildSheet(document.createSheet(WorkbookUtil.createSafeSheetName(getReportTitle(locale))), entity, locale);
+
+            workbook.write(outputStream);
+        } finally {
+            workbook.dispose();
+        }
+    }
+
+    public static String getFilePath(final Entity entity) {
+        return entity.getStringField(L_FILE_NAME) + "." + EXTENSION;
+    }
+
+    protected abstract void buildSheet(final XlsRowWriter writer, final Entity entity, final Locale locale);
+
+    public abstract String getReportTitle(final Locale locale);
+
+}
@@ -0,0 +1,85 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print.xls;
+
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.springframework.web.servlet.view.AbstractView;
+
+/**
+ * Base view for xlsx reports. Only {@link #ROW_WINDOW} rows per sheet are kept in memory, older rows are flushed to a
+ * compressed temporary file, so memory use does not depend on the size of the report.
+ */
+public abstract class StreamingXlsxView extends AbstractView {
+
+    public static final int ROW_WINDOW = 100;
+
+    public static final String CONTENT_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+
+    private static final String EXTENSION = ".xlsx";
+
+    public StreamingXlsxView() {
+        setContentType(CONTENT_TYPE);
+    }
+
+    @Override
+    protected boolean generatesDownloadContent() {
+        return true;
+    }
+
+    @Override
+    protected final void renderMergedOutputModel(final Map<String, Object> model, final HttpServletRequest request,
+            final HttpServletResponse response) throws Exception {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(ROW_WINDOW);
+        workbook.setCompressTempFiles(true);
+        try {
+            buildDocument(model, new StreamingXlsxDocument(workbook), request);
+
+            response.setContentType(getContentType());
+            String fileName = getFileName(model);
+            if (fileName != null) {
+                response.setHeader("Content-Disposition", "attachment; filename=\"" + fileName + EXTENSION + "\"");
+            }
+            workbook.write(response.getOutputStream());
+            response.flushBuffer();
+        } finally {
+            workbook.dispose();
+        }
+    }
+
+    protected abstract void buildDocument(final Map<String, Object> model, final StreamingXlsxDocument document,
+            final HttpServletRequest request);
+
+    /**
+     * @return file name without extension or null to let the browser name the file after the url
+     */
+    protected String getFileName(final Map<String, Object> model) {
+        return null;
+    }
+
+}
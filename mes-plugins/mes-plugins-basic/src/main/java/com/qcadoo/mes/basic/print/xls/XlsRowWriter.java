@@ -0,0 +1,116 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print.xls;
+
+import java.util.Date;
+import java.util.function.Consumer;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+
+/**
+ * Appends rows to a streamed sheet. Rows can only be written in order, rows which already left the window are flushed to
+ * disk and can not be changed anymore.
+ */
+public class XlsRowWriter {
+
+    private final Sheet sheet;
+
+    private final XlsStyleRegistry styles;
+
+    private int rowNumber;
+
+    XlsRowWriter(final Sheet sheet, final XlsStyleRegistry styles) {
+        this.sheet = sheet;
+        this.styles = styles;
+    }
+
+    public Row nextRow() {
+        return sheet.createRow(rowNumber++);
+    }
+
+    public Row writeRow(final XlsStyle style, final Object... values) {
+        Row row = nextRow();
+        for (int column = 0; column < values.length; column++) {
+            writeCell(row, column, values[column], style);
+        }
+        return row;
+    }
+
+    public Cell writeCell(final Row row, final int column, final Object value, final XlsStyle style) {
+        Cell cell = row.createCell(column);
+        setCellStyle(cell, style);
+        if (value instanceof Number) {
+            cell.setCellValue(((Number) value).doubleValue());
+        } else if (value instanceof Date) {
+            cell.setCellValue((Date) value);
+        } else if (value instanceof Boolean) {
+            cell.setCellValue((Boolean) value);
+        } else if (value != null) {
+            cell.setCellValue(value.toString());
+        }
+        return cell;
+    }
+
+    public void setCellStyle(final Cell cell, final XlsStyle style) {
+        cell.setCellStyle(styles.get(style));
+    }
+
+    /**
+     * Merged regions are kept by the sheet itself, so rows of the region may already be flushed.
+     */
+    public void mergeCells(final int firstRow, final int lastRow, final int firstColumn, final int lastColumn) {
+        sheet.addMergedRegion(new CellRangeAddress(firstRow, lastRow, firstColumn, lastColumn));
+    }
+
+    public XlsRowWriter skipRows(final int count) {
+        rowNumber += count;
+        return this;
+    }
+
+    public void setColumnWidths(final int... widths) {
+        for (int column = 0; column < widths.length; column++) {
+            sheet.setColumnWidth(column, widths[column]);
+        }
+    }
+
+    public XlsStyleRegistry getStyles() {
+        return styles;
+    }
+
+    public Sheet getSheet() {
+        return sheet;
+    }
+
+    public int getRowNumber() {
+        return rowNumber;
+    }
+
+    public <T> Consumer<T> feed(final XlsRowProducer<T> producer) {
+        return item -> producer.produceRows(this, item);
+    }
+
+}
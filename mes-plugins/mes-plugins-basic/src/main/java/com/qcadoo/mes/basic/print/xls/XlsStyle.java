@@ -0,0 +1,240 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print.xls;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.IndexedColors;
+
+/**
+ * Immutable description of a cell style. Reports share these definitions, {@link XlsStyleRegistry} turns each distinct one
+ * into a single workbook style.
+ */
+public final class XlsStyle {
+
+    private static final short NO_FILL = -1;
+
+    private static final short DEFAULT_FONT_HEIGHT = 10;
+
+    public static final XlsStyle DEFAULT = new XlsStyle();
+
+    public static final XlsStyle BOLD = DEFAULT.bold();
+
+    public static final XlsStyle HEADER = DEFAULT.withBorders().withFill(IndexedColors.GREY_25_PERCENT.getIndex())
+            .wrapped().withAlignment(CellStyle.ALIGN_CENTER).withVerticalAlignment(CellStyle.VERTICAL_CENTER);
+
+    public static final XlsStyle DATE = DEFAULT.withDataFormat("yyyy-mm-dd");
+
+    public static final XlsStyle DATE_TIME = DEFAULT.withDataFormat("yyyy-mm-dd hh:mm");
+
+    private boolean bold;
+
+    private short fontHeight = DEFAULT_FONT_HEIGHT;
+
+    private short fontColor = Font.COLOR_NORMAL;
+
+    private short alignment = CellStyle.ALIGN_GENERAL;
+
+    private short verticalAlignment = CellStyle.VERTICAL_BOTTOM;
+
+    private short indention;
+
+    private short borderTop = CellStyle.BORDER_NONE;
+
+    private short borderLeft = CellStyle.BORDER_NONE;
+
+    private short borderRight = CellStyle.BORDER_NONE;
+
+    private short borderBottom = CellStyle.BORDER_NONE;
+
+    private short fillColor = NO_FILL;
+
+    private boolean wrapText;
+
+    private String dataFormat;
+
+    private XlsStyle() {
+    }
+
+    private XlsStyle copy() {
+        XlsStyle style = new XlsStyle();
+        style.bold = bold;
+        style.fontHeight = fontHeight;
+        style.fontColor = fontColor;
+        style.alignment = alignment;
+        style.verticalAlignment = verticalAlignment;
+        style.indention = indention;
+        style.borderTop = borderTop;
+        style.borderLeft = borderLeft;
+        style.borderRight = borderRight;
+        style.borderBottom = borderBottom;
+        style.fillColor = fillColor;
+        style.wrapText = wrapText;
+        style.dataFormat = dataFormat;
+        return style;
+    }
+
+    public XlsStyle bold() {
+        XlsStyle style = copy();
+        style.bold = true;
+        return style;
+    }
+
+    public XlsStyle withFontHeight(final short fontHeight) {
+        XlsStyle style = copy();
+        style.fontHeight = fontHeight;
+        return style;
+    }
+
+    public XlsStyle withFontColor(final short fontColor) {
+        XlsStyle style = copy();
+        style.fontColor = fontColor;
+        return style;
+    }
+
+    public XlsStyle withAlignment(final short alignment) {
+        XlsStyle style = copy();
+        style.alignment = alignment;
+        return style;
+    }
+
+    public XlsStyle withVerticalAlignment(final short verticalAlignment) {
+        XlsStyle style = copy();
+        style.verticalAlignment = verticalAlignment;
+        return style;
+    }
+
+    public XlsStyle withIndention(final short indention) {
+        XlsStyle style = copy();
+        style.indention = indention;
+        return style;
+    }
+
+    public XlsStyle withTopBorder() {
+        XlsStyle style = copy();
+        style.borderTop = CellStyle.BORDER_THIN;
+        return style;
+    }
+
+    public XlsStyle withBorders() {
+        return withBorders(CellStyle.BORDER_THIN);
+    }
+
+    public XlsStyle withBorders(final short border) {
+        return withBorders(border, border, border, border);
+    }
+
+    public XlsStyle withBorders(final short top, final short left, final short right, final short bottom) {
+        XlsStyle style = copy();
+        style.borderTop = top;
+        style.borderLeft = left;
+        style.borderRight = right;
+        style.borderBottom = bottom;
+        return style;
+    }
+
+    public XlsStyle withRightBorder(final short border) {
+        return withBorders(borderTop, borderLeft, border, borderBottom);
+    }
+
+    public XlsStyle withFill(final short fillColor) {
+        XlsStyle style = copy();
+        style.fillColor = fillColor;
+        return style;
+    }
+
+    public XlsStyle wrapped() {
+        XlsStyle style = copy();
+        style.wrapText = true;
+        return style;
+    }
+
+    public XlsStyle withDataFormat(final String dataFormat) {
+        XlsStyle style = copy();
+        style.dataFormat = dataFormat;
+        return style;
+    }
+
+    public boolean isBold() {
+        return bold;
+    }
+
+    public short getFontHeight() {
+        return fontHeight;
+    }
+
+    public short getFontColor() {
+        return fontColor;
+    }
+
+    void applyTo(final CellStyle style) {
+        style.setAlignment(alignment);
+        style.setVerticalAlignment(verticalAlignment);
+        style.setIndention(indention);
+        style.setBorderTop(borderTop);
+        style.setBorderLeft(borderLeft);
+        style.setBorderRight(borderRight);
+        style.setBorderBottom(borderBottom);
+        if (fillColor != NO_FILL) {
+            style.setFillForegroundColor(fillColor);
+            style.setFillPattern(CellStyle.SOLID_FOREGROUND);
+        }
+        style.setWrapText(wrapText);
+    }
+
+    List<Object> getFontKey() {
+        return Arrays.asList(bold, fontHeight, fontColor);
+    }
+
+    String getDataFormat() {
+        return dataFormat;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof XlsStyle)) {
+            return false;
+        }
+        XlsStyle other = (XlsStyle) obj;
+        return bold == other.bold && fontHeight == other.fontHeight && fontColor == other.fontColor
+                && alignment == other.alignment && verticalAlignment == other.verticalAlignment && indention == other.indention
+                && borderTop == other.borderTop && borderLeft == other.borderLeft && borderRight == other.borderRight
+                && borderBottom == other.borderBottom && fillColor == other.fillColor && wrapText == other.wrapText
+                && Objects.equals(dataFormat, other.dataFormat);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(bold, fontHeight, fontColor, alignment, verticalAlignment, indention, borderTop, borderLeft,
+                borderRight, borderBottom, fillColor, wrapText, dataFormat);
+    }
+
+}
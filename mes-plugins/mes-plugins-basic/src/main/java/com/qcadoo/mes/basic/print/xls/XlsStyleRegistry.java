@@ -0,0 +1,82 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print.xls;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Creates at most one workbook style and one font per distinct {@link XlsStyle}, so the number of styles does not grow with
+ * the number of exported rows.
+ */
+public class XlsStyleRegistry {
+
+    private static final String FONT_NAME = "Arial";
+
+    private final Workbook workbook;
+
+    private final Map<XlsStyle, CellStyle> styles = Maps.newHashMap();
+
+    private final Map<List<Object>, Font> fonts = Maps.newHashMap();
+
+    public XlsStyleRegistry(final Workbook workbook) {
+        this.workbook = workbook;
+    }
+
+    public CellStyle get(final XlsStyle xlsStyle) {
+        return styles.computeIfAbsent(xlsStyle, this::createStyle);
+    }
+
+    public int size() {
+        return styles.size();
+    }
+
+    private CellStyle createStyle(final XlsStyle xlsStyle) {
+        CellStyle style = workbook.createCellStyle();
+        style.setFont(getFont(xlsStyle));
+        xlsStyle.applyTo(style);
+        if (xlsStyle.getDataFormat() != null) {
+            style.setDataFormat(workbook.createDataFormat().getFormat(xlsStyle.getDataFormat()));
+        }
+        return style;
+    }
+
+    private Font getFont(final XlsStyle xlsStyle) {
+        return fonts.computeIfAbsent(xlsStyle.getFontKey(), key -> {
+            Font font = workbook.createFont();
+            font.setFontName(FONT_NAME);
+            font.setFontHeightInPoints(xlsStyle.getFontHeight());
+            font.setBoldweight(xlsStyle.isBold() ? Font.BOLDWEIGHT_BOLD : Font.BOLDWEIGHT_NORMAL);
+            font.setColor(xlsStyle.getFontColor());
+            return font;
+        });
+    }
+
+}
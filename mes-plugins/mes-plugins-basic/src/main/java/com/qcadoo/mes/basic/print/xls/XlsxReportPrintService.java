@@ -0,0 +1,111 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print.xls;
+
+import java.io.File;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.report.api.ReportService;
+import com.qcadoo.view.api.ComponentState;
+import com.qcadoo.view.api.ComponentState.MessageType;
+import com.qcadoo.view.api.ViewDefinitionState;
+import com.qcadoo.view.api.components.GridComponent;
+
+@Service
+public class XlsxReportPrintService {
+
+    public static final String SAVED_REPORT_PATH = "/generateSavedXlsxReport/";
+
+    private static final String LEGACY_SAVED_REPORT_PATH = "/generateSavedReport/";
+
+    private static final String L_XLS = "xls";
+
+    private static final String L_FILE_NAME = "fileName";
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private ReportService reportService;
+
+    /**
+     * Works like {@link ReportService#printGeneratedReport(ViewDefinitionState, ComponentState, String[])}, but the xls type
+     * downloads the xlsx file written by {@link StreamingXlsxReportService}. Reports generated before, which have only the xls
+     * file, are still printed by {@link ReportService}.
+     * 
+     * @param args
+     *            report type, plugin identifier and model name
+     */
+    public void printGeneratedReport(final ViewDefinitionState view, final ComponentState state, final String[] args) {
+        if (!L_XLS.equals(args[0])) {
+            reportService.printGeneratedReport(view, state, args);
+
+            return;
+        }
+
+        Long reportId = getReportId(state);
+
+        if (reportId == null) {
+            return;
+        }
+
+        Entity report = dataDefinitionService.get(args[1], args[2]).get(reportId);
+
+        if (report == null) {
+            state.addMessage("qcadooView.message.entityNotFound", MessageType.FAILURE);
+        } else if (!StringUtils.hasText(report.getStringField(L_FILE_NAME))) {
+            state.addMessage("qcadooReport.errorMessage.documentsWasNotGenerated", MessageType.FAILURE);
+        } else if (new File(StreamingXlsxReportService.getFilePath(report)).exists()) {
+            view.redirectTo(getSavedReportUrl(args[1], args[2], reportId), true, false);
+        } else {
+            reportService.printGeneratedReport(view, state, args);
+        }
+    }
+
+    public static String getLegacySavedReportUrl(final String pluginIdentifier, final String modelName, final Long reportId) {
+        return LEGACY_SAVED_REPORT_PATH + pluginIdentifier + "/" + modelName + "." + L_XLS + "?id=" + reportId;
+    }
+
+    public static String getSavedReportUrl(final String pluginIdentifier, final String modelName, final Long reportId) {
+        return SAVED_REPORT_PATH + pluginIdentifier + "/" + modelName + "." + StreamingXlsxReportService.EXTENSION + "?id="
+                + reportId;
+    }
+
+    private Long getReportId(final ComponentState state) {
+        if (state instanceof GridComponent) {
+            Set<Long> selectedIds = ((GridComponent) state).getSelectedEntitiesIds();
+
+            return selectedIds.size() == 1 ? selectedIds.iterator().next() : null;
+        }
+
+        return (Long) state.getFieldValue();
+    }
+
+}
@@ -31,7 +31,10 @@ import com.qcadoo.model.api.search.SearchRestrictions;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.Map;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Component
 class AssortmentCellParser implements CellParser {
@@ -53,6 +56,23 @@ class AssortmentCellParser implements CellParser {
                 .find()
                 .add(SearchRestrictions.eq("name", cellValue))
                 .uniqueResult();
+        parse(assortment, errorsAccessor, valueConsumer);
+    }
+
+    @Override
+    public CellParser preload() {
+        Map<String, Entity> assortmentsByName = getAssortmentDataDefinition()
+                .find()
+                .list()
+                .getEntities()
+                .stream()
+                .collect(Collectors.toMap(entity -> entity.getStringField("name"), Function.identity(),
+                        (first, second) -> first));
+        return (cellValue, errorsAccessor, valueConsumer) ->
+                parse(assortmentsByName.get(cellValue), errorsAccessor, valueConsumer);
+    }
+
+    private void parse(Entity assortment, BindingErrorsAccessor errorsAccessor, Consumer<Object> valueConsumer) {
         if (null != assortment) {
             valueConsumer.accept(assortment);
         } else {
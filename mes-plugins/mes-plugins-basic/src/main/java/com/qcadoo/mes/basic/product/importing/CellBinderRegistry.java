@@ -23,7 +23,10 @@
  */
 package com.qcadoo.mes.basic.product.importing;
 
+import java.util.Arrays;
+
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
 
 @Service
@@ -45,5 +48,10 @@ class CellBinderRegistry {
         return cellBinders[index];
     }
 
+    @Transactional(readOnly = true)
+    public CellBinder[] preloadCellBinders() {
+        return Arrays.stream(cellBinders).map(CellBinder::preload).toArray(CellBinder[]::new);
+    }
+
 }
 
@@ -27,4 +27,12 @@ import java.util.function.Consumer;
 
 interface CellParser {
     void parse(String cellValue, BindingErrorsAccessor errorsAccessor, Consumer<Object> valueConsumer);
+
+    /**
+     * Called once per import, before any row is parsed. Parsers looking values up in the database return a parser backed by
+     * values loaded up front, so rows can be parsed in parallel without touching the database.
+     */
+    default CellParser preload() {
+        return this;
+    }
 }
@@ -31,8 +31,10 @@ import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.stereotype.Component;
 
 import java.util.Arrays;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Component
 class GlobalTypeOfMaterialCellParser implements CellParser {
@@ -60,4 +62,25 @@ class GlobalTypeOfMaterialCellParser implements CellParser {
             }
         }
     }
+
+    @Override
+    public CellParser preload() {
+        Map<String, String> valuesByTranslation = Arrays.stream(GlobalTypeOfMaterial.values())
+                .collect(Collectors.toMap(
+                        gtom -> translationService.translate(
+                                "basic.product.globalTypeOfMaterial.value." + gtom.getStringValue(),
+                                LocaleContextHolder.getLocale()),
+                        GlobalTypeOfMaterial::getStringValue,
+                        (first, second) -> first));
+        return (cellValue, errorsAccessor, valueConsumer) -> {
+            if (!StringUtils.isBlank(cellValue)) {
+                String value = valuesByTranslation.get(cellValue);
+                if (null != value) {
+                    valueConsumer.accept(value);
+                } else {
+                    errorsAccessor.addError("qcadooView.validate.field.error.invalidDictionaryItem");
+                }
+            }
+        };
+    }
 }
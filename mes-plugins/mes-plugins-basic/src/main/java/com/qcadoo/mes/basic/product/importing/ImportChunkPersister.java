@@ -0,0 +1,56 @@
+/*
+ * **************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * **************************************************************************
+ */
+package com.qcadoo.mes.basic.product.importing;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+import java.util.List;
+
+@Service
+class ImportChunkPersister {
+
+    /**
+     * Saves a chunk of rows in its own transaction. The chunk is rolled back if any of its rows has errors or if commit is
+     * false, in which case rows are only validated to complete the error report.
+     *
+     * @return true if the chunk was committed
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public boolean persist(final List<RowProcessor> chunk, final ImportStatus importStatus, final boolean commit) {
+        boolean valid = true;
+        for (RowProcessor rowProcessor : chunk) {
+            valid &= rowProcessor.process(importStatus);
+        }
+        if (!valid || !commit) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            return false;
+        }
+        importStatus.incrementRowsImportedCounter(chunk.size());
+        return true;
+    }
+
+}
@@ -33,6 +33,7 @@ import java.util.Set;
 public class ImportStatus {
 
     private int rowsProcessed;
+    private int rowsImported;
     private Set<ImportError> errors = new HashSet<>();
 
     public int getRowsProcessed() {
@@ -43,6 +44,18 @@ public class ImportStatus {
         rowsProcessed++;
     }
 
+    /**
+     * Rows of chunks which were committed. Equal to processed rows after a successful import, may be greater than zero
+     * when a later chunk failed.
+     */
+    public int getRowsImported() {
+        return rowsImported;
+    }
+
+    void incrementRowsImportedCounter(int rows) {
+        rowsImported += rows;
+    }
+
     public boolean hasErrors() {
         return !CollectionUtils.isEmpty(errors);
     }
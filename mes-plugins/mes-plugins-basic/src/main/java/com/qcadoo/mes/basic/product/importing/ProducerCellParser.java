@@ -32,7 +32,10 @@ import com.qcadoo.model.api.search.SearchRestrictions;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.Map;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Component
 class ProducerCellParser implements CellParser {
@@ -54,6 +57,23 @@ class ProducerCellParser implements CellParser {
                 .find()
                 .add(SearchRestrictions.eq(CompanyFields.NUMBER, cellValue))
                 .uniqueResult();
+        parse(companyCandidate, errorsAccessor, valueConsumer);
+    }
+
+    @Override
+    public CellParser preload() {
+        Map<String, Entity> companiesByNumber = getCompanyDataDefinition()
+                .find()
+                .list()
+                .getEntities()
+                .stream()
+                .collect(Collectors.toMap(entity -> entity.getStringField(CompanyFields.NUMBER), Function.identity(),
+                        (first, second) -> first));
+        return (cellValue, errorsAccessor, valueConsumer) ->
+                parse(companiesByNumber.get(cellValue), errorsAccessor, valueConsumer);
+    }
+
+    private void parse(Entity companyCandidate, BindingErrorsAccessor errorsAccessor, Consumer<Object> valueConsumer) {
         if (null != companyCandidate) {
             valueConsumer.accept(companyCandidate);
         } else {
@@ -23,6 +23,7 @@
  */
 package com.qcadoo.mes.basic.product.importing;
 
+import com.google.common.collect.Sets;
 import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.model.api.DataDefinition;
@@ -30,9 +31,15 @@ import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Component;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static com.qcadoo.mes.basic.constants.ProductFamilyElementType.PRODUCTS_FAMILY;
 import static com.qcadoo.mes.basic.constants.ProductFields.ENTITY_TYPE;
@@ -40,11 +47,16 @@ import static com.qcadoo.mes.basic.constants.ProductFields.ENTITY_TYPE;
 @Component
 class ProductFamilyCellParser implements CellParser {
 
+    private static final String OTHER_PRODUCT_NUMBERS_QUERY = "SELECT number FROM basic_product WHERE entitytype <> :entityType";
+
     private final DataDefinitionService dataDefinitionService;
 
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
     @Autowired
-    ProductFamilyCellParser(DataDefinitionService dataDefinitionService) {
+    ProductFamilyCellParser(DataDefinitionService dataDefinitionService, NamedParameterJdbcTemplate jdbcTemplate) {
         this.dataDefinitionService = dataDefinitionService;
+        this.jdbcTemplate = jdbcTemplate;
     }
 
     private DataDefinition getProductDataDefinition() {
@@ -66,4 +78,31 @@ class ProductFamilyCellParser implements CellParser {
             valueConsumer.accept(familyProductCandidate);
         }
     }
+
+    /**
+     * Families are loaded as entities, other products only by number, which is enough to tell both errors apart.
+     */
+    @Override
+    public CellParser preload() {
+        Map<String, Entity> familiesByNumber = getProductDataDefinition()
+                .find()
+                .add(SearchRestrictions.eq(ENTITY_TYPE, PRODUCTS_FAMILY.getStringValue()))
+                .list()
+                .getEntities()
+                .stream()
+                .collect(Collectors.toMap(family -> family.getStringField(ProductFields.NUMBER), Function.identity()));
+        Set<String> otherProductNumbers = Sets.newHashSet(jdbcTemplate.queryForList(OTHER_PRODUCT_NUMBERS_QUERY,
+                Collections.singletonMap("entityType", PRODUCTS_FAMILY.getStringValue()), String.class));
+
+        return (cellValue, errorsAccessor, valueConsumer) -> {
+            Entity family = familiesByNumber.get(cellValue);
+            if (null != family) {
+                valueConsumer.accept(family);
+            } else if (otherProductNumbers.contains(cellValue)) {
+                errorsAccessor.addError("basic.productsImport.error.field.notFamily");
+            } else {
+                errorsAccessor.addError("qcadooView.validate.field.error.lookupCodeNotFound");
+            }
+        };
+    }
 }
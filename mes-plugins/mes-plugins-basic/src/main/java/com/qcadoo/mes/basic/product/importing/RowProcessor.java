@@ -23,13 +23,18 @@
  */
 package com.qcadoo.mes.basic.product.importing;
 
-import org.apache.poi.ss.usermodel.Cell;
-
 public interface RowProcessor {
 
     boolean isEmpty();
 
-    void append(Cell cell);
+    void append(String cellValue);
+
+    boolean hasBindingErrors();
 
-    void process();
+    /**
+     * Saves the product and reports binding and validation errors of the row.
+     *
+     * @return true if the row was saved without errors
+     */
+    boolean process(ImportStatus importStatus);
 }
@@ -30,7 +30,6 @@ import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.validators.ErrorMessage;
-import org.apache.poi.ss.usermodel.Cell;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -44,12 +43,9 @@ class RowProcessorFactory {
 
     private final DataDefinitionService dataDefinitionService;
 
-    private final CellBinderRegistry cellBinderRegistry;
-
     @Autowired
-    RowProcessorFactory(DataDefinitionService dataDefinitionService, CellBinderRegistry cellBinderRegistry) {
+    RowProcessorFactory(DataDefinitionService dataDefinitionService) {
         this.dataDefinitionService = dataDefinitionService;
-        this.cellBinderRegistry = cellBinderRegistry;
     }
 
 
@@ -65,13 +61,13 @@ class RowProcessorFactory {
         return entity;
     }
 
-    RowProcessor create(final ImportStatus importStatus, int rowIndex) {
-        return new RowProcessorImpl(importStatus, createEntityWithDefaultValues(), rowIndex);
+    RowProcessor create(final CellBinder[] cellBinders, int rowIndex) {
+        return new RowProcessorImpl(cellBinders, createEntityWithDefaultValues(), rowIndex);
     }
 
     private class RowProcessorImpl implements RowProcessor {
 
-        private final ImportStatus importStatus;
+        private final CellBinder[] cellBinders;
         private final Entity entity;
         private final int currentRow;
         private boolean finished;
@@ -79,8 +75,8 @@ class RowProcessorFactory {
         private boolean empty = true;
         private List<ImportError> rowErrors = new ArrayList<>();
 
-        RowProcessorImpl(ImportStatus importStatus, Entity entity, int rowIndx) {
-            this.importStatus = importStatus;
+        RowProcessorImpl(CellBinder[] cellBinders, Entity entity, int rowIndx) {
+            this.cellBinders = cellBinders;
             this.entity = entity;
             this.currentRow = rowIndx;
         }
@@ -91,14 +87,14 @@ class RowProcessorFactory {
         }
 
         @Override
-        public void append(final Cell cell) {
+        public void append(final String cellValue) {
             assureNotProcessedYet();
-            if (null != cell) {
+            if (null != cellValue) {
                 empty = false;
             }
-            final CellBinder binder = cellBinderRegistry.getCellBinder(index++);
+            final CellBinder binder = cellBinders[index++];
             binder.bind(
-                    cell,
+                    cellValue,
                     entity,
                     errorCode -> rowErrors.add(new ImportError(currentRow, binder.getFieldName(), errorCode))
             );
@@ -111,20 +107,26 @@ class RowProcessorFactory {
         }
 
         @Override
-        public void process() {
+        public boolean hasBindingErrors() {
+            return !rowErrors.isEmpty();
+        }
+
+        @Override
+        public boolean process(final ImportStatus importStatus) {
             assureNotProcessedYet();
             finished = true;
             importStatus.incrementRowsProcessedCounter();
             final Entity savedEntity = getProductDataDefinition().save(entity);
-            populateImportStatusWithBindingErrors();
-            populateImportStatusWithEntityErrors(savedEntity);
+            populateImportStatusWithBindingErrors(importStatus);
+            populateImportStatusWithEntityErrors(importStatus, savedEntity);
+            return !hasBindingErrors() && savedEntity.isValid();
         }
 
-        private void populateImportStatusWithBindingErrors() {
+        private void populateImportStatusWithBindingErrors(ImportStatus importStatus) {
             rowErrors.forEach(importStatus::addError);
         }
 
-        private void populateImportStatusWithEntityErrors(Entity entity) {
+        private void populateImportStatusWithEntityErrors(ImportStatus importStatus, Entity entity) {
             if (!entity.isValid()) {
                 for (Map.Entry<String, ErrorMessage> entry : entity.getErrors().entrySet()) {
                     importStatus.addError(
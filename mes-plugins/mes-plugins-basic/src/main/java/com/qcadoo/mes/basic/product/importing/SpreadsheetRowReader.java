@@ -0,0 +1,172 @@
+/*
+ * **************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * **************************************************************************
+ */
+package com.qcadoo.mes.basic.product.importing;
+
+import com.google.common.collect.Lists;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.stereotype.Component;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Reads the first sheet with the event based XSSF reader, without building the workbook in memory. Rows are read from
+ * {@link SpreadsheetSchemaInfo#START_ROW_INDEX} up to the first missing or empty row, cells are returned formatted and
+ * trimmed, blank cells as null. Rows are passed on in chunks while the sheet is parsed, so only one chunk is kept in memory.
+ */
+@Component
+class SpreadsheetRowReader {
+
+    void read(final InputStream inputStream, final int chunkSize, final Consumer<List<String[]>> chunkConsumer)
+            throws IOException {
+        OPCPackage opcPackage = open(inputStream);
+        try {
+            XSSFReader reader = new XSSFReader(opcPackage);
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            if (!sheets.hasNext()) {
+                return;
+            }
+            RowCollector rowCollector = new RowCollector(chunkSize, chunkConsumer);
+            XMLReader parser = createParser();
+            parser.setContentHandler(new XSSFSheetXMLHandler(reader.getStylesTable(), null,
+                    new ReadOnlySharedStringsTable(opcPackage), rowCollector, createDataFormatter(), false));
+            try (InputStream sheet = sheets.next()) {
+                parser.parse(new InputSource(sheet));
+            }
+            rowCollector.flush();
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IllegalArgumentException("Unable to read the spreadsheet", e);
+        } finally {
+            opcPackage.revert();
+        }
+    }
+
+    private OPCPackage open(final InputStream inputStream) throws IOException {
+        try {
+            return OPCPackage.open(inputStream);
+        } catch (OpenXML4JException e) {
+            throw new IllegalArgumentException("Unable to open the spreadsheet", e);
+        }
+    }
+
+    private XMLReader createParser() throws ParserConfigurationException, SAXException {
+        SAXParserFactory parserFactory = SAXParserFactory.newInstance();
+        parserFactory.setNamespaceAware(true);
+        return parserFactory.newSAXParser().getXMLReader();
+    }
+
+    private DataFormatter createDataFormatter() {
+        Locale locale = LocaleContextHolder.getLocale();
+        return new DataFormatter(null == locale ? Locale.getDefault() : locale);
+    }
+
+    private static class RowCollector implements SheetContentsHandler {
+
+        private final int chunkSize;
+        private final Consumer<List<String[]>> chunkConsumer;
+        private List<String[]> rows = Lists.newArrayList();
+        private String[] currentRow;
+        private int currentColumn;
+        private int expectedRowIndex = SpreadsheetSchemaInfo.START_ROW_INDEX;
+        private boolean finished;
+
+        private RowCollector(final int chunkSize, final Consumer<List<String[]>> chunkConsumer) {
+            this.chunkSize = chunkSize;
+            this.chunkConsumer = chunkConsumer;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            currentRow = null;
+            currentColumn = -1;
+            if (finished || rowNum < SpreadsheetSchemaInfo.START_ROW_INDEX) {
+                return;
+            }
+            if (rowNum != expectedRowIndex) { // The previous row is empty
+                finished = true;
+                return;
+            }
+            currentRow = new String[SpreadsheetSchemaInfo.COLUMN_NUMBER];
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            if (null == currentRow) {
+                return;
+            }
+            if (Arrays.stream(currentRow).allMatch(Objects::isNull)) {
+                finished = true; // We are done. The whole row was empty so stop reading
+            } else {
+                rows.add(currentRow);
+                expectedRowIndex++;
+                if (rows.size() == chunkSize) {
+                    flush();
+                }
+            }
+            currentRow = null;
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            currentColumn = null == cellReference ? currentColumn + 1 : new CellReference(cellReference).getCol();
+            if (null != currentRow && currentColumn < SpreadsheetSchemaInfo.COLUMN_NUMBER && null != formattedValue) {
+                currentRow[currentColumn] = formattedValue.trim();
+            }
+        }
+
+        @Override
+        public void headerFooter(String text, boolean isHeader, String tagName) {
+            // headers and footers are not imported
+        }
+
+        private void flush() {
+            if (!rows.isEmpty()) {
+                List<String[]> chunk = rows;
+                rows = Lists.newArrayList();
+                chunkConsumer.accept(chunk);
+            }
+        }
+    }
+
+}
@@ -23,50 +23,99 @@
  */
 package com.qcadoo.mes.basic.product.importing;
 
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.i18n.LocaleContext;
+import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
-import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Imports products while the sheet is read with the event based reader. Each chunk of rows passed on by the reader is bound
+ * in parallel against dictionaries preloaded once per import, then saved in its own transaction. Chunks before the first
+ * chunk with errors stay committed, the remaining chunks are only validated, so the error report still covers every row.
+ */
 @Service
 public class XlsxImportService {
 
     private final RowProcessorFactory rowProcessorFactory;
 
+    private final CellBinderRegistry cellBinderRegistry;
+
+    private final SpreadsheetRowReader spreadsheetRowReader;
+
+    private final ImportChunkPersister importChunkPersister;
+
+    private final int chunkSize;
+
     @Autowired
-    public XlsxImportService(RowProcessorFactory rowProcessorFactory) {
+    public XlsxImportService(RowProcessorFactory rowProcessorFactory, CellBinderRegistry cellBinderRegistry,
+                             SpreadsheetRowReader spreadsheetRowReader, ImportChunkPersister importChunkPersister,
+                             @Value("${productsImportChunkSize:500}") int chunkSize) {
         this.rowProcessorFactory = rowProcessorFactory;
+        this.cellBinderRegistry = cellBinderRegistry;
+        this.spreadsheetRowReader = spreadsheetRowReader;
+        this.importChunkPersister = importChunkPersister;
+        this.chunkSize = chunkSize;
     }
 
-    @Transactional
-    public ImportStatus importFrom(final XSSFWorkbook workbook) {
-
+    public ImportStatus importFrom(final InputStream inputStream) throws IOException {
         ImportStatus importStatus = new ImportStatus();
-        XSSFSheet sheet = workbook.getSheetAt(0);
-
-        for (int rowIndex = SpreadsheetSchemaInfo.START_ROW_INDEX; rowIndex <= sheet.getLastRowNum(); rowIndex++) {
+        spreadsheetRowReader.read(inputStream, chunkSize, new ChunkImporter(cellBinderRegistry.preloadCellBinders(),
+                LocaleContextHolder.getLocaleContext(), importStatus));
+        return importStatus;
+    }
 
-            Row row = sheet.getRow(rowIndex);
-            if (row == null) { // This whole row is empty
-                break;
-            }
-            final RowProcessor rowProcessor = rowProcessorFactory.create(importStatus, rowIndex);
-            for (int colIndex = 0; colIndex < SpreadsheetSchemaInfo.COLUMN_NUMBER; colIndex++) {
-                rowProcessor.append(row.getCell(colIndex, Row.RETURN_BLANK_AS_NULL));
+    private RowProcessor bind(final String[] row, final int rowIndex, final CellBinder[] cellBinders,
+                              final LocaleContext localeContext) {
+        LocaleContext previousLocaleContext = LocaleContextHolder.getLocaleContext();
+        LocaleContextHolder.setLocaleContext(localeContext);
+        try {
+            RowProcessor rowProcessor = rowProcessorFactory.create(cellBinders, rowIndex);
+            for (String cellValue : row) {
+                rowProcessor.append(cellValue);
             }
-            if (rowProcessor.isEmpty()) {
-                break; // We are done. The whole row was empty so stop processing
-            }
-            rowProcessor.process();
+            return rowProcessor;
+        } finally {
+            LocaleContextHolder.setLocaleContext(previousLocaleContext);
         }
+    }
+
+    private class ChunkImporter implements Consumer<List<String[]>> {
+
+        private final CellBinder[] cellBinders;
+
+        private final LocaleContext localeContext;
+
+        private final ImportStatus importStatus;
 
-        if (importStatus.hasErrors()) { // We have to rollback transaction here
-            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+        private int firstRowIndex = SpreadsheetSchemaInfo.START_ROW_INDEX;
+
+        private boolean commit = true;
+
+        private ChunkImporter(final CellBinder[] cellBinders, final LocaleContext localeContext,
+                              final ImportStatus importStatus) {
+            this.cellBinders = cellBinders;
+            this.localeContext = localeContext;
+            this.importStatus = importStatus;
+        }
+
+        @Override
+        public void accept(final List<String[]> rows) {
+            int chunkFirstRowIndex = firstRowIndex;
+            List<RowProcessor> chunk = IntStream.range(0, rows.size())
+                    .parallel()
+                    .mapToObj(index -> bind(rows.get(index), chunkFirstRowIndex + index, cellBinders, localeContext))
+                    .collect(Collectors.toList());
+            firstRowIndex += rows.size();
+            commit = importChunkPersister.persist(chunk, importStatus, commit);
         }
-        return importStatus;
     }
 
 }
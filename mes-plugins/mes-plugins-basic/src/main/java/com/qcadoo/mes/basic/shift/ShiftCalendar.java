@@ -0,0 +1,337 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.shift;
+
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Immutable, precompiled working time calendar of all shifts.
+ * 
+ * Working time is kept as sorted, non-overlapping [start, end) intervals (epoch millis) together with the prefix sums of their
+ * lengths, so that adding (or subtracting) an amount of working time to a given instant is a binary search plus an arithmetic
+ * step instead of a walk through shift entities.
+ * 
+ * Instances are created with {@link ShiftCalendar.Builder}, which applies timetable exceptions per shift (free time of one shift
+ * does not affect the others) and merges all shifts afterwards.
+ */
+public final class ShiftCalendar {
+
+    private static final ShiftCalendar EMPTY = new ShiftCalendar(new long[0], new long[0], 0L, 0L);
+
+    private final long[] starts;
+
+    private final long[] ends;
+
+    /**
+     * prefix[i] = working millis in intervals 0 .. i-1, prefix.length == starts.length + 1
+     */
+    private final long[] prefix;
+
+    private final long horizonStart;
+
+    private final long horizonEnd;
+
+    private ShiftCalendar(final long[] starts, final long[] ends, final long horizonStart, final long horizonEnd) {
+        this.starts = starts;
+        this.ends = ends;
+        this.horizonStart = horizonStart;
+        this.horizonEnd = horizonEnd;
+        this.prefix = new long[starts.length + 1];
+        for (int i = 0; i < starts.length; i++) {
+            prefix[i + 1] = prefix[i] + (ends[i] - starts[i]);
+        }
+    }
+
+    public static ShiftCalendar empty() {
+        return EMPTY;
+    }
+
+    public static Builder builder(final long horizonStart, final long horizonEnd) {
+        return new Builder(horizonStart, horizonEnd);
+    }
+
+    public boolean isEmpty() {
+        return starts.length == 0;
+    }
+
+    public long getHorizonStart() {
+        return horizonStart;
+    }
+
+    public long getHorizonEnd() {
+        return horizonEnd;
+    }
+
+    public int getNumberOfIntervals() {
+        return starts.length;
+    }
+
+    /**
+     * Finds the instant at which given amount of working time, counted from given instant, is used up.
+     * 
+     * @param from
+     *            epoch millis to start counting from
+     * @param workingMillis
+     *            amount of working time (>= 0)
+     * @return epoch millis or null if the calendar's horizon is exceeded
+     */
+    public Long addWorkingTime(final long from, final long workingMillis) {
+        Preconditions.checkArgument(workingMillis >= 0, "Working time have to be >= 0.");
+        // first interval which ends after 'from'
+        int first = upperBound(ends, from);
+        if (first >= starts.length) {
+            return null;
+        }
+        long target = workingTimeBefore(from, first) + workingMillis;
+        if (target > prefix[starts.length]) {
+            return null;
+        }
+        // first interval i >= first with prefix[i + 1] >= target
+        int i = lowerBound(prefix, first + 1, prefix.length, target) - 1;
+
+        return starts[i] + (target - prefix[i]);
+    }
+
+    /**
+     * Finds the instant from which given amount of working time has to be counted to be used up at given instant.
+     * 
+     * @param to
+     *            epoch millis to count back from
+     * @param workingMillis
+     *            amount of working time (>= 0)
+     * @return epoch millis or null if the calendar's horizon is exceeded
+     */
+    public Long subtractWorkingTime(final long to, final long workingMillis) {
+        Preconditions.checkArgument(workingMillis >= 0, "Working time have to be >= 0.");
+        // last interval which starts before 'to'
+        int last = lowerBound(starts, 0, starts.length, to) - 1;
+        if (last < 0) {
+            return null;
+        }
+        long target = workingTimeBefore(Math.min(to, ends[last]), last) - workingMillis;
+        if (target < 0) {
+            return null;
+        }
+        // last interval i <= last with prefix[i] <= target
+        int i = upperBound(prefix, 0, last + 1, target) - 1;
+
+        return starts[i] + (target - prefix[i]);
+    }
+
+    /**
+     * Returns working time (in millis) between given instants.
+     */
+    public long getWorkingTimeBetween(final long from, final long to) {
+        if (to <= from) {
+            return 0L;
+        }
+        return workingTimeAt(to) - workingTimeAt(from);
+    }
+
+    private long workingTimeAt(final long instant) {
+        int index = upperBound(ends, instant);
+        if (index >= starts.length) {
+            return prefix[starts.length];
+        }
+        return workingTimeBefore(instant, index);
+    }
+
+    private long workingTimeBefore(final long instant, final int index) {
+        return prefix[index] + Math.max(0L, instant - starts[index]);
+    }
+
+    private static int upperBound(final long[] values, final long key) {
+        return upperBound(values, 0, values.length, key);
+    }
+
+    /**
+     * @return first index in [fromIndex, toIndex) with values[index] > key, or toIndex
+     */
+    private static int upperBound(final long[] values, final int fromIndex, final int toIndex, final long key) {
+        int low = fromIndex;
+        int high = toIndex;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return first index in [fromIndex, toIndex) with values[index] >= key, or toIndex
+     */
+    private static int lowerBound(final long[] values, final int fromIndex, final int toIndex, final long key) {
+        int low = fromIndex;
+        int high = toIndex;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public static final class Builder {
+
+        private final long horizonStart;
+
+        private final long horizonEnd;
+
+        private final LongIntervals allWorkTimes = new LongIntervals();
+
+        private LongIntervals shiftWorkTimes = new LongIntervals();
+
+        private LongIntervals shiftFreeTimes = new LongIntervals();
+
+        private Builder(final long horizonStart, final long horizonEnd) {
+            Preconditions.checkArgument(horizonStart <= horizonEnd, "Horizon start have to be before its end.");
+            this.horizonStart = horizonStart;
+            this.horizonEnd = horizonEnd;
+        }
+
+        public long getHorizonStart() {
+            return horizonStart;
+        }
+
+        public long getHorizonEnd() {
+            return horizonEnd;
+        }
+
+        public Builder addWorkTime(final long from, final long to) {
+            shiftWorkTimes.add(from, to);
+            return this;
+        }
+
+        public Builder addFreeTime(final long from, final long to) {
+            shiftFreeTimes.add(from, to);
+            return this;
+        }
+
+        /**
+         * Closes work and free times of the current shift - free times are subtracted from work times of this shift only.
+         */
+        public Builder nextShift() {
+            LongIntervals merged = shiftWorkTimes.sortAndMerge();
+            LongIntervals freeTimes = shiftFreeTimes.sortAndMerge();
+            for (int i = 0; i < merged.size; i++) {
+                subtractFreeTimes(merged.starts[i], merged.ends[i], freeTimes);
+            }
+            shiftWorkTimes = new LongIntervals();
+            shiftFreeTimes = new LongIntervals();
+            return this;
+        }
+
+        private void subtractFreeTimes(final long from, final long to, final LongIntervals freeTimes) {
+            long currentFrom = from;
+            for (int i = 0; i < freeTimes.size && currentFrom < to; i++) {
+                long freeFrom = freeTimes.starts[i];
+                long freeTo = freeTimes.ends[i];
+                if (freeTo <= currentFrom || freeFrom >= to) {
+                    continue;
+                }
+                if (freeFrom > currentFrom) {
+                    addClipped(currentFrom, freeFrom);
+                }
+                currentFrom = Math.max(currentFrom, freeTo);
+            }
+            if (currentFrom < to) {
+                addClipped(currentFrom, to);
+            }
+        }
+
+        private void addClipped(final long from, final long to) {
+            long clippedFrom = Math.max(from, horizonStart);
+            long clippedTo = Math.min(to, horizonEnd);
+            if (clippedFrom < clippedTo) {
+                allWorkTimes.add(clippedFrom, clippedTo);
+            }
+        }
+
+        public ShiftCalendar build() {
+            nextShift();
+            LongIntervals merged = allWorkTimes.sortAndMerge();
+            if (merged.size == 0) {
+                return new ShiftCalendar(new long[0], new long[0], horizonStart, horizonEnd);
+            }
+            return new ShiftCalendar(Arrays.copyOf(merged.starts, merged.size), Arrays.copyOf(merged.ends, merged.size),
+                    horizonStart, horizonEnd);
+        }
+
+    }
+
+    private static final class LongIntervals {
+
+        private long[] starts = new long[16];
+
+        private long[] ends = new long[16];
+
+        private int size;
+
+        private void add(final long from, final long to) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+            }
+            starts[size] = from;
+            ends[size] = to;
+            size++;
+        }
+
+        /**
+         * Sorts intervals by their start and merges the overlapping (or touching) ones, the same way
+         * ShiftsServiceImpl#mergeOverlappedHours does.
+         */
+        private LongIntervals sortAndMerge() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> starts[a] != starts[b] ? Long.compare(starts[a], starts[b]) : Long.compare(ends[a],
+                    ends[b]));
+
+            LongIntervals merged = new LongIntervals();
+            for (Integer index : order) {
+                long from = starts[index];
+                long to = ends[index];
+                if (merged.size > 0 && from <= merged.ends[merged.size - 1]) {
+                    merged.ends[merged.size - 1] = Math.max(merged.ends[merged.size - 1], to);
+                } else {
+                    merged.add(from, to);
+                }
+            }
+            return merged;
+        }
+
+    }
+
+}
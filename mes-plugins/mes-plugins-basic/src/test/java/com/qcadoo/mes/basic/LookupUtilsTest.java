@@ -0,0 +1,203 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+public class LookupUtilsTest {
+
+    private static final String QUERY = "SELECT %s FROM (SELECT p.* FROM basic_product p) q ";
+
+    private LookupUtils lookupUtils;
+
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Before
+    public void init() {
+        lookupUtils = new LookupUtils();
+        jdbcTemplate = mock(NamedParameterJdbcTemplate.class);
+
+        ReflectionTestUtils.setField(lookupUtils, "jdbcTemplate", jdbcTemplate);
+
+        given(jdbcTemplate.queryForObject(anyString(), anyMap(), eq(Long.class))).willReturn(4L);
+
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+    }
+
+    @After
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    public void shouldSeekNextPageAfterLastRecordOfPreviousPage() {
+        // given
+        List firstPage = Lists.newArrayList(record(7L, "A"), record(3L, "B"));
+        List secondPage = Lists.newArrayList(record(5L, "C"), record(1L, "D"));
+
+        given(jdbcTemplate.query(anyString(), anyMap(), any(RowMapper.class))).willReturn(firstPage, secondPage);
+
+        // when
+        lookupUtils.getGridResponse(QUERY, "number", "asc", 1, 2, new Record());
+        GridResponse<Record> response = lookupUtils.getGridResponse(QUERY, "number", "asc", 2, 2, new Record());
+
+        // then
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Map> parametersCaptor = ArgumentCaptor.forClass(Map.class);
+
+        verify(jdbcTemplate, times(2)).query(queryCaptor.capture(), parametersCaptor.capture(),
+                any(RowMapper.class));
+
+        String secondPageQuery = queryCaptor.getAllValues().get(1);
+
+        assertTrue(secondPageQuery.contains(
+                "WHERE (number > :gridSeekSortValue OR (number = :gridSeekSortValue AND id > :gridSeekId) OR number IS NULL)"));
+        assertTrue(secondPageQuery.endsWith("ORDER BY number asc, id asc LIMIT 2"));
+        assertEquals("B", parametersCaptor.getAllValues().get(1).get("gridSeekSortValue"));
+        assertEquals(3L, parametersCaptor.getAllValues().get(1).get("gridSeekId"));
+        assertEquals(2, response.getTotal());
+    }
+
+    @Test
+    public void shouldFallBackToOffsetWithoutPreviousPage() {
+        // given
+        List records = Lists.newArrayList(record(5L, "C"));
+
+        given(jdbcTemplate.query(anyString(), anyMap(), any(RowMapper.class))).willReturn(records);
+
+        Record filter = new Record();
+        filter.setNumber("C");
+
+        // when
+        lookupUtils.getGridResponse(QUERY, "number", "desc", 3, 2, filter, Maps.newHashMap());
+
+        // then
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+
+        verify(jdbcTemplate).query(queryCaptor.capture(), anyMap(), any(RowMapper.class));
+
+        assertFalse(queryCaptor.getValue().contains(":gridSeekId"));
+        assertTrue(queryCaptor.getValue().contains("WHERE lower(number) like lower(:number)"));
+        assertTrue(queryCaptor.getValue().endsWith("ORDER BY number desc, id desc LIMIT 2 OFFSET 4"));
+    }
+
+    @Test
+    public void shouldOrderByPrimaryOrderBeforeSortColumnAndId() {
+        // given
+        List firstPage = Lists.newArrayList(record(7L, "A"), record(3L, "B"));
+        List secondPage = Lists.newArrayList(record(5L, "C"), record(1L, "D"));
+
+        given(jdbcTemplate.query(anyString(), anyMap(), any(RowMapper.class))).willReturn(firstPage, secondPage);
+
+        // when
+        lookupUtils.getGridResponse(QUERY, "number", "asc", 1, 2, new Record(), Maps.newHashMap(), false, "time desc");
+        lookupUtils.getGridResponse(QUERY, "number", "asc", 2, 2, new Record(), Maps.newHashMap(), false, "time desc");
+
+        // then
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+
+        verify(jdbcTemplate, times(2)).query(queryCaptor.capture(), anyMap(), any(RowMapper.class));
+
+        assertTrue(queryCaptor.getAllValues().get(0).endsWith("ORDER BY time desc, number asc, id asc LIMIT 2"));
+        assertFalse(queryCaptor.getAllValues().get(1).contains(":gridSeekId"));
+        assertTrue(queryCaptor.getAllValues().get(1).endsWith("ORDER BY time desc, number asc, id asc LIMIT 2 OFFSET 2"));
+    }
+
+    @Test
+    public void shouldOrderByPrimaryOrderAndIdWhenNotSorted() {
+        // given
+        given(jdbcTemplate.query(anyString(), anyMap(), any(RowMapper.class))).willReturn(Lists.newArrayList());
+
+        // when
+        lookupUtils.getGridResponse(QUERY, "", "", 1, 2, new Record(), Maps.newHashMap(), false, "expirationdate asc");
+
+        // then
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+
+        verify(jdbcTemplate).query(queryCaptor.capture(), anyMap(), any(RowMapper.class));
+
+        assertTrue(queryCaptor.getValue().endsWith("ORDER BY expirationdate asc, id LIMIT 2"));
+    }
+
+    private Record record(final Long id, final String number) {
+        Record record = new Record();
+
+        record.setId(id);
+        record.setNumber(number);
+
+        return record;
+    }
+
+    public static class Record {
+
+        private Long id;
+
+        private String number;
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(final Long id) {
+            this.id = id;
+        }
+
+        public String getNumber() {
+            return number;
+        }
+
+        public void setNumber(final String number) {
+            this.number = number;
+        }
+
+    }
+
+}
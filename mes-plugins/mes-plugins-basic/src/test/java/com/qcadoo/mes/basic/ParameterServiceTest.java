@@ -25,16 +25,27 @@ package com.qcadoo.mes.basic;
 
 import static com.qcadoo.mes.basic.constants.BasicConstants.MODEL_PARAMETER;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.collect.Maps;
 
 import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.model.api.DataDefinition;
@@ -43,6 +54,7 @@ import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.search.SearchCriteriaBuilder;
 import com.qcadoo.model.api.search.SearchCriterion;
 import com.qcadoo.model.api.search.SearchQueryBuilder;
+import com.qcadoo.tenant.api.MultiTenantService;
 
 public class ParameterServiceTest {
 
@@ -57,11 +69,15 @@ public class ParameterServiceTest {
     @Mock
     private SearchQueryBuilder searchQueryBuilder;
 
+    @Mock
+    private MultiTenantService multiTenantService;
+
     @Before
     public final void init() {
         MockitoAnnotations.initMocks(this);
         parameterService = new ParameterService();
         ReflectionTestUtils.setField(parameterService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(parameterService, "multiTenantService", multiTenantService);
 
         given(dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, MODEL_PARAMETER)).willReturn(parameterDD);
         given(parameterDD.find(Mockito.anyString())).willReturn(searchQueryBuilder);
@@ -69,6 +85,28 @@ public class ParameterServiceTest {
         given(searchQueryBuilder.setCacheable(Mockito.anyBoolean())).willReturn(searchQueryBuilder);
     }
 
+    @After
+    public final void clearTransaction() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            }
+
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private Entity mockParameter(final boolean value) {
+        Map<String, Object> fields = Maps.newHashMap();
+        fields.put("draftMakesReservation", value);
+
+        Entity parameter = mock(Entity.class);
+        given(parameter.getId()).willReturn(13L);
+        given(parameter.getFields()).willReturn(fields);
+
+        return parameter;
+    }
+
     @Test
     public void shouldReturnExistingParameterEntityId() throws Exception {
         // given
@@ -135,4 +173,93 @@ public class ParameterServiceTest {
         parameterService.getParameter();
     }
 
+    @Test
+    public void shouldReadParameterOnlyOnce() throws Exception {
+        // given
+        Entity parameter = mockParameter(true);
+        given(searchQueryBuilder.uniqueResult()).willReturn(parameter);
+
+        AtomicInteger derivedValueLoads = new AtomicInteger();
+
+        // when
+        for (int position = 0; position < 500; position++) {
+            ParameterSnapshot snapshot = parameterService.getParameterSnapshot();
+
+            assertTrue(snapshot.getBooleanField("draftMakesReservation"));
+            assertTrue(snapshot.getDerivedValue("derived", () -> derivedValueLoads.incrementAndGet() > 0));
+        }
+
+        // then
+        verify(searchQueryBuilder, times(1)).uniqueResult();
+        assertEquals(1, derivedValueLoads.get());
+    }
+
+    @Test
+    public void shouldKeepSnapshotPerTenant() throws Exception {
+        // given
+        Entity firstTenantParameter = mockParameter(true);
+        Entity secondTenantParameter = mockParameter(false);
+        given(searchQueryBuilder.uniqueResult()).willReturn(firstTenantParameter, secondTenantParameter);
+        given(multiTenantService.getCurrentTenantId()).willReturn(1, 2, 1, 2);
+
+        // when
+        boolean firstTenantValue = parameterService.getParameterSnapshot().getBooleanField("draftMakesReservation");
+        boolean secondTenantValue = parameterService.getParameterSnapshot().getBooleanField("draftMakesReservation");
+        boolean firstTenantCachedValue = parameterService.getParameterSnapshot().getBooleanField("draftMakesReservation");
+        boolean secondTenantCachedValue = parameterService.getParameterSnapshot().getBooleanField("draftMakesReservation");
+
+        // then
+        assertTrue(firstTenantValue);
+        assertFalse(secondTenantValue);
+        assertTrue(firstTenantCachedValue);
+        assertFalse(secondTenantCachedValue);
+        verify(searchQueryBuilder, times(2)).uniqueResult();
+    }
+
+    @Test
+    public void shouldReloadSnapshotAfterParameterSave() throws Exception {
+        // given
+        Entity parameter = mockParameter(true);
+        Entity savedParameter = mockParameter(false);
+        given(searchQueryBuilder.uniqueResult()).willReturn(parameter, savedParameter);
+
+        boolean valueBeforeSave = parameterService.getParameterSnapshot().getBooleanField("draftMakesReservation");
+
+        TransactionSynchronizationManager.initSynchronization();
+
+        // when
+        parameterService.invalidateParameterSnapshot();
+
+        boolean valueInSavingTransaction = parameterService.getParameterSnapshot().getBooleanField("draftMakesReservation");
+
+        clearTransaction();
+
+        boolean valueAfterSave = parameterService.getParameterSnapshot().getBooleanField("draftMakesReservation");
+        parameterService.getParameterSnapshot();
+
+        // then
+        assertTrue(valueBeforeSave);
+        assertFalse(valueInSavingTransaction);
+        assertFalse(valueAfterSave);
+        verify(searchQueryBuilder, times(3)).uniqueResult();
+    }
+
+    @Test
+    public void shouldNotShareSnapshotReadInSavingTransaction() throws Exception {
+        // given
+        Entity parameter = mockParameter(false);
+        given(searchQueryBuilder.uniqueResult()).willReturn(parameter);
+
+        TransactionSynchronizationManager.initSynchronization();
+
+        parameterService.invalidateParameterSnapshot();
+
+        // when
+        parameterService.getParameterSnapshot();
+        parameterService.getParameterSnapshot();
+
+        // then
+        verify(searchQueryBuilder, times(2)).uniqueResult();
+    }
+
 }
@@ -25,6 +25,8 @@ package com.qcadoo.mes.basic;
 
 import static junit.framework.Assert.assertEquals;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
@@ -39,12 +41,14 @@ import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import com.qcadoo.mes.basic.shift.ShiftCalendar;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.EntityList;
 import com.qcadoo.model.api.search.SearchCriteriaBuilder;
 import com.qcadoo.model.api.search.SearchResult;
+import com.qcadoo.tenant.api.MultiTenantService;
 
 public class ShiftsServiceTest {
 
@@ -56,6 +60,9 @@ public class ShiftsServiceTest {
     @Mock
     private DataDefinition dataDefinition;
 
+    @Mock
+    private MultiTenantService multiTenantService;
+
     @Mock
     private Entity entity, shift, exception;
 
@@ -69,6 +76,7 @@ public class ShiftsServiceTest {
         MockitoAnnotations.initMocks(this);
 
         ReflectionTestUtils.setField(shiftsService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(shiftsService, "multiTenantService", multiTenantService);
     }
 
     private EntityList mockEntityList(List<Entity> list) {
@@ -206,4 +214,61 @@ public class ShiftsServiceTest {
         shiftsService.findDateFromForOrder(dateTo, 123L);
         // then
     }
+
+    @Test
+    public void shouldKeepShiftCalendarOfEachTenant() throws Exception {
+        // given
+        SearchCriteriaBuilder builder = mock(SearchCriteriaBuilder.class);
+        SearchResult firstTenantResult = mock(SearchResult.class);
+        SearchResult secondTenantResult = mock(SearchResult.class);
+        when(dataDefinitionService.get("basic", "shift")).thenReturn(dataDefinition);
+        when(dataDefinition.find()).thenReturn(builder);
+        when(builder.list()).thenReturn(firstTenantResult, secondTenantResult, firstTenantResult);
+        shifts.add(shift);
+        when(firstTenantResult.getEntities()).thenReturn(shifts);
+        when(secondTenantResult.getEntities()).thenReturn(new ArrayList<Entity>());
+        when(shift.getBooleanField("mondayWorking")).thenReturn(true);
+        when(shift.getStringField("mondayHours")).thenReturn("07:00-15:00");
+        EntityList noExceptions = mockEntityList(new ArrayList<Entity>());
+        when(shift.getHasManyField("timetableExceptions")).thenReturn(noExceptions);
+
+        // when
+        when(multiTenantService.getCurrentTenantId()).thenReturn(1);
+        ShiftCalendar firstTenantCalendar = shiftsService.getShiftCalendar();
+        when(multiTenantService.getCurrentTenantId()).thenReturn(2);
+        ShiftCalendar secondTenantCalendar = shiftsService.getShiftCalendar();
+        when(multiTenantService.getCurrentTenantId()).thenReturn(1);
+        ShiftCalendar firstTenantCalendarAgain = shiftsService.getShiftCalendar();
+
+        // then
+        Assert.assertFalse(firstTenantCalendar.isEmpty());
+        Assert.assertTrue(secondTenantCalendar.isEmpty());
+        Assert.assertSame(firstTenantCalendar, firstTenantCalendarAgain);
+        verify(dataDefinition, times(2)).find();
+    }
+
+    @Test
+    public void shouldCompileShiftCalendarsAgainAfterInvalidation() throws Exception {
+        // given
+        SearchCriteriaBuilder builder = mock(SearchCriteriaBuilder.class);
+        SearchResult result = mock(SearchResult.class);
+        when(dataDefinitionService.get("basic", "shift")).thenReturn(dataDefinition);
+        when(dataDefinition.find()).thenReturn(builder);
+        when(builder.list()).thenReturn(result);
+        when(result.getEntities()).thenReturn(new ArrayList<Entity>());
+
+        // when
+        when(multiTenantService.getCurrentTenantId()).thenReturn(1);
+        shiftsService.getShiftCalendar();
+        when(multiTenantService.getCurrentTenantId()).thenReturn(2);
+        shiftsService.getShiftCalendar();
+        shiftsService.invalidateShiftCalendar();
+        when(multiTenantService.getCurrentTenantId()).thenReturn(1);
+        shiftsService.getShiftCalendar();
+        shiftsService.getShiftCalendar();
+
+        // then
+        verify(dataDefinition, times(3)).find();
+    }
+
 }
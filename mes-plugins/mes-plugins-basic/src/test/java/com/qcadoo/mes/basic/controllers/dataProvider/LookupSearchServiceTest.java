@@ -0,0 +1,202 @@
+package com.qcadoo.mes.basic.controllers.dataProvider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.controllers.dataProvider.dto.ProductDTO;
+import com.qcadoo.mes.basic.controllers.dataProvider.responses.DataResponse;
+
+public class LookupSearchServiceTest {
+
+    private static final String QUERY = "SELECT product.id as id, product.number as number FROM basic_product product "
+            + "WHERE product.active = true";
+
+    private static final List<String> CORPUS = Lists.newArrayList("PRD-001", "PRD-002", "PRD-010", "SCREW-M8", "SCREW-M10",
+            "NUT-M8", "WASHER M8", "XPRD-001", "prd-lower", "BOLT_M8", "BOLTXM8", "PAINT 50%", "PAINT 500");
+
+    private static final Pattern LIMIT = Pattern.compile("LIMIT (\\d+)$");
+
+    private LookupSearchService lookupSearchService;
+
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private List<String> corpus;
+
+    private String lastQuery;
+
+    @Before
+    public void init() {
+        corpus = Lists.newArrayList(CORPUS);
+
+        jdbcTemplate = mock(NamedParameterJdbcTemplate.class);
+
+        lookupSearchService = new LookupSearchService();
+
+        ReflectionTestUtils.setField(lookupSearchService, "jdbcTemplate", jdbcTemplate);
+
+        given(jdbcTemplate.query(anyString(), anyMap(), any(RowMapper.class))).willAnswer(invocation -> {
+            lastQuery = (String) invocation.getArguments()[0];
+
+            return evaluate(lastQuery, (Map<String, Object>) invocation.getArguments()[1]);
+        });
+    }
+
+    @Test
+    public void shouldFindSameRecordsAsSubstringSearchForCommonQueries() {
+        for (String searchedText : Lists.newArrayList("PRD", "prd-00", "M8", "screw", "001", " M", "NONE")) {
+            List<String> expected = corpus.stream().filter(number -> likeIgnoreCase(number, "%" + searchedText + "%"))
+                    .sorted().collect(Collectors.toList());
+
+            List<String> found = numbers(lookupSearchService.search(QUERY, "product.number", searchedText, Maps.newHashMap(),
+                    ProductDTO.class));
+
+            assertEquals(searchedText, expected, found.stream().sorted().collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void shouldBindEscapedPatternsInIndexableQuery() {
+        // given
+        Map<String, Object> parameters = Maps.newHashMap();
+        parameters.put("productnumber", "P1");
+
+        // when
+        lookupSearchService.find(QUERY, "product.number", "50%_a\\", parameters, ProductDTO.class, 5);
+
+        // then
+        ArgumentCaptor<Map> parametersCaptor = ArgumentCaptor.forClass(Map.class);
+
+        verify(jdbcTemplate).query(eq(QUERY + " AND product.number ILIKE :searchPattern"
+                + " ORDER BY (product.number ILIKE :searchPrefixPattern) DESC, product.number LIMIT 5"),
+                parametersCaptor.capture(), any(RowMapper.class));
+
+        assertEquals("%50\\%\\_a\\\\%", parametersCaptor.getValue().get("searchPattern"));
+        assertEquals("50\\%\\_a\\\\%", parametersCaptor.getValue().get("searchPrefixPattern"));
+        assertEquals("P1", parametersCaptor.getValue().get("productnumber"));
+        assertEquals(1, parameters.size());
+    }
+
+    @Test
+    public void shouldOnlySortAndLimitWhenNothingIsSearched() {
+        // when
+        lookupSearchService.find(QUERY, "product.number", "", Maps.newHashMap(), ProductDTO.class, 5);
+
+        // then
+        verify(jdbcTemplate).query(eq(QUERY + " ORDER BY product.number LIMIT 5"), anyMap(), any(RowMapper.class));
+    }
+
+    @Test
+    public void shouldRankPrefixMatchesFirst() {
+        // when
+        List<String> found = numbers(lookupSearchService.search(QUERY, "product.number", "prd", Maps.newHashMap(),
+                ProductDTO.class));
+
+        // then
+        assertEquals(Lists.newArrayList("PRD-001", "PRD-002", "PRD-010", "prd-lower", "XPRD-001"), found);
+        assertTrue(lastQuery.endsWith("ORDER BY (product.number ILIKE :searchPrefixPattern) DESC, product.number LIMIT 21"));
+    }
+
+    @Test
+    public void shouldMatchWildcardsLiterally() {
+        assertEquals(Lists.newArrayList("BOLT_M8"), numbers(lookupSearchService.search(QUERY, "product.number", "T_M",
+                Maps.newHashMap(), ProductDTO.class)));
+        assertEquals(Lists.newArrayList("PAINT 50%"), numbers(lookupSearchService.search(QUERY, "product.number", "50%",
+                Maps.newHashMap(), ProductDTO.class)));
+    }
+
+    @Test
+    public void shouldCapResultsWithoutCounting() {
+        // when
+        DataResponse response = lookupSearchService.search(QUERY, "product.number", "", Maps.newHashMap(), ProductDTO.class);
+
+        // then
+        assertEquals(CORPUS.size(), response.getNumberOfResults());
+
+        // given
+        for (int i = 100; i < 130; i++) {
+            corpus.add(String.format("PRD-%03d", i));
+        }
+
+        // when
+        response = lookupSearchService.search(QUERY, "product.number", "PRD-", Maps.newHashMap(), ProductDTO.class);
+
+        // then
+        assertEquals(LookupSearchService.MAX_RESULTS, response.getEntities().size());
+        assertEquals(LookupSearchService.MAX_RESULTS + 1, response.getNumberOfResults());
+        assertTrue(lastQuery.endsWith("LIMIT " + (LookupSearchService.MAX_RESULTS + 1)));
+    }
+
+    private List<ProductDTO> evaluate(final String query, final Map<String, Object> parameters) {
+        String pattern = (String) parameters.get("searchPattern");
+        String prefixPattern = (String) parameters.get("searchPrefixPattern");
+
+        Matcher limit = LIMIT.matcher(query);
+        limit.find();
+
+        Comparator<String> order = Comparator.naturalOrder();
+
+        if (prefixPattern != null) {
+            order = Comparator.comparing((String number) -> !likeIgnoreCase(number, prefixPattern)).thenComparing(order);
+        }
+
+        return corpus.stream().filter(number -> (pattern == null) || likeIgnoreCase(number, pattern)).sorted(order)
+                .limit(Long.parseLong(limit.group(1))).map(this::product).collect(Collectors.toList());
+    }
+
+    // PostgreSQL ILIKE with the default backslash escape character
+    private boolean likeIgnoreCase(final String value, final String pattern) {
+        StringBuilder regex = new StringBuilder();
+
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+
+            if (c == '\\') {
+                regex.append(Pattern.quote(String.valueOf(pattern.charAt(++i))));
+            } else if (c == '%') {
+                regex.append(".*");
+            } else if (c == '_') {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.DOTALL).matcher(value).matches();
+    }
+
+    private ProductDTO product(final String number) {
+        ProductDTO product = new ProductDTO();
+
+        product.setNumber(number);
+
+        return product;
+    }
+
+    private List<String> numbers(final DataResponse response) {
+        return response.getEntities().stream().map(entity -> ((ProductDTO) entity).getNumber()).collect(Collectors.toList());
+    }
+
+}
@@ -0,0 +1,67 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print.xls;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class RowGroupCollectorTest {
+
+    @Test
+    public void shouldPassConsecutiveRowGroups() {
+        // given
+        List<List<String>> groups = Lists.newArrayList();
+        RowGroupCollector<Character, String> collector = new RowGroupCollector<>(row -> row.charAt(0), groups::add);
+
+        // when
+        Lists.newArrayList("a1", "a2", "b1", "c1", "c2", "a3").forEach(collector);
+        collector.flush();
+
+        // then
+        assertEquals(4, groups.size());
+        assertEquals(Lists.newArrayList("a1", "a2"), groups.get(0));
+        assertEquals(Lists.newArrayList("b1"), groups.get(1));
+        assertEquals(Lists.newArrayList("c1", "c2"), groups.get(2));
+        assertEquals(Lists.newArrayList("a3"), groups.get(3));
+    }
+
+    @Test
+    public void shouldPassNothingWithoutRows() {
+        // given
+        List<List<String>> groups = Lists.newArrayList();
+        RowGroupCollector<Character, String> collector = new RowGroupCollector<>(row -> row.charAt(0), groups::add);
+
+        // when
+        collector.flush();
+
+        // then
+        assertEquals(0, groups.size());
+    }
+
+}
@@ -0,0 +1,91 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print.xls;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.qcadoo.model.api.Entity;
+
+public class StreamingXlsxReportServiceTest {
+
+    private static final int ROWS = 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldWriteReportToXlsxFileNamedByReportFileName() throws IOException {
+        // given
+        Entity report = mock(Entity.class);
+        String fileName = new File(folder.getRoot(), "report").getAbsolutePath();
+        given(report.getStringField("fileName")).willReturn(fileName);
+
+        StreamingXlsxReportService reportService = new StreamingXlsxReportService() {
+
+            @Override
+            protected void buildSheet(final XlsRowWriter writer, final Entity entity, final Locale locale) {
+                writer.writeRow(XlsStyle.HEADER, "number", "quantity");
+                for (int i = 0; i < ROWS; i++) {
+                    writer.writeRow(XlsStyle.DEFAULT, "row " + i, i);
+                }
+                writer.mergeCells(0, 0, 0, 1);
+            }
+
+            @Override
+            public String getReportTitle(final Locale locale) {
+                return "Report";
+            }
+        };
+
+        // when
+        reportService.generateDocument(report, Locale.ENGLISH);
+
+        // then
+        assertEquals(fileName + ".xlsx", StreamingXlsxReportService.getFilePath(report));
+        try (InputStream inputStream = new FileInputStream(fileName + ".xlsx")) {
+            Sheet sheet = new XSSFWorkbook(inputStream).getSheet("Report");
+
+            assertEquals(ROWS, sheet.getLastRowNum());
+            assertEquals("number", sheet.getRow(0).getCell(0).getStringCellValue());
+            assertEquals("row 999", sheet.getRow(ROWS).getCell(0).getStringCellValue());
+            assertEquals(999, sheet.getRow(ROWS).getCell(1).getNumericCellValue(), 0);
+            assertEquals(1, sheet.getNumMergedRegions());
+        }
+    }
+
+}
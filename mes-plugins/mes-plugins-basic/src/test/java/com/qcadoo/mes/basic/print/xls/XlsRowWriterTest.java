@@ -0,0 +1,143 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print.xls;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class XlsRowWriterTest {
+
+    private static final int ROWS = 10000;
+
+    private SXSSFWorkbook workbook;
+
+    private StreamingXlsxDocument document;
+
+    @Before
+    public void init() {
+        workbook = new SXSSFWorkbook(StreamingXlsxView.ROW_WINDOW);
+        document = new StreamingXlsxDocument(workbook);
+    }
+
+    @After
+    public void dispose() {
+        workbook.dispose();
+    }
+
+    @Test
+    public void shouldKeepOnlyRowWindowInMemoryAndReuseStyles() {
+        // given
+        XlsRowWriter writer = document.createSheet("report");
+        int stylesBefore = workbook.getNumCellStyles();
+
+        // when
+        for (int i = 0; i < ROWS; i++) {
+            XlsStyle style = XlsStyle.DEFAULT.withTopBorder();
+            if (i % 2 == 0) {
+                style = style.withFill((short) 10);
+            }
+            writer.writeRow(style, "row " + i, i, new Date());
+        }
+
+        // then
+        Sheet sheet = workbook.getSheetAt(0);
+        assertEquals(ROWS, writer.getRowNumber());
+        assertNull(sheet.getRow(0));
+        assertNull(sheet.getRow(ROWS - StreamingXlsxView.ROW_WINDOW - 1));
+        assertNotNull(sheet.getRow(ROWS - 1));
+        assertEquals(2, document.getStyles().size());
+        assertEquals(stylesBefore + 2, workbook.getNumCellStyles());
+    }
+
+    @Test
+    public void shouldWriteTypedCellValues() {
+        // given
+        XlsRowWriter writer = document.createSheet("report");
+        Date date = new Date();
+
+        // when
+        Row row = writer.writeRow(XlsStyle.DATE_TIME, "text", new BigDecimal("1.5"), date, true, null);
+
+        // then
+        assertEquals("text", row.getCell(0).getStringCellValue());
+        assertEquals(1.5, row.getCell(1).getNumericCellValue(), 0);
+        assertEquals(date, row.getCell(2).getDateCellValue());
+        assertEquals(true, row.getCell(3).getBooleanCellValue());
+        assertEquals(Cell.CELL_TYPE_BLANK, row.getCell(4).getCellType());
+        assertEquals(document.getStyles().get(XlsStyle.DATE_TIME), row.getCell(4).getCellStyle());
+    }
+
+    @Test
+    public void shouldShareFontsBetweenStylesWithSameFont() {
+        // given
+        XlsRowWriter writer = document.createSheet("report");
+        short fontsBefore = workbook.getNumberOfFonts();
+        XlsStyle small = XlsStyle.DEFAULT.bold().withFontHeight((short) 7);
+
+        // when
+        Row row = writer.writeRow(small.withBorders(), "a", "b");
+        writer.writeCell(row, 2, "c", small.withBorders(CellStyle.BORDER_MEDIUM));
+        writer.writeCell(row, 3, "d", small.withFontColor(Font.COLOR_RED));
+
+        // then
+        assertEquals(3, document.getStyles().size());
+        assertEquals(fontsBefore + 2, workbook.getNumberOfFonts());
+        assertEquals(CellStyle.BORDER_MEDIUM, row.getCell(2).getCellStyle().getBorderRight());
+        assertEquals(row.getCell(0).getCellStyle().getFontIndex(), row.getCell(2).getCellStyle().getFontIndex());
+        Font redFont = workbook.getFontAt(row.getCell(3).getCellStyle().getFontIndex());
+        assertEquals(Font.COLOR_RED, redFont.getColor());
+        assertEquals(7, redFont.getFontHeightInPoints());
+    }
+
+    @Test
+    public void shouldMergeCellsOfWrittenRows() {
+        // given
+        XlsRowWriter writer = document.createSheet("report");
+        writer.writeRow(XlsStyle.DEFAULT, "a", "b");
+        writer.writeRow(XlsStyle.DEFAULT, "c", "d");
+
+        // when
+        writer.mergeCells(0, 1, 0, 0);
+
+        // then
+        Sheet sheet = writer.getSheet();
+        assertEquals(1, sheet.getNumMergedRegions());
+        assertEquals("A1:A2", sheet.getMergedRegion(0).formatAsString());
+    }
+
+}
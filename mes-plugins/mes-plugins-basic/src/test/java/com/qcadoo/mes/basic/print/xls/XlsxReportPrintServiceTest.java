@@ -0,0 +1,128 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print.xls;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.report.api.ReportService;
+import com.qcadoo.view.api.ComponentState;
+import com.qcadoo.view.api.ViewDefinitionState;
+
+public class XlsxReportPrintServiceTest {
+
+    private static final Long L_REPORT_ID = 7L;
+
+    private static final String[] L_ARGS = { "xls", "plugin", "model" };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private XlsxReportPrintService xlsxReportPrintService;
+
+    private ReportService reportService;
+
+    private ViewDefinitionState view;
+
+    private ComponentState state;
+
+    private String fileName;
+
+    @Before
+    public void init() {
+        reportService = mock(ReportService.class);
+        view = mock(ViewDefinitionState.class);
+        state = mock(ComponentState.class);
+        given(state.getFieldValue()).willReturn(L_REPORT_ID);
+
+        fileName = new File(folder.getRoot(), "report").getAbsolutePath();
+        Entity report = mock(Entity.class);
+        given(report.getStringField("fileName")).willReturn(fileName);
+
+        DataDefinitionService dataDefinitionService = mock(DataDefinitionService.class);
+        DataDefinition reportDD = mock(DataDefinition.class);
+        given(dataDefinitionService.get("plugin", "model")).willReturn(reportDD);
+        given(reportDD.get(L_REPORT_ID)).willReturn(report);
+
+        xlsxReportPrintService = new XlsxReportPrintService();
+        ReflectionTestUtils.setField(xlsxReportPrintService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(xlsxReportPrintService, "reportService", reportService);
+    }
+
+    @Test
+    public void shouldDownloadXlsxFile() throws IOException {
+        // given
+        new File(fileName + ".xlsx").createNewFile();
+
+        // when
+        xlsxReportPrintService.printGeneratedReport(view, state, L_ARGS);
+
+        // then
+        verify(view).redirectTo("/generateSavedXlsxReport/plugin/model.xlsx?id=7", true, false);
+        verify(reportService, never()).printGeneratedReport(view, state, L_ARGS);
+    }
+
+    @Test
+    public void shouldPrintXlsFileOfReportGeneratedBefore() throws IOException {
+        // given
+        new File(fileName + ".xls").createNewFile();
+
+        // when
+        xlsxReportPrintService.printGeneratedReport(view, state, L_ARGS);
+
+        // then
+        verify(reportService).printGeneratedReport(view, state, L_ARGS);
+        verify(view, never()).redirectTo(anyString(), anyBoolean(), anyBoolean());
+    }
+
+    @Test
+    public void shouldPrintOtherTypesThroughReportService() {
+        // given
+        String[] args = { "pdf", "plugin", "model" };
+
+        // when
+        xlsxReportPrintService.printGeneratedReport(view, state, args);
+
+        // then
+        verify(reportService).printGeneratedReport(view, state, args);
+        verify(view, never()).redirectTo(anyString(), anyBoolean(), anyBoolean());
+    }
+
+}
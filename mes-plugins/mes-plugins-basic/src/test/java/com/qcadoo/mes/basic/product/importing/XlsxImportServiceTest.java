@@ -0,0 +1,273 @@
+/*
+ * **************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * **************************************************************************
+ */
+package com.qcadoo.mes.basic.product.importing;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.i18n.LocaleContextHolder;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.basic.constants.ProductFields;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+
+public class XlsxImportServiceTest {
+
+    private static final int ROWS = 2000;
+
+    private static final int CHUNK_SIZE = 500;
+
+    private static final String[] UNITS = { "szt", "kg", "m" };
+
+    private final AtomicInteger unitsPreloads = new AtomicInteger();
+
+    private final List<Entity> savedProducts = Collections.synchronizedList(Lists.newArrayList());
+
+    private XlsxImportService xlsxImportService;
+
+    @Before
+    public void init() {
+        LocaleContextHolder.setLocale(Locale.ENGLISH);
+
+        DataDefinitionService dataDefinitionService = mock(DataDefinitionService.class);
+        DataDefinition productDD = mock(DataDefinition.class);
+        given(dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT)).willReturn(productDD);
+        given(productDD.create()).willAnswer(invocation -> createEntity());
+        given(productDD.save(any(Entity.class))).willAnswer(invocation -> {
+            savedProducts.add((Entity) invocation.getArguments()[0]);
+            return invocation.getArguments()[0];
+        });
+
+        CellBinderRegistry cellBinderRegistry = new CellBinderRegistry();
+        cellBinderRegistry.setCellBinder(CellBinder.required(ProductFields.NUMBER));
+        cellBinderRegistry.setCellBinder(CellBinder.required(ProductFields.NAME));
+        cellBinderRegistry.setCellBinder(CellBinder.optional(ProductFields.GLOBAL_TYPE_OF_MATERIAL));
+        cellBinderRegistry.setCellBinder(CellBinder.required(ProductFields.UNIT, new UnitCellParser()));
+        cellBinderRegistry.setCellBinder(CellBinder.optional(ProductFields.EAN));
+        cellBinderRegistry.setCellBinder(CellBinder.optional(ProductFields.CATEGORY));
+        cellBinderRegistry.setCellBinder(CellBinder.optional(ProductFields.DESCRIPTION));
+        cellBinderRegistry.setCellBinder(CellBinder.optional(ProductFields.PRODUCER));
+        cellBinderRegistry.setCellBinder(CellBinder.optional(ProductFields.ASSORTMENT));
+        cellBinderRegistry.setCellBinder(CellBinder.optional(ProductFields.PARENT));
+        cellBinderRegistry.setCellBinder(CellBinder.optional("nominalCost", new BigDecimalCellParser()));
+        cellBinderRegistry.setCellBinder(CellBinder.optional("lastPurchaseCost", new BigDecimalCellParser()));
+        cellBinderRegistry.setCellBinder(CellBinder.optional("averageCost", new BigDecimalCellParser()));
+
+        xlsxImportService = new XlsxImportService(new RowProcessorFactory(dataDefinitionService), cellBinderRegistry,
+                new SpreadsheetRowReader(), new ImportChunkPersister(), CHUNK_SIZE);
+    }
+
+    @After
+    public void cleanUp() {
+        LocaleContextHolder.resetLocaleContext();
+    }
+
+    @Test
+    public void shouldImportGeneratedWorkbook() throws IOException {
+        // given
+        byte[] workbook = generateWorkbook(ROWS);
+
+        // when
+        ImportStatus importStatus = xlsxImportService.importFrom(new ByteArrayInputStream(workbook));
+
+        // then
+        assertFalse(importStatus.getErrors().toString(), importStatus.hasErrors());
+        assertEquals(ROWS, importStatus.getRowsProcessed());
+        assertEquals(ROWS, importStatus.getRowsImported());
+        assertEquals(ROWS, savedProducts.size());
+        assertEquals(1, unitsPreloads.get());
+    }
+
+    @Test
+    public void shouldSaveProductsWithValuesOfTheirRowsInRowOrder() throws IOException {
+        // given
+        byte[] workbook = generateWorkbook(ROWS);
+
+        // when
+        xlsxImportService.importFrom(new ByteArrayInputStream(workbook));
+
+        // then
+        assertEquals(ROWS, savedProducts.size());
+        for (int i = 1; i <= ROWS; i++) {
+            Entity product = savedProducts.get(i - 1);
+
+            assertEquals("P" + i, product.getField(ProductFields.NUMBER));
+            assertEquals("Product " + i, product.getField(ProductFields.NAME));
+            assertEquals(UNITS[i % UNITS.length], product.getField(ProductFields.UNIT));
+            assertEquals(String.valueOf(5900000000000L + i), product.getField(ProductFields.EAN));
+            assertEquals("Generated product number " + i, product.getField(ProductFields.DESCRIPTION));
+            assertEquals(0, new BigDecimal(i % 100 + ".25").compareTo((BigDecimal) product.getField("nominalCost")));
+            assertEquals(0, new BigDecimal(i % 10).compareTo((BigDecimal) product.getField("lastPurchaseCost")));
+            assertNull(product.getField("averageCost"));
+            assertNull(product.getField(ProductFields.CATEGORY));
+        }
+    }
+
+    @Test
+    public void shouldPassRowsInChunks() throws IOException {
+        // given
+        byte[] workbook = generateWorkbook(5);
+        List<List<String[]>> chunks = Lists.newArrayList();
+
+        // when
+        new SpreadsheetRowReader().read(new ByteArrayInputStream(workbook), 2, chunks::add);
+
+        // then
+        assertEquals(3, chunks.size());
+        assertEquals(2, chunks.get(0).size());
+        assertEquals(2, chunks.get(1).size());
+        assertEquals(1, chunks.get(2).size());
+        assertEquals("P1", chunks.get(0).get(0)[0]);
+        assertEquals("P5", chunks.get(2).get(0)[0]);
+    }
+
+    @Test
+    public void shouldReadRowsUntilFirstEmptyRow() throws IOException {
+        // given
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        SXSSFWorkbook workbook = new SXSSFWorkbook();
+        try {
+            Sheet sheet = workbook.createSheet();
+            sheet.createRow(0).createCell(0).setCellValue("header");
+            Row first = sheet.createRow(1);
+            first.createCell(0).setCellValue(" P1 ");
+            first.createCell(3).setCellValue("szt");
+            first.createCell(20).setCellValue("ignored");
+            sheet.createRow(2).createCell(1).setCellValue(12.5);
+            sheet.createRow(4).createCell(0).setCellValue("P4");
+            workbook.write(outputStream);
+        } finally {
+            workbook.dispose();
+        }
+
+        List<String[]> rows = Lists.newArrayList();
+
+        // when
+        new SpreadsheetRowReader().read(new ByteArrayInputStream(outputStream.toByteArray()), CHUNK_SIZE, rows::addAll);
+
+        // then
+        assertEquals(2, rows.size());
+        String[] expectedFirst = new String[SpreadsheetSchemaInfo.COLUMN_NUMBER];
+        expectedFirst[0] = "P1";
+        expectedFirst[3] = "szt";
+        assertArrayEquals(expectedFirst, rows.get(0));
+        assertEquals("12.5", rows.get(1)[1]);
+    }
+
+    private byte[] generateWorkbook(final int rows) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        SXSSFWorkbook workbook = new SXSSFWorkbook();
+        try {
+            Sheet sheet = workbook.createSheet();
+            sheet.createRow(0).createCell(0).setCellValue(ProductFields.NUMBER);
+            for (int i = 1; i <= rows; i++) {
+                Row row = sheet.createRow(i);
+                row.createCell(0).setCellValue("P" + i);
+                row.createCell(1).setCellValue("Product " + i);
+                row.createCell(3).setCellValue(UNITS[i % UNITS.length]);
+                row.createCell(4).setCellValue(String.valueOf(5900000000000L + i));
+                row.createCell(6).setCellValue("Generated product number " + i);
+                row.createCell(10).setCellValue(i % 100 + ".25");
+                row.createCell(11).setCellValue(i % 10);
+            }
+            workbook.write(outputStream);
+        } finally {
+            workbook.dispose();
+        }
+        return outputStream.toByteArray();
+    }
+
+    private Entity createEntity() {
+        Map<String, Object> fields = Maps.newHashMap();
+        return (Entity) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Entity.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "setField":
+                            return fields.put((String) args[0], args[1]);
+                        case "getField":
+                            return fields.get(args[0]);
+                        case "isValid":
+                            return true;
+                        case "getErrors":
+                            return Collections.emptyMap();
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    private class UnitCellParser implements CellParser {
+
+        @Override
+        public void parse(String cellValue, BindingErrorsAccessor errorsAccessor, Consumer<Object> valueConsumer) {
+            throw new IllegalStateException("Units should be preloaded");
+        }
+
+        @Override
+        public CellParser preload() {
+            unitsPreloads.incrementAndGet();
+            Map<String, Boolean> units = ImmutableMap.of("szt", true, "kg", true, "m", true);
+            return (cellValue, errorsAccessor, valueConsumer) -> {
+                if (units.containsKey(cellValue)) {
+                    valueConsumer.accept(cellValue);
+                } else {
+                    errorsAccessor.addError("qcadooView.validate.field.error.invalidDictionaryItem");
+                }
+            };
+        }
+    }
+
+}
@@ -0,0 +1,104 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.shift;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ShiftCalendarTest {
+
+    private static final DateTime MONDAY = new DateTime(2013, 9, 2, 0, 0);
+
+    private ShiftCalendar calendar;
+
+    @Before
+    public final void init() {
+        ShiftCalendar.Builder builder = ShiftCalendar.builder(MONDAY.getMillis(), MONDAY.plusDays(7).getMillis());
+
+        // first shift: 6:00-14:00 every day, free time on tuesday 10:00-12:00
+        for (int day = 0; day < 7; day++) {
+            builder.addWorkTime(at(day, 6), at(day, 14));
+        }
+        builder.addFreeTime(at(1, 10), at(1, 12));
+        builder.nextShift();
+
+        // second shift: 14:00-22:00 on monday, overlaps with free time of the first shift
+        builder.addWorkTime(at(0, 14), at(0, 22));
+        builder.addWorkTime(at(1, 11), at(1, 13));
+
+        calendar = builder.build();
+    }
+
+    private long at(final int day, final int hour) {
+        return MONDAY.plusDays(day).plusHours(hour).getMillis();
+    }
+
+    private long hours(final int hours) {
+        return hours * 3600000L;
+    }
+
+    @Test
+    public final void shouldMergeShiftsAndApplyFreeTimesPerShift() {
+        // then
+        assertEquals(8, calendar.getNumberOfIntervals());
+        assertEquals(hours(16), calendar.getWorkingTimeBetween(at(0, 0), at(1, 0)));
+        assertEquals(hours(7), calendar.getWorkingTimeBetween(at(1, 0), at(2, 0)));
+    }
+
+    @Test
+    public final void shouldAddWorkingTime() {
+        // then
+        assertEquals(Long.valueOf(at(0, 6)), calendar.addWorkingTime(at(0, 0), 0L));
+        assertEquals(Long.valueOf(at(0, 8)), calendar.addWorkingTime(at(0, 0), hours(2)));
+        assertEquals(Long.valueOf(at(0, 22)), calendar.addWorkingTime(at(0, 7), hours(15)));
+        assertEquals(Long.valueOf(at(1, 7)), calendar.addWorkingTime(at(0, 7), hours(16)));
+        assertEquals(Long.valueOf(at(1, 14)), calendar.addWorkingTime(at(1, 6), hours(7)));
+        assertEquals(Long.valueOf(at(2, 7)), calendar.addWorkingTime(at(1, 6), hours(8)));
+    }
+
+    @Test
+    public final void shouldSubtractWorkingTime() {
+        // then
+        assertEquals(Long.valueOf(at(0, 14)), calendar.subtractWorkingTime(at(1, 0), hours(8)));
+        assertEquals(Long.valueOf(at(0, 22)), calendar.subtractWorkingTime(at(1, 5), 0L));
+        assertEquals(Long.valueOf(at(0, 21)), calendar.subtractWorkingTime(at(1, 7), hours(2)));
+        assertEquals(Long.valueOf(at(1, 6)), calendar.subtractWorkingTime(at(1, 14), hours(7)));
+        assertEquals(Long.valueOf(at(0, 6)), calendar.subtractWorkingTime(at(0, 7), hours(1)));
+    }
+
+    @Test
+    public final void shouldReturnNullWhenHorizonIsExceeded() {
+        // then
+        assertNull(calendar.addWorkingTime(at(6, 13), hours(2)));
+        assertNull(calendar.subtractWorkingTime(at(0, 7), hours(2)));
+        assertTrue(ShiftCalendar.empty().isEmpty());
+        assertNull(ShiftCalendar.empty().addWorkingTime(at(0, 0), 0L));
+    }
+
+}
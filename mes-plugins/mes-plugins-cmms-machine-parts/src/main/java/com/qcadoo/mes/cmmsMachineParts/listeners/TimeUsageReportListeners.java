@@ -21,7 +21,7 @@ public class TimeUsageReportListeners {
         form.performEvent(view, "save");
         Entity filterEntity = form.getPersistedEntityWithIncludedFormValues();
         if (workersPresent(filterEntity, view) && form.isValid()) {
-            view.redirectTo("/cmmsMachineParts/timeUsageReport.xls?filterId=" + filterEntity.getId(), true, false);
+            view.redirectTo("/cmmsMachineParts/timeUsageReport.xlsx?filterId=" + filterEntity.getId(), true, false);
         }
     }
 
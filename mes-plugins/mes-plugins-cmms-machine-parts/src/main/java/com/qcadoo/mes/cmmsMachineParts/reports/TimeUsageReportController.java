@@ -23,7 +23,13 @@ import com.qcadoo.model.api.Entity;
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    // the report was an .xls file before, links and bookmarks to it still lead to the report
     @RequestMapping(value = "/cmmsMachineParts/timeUsageReport.xls", method = RequestMethod.GET)
+    public ModelAndView redirectToXlsxReport(@RequestParam("filterId") final Long filterId) {
+        return new ModelAndView("redirect:/cmmsMachineParts/timeUsageReport.xlsx?filterId=" + filterId);
+    }
+
+    @RequestMapping(value = "/cmmsMachineParts/timeUsageReport.xlsx", method = RequestMethod.GET)
     public ModelAndView generatePlannedEventsReport(@RequestParam("filterId") final Long filterId) {
         DataDefinition dataDefinition = dataDefinitionService.get(CmmsMachinePartsConstants.PLUGIN_IDENTIFIER,
                 CmmsMachinePartsConstants.MODEL_TIME_USAGE_REPORT_FILTER);
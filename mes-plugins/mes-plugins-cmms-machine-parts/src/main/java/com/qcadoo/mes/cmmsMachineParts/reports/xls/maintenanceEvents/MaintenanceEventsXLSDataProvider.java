@@ -1,7 +1,7 @@
 package com.qcadoo.mes.cmmsMachineParts.reports.xls.maintenanceEvents;
 
-import com.google.common.base.Function;
-import com.google.common.collect.*;
+import com.qcadoo.mes.basic.print.xls.ReportCursorService;
+import com.qcadoo.mes.basic.print.xls.RowGroupCollector;
 import com.qcadoo.mes.cmmsMachineParts.constants.CmmsMachinePartsConstants;
 import com.qcadoo.mes.cmmsMachineParts.reports.xls.maintenanceEvents.dto.MachinePartDTO;
 import com.qcadoo.mes.cmmsMachineParts.reports.xls.maintenanceEvents.dto.MaintenanceEventDTO;
@@ -12,17 +12,18 @@ import com.qcadoo.model.api.Entity;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
-import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service public class MaintenanceEventsXLSDataProvider {
 
-    @Autowired private NamedParameterJdbcTemplate jdbcTemplate;
+    @Autowired private ReportCursorService reportCursorService;
 
     @Autowired private DataDefinitionService dataDefinitionService;
 
@@ -64,45 +65,22 @@ import java.util.stream.Collectors;
                     + "LEFT JOIN basic_faulttype faulttype ON maintenanceevent.faulttype_id = faulttype.id\n"
                     + "LEFT JOIN cmmsmachineparts_sourcecost sourcecost ON maintenanceevent.sourcecost_id = sourcecost.id\n";
 
-    private final static String ORDER_BY = " ORDER BY maintenanceevent.number";
+    private final static String ORDER_BY = " ORDER BY maintenanceevent.number, maintenanceevent.id";
 
-    public List<MaintenanceEventDTO> getEvents(final Map<String, Object> filters) {
-        List<MaintenanceEventDTO> events = Lists.newArrayList();
-        String _query = buildQuery(filters);
-        events = jdbcTemplate.query(_query, new BeanPropertyRowMapper(MaintenanceEventDTO.class));
-        List<MaintenanceEventDTO> finalEvents = processResults(events);
-        finalEvents.sort((e1, e2) -> e1.getNumber().compareTo(e2.getNumber()));
-        return finalEvents;
+    public void streamEvents(final Map<String, Object> filters, final Consumer<MaintenanceEventDTO> consumer) {
+        RowGroupCollector<Long, MaintenanceEventDTO> eventRows = new RowGroupCollector<>(MaintenanceEventDTO::getId,
+                subEvents -> consumer.accept(toEvent(subEvents)));
+        reportCursorService.query(buildQuery(filters), Collections.emptyMap(),
+                new BeanPropertyRowMapper<>(MaintenanceEventDTO.class), eventRows);
+        eventRows.flush();
     }
 
-    private List<MaintenanceEventDTO> processResults(List<MaintenanceEventDTO> events) {
-        Multimap<Long, MaintenanceEventDTO> eventsMap = ArrayListMultimap.create();
-        eventsMap = Multimaps.index(events, new Function<MaintenanceEventDTO, Long>() {
-
-            @Override public Long apply(MaintenanceEventDTO maintenanceEventDTO) {
-                return maintenanceEventDTO.getId();
-            }
-        });
-
-        Map<Long, MaintenanceEventDTO> _events = Maps.newHashMap();
-        for (Long eID : eventsMap.keySet()) {
-            _events.put(eID, eventsMap.get(eID).iterator().next());
-        }
-        List<MaintenanceEventDTO> finalEvents = Lists.newArrayList(_events.values());
-        for (MaintenanceEventDTO maintenanceEventDTO : finalEvents) {
-            List<MaintenanceEventDTO> _subEvents = Lists.newArrayList(eventsMap.get(maintenanceEventDTO.getId()));
-
-            List<WorkTimeDTO> workTimes = fillWorkTimes(_subEvents);
-            maintenanceEventDTO.setWorkTimes(workTimes);
-
-            List<MachinePartDTO> parts = fillParts(_subEvents);
-            maintenanceEventDTO.setMachineParts(parts);
-
-            List<StateChangeDTO> hists = fillHist(_subEvents);
-            maintenanceEventDTO.setStateChange(hists);
-
-        }
-        return finalEvents;
+    private MaintenanceEventDTO toEvent(final List<MaintenanceEventDTO> subEvents) {
+        MaintenanceEventDTO maintenanceEventDTO = subEvents.get(0);
+        maintenanceEventDTO.setWorkTimes(fillWorkTimes(subEvents));
+        maintenanceEventDTO.setMachineParts(fillParts(subEvents));
+        maintenanceEventDTO.setStateChange(fillHist(subEvents));
+        return maintenanceEventDTO;
     }
 
     private List<StateChangeDTO> fillHist(List<MaintenanceEventDTO> subEvents) {
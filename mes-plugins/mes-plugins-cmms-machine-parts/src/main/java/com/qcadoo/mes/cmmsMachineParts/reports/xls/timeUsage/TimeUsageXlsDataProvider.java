@@ -1,22 +1,28 @@
 package com.qcadoo.mes.cmmsMachineParts.reports.xls.timeUsage;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
 import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.print.xls.ReportCursorService;
+import com.qcadoo.mes.basic.print.xls.RowGroupCollector;
 import com.qcadoo.mes.cmmsMachineParts.constants.TimeUsageReportFilterFields;
 import com.qcadoo.mes.cmmsMachineParts.reports.xls.timeUsage.dto.TimeUsageDTO;
+import com.qcadoo.mes.cmmsMachineParts.reports.xls.timeUsage.dto.TimeUsageGroupDTO;
 
 @Service
 public class TimeUsageXlsDataProvider {
 
+    private static final String ORDER_BY = " ORDER BY worker, startdate, number";
+
     @Autowired
-    private NamedParameterJdbcTemplate jdbcTemplate;
+    private ReportCursorService reportCursorService;
 
     private final static String plannedEventQuery = "SELECT staff.surname || ' ' || staff.name AS worker, staff.id AS worker_id, 'planned' AS event_type,\n"
             + "realization.startdate,\n"
@@ -60,9 +66,18 @@ public class TimeUsageXlsDataProvider {
             + "LEFT JOIN basic_division division ON event.division_id=division.id\n"
             + "LEFT JOIN basic_factory factory ON event.factory_id=factory.id\n";
 
-    public List<TimeUsageDTO> getUsages(Map<String, Object> filters) {
-        String query = prepareQuery(filters, plannedEventQuery, maintenanceEventQuery);
-        return jdbcTemplate.query(query, filters, new TimeUsageRowMapper());
+    public void streamUsageGroups(final Map<String, Object> filters, final Consumer<TimeUsageGroupDTO> consumer) {
+        String query = prepareQuery(filters, plannedEventQuery, maintenanceEventQuery) + ORDER_BY;
+        RowGroupCollector<List<Object>, TimeUsageDTO> usageGroups = new RowGroupCollector<>(
+                usage -> Arrays.asList(usage.getWorker(), usage.getStartDate()),
+                usages -> consumer.accept(toGroup(usages)));
+        reportCursorService.query(query, filters, new TimeUsageRowMapper(), usageGroups);
+        usageGroups.flush();
+    }
+
+    private TimeUsageGroupDTO toGroup(final List<TimeUsageDTO> usages) {
+        TimeUsageDTO first = usages.get(0);
+        return new TimeUsageGroupDTO(first.getStartDate(), first.getWorker(), usages);
     }
 
     private String prepareQuery(Map<String, Object> filters, String plannedEventQueryPart, String maintenanceEventQueryPart) {
@@ -2,27 +2,20 @@ package com.qcadoo.mes.cmmsMachineParts.reports.xls.timeUsage;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.stream.Collectors;
 
-import org.apache.poi.hssf.usermodel.HSSFCell;
-import org.apache.poi.hssf.usermodel.HSSFCellStyle;
-import org.apache.poi.hssf.usermodel.HSSFFont;
-import org.apache.poi.hssf.usermodel.HSSFRow;
-import org.apache.poi.hssf.usermodel.HSSFSheet;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.Row;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import com.google.common.collect.Lists;
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.localization.api.utils.DateUtils;
+import com.qcadoo.mes.basic.print.xls.StreamingXlsxDocument;
+import com.qcadoo.mes.basic.print.xls.XlsRowWriter;
+import com.qcadoo.mes.basic.print.xls.XlsStyle;
 import com.qcadoo.mes.cmmsMachineParts.constants.PlannedEventFields;
 import com.qcadoo.mes.cmmsMachineParts.constants.PlannedEventType;
 import com.qcadoo.mes.cmmsMachineParts.plannedEvents.factory.EventFieldsForTypeFactory;
@@ -36,6 +29,8 @@ import com.qcadoo.security.constants.QcadooSecurityConstants;
 
 @Service public class TimeUsageXlsService {
 
+    private static final short HEADER_ROW_HEIGHT = 800;
+
     @Autowired private TranslationService translationService;
 
     @Autowired
@@ -50,116 +45,61 @@ import com.qcadoo.security.constants.QcadooSecurityConstants;
     @Autowired
     private EventFieldsForTypeFactory fieldsForTypeFactory;
 
-    private ReportStyleFactory reportStyleFactory;
-
     public String getReportTitle(final Locale locale) {
         return translationService.translate(TimeUsageXlsConstants.REPORT_TITLE, locale);
     }
 
-    public void buildExcelContent(final HSSFWorkbook workbook, final HSSFSheet sheet, Map<String, Object> filters,
-            final Locale locale) {
-        reportStyleFactory = new ReportStyleFactory(workbook);
-        List<TimeUsageDTO> usages = timeUsageXLSDataProvider.getUsages((Map<String, Object>) filters.get("filtersMap"));
-        updatePartsAndDescription(usages, locale);
-        fillHeaderData(workbook, sheet, 0, locale, (Map<String, Object>) filters.get("filtersMap"));
-        fillHeaderRow(workbook, sheet, 4, locale);
-        List<TimeUsageGroupDTO> timeUsageGroups = group(usages);
-        int rowCounter = 5;
-        for (TimeUsageGroupDTO timeUsageGroupDTO : timeUsageGroups) {
-            rowCounter = fillTimeUsageRows(workbook, sheet, timeUsageGroupDTO, rowCounter++, locale);
-        }
-        setColumnsWidths(sheet);
-    }
-
-    private void updatePartsAndDescription(List<TimeUsageDTO> usages, Locale locale) {
-        for (TimeUsageDTO usage : usages) {
-            if ("planned".equals(usage.getEventType())) {
-                PlannedEventType type = PlannedEventType.parseString(usage.getType());
-                FieldsForType fields = fieldsForTypeFactory.createFieldsForType(type);
-                if (fields.getHiddenTabs().contains(PlannedEventFields.MACHINE_PARTS_TAB)) {
-                    String notApplicable = translationService.translate("cmmsMachineParts.timeUsageReport.na", locale);
-                    usage.setParts(notApplicable);
-                }
-                if (fields.getHiddenTabs().contains(PlannedEventFields.SOLUTION_DESCRIPTION_TAB)) {
-                    String notApplicable = translationService.translate("cmmsMachineParts.timeUsageReport.na", locale);
-                    usage.setDescription(notApplicable);
-                }
+    public void buildExcelContent(final StreamingXlsxDocument document, Map<String, Object> filters, final Locale locale) {
+        Map<String, Object> filtersMap = (Map<String, Object>) filters.get("filtersMap");
+        XlsRowWriter writer = document.createSheet(getReportTitle(locale));
+        setColumnsWidths(writer);
+        fillHeaderData(writer, locale, filtersMap);
+        writer.skipRows(1);
+        fillHeaderRow(writer, locale);
+        timeUsageXLSDataProvider.streamUsageGroups(filtersMap,
+                writer.feed((rowWriter, timeUsageGroup) -> fillTimeUsageRows(rowWriter, timeUsageGroup, locale)));
+    }
+
+    private void updatePartsAndDescription(TimeUsageDTO usage, Locale locale) {
+        if ("planned".equals(usage.getEventType())) {
+            PlannedEventType type = PlannedEventType.parseString(usage.getType());
+            FieldsForType fields = fieldsForTypeFactory.createFieldsForType(type);
+            if (fields.getHiddenTabs().contains(PlannedEventFields.MACHINE_PARTS_TAB)) {
+                String notApplicable = translationService.translate("cmmsMachineParts.timeUsageReport.na", locale);
+                usage.setParts(notApplicable);
             }
-        }
-    }
-
-    private void setColumnsWidths(HSSFSheet sheet) {
-        sheet.setColumnWidth(0, 5000);
-        sheet.setColumnWidth(1, 3500);
-        sheet.setColumnWidth(2, 3500);
-        sheet.setColumnWidth(3, 4000);
-        sheet.setColumnWidth(4, 4000);
-        sheet.setColumnWidth(5, 2500);
-        sheet.setColumnWidth(6, 5000);
-        sheet.setColumnWidth(7, 5000);
-        sheet.setColumnWidth(8, 4000);
-        sheet.setColumnWidth(9, 4000);
-        sheet.setColumnWidth(10, 4500);
-        sheet.setColumnWidth(11, 5000);
-    }
-
-    private List<TimeUsageGroupDTO> group(List<TimeUsageDTO> usages) {
-        List<TimeUsageGroupDTO> groups = Lists.newLinkedList();
-        Map<String, List<TimeUsageDTO>> workerMap = usages.stream().collect(Collectors.groupingBy(TimeUsageDTO::getWorker));
-        for (Entry<String, List<TimeUsageDTO>> entry : workerMap.entrySet()) {
-            Map<Date, List<TimeUsageDTO>> dateMap = entry.getValue().stream()
-                    .collect(Collectors.groupingBy(TimeUsageDTO::getStartDate));
-            for (Date date : dateMap.keySet()) {
-                TimeUsageGroupDTO timeUsageGroup = new TimeUsageGroupDTO(date, entry.getKey(), dateMap.get(date));
-                groups.add(timeUsageGroup);
+            if (fields.getHiddenTabs().contains(PlannedEventFields.SOLUTION_DESCRIPTION_TAB)) {
+                String notApplicable = translationService.translate("cmmsMachineParts.timeUsageReport.na", locale);
+                usage.setDescription(notApplicable);
             }
         }
-        return groups.stream().sorted((g1, g2) -> {
-            if (g1.getWorker().equals(g2.getWorker())) {
-                return g1.getDate().compareTo(g2.getDate());
-            } else {
-                return g1.getWorker().compareTo(g2.getWorker());
-            }
-        }).collect(Collectors.toList());
     }
 
-    private void fillHeaderData(final HSSFWorkbook workbook, final HSSFSheet sheet, Integer rowNum, final Locale locale,
-            Map<String, Object> filters) {
-        Font font = workbook.createFont();
-        font.setFontName(HSSFFont.FONT_ARIAL);
-        font.setFontHeightInPoints((short) 10);
-        font.setBoldweight(Font.BOLDWEIGHT_BOLD);
-        HSSFCellStyle style = workbook.createCellStyle();
-        style.setFont(font);
+    private void setColumnsWidths(XlsRowWriter writer) {
+        writer.setColumnWidths(5000, 3500, 3500, 4000, 4000, 2500, 5000, 5000, 4000, 4000, 4500, 5000);
+    }
 
-        HSSFRow titleRow = sheet.createRow(0);
-        HSSFCell titleCell = titleRow.createCell(0);
-        titleCell.setCellValue(translationService.translate("cmmsMachineParts.timeUsageReport.report.title", locale));
-        titleCell.setCellStyle(style);
+    private void fillHeaderData(final XlsRowWriter writer, final Locale locale, Map<String, Object> filters) {
+        Row titleRow = writer.nextRow();
+        writer.writeCell(titleRow, 0, translationService.translate("cmmsMachineParts.timeUsageReport.report.title", locale),
+                XlsStyle.BOLD);
 
-        HSSFRow datesRow = sheet.createRow(1);
-        HSSFCell startingFromLabelCell = datesRow.createCell(0);
-        startingFromLabelCell.setCellValue(translationService.translate("cmmsMachineParts.timeUsageReport.report.startingFrom",
-                locale));
-        startingFromLabelCell.setCellStyle(style);
+        Row datesRow = writer.nextRow();
+        writer.writeCell(datesRow, 0,
+                translationService.translate("cmmsMachineParts.timeUsageReport.report.startingFrom", locale), XlsStyle.BOLD);
         if (filters.containsKey("fromDate")) {
-            HSSFCell startingFromCell = datesRow.createCell(1);
-            startingFromCell.setCellValue(getDateOnly((Date) filters.get("fromDate")));
+            writer.writeCell(datesRow, 1, getDateOnly((Date) filters.get("fromDate")), XlsStyle.DEFAULT);
         }
-        HSSFCell toLabelCell = datesRow.createCell(2);
-        toLabelCell.setCellValue(translationService.translate("cmmsMachineParts.timeUsageReport.report.to", locale));
-        toLabelCell.setCellStyle(style);
+        writer.writeCell(datesRow, 2, translationService.translate("cmmsMachineParts.timeUsageReport.report.to", locale),
+                XlsStyle.BOLD);
         if (filters.containsKey("toDate")) {
-            HSSFCell toCell = datesRow.createCell(3);
-            toCell.setCellValue(getDateOnly((Date) filters.get("toDate")));
+            writer.writeCell(datesRow, 3, getDateOnly((Date) filters.get("toDate")), XlsStyle.DEFAULT);
         }
 
-        HSSFRow authorRow = sheet.createRow(2);
-        HSSFCell authorLabelCell = authorRow.createCell(0);
-        authorLabelCell.setCellValue(translationService.translate("cmmsMachineParts.timeUsageReport.report.generatedBy", locale));
-        authorLabelCell.setCellStyle(style);
-        HSSFCell authorCell = authorRow.createCell(1);
-        authorCell.setCellValue(getUserString());
+        Row authorRow = writer.nextRow();
+        writer.writeCell(authorRow, 0,
+                translationService.translate("cmmsMachineParts.timeUsageReport.report.generatedBy", locale), XlsStyle.BOLD);
+        writer.writeCell(authorRow, 1, getUserString(), XlsStyle.DEFAULT);
     }
 
     private String getUserString() {
@@ -174,114 +114,64 @@ import com.qcadoo.security.constants.QcadooSecurityConstants;
         return builder.toString();
     }
 
-    private void fillHeaderRow(final HSSFWorkbook workbook, final HSSFSheet sheet, Integer rowNum, final Locale locale) {
-        HSSFRow headerLine = sheet.createRow(rowNum);
-        headerLine.setHeight((short) 800);
-        Font font = workbook.createFont();
-        font.setFontName(HSSFFont.FONT_ARIAL);
-        font.setFontHeightInPoints((short) 10);
-        font.setBoldweight(Font.BOLDWEIGHT_NORMAL);
-        HSSFCellStyle style = workbook.createCellStyle();
-        style.setFont(font);
-        style.setBorderBottom(HSSFCellStyle.BORDER_THIN);
-        style.setBorderTop(HSSFCellStyle.BORDER_THIN);
-        style.setBorderLeft(HSSFCellStyle.BORDER_THIN);
-        style.setBorderRight(HSSFCellStyle.BORDER_THIN);
-        style.setFillPattern(HSSFCellStyle.SOLID_FOREGROUND);
-        style.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
-        style.setWrapText(true);
-        style.setAlignment(HSSFCellStyle.ALIGN_CENTER);
-        style.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
+    private void fillHeaderRow(final XlsRowWriter writer, final Locale locale) {
+        Row headerLine = writer.nextRow();
+        headerLine.setHeight(HEADER_ROW_HEIGHT);
 
         int colNumber = 0;
         for (String column : TimeUsageXlsConstants.ALL_COLUMNS) {
-            HSSFCell headerCell = headerLine.createCell(colNumber);
-            headerCell.setCellValue(translationService.translate(column, locale));
-            headerCell.setCellStyle(style);
+            writer.writeCell(headerLine, colNumber, translationService.translate(column, locale), XlsStyle.HEADER);
             colNumber++;
         }
     }
 
-    private int fillTimeUsageRows(final HSSFWorkbook workbook, final HSSFSheet sheet, final TimeUsageGroupDTO timeUsage,
-            int rowCounter, final Locale locale) {
-        Font font = workbook.createFont();
-        font.setFontName(HSSFFont.FONT_ARIAL);
-        font.setFontHeightInPoints((short) 10);
-        font.setBoldweight(Font.BOLDWEIGHT_NORMAL);
-
-        int usagesCounter = 0;
+    private void fillTimeUsageRows(final XlsRowWriter writer, final TimeUsageGroupDTO timeUsage, final Locale locale) {
+        boolean isFirst = true;
 
         for (TimeUsageDTO usage : timeUsage.getTimeUsages()) {
-            HSSFRow usageRow = sheet.createRow(rowCounter + usagesCounter);
-            boolean isFirst = usagesCounter == 0;
-            HSSFCellStyle style = getLeftAlignedStyle(workbook, isFirst, usage);
-            HSSFCellStyle styleRight = getRightAlignedStyle(workbook, isFirst, usage);
-            addNewRow(usageRow, usage, locale, style, styleRight);
+            updatePartsAndDescription(usage, locale);
+            Row usageRow = writer.nextRow();
+            XlsStyle style = getStyle(isFirst, usage);
+            XlsStyle styleRight = style.withAlignment(CellStyle.ALIGN_RIGHT);
+            addNewRow(writer, usageRow, usage, locale, style, styleRight);
             if (isFirst) {
-                addNewCell(usageRow, timeUsage.getDurationSum().toString(), 10, styleRight, true);
-                addNewCell(usageRow, timeUsage.getRegisteredTimeSum().toString(), 11, styleRight, true);
+                writer.writeCell(usageRow, 10, timeUsage.getDurationSum(), styleRight);
+                writer.writeCell(usageRow, 11, timeUsage.getRegisteredTimeSum(), styleRight);
             } else {
-                addNewCell(usageRow, "", 10, styleRight, false);
-                addNewCell(usageRow, "", 11, styleRight, false);
+                writer.writeCell(usageRow, 10, "", styleRight);
+                writer.writeCell(usageRow, 11, "", styleRight);
             }
-            ++usagesCounter;
+            isFirst = false;
         }
-
-        return rowCounter + usagesCounter;
-    }
-
-    private void addNewRow(HSSFRow usageRow, TimeUsageDTO timeUsage, Locale locale, HSSFCellStyle style,
-            HSSFCellStyle styleAlignRight) {
-        addNewCell(usageRow, timeUsage.getWorker(), 0, style, false);
-        addNewCell(usageRow, getDateOnly(timeUsage.getStartDate()), 1, styleAlignRight, false);
-        addNewCell(usageRow, timeUsage.getNumber(), 2, style, false);
-        addNewCell(usageRow, translationService.translate(timeUsage.getType(), locale), 3, style, false);
-        addNewCell(usageRow, translationService.translate(timeUsage.getState(), locale), 4, style, false);
-        addNewCell(usageRow, timeUsage.getObject(), 5, style, false);
-        addNewCell(usageRow, timeUsage.getParts(), 6, style, false);
-        addNewCell(usageRow, timeUsage.getDescription(), 7, style, false);
-        addNewCell(usageRow, timeUsage.getDuration().toString(), 8, styleAlignRight, true);
-        addNewCell(usageRow, timeUsage.getRegisteredTime().toString(), 9, styleAlignRight, true);
     }
 
-    private void addNewCell(HSSFRow row, String value, int column, HSSFCellStyle style, boolean numeric) {
-        HSSFCell cell = row.createCell(column);
-        cell.setCellStyle(style);
-        if(numeric){
-            cell.setCellType(Cell.CELL_TYPE_NUMERIC);
-            cell.setCellValue(Integer.valueOf(value));
-        } else {
-            cell.setCellValue(value);
-        }
-
-
-    }
-
-    private HSSFCellStyle getStyle(final HSSFWorkbook workbook, boolean isFirst, TimeUsageDTO usage, boolean isLeft) {
-        reportStyleFactory.setFirst(isFirst);
-        if (isLeft) {
-            reportStyleFactory.setLeftAligned();
-        } else {
-            reportStyleFactory.setRightAligned();
+    private void addNewRow(XlsRowWriter writer, Row usageRow, TimeUsageDTO timeUsage, Locale locale, XlsStyle style,
+            XlsStyle styleAlignRight) {
+        writer.writeCell(usageRow, 0, timeUsage.getWorker(), style);
+        writer.writeCell(usageRow, 1, getDateOnly(timeUsage.getStartDate()), styleAlignRight);
+        writer.writeCell(usageRow, 2, timeUsage.getNumber(), style);
+        writer.writeCell(usageRow, 3, translationService.translate(timeUsage.getType(), locale), style);
+        writer.writeCell(usageRow, 4, translationService.translate(timeUsage.getState(), locale), style);
+        writer.writeCell(usageRow, 5, timeUsage.getObject(), style);
+        writer.writeCell(usageRow, 6, timeUsage.getParts(), style);
+        writer.writeCell(usageRow, 7, timeUsage.getDescription(), style);
+        writer.writeCell(usageRow, 8, timeUsage.getDuration(), styleAlignRight);
+        writer.writeCell(usageRow, 9, timeUsage.getRegisteredTime(), styleAlignRight);
+    }
+
+    private XlsStyle getStyle(boolean isFirst, TimeUsageDTO usage) {
+        XlsStyle style = XlsStyle.DEFAULT;
+        if (isFirst) {
+            style = style.withTopBorder();
         }
         if ("maintenance".equals(usage.getEventType())) {
             if (usage.getRegisteredTime() - 5 <= usage.getDuration() && usage.getDuration() <= usage.getRegisteredTime() + 15) {
-                reportStyleFactory.setGreen();
+                style = style.withFill(IndexedColors.LIME.getIndex());
             } else {
-                reportStyleFactory.setRed();
+                style = style.withFill(IndexedColors.RED.getIndex());
             }
-        } else {
-            reportStyleFactory.setWhite();
         }
-        return reportStyleFactory.getStyle();
-    }
-
-    private HSSFCellStyle getRightAlignedStyle(final HSSFWorkbook workbook, boolean isFirst, TimeUsageDTO usage) {
-        return getStyle(workbook, isFirst, usage, false);
-    }
-
-    private HSSFCellStyle getLeftAlignedStyle(final HSSFWorkbook workbook, boolean isFirst, TimeUsageDTO usage) {
-        return getStyle(workbook, isFirst, usage, true);
+        return style;
     }
 
     private String getDateValue(Date date) {
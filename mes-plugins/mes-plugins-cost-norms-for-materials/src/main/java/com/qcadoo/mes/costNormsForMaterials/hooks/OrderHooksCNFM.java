@@ -30,6 +30,8 @@ import org.springframework.stereotype.Service;
 
 import com.qcadoo.mes.costNormsForMaterials.constants.OrderFieldsCNFM;
 import com.qcadoo.mes.costNormsForMaterials.orderRawMaterialCosts.OrderMaterialsCostDataGenerator;
+import com.qcadoo.mes.orders.OrderChanges;
+import com.qcadoo.mes.orders.OrderPreviousStateService;
 import com.qcadoo.mes.orders.constants.OrderFields;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
@@ -40,16 +42,14 @@ public class OrderHooksCNFM {
     @Autowired
     private OrderMaterialsCostDataGenerator orderMaterialsCostDataGenerator;
 
+    @Autowired
+    private OrderPreviousStateService orderPreviousStateService;
+
     public void fillOrderOperationProductsInComponents(final DataDefinition orderDD, final Entity order) {
         Entity technology = order.getBelongsToField(OrderFields.TECHNOLOGY);
         if (technology != null) {
-            boolean shouldUpdate;
-            if (order.getId() != null) {
-                Entity orderFromDb = orderDD.get(order.getId());
-                shouldUpdate = orderFromDb.getBelongsToField(OrderFields.TECHNOLOGY) == null;
-            } else {
-                shouldUpdate = true;
-            }
+            OrderChanges orderChanges = orderPreviousStateService.getChanges(orderDD, order);
+            boolean shouldUpdate = orderChanges.isNew() || (orderChanges.getOldValue(OrderFields.TECHNOLOGY) == null);
             if (shouldUpdate) {
                 List<Entity> orderMaterialsCosts = orderMaterialsCostDataGenerator.generateUpdatedMaterialsListFor(order);
                 order.setField(OrderFieldsCNFM.TECHNOLOGY_INST_OPER_PRODUCT_IN_COMPS, orderMaterialsCosts);
@@ -0,0 +1,153 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.deliveries;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.deliveries.constants.DeliveryFields;
+import com.qcadoo.mes.deliveries.constants.OrderedProductFields;
+import com.qcadoo.mes.deliveries.states.constants.DeliveryStateStringValues;
+import com.qcadoo.mes.materialFlowResources.service.WarehouseStockService;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Keeps ordered quantities of resource stocks in sync with deliveries and their ordered products.
+ */
+@Service
+public class OrderedQuantityStockService {
+
+    private static final Set<String> ORDERED_STATES = ImmutableSet.of(DeliveryStateStringValues.DRAFT,
+            DeliveryStateStringValues.PREPARED, DeliveryStateStringValues.DURING_CORRECTION, DeliveryStateStringValues.APPROVED);
+
+    @Autowired
+    private WarehouseStockService warehouseStockService;
+
+    public void updateForDelivery(final DataDefinition deliveryDD, final Entity delivery) {
+        if (delivery.getId() == null) {
+            return;
+        }
+
+        Entity deliveryFromDB = deliveryDD.get(delivery.getId());
+
+        Long oldLocationId = getOrderedLocationId(deliveryFromDB);
+        Long newLocationId = getOrderedLocationId(delivery);
+
+        if (Objects.equals(oldLocationId, newLocationId)) {
+            return;
+        }
+
+        for (Map.Entry<Long, BigDecimal> orderedQuantity : getOrderedQuantitiesByProduct(deliveryFromDB).entrySet()) {
+            warehouseStockService.updateOrderedQuantity(oldLocationId, orderedQuantity.getKey(), delivery.getId(), null,
+                    BigDecimal.ZERO);
+            warehouseStockService.updateOrderedQuantity(newLocationId, orderedQuantity.getKey(), delivery.getId(), null,
+                    orderedQuantity.getValue());
+        }
+    }
+
+    public void updateForDeletedDelivery(final Entity delivery) {
+        Long locationId = getOrderedLocationId(delivery);
+
+        if (locationId == null) {
+            return;
+        }
+
+        for (Long productId : getOrderedQuantitiesByProduct(delivery).keySet()) {
+            warehouseStockService.updateOrderedQuantity(locationId, productId, delivery.getId(), null, BigDecimal.ZERO);
+        }
+    }
+
+    public void updateForOrderedProduct(final DataDefinition orderedProductDD, final Entity orderedProduct) {
+        Long locationId = getOrderedLocationId(orderedProduct.getBelongsToField(OrderedProductFields.DELIVERY));
+        Long productId = getProductId(orderedProduct);
+
+        if (orderedProduct.getId() != null) {
+            Entity orderedProductFromDB = orderedProductDD.get(orderedProduct.getId());
+
+            Long oldLocationId = getOrderedLocationId(orderedProductFromDB.getBelongsToField(OrderedProductFields.DELIVERY));
+            Long oldProductId = getProductId(orderedProductFromDB);
+
+            if (!Objects.equals(oldLocationId, locationId) || !Objects.equals(oldProductId, productId)) {
+                warehouseStockService.updateOrderedQuantity(oldLocationId, oldProductId, null, orderedProduct.getId(),
+                        BigDecimal.ZERO);
+            }
+        }
+
+        warehouseStockService.updateOrderedQuantity(locationId, productId, null, orderedProduct.getId(),
+                getOrderedQuantity(orderedProduct));
+    }
+
+    public void updateForDeletedOrderedProduct(final Entity orderedProduct) {
+        warehouseStockService.updateOrderedQuantity(
+                getOrderedLocationId(orderedProduct.getBelongsToField(OrderedProductFields.DELIVERY)),
+                getProductId(orderedProduct), null, orderedProduct.getId(), BigDecimal.ZERO);
+    }
+
+    private Map<Long, BigDecimal> getOrderedQuantitiesByProduct(final Entity delivery) {
+        Map<Long, BigDecimal> orderedQuantities = Maps.newHashMap();
+
+        for (Entity orderedProduct : delivery.getHasManyField(DeliveryFields.ORDERED_PRODUCTS)) {
+            orderedQuantities.merge(getProductId(orderedProduct), getOrderedQuantity(orderedProduct), BigDecimal::add);
+        }
+
+        return orderedQuantities;
+    }
+
+    private Long getOrderedLocationId(final Entity delivery) {
+        if (delivery == null || !ORDERED_STATES.contains(delivery.getStringField(DeliveryFields.STATE))) {
+            return null;
+        }
+
+        Object active = delivery.getField(DeliveryFields.ACTIVE);
+
+        if (active != null && !delivery.getBooleanField(DeliveryFields.ACTIVE)) {
+            return null;
+        }
+
+        Entity location = delivery.getBelongsToField(DeliveryFields.LOCATION);
+
+        return location == null ? null : location.getId();
+    }
+
+    private Long getProductId(final Entity orderedProduct) {
+        Entity product = orderedProduct.getBelongsToField(OrderedProductFields.PRODUCT);
+
+        return product == null ? null : product.getId();
+    }
+
+    private BigDecimal getOrderedQuantity(final Entity orderedProduct) {
+        BigDecimal orderedQuantity = orderedProduct.getDecimalField(OrderedProductFields.ORDERED_QUANTITY);
+
+        return orderedQuantity == null ? BigDecimal.ZERO : orderedQuantity;
+    }
+
+}
@@ -1,21 +1,32 @@
 package com.qcadoo.mes.deliveries;
 
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
 import com.qcadoo.mes.deliveries.constants.*;
 import com.qcadoo.mes.materialFlow.constants.LocationFields;
 import com.qcadoo.model.api.*;
+import com.qcadoo.model.api.search.JoinType;
 import com.qcadoo.model.api.search.SearchCriteriaBuilder;
 import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.model.api.search.SearchOrders;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.plugin.api.PluginUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 @Service
 public class ReservationService {
@@ -24,39 +35,59 @@ public class ReservationService {
     
     public static final String OPERATION = "operation";
 
+    private static final String L_SUPPLY_NEGOTIATIONS = "supplyNegotiations";
+
+    private static final String L_TECH_SUBCONTR_FOR_DELIVERIES = "techSubcontrForDeliveries";
+
+    private static final String L_ID = "id";
+
+    private static final String L_DOT_ID = ".id";
+
+    private static final String L_DELIVERY_ID = "deliveryId";
+
+    private static final String L_DELIVERED_PRODUCT_ID = "deliveredProductId";
+
+    private static final String L_LOCATION_ID = "locationId";
+
+    private static final String L_DELIVERED_QUANTITY = "deliveredQuantity";
+
+    private static final String L_ADDITIONAL_QUANTITY = "additionalQuantity";
+
+    private static final String DELETE_DELIVERY_RESERVATIONS_QUERY = "DELETE FROM deliveries_deliveredproductreservation "
+            + "WHERE deliveredproduct_id IN (SELECT id FROM deliveries_deliveredproduct WHERE delivery_id = :deliveryId)";
+
+    private static final String INSERT_RESERVATION_QUERY = "INSERT INTO deliveries_deliveredproductreservation "
+            + "(deliveredproduct_id, location_id, deliveredquantity, additionalquantity) "
+            + "VALUES (:deliveredProductId, :locationId, :deliveredQuantity, :additionalQuantity)";
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
     public Entity createDefaultReservationsForDeliveredProduct(Entity deliveredProduct) {
+        return createDefaultReservationsForDeliveredProduct(deliveredProduct, PluginUtils.isEnabled(L_SUPPLY_NEGOTIATIONS),
+                PluginUtils.isEnabled(L_TECH_SUBCONTR_FOR_DELIVERIES));
+    }
+
+    Entity createDefaultReservationsForDeliveredProduct(final Entity deliveredProduct, final boolean offersEnabled,
+            final boolean operationsEnabled) {
         Entity product = deliveredProduct.getBelongsToField(DeliveredProductFields.PRODUCT);
         if (product != null && !deliveredProduct.getBooleanField(DeliveredProductFields.IS_WASTE)) {
             List<Entity> deliveredProductReservations = new ArrayList<>();
 
-            Entity orderedProductForProduct = findOrderedProductForProduct(deliveredProduct);
-            List<Entity> presentDeliveredProductForProductReservations = findPresentDeliveredProductForProductReservations(
-                    deliveredProduct);
+            Entity orderedProductForProduct = findOrderedProductForProduct(deliveredProduct, offersEnabled, operationsEnabled);
 
             if (orderedProductForProduct != null) {
-                EntityList reservationsFromOrderedProduct = orderedProductForProduct
-                        .getHasManyField(OrderedProductFields.RESERVATIONS);
-
-                BigDecimal damagedQuantity = deliveredProduct.getDecimalField(DeliveredProductFields.DAMAGED_QUANTITY);
-                damagedQuantity = damagedQuantity == null ? BigDecimal.ZERO : damagedQuantity;
-
-                BigDecimal availableQuantity = deliveredProduct.getDecimalField(DeliveredProductFields.DELIVERED_QUANTITY);
-                availableQuantity = availableQuantity == null ? BigDecimal.ZERO : availableQuantity;
-                availableQuantity = availableQuantity.subtract(damagedQuantity);
-
-                for (Entity reservationFromOrderedProduct : reservationsFromOrderedProduct) {
-                    Optional<Entity> maybeDeliveredProductReservation = createDeliveredProductReservation(availableQuantity,
-                            deliveredProduct, reservationFromOrderedProduct, presentDeliveredProductForProductReservations);
-                    if (maybeDeliveredProductReservation.isPresent()) {
-                        Entity deliveredProductReservation = maybeDeliveredProductReservation.get();
-                        deliveredProductReservations.add(deliveredProductReservation);
-                        presentDeliveredProductForProductReservations.add(deliveredProductReservation);
-                        availableQuantity = availableQuantity.subtract(deliveredProductReservation
-                                .getDecimalField(DeliveredProductReservationFields.DELIVERED_QUANTITY));
-                    }
+                Entity delivery = deliveredProduct.getBelongsToField(DeliveredProductFields.DELIVERY);
+                Map<List<Long>, BigDecimal> reservedQuantities = getReservedQuantities(deliveredProduct, offersEnabled);
+
+                for (DefaultReservation reservation : distributeDeliveredProduct(
+                        delivery.getBelongsToField(DeliveryFields.LOCATION), deliveredProduct,
+                        orderedProductForProduct.getHasManyField(OrderedProductFields.RESERVATIONS), reservedQuantities,
+                        offersEnabled)) {
+                    deliveredProductReservations.add(createDeliveredProductReservation(deliveredProduct, reservation));
                 }
             }
             deliveredProduct.setField(DeliveredProductFields.RESERVATIONS, deliveredProductReservations);
@@ -65,58 +96,186 @@ public class ReservationService {
         return deliveredProduct;
     }
 
-    private Optional<Entity> createDeliveredProductReservation(BigDecimal availableQuantity, final Entity deliveredProduct,
-            final Entity reservationFromOrderedProduct, List<Entity> presentDeliveredProductForProductReservations) {
-        Entity location = reservationFromOrderedProduct.getBelongsToField(OrderedProductReservationFields.LOCATION);
-        List<Entity> reservationsFromLocation = filterReservationsByLocation(presentDeliveredProductForProductReservations,
-                location);
-
-        BigDecimal orderedQuantity = reservationFromOrderedProduct.getDecimalField(OrderedProductFields.ORDERED_QUANTITY);
-        BigDecimal deliveredQuantity = sumQuantityFromReservations(reservationsFromLocation,
-                DeliveredProductReservationFields.DELIVERED_QUANTITY);
-        BigDecimal requestQuantity = orderedQuantity.subtract(deliveredQuantity);
-        BigDecimal currentDeliveredQuantity = requestQuantity.compareTo(BigDecimal.ZERO) <= 0 ? BigDecimal.ZERO
-                : requestQuantity.min(availableQuantity);
-
-        BigDecimal conversion = deliveredProduct.getDecimalField(DeliveredProductFields.CONVERSION);
-        if (conversion == null) {
-            return Optional.empty();
-        }
-        BigDecimal currentDeliveredAdditionalQuantity = currentDeliveredQuantity.multiply(conversion);
-
-        if (currentDeliveredQuantity.compareTo(BigDecimal.ZERO) <= 0
-                || currentDeliveredAdditionalQuantity.compareTo(BigDecimal.ZERO) <= 0) {
-            return Optional.empty();
-        }
+    private Entity createDeliveredProductReservation(final Entity deliveredProduct, final DefaultReservation reservation) {
+        Entity reservationFromOrderedProduct = reservation.getOrderedProductReservation();
 
-        DataDefinition deliveredProductReservationDD = getDeliveredProductReservationDD();
-        Entity deliveredProductReservation = deliveredProductReservationDD.create();
+        Entity deliveredProductReservation = getDeliveredProductReservationDD().create();
         deliveredProductReservation.setField(DeliveredProductReservationFields.ADDITIONAL_QUANTITY,
-                currentDeliveredAdditionalQuantity);
+                reservation.getAdditionalQuantity());
         deliveredProductReservation.setField(DeliveredProductReservationFields.ADDITIONAL_QUANTITY_UNIT,
                 reservationFromOrderedProduct.getStringField(OrderedProductReservationFields.ADDITIONAL_QUANTITY_UNIT));
         deliveredProductReservation.setField(DeliveredProductReservationFields.DELIVERED_PRODUCT, deliveredProduct);
-        deliveredProductReservation.setField(DeliveredProductReservationFields.DELIVERED_QUANTITY, currentDeliveredQuantity);
+        deliveredProductReservation.setField(DeliveredProductReservationFields.DELIVERED_QUANTITY,
+                reservation.getDeliveredQuantity());
         deliveredProductReservation.setField(DeliveredProductReservationFields.DELIVERED_QUANTITY_UNIT,
                 reservationFromOrderedProduct.getStringField(OrderedProductReservationFields.ORDERED_QUANTITY_UNIT));
-        deliveredProductReservation.setField(DeliveredProductReservationFields.LOCATION, location);
+        deliveredProductReservation.setField(DeliveredProductReservationFields.LOCATION,
+                reservationFromOrderedProduct.getBelongsToField(OrderedProductReservationFields.LOCATION));
 
-        return Optional.of(deliveredProductReservation);
+        return deliveredProductReservation;
     }
 
-    public void recalculateReservationsForDelivery(Long deliveryId) {
-        SearchCriterion criterion = SearchRestrictions.eq(DeliveredProductFields.DELIVERY + ".id", deliveryId);
-        DataDefinition deliveredProductDD = getDeliveredProductDD();
+    /**
+     * Recreates default reservations of all delivered products of given delivery. Reservations are removed with one statement,
+     * ordered products and their reservations are loaded with two queries and new reservations are inserted in one batch.
+     */
+    @Transactional
+    public void recalculateReservationsForDelivery(final Long deliveryId) {
+        Entity delivery = dataDefinitionService.get(DeliveriesConstants.PLUGIN_IDENTIFIER, DeliveriesConstants.MODEL_DELIVERY)
+                .get(deliveryId);
+
+        jdbcTemplate.update(DELETE_DELIVERY_RESERVATIONS_QUERY, Collections.singletonMap(L_DELIVERY_ID, deliveryId));
+
+        List<Entity> deliveredProducts = getDeliveredProductDD().find()
+                .add(SearchRestrictions.eq(DeliveredProductFields.DELIVERY + L_DOT_ID, deliveryId))
+                .addOrder(SearchOrders.asc(L_ID)).list().getEntities();
+        List<Entity> orderedProducts = dataDefinitionService
+                .get(DeliveriesConstants.PLUGIN_IDENTIFIER, DeliveriesConstants.MODEL_ORDERED_PRODUCT).find()
+                .add(SearchRestrictions.eq(OrderedProductFields.DELIVERY + L_DOT_ID, deliveryId)).addOrder(SearchOrders.asc(L_ID))
+                .list().getEntities();
+
+        List<SqlParameterSource> reservations = distributeReservations(delivery, deliveredProducts, orderedProducts,
+                getOrderedProductReservations(deliveryId), PluginUtils.isEnabled(L_SUPPLY_NEGOTIATIONS),
+                PluginUtils.isEnabled(L_TECH_SUBCONTR_FOR_DELIVERIES));
+
+        if (!reservations.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_RESERVATION_QUERY, reservations.toArray(new SqlParameterSource[reservations.size()]));
+        }
+    }
+
+    private ListMultimap<Long, Entity> getOrderedProductReservations(final Long deliveryId) {
+        List<Entity> orderedProductReservations = dataDefinitionService
+                .get(DeliveriesConstants.PLUGIN_IDENTIFIER, DeliveriesConstants.MODEL_ORDERED_PRODUCT_RESERVATION).find()
+                .createAlias(OrderedProductReservationFields.ORDERED_PRODUCT, OrderedProductReservationFields.ORDERED_PRODUCT,
+                        JoinType.INNER)
+                .add(SearchRestrictions.eq(OrderedProductReservationFields.ORDERED_PRODUCT + "." + OrderedProductFields.DELIVERY
+                        + L_DOT_ID, deliveryId)).addOrder(SearchOrders.asc(L_ID)).list().getEntities();
+
+        ListMultimap<Long, Entity> orderedProductReservationsByOrderedProduct = ArrayListMultimap.create();
+        for (Entity orderedProductReservation : orderedProductReservations) {
+            orderedProductReservationsByOrderedProduct.put(
+                    orderedProductReservation.getBelongsToField(OrderedProductReservationFields.ORDERED_PRODUCT).getId(),
+                    orderedProductReservation);
+        }
+
+        return orderedProductReservationsByOrderedProduct;
+    }
 
-        List<Entity> deliveredProducts = deliveredProductDD.find().add(criterion).list().getEntities();
+    /**
+     * Distributes quantities of delivered products among reservations of matching ordered products, following the same rules as
+     * {@link #createDefaultReservationsForDeliveredProduct(Entity)} with delivered products processed in given order and no
+     * reservations present before.
+     */
+    List<SqlParameterSource> distributeReservations(final Entity delivery, final List<Entity> deliveredProducts,
+            final List<Entity> orderedProducts, final ListMultimap<Long, Entity> orderedProductReservations,
+            final boolean offersEnabled, final boolean operationsEnabled) {
+        List<SqlParameterSource> reservations = new ArrayList<>();
+        Map<List<Long>, BigDecimal> reservedQuantities = new HashMap<>();
+
+        Entity deliveryLocation = delivery.getBelongsToField(DeliveryFields.LOCATION);
 
-        deletePreviousReservations(deliveredProducts);
         for (Entity deliveredProduct : deliveredProducts) {
-            if (!deliveredProduct.getBooleanField(DeliveredProductFields.IS_WASTE)) {
-                deliveredProduct = createDefaultReservationsForDeliveredProduct(deliveredProduct);
-                deliveredProductDD.save(deliveredProduct);
+            Optional<Entity> maybeOrderedProduct = orderedProducts.stream()
+                    .filter(orderedProduct -> isOrderedProductFor(orderedProduct, deliveredProduct, offersEnabled,
+                            operationsEnabled)).findFirst();
+
+            if (!maybeOrderedProduct.isPresent()) {
+                continue;
+            }
+
+            for (DefaultReservation reservation : distributeDeliveredProduct(deliveryLocation, deliveredProduct,
+                    orderedProductReservations.get(maybeOrderedProduct.get().getId()), reservedQuantities, offersEnabled)) {
+                reservations.add(new MapSqlParameterSource(L_DELIVERED_PRODUCT_ID, deliveredProduct.getId())
+                        .addValue(L_LOCATION_ID, reservation.getLocationId())
+                        .addValue(L_DELIVERED_QUANTITY, reservation.getDeliveredQuantity())
+                        .addValue(L_ADDITIONAL_QUANTITY, reservation.getAdditionalQuantity()));
             }
         }
+
+        return reservations;
+    }
+
+    /**
+     * Distributes quantity of delivered product, less damaged quantity, among given reservations of its ordered product. Each
+     * reservation gets what remains unreserved at its location, capped by the quantity still available, reservations on
+     * delivery location are skipped. Reserved quantities are keyed by {@link #getReservationKey(Entity, boolean, Long)} and
+     * are updated with the distributed quantities.
+     */
+    private List<DefaultReservation> distributeDeliveredProduct(final Entity deliveryLocation, final Entity deliveredProduct,
+            final List<Entity> reservationsFromOrderedProduct, final Map<List<Long>, BigDecimal> reservedQuantities,
+            final boolean offersEnabled) {
+        List<DefaultReservation> reservations = new ArrayList<>();
+
+        BigDecimal conversion = deliveredProduct.getDecimalField(DeliveredProductFields.CONVERSION);
+
+        if (deliveredProduct.getBelongsToField(DeliveredProductFields.PRODUCT) == null
+                || deliveredProduct.getBooleanField(DeliveredProductFields.IS_WASTE) || conversion == null) {
+            return reservations;
+        }
+
+        BigDecimal damagedQuantity = deliveredProduct.getDecimalField(DeliveredProductFields.DAMAGED_QUANTITY);
+        damagedQuantity = damagedQuantity == null ? BigDecimal.ZERO : damagedQuantity;
+
+        BigDecimal availableQuantity = deliveredProduct.getDecimalField(DeliveredProductFields.DELIVERED_QUANTITY);
+        availableQuantity = availableQuantity == null ? BigDecimal.ZERO : availableQuantity;
+        availableQuantity = availableQuantity.subtract(damagedQuantity);
+
+        for (Entity reservationFromOrderedProduct : reservationsFromOrderedProduct) {
+            Long locationId = reservationFromOrderedProduct.getBelongsToField(OrderedProductReservationFields.LOCATION).getId();
+
+            if (deliveryLocation != null && deliveryLocation.getId().equals(locationId)) {
+                continue;
+            }
+
+            List<Long> reservationKey = getReservationKey(deliveredProduct, offersEnabled, locationId);
+            BigDecimal reservedQuantity = reservedQuantities.getOrDefault(reservationKey, BigDecimal.ZERO);
+
+            BigDecimal currentDeliveredQuantity = calculateReservedQuantity(
+                    reservationFromOrderedProduct.getDecimalField(OrderedProductReservationFields.ORDERED_QUANTITY),
+                    reservedQuantity, availableQuantity);
+            BigDecimal currentDeliveredAdditionalQuantity = currentDeliveredQuantity.multiply(conversion);
+
+            if (currentDeliveredQuantity.compareTo(BigDecimal.ZERO) <= 0
+                    || currentDeliveredAdditionalQuantity.compareTo(BigDecimal.ZERO) <= 0) {
+                continue;
+            }
+
+            reservations.add(new DefaultReservation(reservationFromOrderedProduct, locationId, currentDeliveredQuantity,
+                    currentDeliveredAdditionalQuantity));
+            reservedQuantities.put(reservationKey, reservedQuantity.add(currentDeliveredQuantity));
+            availableQuantity = availableQuantity.subtract(currentDeliveredQuantity);
+        }
+
+        return reservations;
+    }
+
+    private List<Long> getReservationKey(final Entity deliveredProduct, final boolean offersEnabled, final Long locationId) {
+        return Arrays.asList(getId(deliveredProduct, DeliveredProductFields.PRODUCT),
+                getId(deliveredProduct, DeliveredProductFields.ADDITIONAL_CODE),
+                offersEnabled ? getId(deliveredProduct, OFFER) : null, locationId);
+    }
+
+    private boolean isOrderedProductFor(final Entity orderedProduct, final Entity deliveredProduct, final boolean offersEnabled,
+            final boolean operationsEnabled) {
+        return Objects.equals(getId(orderedProduct, OrderedProductFields.PRODUCT),
+                getId(deliveredProduct, DeliveredProductFields.PRODUCT))
+                && Objects.equals(getId(orderedProduct, OrderedProductFields.ADDITIONAL_CODE),
+                        getId(deliveredProduct, DeliveredProductFields.ADDITIONAL_CODE))
+                && (!offersEnabled || Objects.equals(getId(orderedProduct, OFFER), getId(deliveredProduct, OFFER)))
+                && (!operationsEnabled || Objects.equals(getId(orderedProduct, OPERATION), getId(deliveredProduct, OPERATION)));
+    }
+
+    private Long getId(final Entity entity, final String belongsToField) {
+        Entity belongsToEntity = entity.getBelongsToField(belongsToField);
+
+        return belongsToEntity == null ? null : belongsToEntity.getId();
+    }
+
+    private static BigDecimal calculateReservedQuantity(final BigDecimal orderedQuantity, final BigDecimal reservedQuantity,
+            final BigDecimal availableQuantity) {
+        BigDecimal requestQuantity = orderedQuantity.subtract(reservedQuantity);
+
+        return requestQuantity.compareTo(BigDecimal.ZERO) <= 0 ? BigDecimal.ZERO : requestQuantity.min(availableQuantity);
     }
 
     private DataDefinition getDeliveredProductDD() {
@@ -141,7 +300,8 @@ public class ReservationService {
         return countReservations > 0;
     }
 
-    private Entity findOrderedProductForProduct(Entity deliveredProduct) {
+    private Entity findOrderedProductForProduct(final Entity deliveredProduct, final boolean offersEnabled,
+            final boolean operationsEnabled) {
         Entity delivery = deliveredProduct.getBelongsToField(DeliveredProductFields.DELIVERY);
         Entity additionalCode = deliveredProduct.getBelongsToField(DeliveredProductFields.ADDITIONAL_CODE);
         Entity product = deliveredProduct.getBelongsToField(DeliveredProductFields.PRODUCT);
@@ -153,10 +313,10 @@ public class ReservationService {
         } else {
             findOrderedProduct.add(SearchRestrictions.belongsTo(OrderedProductFields.ADDITIONAL_CODE, additionalCode));
         }
-        if(PluginUtils.isEnabled("supplyNegotiations")) {
+        if (offersEnabled) {
             findOrderedProduct.add(SearchRestrictions.belongsTo(OFFER, deliveredProduct.getBelongsToField(OFFER)));
         }
-        if (PluginUtils.isEnabled("techSubcontrForDeliveries")) {
+        if (operationsEnabled) {
             findOrderedProduct.add(SearchRestrictions.belongsTo(OPERATION, deliveredProduct.getBelongsToField(OPERATION)));
         }
         Entity orderedProductForProduct = findOrderedProduct.uniqueResult();
@@ -164,7 +324,7 @@ public class ReservationService {
         return orderedProductForProduct;
     }
 
-    private List<Entity> findPresentDeliveredProductForProductReservations(Entity deliveredProduct) {
+    private Map<List<Long>, BigDecimal> getReservedQuantities(final Entity deliveredProduct, final boolean offersEnabled) {
         Entity delivery = deliveredProduct.getBelongsToField(DeliveredProductFields.DELIVERY);
         Entity additionalCode = deliveredProduct.getBelongsToField(DeliveredProductFields.ADDITIONAL_CODE);
 
@@ -176,34 +336,22 @@ public class ReservationService {
         } else {
             findDeliveredProducts.add(SearchRestrictions.belongsTo(DeliveredProductFields.ADDITIONAL_CODE, additionalCode));
         }
-        if(PluginUtils.isEnabled("supplyNegotiations")) {
+        if (offersEnabled) {
             findDeliveredProducts.add(SearchRestrictions.belongsTo(OFFER, deliveredProduct.getBelongsToField(OFFER)));
         }
-        List<Entity> deliveredProducts = findDeliveredProducts.list().getEntities();
-
-        List<Entity> allReservationsFromDeliveredProducts = deliveredProducts.stream().flatMap(p -> {
-            return p.getHasManyField(DeliveredProductFields.RESERVATIONS).stream();
-        }).collect(Collectors.toList());
 
-        return allReservationsFromDeliveredProducts;
-    }
+        Map<List<Long>, BigDecimal> reservedQuantities = new HashMap<>();
 
-    private List<Entity> filterReservationsByLocation(List<Entity> presentDeliveredProductForProductReservations,
-            Entity location) {
-        List<Entity> reservationsFromLocation = presentDeliveredProductForProductReservations.stream().filter(reservation -> {
-            Entity reservationLocation = reservation.getBelongsToField(OrderedProductReservationFields.LOCATION);
-            return location.getId().equals(reservationLocation.getId());
-        }).collect(Collectors.toList());
-
-        return reservationsFromLocation;
-    }
-
-    private BigDecimal sumQuantityFromReservations(List<Entity> reservationsFromLocation, String field) {
-        BigDecimal quantity = reservationsFromLocation.stream().map(r -> {
-            return r.getDecimalField(field);
-        }).reduce(BigDecimal.ZERO, (r1, r2) -> r1.add(r2));
+        for (Entity presentDeliveredProduct : findDeliveredProducts.list().getEntities()) {
+            for (Entity reservation : presentDeliveredProduct.getHasManyField(DeliveredProductFields.RESERVATIONS)) {
+                reservedQuantities.merge(
+                        getReservationKey(deliveredProduct, offersEnabled,
+                                reservation.getBelongsToField(DeliveredProductReservationFields.LOCATION).getId()),
+                        reservation.getDecimalField(DeliveredProductReservationFields.DELIVERED_QUANTITY), BigDecimal::add);
+            }
+        }
 
-        return quantity;
+        return reservedQuantities;
     }
 
     public void deleteReservationsForOrderedProductIfChanged(Entity orderedProduct) {
@@ -302,4 +450,41 @@ public class ReservationService {
 
         return true;
     }
+
+    private static final class DefaultReservation {
+
+        private final Entity orderedProductReservation;
+
+        private final Long locationId;
+
+        private final BigDecimal deliveredQuantity;
+
+        private final BigDecimal additionalQuantity;
+
+        private DefaultReservation(final Entity orderedProductReservation, final Long locationId,
+                final BigDecimal deliveredQuantity, final BigDecimal additionalQuantity) {
+            this.orderedProductReservation = orderedProductReservation;
+            this.locationId = locationId;
+            this.deliveredQuantity = deliveredQuantity;
+            this.additionalQuantity = additionalQuantity;
+        }
+
+        Entity getOrderedProductReservation() {
+            return orderedProductReservation;
+        }
+
+        Long getLocationId() {
+            return locationId;
+        }
+
+        BigDecimal getDeliveredQuantity() {
+            return deliveredQuantity;
+        }
+
+        BigDecimal getAdditionalQuantity() {
+            return additionalQuantity;
+        }
+
+    }
+
 }
@@ -38,6 +38,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.qcadoo.mes.deliveries.DeliveriesService;
+import com.qcadoo.mes.deliveries.OrderedQuantityStockService;
 import com.qcadoo.mes.deliveries.ReservationService;
 import com.qcadoo.mes.deliveries.constants.DeliveredProductFields;
 import com.qcadoo.mes.deliveries.constants.DeliveryFields;
@@ -72,6 +73,9 @@ public class DeliveryHooks {
     @Autowired
     private ReservationService reservationService;
 
+    @Autowired
+    private OrderedQuantityStockService orderedQuantityStockService;
+
     public void onCreate(final DataDefinition deliveryDD, final Entity delivery) {
         setInitialState(delivery);
         setDeliveryAddressDefaultValue(delivery);
@@ -90,6 +94,12 @@ public class DeliveryHooks {
 
     public void onSave(final DataDefinition deliveryDD, final Entity delivery) {
         setStorageLocations(delivery);
+        orderedQuantityStockService.updateForDelivery(deliveryDD, delivery);
+    }
+
+    public boolean onDelete(final DataDefinition deliveryDD, final Entity delivery) {
+        orderedQuantityStockService.updateForDeletedDelivery(delivery);
+        return true;
     }
 
     private void setInitialState(final Entity delivery) {
@@ -28,6 +28,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.qcadoo.mes.deliveries.DeliveriesService;
+import com.qcadoo.mes.deliveries.OrderedQuantityStockService;
 import com.qcadoo.mes.deliveries.ReservationService;
 import com.qcadoo.mes.deliveries.constants.OrderedProductFields;
 import com.qcadoo.mes.deliveries.constants.OrderedProductReservationFields;
@@ -55,10 +56,19 @@ public class OrderedProductHooks {
     @Autowired
     private ReservationService reservationService;
 
+    @Autowired
+    private OrderedQuantityStockService orderedQuantityStockService;
+
     public void onSave(final DataDefinition orderedProductDD, final Entity orderedProduct) {
         calculateOrderedProductPricePerUnit(orderedProductDD, orderedProduct);
         calculateReservationQuantities(orderedProductDD, orderedProduct);
         reservationService.deleteReservationsForOrderedProductIfChanged(orderedProduct);
+        orderedQuantityStockService.updateForOrderedProduct(orderedProductDD, orderedProduct);
+    }
+
+    public boolean onDelete(final DataDefinition orderedProductDD, final Entity orderedProduct) {
+        orderedQuantityStockService.updateForDeletedOrderedProduct(orderedProduct);
+        return true;
     }
 
     public void calculateOrderedProductPricePerUnit(final DataDefinition orderedProductDD, final Entity orderedProduct) {
@@ -72,7 +72,7 @@ public class DeliveryStateValidationService {
     public void validationOnReceived(final StateChangeContext stateChangeContext) {
         checkDeliveredQuantity(stateChangeContext);
 
-        if(parameterService.getParameter().getBooleanField("positivePurchasePrice")) {
+        if(parameterService.getParameterSnapshot().getBooleanField("positivePurchasePrice")) {
             checkDeliveredPurchasePrices(stateChangeContext);
         }
         if (pluginManager.isPluginEnabled("integration") && productSynchronizationService.shouldSynchronize(stateChangeContext)) {
@@ -0,0 +1,248 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.deliveries;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.deliveries.constants.DeliveredProductFields;
+import com.qcadoo.mes.deliveries.constants.DeliveredProductReservationFields;
+import com.qcadoo.mes.deliveries.constants.DeliveriesConstants;
+import com.qcadoo.mes.deliveries.constants.DeliveryFields;
+import com.qcadoo.mes.deliveries.constants.OrderedProductFields;
+import com.qcadoo.mes.deliveries.constants.OrderedProductReservationFields;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityList;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.model.api.search.SearchResult;
+
+public class ReservationServiceTest {
+
+    private ReservationService reservationService;
+
+    private Entity delivery;
+
+    private Entity product;
+
+    private Entity otherProduct;
+
+    @Before
+    public void init() {
+        reservationService = new ReservationService();
+
+        DataDefinitionService dataDefinitionService = mock(DataDefinitionService.class);
+        DataDefinition deliveredProductReservationDD = mock(DataDefinition.class);
+        given(dataDefinitionService.get(DeliveriesConstants.PLUGIN_IDENTIFIER,
+                DeliveriesConstants.MODEL_DELIVERED_PRODUCT_RESERVATION)).willReturn(deliveredProductReservationDD);
+        given(deliveredProductReservationDD.create()).willAnswer(invocation -> mockFieldsEntity());
+        ReflectionTestUtils.setField(reservationService, "dataDefinitionService", dataDefinitionService);
+
+        delivery = mock(Entity.class);
+        Entity deliveryLocation = mockEntity(100L);
+        given(delivery.getBelongsToField(DeliveryFields.LOCATION)).willReturn(deliveryLocation);
+
+        product = mockEntity(1L);
+        otherProduct = mockEntity(2L);
+    }
+
+    @Test
+    public void shouldDistributeDeliveredQuantitiesAmongOrderedProductReservations() {
+        // given
+        Entity orderedProduct = mockEntity(10L);
+        given(orderedProduct.getBelongsToField(OrderedProductFields.PRODUCT)).willReturn(product);
+
+        ListMultimap<Long, Entity> orderedProductReservations = ArrayListMultimap.create();
+        orderedProductReservations.put(10L, mockOrderedProductReservation(201L, "6"));
+        orderedProductReservations.put(10L, mockOrderedProductReservation(202L, "10"));
+        orderedProductReservations.put(10L, mockOrderedProductReservation(100L, "5"));
+
+        Entity firstDeliveredProduct = mockDeliveredProduct(20L, product, "8", "1", "2", false);
+        Entity secondDeliveredProduct = mockDeliveredProduct(21L, product, "10", null, "1", false);
+        Entity wasteDeliveredProduct = mockDeliveredProduct(22L, product, "5", null, "1", true);
+        Entity notOrderedDeliveredProduct = mockDeliveredProduct(23L, otherProduct, "5", null, "1", false);
+
+        // when
+        List<Entity> deliveredProducts = Lists.newArrayList(firstDeliveredProduct, secondDeliveredProduct,
+                wasteDeliveredProduct, notOrderedDeliveredProduct);
+
+        List<SqlParameterSource> reservations = reservationService.distributeReservations(delivery, deliveredProducts,
+                Lists.newArrayList(orderedProduct), orderedProductReservations, false, false);
+
+        // then
+        assertEquals(3, reservations.size());
+        assertReservation(reservations.get(0), 20L, 201L, "6", "12");
+        assertReservation(reservations.get(1), 20L, 202L, "1", "2");
+        assertReservation(reservations.get(2), 21L, 202L, "9", "9");
+    }
+
+    @Test
+    public void shouldCreateReservationsOfDeliveredProductWithSameRulesAsRecalculation() {
+        // given
+        Entity orderedProduct = mockEntity(10L);
+        EntityList orderedProductReservations = mockEntityList(Lists.newArrayList(mockOrderedProductReservation(201L, "6"),
+                mockOrderedProductReservation(202L, "10"), mockOrderedProductReservation(100L, "5")));
+        given(orderedProduct.getHasManyField(OrderedProductFields.RESERVATIONS)).willReturn(orderedProductReservations);
+
+        Entity presentReservation = mock(Entity.class);
+        Entity presentReservationLocation = mockEntity(201L);
+        given(presentReservation.getBelongsToField(DeliveredProductReservationFields.LOCATION)).willReturn(
+                presentReservationLocation);
+        given(presentReservation.getDecimalField(DeliveredProductReservationFields.DELIVERED_QUANTITY)).willReturn(
+                new BigDecimal("4"));
+        Entity presentDeliveredProduct = mockEntity(20L);
+        EntityList presentReservations = mockEntityList(Lists.newArrayList(presentReservation));
+        given(presentDeliveredProduct.getHasManyField(DeliveredProductFields.RESERVATIONS)).willReturn(presentReservations);
+
+        EntityList orderedProducts = mockEntityList(Lists.newArrayList(orderedProduct));
+        SearchCriteriaBuilder orderedProductCriteria = mockSearchCriteriaBuilder(orderedProducts);
+        given(orderedProductCriteria.uniqueResult()).willReturn(orderedProduct);
+        given(delivery.getHasManyField(DeliveryFields.ORDERED_PRODUCTS)).willReturn(orderedProducts);
+
+        EntityList deliveredProducts = mockEntityList(Lists.newArrayList(presentDeliveredProduct));
+        SearchCriteriaBuilder deliveredProductCriteria = mockSearchCriteriaBuilder(deliveredProducts);
+        SearchResult searchResult = mock(SearchResult.class);
+        given(deliveredProductCriteria.list()).willReturn(searchResult);
+        given(searchResult.getEntities()).willReturn(Lists.newArrayList(presentDeliveredProduct));
+        given(delivery.getHasManyField(DeliveryFields.DELIVERED_PRODUCTS)).willReturn(deliveredProducts);
+
+        Entity deliveredProduct = mockDeliveredProduct(null, product, "8", null, "2", false);
+        given(deliveredProduct.getBelongsToField(DeliveredProductFields.DELIVERY)).willReturn(delivery);
+
+        // when
+        reservationService.createDefaultReservationsForDeliveredProduct(deliveredProduct, false, false);
+
+        // then
+        ArgumentCaptor<List> reservationsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(deliveredProduct).setField(eq(DeliveredProductFields.RESERVATIONS), reservationsCaptor.capture());
+        List<Entity> reservations = reservationsCaptor.getValue();
+
+        assertEquals(2, reservations.size());
+        assertReservation(reservations.get(0), 201L, "2", "4");
+        assertReservation(reservations.get(1), 202L, "6", "12");
+    }
+
+    private void assertReservation(final Entity reservation, final Long locationId, final String deliveredQuantity,
+            final String additionalQuantity) {
+        assertEquals(locationId,
+                ((Entity) reservation.getField(DeliveredProductReservationFields.LOCATION)).getId());
+        assertEquals(0, new BigDecimal(deliveredQuantity).compareTo(
+                (BigDecimal) reservation.getField(DeliveredProductReservationFields.DELIVERED_QUANTITY)));
+        assertEquals(0, new BigDecimal(additionalQuantity).compareTo(
+                (BigDecimal) reservation.getField(DeliveredProductReservationFields.ADDITIONAL_QUANTITY)));
+    }
+
+    private void assertReservation(final SqlParameterSource reservation, final Long deliveredProductId, final Long locationId,
+            final String deliveredQuantity, final String additionalQuantity) {
+        assertEquals(deliveredProductId, reservation.getValue("deliveredProductId"));
+        assertEquals(locationId, reservation.getValue("locationId"));
+        assertEquals(0, new BigDecimal(deliveredQuantity).compareTo((BigDecimal) reservation.getValue("deliveredQuantity")));
+        assertEquals(0, new BigDecimal(additionalQuantity).compareTo((BigDecimal) reservation.getValue("additionalQuantity")));
+    }
+
+    private Entity mockOrderedProductReservation(final Long locationId, final String orderedQuantity) {
+        Entity orderedProductReservation = mock(Entity.class);
+        Entity location = mockEntity(locationId);
+
+        given(orderedProductReservation.getBelongsToField(OrderedProductReservationFields.LOCATION)).willReturn(location);
+        given(orderedProductReservation.getDecimalField(OrderedProductReservationFields.ORDERED_QUANTITY)).willReturn(
+                new BigDecimal(orderedQuantity));
+
+        return orderedProductReservation;
+    }
+
+    private Entity mockDeliveredProduct(final Long id, final Entity product, final String deliveredQuantity,
+            final String damagedQuantity, final String conversion, final boolean isWaste) {
+        Entity deliveredProduct = mockEntity(id);
+
+        given(deliveredProduct.getBelongsToField(DeliveredProductFields.PRODUCT)).willReturn(product);
+        given(deliveredProduct.getDecimalField(DeliveredProductFields.DELIVERED_QUANTITY)).willReturn(
+                new BigDecimal(deliveredQuantity));
+        given(deliveredProduct.getDecimalField(DeliveredProductFields.DAMAGED_QUANTITY)).willReturn(
+                damagedQuantity == null ? null : new BigDecimal(damagedQuantity));
+        given(deliveredProduct.getDecimalField(DeliveredProductFields.CONVERSION)).willReturn(new BigDecimal(conversion));
+        given(deliveredProduct.getBooleanField(DeliveredProductFields.IS_WASTE)).willReturn(isWaste);
+
+        return deliveredProduct;
+    }
+
+    private EntityList mockEntityList(final List<Entity> entities) {
+        EntityList entityList = mock(EntityList.class);
+
+        given(entityList.iterator()).willAnswer(invocation -> entities.iterator());
+
+        return entityList;
+    }
+
+    private SearchCriteriaBuilder mockSearchCriteriaBuilder(final EntityList entityList) {
+        SearchCriteriaBuilder searchCriteriaBuilder = mock(SearchCriteriaBuilder.class);
+
+        given(entityList.find()).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.add(any(SearchCriterion.class))).willReturn(searchCriteriaBuilder);
+
+        return searchCriteriaBuilder;
+    }
+
+    private Entity mockFieldsEntity() {
+        Map<String, Object> fields = Maps.newHashMap();
+        Entity entity = mock(Entity.class);
+
+        willAnswer(invocation -> fields.put((String) invocation.getArguments()[0], invocation.getArguments()[1])).given(entity)
+                .setField(anyString(), any());
+        given(entity.getField(anyString())).willAnswer(invocation -> fields.get(invocation.getArguments()[0]));
+
+        return entity;
+    }
+
+    private Entity mockEntity(final Long id) {
+        Entity entity = mock(Entity.class);
+
+        given(entity.getId()).willReturn(id);
+
+        return entity;
+    }
+
+}
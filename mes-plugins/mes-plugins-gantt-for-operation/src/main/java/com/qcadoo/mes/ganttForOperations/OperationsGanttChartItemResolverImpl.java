@@ -38,13 +38,19 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.Maps;
 import com.qcadoo.mes.orders.constants.OrderFields;
-import com.qcadoo.mes.productionScheduling.OrderTimePredictionService;
+import com.qcadoo.mes.technologies.constants.OperationFields;
+import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
 import com.qcadoo.mes.technologies.constants.TechnologyFields;
 import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
+import com.qcadoo.mes.timeNormsForOperations.constants.TechOperCompTimeCalculationsFields;
 import com.qcadoo.mes.timeNormsForOperations.constants.TechnologyOperationComponentFieldsTNFO;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.JoinType;
+import com.qcadoo.model.api.search.SearchProjection;
+import com.qcadoo.model.api.search.SearchProjections;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.model.api.utils.EntityTreeUtilsService;
 import com.qcadoo.view.api.components.ganttChart.GanttChartItem;
@@ -53,27 +59,20 @@ import com.qcadoo.view.api.components.ganttChart.GanttChartScale;
 @Service
 public class OperationsGanttChartItemResolverImpl implements OperationsGanttChartItemResolver {
 
-    private static final String NAME_FIELD = "name";
-
-    private static final String NUMBER_FIELD = "number";
-
-    private static final String NODE_NUMBER_FIELD = "nodeNumber";
-
     private static final String ORDERS_MODEL = "orders";
 
-    private static final String OPERATION_FIELD = "operation";
-
     private static final String ORDER_FIELD = "order";
 
-    private static final String EFFECTIVE_DATE_TO_FIELD = "effectiveDateTo";
+    private static final String L_ID = "id";
 
-    private static final String EFFECTIVE_DATE_FROM_FIELD = "effectiveDateFrom";
+    private static final String L_TIME_CALCULATION = "timeCalculation";
 
-    @Autowired
-    private EntityTreeUtilsService entityTreeUtilsService;
+    private static final String L_OPERATION_NUMBER = "operationNumber";
+
+    private static final String L_OPERATION_NAME = "operationName";
 
     @Autowired
-    private OrderTimePredictionService orderTimePredictionService;
+    private EntityTreeUtilsService entityTreeUtilsService;
 
     private static final Logger LOG = LoggerFactory.getLogger(OperationsGanttChartItemResolverImpl.class);
 
@@ -93,11 +92,7 @@ public class OperationsGanttChartItemResolverImpl implements OperationsGanttChar
 
             Entity technology = order.getBelongsToField(OrderFields.TECHNOLOGY);
 
-            List<Entity> operations = dataDefinitionService
-                    .get(com.qcadoo.mes.technologies.constants.TechnologiesConstants.PLUGIN_IDENTIFIER,
-                            com.qcadoo.mes.technologies.constants.TechnologiesConstants.MODEL_TECHNOLOGY_OPERATION_COMPONENT)
-                    .find().add(SearchRestrictions.belongsTo(TechnologyOperationComponentFields.TECHNOLOGY, technology)).list()
-                    .getEntities();
+            Map<Long, Entity> operations = getOperationsWithTimes(technology);
 
             if (operations.isEmpty()) {
                 LOG.warn("Cannot find operations for " + order);
@@ -105,26 +100,24 @@ public class OperationsGanttChartItemResolverImpl implements OperationsGanttChar
             }
 
             if (scale.getIsDatesSet() != null && scale.getIsDatesSet()) {
-                Date orderStartDate = orderTimePredictionService.getDateFromOrdersFromOperation(operations);
-                scale.setDateFrom(orderStartDate);
-
-                Date orderEndDate = orderTimePredictionService.getDateToOrdersFromOperation(operations);
-                scale.setDateTo(orderEndDate);
+                scale.setDateFrom(getEarliestDate(operations.values(), TechOperCompTimeCalculationsFields.EFFECTIVE_DATE_FROM));
+                scale.setDateTo(getLatestDate(operations.values(), TechOperCompTimeCalculationsFields.EFFECTIVE_DATE_TO));
             }
             Map<String, List<GanttChartItem>> items = new LinkedHashMap<String, List<GanttChartItem>>();
             Map<String, Integer> counters = new HashMap<String, Integer>();
 
-            List<Entity> sortedOperationFromTree = entityTreeUtilsService.getSortedEntities(order.getBelongsToField(
-                    OrderFields.TECHNOLOGY).getTreeField(TechnologyFields.OPERATION_COMPONENTS));
+            List<Entity> sortedOperationFromTree = entityTreeUtilsService.getSortedEntities(technology
+                    .getTreeField(TechnologyFields.OPERATION_COMPONENTS));
 
             for (Entity operationFromTree : sortedOperationFromTree) {
-                Entity operation = operations.get(operations.indexOf(operationFromTree));
-                Date dateFrom = operation.getBelongsToField(
-                        TechnologyOperationComponentFieldsTNFO.TECH_OPER_COMP_TIME_CALCULATION).getDateField(
-                        EFFECTIVE_DATE_FROM_FIELD);
-                Date dateTo = operation
-                        .getBelongsToField(TechnologyOperationComponentFieldsTNFO.TECH_OPER_COMP_TIME_CALCULATION).getDateField(
-                                EFFECTIVE_DATE_TO_FIELD);
+                Entity operation = operations.get(operationFromTree.getId());
+
+                if (operation == null) {
+                    continue;
+                }
+
+                Date dateFrom = operation.getDateField(TechOperCompTimeCalculationsFields.EFFECTIVE_DATE_FROM);
+                Date dateTo = operation.getDateField(TechOperCompTimeCalculationsFields.EFFECTIVE_DATE_TO);
 
                 if (dateFrom == null || dateTo == null || dateTo.before(scale.getDateFrom())) {
                     continue;
@@ -142,7 +135,7 @@ public class OperationsGanttChartItemResolverImpl implements OperationsGanttChar
                 }
 
                 GanttChartItem item = scale.createGanttChartItem(operationName.toString(), operationName.toString(),
-                        operation.getId(), dateFrom, dateTo);
+                        operationFromTree.getId(), dateFrom, dateTo);
 
                 if (item != null) {
                     items.put(operationName.toString(), Collections.singletonList(item));
@@ -158,10 +151,74 @@ public class OperationsGanttChartItemResolverImpl implements OperationsGanttChar
         }
     }
 
+    /**
+     * Loads operation labels and calculated times of all operation components of given technology with one joined query.
+     */
+    private Map<Long, Entity> getOperationsWithTimes(final Entity technology) {
+        List<Entity> projections = dataDefinitionService
+                .get(TechnologiesConstants.PLUGIN_IDENTIFIER, TechnologiesConstants.MODEL_TECHNOLOGY_OPERATION_COMPONENT)
+                .find()
+                .createAlias(TechnologyOperationComponentFields.OPERATION, TechnologyOperationComponentFields.OPERATION,
+                        JoinType.INNER)
+                .createAlias(TechnologyOperationComponentFieldsTNFO.TECH_OPER_COMP_TIME_CALCULATION, L_TIME_CALCULATION,
+                        JoinType.LEFT)
+                .add(SearchRestrictions.belongsTo(TechnologyOperationComponentFields.TECHNOLOGY, technology))
+                .setProjection(SearchProjections.list().add(alias(L_ID, L_ID))
+                        .add(alias(TechnologyOperationComponentFields.NODE_NUMBER,
+                                TechnologyOperationComponentFields.NODE_NUMBER))
+                        .add(alias(TechnologyOperationComponentFields.OPERATION + "." + OperationFields.NUMBER,
+                                L_OPERATION_NUMBER))
+                        .add(alias(TechnologyOperationComponentFields.OPERATION + "." + OperationFields.NAME,
+                                L_OPERATION_NAME))
+                        .add(alias(L_TIME_CALCULATION + "." + TechOperCompTimeCalculationsFields.EFFECTIVE_DATE_FROM,
+                                TechOperCompTimeCalculationsFields.EFFECTIVE_DATE_FROM))
+                        .add(alias(L_TIME_CALCULATION + "." + TechOperCompTimeCalculationsFields.EFFECTIVE_DATE_TO,
+                                TechOperCompTimeCalculationsFields.EFFECTIVE_DATE_TO))).list().getEntities();
+
+        Map<Long, Entity> operations = Maps.newHashMapWithExpectedSize(projections.size());
+
+        for (Entity projection : projections) {
+            operations.put((Long) projection.getField(L_ID), projection);
+        }
+
+        return operations;
+    }
+
+    private SearchProjection alias(final String field, final String alias) {
+        return SearchProjections.alias(SearchProjections.field(field), alias);
+    }
+
+    private Date getEarliestDate(final Iterable<Entity> operations, final String field) {
+        Date earliestDate = null;
+
+        for (Entity operation : operations) {
+            Date date = operation.getDateField(field);
+
+            if (date != null && (earliestDate == null || date.before(earliestDate))) {
+                earliestDate = date;
+            }
+        }
+
+        return earliestDate;
+    }
+
+    private Date getLatestDate(final Iterable<Entity> operations, final String field) {
+        Date latestDate = null;
+
+        for (Entity operation : operations) {
+            Date date = operation.getDateField(field);
+
+            if (date != null && (latestDate == null || date.after(latestDate))) {
+                latestDate = date;
+            }
+        }
+
+        return latestDate;
+    }
+
     private String getDescriptionForOperarion(final Entity operation) {
-        return operation.getStringField(NODE_NUMBER_FIELD) + " "
-                + operation.getBelongsToField(OPERATION_FIELD).getStringField(NUMBER_FIELD) + " "
-                + operation.getBelongsToField(OPERATION_FIELD).getStringField(NAME_FIELD);
+        return operation.getStringField(TechnologyOperationComponentFields.NODE_NUMBER) + " "
+                + operation.getStringField(L_OPERATION_NUMBER) + " " + operation.getStringField(L_OPERATION_NAME);
     }
 
-}
\ No newline at end of file
+}
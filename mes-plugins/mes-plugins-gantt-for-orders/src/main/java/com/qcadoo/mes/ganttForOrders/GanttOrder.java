@@ -0,0 +1,138 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.ganttForOrders;
+
+import java.util.Date;
+import java.util.Objects;
+
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.orders.states.constants.OrderStateStringValues;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Immutable snapshot of order fields displayed on the orders Gantt chart.
+ */
+public final class GanttOrder {
+
+    private final Long id;
+
+    private final String number;
+
+    private final String name;
+
+    private final String state;
+
+    private final Long dateFrom;
+
+    private final Long dateTo;
+
+    private final Long effectiveDateFrom;
+
+    private GanttOrder(final Long id, final String number, final String name, final String state, final Date dateFrom,
+            final Date dateTo, final Date effectiveDateFrom) {
+        this.id = id;
+        this.number = number;
+        this.name = name;
+        this.state = state;
+        this.dateFrom = toMillis(dateFrom);
+        this.dateTo = toMillis(dateTo);
+        this.effectiveDateFrom = toMillis(effectiveDateFrom);
+    }
+
+    /**
+     * Creates snapshot from order entity or from projection with the same field aliases.
+     */
+    public static GanttOrder from(final Entity order) {
+        Object id = order.getField("id");
+
+        return new GanttOrder(id == null ? order.getId() : (Long) id, order.getStringField(OrderFields.NUMBER),
+                order.getStringField(OrderFields.NAME), order.getStringField(OrderFields.STATE),
+                order.getDateField(OrderFields.DATE_FROM), order.getDateField(OrderFields.DATE_TO),
+                order.getDateField(OrderFields.EFFECTIVE_DATE_FROM));
+    }
+
+    private static Long toMillis(final Date date) {
+        return date == null ? null : date.getTime();
+    }
+
+    private static Date toDate(final Long millis) {
+        return millis == null ? null : new Date(millis);
+    }
+
+    /**
+     * Returns true if order is not completed and its planned dates overlap given window.
+     */
+    public boolean isVisibleIn(final Date windowFrom, final Date windowTo) {
+        return !OrderStateStringValues.COMPLETED.equals(state) && dateFrom != null && dateTo != null
+                && dateFrom < windowTo.getTime() && dateTo > windowFrom.getTime();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getNumber() {
+        return number;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public Date getDateFrom() {
+        return toDate(dateFrom);
+    }
+
+    public Date getDateTo() {
+        return toDate(dateTo);
+    }
+
+    public Date getEffectiveDateFrom() {
+        return toDate(effectiveDateFrom);
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof GanttOrder)) {
+            return false;
+        }
+        GanttOrder other = (GanttOrder) obj;
+        return Objects.equals(id, other.id) && Objects.equals(number, other.number) && Objects.equals(name, other.name)
+                && Objects.equals(state, other.state) && Objects.equals(dateFrom, other.dateFrom)
+                && Objects.equals(dateTo, other.dateTo) && Objects.equals(effectiveDateFrom, other.effectiveDateFrom);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, number, name, state, dateFrom, dateTo, effectiveDateFrom);
+    }
+
+}
@@ -0,0 +1,265 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.ganttForOrders;
+
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.orders.constants.OrdersConstants;
+import com.qcadoo.mes.orders.states.constants.OrderStateStringValues;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchProjection;
+import com.qcadoo.model.api.search.SearchProjections;
+import com.qcadoo.model.api.search.SearchRestrictions;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+/**
+ * Keeps not completed orders of recently displayed time windows, separately for each tenant. A few windows are kept per tenant,
+ * so that planners looking at different periods don't drop each other's windows. When the Gantt chart gets scrolled or zoomed
+ * out only orders of the newly visible part of the window are loaded.
+ * 
+ * Windows of a tenant are dropped when displayed data of any of its orders changes. Only saves and deletes going through order
+ * hooks are noticed, so changes written with plain SQL, fastSave or by another application node aren't. Each window is
+ * therefore loaded again after {@link #MAX_WINDOW_AGE_MILLIS}, which bounds how long such changes stay invisible.
+ */
+@Service
+public class GanttOrdersCache {
+
+    static final long MAX_CACHED_WINDOW_MILLIS = TimeUnit.DAYS.toMillis(366);
+
+    static final long MAX_WINDOW_AGE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    static final int MAX_WINDOWS_PER_TENANT = 8;
+
+    private static final String L_ID = "id";
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    private final ConcurrentMap<Integer, LinkedList<CachedWindow>> tenantWindows = new ConcurrentHashMap<>();
+
+    private LongSupplier clock = System::currentTimeMillis;
+
+    /**
+     * Returns not completed orders of current tenant, which planned dates overlap given window, sorted by id.
+     */
+    public List<GanttOrder> getOrders(final Date windowFrom, final Date windowTo) {
+        LinkedList<CachedWindow> windows = getWindows();
+
+        synchronized (windows) {
+            CachedWindow window = findWindowToExtend(windows, windowFrom, windowTo);
+
+            if (window == null) {
+                window = new CachedWindow(windowFrom, windowTo, clock.getAsLong());
+
+                loadOrders(window.orders, windowFrom, windowTo);
+
+                if (windows.size() >= MAX_WINDOWS_PER_TENANT) {
+                    windows.removeLast();
+                }
+            } else {
+                windows.remove(window);
+
+                if (windowFrom.before(window.from)) {
+                    loadOrders(window.orders, windowFrom, window.from);
+
+                    window.from = windowFrom;
+                }
+                if (windowTo.after(window.to)) {
+                    loadOrders(window.orders, window.to, windowTo);
+
+                    window.to = windowTo;
+                }
+            }
+
+            windows.addFirst(window);
+
+            return window.orders.values().stream().filter(order -> order.isVisibleIn(windowFrom, windowTo))
+                    .sorted(Comparator.comparing(GanttOrder::getId)).collect(Collectors.toList());
+        }
+    }
+
+    private LinkedList<CachedWindow> getWindows() {
+        return tenantWindows.computeIfAbsent(multiTenantService.getCurrentTenantId(), tenantId -> new LinkedList<>());
+    }
+
+    private CachedWindow findWindowToExtend(final LinkedList<CachedWindow> windows, final Date windowFrom, final Date windowTo) {
+        long now = clock.getAsLong();
+
+        windows.removeIf(window -> now - window.loadedAt > MAX_WINDOW_AGE_MILLIS);
+
+        for (CachedWindow window : windows) {
+            if (window.canBeExtendedTo(windowFrom, windowTo)) {
+                return window;
+            }
+        }
+
+        return null;
+    }
+
+    private void loadOrders(final Map<Long, GanttOrder> orders, final Date dateFrom, final Date dateTo) {
+        List<Entity> projections = dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER)
+                .find().add(SearchRestrictions.ne(OrderFields.STATE, OrderStateStringValues.COMPLETED))
+                .add(SearchRestrictions.lt(OrderFields.DATE_FROM, dateTo))
+                .add(SearchRestrictions.ge(OrderFields.DATE_TO, dateFrom))
+                .setProjection(SearchProjections.list().add(alias(L_ID)).add(alias(OrderFields.NUMBER))
+                        .add(alias(OrderFields.NAME)).add(alias(OrderFields.STATE)).add(alias(OrderFields.DATE_FROM))
+                        .add(alias(OrderFields.DATE_TO)).add(alias(OrderFields.EFFECTIVE_DATE_FROM)))
+                .list().getEntities();
+
+        for (Entity projection : projections) {
+            GanttOrder order = GanttOrder.from(projection);
+
+            orders.put(order.getId(), order);
+        }
+    }
+
+    private SearchProjection alias(final String field) {
+        return SearchProjections.alias(SearchProjections.field(field), field);
+    }
+
+    /**
+     * Called before given order gets saved - drops cached windows of current tenant if the change is visible on the chart.
+     * Windows are dropped once more after commit, so that a window loaded by concurrent request before the commit doesn't keep
+     * stale data.
+     */
+    public void onOrderSave(final Entity order) {
+        GanttOrder savedOrder = GanttOrder.from(order);
+        LinkedList<CachedWindow> windows = getWindows();
+
+        synchronized (windows) {
+            for (CachedWindow window : windows) {
+                GanttOrder cachedOrder = order.getId() == null ? null : window.orders.get(order.getId());
+
+                boolean changed;
+
+                if (cachedOrder == null) {
+                    changed = savedOrder.isVisibleIn(window.from, window.to);
+                } else {
+                    changed = !cachedOrder.equals(savedOrder);
+                }
+
+                if (changed) {
+                    invalidateNowAndAfterCommit(windows);
+
+                    return;
+                }
+            }
+        }
+    }
+
+    public void onOrderDelete(final Entity order) {
+        LinkedList<CachedWindow> windows = getWindows();
+
+        synchronized (windows) {
+            for (CachedWindow window : windows) {
+                if (window.orders.containsKey(order.getId())) {
+                    invalidateNowAndAfterCommit(windows);
+
+                    return;
+                }
+            }
+        }
+    }
+
+    private void invalidateNowAndAfterCommit(final LinkedList<CachedWindow> windows) {
+        windows.clear();
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCommit() {
+                    synchronized (windows) {
+                        windows.clear();
+                    }
+                }
+
+            });
+        }
+    }
+
+    /**
+     * Drops cached windows of current tenant.
+     */
+    public void invalidate() {
+        LinkedList<CachedWindow> windows = getWindows();
+
+        synchronized (windows) {
+            windows.clear();
+        }
+    }
+
+    private static final class CachedWindow {
+
+        private final Map<Long, GanttOrder> orders = Maps.newHashMap();
+
+        private final long loadedAt;
+
+        private Date from;
+
+        private Date to;
+
+        private CachedWindow(final Date from, final Date to, final long loadedAt) {
+            this.from = from;
+            this.to = to;
+            this.loadedAt = loadedAt;
+        }
+
+        private boolean canBeExtendedTo(final Date windowFrom, final Date windowTo) {
+            if (!windowFrom.before(from) && !windowTo.after(to)) {
+                return true;
+            }
+            if (windowTo.before(from) || windowFrom.after(to)) {
+                return false;
+            }
+
+            long extendedFrom = Math.min(windowFrom.getTime(), from.getTime());
+            long extendedTo = Math.max(windowTo.getTime(), to.getTime());
+
+            return extendedTo - extendedFrom <= MAX_CACHED_WINDOW_MILLIS;
+        }
+
+    }
+
+}
@@ -35,10 +35,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.google.common.collect.Maps;
 import com.qcadoo.localization.api.TranslationService;
-import com.qcadoo.model.api.DataDefinitionService;
-import com.qcadoo.model.api.Entity;
-import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.view.api.components.ganttChart.GanttChartItem;
 import com.qcadoo.view.api.components.ganttChart.GanttChartScale;
 
@@ -46,7 +44,7 @@ import com.qcadoo.view.api.components.ganttChart.GanttChartScale;
 public class OrderGanttChartItemResolverImpl implements OrderGanttChartItemResolver {
 
     @Autowired
-    private DataDefinitionService dataDefinitionService;
+    private GanttOrdersCache ganttOrdersCache;
 
     @Autowired
     private TranslationService translationService;
@@ -54,36 +52,38 @@ public class OrderGanttChartItemResolverImpl implements OrderGanttChartItemResol
     @Override
     @Transactional
     public Map<String, List<GanttChartItem>> resolve(final GanttChartScale scale, final JSONObject context, final Locale locale) {
-        List<Entity> orders = dataDefinitionService.get("orders", "order").find()
-                .add(SearchRestrictions.ne("state", "04completed")).add(SearchRestrictions.lt("dateFrom", scale.getDateTo()))
-                .add(SearchRestrictions.gt("dateTo", scale.getDateFrom())).list().getEntities();
+        List<GanttOrder> orders = ganttOrdersCache.getOrders(scale.getDateFrom(), scale.getDateTo());
 
         List<GanttChartItem> items = new ArrayList<GanttChartItem>();
+        Map<String, String> stateDescriptions = Maps.newHashMap();
 
-        for (Entity order : orders) {
-            items.add(getItemForOrder(order, scale, locale));
+        for (GanttOrder order : orders) {
+            items.add(getItemForOrder(order, scale, locale, stateDescriptions));
         }
 
         return Collections.singletonMap("", items);
     }
 
-    private GanttChartItem getItemForOrder(final Entity order, final GanttChartScale scale, final Locale locale) {
-        Date from = (Date) order.getField("dateFrom");
-        Date to = (Date) order.getField("dateTo");
+    private GanttChartItem getItemForOrder(final GanttOrder order, final GanttChartScale scale, final Locale locale,
+            final Map<String, String> stateDescriptions) {
+        Date from = order.getDateFrom();
+        Date to = order.getDateTo();
 
-        if (order.getField("effectiveDateFrom") != null) {
+        if (order.getEffectiveDateFrom() != null) {
             long diff = to.getTime() - from.getTime();
-            from = (Date) order.getField("effectiveDateFrom");
+            from = order.getEffectiveDateFrom();
             to = new Date(from.getTime() + diff);
         }
 
-        return scale.createGanttChartItem("", getOrderDescription(order, locale), order.getId(), from, to);
+        return scale.createGanttChartItem("", getOrderDescription(order, locale, stateDescriptions), order.getId(), from, to);
     }
 
-    private String getOrderDescription(final Entity order, final Locale locale) {
-        return order.getStringField("number") + " - " + order.getStringField("name") + "<br/>"
-                + translationService.translate("orders.order.state.label", locale) + ": "
-                + translationService.translate("orders.order.state.value." + order.getStringField("state"), locale);
+    private String getOrderDescription(final GanttOrder order, final Locale locale, final Map<String, String> stateDescriptions) {
+        String stateDescription = stateDescriptions.computeIfAbsent(order.getState(),
+                state -> translationService.translate("orders.order.state.label", locale) + ": "
+                        + translationService.translate("orders.order.state.value." + state, locale));
+
+        return order.getNumber() + " - " + order.getName() + "<br/>" + stateDescription;
     }
 
 }
@@ -0,0 +1,293 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.ganttForOrders;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.orders.constants.OrdersConstants;
+import com.qcadoo.mes.orders.states.constants.OrderStateStringValues;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.model.api.search.SearchProjection;
+import com.qcadoo.model.api.search.SearchResult;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+public class GanttOrdersCacheTest {
+
+    private static final DateTime JANUARY = new DateTime(2017, 1, 1, 0, 0, 0);
+
+    private static final DateTime JULY = new DateTime(2017, 7, 1, 0, 0, 0);
+
+    private final Map<Integer, List<Entity>> tenantOrders = Maps.newHashMap();
+
+    private GanttOrdersCache ganttOrdersCache;
+
+    private DataDefinition orderDD;
+
+    private int currentTenantId = 1;
+
+    private long now = 1000L;
+
+    @Before
+    public void init() {
+        tenantOrders.put(1, Lists.newArrayList(mockOrder(1L, "1", JANUARY.plusDays(5), JANUARY.plusDays(10)),
+                mockOrder(2L, "2", JANUARY.plusDays(20), JANUARY.plusDays(40)),
+                mockOrder(3L, "3", JULY.plusDays(1), JULY.plusDays(3))));
+        tenantOrders.put(2, Lists.newArrayList(mockOrder(4L, "4", JANUARY.plusDays(5), JANUARY.plusDays(10))));
+
+        orderDD = mock(DataDefinition.class);
+        SearchCriteriaBuilder searchCriteriaBuilder = mock(SearchCriteriaBuilder.class);
+        SearchResult searchResult = mock(SearchResult.class);
+        given(orderDD.find()).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.add(any(SearchCriterion.class))).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.setProjection(any(SearchProjection.class))).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.list()).willReturn(searchResult);
+        given(searchResult.getEntities()).willAnswer(invocation -> tenantOrders.get(currentTenantId));
+
+        DataDefinitionService dataDefinitionService = mock(DataDefinitionService.class);
+        given(dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER)).willReturn(orderDD);
+
+        MultiTenantService multiTenantService = mock(MultiTenantService.class);
+        given(multiTenantService.getCurrentTenantId()).willAnswer(invocation -> currentTenantId);
+
+        ganttOrdersCache = new GanttOrdersCache();
+        ReflectionTestUtils.setField(ganttOrdersCache, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(ganttOrdersCache, "multiTenantService", multiTenantService);
+        ReflectionTestUtils.setField(ganttOrdersCache, "clock", (LongSupplier) () -> now);
+    }
+
+    @Test
+    public void shouldLoadOnlyNewlyVisiblePartsOfScrolledOrZoomedOutWindow() {
+        // given
+        getOrders(JANUARY, JANUARY.plusDays(15));
+
+        // when
+        List<Long> sameWindow = getOrders(JANUARY, JANUARY.plusDays(15));
+        List<Long> scrolled = getOrders(JANUARY.plusDays(10), JANUARY.plusDays(25));
+        List<Long> zoomedOut = getOrders(JANUARY.minusDays(10), JANUARY.plusDays(45));
+
+        // then
+        assertEquals(Lists.newArrayList(1L), sameWindow);
+        assertEquals(Lists.newArrayList(2L), scrolled);
+        assertEquals(Lists.newArrayList(1L, 2L), zoomedOut);
+        verify(orderDD, times(4)).find();
+    }
+
+    @Test
+    public void shouldKeepDisjointWindowsSideBySide() {
+        // given
+        getOrders(JANUARY, JANUARY.plusDays(15));
+
+        // when
+        List<Long> july = getOrders(JULY, JULY.plusDays(15));
+        List<Long> january = getOrders(JANUARY, JANUARY.plusDays(15));
+
+        // then
+        assertEquals(Lists.newArrayList(3L), july);
+        assertEquals(Lists.newArrayList(1L), january);
+        verify(orderDD, times(2)).find();
+    }
+
+    @Test
+    public void shouldStartNewWindowInsteadOfExtendingCachedOneOverLimit() {
+        // given
+        getOrders(JANUARY, JANUARY.plusDays(15));
+
+        // when
+        getOrders(JANUARY, JANUARY.plusDays(400));
+        getOrders(JANUARY, JANUARY.plusDays(15));
+
+        // then
+        verify(orderDD, times(2)).find();
+    }
+
+    @Test
+    public void shouldServeWindowOverLimitFromCache() {
+        // given
+        getOrders(JANUARY, JANUARY.plusDays(400));
+
+        // when
+        List<Long> orders = getOrders(JANUARY, JANUARY.plusDays(400));
+
+        // then
+        assertEquals(Lists.newArrayList(1L, 2L, 3L), orders);
+        verify(orderDD, times(1)).find();
+    }
+
+    @Test
+    public void shouldDropLeastRecentlyUsedWindow() {
+        // given
+        for (int i = 0; i <= GanttOrdersCache.MAX_WINDOWS_PER_TENANT; i++) {
+            getOrders(JANUARY.plusDays(10 * i), JANUARY.plusDays(10 * i + 5));
+        }
+
+        // when
+        getOrders(JANUARY.plusDays(10 * GanttOrdersCache.MAX_WINDOWS_PER_TENANT), JANUARY.plusDays(
+                10 * GanttOrdersCache.MAX_WINDOWS_PER_TENANT + 5));
+        getOrders(JANUARY, JANUARY.plusDays(5));
+
+        // then
+        verify(orderDD, times(GanttOrdersCache.MAX_WINDOWS_PER_TENANT + 2)).find();
+    }
+
+    @Test
+    public void shouldKeepOrdersOfEachTenantSeparately() {
+        // given
+        List<Long> firstTenantOrders = getOrders(JANUARY, JANUARY.plusDays(15));
+
+        // when
+        currentTenantId = 2;
+        List<Long> secondTenantOrders = getOrders(JANUARY, JANUARY.plusDays(15));
+
+        // then
+        assertEquals(Lists.newArrayList(1L), firstTenantOrders);
+        assertEquals(Lists.newArrayList(4L), secondTenantOrders);
+        verify(orderDD, times(2)).find();
+    }
+
+    @Test
+    public void shouldLoadWindowAgainWhenItGetsTooOld() {
+        // given
+        getOrders(JANUARY, JANUARY.plusDays(15));
+
+        // when
+        now += GanttOrdersCache.MAX_WINDOW_AGE_MILLIS + 1;
+        getOrders(JANUARY, JANUARY.plusDays(15));
+
+        // then
+        verify(orderDD, times(2)).find();
+    }
+
+    @Test
+    public void shouldInvalidateWhenDisplayedDataOfCachedOrderChanges() {
+        // given
+        getOrders(JANUARY, JANUARY.plusDays(15));
+
+        // when
+        ganttOrdersCache.onOrderSave(mockOrder(1L, "1", JANUARY.plusDays(6), JANUARY.plusDays(10)));
+        getOrders(JANUARY, JANUARY.plusDays(15));
+
+        // then
+        verify(orderDD, times(2)).find();
+    }
+
+    @Test
+    public void shouldNotInvalidateWhenDisplayedDataOfCachedOrderIsTheSame() {
+        // given
+        getOrders(JANUARY, JANUARY.plusDays(15));
+
+        // when
+        ganttOrdersCache.onOrderSave(mockOrder(1L, "1", JANUARY.plusDays(5), JANUARY.plusDays(10)));
+        getOrders(JANUARY, JANUARY.plusDays(15));
+
+        // then
+        verify(orderDD, times(1)).find();
+    }
+
+    @Test
+    public void shouldInvalidateOnlyWhenNewOrderFallsIntoCachedWindow() {
+        // given
+        getOrders(JANUARY, JANUARY.plusDays(15));
+
+        // when
+        ganttOrdersCache.onOrderSave(mockOrder(null, "5", JULY, JULY.plusDays(1)));
+        getOrders(JANUARY, JANUARY.plusDays(15));
+        ganttOrdersCache.onOrderSave(mockOrder(null, "6", JANUARY.plusDays(1), JANUARY.plusDays(2)));
+        getOrders(JANUARY, JANUARY.plusDays(15));
+
+        // then
+        verify(orderDD, times(2)).find();
+    }
+
+    @Test
+    public void shouldInvalidateWhenCachedOrderIsDeleted() {
+        // given
+        getOrders(JANUARY, JANUARY.plusDays(15));
+
+        // when
+        ganttOrdersCache.onOrderDelete(mockOrder(7L, "7", JULY.plusDays(1), JULY.plusDays(3)));
+        getOrders(JANUARY, JANUARY.plusDays(15));
+        ganttOrdersCache.onOrderDelete(mockOrder(1L, "1", JANUARY.plusDays(5), JANUARY.plusDays(10)));
+        getOrders(JANUARY, JANUARY.plusDays(15));
+
+        // then
+        verify(orderDD, times(2)).find();
+    }
+
+    @Test
+    public void shouldNotInvalidateWindowsOfOtherTenant() {
+        // given
+        getOrders(JANUARY, JANUARY.plusDays(15));
+
+        // when
+        currentTenantId = 2;
+        ganttOrdersCache.onOrderSave(mockOrder(1L, "1", JANUARY.plusDays(6), JANUARY.plusDays(10)));
+        currentTenantId = 1;
+        getOrders(JANUARY, JANUARY.plusDays(15));
+
+        // then
+        verify(orderDD, times(1)).find();
+    }
+
+    private List<Long> getOrders(final DateTime windowFrom, final DateTime windowTo) {
+        return ganttOrdersCache.getOrders(windowFrom.toDate(), windowTo.toDate()).stream().map(GanttOrder::getId)
+                .collect(Collectors.toList());
+    }
+
+    private Entity mockOrder(final Long id, final String number, final DateTime dateFrom, final DateTime dateTo) {
+        Entity order = mock(Entity.class);
+
+        given(order.getId()).willReturn(id);
+        given(order.getField("id")).willReturn(id);
+        given(order.getStringField(OrderFields.NUMBER)).willReturn(number);
+        given(order.getStringField(OrderFields.STATE)).willReturn(OrderStateStringValues.PENDING);
+        given(order.getDateField(OrderFields.DATE_FROM)).willReturn(dateFrom.toDate());
+        given(order.getDateField(OrderFields.DATE_TO)).willReturn(dateTo.toDate());
+
+        return order;
+    }
+
+}
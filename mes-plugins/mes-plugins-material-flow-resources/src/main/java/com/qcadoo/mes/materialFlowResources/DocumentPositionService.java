@@ -5,7 +5,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.qcadoo.mes.basic.GridResponse;
 import com.qcadoo.mes.basic.LookupUtils;
-import com.qcadoo.mes.basic.controllers.dataProvider.DataProvider;
+import com.qcadoo.mes.basic.controllers.dataProvider.LookupSearchService;
 import com.qcadoo.mes.basic.controllers.dataProvider.dto.AbstractDTO;
 import com.qcadoo.mes.basic.controllers.dataProvider.dto.ProductDTO;
 import com.qcadoo.mes.basic.controllers.dataProvider.responses.DataResponse;
@@ -36,7 +36,7 @@ public class DocumentPositionService {
     private LookupUtils lookupUtils;
 
     @Autowired
-    private DataProvider dataProvider;
+    private LookupSearchService lookupSearchService;
 
     @Autowired
     private DocumentPositionResourcesHelper positionResourcesHelper;
@@ -114,45 +114,37 @@ public class DocumentPositionService {
     }
 
     public List<AbstractDTO> getStorageLocations(String q, String product, String document) {
-
         if (Strings.isNullOrEmpty(q)) {
             return Lists.newArrayList();
-        } else {
-            Map<String, Object> paramMap = new HashMap<>();
-            paramMap.put("q", '%' + q + '%');
-            paramMap.put("document", Integer.parseInt(document));
-            if (Strings.isNullOrEmpty(product)) {
-                String query = "SELECT id, number from materialflowresources_storagelocation WHERE number ilike :q "
-                        + "AND location_id IN (SELECT DISTINCT COALESCE(locationfrom_id, locationto_id) FROM materialflowresources_document where id = :document) "
-                        + "LIMIT 20;";
-                return jdbcTemplate.query(query, paramMap, new BeanPropertyRowMapper(StorageLocationDTO.class));
-            } else {
-                String query = "SELECT id, number from materialflowresources_storagelocation WHERE number ilike :q "
-                        + "AND location_id IN (SELECT DISTINCT COALESCE(locationfrom_id, locationto_id) FROM materialflowresources_document where id = :document) "
-                        + "AND (product_id IN (SELECT id FROM basic_product WHERE number LIKE :product) OR product_id IS NULL) LIMIT 20;";
-                paramMap.put("product", product);
-                return jdbcTemplate.query(query, paramMap, new BeanPropertyRowMapper(StorageLocationDTO.class));
-            }
-
         }
+
+        return lookupSearchService.find(getStorageLocationsQuery(product), "number", q,
+                getStorageLocationsParameters(product, document), StorageLocationDTO.class, LookupSearchService.MAX_RESULTS);
     }
 
     public DataResponse getStorageLocationsResponse(String q, String product, String document) {
-        String preparedQuery;
-        if (Strings.isNullOrEmpty(product)) {
-            preparedQuery = "SELECT id, number from materialflowresources_storagelocation WHERE number ilike :query "
-                    + "AND location_id IN (SELECT DISTINCT COALESCE(locationfrom_id, locationto_id) FROM materialflowresources_document where id = "
-                    + Integer.parseInt(document) + ") AND active = true; ";
-        } else {
+        return lookupSearchService.search(getStorageLocationsQuery(product), "number", q,
+                getStorageLocationsParameters(product, document), StorageLocationDTO.class);
+    }
 
-            preparedQuery = "SELECT id, number from materialflowresources_storagelocation WHERE number ilike :query "
-                    + "AND location_id IN (SELECT DISTINCT COALESCE(locationfrom_id, locationto_id) FROM materialflowresources_document where id = "
-                    + Integer.parseInt(document) + ") " + "AND (product_id IN (SELECT id FROM basic_product WHERE number LIKE '"
-                    + product + "') OR product_id IS NULL) AND active = true;";
+    private String getStorageLocationsQuery(final String product) {
+        String query = "SELECT id, number FROM materialflowresources_storagelocation WHERE active = true "
+                + "AND location_id IN (SELECT DISTINCT COALESCE(locationfrom_id, locationto_id) "
+                + "FROM materialflowresources_document WHERE id = :document)";
+
+        if (Strings.isNullOrEmpty(product)) {
+            return query;
         }
-        List<AbstractDTO> entities = getStorageLocations(q, product, document);
-        Map<String, Object> paramMap = new HashMap<>();
-        return dataProvider.getDataResponse(q, preparedQuery, entities, paramMap);
+
+        return query + " AND (product_id IN (SELECT id FROM basic_product WHERE number LIKE :product) OR product_id IS NULL)";
+    }
+
+    private Map<String, Object> getStorageLocationsParameters(final String product, final String document) {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("document", Integer.parseInt(document));
+        parameters.put("product", product);
+
+        return parameters;
     }
 
     public Map<String, Object> getGridConfig(Long documentId) {
@@ -372,6 +364,11 @@ public class DocumentPositionService {
 
     public List<AbstractDTO> getResources(Long document, String q, String product, BigDecimal conversion,
             boolean useAdditionalCode, String additionalCode) {
+        return getResources(document, q, product, conversion, useAdditionalCode, additionalCode, null);
+    }
+
+    private List<AbstractDTO> getResources(Long document, String q, String product, BigDecimal conversion,
+            boolean useAdditionalCode, String additionalCode, Integer limit) {
 
         if (Strings.isNullOrEmpty(q) || Strings.isNullOrEmpty(product)) {
             return Lists.newArrayList();
@@ -386,6 +383,9 @@ public class DocumentPositionService {
             }
             String query = positionResourcesHelper.getResourceQuery(document, true,
                     addMethodOfDisposalCondition(document, paramMap, false, useAdditionalCode), useAdditionalCode);
+            if (limit != null) {
+                query = query + " LIMIT " + limit;
+            }
             return jdbcTemplate.query(query, paramMap, new BeanPropertyRowMapper(ResourceDTO.class));
         }
     }
@@ -397,25 +397,20 @@ public class DocumentPositionService {
         }
         boolean useAdditionalCode = org.apache.commons.lang3.StringUtils.isNotEmpty(additionalCode);
         String query = '%' + q + '%';
-        List<AbstractDTO> entities = getResources(document, query, product, conversion, useAdditionalCode, additionalCode);
+        // one row more than shown tells that there are more resources, without counting them
+        int limit = LookupSearchService.MAX_RESULTS + 1;
+        List<AbstractDTO> entities = getResources(document, query, product, conversion, useAdditionalCode, additionalCode,
+                limit);
 
         if (entities.isEmpty() && useAdditionalCode) {
-            useAdditionalCode = false;
-            entities = getResources(document, query, product, conversion, false, additionalCode);
+            entities = getResources(document, query, product, conversion, false, additionalCode, limit);
         }
 
-        Map<String, Object> paramMap = new HashMap<>();
-        paramMap.put("product", product);
-        paramMap.put("conversion", conversion);
-        paramMap.put("context", document);
-        if (useAdditionalCode) {
-            paramMap.put("add_code", additionalCode);
+        if (entities.size() > LookupSearchService.MAX_RESULTS) {
+            return new DataResponse(entities.subList(0, LookupSearchService.MAX_RESULTS), LookupSearchService.MAX_RESULTS + 1);
         }
 
-        String preparedQuery = positionResourcesHelper.getResourceQuery(document, true,
-                addMethodOfDisposalCondition(document, paramMap, false, useAdditionalCode), useAdditionalCode);
-
-        return dataProvider.getDataResponse(query, preparedQuery, entities, paramMap);
+        return new DataResponse(entities, entities.size());
     }
 
     public ResourceDTO getResourceByNumber(String resource) {
@@ -349,7 +349,7 @@ public class MaterialFlowResourcesServiceImpl implements MaterialFlowResourcesSe
 
     @Override
     public boolean canChangeDateWhenTransferToWarehouse() {
-        String changeDateWhenTransferToWarehouseType = parameterService.getParameter().getStringField(
+        String changeDateWhenTransferToWarehouseType = parameterService.getParameterSnapshot().getStringField(
                 ParameterFieldsMFR.CHANGE_DATE_WHEN_TRANSFER_TO_WAREHOUSE_TYPE);
 
         return !ChangeDateWhenTransferToWarehouseType.NEVER.getStringValue().equals(changeDateWhenTransferToWarehouseType);
@@ -357,7 +357,7 @@ public class MaterialFlowResourcesServiceImpl implements MaterialFlowResourcesSe
 
     @Override
     public boolean shouldValidateDateWhenTransferToWarehouse() {
-        String changeDateWhenTransferToWarehouseType = parameterService.getParameter().getStringField(
+        String changeDateWhenTransferToWarehouseType = parameterService.getParameterSnapshot().getStringField(
                 ParameterFieldsMFR.CHANGE_DATE_WHEN_TRANSFER_TO_WAREHOUSE_TYPE);
 
         return ChangeDateWhenTransferToWarehouseType.VALIDATE_WITH_RESOURCES.getStringValue().equals(
@@ -55,6 +55,10 @@ public class WarehouseMethodOfDisposalService {
     }
 
     public String getSqlOrderByForResource(final Long documentId) {
+        return " order by " + getSqlSortForResource(documentId) + " ";
+    }
+
+    public String getSqlSortForResource(final Long documentId) {
         Entity document = dataDefinitionService
                 .get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER, MaterialFlowResourcesConstants.MODEL_DOCUMENT)
                 .get(documentId);
@@ -62,14 +66,14 @@ public class WarehouseMethodOfDisposalService {
         WarehouseAlgorithm algorithm = WarehouseAlgorithm.parseString(alg);
         switch (algorithm) {
             case FEFO:
-                return " order by expirationdate asc ";
+                return "expirationdate asc";
             case FIFO:
-                return " order by time asc ";
+                return "time asc";
             case LEFO:
-                return " order by expirationdate desc ";
+                return "expirationdate desc";
             case LIFO:
-                return " order by time desc ";
+                return "time desc";
         }
-        return " order by expirationdate asc ";
+        return "expirationdate asc";
     }
 }
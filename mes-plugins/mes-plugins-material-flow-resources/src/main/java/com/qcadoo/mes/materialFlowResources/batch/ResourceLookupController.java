@@ -61,17 +61,19 @@ public class ResourceLookupController extends BasicLookupController<ResourceDTO>
         if ("wasteString".equals(sidx)) {
             sidx = "waste";
         }
-        String query = getQuery(context, useAdditionalCode,
-                documentPositionService.addMethodOfDisposalCondition(context, parameters, false, useAdditionalCode),
-                !properFilter);
+        boolean addMethodOfDisposal = documentPositionService.addMethodOfDisposalCondition(context, parameters, false,
+                useAdditionalCode);
+        String query = getQuery(context, useAdditionalCode, addMethodOfDisposal, !properFilter);
 
-        GridResponse<ResourceDTO> response = lookupUtils.getGridResponse(query, sidx, sord, page, perPage, record, parameters);
+        GridResponse<ResourceDTO> response = lookupUtils.getGridResponse(query, sidx, sord, page, perPage, record, parameters,
+                true, getPrimaryOrder(context, addMethodOfDisposal));
 
         if (response.getRows().isEmpty() && useAdditionalCode) {
             parameters = geParameters(context, record, false, additionalCode);
-            query = getQuery(context, false,
-                    documentPositionService.addMethodOfDisposalCondition(context, parameters, false, false), !properFilter);
-            response = lookupUtils.getGridResponse(query, sidx, sord, page, perPage, record, parameters);
+            addMethodOfDisposal = documentPositionService.addMethodOfDisposalCondition(context, parameters, false, false);
+            query = getQuery(context, false, addMethodOfDisposal, !properFilter);
+            response = lookupUtils.getGridResponse(query, sidx, sord, page, perPage, record, parameters, true,
+                    getPrimaryOrder(context, addMethodOfDisposal));
         }
         setTranslatedWasteFlag(response);
         return response;
@@ -108,12 +110,20 @@ public class ResourceLookupController extends BasicLookupController<ResourceDTO>
             // queryBuilder.append(" AND additionalcode_id = (SELECT id FROM basic_additionalcode WHERE code = :add_code) ");
             // }
             // queryBuilder.append(" )");
-            queryBuilder.append(warehouseMethodOfDisposalService.getSqlOrderByForResource(context));
         }
         queryBuilder.append(") as resources");
         return queryBuilder.toString();
     }
 
+    // resources are offered in the order of warehouse method of disposal, id only breaks ties
+    private String getPrimaryOrder(final Long context, final boolean addMethodOfDisposal) {
+        if (addMethodOfDisposal) {
+            return warehouseMethodOfDisposalService.getSqlSortForResource(context);
+        }
+
+        return null;
+    }
+
     protected Map<String, Object> geParameters(Long context, ResourceDTO resourceDTO, boolean useAdditionalCode,
             String additionalCode) {
         Map<String, Object> params = new HashMap<>();
@@ -14,4 +14,8 @@ public final class ResourceStockFields {
     public static final String RESERVED_QUANTITY = "reservedQuantity";
 
     public static final String AVAILABLE_QUANTITY = "availableQuantity";
+
+    public static final String ORDERED_QUANTITY = "orderedQuantity";
+
+    public static final String MINIMUM_STATE = "minimumState";
 }
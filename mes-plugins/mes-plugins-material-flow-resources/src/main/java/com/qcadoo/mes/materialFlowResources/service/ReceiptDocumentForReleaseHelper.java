@@ -55,7 +55,7 @@ public class ReceiptDocumentForReleaseHelper {
         }
         fillPositions(location, document, pzBuilder);
         Entity connectedReceiptDocument = null;
-        if (parameterService.getParameter().getStringField("documentsStatus").equals("01accepted")) {
+        if (parameterService.getParameterSnapshot().getStringField("documentsStatus").equals("01accepted")) {
             connectedReceiptDocument = pzBuilder.setAccepted().build();
         } else {
             connectedReceiptDocument = pzBuilder.build();
@@ -3,7 +3,6 @@ package com.qcadoo.mes.materialFlowResources.service;
 import java.math.BigDecimal;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.HashMap;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -14,6 +13,7 @@ import org.springframework.stereotype.Service;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.materialFlowResources.constants.DocumentFields;
 import com.qcadoo.mes.materialFlowResources.constants.DocumentState;
 import com.qcadoo.mes.materialFlowResources.constants.DocumentType;
@@ -46,8 +46,13 @@ public class ReservationsService {
     @Autowired
     private MultiTenantService multiTenantService;
 
+    @Autowired
+    private ParameterService parameterService;
+
     private final static String L_QUANTITY = "quantity";
 
+    private static final String L_DRAFT_MAKES_RESERVATION_KEY = "materialFlowResources.draftMakesReservation";
+
     public void cleanReservationsTrigger() {
         multiTenantService.doInMultiTenantContext(new MultiTenantCallback() {
 
@@ -65,6 +70,11 @@ public class ReservationsService {
     }
 
     public boolean reservationsEnabledForDocumentPositions() {
+        return parameterService.getParameterSnapshot().getDerivedValue(L_DRAFT_MAKES_RESERVATION_KEY,
+                this::isDraftMakesReservation);
+    }
+
+    private boolean isDraftMakesReservation() {
         Entity documentPositionParameters = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
                 MaterialFlowResourcesConstants.MODEL_DOCUMENT_POSITION_PARAMETERS).find().setMaxResults(1).uniqueResult();
         if (documentPositionParameters != null) {
@@ -273,9 +283,7 @@ public class ReservationsService {
     }
 
     public Boolean reservationsEnabledForDocumentPositions(Map<String, Object> params) {
-        String query = "SELECT draftmakesreservation FROM materialflowresources_documentpositionparameters LIMIT 1";
-        Boolean enabled = jdbcTemplate.queryForObject(query, new HashMap<String, Object>() {
-        }, Boolean.class);
+        boolean enabled = reservationsEnabledForDocumentPositions();
         String queryForDocumentType = "SELECT type, inBuffer FROM materialflowresources_document WHERE id = :document_id";
         Map<String, Object> documentMap = jdbcTemplate.queryForMap(queryForDocumentType, params);
         return enabled && DocumentType.isOutbound((String)documentMap.get("type")) && !(boolean)documentMap.get("inBuffer");
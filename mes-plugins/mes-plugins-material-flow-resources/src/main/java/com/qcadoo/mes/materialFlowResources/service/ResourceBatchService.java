@@ -0,0 +1,163 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Set-based writes of resource consumption made by release and transfer documents acceptance.
+ */
+@Service
+public class ResourceBatchService {
+
+    private static final String L_IDS = "ids";
+
+    private static final String LOCK_RESOURCES_QUERY = "SELECT id FROM materialflowresources_resource "
+            + "WHERE id IN (:resourceIds) ORDER BY id FOR UPDATE";
+
+    private static final String LOCK_RESOURCE_STOCKS_QUERY = "SELECT id FROM materialflowresources_resourcestock "
+            + "WHERE location_id = :locationId AND product_id IN (:productIds) ORDER BY id FOR UPDATE";
+
+    private static final String UPDATE_RESOURCE_QUERY = "UPDATE materialflowresources_resource SET quantity = :quantity, "
+            + "availablequantity = :availableQuantity, reservedquantity = :reservedQuantity, "
+            + "quantityinadditionalunit = :quantityInAdditionalUnit WHERE id = :id";
+
+    private static final String RESOURCES_WITH_RESERVATIONS_QUERY = "SELECT DISTINCT resource_id "
+            + "FROM materialflowresources_reservation WHERE resource_id IN (:ids)";
+
+    private static final List<String> NULLIFY_RESOURCE_QUERIES = Lists.newArrayList(
+            "UPDATE materialflowresources_position SET resource_id = NULL WHERE resource_id IN (:ids)",
+            "UPDATE materialflowresources_resourcecorrection SET resource_id = NULL WHERE resource_id IN (:ids)",
+            "UPDATE materialflowresources_attributevalue SET resource_id = NULL WHERE resource_id IN (:ids)");
+
+    private static final String DELETE_RESOURCES_QUERY = "DELETE FROM materialflowresources_resource WHERE id IN (:ids)";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PalletNumberDisposalService palletNumberDisposalService;
+
+    @Autowired
+    private ResourceStockService resourceStockService;
+
+    /**
+     * Locks (SELECT ... FOR UPDATE) resources chosen on positions and resource stocks of given products in given warehouse, one
+     * row per product. Concurrent acceptances picking the same products from the same warehouse are serialized before any
+     * allocation is made, while picked resources are still read lazily and documents with other products don't wait.
+     */
+    public void lockResources(final Entity warehouse, final Collection<Long> productIds, final Collection<Long> resourceIds) {
+        if (!resourceIds.isEmpty()) {
+            jdbcTemplate.queryForList(LOCK_RESOURCES_QUERY, new MapSqlParameterSource("resourceIds", resourceIds), Long.class);
+        }
+
+        if (warehouse != null && !productIds.isEmpty()) {
+            MapSqlParameterSource params = new MapSqlParameterSource();
+            params.addValue("locationId", warehouse.getId());
+            params.addValue("productIds", productIds);
+
+            jdbcTemplate.queryForList(LOCK_RESOURCE_STOCKS_QUERY, params, Long.class);
+        }
+    }
+
+    public void apply(final ResourceConsumption consumption) {
+        if (consumption.isEmpty()) {
+            return;
+        }
+
+        updateResources(consumption.getUpdatedResources());
+        deleteResources(consumption.getDeletedResources());
+        resourceStockService.applyResourceStockDeltas(consumption.getStockDeltas());
+    }
+
+    private void updateResources(final Collection<Entity> resources) {
+        if (resources.isEmpty()) {
+            return;
+        }
+
+        SqlParameterSource[] batch = resources.stream().map(resource -> {
+            MapSqlParameterSource params = new MapSqlParameterSource();
+            params.addValue("id", resource.getId());
+            params.addValue("quantity", resource.getDecimalField(ResourceFields.QUANTITY));
+            params.addValue("availableQuantity", resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY));
+            params.addValue("reservedQuantity", resource.getDecimalField(ResourceFields.RESERVED_QUANTITY));
+            params.addValue("quantityInAdditionalUnit", resource.getDecimalField(ResourceFields.QUANTITY_IN_ADDITIONAL_UNIT));
+            return params;
+        }).toArray(SqlParameterSource[]::new);
+
+        jdbcTemplate.batchUpdate(UPDATE_RESOURCE_QUERY, batch);
+    }
+
+    private void deleteResources(final Collection<Entity> resources) {
+        if (resources.isEmpty()) {
+            return;
+        }
+
+        Map<Long, Entity> resourcesById = Maps.newLinkedHashMap();
+        resources.forEach(resource -> resourcesById.put(resource.getId(), resource));
+
+        // reservations have to be deleted with their hooks, which update resource stocks
+        Set<Long> withReservations = Sets.newHashSet(jdbcTemplate.queryForList(RESOURCES_WITH_RESERVATIONS_QUERY,
+                new MapSqlParameterSource(L_IDS, resourcesById.keySet()), Long.class));
+
+        for (Long resourceId : withReservations) {
+            Entity resource = resourcesById.remove(resourceId);
+            resource.getDataDefinition().delete(resourceId);
+        }
+
+        if (!resourcesById.isEmpty()) {
+            MapSqlParameterSource params = new MapSqlParameterSource(L_IDS, resourcesById.keySet());
+
+            for (String query : NULLIFY_RESOURCE_QUERIES) {
+                jdbcTemplate.update(query, params);
+            }
+            jdbcTemplate.update(DELETE_RESOURCES_QUERY, params);
+        }
+
+        Map<Long, Entity> palletNumbers = Maps.newLinkedHashMap();
+        for (Entity resource : resources) {
+            Entity palletNumber = resource.getBelongsToField(ResourceFields.PALLET_NUMBER);
+            if (palletNumber != null) {
+                palletNumbers.putIfAbsent(palletNumber.getId(), palletNumber);
+            }
+        }
+        palletNumbers.values().forEach(palletNumberDisposalService::tryToDispose);
+    }
+
+}
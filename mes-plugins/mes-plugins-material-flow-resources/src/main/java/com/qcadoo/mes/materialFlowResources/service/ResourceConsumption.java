@@ -0,0 +1,107 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * In-memory result of consuming resources by release or transfer document's positions.
+ * 
+ * Changes of consumed resources and resource stocks are collected here while positions are processed, and written at once by
+ * {@link ResourceBatchService#apply(ResourceConsumption)}. Resources read again by later positions of the same document are
+ * overlaid with already collected changes, so allocation gives the same result as saving each resource right away.
+ */
+public final class ResourceConsumption {
+
+    private final Map<Long, Entity> updatedResources = Maps.newLinkedHashMap();
+
+    private final Map<Long, Entity> deletedResources = Maps.newLinkedHashMap();
+
+    private final List<ResourceStockDelta> stockDeltas = Lists.newArrayList();
+
+    public void updateResource(final Entity resource) {
+        updatedResources.put(resource.getId(), resource);
+    }
+
+    public void deleteResource(final Entity resource) {
+        updatedResources.remove(resource.getId());
+        deletedResources.put(resource.getId(), resource);
+    }
+
+    public void removeResourceStock(final Entity product, final Entity location, final BigDecimal quantity) {
+        stockDeltas.add(ResourceStockDelta.ofQuantity(product, location, quantity.negate()));
+    }
+
+    public boolean isDeleted(final Entity resource) {
+        return deletedResources.containsKey(resource.getId());
+    }
+
+    /**
+     * Copies already consumed quantities into given resource, read from the database before this consumption was applied.
+     * 
+     * @return false if given resource was already deleted (or used up) by this consumption
+     */
+    public boolean overlay(final Entity resource) {
+        if (isDeleted(resource)) {
+            return false;
+        }
+        Entity updatedResource = updatedResources.get(resource.getId());
+        if (updatedResource != null && updatedResource != resource) {
+            resource.setField(ResourceFields.QUANTITY, updatedResource.getDecimalField(ResourceFields.QUANTITY));
+            resource.setField(ResourceFields.AVAILABLE_QUANTITY,
+                    updatedResource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY));
+            resource.setField(ResourceFields.RESERVED_QUANTITY,
+                    updatedResource.getDecimalField(ResourceFields.RESERVED_QUANTITY));
+            resource.setField(ResourceFields.QUANTITY_IN_ADDITIONAL_UNIT,
+                    updatedResource.getDecimalField(ResourceFields.QUANTITY_IN_ADDITIONAL_UNIT));
+        }
+        return true;
+    }
+
+    public Collection<Entity> getUpdatedResources() {
+        return Collections.unmodifiableCollection(updatedResources.values());
+    }
+
+    public Collection<Entity> getDeletedResources() {
+        return Collections.unmodifiableCollection(deletedResources.values());
+    }
+
+    public List<ResourceStockDelta> getStockDeltas() {
+        return Collections.unmodifiableList(stockDeltas);
+    }
+
+    public boolean isEmpty() {
+        return updatedResources.isEmpty() && deletedResources.isEmpty() && stockDeltas.isEmpty();
+    }
+
+}
@@ -24,7 +24,6 @@
 package com.qcadoo.mes.materialFlowResources.service;
 
 import java.math.BigDecimal;
-import java.util.List;
 
 import com.qcadoo.mes.materialFlowResources.constants.WarehouseAlgorithm;
 import com.qcadoo.model.api.Entity;
@@ -37,7 +36,7 @@ public interface ResourceManagementService {
 
     void moveResourcesForTransferDocument(Entity document);
 
-    List<Entity> getResourcesForWarehouseProductAndAlgorithm(Entity warehouse, Entity product, Entity position,
+    Iterable<Entity> getResourcesForWarehouseProductAndAlgorithm(Entity warehouse, Entity product, Entity position,
             WarehouseAlgorithm warehouseAlgorithm);
 
     BigDecimal convertToGivenUnit(BigDecimal quantity, Entity position);
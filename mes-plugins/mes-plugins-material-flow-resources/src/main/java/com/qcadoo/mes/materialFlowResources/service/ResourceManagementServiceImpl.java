@@ -24,8 +24,10 @@
 package com.qcadoo.mes.materialFlowResources.service;
 
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
 import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.mes.basic.constants.UnitConversionItemFieldsB;
 import com.qcadoo.mes.materialFlow.constants.LocationFields;
@@ -35,7 +37,6 @@ import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
 import com.qcadoo.model.api.search.SearchCriteriaBuilder;
-import com.qcadoo.model.api.search.SearchOrders;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.model.api.units.PossibleUnitConversions;
 import com.qcadoo.model.api.units.UnitConversionService;
@@ -48,8 +49,8 @@ import org.springframework.transaction.annotation.Transactional;
 import java.math.BigDecimal;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
-import static com.qcadoo.mes.materialFlow.constants.TransferFields.TIME;
 import static com.qcadoo.mes.materialFlowResources.constants.ResourceFields.QUANTITY;
 
 @Service
@@ -68,15 +69,18 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
     @Autowired
     private UnitConversionService unitConversionService;
 
-    @Autowired
-    private PalletNumberDisposalService palletNumberDisposalService;
-
     @Autowired
     private ResourceStockService resourceStockService;
 
     @Autowired
     private ReservationsService reservationsService;
 
+    @Autowired
+    private ResourcePickingService resourcePickingService;
+
+    @Autowired
+    private ResourceBatchService resourceBatchService;
+
     public ResourceManagementServiceImpl() {
 
     }
@@ -110,42 +114,33 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
     }
 
     private void setPositionAttributesFromResource(final Entity position, final Entity resource) {
-        List<Entity> attributes = resource.getHasManyField(ResourceFields.ATRRIBUTE_VALUES);
-
-        List<Entity> newAttributes = Lists.newArrayList();
-
-        DataDefinition attributeDD = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
-                MaterialFlowResourcesConstants.MODEL_ATTRIBUTE_VALUE);
-
-        for (Entity attribute : attributes) {
-            List<Entity> newAttribute = attributeDD.copy(attribute.getId());
-
-            newAttribute.get(0).setField(AttributeValueFields.POSITION, position);
-            newAttribute.get(0).setField(AttributeValueFields.RESOURCE, null);
-
-            newAttributes.addAll(newAttribute);
-        }
-
-        position.setField(PositionFields.ATRRIBUTE_VALUES, newAttributes);
+        position.setField(PositionFields.ATRRIBUTE_VALUES,
+                copyAttributeValues(resource, AttributeValueFields.POSITION, position));
     }
 
     private void setResourceAttributesFromResource(final Entity resource, final Entity baseResource) {
-        List<Entity> attributes = baseResource.getHasManyField(ResourceFields.ATRRIBUTE_VALUES);
+        resource.setField(ResourceFields.ATRRIBUTE_VALUES,
+                copyAttributeValues(baseResource, AttributeValueFields.RESOURCE, resource));
+    }
 
+    private List<Entity> copyAttributeValues(final Entity baseResource, final String ownerField, final Entity owner) {
         List<Entity> newAttributes = Lists.newArrayList();
 
         DataDefinition attributeDD = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
                 MaterialFlowResourcesConstants.MODEL_ATTRIBUTE_VALUE);
 
-        for (Entity attribute : attributes) {
-            List<Entity> newAttribute = attributeDD.copy(attribute.getId());
+        // copies are saved together with their owner, instead of copying each attribute value row by row
+        for (Entity attribute : baseResource.getHasManyField(ResourceFields.ATRRIBUTE_VALUES)) {
+            Entity newAttribute = attributeDD.create();
 
-            newAttribute.get(0).setField(AttributeValueFields.RESOURCE, resource);
+            newAttribute.setField(AttributeValueFields.ATTRIBUTE, attribute.getField(AttributeValueFields.ATTRIBUTE));
+            newAttribute.setField(AttributeValueFields.VALUE, attribute.getField(AttributeValueFields.VALUE));
+            newAttribute.setField(ownerField, owner);
 
-            newAttributes.addAll(newAttribute);
+            newAttributes.add(newAttribute);
         }
 
-        resource.setField(ResourceFields.ATRRIBUTE_VALUES, newAttributes);
+        return newAttributes;
     }
 
     public Entity createResource(final Entity document, final Entity warehouse, final Entity position, final Object date) {
@@ -415,6 +410,10 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
 
         List<Entity> generatedPositions = Lists.newArrayList();
 
+        ResourceConsumption consumption = new ResourceConsumption();
+
+        lockResources(warehouse, document);
+
         for (Entity position : document.getHasManyField(DocumentFields.POSITIONS)) {
             Entity product = position.getBelongsToField(PositionFields.PRODUCT);
             Entity resource = position.getBelongsToField(PositionFields.RESOURCE);
@@ -435,7 +434,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                 quantityInWarehouse = getQuantityOfProductFromMultimap(quantitiesForWarehouse, product);
             }
 
-            generatedPositions.addAll(updateResources(warehouse, position, warehouseAlgorithm));
+            generatedPositions.addAll(updateResources(warehouse, position, warehouseAlgorithm, consumption));
 
             enoughResources = enoughResources && position.isValid();
 
@@ -451,6 +450,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
             }
         }
 
+        resourceBatchService.apply(consumption);
+
         if (!enoughResources) {
             addDocumentError(document, warehouse, errorMessage);
         } else {
@@ -468,7 +469,25 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         }
     }
 
-    private List<Entity> updateResources(Entity warehouse, Entity position, WarehouseAlgorithm warehouseAlgorithm) {
+    private void lockResources(final Entity warehouse, final Entity document) {
+        Set<Long> productIds = Sets.newHashSet();
+        Set<Long> resourceIds = Sets.newHashSet();
+
+        for (Entity position : document.getHasManyField(DocumentFields.POSITIONS)) {
+            productIds.add(position.getBelongsToField(PositionFields.PRODUCT).getId());
+
+            Entity resource = position.getBelongsToField(PositionFields.RESOURCE);
+
+            if (resource != null) {
+                resourceIds.add(resource.getId());
+            }
+        }
+
+        resourceBatchService.lockResources(warehouse, productIds, resourceIds);
+    }
+
+    private List<Entity> updateResources(Entity warehouse, Entity position, WarehouseAlgorithm warehouseAlgorithm,
+            final ResourceConsumption consumption) {
         DataDefinition positionDD = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
                 MaterialFlowResourcesConstants.MODEL_POSITION);
 
@@ -476,11 +495,12 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
 
         Entity product = position.getBelongsToField(PositionFields.PRODUCT);
 
-        List<Entity> resources = getResourcesForWarehouseProductAndAlgorithm(warehouse, product, position, warehouseAlgorithm);
+        Iterable<Entity> resources = getResourcesForWarehouseProductAndAlgorithm(warehouse, product, position,
+                warehouseAlgorithm, consumption);
 
         BigDecimal quantity = position.getDecimalField(PositionFields.QUANTITY);
 
-        resourceStockService.removeResourceStock(product, warehouse, quantity);
+        consumption.removeResourceStock(product, warehouse, quantity);
         for (Entity resource : resources) {
             BigDecimal resourceQuantity = resource.getDecimalField(ResourceFields.QUANTITY);
             BigDecimal resourceAvailableQuantity = resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY);
@@ -508,9 +528,9 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
             if (quantity.compareTo(resourceAvailableQuantity) >= 0) {
                 quantity = quantity.subtract(resourceAvailableQuantity, numberService.getMathContext());
                 if (resourceQuantity.compareTo(resourceAvailableQuantity) <= 0) {
-                    Entity palletNumberToDispose = resource.getBelongsToField(ResourceFields.PALLET_NUMBER);
-                    resource.getDataDefinition().delete(resource.getId());
-                    palletNumberDisposalService.tryToDispose(palletNumberToDispose);
+                    consumption.deleteResource(resource);
+                    // resource doesn't exist anymore, the same way it was nullified by resource's cascade
+                    newPosition.setField(PositionFields.RESOURCE, null);
                 } else {
                     BigDecimal newResourceQuantity = resourceQuantity.subtract(resourceAvailableQuantity);
                     BigDecimal resourceConversion = resource.getDecimalField(ResourceFields.CONVERSION);
@@ -519,7 +539,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                     resource.setField(ResourceFields.QUANTITY, newResourceQuantity);
                     resource.setField(ResourceFields.QUANTITY_IN_ADDITIONAL_UNIT,
                             numberService.setScale(quantityInAdditionalUnit));
-                    resource.getDataDefinition().save(resource);
+                    consumption.updateResource(resource);
                 }
 
                 newPosition.setField(PositionFields.QUANTITY, numberService.setScale(resourceAvailableQuantity));
@@ -549,7 +569,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                 resource.setField(ResourceFields.QUANTITY, numberService.setScale(resourceQuantity));
                 resource.setField(ResourceFields.AVAILABLE_QUANTITY, resourceAvailableQuantity);
 
-                resource.getDataDefinition().save(resource);
+                consumption.updateResource(resource);
                 newPosition.setField(PositionFields.QUANTITY, numberService.setScale(quantity));
 
                 BigDecimal givenQuantity = convertToGivenUnit(quantity, position);
@@ -618,6 +638,10 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         Multimap<Long, BigDecimal> quantitiesForWarehouse = getQuantitiesInWarehouse(warehouseFrom,
                 getProductsAndPositionsFromDocument(document));
 
+        ResourceConsumption consumption = new ResourceConsumption();
+
+        lockResources(warehouseFrom, document);
+
         for (Entity position : document.getHasManyField(DocumentFields.POSITIONS)) {
             Entity product = position.getBelongsToField(PositionFields.PRODUCT);
             BigDecimal quantityInWarehouse;
@@ -628,7 +652,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                 quantityInWarehouse = getQuantityOfProductFromMultimap(quantitiesForWarehouse, product);
             }
 
-            moveResources(warehouseFrom, warehouseTo, position, date, warehouseAlgorithm);
+            moveResources(warehouseFrom, warehouseTo, position, date, warehouseAlgorithm, consumption);
             enoughResources = enoughResources && position.isValid();
 
             if (!position.isValid()) {
@@ -643,6 +667,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
             }
         }
 
+        resourceBatchService.apply(consumption);
+
         if (!enoughResources) {
             addDocumentError(document, warehouseFrom, errorMessage);
         } else {
@@ -671,15 +697,16 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
     }
 
     private void moveResources(Entity warehouseFrom, Entity warehouseTo, Entity position, Object date,
-            WarehouseAlgorithm warehouseAlgorithm) {
+            WarehouseAlgorithm warehouseAlgorithm, final ResourceConsumption consumption) {
         Entity product = position.getBelongsToField(PositionFields.PRODUCT);
 
-        List<Entity> resources = getResourcesForWarehouseProductAndAlgorithm(warehouseFrom, product, position, warehouseAlgorithm);
+        Iterable<Entity> resources = getResourcesForWarehouseProductAndAlgorithm(warehouseFrom, product, position,
+                warehouseAlgorithm, consumption);
 
         DataDefinition positionDD = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
                 MaterialFlowResourcesConstants.MODEL_POSITION);
         BigDecimal quantity = position.getDecimalField(PositionFields.QUANTITY);
-        resourceStockService.removeResourceStock(product, warehouseFrom, quantity);
+        consumption.removeResourceStock(product, warehouseFrom, quantity);
         for (Entity resource : resources) {
             BigDecimal resourceQuantity = resource.getDecimalField(QUANTITY);
 
@@ -687,9 +714,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
             if (quantity.compareTo(resourceAvailableQuantity) >= 0) {
                 quantity = quantity.subtract(resourceAvailableQuantity, numberService.getMathContext());
                 if (resourceQuantity.compareTo(resourceAvailableQuantity) <= 0) {
-                    Entity palletNumberToDispose = resource.getBelongsToField(ResourceFields.PALLET_NUMBER);
-                    resource.getDataDefinition().delete(resource.getId());
-                    palletNumberDisposalService.tryToDispose(palletNumberToDispose);
+                    consumption.deleteResource(resource);
                 } else {
                     BigDecimal newResourceQuantity = resourceQuantity.subtract(resourceAvailableQuantity);
                     BigDecimal resourceConversion = resource.getDecimalField(ResourceFields.CONVERSION);
@@ -698,7 +723,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                     resource.setField(ResourceFields.QUANTITY, newResourceQuantity);
                     resource.setField(ResourceFields.QUANTITY_IN_ADDITIONAL_UNIT,
                             numberService.setScale(quantityInAdditionalUnit));
-                    resource.getDataDefinition().save(resource);
+                    consumption.updateResource(resource);
                 }
 
                 Entity newResource = createResource(position, warehouseTo, resource, resourceAvailableQuantity, date, true);
@@ -722,7 +747,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                 resource.setField(ResourceFields.QUANTITY, numberService.setScale(resourceQuantity));
                 resource.setField(ResourceFields.AVAILABLE_QUANTITY, resourceAvailableQuantity);
 
-                resource.getDataDefinition().save(resource);
+                consumption.updateResource(resource);
 
                 Entity newResource = createResource(position, warehouseTo, resource, quantity, date, true);
 
@@ -742,227 +767,44 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
     }
 
     @Override
-    public List<Entity> getResourcesForWarehouseProductAndAlgorithm(Entity warehouse, Entity product, Entity position,
+    public Iterable<Entity> getResourcesForWarehouseProductAndAlgorithm(Entity warehouse, Entity product, Entity position,
             WarehouseAlgorithm warehouseAlgorithm) {
-        List<Entity> resources = Lists.newArrayList();
+        return getResourcesForWarehouseProductAndAlgorithm(warehouse, product, position, warehouseAlgorithm,
+                new ResourceConsumption());
+    }
 
+    private Iterable<Entity> getResourcesForWarehouseProductAndAlgorithm(Entity warehouse, Entity product, Entity position,
+            WarehouseAlgorithm warehouseAlgorithm, final ResourceConsumption consumption) {
         Entity resource = position.getBelongsToField(PositionFields.RESOURCE);
 
         Entity additionalCode = position.getBelongsToField(PositionFields.ADDITIONAL_CODE);
 
         if (resource != null) {
+            if (!consumption.overlay(resource)) {
+                return Lists.newArrayList();
+            }
             Entity reservation = reservationsService.getReservationForPosition(position);
             if (reservation != null) {
                 BigDecimal reservationQuantity = reservation.getDecimalField(ReservationFields.QUANTITY);
                 BigDecimal resourceAvailableQuantity = resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY);
                 resource.setField(ResourceFields.AVAILABLE_QUANTITY, resourceAvailableQuantity.add(reservationQuantity));
             }
-            resources.add(resource);
-        } else if (WarehouseAlgorithm.FIFO.equals(warehouseAlgorithm)) {
-            resources = getResourcesForLocationAndProductFIFO(warehouse, product, additionalCode, position);
-        } else if (WarehouseAlgorithm.LIFO.equals(warehouseAlgorithm)) {
-            resources = getResourcesForLocationAndProductLIFO(warehouse, product, additionalCode, position);
-        } else if (WarehouseAlgorithm.FEFO.equals(warehouseAlgorithm)) {
-            resources = getResourcesForLocationAndProductFEFO(warehouse, product, additionalCode, position);
-        } else if (WarehouseAlgorithm.LEFO.equals(warehouseAlgorithm)) {
-            resources = getResourcesForLocationAndProductLEFO(warehouse, product, additionalCode, position);
-        } else if (WarehouseAlgorithm.MANUAL.equals(warehouseAlgorithm)) {
-            resources = getResourcesForLocationAndProductMANUAL(warehouse, product, position, additionalCode);
-        }
-
-        return resources;
-    }
-
-    private List<Entity> getResourcesForLocationAndProductMANUAL(final Entity warehouse, final Entity product,
-            final Entity position, final Entity additionalCode) {
-        Entity resource = position.getBelongsToField(PositionFields.RESOURCE);
-
-        if (resource != null) {
             return Lists.newArrayList(resource);
-        } else {
-            return getResourcesForLocationAndProductFIFO(warehouse, product, additionalCode, position);
         }
-    }
 
-    private List<Entity> getResourcesForLocationAndProductFIFO(final Entity warehouse, final Entity product,
-            final Entity additionalCode, final Entity position) {
-        List<Entity> resources = Lists.newArrayList();
-
-        if (additionalCode != null) {
-            SearchCriteriaBuilder scb = getSearchCriteriaForResourceForProductAndWarehouse(product, warehouse);
-
-            if (!StringUtils.isEmpty(product.getStringField(ProductFields.ADDITIONAL_UNIT))) {
-                scb.add(SearchRestrictions.eq(PositionFields.CONVERSION, position.getDecimalField(PositionFields.CONVERSION)));
-            } else {
-                scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, BigDecimal.ONE));
-            }
-
-            resources = scb.add(SearchRestrictions.belongsTo(ResourceFields.ADDITIONAL_CODE, additionalCode))
-                    .addOrder(SearchOrders.asc(TIME)).list().getEntities();
-
-            scb = getSearchCriteriaForResourceForProductAndWarehouse(product, warehouse);
-
-            if (!StringUtils.isEmpty(product.getStringField(ProductFields.ADDITIONAL_UNIT))) {
-                scb.add(SearchRestrictions.eq(PositionFields.CONVERSION, position.getDecimalField(PositionFields.CONVERSION)));
-            } else {
-                scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, BigDecimal.ONE));
-            }
-
-            resources.addAll(scb
-                    .add(SearchRestrictions.or(SearchRestrictions.isNull(ResourceFields.ADDITIONAL_CODE),
-                            SearchRestrictions.ne("additionalCode.id", additionalCode.getId()))).addOrder(SearchOrders.asc(TIME))
-                    .list().getEntities());
-        }
-
-        if (resources.isEmpty()) {
-            SearchCriteriaBuilder scb = getSearchCriteriaForResourceForProductAndWarehouse(product, warehouse);
-
-            if (!StringUtils.isEmpty(product.getStringField(ProductFields.ADDITIONAL_UNIT))) {
-                scb.add(SearchRestrictions.eq(PositionFields.CONVERSION, position.getDecimalField(PositionFields.CONVERSION)));
-            } else {
-                scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, BigDecimal.ONE));
-            }
+        Iterable<Entity> resources;
 
-            resources = scb.addOrder(SearchOrders.asc(TIME)).list().getEntities();
-        }
-
-        return resources;
-    }
-
-    private List<Entity> getResourcesForLocationAndProductLIFO(final Entity warehouse, final Entity product,
-            final Entity additionalCode, final Entity position) {
-        List<Entity> resources = Lists.newArrayList();
-
-        if (additionalCode != null) {
-            SearchCriteriaBuilder scb = getSearchCriteriaForResourceForProductAndWarehouse(product, warehouse);
-
-            if (!StringUtils.isEmpty(product.getStringField(ProductFields.ADDITIONAL_UNIT))) {
-                scb.add(SearchRestrictions.eq(PositionFields.CONVERSION, position.getDecimalField(PositionFields.CONVERSION)));
-            } else {
-                scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, BigDecimal.ONE));
-            }
-
-            resources = scb.add(SearchRestrictions.belongsTo(ResourceFields.ADDITIONAL_CODE, additionalCode))
-                    .addOrder(SearchOrders.desc(TIME)).list().getEntities();
-
-            scb = getSearchCriteriaForResourceForProductAndWarehouse(product, warehouse);
-
-            if (!StringUtils.isEmpty(product.getStringField(ProductFields.ADDITIONAL_UNIT))) {
-                scb.add(SearchRestrictions.eq(PositionFields.CONVERSION, position.getDecimalField(PositionFields.CONVERSION)));
-            } else {
-                scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, BigDecimal.ONE));
-            }
-
-            resources.addAll(scb
-                    .add(SearchRestrictions.or(SearchRestrictions.isNull(ResourceFields.ADDITIONAL_CODE),
-                            SearchRestrictions.ne("additionalCode.id", additionalCode.getId())))
-                    .addOrder(SearchOrders.desc(TIME)).list().getEntities());
-        }
-
-        if (resources.isEmpty()) {
-            SearchCriteriaBuilder scb = getSearchCriteriaForResourceForProductAndWarehouse(product, warehouse);
-
-            if (!StringUtils.isEmpty(product.getStringField(ProductFields.ADDITIONAL_UNIT))) {
-                scb.add(SearchRestrictions.eq(PositionFields.CONVERSION, position.getDecimalField(PositionFields.CONVERSION)));
-            } else {
-                scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, BigDecimal.ONE));
-            }
-
-            resources = scb.addOrder(SearchOrders.desc(TIME)).list().getEntities();
-        }
-
-        return resources;
-    }
-
-    private List<Entity> getResourcesForLocationAndProductFEFO(final Entity warehouse, final Entity product,
-            final Entity additionalCode, final Entity position) {
-        List<Entity> resources = Lists.newArrayList();
-
-        if (additionalCode != null) {
-            SearchCriteriaBuilder scb = getSearchCriteriaForResourceForProductAndWarehouse(product, warehouse);
-
-            if (!StringUtils.isEmpty(product.getStringField(ProductFields.ADDITIONAL_UNIT))) {
-                scb.add(SearchRestrictions.eq(PositionFields.CONVERSION, position.getDecimalField(PositionFields.CONVERSION)));
-            } else {
-                scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, BigDecimal.ONE));
-            }
-
-            resources = scb.add(SearchRestrictions.belongsTo(ResourceFields.ADDITIONAL_CODE, additionalCode))
-                    .addOrder(SearchOrders.asc(ResourceFields.EXPIRATION_DATE)).list().getEntities();
-
-            scb = getSearchCriteriaForResourceForProductAndWarehouse(product, warehouse);
-
-            if (!StringUtils.isEmpty(product.getStringField(ProductFields.ADDITIONAL_UNIT))) {
-                scb.add(SearchRestrictions.eq(PositionFields.CONVERSION, position.getDecimalField(PositionFields.CONVERSION)));
-            } else {
-                scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, BigDecimal.ONE));
-            }
-
-            resources.addAll(scb
-                    .add(SearchRestrictions.or(SearchRestrictions.isNull(ResourceFields.ADDITIONAL_CODE),
-                            SearchRestrictions.ne("additionalCode.id", additionalCode.getId())))
-                    .addOrder(SearchOrders.asc(ResourceFields.EXPIRATION_DATE)).list().getEntities());
-        }
-
-        if (resources.isEmpty()) {
-            SearchCriteriaBuilder scb = getSearchCriteriaForResourceForProductAndWarehouse(product, warehouse);
-
-            if (!StringUtils.isEmpty(product.getStringField(ProductFields.ADDITIONAL_UNIT))) {
-                scb.add(SearchRestrictions.eq(PositionFields.CONVERSION, position.getDecimalField(PositionFields.CONVERSION)));
-            } else {
-                scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, BigDecimal.ONE));
-            }
-
-            resources = scb.addOrder(SearchOrders.asc(ResourceFields.EXPIRATION_DATE)).list().getEntities();
-        }
-
-        return resources;
-
-    }
-
-    private List<Entity> getResourcesForLocationAndProductLEFO(final Entity warehouse, final Entity product,
-            final Entity additionalCode, final Entity position) {
-        List<Entity> resources = Lists.newArrayList();
-
-        if (additionalCode != null) {
-            SearchCriteriaBuilder scb = getSearchCriteriaForResourceForProductAndWarehouse(product, warehouse);
-
-            if (!StringUtils.isEmpty(product.getStringField(ProductFields.ADDITIONAL_UNIT))) {
-                scb.add(SearchRestrictions.eq(PositionFields.CONVERSION, position.getDecimalField(PositionFields.CONVERSION)));
-            } else {
-                scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, BigDecimal.ONE));
-            }
-
-            resources = scb.add(SearchRestrictions.belongsTo(ResourceFields.ADDITIONAL_CODE, additionalCode))
-                    .addOrder(SearchOrders.desc(ResourceFields.EXPIRATION_DATE)).list().getEntities();
-
-            scb = getSearchCriteriaForResourceForProductAndWarehouse(product, warehouse);
-
-            if (!StringUtils.isEmpty(product.getStringField(ProductFields.ADDITIONAL_UNIT))) {
-                scb.add(SearchRestrictions.eq(PositionFields.CONVERSION, position.getDecimalField(PositionFields.CONVERSION)));
-            } else {
-                scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, BigDecimal.ONE));
-            }
-
-            resources.addAll(scb
-                    .add(SearchRestrictions.or(SearchRestrictions.isNull(ResourceFields.ADDITIONAL_CODE),
-                            SearchRestrictions.ne("additionalCode.id", additionalCode.getId())))
-                    .addOrder(SearchOrders.desc(ResourceFields.EXPIRATION_DATE)).list().getEntities());
-        }
-
-        if (resources.isEmpty()) {
-            SearchCriteriaBuilder scb = getSearchCriteriaForResourceForProductAndWarehouse(product, warehouse);
-
-            if (!StringUtils.isEmpty(product.getStringField(ProductFields.ADDITIONAL_UNIT))) {
-                scb.add(SearchRestrictions.eq(PositionFields.CONVERSION, position.getDecimalField(PositionFields.CONVERSION)));
-            } else {
-                scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, BigDecimal.ONE));
-            }
-
-            resources = scb.addOrder(SearchOrders.desc(ResourceFields.EXPIRATION_DATE)).list().getEntities();
+        if (WarehouseAlgorithm.MANUAL.equals(warehouseAlgorithm)) {
+            resources = resourcePickingService.pickResources(warehouse, product, additionalCode,
+                    position.getDecimalField(PositionFields.CONVERSION), WarehouseAlgorithm.FIFO);
+        } else {
+            resources = resourcePickingService.pickResources(warehouse, product, additionalCode,
+                    position.getDecimalField(PositionFields.CONVERSION), warehouseAlgorithm);
         }
 
-        return resources;
+        // skip resources already used up by previous positions of the same document
+        return Iterables.filter(resources, pickedResource -> consumption.overlay(pickedResource)
+                && BigDecimal.ZERO.compareTo(pickedResource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY)) < 0);
     }
 
 }
@@ -0,0 +1,205 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterables;
+import com.qcadoo.mes.basic.constants.ProductFields;
+import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
+import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.mes.materialFlowResources.constants.WarehouseAlgorithm;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.model.api.search.SearchOrders;
+import com.qcadoo.model.api.search.SearchRestrictions;
+
+/**
+ * Picks resources of a product in a warehouse in the order given by warehouse algorithm (FIFO/LIFO/FEFO/LEFO).
+ * 
+ * Resources are fetched lazily, in growing batches, using keyset pagination over (order field, id) - see
+ * materialflowresources_resource_picking_*_idx indexes in views.sql. Callers, which stop iterating as soon as the requested
+ * quantity is covered, never load the rest of the stock.
+ * 
+ * If an additional code is given, resources with this code come first, followed by resources with no or other additional
+ * code.
+ */
+@Service
+public class ResourcePickingService {
+
+    private static final String L_ID = "id";
+
+    private static final String L_ADDITIONAL_CODE_ID = "additionalCode.id";
+
+    private static final int FIRST_BATCH_SIZE = 20;
+
+    private static final int MAX_BATCH_SIZE = 500;
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    public Iterable<Entity> pickResources(final Entity warehouse, final Entity product, final Entity additionalCode,
+            final BigDecimal conversion, final WarehouseAlgorithm warehouseAlgorithm) {
+        String orderField = getOrderField(warehouseAlgorithm);
+        boolean ascending = isAscending(warehouseAlgorithm);
+
+        if (additionalCode == null) {
+            return () -> new ResourcesIterator(() -> getSearchCriteria(warehouse, product, conversion), orderField, ascending);
+        }
+
+        Iterable<Entity> withAdditionalCode = () -> new ResourcesIterator(() -> getSearchCriteria(warehouse, product, conversion)
+                .add(SearchRestrictions.belongsTo(ResourceFields.ADDITIONAL_CODE, additionalCode)), orderField, ascending);
+        Iterable<Entity> withoutAdditionalCode = () -> new ResourcesIterator(() -> getSearchCriteria(warehouse, product,
+                conversion).add(
+                SearchRestrictions.or(SearchRestrictions.isNull(ResourceFields.ADDITIONAL_CODE),
+                        SearchRestrictions.ne(L_ADDITIONAL_CODE_ID, additionalCode.getId()))), orderField, ascending);
+
+        return Iterables.concat(withAdditionalCode, withoutAdditionalCode);
+    }
+
+    private String getOrderField(final WarehouseAlgorithm warehouseAlgorithm) {
+        if (WarehouseAlgorithm.FEFO.equals(warehouseAlgorithm) || WarehouseAlgorithm.LEFO.equals(warehouseAlgorithm)) {
+            return ResourceFields.EXPIRATION_DATE;
+        }
+        return ResourceFields.TIME;
+    }
+
+    private boolean isAscending(final WarehouseAlgorithm warehouseAlgorithm) {
+        return !(WarehouseAlgorithm.LIFO.equals(warehouseAlgorithm) || WarehouseAlgorithm.LEFO.equals(warehouseAlgorithm));
+    }
+
+    private SearchCriteriaBuilder getSearchCriteria(final Entity warehouse, final Entity product, final BigDecimal conversion) {
+        SearchCriteriaBuilder scb = dataDefinitionService
+                .get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER, MaterialFlowResourcesConstants.MODEL_RESOURCE).find()
+                .add(SearchRestrictions.belongsTo(ResourceFields.LOCATION, warehouse))
+                .add(SearchRestrictions.belongsTo(ResourceFields.PRODUCT, product))
+                .add(SearchRestrictions.gt(ResourceFields.AVAILABLE_QUANTITY, BigDecimal.ZERO));
+
+        if (!StringUtils.isEmpty(product.getStringField(ProductFields.ADDITIONAL_UNIT))) {
+            scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, conversion));
+        } else {
+            scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, BigDecimal.ONE));
+        }
+
+        return scb;
+    }
+
+    private static final class ResourcesIterator extends AbstractIterator<Entity> {
+
+        private final Supplier<SearchCriteriaBuilder> searchCriteria;
+
+        private final String orderField;
+
+        private final boolean ascending;
+
+        /**
+         * Database puts nulls last in ascending order and first in descending one, so resources without value of order field
+         * are read in separate phase.
+         */
+        private final boolean[] nullPhases;
+
+        private int phase = 0;
+
+        private Object lastKey;
+
+        private Long lastId;
+
+        private int batchSize = FIRST_BATCH_SIZE;
+
+        private Iterator<Entity> batch = Collections.emptyIterator();
+
+        private ResourcesIterator(final Supplier<SearchCriteriaBuilder> searchCriteria, final String orderField,
+                final boolean ascending) {
+            this.searchCriteria = searchCriteria;
+            this.orderField = orderField;
+            this.ascending = ascending;
+            this.nullPhases = ascending ? new boolean[] { false, true } : new boolean[] { true, false };
+        }
+
+        @Override
+        protected Entity computeNext() {
+            while (!batch.hasNext()) {
+                if (phase >= nullPhases.length) {
+                    return endOfData();
+                }
+
+                List<Entity> resources = fetchBatch(nullPhases[phase]);
+
+                if (resources.size() < batchSize) {
+                    phase++;
+                    lastKey = null;
+                    lastId = null;
+                } else {
+                    Entity last = resources.get(resources.size() - 1);
+                    lastKey = last.getField(orderField);
+                    lastId = last.getId();
+                    batchSize = Math.min(batchSize * 2, MAX_BATCH_SIZE);
+                }
+
+                batch = resources.iterator();
+            }
+
+            return batch.next();
+        }
+
+        private List<Entity> fetchBatch(final boolean nullPhase) {
+            SearchCriteriaBuilder scb = searchCriteria.get();
+
+            if (nullPhase) {
+                scb.add(SearchRestrictions.isNull(orderField));
+                if (lastId != null) {
+                    scb.add(after(L_ID, lastId));
+                }
+            } else {
+                scb.add(SearchRestrictions.isNotNull(orderField));
+                if (lastId != null) {
+                    scb.add(SearchRestrictions.or(after(orderField, lastKey),
+                            SearchRestrictions.and(SearchRestrictions.eq(orderField, lastKey), after(L_ID, lastId))));
+                }
+                scb.addOrder(ascending ? SearchOrders.asc(orderField) : SearchOrders.desc(orderField));
+            }
+
+            scb.addOrder(ascending ? SearchOrders.asc(L_ID) : SearchOrders.desc(L_ID));
+
+            return scb.setMaxResults(batchSize).list().getEntities();
+        }
+
+        private SearchCriterion after(final String field, final Object value) {
+            return ascending ? SearchRestrictions.gt(field, value) : SearchRestrictions.lt(field, value);
+        }
+
+    }
+
+}
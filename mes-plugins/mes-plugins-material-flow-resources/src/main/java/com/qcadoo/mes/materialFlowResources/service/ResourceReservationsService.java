@@ -1,11 +1,15 @@
 package com.qcadoo.mes.materialFlowResources.service;
 
 import java.math.BigDecimal;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.stereotype.Service;
 
 import com.google.common.collect.Lists;
@@ -23,6 +27,14 @@ import com.qcadoo.model.api.NumberService;
 @Service
 public class ResourceReservationsService {
 
+    private static final String UPDATE_RESERVED_QUANTITY_QUERY = "UPDATE materialflowresources_resource "
+            + "SET reservedquantity = reservedquantity + :quantity_to_add, "
+            + "availablequantity = quantity - (reservedquantity + :quantity_to_add) WHERE id = :resource_id";
+
+    private static final String ADD_RESERVED_QUANTITY_QUERY = "UPDATE materialflowresources_resource "
+            + "SET reservedquantity = reservedquantity + :quantity_to_add, "
+            + "availablequantity = availablequantity - :quantity_to_add WHERE id = :resource_id";
+
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
@@ -38,27 +50,36 @@ public class ResourceReservationsService {
     public void updateResourceQuantites(Map<String, Object> params, BigDecimal quantityToAdd) {
         if (params.get("resource_id") != null) {
             params.put("quantity_to_add", quantityToAdd);
-            String query = "UPDATE materialflowresources_resource SET reservedquantity = reservedquantity + :quantity_to_add, "
-                    + "availablequantity = availablequantity - :quantity_to_add WHERE id = :resource_id";
-            jdbcTemplate.update(query, params);
+            jdbcTemplate.update(ADD_RESERVED_QUANTITY_QUERY, params);
         }
     }
 
     public void updateResourceQuantites(Entity position, BigDecimal quantityToAdd) {
         Entity resource = position.getBelongsToField(PositionFields.RESOURCE);
         if (resource != null) {
-            resource = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
-                    MaterialFlowResourcesConstants.MODEL_RESOURCE).get(resource.getId());
-            if (resource != null) {
-                BigDecimal reservedQuantity = resource.getDecimalField(ResourceFields.RESERVED_QUANTITY).add(quantityToAdd);
-                BigDecimal quantity = resource.getDecimalField(ResourceFields.QUANTITY);
-                resource.setField(ResourceFields.AVAILABLE_QUANTITY, quantity.subtract(reservedQuantity));
-                resource.setField(ResourceFields.RESERVED_QUANTITY, reservedQuantity);
-                resource.getDataDefinition().save(resource);
-            }
+            updateResourcesReservedQuantities(Collections.singletonMap(resource.getId(), quantityToAdd));
         }
     }
 
+    /**
+     * Atomically adds given deltas (by resource id) to reserved quantities of resources, in one batch and without reading
+     * resources first.
+     */
+    public void updateResourcesReservedQuantities(final Map<Long, BigDecimal> reservedQuantityDeltas) {
+        if (reservedQuantityDeltas.isEmpty()) {
+            return;
+        }
+
+        SqlParameterSource[] batch = new SqlParameterSource[reservedQuantityDeltas.size()];
+        int index = 0;
+        for (Map.Entry<Long, BigDecimal> delta : new TreeMap<>(reservedQuantityDeltas).entrySet()) {
+            batch[index++] = new MapSqlParameterSource("resource_id", delta.getKey()).addValue("quantity_to_add",
+                    delta.getValue());
+        }
+
+        jdbcTemplate.batchUpdate(UPDATE_RESERVED_QUANTITY_QUERY, batch);
+    }
+
     public Entity fillResourcesInDocument(final Entity document) {
         List<Entity> positions = document.getHasManyField(DocumentFields.POSITIONS);
         Entity warehouse = document.getBelongsToField(DocumentFields.LOCATION_FROM);
@@ -92,7 +113,7 @@ public class ResourceReservationsService {
 
         Entity product = position.getBelongsToField(PositionFields.PRODUCT);
 
-        List<Entity> resources = resourceManagementService.getResourcesForWarehouseProductAndAlgorithm(warehouse, product,
+        Iterable<Entity> resources = resourceManagementService.getResourcesForWarehouseProductAndAlgorithm(warehouse, product,
                 position, warehouseAlgorithm);
         BigDecimal quantity = position.getDecimalField(PositionFields.QUANTITY);
         for (Entity resource : resources) {
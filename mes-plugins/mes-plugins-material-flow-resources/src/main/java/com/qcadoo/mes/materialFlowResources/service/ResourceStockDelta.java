@@ -0,0 +1,127 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Signed change of quantity and reserved quantity of resource stock for given product and location.
+ */
+public final class ResourceStockDelta {
+
+    private final Long productId;
+
+    private final Long locationId;
+
+    private final BigDecimal quantity;
+
+    private final BigDecimal reservedQuantity;
+
+    public ResourceStockDelta(final Long productId, final Long locationId, final BigDecimal quantity,
+            final BigDecimal reservedQuantity) {
+        this.productId = productId;
+        this.locationId = locationId;
+        this.quantity = quantity == null ? BigDecimal.ZERO : quantity;
+        this.reservedQuantity = reservedQuantity == null ? BigDecimal.ZERO : reservedQuantity;
+    }
+
+    public static ResourceStockDelta ofQuantity(final Entity product, final Entity location, final BigDecimal quantity) {
+        return new ResourceStockDelta(product.getId(), location.getId(), quantity, BigDecimal.ZERO);
+    }
+
+    public static ResourceStockDelta ofReservedQuantity(final Entity product, final Entity location,
+            final BigDecimal reservedQuantity) {
+        return new ResourceStockDelta(product.getId(), location.getId(), BigDecimal.ZERO, reservedQuantity);
+    }
+
+    /**
+     * Sums deltas of the same product and location, ordered by location and product, so concurrent batches lock stock rows in
+     * the same order.
+     */
+    public static List<ResourceStockDelta> merge(final Collection<ResourceStockDelta> deltas) {
+        Map<List<Long>, ResourceStockDelta> merged = Maps.newHashMap();
+
+        for (ResourceStockDelta delta : deltas) {
+            merged.merge(Lists.newArrayList(delta.getLocationId(), delta.getProductId()), delta, ResourceStockDelta::add);
+        }
+
+        List<ResourceStockDelta> sorted = Lists.newArrayList(merged.values());
+        sorted.sort(Comparator.comparing(ResourceStockDelta::getLocationId).thenComparing(ResourceStockDelta::getProductId));
+
+        return sorted;
+    }
+
+    public ResourceStockDelta add(final ResourceStockDelta other) {
+        return new ResourceStockDelta(productId, locationId, quantity.add(other.quantity),
+                reservedQuantity.add(other.reservedQuantity));
+    }
+
+    public boolean isZero() {
+        return quantity.signum() == 0 && reservedQuantity.signum() == 0;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public Long getLocationId() {
+        return locationId;
+    }
+
+    public BigDecimal getQuantity() {
+        return quantity;
+    }
+
+    public BigDecimal getReservedQuantity() {
+        return reservedQuantity;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ResourceStockDelta)) {
+            return false;
+        }
+        ResourceStockDelta other = (ResourceStockDelta) obj;
+        return Objects.equals(productId, other.productId) && Objects.equals(locationId, other.locationId)
+                && quantity.compareTo(other.quantity) == 0 && reservedQuantity.compareTo(other.reservedQuantity) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(productId, locationId);
+    }
+
+}
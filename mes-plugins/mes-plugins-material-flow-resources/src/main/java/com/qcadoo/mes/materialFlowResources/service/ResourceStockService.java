@@ -1,6 +1,8 @@
 package com.qcadoo.mes.materialFlowResources.service;
 
 import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -16,6 +18,15 @@ public interface ResourceStockService {
 
     void removeResourceStock(final Entity product, final Entity location, final BigDecimal quantity);
 
+    /**
+     * Atomically applies given deltas to resource stocks in a single statement, without reading them first. Deltas of the same
+     * product and location are summed.
+     *
+     * @return updated resource stocks (product_id, location_id, quantity, reservedquantity, availablequantity), stocks which
+     *         don't exist yet are not created
+     */
+    List<Map<String, Object>> applyResourceStockDeltas(final Collection<ResourceStockDelta> deltas);
+
     Optional<Entity> getResourceStockForProductAndLocation(final Entity product, final Entity location);
 
     void updateResourceStock(Map<String, Object> params, BigDecimal quantityToAdd);
@@ -1,13 +1,18 @@
 package com.qcadoo.mes.materialFlowResources.service;
 
 import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.Lists;
 import com.qcadoo.mes.materialFlowResources.constants.DocumentFields;
 import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
 import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
@@ -21,12 +26,46 @@ import com.qcadoo.model.api.search.SearchRestrictions;
 @Service
 public class ResourceStockServiceImpl implements ResourceStockService {
 
+    private static final String L_PRODUCT_ID = "product_id";
+
+    private static final String L_LOCATION_ID = "location_id";
+
+    // all expressions are evaluated against values before update, quantities are clamped to zero the same way as before
+    private static final String APPLY_DELTAS_QUERY = "UPDATE materialflowresources_resourcestock stock SET "
+            + "quantity = CASE WHEN stock.quantity + delta.quantity <= 0 THEN 0 ELSE stock.quantity + delta.quantity END, "
+            + "reservedquantity = CASE WHEN stock.quantity + delta.quantity <= 0 AND delta.reservedquantity <> 0 THEN 0 "
+            + "ELSE stock.reservedquantity + delta.reservedquantity END, "
+            + "availablequantity = CASE WHEN stock.quantity + delta.quantity <= 0 THEN 0 "
+            + "ELSE stock.availablequantity + delta.quantity - delta.reservedquantity END "
+            + "FROM (VALUES %s) AS delta (product_id, location_id, quantity, reservedquantity) "
+            + "WHERE stock.product_id = delta.product_id AND stock.location_id = delta.location_id "
+            + "RETURNING stock.product_id, stock.location_id, stock.quantity, stock.reservedquantity, stock.availablequantity";
+
+    private static final String DELTA_VALUES = "(CAST(:product_id%1$d AS bigint), CAST(:location_id%1$d AS bigint), "
+            + "CAST(:quantity%1$d AS numeric), CAST(:reservedquantity%1$d AS numeric))";
+
+    // relies on unique materialflowresources_resourcestock_location_product_idx, concurrent first receipts of the same product
+    // in the same location end up in one row, updated the same way as by APPLY_DELTAS_QUERY
+    private static final String INSERT_OR_ADD_QUERY = "INSERT INTO materialflowresources_resourcestock AS stock "
+            + "(location_id, product_id, quantity, reservedquantity, availablequantity, orderedquantity, minimumstate) "
+            + "VALUES (:location_id, :product_id, :quantity, 0, :quantity, :orderedquantity, :minimumstate) "
+            + "ON CONFLICT (location_id, product_id) DO UPDATE SET "
+            + "quantity = CASE WHEN stock.quantity + EXCLUDED.quantity <= 0 THEN 0 ELSE stock.quantity + EXCLUDED.quantity END, "
+            + "availablequantity = CASE WHEN stock.quantity + EXCLUDED.quantity <= 0 THEN 0 "
+            + "ELSE stock.availablequantity + EXCLUDED.quantity END";
+
+    private static final String DOCUMENT_LOCATION_FROM_QUERY = "SELECT locationfrom_id FROM materialflowresources_document "
+            + "WHERE id = :document_id";
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private WarehouseStockService warehouseStockService;
+
     @Override
     public void addResourceStock(final Entity resource) {
 
@@ -39,18 +78,11 @@ public class ResourceStockServiceImpl implements ResourceStockService {
 
     @Override
     public void addResourceStock(Entity product, Entity location, BigDecimal quantity) {
-        Entity resourceStock;
-        Optional<Entity> maybeStock = getResourceStockForProductAndLocation(product, location);
-        if (maybeStock.isPresent()) {
-            resourceStock = maybeStock.get();
-            BigDecimal oldQuantity = resourceStock.getDecimalField(ResourceStockFields.QUANTITY);
-            BigDecimal oldAvailableQuantity = resourceStock.getDecimalField(ResourceStockFields.AVAILABLE_QUANTITY);
-            resourceStock.setField(ResourceStockFields.QUANTITY, oldQuantity.add(quantity));
-            resourceStock.setField(ResourceStockFields.AVAILABLE_QUANTITY, oldAvailableQuantity.add(quantity));
-        } else {
-            resourceStock = createResourceStock(product, location, quantity);
+        List<Map<String, Object>> updatedStocks = applyResourceStockDeltas(Collections.singletonList(ResourceStockDelta
+                .ofQuantity(product, location, quantity)));
+        if (updatedStocks.isEmpty()) {
+            insertOrAddResourceStock(product, location, quantity);
         }
-        getResourceStockDataDefinition().save(resourceStock);
     }
 
     @Override
@@ -63,21 +95,35 @@ public class ResourceStockServiceImpl implements ResourceStockService {
 
     @Override
     public void removeResourceStock(Entity product, Entity location, BigDecimal quantity) {
-        Optional<Entity> maybeStock = getResourceStockForProductAndLocation(product, location);
-        if (maybeStock.isPresent()) {
-            Entity resourceStock = maybeStock.get();
-            BigDecimal oldQuantity = resourceStock.getDecimalField(ResourceStockFields.QUANTITY);
-            BigDecimal oldAvailableQuantity = resourceStock.getDecimalField(ResourceStockFields.AVAILABLE_QUANTITY);
-            BigDecimal newQuantity = oldQuantity.subtract(quantity);
-            BigDecimal newAvailableQuantity = oldAvailableQuantity.subtract(quantity);
-            if (newQuantity.compareTo(BigDecimal.ZERO) <= 0) {
-                newQuantity = BigDecimal.ZERO;
-                newAvailableQuantity = BigDecimal.ZERO;
+        applyResourceStockDeltas(Collections.singletonList(ResourceStockDelta.ofQuantity(product, location, quantity.negate())));
+    }
+
+    @Override
+    public List<Map<String, Object>> applyResourceStockDeltas(final Collection<ResourceStockDelta> deltas) {
+        List<ResourceStockDelta> mergedDeltas = Lists.newArrayList();
+        for (ResourceStockDelta delta : ResourceStockDelta.merge(deltas)) {
+            if (!delta.isZero()) {
+                mergedDeltas.add(delta);
             }
-            resourceStock.setField(ResourceStockFields.QUANTITY, newQuantity);
-            resourceStock.setField(ResourceStockFields.AVAILABLE_QUANTITY, newAvailableQuantity);
-            getResourceStockDataDefinition().save(resourceStock);
         }
+
+        if (mergedDeltas.isEmpty()) {
+            return Lists.newArrayList();
+        }
+
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        List<String> values = Lists.newArrayList();
+
+        for (int index = 0; index < mergedDeltas.size(); index++) {
+            ResourceStockDelta delta = mergedDeltas.get(index);
+            params.addValue(L_PRODUCT_ID + index, delta.getProductId());
+            params.addValue(L_LOCATION_ID + index, delta.getLocationId());
+            params.addValue("quantity" + index, delta.getQuantity());
+            params.addValue("reservedquantity" + index, delta.getReservedQuantity());
+            values.add(String.format(DELTA_VALUES, index));
+        }
+
+        return jdbcTemplate.queryForList(String.format(APPLY_DELTAS_QUERY, String.join(", ", values)), params);
     }
 
     @Override
@@ -88,14 +134,15 @@ public class ResourceStockServiceImpl implements ResourceStockService {
         return Optional.ofNullable(existingResourceStock);
     }
 
-    private Entity createResourceStock(final Entity product, final Entity location, final BigDecimal quantity) {
-        Entity stock = getResourceStockDataDefinition().create();
-        stock.setField(ResourceStockFields.LOCATION, location);
-        stock.setField(ResourceStockFields.PRODUCT, product);
-        stock.setField(ResourceStockFields.QUANTITY, quantity);
-        stock.setField(ResourceStockFields.AVAILABLE_QUANTITY, quantity);
-        stock.setField(ResourceStockFields.RESERVED_QUANTITY, BigDecimal.ZERO);
-        return stock;
+    private void insertOrAddResourceStock(final Entity product, final Entity location, final BigDecimal quantity) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        params.addValue(L_LOCATION_ID, location.getId());
+        params.addValue(L_PRODUCT_ID, product.getId());
+        params.addValue("quantity", quantity);
+        params.addValue("orderedquantity", warehouseStockService.getOrderedQuantity(location.getId(), product.getId()));
+        params.addValue("minimumstate", warehouseStockService.getMinimumState(location.getId(), product.getId()));
+
+        jdbcTemplate.update(INSERT_OR_ADD_QUERY, params);
     }
 
     private DataDefinition getResourceStockDataDefinition() {
@@ -104,11 +151,11 @@ public class ResourceStockServiceImpl implements ResourceStockService {
     }
 
     public void updateResourceStock(Map<String, Object> params, BigDecimal quantityToAdd) {
-        params.put("quantity_to_add", quantityToAdd);
-        String query = "UPDATE materialflowresources_resourcestock SET reservedquantity = reservedquantity + :quantity_to_add, "
-                + "availablequantity = availablequantity - :quantity_to_add WHERE product_id = :product_id AND "
-                + "location_id = (SELECT locationfrom_id FROM materialflowresources_document WHERE id=:document_id)";
-        jdbcTemplate.update(query, params);
+        Long locationId = jdbcTemplate.queryForObject(DOCUMENT_LOCATION_FROM_QUERY, params, Long.class);
+        Long productId = (Long) params.get(L_PRODUCT_ID);
+
+        applyResourceStockDeltas(Collections.singletonList(new ResourceStockDelta(productId, locationId, BigDecimal.ZERO,
+                quantityToAdd)));
     }
 
     public void updateResourceStock(Entity position, BigDecimal quantityToAdd) {
@@ -118,23 +165,7 @@ public class ResourceStockServiceImpl implements ResourceStockService {
     }
 
     public void updateResourceStock(Entity product, Entity location, BigDecimal quantityToAdd) {
-        Optional<Entity> maybeResourceStock = getResourceStockForProductAndLocation(product, location);
-        if (maybeResourceStock.isPresent()) {
-            Entity resourceStock = maybeResourceStock.get();
-            BigDecimal reservedQuantity = resourceStock.getDecimalField(ResourceStockFields.RESERVED_QUANTITY);
-            BigDecimal availableQuantity = resourceStock.getDecimalField(ResourceStockFields.AVAILABLE_QUANTITY);
-            BigDecimal quantity = resourceStock.getDecimalField(ResourceStockFields.QUANTITY);
-            if (quantity.compareTo(BigDecimal.ZERO) == 0) {
-                reservedQuantity = BigDecimal.ZERO;
-                availableQuantity = BigDecimal.ZERO;
-            } else {
-                availableQuantity = availableQuantity.subtract(quantityToAdd);
-                reservedQuantity = reservedQuantity.add(quantityToAdd);
-            }
-            resourceStock.setField(ResourceStockFields.AVAILABLE_QUANTITY, availableQuantity);
-            resourceStock.setField(ResourceStockFields.RESERVED_QUANTITY, reservedQuantity);
-            resourceStock.getDataDefinition().save(resourceStock);
-        }
-
+        applyResourceStockDeltas(Collections.singletonList(ResourceStockDelta.ofReservedQuantity(product, location,
+                quantityToAdd)));
     }
 }
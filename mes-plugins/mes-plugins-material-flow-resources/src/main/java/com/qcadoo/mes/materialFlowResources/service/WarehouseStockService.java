@@ -0,0 +1,212 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Maps;
+import com.qcadoo.tenant.api.MultiTenantCallback;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+/**
+ * Keeps ordered quantity and minimum state of resource stocks (materialflowresources_resourcestock) up to date, so warehouse
+ * stock lists can read them directly instead of aggregating resources, deliveries and minimal states on every read.
+ */
+@Service
+public class WarehouseStockService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WarehouseStockService.class);
+
+    private static final Long L_NO_ID = -1L;
+
+    private static final String L_LOCATION_ID = "locationId";
+
+    private static final String L_PRODUCT_ID = "productId";
+
+    private static final String ORDERED_QUANTITY_QUERY = "SELECT COALESCE(SUM(orderedproduct.orderedquantity), 0) "
+            + "FROM deliveries_orderedproduct orderedproduct "
+            + "JOIN deliveries_delivery delivery ON delivery.id = orderedproduct.delivery_id "
+            + "WHERE delivery.active = true AND delivery.state IN ('01draft', '02prepared', '03duringCorrection', '05approved') "
+            + "AND delivery.location_id = :locationId AND orderedproduct.product_id = :productId "
+            + "AND delivery.id <> :excludedDeliveryId AND orderedproduct.id <> :excludedOrderedProductId";
+
+    private static final String MINIMUM_STATE_QUERY = "SELECT COALESCE(SUM(minimumstate.minimumstate), 0) "
+            + "FROM warehouseminimalstate_warehouseminimumstate minimumstate "
+            + "WHERE minimumstate.location_id = :locationId AND minimumstate.product_id = :productId "
+            + "AND minimumstate.id <> :excludedMinimumStateId";
+
+    private static final String UPDATE_ORDERED_QUANTITY_QUERY = "UPDATE materialflowresources_resourcestock "
+            + "SET orderedquantity = (" + ORDERED_QUANTITY_QUERY + ") + :pendingQuantity "
+            + "WHERE location_id = :locationId AND product_id = :productId";
+
+    private static final String UPDATE_MINIMUM_STATE_QUERY = "UPDATE materialflowresources_resourcestock "
+            + "SET minimumstate = (" + MINIMUM_STATE_QUERY + ") + :pendingMinimumState "
+            + "WHERE location_id = :locationId AND product_id = :productId";
+
+    private static final String RESOURCES_SUMMARY_QUERY = "SELECT location_id, product_id, SUM(quantity) AS quantity "
+            + "FROM materialflowresources_resource GROUP BY location_id, product_id";
+
+    private static final String RESERVATIONS_SUMMARY_QUERY = "SELECT location_id, product_id, SUM(quantity) AS quantity "
+            + "FROM materialflowresources_reservation GROUP BY location_id, product_id";
+
+    private static final String ORDERED_QUANTITIES_SUMMARY_QUERY = "SELECT delivery.location_id, orderedproduct.product_id, "
+            + "SUM(orderedproduct.orderedquantity) AS orderedquantity FROM deliveries_orderedproduct orderedproduct "
+            + "JOIN deliveries_delivery delivery ON delivery.id = orderedproduct.delivery_id "
+            + "WHERE delivery.active = true AND delivery.state IN ('01draft', '02prepared', '03duringCorrection', '05approved') "
+            + "GROUP BY delivery.location_id, orderedproduct.product_id";
+
+    private static final String MINIMUM_STATES_SUMMARY_QUERY = "SELECT location_id, product_id, "
+            + "SUM(minimumstate) AS minimumstate FROM warehouseminimalstate_warehouseminimumstate "
+            + "GROUP BY location_id, product_id";
+
+    private static final String SUMMARIES_JOIN = "LEFT JOIN (" + RESOURCES_SUMMARY_QUERY + ") resources "
+            + "ON resources.location_id = base.location_id AND resources.product_id = base.product_id "
+            + "LEFT JOIN (" + RESERVATIONS_SUMMARY_QUERY + ") reservations "
+            + "ON reservations.location_id = base.location_id AND reservations.product_id = base.product_id "
+            + "LEFT JOIN (" + ORDERED_QUANTITIES_SUMMARY_QUERY + ") ordered "
+            + "ON ordered.location_id = base.location_id AND ordered.product_id = base.product_id "
+            + "LEFT JOIN (" + MINIMUM_STATES_SUMMARY_QUERY + ") minimum "
+            + "ON minimum.location_id = base.location_id AND minimum.product_id = base.product_id ";
+
+    private static final String INCONSISTENT_RESOURCE_STOCKS_QUERY = "SELECT COUNT(*) "
+            + "FROM materialflowresources_resourcestock base " + SUMMARIES_JOIN
+            + "WHERE COALESCE(base.quantity, 0) <> COALESCE(resources.quantity, 0) "
+            + "OR COALESCE(base.reservedquantity, 0) <> COALESCE(reservations.quantity, 0) "
+            + "OR COALESCE(base.orderedquantity, 0) <> COALESCE(ordered.orderedquantity, 0) "
+            + "OR COALESCE(base.minimumstate, 0) <> COALESCE(minimum.minimumstate, 0)";
+
+    private static final String INSERT_MISSING_RESOURCE_STOCKS_QUERY = "INSERT INTO materialflowresources_resourcestock "
+            + "(location_id, product_id, quantity, reservedquantity, availablequantity, orderedquantity, minimumstate) "
+            + "SELECT resource.location_id, resource.product_id, 0, 0, 0, 0, 0 FROM materialflowresources_resource resource "
+            + "WHERE NOT EXISTS (SELECT 1 FROM materialflowresources_resourcestock stock "
+            + "WHERE stock.location_id = resource.location_id AND stock.product_id = resource.product_id) "
+            + "GROUP BY resource.location_id, resource.product_id";
+
+    private static final String REBUILD_RESOURCE_STOCKS_QUERY = "UPDATE materialflowresources_resourcestock stock "
+            + "SET quantity = COALESCE(resources.quantity, 0), reservedquantity = COALESCE(reservations.quantity, 0), "
+            + "availablequantity = COALESCE(resources.quantity, 0) - COALESCE(reservations.quantity, 0), "
+            + "orderedquantity = COALESCE(ordered.orderedquantity, 0), minimumstate = COALESCE(minimum.minimumstate, 0) "
+            + "FROM materialflowresources_resourcestock base " + SUMMARIES_JOIN + "WHERE stock.id = base.id";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    public BigDecimal getOrderedQuantity(final Long locationId, final Long productId) {
+        Map<String, Object> params = getKeyParams(locationId, productId);
+        params.put("excludedDeliveryId", L_NO_ID);
+        params.put("excludedOrderedProductId", L_NO_ID);
+
+        return jdbcTemplate.queryForObject(ORDERED_QUANTITY_QUERY, params, BigDecimal.class);
+    }
+
+    public BigDecimal getMinimumState(final Long locationId, final Long productId) {
+        Map<String, Object> params = getKeyParams(locationId, productId);
+        params.put("excludedMinimumStateId", L_NO_ID);
+
+        return jdbcTemplate.queryForObject(MINIMUM_STATE_QUERY, params, BigDecimal.class);
+    }
+
+    /**
+     * Recalculates ordered quantity of resource stock from deliveries already in database, except for given delivery and
+     * ordered product, which are being saved (or deleted) and contribute pendingQuantity instead.
+     */
+    public void updateOrderedQuantity(final Long locationId, final Long productId, final Long excludedDeliveryId,
+            final Long excludedOrderedProductId, final BigDecimal pendingQuantity) {
+        if (locationId == null || productId == null) {
+            return;
+        }
+
+        Map<String, Object> params = getKeyParams(locationId, productId);
+        params.put("excludedDeliveryId", excludedDeliveryId == null ? L_NO_ID : excludedDeliveryId);
+        params.put("excludedOrderedProductId", excludedOrderedProductId == null ? L_NO_ID : excludedOrderedProductId);
+        params.put("pendingQuantity", pendingQuantity == null ? BigDecimal.ZERO : pendingQuantity);
+
+        jdbcTemplate.update(UPDATE_ORDERED_QUANTITY_QUERY, params);
+    }
+
+    /**
+     * Recalculates minimum state of resource stock, given warehouse minimum state contributes pendingMinimumState instead of
+     * value stored in database.
+     */
+    public void updateMinimumState(final Long locationId, final Long productId, final Long excludedMinimumStateId,
+            final BigDecimal pendingMinimumState) {
+        if (locationId == null || productId == null) {
+            return;
+        }
+
+        Map<String, Object> params = getKeyParams(locationId, productId);
+        params.put("excludedMinimumStateId", excludedMinimumStateId == null ? L_NO_ID : excludedMinimumStateId);
+        params.put("pendingMinimumState", pendingMinimumState == null ? BigDecimal.ZERO : pendingMinimumState);
+
+        jdbcTemplate.update(UPDATE_MINIMUM_STATE_QUERY, params);
+    }
+
+    public void rebuildResourceStocksTrigger() {
+        multiTenantService.doInMultiTenantContext(new MultiTenantCallback() {
+
+            @Override
+            public void invoke() {
+                rebuildResourceStocksIfInconsistent();
+            }
+
+        });
+    }
+
+    public void rebuildResourceStocksIfInconsistent() {
+        long inconsistentResourceStocks = countInconsistentResourceStocks();
+
+        if (inconsistentResourceStocks > 0) {
+            LOG.warn("Found " + inconsistentResourceStocks + " inconsistent resource stocks, rebuilding");
+
+            rebuildResourceStocks();
+        }
+    }
+
+    public long countInconsistentResourceStocks() {
+        return jdbcTemplate.queryForObject(INCONSISTENT_RESOURCE_STOCKS_QUERY, Maps.newHashMap(), Long.class);
+    }
+
+    public void rebuildResourceStocks() {
+        jdbcTemplate.update(INSERT_MISSING_RESOURCE_STOCKS_QUERY, Maps.newHashMap());
+        jdbcTemplate.update(REBUILD_RESOURCE_STOCKS_QUERY, Maps.newHashMap());
+    }
+
+    private Map<String, Object> getKeyParams(final Long locationId, final Long productId) {
+        Map<String, Object> params = Maps.newHashMap();
+        params.put(L_LOCATION_ID, locationId);
+        params.put(L_PRODUCT_ID, productId);
+        return params;
+    }
+
+}
@@ -0,0 +1,116 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.controllers.dataProvider.LookupSearchService;
+import com.qcadoo.mes.basic.controllers.dataProvider.responses.DataResponse;
+
+public class DocumentPositionServiceTest {
+
+    private static final String L_RESOURCE_QUERY = "select number, batch, availablequantity from materialflowresources_resource"
+            + " WHERE number ilike :query  order by time asc ";
+
+    private static final Long L_DOCUMENT_ID = 1L;
+
+    private DocumentPositionService documentPositionService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private DocumentPositionResourcesHelper positionResourcesHelper;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        documentPositionService = new DocumentPositionService();
+
+        ReflectionTestUtils.setField(documentPositionService, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(documentPositionService, "positionResourcesHelper", positionResourcesHelper);
+
+        given(positionResourcesHelper.getResourceQuery(eq(L_DOCUMENT_ID), eq(true), anyBoolean(), anyBoolean())).willReturn(
+                L_RESOURCE_QUERY);
+    }
+
+    @Test
+    public void shouldReadOneResourceMoreThanShownInsteadOfCounting() {
+        // given
+        List<ResourceDTO> resources = Lists.newArrayList();
+
+        for (int i = 0; i <= LookupSearchService.MAX_RESULTS; i++) {
+            resources.add(new ResourceDTO());
+        }
+
+        given(jdbcTemplate.query(anyString(), anyMap(), any(RowMapper.class))).willReturn(resources);
+
+        // when
+        DataResponse response = documentPositionService.getResourcesResponse(L_DOCUMENT_ID, "R", "P1", BigDecimal.ONE, null);
+
+        // then
+        verify(jdbcTemplate).query(eq(L_RESOURCE_QUERY + " LIMIT " + (LookupSearchService.MAX_RESULTS + 1)), anyMap(),
+                any(RowMapper.class));
+        verifyNoMoreInteractions(jdbcTemplate);
+
+        assertEquals(LookupSearchService.MAX_RESULTS, response.getEntities().size());
+        assertEquals(LookupSearchService.MAX_RESULTS + 1, response.getNumberOfResults());
+    }
+
+    @Test
+    public void shouldReturnAllResourcesWhenTheyFit() {
+        // given
+        given(jdbcTemplate.query(anyString(), anyMap(), any(RowMapper.class))).willReturn(
+                Lists.newArrayList(new ResourceDTO(), new ResourceDTO()));
+
+        // when
+        DataResponse response = documentPositionService.getResourcesResponse(L_DOCUMENT_ID, "R", "P1", BigDecimal.ONE, null);
+
+        // then
+        assertEquals(2, response.getEntities().size());
+        assertEquals(2, response.getNumberOfResults());
+    }
+
+}
@@ -0,0 +1,119 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.util.Locale;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.localization.api.TranslationService;
+import com.qcadoo.mes.basic.GridResponse;
+import com.qcadoo.mes.basic.LookupUtils;
+import com.qcadoo.mes.materialFlowResources.DocumentPositionService;
+import com.qcadoo.mes.materialFlowResources.ResourceDTO;
+import com.qcadoo.mes.materialFlowResources.WarehouseMethodOfDisposalService;
+
+public class ResourceLookupControllerTest {
+
+    private static final Long L_DOCUMENT_ID = 1L;
+
+    private ResourceLookupController resourceLookupController;
+
+    @Mock
+    private DocumentPositionService documentPositionService;
+
+    @Mock
+    private WarehouseMethodOfDisposalService warehouseMethodOfDisposalService;
+
+    @Mock
+    private LookupUtils lookupUtils;
+
+    @Mock
+    private TranslationService translationService;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        resourceLookupController = new ResourceLookupController();
+
+        ReflectionTestUtils.setField(resourceLookupController, "documentPositionService", documentPositionService);
+        ReflectionTestUtils.setField(resourceLookupController, "warehouseMethodOfDisposalService",
+                warehouseMethodOfDisposalService);
+        ReflectionTestUtils.setField(resourceLookupController, "lookupUtils", lookupUtils);
+        ReflectionTestUtils.setField(resourceLookupController, "translationService", translationService);
+
+        given(translationService.translate(eq("documentGrid.gridColumn.wasteString.value.yes"), any(Locale.class)))
+                .willReturn("yes");
+        given(translationService.translate(eq("documentGrid.gridColumn.wasteString.value.no"), any(Locale.class)))
+                .willReturn("no");
+        given(documentPositionService.addMethodOfDisposalCondition(eq(L_DOCUMENT_ID), anyMapOf(String.class, Object.class),
+                anyBoolean(), anyBoolean())).willReturn(true);
+        given(warehouseMethodOfDisposalService.getSqlSortForResource(L_DOCUMENT_ID)).willReturn("time asc");
+        given(lookupUtils.getGridResponse(anyString(), anyString(), anyString(), anyInt(), anyInt(), any(ResourceDTO.class),
+                anyMapOf(String.class, Object.class), anyBoolean(), anyString())).willReturn(
+                new GridResponse<ResourceDTO>(1, 1, 1, Lists.newArrayList(new ResourceDTO())));
+    }
+
+    @Test
+    public void shouldOrderResourcesByMethodOfDisposal() {
+        // given
+        ResourceDTO record = new ResourceDTO();
+        record.setProduct("P1");
+        record.setConversion(BigDecimal.ONE);
+
+        // when
+        resourceLookupController.getRecords("number", "desc", 1, 20, L_DOCUMENT_ID, record);
+
+        // then
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Map> parametersCaptor = ArgumentCaptor.forClass(Map.class);
+
+        verify(lookupUtils).getGridResponse(queryCaptor.capture(), eq("number"), eq("desc"), eq(1), eq(20), eq(record),
+                parametersCaptor.capture(), eq(true), eq("time asc"));
+
+        assertFalse(queryCaptor.getValue().toLowerCase().contains("order by"));
+        assertEquals("P1", parametersCaptor.getValue().get("product"));
+    }
+
+}
@@ -0,0 +1,153 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.materialFlowResources.constants.DocumentFields;
+import com.qcadoo.mes.materialFlowResources.constants.DocumentType;
+import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
+import com.qcadoo.mes.materialFlowResources.constants.ParameterFieldsMFR;
+import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchQueryBuilder;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+public class ReservationsServiceTest {
+
+    private static final int L_POSITIONS = 500;
+
+    private ReservationsService reservationsService;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private MultiTenantService multiTenantService;
+
+    @Mock
+    private DataDefinition parameterDD, documentPositionParametersDD;
+
+    @Mock
+    private SearchQueryBuilder parameterQuery;
+
+    @Mock
+    private SearchCriteriaBuilder documentPositionParametersQuery;
+
+    @Mock
+    private Entity parameter, documentPositionParameters, document;
+
+    private final AtomicInteger parameterQueries = new AtomicInteger();
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        ParameterService parameterService = new ParameterService();
+        setField(parameterService, "dataDefinitionService", dataDefinitionService);
+        setField(parameterService, "multiTenantService", multiTenantService);
+
+        reservationsService = new ReservationsService();
+        setField(reservationsService, "dataDefinitionService", dataDefinitionService);
+        setField(reservationsService, "parameterService", parameterService);
+
+        given(dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PARAMETER)).willReturn(
+                parameterDD);
+        given(parameterDD.find(Mockito.anyString())).willReturn(parameterQuery);
+        given(parameterQuery.setMaxResults(Mockito.anyInt())).willReturn(parameterQuery);
+        given(parameterQuery.setCacheable(Mockito.anyBoolean())).willReturn(parameterQuery);
+        given(parameterQuery.uniqueResult()).willAnswer(invocation -> {
+            parameterQueries.incrementAndGet();
+            return parameter;
+        });
+        given(parameter.getFields()).willReturn(Maps.newHashMap());
+
+        given(dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                MaterialFlowResourcesConstants.MODEL_DOCUMENT_POSITION_PARAMETERS)).willReturn(documentPositionParametersDD);
+        given(documentPositionParametersDD.find()).willReturn(documentPositionParametersQuery);
+        given(documentPositionParametersQuery.setMaxResults(1)).willReturn(documentPositionParametersQuery);
+        given(documentPositionParametersQuery.uniqueResult()).willAnswer(invocation -> {
+            parameterQueries.incrementAndGet();
+            return documentPositionParameters;
+        });
+        given(documentPositionParameters.getBooleanField(ParameterFieldsMFR.DRAFT_MAKES_RESERVATION)).willReturn(true);
+
+        given(document.getStringField(DocumentFields.TYPE)).willReturn(DocumentType.RELEASE.getStringValue());
+        given(document.getBooleanField(DocumentFields.IN_BUFFER)).willReturn(false);
+    }
+
+    @After
+    public void clearTransaction() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            }
+
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public final void shouldAcceptDocumentWithoutParameterQueries() {
+        // given
+        reservationsService.reservationsEnabledForDocumentPositions();
+        parameterQueries.set(0);
+
+        TransactionSynchronizationManager.initSynchronization();
+
+        // when
+        for (int index = 0; index < L_POSITIONS; index++) {
+            Entity position = mock(Entity.class);
+            given(position.getBelongsToField(PositionFields.DOCUMENT)).willReturn(document);
+
+            assertTrue(reservationsService.reservationsEnabledForDocumentPositions(document));
+            reservationsService.deleteReservationFromDocumentPosition(position);
+        }
+
+        // then
+        assertEquals(0, parameterQueries.get());
+    }
+
+}
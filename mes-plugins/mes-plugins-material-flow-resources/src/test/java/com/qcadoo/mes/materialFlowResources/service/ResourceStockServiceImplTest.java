@@ -0,0 +1,208 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+
+public class ResourceStockServiceImplTest {
+
+    private ResourceStockService resourceStockService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private WarehouseStockService warehouseStockService;
+
+    @Mock
+    private Entity product, location;
+
+    private StockRow stockRow;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        resourceStockService = new ResourceStockServiceImpl();
+
+        setField(resourceStockService, "jdbcTemplate", jdbcTemplate);
+        setField(resourceStockService, "dataDefinitionService", dataDefinitionService);
+        setField(resourceStockService, "warehouseStockService", warehouseStockService);
+
+        given(product.getId()).willReturn(1L);
+        given(location.getId()).willReturn(2L);
+
+        stockRow = new StockRow(new BigDecimal("1000"));
+
+        given(jdbcTemplate.queryForList(anyString(), any(SqlParameterSource.class))).willAnswer(stockRow);
+    }
+
+    @Test
+    public final void shouldApplyMergedDeltasInSingleStatement() {
+        // given
+        List<ResourceStockDelta> deltas = Lists.newArrayList(new ResourceStockDelta(1L, 2L, new BigDecimal("5"), null),
+                new ResourceStockDelta(1L, 2L, new BigDecimal("-3"), new BigDecimal("1")),
+                new ResourceStockDelta(4L, 2L, null, new BigDecimal("7")));
+
+        // when
+        resourceStockService.applyResourceStockDeltas(deltas);
+
+        // then
+        ArgumentCaptor<SqlParameterSource> params = ArgumentCaptor.forClass(SqlParameterSource.class);
+        verify(jdbcTemplate, times(1)).queryForList(anyString(), params.capture());
+
+        Map<String, Object> values = ((MapSqlParameterSource) params.getValue()).getValues();
+
+        assertEquals(8, values.size());
+        assertEquals(0, new BigDecimal("2").compareTo((BigDecimal) values.get("quantity0")));
+        assertEquals(0, BigDecimal.ONE.compareTo((BigDecimal) values.get("reservedquantity0")));
+        assertEquals(4L, values.get("product_id1"));
+        assertEquals(0, new BigDecimal("7").compareTo((BigDecimal) values.get("reservedquantity1")));
+    }
+
+    @Test
+    public final void shouldInsertOrAddResourceStockWhenItDoesNotExistYet() {
+        // given
+        given(jdbcTemplate.queryForList(anyString(), any(SqlParameterSource.class))).willReturn(
+                Lists.<Map<String, Object>> newArrayList());
+        given(warehouseStockService.getOrderedQuantity(2L, 1L)).willReturn(new BigDecimal("4"));
+        given(warehouseStockService.getMinimumState(2L, 1L)).willReturn(BigDecimal.ONE);
+
+        // when
+        resourceStockService.addResourceStock(product, location, new BigDecimal("3"));
+
+        // then
+        ArgumentCaptor<String> query = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<SqlParameterSource> params = ArgumentCaptor.forClass(SqlParameterSource.class);
+        verify(jdbcTemplate).update(query.capture(), params.capture());
+
+        assertTrue(query.getValue().startsWith("INSERT INTO materialflowresources_resourcestock"));
+        assertTrue(query.getValue().contains("ON CONFLICT (location_id, product_id) DO UPDATE"));
+        assertEquals(2L, params.getValue().getValue("location_id"));
+        assertEquals(1L, params.getValue().getValue("product_id"));
+        assertEquals(0, new BigDecimal("3").compareTo((BigDecimal) params.getValue().getValue("quantity")));
+        assertEquals(0, new BigDecimal("4").compareTo((BigDecimal) params.getValue().getValue("orderedquantity")));
+        assertEquals(0, BigDecimal.ONE.compareTo((BigDecimal) params.getValue().getValue("minimumstate")));
+    }
+
+    @Test
+    public final void shouldNotInsertResourceStockWhenItExists() {
+        // when
+        resourceStockService.addResourceStock(product, location, new BigDecimal("3"));
+
+        // then
+        verify(jdbcTemplate, never()).update(anyString(), any(SqlParameterSource.class));
+        assertEquals(0, new BigDecimal("1003").compareTo(stockRow.quantity));
+        assertEquals(0, new BigDecimal("1003").compareTo(stockRow.availableQuantity));
+    }
+
+    @Test
+    public final void shouldClampStockToZero() {
+        // when
+        resourceStockService.removeResourceStock(product, location, new BigDecimal("1500"));
+        resourceStockService.updateResourceStock(product, location, new BigDecimal("5"));
+
+        // then
+        assertEquals(0, BigDecimal.ZERO.compareTo(stockRow.quantity));
+        assertEquals(0, BigDecimal.ZERO.compareTo(stockRow.reservedQuantity));
+        assertEquals(0, BigDecimal.ZERO.compareTo(stockRow.availableQuantity));
+    }
+
+    /**
+     * Single resource stock row, updated the same way as by the UPDATE statement - atomically, using values before update.
+     */
+    private static final class StockRow implements Answer<List<Map<String, Object>>> {
+
+        private BigDecimal quantity;
+
+        private BigDecimal reservedQuantity = BigDecimal.ZERO;
+
+        private BigDecimal availableQuantity;
+
+        private StockRow(final BigDecimal quantity) {
+            this.quantity = quantity;
+            this.availableQuantity = quantity;
+        }
+
+        @Override
+        public synchronized List<Map<String, Object>> answer(final InvocationOnMock invocation) {
+            MapSqlParameterSource params = (MapSqlParameterSource) invocation.getArguments()[1];
+
+            BigDecimal quantityDelta = (BigDecimal) params.getValue("quantity0");
+            BigDecimal reservedQuantityDelta = (BigDecimal) params.getValue("reservedquantity0");
+            BigDecimal newQuantity = quantity.add(quantityDelta);
+
+            if (newQuantity.signum() <= 0) {
+                if (reservedQuantityDelta.signum() != 0) {
+                    reservedQuantity = BigDecimal.ZERO;
+                }
+                quantity = BigDecimal.ZERO;
+                availableQuantity = BigDecimal.ZERO;
+            } else {
+                reservedQuantity = reservedQuantity.add(reservedQuantityDelta);
+                availableQuantity = availableQuantity.add(quantityDelta).subtract(reservedQuantityDelta);
+                quantity = newQuantity;
+            }
+
+            Map<String, Object> row = Maps.newHashMap();
+            row.put("quantity", quantity);
+            row.put("reservedquantity", reservedQuantity);
+            row.put("availablequantity", availableQuantity);
+            return Lists.newArrayList(row);
+        }
+
+    }
+
+}
@@ -28,7 +28,6 @@ import static com.qcadoo.mes.basic.constants.ProductFields.UNIT;
 import static com.qcadoo.mes.materialFlow.constants.LocationFields.EXTERNAL_NUMBER;
 import static com.qcadoo.mes.materialFlow.constants.MaterialsInLocationFields.MATERIALS_IN_LOCATION_COMPONENTS;
 import static com.qcadoo.mes.materialFlow.constants.MaterialsInLocationFields.MATERIAL_FLOW_FOR_DATE;
-import static com.qcadoo.mes.materialFlow.constants.StockCorrectionFields.FOUND;
 import static com.qcadoo.mes.materialFlow.constants.StockCorrectionFields.LOCATION;
 import static com.qcadoo.mes.materialFlow.constants.StockCorrectionFields.PRODUCT;
 import static com.qcadoo.mes.materialFlow.constants.StockCorrectionFields.SHOULD_BE;
@@ -37,22 +36,31 @@ import static com.qcadoo.mes.materialFlow.constants.TransferFields.LOCATION_FROM
 import static com.qcadoo.mes.materialFlow.constants.TransferFields.LOCATION_TO;
 import static com.qcadoo.mes.materialFlow.constants.TransferFields.NUMBER;
 import static com.qcadoo.mes.materialFlow.constants.TransferFields.QUANTITY;
-import static com.qcadoo.mes.materialFlow.constants.TransferFields.TIME;
 import static com.qcadoo.mes.materialFlow.constants.TransferFields.TYPE;
 import static com.qcadoo.mes.materialFlow.constants.TransferType.CONSUMPTION;
 import static com.qcadoo.mes.materialFlow.constants.TransferType.PRODUCTION;
 
 import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import org.joda.time.DateTime;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.collect.Table;
 import com.qcadoo.localization.api.utils.DateUtils;
 import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.mes.basic.util.CurrencyService;
@@ -66,6 +74,8 @@ import com.qcadoo.model.api.search.SearchOrders;
 import com.qcadoo.model.api.search.SearchProjections;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.model.api.search.SearchResult;
+import com.qcadoo.tenant.api.MultiTenantCallback;
+import com.qcadoo.tenant.api.MultiTenantService;
 import com.qcadoo.view.api.ComponentState;
 import com.qcadoo.view.api.ViewDefinitionState;
 import com.qcadoo.view.api.components.FieldComponent;
@@ -95,13 +105,32 @@ public class MaterialFlowService {
 
     private static final String L_LOC_LOCATION_ID = "loc.location.id";
 
-    private static final String L_LOCATION_ID = "location.id";
+    private static final String L_LOCATION_ID_PARAM = "locationId";
 
-    private static final String L_LOCATION_FROM_ID = "locationFrom.id";
+    private static final String L_PRODUCT_ID_PARAM = "productId";
 
-    private static final String L_LOCATION_TO_ID = "locationTo.id";
+    private static final String L_LOCATION_IDS_PARAM = "locationIds";
 
-    private static final String L_PRODUCT_ID = "product.id";
+    private static final String L_PRODUCT_IDS_PARAM = "productIds";
+
+    private static final String L_FOR_DATE_PARAM = "forDate";
+
+    private static final String L_CHECKPOINT_TIME_PARAM = "checkpointTime";
+
+    private static final String L_LOCATION_ID_COLUMN = "location_id";
+
+    private static final String L_PRODUCT_ID_COLUMN = "product_id";
+
+    private static final String SHOULD_BE_IN_LOCATION_QUERY = "SELECT materialflow_shouldbeinlocation(:locationId, :productId, "
+            + "CAST(:forDate AS timestamp))";
+
+    private static final String SHOULD_BE_IN_LOCATIONS_QUERY = "SELECT location.id AS location_id, product.id AS product_id, "
+            + "materialflow_shouldbeinlocation(location.id, product.id, CAST(:forDate AS timestamp)) AS quantity "
+            + "FROM materialflow_location location CROSS JOIN basic_product product "
+            + "WHERE location.id IN (:locationIds) AND product.id IN (:productIds)";
+
+    private static final String CREATE_STOCK_LEDGER_CHECKPOINTS_QUERY = "SELECT materialflow_create_stockledgercheckpoints("
+            + "CAST(:checkpointTime AS timestamp))";
 
     @Autowired
     private DataDefinitionService dataDefinitionService;
@@ -115,69 +144,80 @@ public class MaterialFlowService {
     @Autowired
     private NumberService numberService;
 
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    /**
+     * Returns quantity of product, which should be in location at given date: last stock correction plus transfers made since
+     * then. Answered by materialflow_shouldbeinlocation function from stock ledger checkpoints and bounded range of transfers.
+     */
     public BigDecimal calculateShouldBeInLocation(final Long locationId, final Long productId, final Date forDate) {
-        BigDecimal countProductIn = BigDecimal.ZERO;
-        BigDecimal countProductOut = BigDecimal.ZERO;
-        BigDecimal countProduct = BigDecimal.ZERO;
-        Date lastCorrectionDate = null;
-        DataDefinition transferDataCorrection = dataDefinitionService.get(MaterialFlowConstants.PLUGIN_IDENTIFIER,
-                MaterialFlowConstants.MODEL_STOCK_CORRECTION);
-        DataDefinition transferTo = dataDefinitionService.get(MaterialFlowConstants.PLUGIN_IDENTIFIER,
-                MaterialFlowConstants.MODEL_TRANSFER);
-        DataDefinition transferFrom = dataDefinitionService.get(MaterialFlowConstants.PLUGIN_IDENTIFIER,
-                MaterialFlowConstants.MODEL_TRANSFER);
-
-        Entity resultDataCorrection = transferDataCorrection.find().add(SearchRestrictions.eq(L_LOCATION_ID, locationId))
-                .add(SearchRestrictions.eq(L_PRODUCT_ID, productId)).addOrder(SearchOrders.desc(STOCK_CORRECTION_DATE))
-                .setMaxResults(1).uniqueResult();
-
-        if (resultDataCorrection != null) {
-            lastCorrectionDate = (Date) resultDataCorrection.getField(STOCK_CORRECTION_DATE);
-            countProduct = (BigDecimal) resultDataCorrection.getField(FOUND);
+        Map<String, Object> params = Maps.newHashMap();
+        params.put(L_LOCATION_ID_PARAM, locationId);
+        params.put(L_PRODUCT_ID_PARAM, productId);
+        params.put(L_FOR_DATE_PARAM, forDate);
+
+        BigDecimal quantity = jdbcTemplate.queryForObject(SHOULD_BE_IN_LOCATION_QUERY, params, BigDecimal.class);
+
+        return quantity == null ? BigDecimal.ZERO : quantity;
+    }
+
+    /**
+     * Returns quantities of products, which should be in locations at given date, for every location (row) and product (column)
+     * in one query.
+     */
+    public Table<Long, Long, BigDecimal> calculateShouldBeInLocations(final Collection<Long> locationIds,
+            final Collection<Long> productIds, final Date forDate) {
+        final Table<Long, Long, BigDecimal> quantities = HashBasedTable.create();
+
+        if (locationIds.isEmpty() || productIds.isEmpty()) {
+            return quantities;
         }
 
-        SearchResult resultTo = null;
-        SearchResult resultFrom = null;
+        Map<String, Object> params = Maps.newHashMap();
+        params.put(L_LOCATION_IDS_PARAM, locationIds);
+        params.put(L_PRODUCT_IDS_PARAM, productIds);
+        params.put(L_FOR_DATE_PARAM, forDate);
 
-        if (lastCorrectionDate == null) {
-            resultTo = transferTo.find().add(SearchRestrictions.eq(L_LOCATION_TO_ID, locationId))
-                    .add(SearchRestrictions.eq(L_PRODUCT_ID, productId)).add(SearchRestrictions.le(TIME, forDate)).list();
+        jdbcTemplate.query(SHOULD_BE_IN_LOCATIONS_QUERY, params, new RowCallbackHandler() {
 
-            resultFrom = transferFrom.find().add(SearchRestrictions.eq(L_LOCATION_FROM_ID, locationId))
-                    .add(SearchRestrictions.eq(L_PRODUCT_ID, productId)).add(SearchRestrictions.le(TIME, forDate)).list();
+            @Override
+            public void processRow(final ResultSet resultSet) throws SQLException {
+                BigDecimal quantity = resultSet.getBigDecimal(QUANTITY);
 
-        } else {
-            resultTo = transferTo.find().add(SearchRestrictions.eq(L_LOCATION_TO_ID, locationId))
-                    .add(SearchRestrictions.eq(L_PRODUCT_ID, productId)).add(SearchRestrictions.le(TIME, forDate))
-                    .add(SearchRestrictions.gt(TIME, lastCorrectionDate)).list();
+                quantities.put(resultSet.getLong(L_LOCATION_ID_COLUMN), resultSet.getLong(L_PRODUCT_ID_COLUMN),
+                        quantity == null ? BigDecimal.ZERO : quantity);
+            }
 
-            resultFrom = transferFrom.find().add(SearchRestrictions.eq(L_LOCATION_FROM_ID, locationId))
-                    .add(SearchRestrictions.eq(L_PRODUCT_ID, productId)).add(SearchRestrictions.le(TIME, forDate))
-                    .add(SearchRestrictions.gt(TIME, lastCorrectionDate)).list();
-        }
+        });
 
-        for (Entity e : resultTo.getEntities()) {
-            BigDecimal quantity = (BigDecimal) e.getField(QUANTITY);
-            countProductIn = countProductIn.add(quantity, numberService.getMathContext());
-        }
+        return quantities;
+    }
 
-        for (Entity e : resultFrom.getEntities()) {
-            BigDecimal quantity = (BigDecimal) e.getField(QUANTITY);
-            countProductOut = countProductOut.add(quantity, numberService.getMathContext());
-        }
+    public void createStockLedgerCheckpointsTrigger() {
+        multiTenantService.doInMultiTenantContext(new MultiTenantCallback() {
 
-        if (lastCorrectionDate == null) {
-            countProductIn = countProductIn.subtract(countProductOut, numberService.getMathContext());
-        } else {
-            countProductIn = countProductIn.add(countProduct, numberService.getMathContext());
-            countProductIn = countProductIn.subtract(countProductOut, numberService.getMathContext());
-        }
+            @Override
+            public void invoke() {
+                createStockLedgerCheckpoints();
+            }
 
-        if (countProductIn.compareTo(BigDecimal.ZERO) == -1) {
-            countProductIn = BigDecimal.ZERO;
-        }
+        });
+    }
 
-        return countProductIn;
+    /**
+     * Stores running balances of transfers up to the beginning of current month, so balances at later dates sum only transfers
+     * made since then. Checkpoints are kept up to date by the materialflow_transfer trigger, transfers are locked against writes
+     * while they are built.
+     */
+    public void createStockLedgerCheckpoints() {
+        Map<String, Object> params = Maps.newHashMap();
+        params.put(L_CHECKPOINT_TIME_PARAM, new DateTime().withDayOfMonth(1).withTimeAtStartOfDay().toDate());
+
+        jdbcTemplate.queryForList(CREATE_STOCK_LEDGER_CHECKPOINTS_QUERY, params);
     }
 
     public void refreshShouldBeInStockCorrectionDetails(final ViewDefinitionState state, final ComponentState componentState,
@@ -322,8 +362,17 @@ public class MaterialFlowService {
 
             Date forDate = ((Date) materialsInLocation.getField(MATERIAL_FLOW_FOR_DATE));
 
+            Set<Long> productIds = Sets.newHashSet();
+
+            for (Entity product : products) {
+                productIds.add(product.getId());
+            }
+
+            Map<Long, BigDecimal> quantities = calculateShouldBeInLocations(Sets.newHashSet(location.getId()), productIds,
+                    forDate).row(location.getId());
+
             for (Entity product : products) {
-                BigDecimal quantity = calculateShouldBeInLocation(location.getId(), product.getId(), forDate);
+                BigDecimal quantity = quantities.containsKey(product.getId()) ? quantities.get(product.getId()) : BigDecimal.ZERO;
 
                 if (reportData.containsKey(product)) {
                     reportData.put(product, reportData.get(product).add(quantity, numberService.getMathContext()));
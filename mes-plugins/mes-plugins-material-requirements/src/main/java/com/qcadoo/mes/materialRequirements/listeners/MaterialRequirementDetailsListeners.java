@@ -36,12 +36,12 @@ import org.springframework.transaction.annotation.Transactional;
 
 import com.lowagie.text.DocumentException;
 import com.qcadoo.localization.api.utils.DateUtils;
+import com.qcadoo.mes.basic.print.xls.XlsxReportPrintService;
 import com.qcadoo.mes.materialRequirements.MaterialRequirementService;
 import com.qcadoo.mes.materialRequirements.constants.MaterialRequirementsConstants;
 import com.qcadoo.mes.orders.util.OrderHelperService;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
-import com.qcadoo.report.api.ReportService;
 import com.qcadoo.security.api.SecurityService;
 import com.qcadoo.view.api.ComponentState;
 import com.qcadoo.view.api.ComponentState.MessageType;
@@ -58,7 +58,7 @@ public class MaterialRequirementDetailsListeners {
     private SecurityService securityService;
 
     @Autowired
-    private ReportService reportService;
+    private XlsxReportPrintService xlsxReportPrintService;
 
     @Autowired
     private MaterialRequirementService materialRequirementService;
@@ -67,8 +67,8 @@ public class MaterialRequirementDetailsListeners {
     private OrderHelperService orderHelperService;
 
     public void printMaterialRequirement(final ViewDefinitionState view, final ComponentState state, final String[] args) {
-        reportService.printGeneratedReport(view, state, new String[] { args[0], MaterialRequirementsConstants.PLUGIN_IDENTIFIER,
-                MaterialRequirementsConstants.MODEL_MATERIAL_REQUIREMENT });
+        xlsxReportPrintService.printGeneratedReport(view, state, new String[] { args[0],
+                MaterialRequirementsConstants.PLUGIN_IDENTIFIER, MaterialRequirementsConstants.MODEL_MATERIAL_REQUIREMENT });
     }
 
     // TODO KRNA generic candidate
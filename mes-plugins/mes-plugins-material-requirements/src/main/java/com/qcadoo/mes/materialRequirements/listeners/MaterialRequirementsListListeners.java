@@ -26,8 +26,8 @@ package com.qcadoo.mes.materialRequirements.listeners;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.qcadoo.mes.basic.print.xls.XlsxReportPrintService;
 import com.qcadoo.mes.materialRequirements.constants.MaterialRequirementsConstants;
-import com.qcadoo.report.api.ReportService;
 import com.qcadoo.view.api.ComponentState;
 import com.qcadoo.view.api.ViewDefinitionState;
 
@@ -35,11 +35,11 @@ import com.qcadoo.view.api.ViewDefinitionState;
 public class MaterialRequirementsListListeners {
 
     @Autowired
-    private ReportService reportService;
+    private XlsxReportPrintService xlsxReportPrintService;
 
     public void printMaterialRequirement(final ViewDefinitionState view, final ComponentState state, final String[] args) {
-        reportService.printGeneratedReport(view, state, new String[] { args[0], MaterialRequirementsConstants.PLUGIN_IDENTIFIER,
-                MaterialRequirementsConstants.MODEL_MATERIAL_REQUIREMENT });
+        xlsxReportPrintService.printGeneratedReport(view, state, new String[] { args[0],
+                MaterialRequirementsConstants.PLUGIN_IDENTIFIER, MaterialRequirementsConstants.MODEL_MATERIAL_REQUIREMENT });
     }
 
 }
@@ -31,6 +31,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.lowagie.text.DocumentException;
+import com.qcadoo.mes.basic.print.xls.XlsxReportPrintService;
 import com.qcadoo.mes.materialRequirements.MaterialRequirementService;
 import com.qcadoo.mes.materialRequirements.constants.MaterialRequirementsConstants;
 import com.qcadoo.mes.orders.util.OrderReportService;
@@ -43,6 +44,8 @@ import com.qcadoo.view.api.utils.NumberGeneratorService;
 @Service
 public class OrdersPlanningListListenersMR {
 
+    private static final String L_XLS = "xls";
+
     @Autowired
     private NumberGeneratorService numberGeneratorService;
 
@@ -61,10 +64,7 @@ public class OrdersPlanningListListenersMR {
 
         try {
             materialRequirementService.generateMaterialRequirementDocuments(state, materialRequirement);
-            view.redirectTo(
-                    "/generateSavedReport/" + MaterialRequirementsConstants.PLUGIN_IDENTIFIER + "/"
-                            + MaterialRequirementsConstants.MODEL_MATERIAL_REQUIREMENT + "." + args[0] + "?id="
-                            + materialRequirement.getId(), true, false);
+            view.redirectTo(getSavedReportUrl(args[0], materialRequirement.getId()), true, false);
         } catch (IOException e) {
             throw new IllegalStateException(e.getMessage(), e);
         } catch (DocumentException e) {
@@ -72,6 +72,16 @@ public class OrdersPlanningListListenersMR {
         }
     }
 
+    private String getSavedReportUrl(final String type, final Long materialRequirementId) {
+        if (L_XLS.equals(type)) {
+            return XlsxReportPrintService.getSavedReportUrl(MaterialRequirementsConstants.PLUGIN_IDENTIFIER,
+                    MaterialRequirementsConstants.MODEL_MATERIAL_REQUIREMENT, materialRequirementId);
+        }
+
+        return "/generateSavedReport/" + MaterialRequirementsConstants.PLUGIN_IDENTIFIER + "/"
+                + MaterialRequirementsConstants.MODEL_MATERIAL_REQUIREMENT + "." + type + "?id=" + materialRequirementId;
+    }
+
     private Entity printMaterialReqForOrder(final ComponentState state) {
         Map<String, Object> entityFieldsMap = new HashMap<String, Object>();
 
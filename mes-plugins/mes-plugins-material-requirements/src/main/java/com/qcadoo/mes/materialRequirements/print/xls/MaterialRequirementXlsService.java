@@ -29,25 +29,23 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 
-import org.apache.poi.hssf.usermodel.HSSFCell;
-import org.apache.poi.hssf.usermodel.HSSFRow;
-import org.apache.poi.hssf.usermodel.HSSFSheet;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.mes.basic.constants.ProductFields;
+import com.qcadoo.mes.basic.print.xls.StreamingXlsxReportService;
+import com.qcadoo.mes.basic.print.xls.XlsRowWriter;
+import com.qcadoo.mes.basic.print.xls.XlsStyle;
 import com.qcadoo.mes.basicProductionCounting.BasicProductionCountingService;
 import com.qcadoo.mes.materialRequirements.constants.MaterialRequirementFields;
 import com.qcadoo.mes.technologies.ProductQuantitiesService;
 import com.qcadoo.mes.technologies.constants.MrpAlgorithm;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
-import com.qcadoo.report.api.xls.XlsDocumentService;
-import com.qcadoo.report.api.xls.XlsHelper;
 
 @Service
-public final class MaterialRequirementXlsService extends XlsDocumentService {
+public final class MaterialRequirementXlsService extends StreamingXlsxReportService {
 
     @Autowired
     private TranslationService translationService;
@@ -55,9 +53,6 @@ public final class MaterialRequirementXlsService extends XlsDocumentService {
     @Autowired
     private NumberService numberService;
 
-    @Autowired
-    private XlsHelper xlsHelper;
-
     @Autowired
     private ProductQuantitiesService productQuantitiesService;
 
@@ -65,25 +60,19 @@ public final class MaterialRequirementXlsService extends XlsDocumentService {
     private BasicProductionCountingService basicProductionCountingService;
 
     @Override
-    protected void addHeader(final HSSFSheet sheet, final Locale locale, final Entity materialRequirement) {
-        HSSFRow header = sheet.createRow(0);
-        HSSFCell cell0 = header.createCell(0);
-        cell0.setCellValue(translationService.translate("basic.product.number.label", locale));
-        xlsHelper.setCellStyle(sheet, cell0);
-        HSSFCell cell1 = header.createCell(1);
-        cell1.setCellValue(translationService.translate("basic.product.name.label", locale));
-        xlsHelper.setCellStyle(sheet, cell1);
-        HSSFCell cell2 = header.createCell(2);
-        cell2.setCellValue(translationService.translate("technologies.technologyOperationComponent.quantity.label", locale));
-        xlsHelper.setCellStyle(sheet, cell2);
-        HSSFCell cell3 = header.createCell(3);
-        cell3.setCellValue(translationService.translate("basic.product.unit.label", locale));
-        xlsHelper.setCellStyle(sheet, cell3);
+    protected void buildSheet(final XlsRowWriter writer, final Entity materialRequirement, final Locale locale) {
+        addHeader(writer, locale);
+        addSeries(writer, materialRequirement);
     }
 
-    @Override
-    protected void addSeries(final HSSFSheet sheet, final Entity materialRequirement) {
-        int rowNum = 1;
+    private void addHeader(final XlsRowWriter writer, final Locale locale) {
+        writer.writeRow(XlsStyle.HEADER, translationService.translate("basic.product.number.label", locale),
+                translationService.translate("basic.product.name.label", locale),
+                translationService.translate("technologies.technologyOperationComponent.quantity.label", locale),
+                translationService.translate("basic.product.unit.label", locale));
+    }
+
+    private void addSeries(final XlsRowWriter writer, final Entity materialRequirement) {
         List<Entity> orders = materialRequirement.getManyToManyField(MaterialRequirementFields.ORDERS);
         MrpAlgorithm algorithm = MrpAlgorithm.parseString(materialRequirement
                 .getStringField(MaterialRequirementFields.MRP_ALGORITHM));
@@ -93,22 +82,14 @@ public final class MaterialRequirementXlsService extends XlsDocumentService {
 
         for (Entry<Long, BigDecimal> neededProductQuantity : neededProductQuantities.entrySet()) {
             Entity product = productQuantitiesService.getProduct(neededProductQuantity.getKey());
-
-            HSSFRow row = sheet.createRow(rowNum++);
-            row.createCell(0).setCellValue(product.getStringField(ProductFields.NUMBER));
-            row.createCell(1).setCellValue(product.getStringField(ProductFields.NAME));
-            row.createCell(2).setCellValue(numberService.setScale(neededProductQuantity.getValue()).doubleValue());
             String unit = product.getStringField(ProductFields.UNIT);
-            if (unit == null) {
-                row.createCell(3).setCellValue("");
-            } else {
-                row.createCell(3).setCellValue(unit);
-            }
+
+            writer.writeRow(XlsStyle.DEFAULT, product.getStringField(ProductFields.NUMBER),
+                    product.getStringField(ProductFields.NAME), numberService.setScale(neededProductQuantity.getValue()),
+                    (unit == null) ? "" : unit);
         }
-        sheet.autoSizeColumn((short) 0);
-        sheet.autoSizeColumn((short) 1);
-        sheet.autoSizeColumn((short) 2);
-        sheet.autoSizeColumn((short) 3);
+
+        writer.setColumnWidths(5000, 10000, 4000, 2500);
     }
 
     @Override
@@ -42,10 +42,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.qcadoo.localization.api.utils.DateUtils;
 import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.operationTimeCalculations.dto.OperationNormative;
 import com.qcadoo.mes.technologies.ProductQuantitiesService;
 import com.qcadoo.mes.technologies.ProductionLinesService;
 import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
@@ -53,17 +53,28 @@ import com.qcadoo.mes.technologies.constants.TechnologyFields;
 import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentEntityType;
 import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
 import com.qcadoo.mes.technologies.dto.OperationProductComponentWithQuantityContainer;
+import com.qcadoo.mes.timeNormsForOperations.constants.TechOperCompTimeCalculationsFields;
 import com.qcadoo.mes.timeNormsForOperations.constants.TechnologyOperationComponentFieldsTNFO;
+import com.qcadoo.mes.timeNormsForOperations.constants.TimeNormsConstants;
 import com.qcadoo.model.api.BigDecimalUtils;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.EntityTreeNode;
 import com.qcadoo.model.api.NumberService;
+import com.qcadoo.model.api.search.SearchRestrictions;
 
 @Service
 public class OrderRealizationTimeServiceImpl implements OrderRealizationTimeService {
 
     private static final String L_ORDER = "order";
 
+    private static final String L_NEXT_OPERATION_AFTER_SPECIFIED_QUANTITY = "02specified";
+
+    private static final String L_OPERATION_RUNS_FALLBACK_QUANTITY = "56";
+
+    private static final String L_WORKSTATIONS_QUANTITY_FROM_PRODUCTION_LINE = "workstationsQuantityFromProductionLine";
+
     @Autowired
     private ProductQuantitiesService productQuantitiesService;
 
@@ -76,6 +87,9 @@ public class OrderRealizationTimeServiceImpl implements OrderRealizationTimeServ
     @Autowired
     private ParameterService parameterService;
 
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
     @Override
     public Object setDateToField(final Date date) {
         return new SimpleDateFormat(DateUtils.L_DATE_TIME_FORMAT, Locale.getDefault()).format(date);
@@ -85,15 +99,8 @@ public class OrderRealizationTimeServiceImpl implements OrderRealizationTimeServ
     @Transactional
     public int estimateOperationTimeConsumption(final EntityTreeNode operationComponent, final BigDecimal plannedQuantity,
             final boolean includeTpz, final boolean includeAdditionalTime, final Entity productionLine) {
-        Entity technology = operationComponent.getBelongsToField(TECHNOLOGY);
-
-        Map<Long, BigDecimal> operationRunsFromProductionQuantities = Maps.newHashMap();
-
-        OperationProductComponentWithQuantityContainer productComponentQuantities = productQuantitiesService
-                .getProductComponentQuantities(technology, plannedQuantity, operationRunsFromProductionQuantities);
-
-        return evaluateOperationTime(operationComponent, includeTpz, includeAdditionalTime,
-                operationRunsFromProductionQuantities, productionLine, false, productComponentQuantities);
+        return estimateOperationTime(operationComponent, plannedQuantity, includeTpz, includeAdditionalTime, productionLine,
+                false);
     }
 
     @Override
@@ -101,6 +108,13 @@ public class OrderRealizationTimeServiceImpl implements OrderRealizationTimeServ
     public int estimateMaxOperationTimeConsumptionForWorkstation(final EntityTreeNode operationComponent,
             final BigDecimal plannedQuantity, final boolean includeTpz, final boolean includeAdditionalTime,
             final Entity productionLine) {
+        return estimateOperationTime(operationComponent, plannedQuantity, includeTpz, includeAdditionalTime, productionLine,
+                true);
+    }
+
+    private int estimateOperationTime(final EntityTreeNode operationComponent, final BigDecimal plannedQuantity,
+            final boolean includeTpz, final boolean includeAdditionalTime, final Entity productionLine,
+            final boolean maxForWorkstation) {
         Entity technology = operationComponent.getBelongsToField(TECHNOLOGY);
 
         Map<Long, BigDecimal> operationRunsFromProductionQuantities = Maps.newHashMap();
@@ -108,8 +122,19 @@ public class OrderRealizationTimeServiceImpl implements OrderRealizationTimeServ
         OperationProductComponentWithQuantityContainer productComponentQuantities = productQuantitiesService
                 .getProductComponentQuantities(technology, plannedQuantity, operationRunsFromProductionQuantities);
 
-        return evaluateOperationTime(operationComponent, includeTpz, includeAdditionalTime,
-                operationRunsFromProductionQuantities, productionLine, true, productComponentQuantities);
+        NormativesCompilation compilation = new NormativesCompilation(productionLine, isWorkstationsQuantityFromProductionLine(),
+                operationRunsFromProductionQuantities, productComponentQuantities);
+
+        OperationNormative root = compileOperationTree(operationComponent, compilation);
+
+        Map<Long, TimeCalculation> timeCalculations = Maps.newHashMap();
+
+        int operationTime = evaluateOperationTime(root, includeTpz, includeAdditionalTime, maxForWorkstation,
+                Maps.<OperationNormative, Integer> newHashMap(), timeCalculations);
+
+        saveTimeCalculations(timeCalculations);
+
+        return operationTime;
     }
 
     @Override
@@ -149,12 +174,15 @@ public class OrderRealizationTimeServiceImpl implements OrderRealizationTimeServ
 
         Map<Long, BigDecimal> operationRunsFromProductionQuantities = Maps.newHashMap();
 
-        productQuantitiesService
+        OperationProductComponentWithQuantityContainer productComponentQuantities = productQuantitiesService
                 .getProductComponentQuantities(technology, plannedQuantity, operationRunsFromProductionQuantities);
 
+        NormativesCompilation compilation = new NormativesCompilation(productionLine, isWorkstationsQuantityFromProductionLine(),
+                operationRunsFromProductionQuantities, productComponentQuantities);
+
         for (Entity operationComponent : operationComponents) {
             evaluateTimesConsideringOperationCanBeReferencedTechnology(operationDurations, operationComponent, includeTpz,
-                    includeAdditionalTime, operationRunsFromProductionQuantities, productionLine, maxForWorkstation);
+                    includeAdditionalTime, compilation, maxForWorkstation);
         }
 
         return operationDurations;
@@ -162,96 +190,227 @@ public class OrderRealizationTimeServiceImpl implements OrderRealizationTimeServ
 
     private void evaluateTimesConsideringOperationCanBeReferencedTechnology(final Map<Entity, Integer> operationDurations,
             final Entity operationComponent, final boolean includeTpz, final boolean includeAdditionalTime,
-            final Map<Long, BigDecimal> operationRuns, final Entity productionLine, final boolean maxForWorkstation) {
+            final NormativesCompilation compilation, final boolean maxForWorkstation) {
         String entityType = operationComponent.getStringField(TechnologyOperationComponentFields.ENTITY_TYPE);
 
         if (TechnologyOperationComponentEntityType.REFERENCE_TECHNOLOGY.getStringValue().equals(entityType)) {
             for (Entity operComp : operationComponent.getBelongsToField(TechnologyOperationComponentFields.REFERENCE_TECHNOLOGY)
                     .getTreeField(TechnologyFields.OPERATION_COMPONENTS)) {
                 evaluateTimesConsideringOperationCanBeReferencedTechnology(operationDurations, operComp, includeTpz,
-                        includeAdditionalTime, operationRuns, productionLine, maxForWorkstation);
+                        includeAdditionalTime, compilation, maxForWorkstation);
             }
         } else {
-            int duration = evaluateSingleOperationTime(operationComponent, includeTpz, includeAdditionalTime, operationRuns,
-                    productionLine, maxForWorkstation);
+            OperationNormative normative = compileOperation(operationComponent, compilation);
+
+            int duration = evaluateOperationDuration(normative, normative.getCycles(), maxForWorkstation, includeTpz,
+                    includeAdditionalTime);
 
             operationDurations.put(operationComponent, duration);
 
         }
     }
 
-    private int evaluateOperationTime(final Entity operationComponent, final boolean includeTpz,
-            final boolean includeAdditionalTime, final Map<Long, BigDecimal> operationRuns, final Entity productionLine,
-            final boolean maxForWorkstation, final OperationProductComponentWithQuantityContainer productComponentQuantities) {
+    private OperationNormative compileOperationTree(final EntityTreeNode operationComponent,
+            final NormativesCompilation compilation) {
         String entityType = operationComponent.getStringField(TechnologyOperationComponentFields.ENTITY_TYPE);
 
         if (TechnologyOperationComponentEntityType.REFERENCE_TECHNOLOGY.getStringValue().equals(entityType)) {
-            EntityTreeNode actualOperationComponent = operationComponent
-                    .getBelongsToField(TechnologyOperationComponentFields.REFERENCE_TECHNOLOGY)
-                    .getTreeField(TechnologyFields.OPERATION_COMPONENTS).getRoot();
+            Entity referenceTechnology = operationComponent
+                    .getBelongsToField(TechnologyOperationComponentFields.REFERENCE_TECHNOLOGY);
 
-            return evaluateOperationTime(actualOperationComponent, includeTpz, includeAdditionalTime, operationRuns,
-                    productionLine, maxForWorkstation, productComponentQuantities);
-        } else if (TechnologyOperationComponentEntityType.OPERATION.getStringValue().equals(entityType)) {
-            int operationTime = evaluateSingleOperationTime(operationComponent, includeTpz, includeAdditionalTime, operationRuns,
-                    productionLine, maxForWorkstation);
-            int offset = 0;
+            OperationNormative referencedRoot = compilation.referencedRoots.get(referenceTechnology.getId());
+
+            if (referencedRoot == null) {
+                referencedRoot = compileOperationTree(referenceTechnology.getTreeField(TechnologyFields.OPERATION_COMPONENTS)
+                        .getRoot(), compilation);
 
-            List<Entity> childs = Lists.newArrayList(operationComponent.getHasManyField("children"));
-            for (Entity child : childs) {
-                int childTime = evaluateOperationTime(child, includeTpz, includeAdditionalTime, operationRuns, productionLine,
-                        maxForWorkstation, productComponentQuantities);
+                compilation.referencedRoots.put(referenceTechnology.getId(), referencedRoot);
+            }
 
-                if ("02specified".equals(child.getStringField("nextOperationAfterProducedType"))) {
+            return referencedRoot;
+        } else if (TechnologyOperationComponentEntityType.OPERATION.getStringValue().equals(entityType)) {
+            OperationNormative normative = compileOperation(operationComponent, compilation);
 
-                    int childTimeTotal = evaluateSingleOperationTime(child, includeTpz, includeAdditionalTime, operationRuns,
-                            productionLine, true);
-                    int childTimeForQuantity = evaluateSingleOperationTimeIncludedNextOperationAfterProducedQuantity(child,
-                            includeTpz, false, operationRuns, productionLine, true, productComponentQuantities);
+            for (EntityTreeNode child : operationComponent.getChildren()) {
+                OperationNormative childNormative = compileOperationTree(child, compilation);
 
-                    int difference = childTimeTotal - childTimeForQuantity;
-                    childTime -= difference;
+                if (TechnologyOperationComponentEntityType.OPERATION.getStringValue().equals(
+                        child.getStringField(TechnologyOperationComponentFields.ENTITY_TYPE))
+                        && L_NEXT_OPERATION_AFTER_SPECIFIED_QUANTITY.equals(child
+                                .getStringField(TechnologyOperationComponentFieldsTNFO.NEXT_OPERATION_AFTER_PRODUCED_TYPE))) {
+                    childNormative.setCyclesForNextOperation(getCyclesForNextOperation(child, compilation));
                 }
 
-                if (childTime > offset) {
-                    offset = childTime;
-                }
+                normative.addChild(childNormative);
             }
 
-            if (TechnologiesConstants.MODEL_TECHNOLOGY_OPERATION_COMPONENT.equals(operationComponent.getDataDefinition()
-                    .getName())) {
-                Entity techOperCompTimeCalculation = operationComponent
-                        .getBelongsToField(TechnologyOperationComponentFieldsTNFO.TECH_OPER_COMP_TIME_CALCULATION);
+            return normative;
+        }
+
+        throw new IllegalStateException("entityType has to be either operation or referenceTechnology");
+    }
 
-                if (techOperCompTimeCalculation != null) {
-                    techOperCompTimeCalculation.setField("operationOffSet", offset);
-                    techOperCompTimeCalculation.setField("effectiveOperationRealizationTime", operationTime);
+    private OperationNormative compileOperation(final Entity operationComponent, final NormativesCompilation compilation) {
+        Long timeCalculationId = null;
 
-                    techOperCompTimeCalculation.getDataDefinition().save(techOperCompTimeCalculation);
-                }
+        if (TechnologiesConstants.MODEL_TECHNOLOGY_OPERATION_COMPONENT.equals(operationComponent.getDataDefinition().getName())) {
+            Entity techOperCompTimeCalculation = operationComponent
+                    .getBelongsToField(TechnologyOperationComponentFieldsTNFO.TECH_OPER_COMP_TIME_CALCULATION);
+
+            if (techOperCompTimeCalculation != null) {
+                timeCalculationId = techOperCompTimeCalculation.getId();
             }
+        }
+
+        BigDecimal cycles = compilation.operationRuns.get(operationComponent.getId());
+
+        if (cycles == null) {
+            TechnologyExplosion explosion = explodeTechnology(
+                    operationComponent.getBelongsToField(TechnologyOperationComponentFields.TECHNOLOGY),
+                    new BigDecimal(L_OPERATION_RUNS_FALLBACK_QUANTITY, numberService.getMathContext()),
+                    compilation.fallbackExplosions);
 
-            return offset + operationTime;
+            cycles = explosion.operationRuns.get(operationComponent.getId());
         }
 
-        throw new IllegalStateException("entityType has to be either operation or referenceTechnology");
+        return new OperationNormative(operationComponent, timeCalculationId,
+                getIntegerValue(operationComponent.getField(TechnologyOperationComponentFieldsTNFO.TJ)),
+                getIntegerValue(operationComponent.getField(TechnologyOperationComponentFieldsTNFO.TPZ)),
+                getIntegerValue(operationComponent.getField(TechnologyOperationComponentFieldsTNFO.TIME_NEXT_OPERATION)),
+                retrieveWorkstationTypesCount(operationComponent, compilation.productionLine,
+                        compilation.workstationsQuantityFromProductionLine),
+                operationComponent.getBooleanField(TechnologyOperationComponentFieldsTNFO.IS_TJ_DIVISIBLE), cycles);
+    }
+
+    private BigDecimal getCyclesForNextOperation(final Entity operationComponent, final NormativesCompilation compilation) {
+        BigDecimal nextOperationAfterProducedQuantity = BigDecimalUtils.convertNullToZero(operationComponent
+                .getDecimalField(TechnologyOperationComponentFieldsTNFO.NEXT_OPERATION_AFTER_PRODUCED_QUANTITY));
+        Entity outputProduct = getOutputProduct(operationComponent);
+
+        if (nextOperationAfterProducedQuantity.compareTo(compilation.productComponentQuantities.get(outputProduct)) != 1) {
+            MathContext mc = numberService.getMathContext();
+
+            TechnologyExplosion explosion = explodeTechnology(
+                    operationComponent.getBelongsToField(TechnologyOperationComponentFields.TECHNOLOGY), BigDecimal.ONE,
+                    compilation.explosionsForOne);
+
+            BigDecimal operationsRunsForOneMainProduct = explosion.operationRuns.get(operationComponent.getId());
+            BigDecimal quantityOutputProductProduced = explosion.productComponentQuantities.get(outputProduct);
+            BigDecimal cycles = operationsRunsForOneMainProduct.multiply(nextOperationAfterProducedQuantity, mc).divide(
+                    quantityOutputProductProduced, mc);
+
+            return numberService.setScale(cycles);
+        }
+
+        return compilation.operationRuns.get(operationComponent.getId());
     }
 
-    private Integer retrieveWorkstationTypesCount(final Entity operationComponent, final Entity productionLine) {
-        if (StringUtils.isEmpty(operationComponent.getBelongsToField(TechnologyOperationComponentFields.TECHNOLOGY)
-                .getStringField(TechnologyFields.TECHNOLOGY_TYPE))) {
-            if (parameterService.getParameter().getBooleanField("workstationsQuantityFromProductionLine")) {
-                return productionLinesService.getWorkstationTypesCount(operationComponent, productionLine);
-            } else {
-                return getIntegerValue(operationComponent
-                        .getIntegerField(TechnologyOperationComponentFields.QUANTITY_OF_WORKSTATIONS));
+    private TechnologyExplosion explodeTechnology(final Entity technology, final BigDecimal quantity,
+            final Map<Long, TechnologyExplosion> explosions) {
+        TechnologyExplosion explosion = explosions.get(technology.getId());
+
+        if (explosion == null) {
+            Map<Long, BigDecimal> operationRuns = Maps.newHashMap();
+
+            OperationProductComponentWithQuantityContainer productComponentQuantities = productQuantitiesService
+                    .getProductComponentQuantities(technology, quantity, operationRuns);
+
+            explosion = new TechnologyExplosion(operationRuns, productComponentQuantities);
+
+            explosions.put(technology.getId(), explosion);
+        }
+
+        return explosion;
+    }
 
+    private int evaluateOperationTime(final OperationNormative normative, final boolean includeTpz,
+            final boolean includeAdditionalTime, final boolean maxForWorkstation,
+            final Map<OperationNormative, Integer> operationTimes, final Map<Long, TimeCalculation> timeCalculations) {
+        Integer evaluatedTime = operationTimes.get(normative);
+
+        if (evaluatedTime != null) {
+            return evaluatedTime;
+        }
+
+        int operationTime = evaluateOperationDuration(normative, normative.getCycles(), maxForWorkstation, includeTpz,
+                includeAdditionalTime);
+        int offset = 0;
+
+        for (OperationNormative child : normative.getChildren()) {
+            int childTime = evaluateOperationTime(child, includeTpz, includeAdditionalTime, maxForWorkstation, operationTimes,
+                    timeCalculations);
+
+            if (child.isNextOperationAfterSpecifiedQuantity()) {
+                int childTimeTotal = evaluateOperationDuration(child, child.getCycles(), true, includeTpz,
+                        includeAdditionalTime);
+                int childTimeForQuantity = evaluateOperationDuration(child, child.getCyclesForNextOperation(), true,
+                        includeTpz, false);
+
+                int difference = childTimeTotal - childTimeForQuantity;
+                childTime -= difference;
             }
-        } else {
-            return getIntegerValue(operationComponent
-                    .getIntegerField(TechnologyOperationComponentFields.QUANTITY_OF_WORKSTATIONS));
+
+            if (childTime > offset) {
+                offset = childTime;
+            }
+        }
+
+        if (normative.getTimeCalculationId() != null) {
+            timeCalculations.put(normative.getTimeCalculationId(), new TimeCalculation(offset, operationTime));
+        }
+
+        operationTimes.put(normative, offset + operationTime);
+
+        return offset + operationTime;
+    }
+
+    private void saveTimeCalculations(final Map<Long, TimeCalculation> timeCalculations) {
+        if (timeCalculations.isEmpty()) {
+            return;
         }
 
+        DataDefinition techOperCompTimeCalculationDD = dataDefinitionService.get(TimeNormsConstants.PLUGIN_IDENTIFIER,
+                TimeNormsConstants.MODEL_TECH_OPER_COMP_TIME_CALCULATION);
+
+        List<Entity> techOperCompTimeCalculations = techOperCompTimeCalculationDD.find()
+                .add(SearchRestrictions.in("id", timeCalculations.keySet())).list().getEntities();
+
+        for (Entity techOperCompTimeCalculation : techOperCompTimeCalculations) {
+            TimeCalculation timeCalculation = timeCalculations.get(techOperCompTimeCalculation.getId());
+
+            Integer operationOffSet = techOperCompTimeCalculation
+                    .getIntegerField(TechOperCompTimeCalculationsFields.OPERATION_OFF_SET);
+            Integer effectiveOperationRealizationTime = techOperCompTimeCalculation
+                    .getIntegerField(TechOperCompTimeCalculationsFields.EFFECTIVE_OPERATION_REALIZATION_TIME);
+
+            if (Integer.valueOf(timeCalculation.operationOffSet).equals(operationOffSet)
+                    && Integer.valueOf(timeCalculation.effectiveOperationRealizationTime).equals(
+                            effectiveOperationRealizationTime)) {
+                continue;
+            }
+
+            techOperCompTimeCalculation.setField(TechOperCompTimeCalculationsFields.OPERATION_OFF_SET,
+                    timeCalculation.operationOffSet);
+            techOperCompTimeCalculation.setField(TechOperCompTimeCalculationsFields.EFFECTIVE_OPERATION_REALIZATION_TIME,
+                    timeCalculation.effectiveOperationRealizationTime);
+
+            techOperCompTimeCalculationDD.save(techOperCompTimeCalculation);
+        }
+    }
+
+    private boolean isWorkstationsQuantityFromProductionLine() {
+        return parameterService.getParameterSnapshot().getBooleanField(L_WORKSTATIONS_QUANTITY_FROM_PRODUCTION_LINE);
+    }
+
+    private int retrieveWorkstationTypesCount(final Entity operationComponent, final Entity productionLine,
+            final boolean workstationsQuantityFromProductionLine) {
+        if (workstationsQuantityFromProductionLine
+                && StringUtils.isEmpty(operationComponent.getBelongsToField(TechnologyOperationComponentFields.TECHNOLOGY)
+                        .getStringField(TechnologyFields.TECHNOLOGY_TYPE))) {
+            return productionLinesService.getWorkstationTypesCount(operationComponent, productionLine);
+        }
+
+        return getIntegerValue(operationComponent.getIntegerField(TechnologyOperationComponentFields.QUANTITY_OF_WORKSTATIONS));
     }
 
     @Override
@@ -267,7 +426,8 @@ public class OrderRealizationTimeServiceImpl implements OrderRealizationTimeServ
             OperationProductComponentWithQuantityContainer productComponentQuantities = productQuantitiesService
                     .getProductComponentQuantities(operationComponent
                             .getBelongsToField(TechnologyOperationComponentFields.TECHNOLOGY),
-                            new BigDecimal("56", numberService.getMathContext()), operationRunsFromProductionQuantities);
+                            new BigDecimal(L_OPERATION_RUNS_FALLBACK_QUANTITY, numberService.getMathContext()),
+                            operationRunsFromProductionQuantities);
             cycles = operationRunsFromProductionQuantities.get(operationComponent.getId());
         }
         return evaluateOperationDurationOutOfCycles(cycles, operationComponent, productionLine, maxForWorkstation, includeTpz,
@@ -326,29 +486,39 @@ public class OrderRealizationTimeServiceImpl implements OrderRealizationTimeServ
     public int evaluateOperationDurationOutOfCycles(final BigDecimal cycles, final Entity operationComponent,
             final Entity productionLine, final boolean maxForWorkstation, final boolean includeTpz,
             final boolean includeAdditionalTime) {
-        boolean isTjDivisable = operationComponent.getBooleanField("isTjDivisible");
+        OperationNormative normative = new OperationNormative(operationComponent, null,
+                getIntegerValue(operationComponent.getField(TechnologyOperationComponentFieldsTNFO.TJ)),
+                getIntegerValue(operationComponent.getField(TechnologyOperationComponentFieldsTNFO.TPZ)),
+                getIntegerValue(operationComponent.getField(TechnologyOperationComponentFieldsTNFO.TIME_NEXT_OPERATION)),
+                retrieveWorkstationTypesCount(operationComponent, productionLine, isWorkstationsQuantityFromProductionLine()),
+                operationComponent.getBooleanField(TechnologyOperationComponentFieldsTNFO.IS_TJ_DIVISIBLE), cycles);
+
+        return evaluateOperationDuration(normative, cycles, maxForWorkstation, includeTpz, includeAdditionalTime);
+    }
 
-        Integer workstationsCount = retrieveWorkstationTypesCount(operationComponent, productionLine);
+    private int evaluateOperationDuration(final OperationNormative normative, final BigDecimal cycles,
+            final boolean maxForWorkstation, final boolean includeTpz, final boolean includeAdditionalTime) {
+        int workstationsCount = normative.getWorkstationsCount();
         BigDecimal cyclesPerOperation = cycles;
 
         if (maxForWorkstation) {
             cyclesPerOperation = cycles.divide(BigDecimal.valueOf(workstationsCount), numberService.getMathContext());
 
-            if (!isTjDivisable) {
+            if (!normative.isTjDivisible()) {
                 cyclesPerOperation = cyclesPerOperation.setScale(0, RoundingMode.CEILING);
             }
         }
 
-        int tj = getIntegerValue(operationComponent.getField("tj"));
-        int operationTime = cyclesPerOperation.multiply(BigDecimal.valueOf(tj), numberService.getMathContext()).intValue();
+        int operationTime = cyclesPerOperation.multiply(BigDecimal.valueOf(normative.getTj()), numberService.getMathContext())
+                .intValue();
 
         if (includeTpz) {
-            int tpz = getIntegerValue(operationComponent.getField("tpz"));
+            int tpz = normative.getTpz();
             operationTime += (maxForWorkstation ? tpz : (tpz * workstationsCount));
         }
 
         if (includeAdditionalTime) {
-            int additionalTime = getIntegerValue(operationComponent.getField("timeNextOperation"));
+            int additionalTime = normative.getTimeNextOperation();
             operationTime += (maxForWorkstation ? additionalTime : (additionalTime * workstationsCount));
         }
 
@@ -375,4 +545,59 @@ public class OrderRealizationTimeServiceImpl implements OrderRealizationTimeServ
             Entity productionLine) {
         return estimateOperationTimeConsumption(operationComponent, plannedQuantity, true, true, productionLine);
     }
+
+    private static final class NormativesCompilation {
+
+        private final Entity productionLine;
+
+        private final boolean workstationsQuantityFromProductionLine;
+
+        private final Map<Long, BigDecimal> operationRuns;
+
+        private final OperationProductComponentWithQuantityContainer productComponentQuantities;
+
+        private final Map<Long, OperationNormative> referencedRoots = Maps.newHashMap();
+
+        private final Map<Long, TechnologyExplosion> fallbackExplosions = Maps.newHashMap();
+
+        private final Map<Long, TechnologyExplosion> explosionsForOne = Maps.newHashMap();
+
+        private NormativesCompilation(final Entity productionLine, final boolean workstationsQuantityFromProductionLine,
+                final Map<Long, BigDecimal> operationRuns,
+                final OperationProductComponentWithQuantityContainer productComponentQuantities) {
+            this.productionLine = productionLine;
+            this.workstationsQuantityFromProductionLine = workstationsQuantityFromProductionLine;
+            this.operationRuns = operationRuns;
+            this.productComponentQuantities = productComponentQuantities;
+        }
+
+    }
+
+    private static final class TechnologyExplosion {
+
+        private final Map<Long, BigDecimal> operationRuns;
+
+        private final OperationProductComponentWithQuantityContainer productComponentQuantities;
+
+        private TechnologyExplosion(final Map<Long, BigDecimal> operationRuns,
+                final OperationProductComponentWithQuantityContainer productComponentQuantities) {
+            this.operationRuns = operationRuns;
+            this.productComponentQuantities = productComponentQuantities;
+        }
+
+    }
+
+    private static final class TimeCalculation {
+
+        private final int operationOffSet;
+
+        private final int effectiveOperationRealizationTime;
+
+        private TimeCalculation(final int operationOffSet, final int effectiveOperationRealizationTime) {
+            this.operationOffSet = operationOffSet;
+            this.effectiveOperationRealizationTime = effectiveOperationRealizationTime;
+        }
+
+    }
+
 }
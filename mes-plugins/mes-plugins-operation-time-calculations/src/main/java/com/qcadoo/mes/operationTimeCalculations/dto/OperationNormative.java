@@ -0,0 +1,129 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.operationTimeCalculations.dto;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Time normatives of a single technology operation component, read once from the entity so that the time estimation can run
+ * without touching the model.
+ */
+public class OperationNormative {
+
+    private final Entity operationComponent;
+
+    private final Long timeCalculationId;
+
+    private final int tj;
+
+    private final int tpz;
+
+    private final int timeNextOperation;
+
+    private final int workstationsCount;
+
+    private final boolean tjDivisible;
+
+    private final BigDecimal cycles;
+
+    private boolean nextOperationAfterSpecifiedQuantity;
+
+    private BigDecimal cyclesForNextOperation;
+
+    private final List<OperationNormative> children = Lists.newArrayList();
+
+    public OperationNormative(final Entity operationComponent, final Long timeCalculationId, final int tj, final int tpz,
+            final int timeNextOperation, final int workstationsCount, final boolean tjDivisible, final BigDecimal cycles) {
+        this.operationComponent = operationComponent;
+        this.timeCalculationId = timeCalculationId;
+        this.tj = tj;
+        this.tpz = tpz;
+        this.timeNextOperation = timeNextOperation;
+        this.workstationsCount = workstationsCount;
+        this.tjDivisible = tjDivisible;
+        this.cycles = cycles;
+    }
+
+    public Entity getOperationComponent() {
+        return operationComponent;
+    }
+
+    public Long getTimeCalculationId() {
+        return timeCalculationId;
+    }
+
+    public int getTj() {
+        return tj;
+    }
+
+    public int getTpz() {
+        return tpz;
+    }
+
+    public int getTimeNextOperation() {
+        return timeNextOperation;
+    }
+
+    public int getWorkstationsCount() {
+        return workstationsCount;
+    }
+
+    public boolean isTjDivisible() {
+        return tjDivisible;
+    }
+
+    public BigDecimal getCycles() {
+        return cycles;
+    }
+
+    /**
+     * Cycles after which the next operation can start, set only for operations with specified next operation quantity.
+     */
+    public BigDecimal getCyclesForNextOperation() {
+        return cyclesForNextOperation;
+    }
+
+    public void setCyclesForNextOperation(final BigDecimal cyclesForNextOperation) {
+        this.nextOperationAfterSpecifiedQuantity = true;
+        this.cyclesForNextOperation = cyclesForNextOperation;
+    }
+
+    public boolean isNextOperationAfterSpecifiedQuantity() {
+        return nextOperationAfterSpecifiedQuantity;
+    }
+
+    public List<OperationNormative> getChildren() {
+        return Collections.unmodifiableList(children);
+    }
+
+    public void addChild(final OperationNormative child) {
+        children.add(child);
+    }
+
+}
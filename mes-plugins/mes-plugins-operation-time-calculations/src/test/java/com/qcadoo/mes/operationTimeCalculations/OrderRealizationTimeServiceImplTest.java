@@ -26,34 +26,45 @@ package com.qcadoo.mes.operationTimeCalculations;
 import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.math.BigDecimal;
 import java.math.MathContext;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Collections;
 import java.util.Map;
 
 import org.junit.Before;
-import org.junit.Ignore;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.technologies.ProductQuantitiesService;
 import com.qcadoo.mes.technologies.ProductionLinesService;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentWithQuantityContainer;
+import com.qcadoo.mes.timeNormsForOperations.constants.TimeNormsConstants;
 import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
-import com.qcadoo.model.api.EntityList;
 import com.qcadoo.model.api.EntityTree;
 import com.qcadoo.model.api.EntityTreeNode;
 import com.qcadoo.model.api.NumberService;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.model.api.search.SearchResult;
+import com.qcadoo.tenant.api.MultiTenantService;
 
-// TODO LUPO fix problem with test
-@Ignore
 public class OrderRealizationTimeServiceImplTest {
 
     private OrderRealizationTimeServiceImpl orderRealizationTimeServiceImpl;
@@ -62,10 +73,7 @@ public class OrderRealizationTimeServiceImplTest {
     private EntityTreeNode opComp1, opComp2;
 
     @Mock
-    private Entity productionLine;
-
-    @Mock
-    private Entity order;
+    private Entity technology, productionLine, parameter;
 
     @Mock
     private ProductQuantitiesService productQuantitiesService;
@@ -76,19 +84,14 @@ public class OrderRealizationTimeServiceImplTest {
     @Mock
     private NumberService numberService;
 
-    private MathContext mathContext;
+    @Mock
+    private DataDefinitionService dataDefinitionService;
 
-    private static EntityList mockEntityListIterator(List<Entity> list) {
-        EntityList entityList = mock(EntityList.class);
-        when(entityList.iterator()).thenReturn(list.iterator());
-        return entityList;
-    }
+    @Mock
+    private MultiTenantService multiTenantService;
 
-    private static EntityTree mockEntityTreeIterator(List<Entity> list) {
-        EntityTree entityTree = mock(EntityTree.class);
-        when(entityTree.iterator()).thenReturn(list.iterator());
-        return entityTree;
-    }
+    @Mock
+    private OperationProductComponentWithQuantityContainer productComponentQuantities;
 
     @Before
     public void init() {
@@ -96,60 +99,55 @@ public class OrderRealizationTimeServiceImplTest {
 
         orderRealizationTimeServiceImpl = new OrderRealizationTimeServiceImpl();
 
-        when(opComp1.getStringField("entityType")).thenReturn("operation");
-        when(opComp2.getStringField("entityType")).thenReturn("operation");
-
-        when(opComp1.getStringField("nextOperationAfterProducedType")).thenReturn("01all");
-        when(opComp2.getStringField("nextOperationAfterProducedType")).thenReturn("01all");
-
-        when(opComp1.getField("tj")).thenReturn(new Integer(1));
-        when(opComp2.getField("tj")).thenReturn(new Integer(1));
+        mockOperationComponent(opComp1, 1L);
+        mockOperationComponent(opComp2, 2L);
 
-        when(opComp1.getField("nextOperationAfterProducedQuantity")).thenReturn(new BigDecimal(1));
-        when(opComp2.getField("nextOperationAfterProducedQuantity")).thenReturn(new BigDecimal(1));
+        given(opComp1.getChildren()).willReturn(asList(opComp2));
+        given(opComp2.getChildren()).willReturn(Collections.<EntityTreeNode> emptyList());
 
-        when(opComp1.getField("tpz")).thenReturn(new Integer(1));
-        when(opComp2.getField("tpz")).thenReturn(new Integer(1));
+        given(productQuantitiesService.getProductComponentQuantities(eq(technology), any(BigDecimal.class),
+                anyMapOf(Long.class, BigDecimal.class))).willAnswer(invocation -> {
+                    @SuppressWarnings("unchecked")
+                    Map<Long, BigDecimal> operationRuns = (Map<Long, BigDecimal>) invocation.getArguments()[2];
+                    operationRuns.put(1L, new BigDecimal(2));
+                    operationRuns.put(2L, new BigDecimal(4));
+                    return productComponentQuantities;
+                });
 
-        when(opComp1.getField("timeNextOperation")).thenReturn(new Integer(1));
-        when(opComp2.getField("timeNextOperation")).thenReturn(new Integer(1));
+        Map<String, Object> parameterFields = Maps.newHashMap();
+        parameterFields.put("workstationsQuantityFromProductionLine", true);
+        given(parameter.getFields()).willReturn(parameterFields);
 
-        when(opComp2.getBelongsToField("parent")).thenReturn(opComp1);
+        ParameterService parameterService = spy(new ParameterService());
+        ReflectionTestUtils.setField(parameterService, "multiTenantService", multiTenantService);
+        doReturn(parameter).when(parameterService).getParameter();
 
-        EntityList opComp1Children = mockEntityListIterator(asList((Entity) opComp2));
-        when(opComp1.getHasManyField("children")).thenReturn(opComp1Children);
-        EntityList opComp2Children = mockEntityListIterator(new LinkedList<Entity>());
-        when(opComp2.getHasManyField("children")).thenReturn(opComp2Children);
-
-        Map<Entity, BigDecimal> operationRuns = new HashMap<Entity, BigDecimal>();
-        operationRuns.put(opComp1, new BigDecimal(2));
-        operationRuns.put(opComp2, new BigDecimal(4));
-
-        DataDefinition dd = mock(DataDefinition.class);
-
-        when(dd.getName()).thenReturn("technologyOperationComponent");
-
-        when(opComp1.getDataDefinition()).thenReturn(dd);
-        when(opComp2.getDataDefinition()).thenReturn(dd);
-
-        given(opComp1.getId()).willReturn(1L);
-        given(opComp2.getId()).willReturn(2L);
-
-        given(dd.get(1L)).willReturn(opComp1);
-        given(dd.get(2L)).willReturn(opComp2);
-
-        ReflectionTestUtils.setField(orderRealizationTimeServiceImpl, "operationRunsField", operationRuns);
         ReflectionTestUtils.setField(orderRealizationTimeServiceImpl, "productQuantitiesService", productQuantitiesService);
         ReflectionTestUtils.setField(orderRealizationTimeServiceImpl, "numberService", numberService);
         ReflectionTestUtils.setField(orderRealizationTimeServiceImpl, "productionLinesService", productionLinesService);
+        ReflectionTestUtils.setField(orderRealizationTimeServiceImpl, "parameterService", parameterService);
+        ReflectionTestUtils.setField(orderRealizationTimeServiceImpl, "dataDefinitionService", dataDefinitionService);
 
-        mathContext = MathContext.DECIMAL64;
-        when(numberService.getMathContext()).thenReturn(mathContext);
+        when(numberService.getMathContext()).thenReturn(MathContext.DECIMAL64);
 
         when(productionLinesService.getWorkstationTypesCount(opComp1, productionLine)).thenReturn(1);
         when(productionLinesService.getWorkstationTypesCount(opComp2, productionLine)).thenReturn(1);
     }
 
+    private void mockOperationComponent(final EntityTreeNode operationComponent, final Long id) {
+        DataDefinition dd = mock(DataDefinition.class);
+        given(dd.getName()).willReturn("technologyOperationComponent");
+
+        given(operationComponent.getId()).willReturn(id);
+        given(operationComponent.getDataDefinition()).willReturn(dd);
+        given(operationComponent.getBelongsToField("technology")).willReturn(technology);
+        given(operationComponent.getStringField("entityType")).willReturn("operation");
+        given(operationComponent.getStringField("nextOperationAfterProducedType")).willReturn("01all");
+        given(operationComponent.getField("tj")).willReturn(1);
+        given(operationComponent.getField("tpz")).willReturn(1);
+        given(operationComponent.getField("timeNextOperation")).willReturn(1);
+    }
+
     @Test
     public void shouldReturnCorrectOperationTimeWithShifts() {
         // given
@@ -201,4 +199,72 @@ public class OrderRealizationTimeServiceImplTest {
         assertEquals(7, time);
     }
 
+    @Test
+    public void shouldSaveOnlyChangedTimeCalculations() {
+        // given
+        Entity timeCalculation1 = mock(Entity.class);
+        Entity timeCalculation2 = mock(Entity.class);
+
+        given(timeCalculation1.getId()).willReturn(11L);
+        given(timeCalculation1.getIntegerField("operationOffSet")).willReturn(6);
+        given(timeCalculation1.getIntegerField("effectiveOperationRealizationTime")).willReturn(4);
+        given(timeCalculation2.getId()).willReturn(12L);
+
+        given(opComp1.getBelongsToField("techOperCompTimeCalculation")).willReturn(timeCalculation1);
+        given(opComp2.getBelongsToField("techOperCompTimeCalculation")).willReturn(timeCalculation2);
+
+        DataDefinition timeCalculationDD = mock(DataDefinition.class);
+        SearchCriteriaBuilder searchCriteriaBuilder = mock(SearchCriteriaBuilder.class);
+        SearchResult searchResult = mock(SearchResult.class);
+
+        given(dataDefinitionService.get(TimeNormsConstants.PLUGIN_IDENTIFIER,
+                TimeNormsConstants.MODEL_TECH_OPER_COMP_TIME_CALCULATION)).willReturn(timeCalculationDD);
+        given(timeCalculationDD.find()).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.add(any(SearchCriterion.class))).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.list()).willReturn(searchResult);
+        given(searchResult.getEntities()).willReturn(asList(timeCalculation1, timeCalculation2));
+
+        // when
+        int time = orderRealizationTimeServiceImpl.estimateOperationTimeConsumption(opComp1, BigDecimal.ONE, true, true,
+                productionLine);
+
+        // then
+        assertEquals(10, time);
+        verify(timeCalculation2).setField("operationOffSet", 0);
+        verify(timeCalculation2).setField("effectiveOperationRealizationTime", 6);
+        verify(timeCalculationDD).save(timeCalculation2);
+        verify(timeCalculationDD, never()).save(timeCalculation1);
+    }
+
+    @Test
+    public void shouldCompileAndEvaluateReferencedTechnologyOnce() {
+        // given
+        EntityTreeNode reference1 = mock(EntityTreeNode.class);
+        EntityTreeNode reference2 = mock(EntityTreeNode.class);
+        Entity referencedTechnology = mock(Entity.class);
+        EntityTree referencedTree = mock(EntityTree.class);
+
+        given(referencedTechnology.getId()).willReturn(7L);
+        given(referencedTechnology.getTreeField("operationComponents")).willReturn(referencedTree);
+        given(referencedTree.getRoot()).willReturn(opComp2);
+
+        for (EntityTreeNode reference : asList(reference1, reference2)) {
+            given(reference.getStringField("entityType")).willReturn("referenceTechnology");
+            given(reference.getBelongsToField("referenceTechnology")).willReturn(referencedTechnology);
+        }
+
+        given(opComp1.getChildren()).willReturn(asList(reference1, reference2));
+
+        // when
+        int time = orderRealizationTimeServiceImpl.estimateOperationTimeConsumption(opComp1, BigDecimal.ONE, true, true,
+                productionLine);
+
+        // then
+        assertEquals(10, time);
+        verify(referencedTechnology, times(1)).getTreeField("operationComponents");
+        verify(productionLinesService, times(1)).getWorkstationTypesCount(opComp2, productionLine);
+        verify(productQuantitiesService, times(1)).getProductComponentQuantities(eq(technology), any(BigDecimal.class),
+                anyMapOf(Long.class, BigDecimal.class));
+    }
+
 }
@@ -30,6 +30,7 @@ import org.springframework.stereotype.Service;
 
 import com.qcadoo.mes.operationalTasks.constants.OperationalTaskFields;
 import com.qcadoo.mes.operationalTasksForOrders.OperationalTasksForOrdersService;
+import com.qcadoo.mes.orders.OrderPreviousStateService;
 import com.qcadoo.mes.orders.constants.OrderFields;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
@@ -40,15 +41,16 @@ public class OrderHooksOTFO {
     @Autowired
     private OperationalTasksForOrdersService operationalTasksForOrdersService;
 
+    @Autowired
+    private OrderPreviousStateService orderPreviousStateService;
+
     public void changedProductionLineInOperationalTasksWhenChanged(final DataDefinition orderDD, final Entity order) {
-        Long orderId = order.getId();
+        Entity orderFromDB = orderPreviousStateService.getChanges(orderDD, order).getPreviousOrder();
 
-        if (orderId == null) {
+        if (orderFromDB == null) {
             return;
         }
 
-        Entity orderFromDB = orderDD.get(orderId);
-
         Entity productionLine = order.getBelongsToField(OrderFields.PRODUCTION_LINE);
         Entity orderProductionLine = orderFromDB.getBelongsToField(OrderFields.PRODUCTION_LINE);
 
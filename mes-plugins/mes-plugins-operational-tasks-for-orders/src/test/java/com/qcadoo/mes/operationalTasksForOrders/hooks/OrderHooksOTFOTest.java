@@ -38,6 +38,7 @@ import org.springframework.test.util.ReflectionTestUtils;
 
 import com.google.common.collect.Lists;
 import com.qcadoo.mes.operationalTasksForOrders.OperationalTasksForOrdersService;
+import com.qcadoo.mes.orders.OrderPreviousStateService;
 import com.qcadoo.mes.orders.constants.OrderFields;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
@@ -63,6 +64,7 @@ public class OrderHooksOTFOTest {
         orderHooksOTFO = new OrderHooksOTFO();
 
         ReflectionTestUtils.setField(orderHooksOTFO, "operationalTasksForOrdersService", operationalTasksForOrdersService);
+        ReflectionTestUtils.setField(orderHooksOTFO, "orderPreviousStateService", new OrderPreviousStateService());
 
         given(operationalTask.getDataDefinition()).willReturn(operationalTaskDD);
     }
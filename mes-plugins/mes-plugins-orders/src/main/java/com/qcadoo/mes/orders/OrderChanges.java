@@ -0,0 +1,129 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.orders;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import com.google.common.collect.Sets;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Differences between order being saved and its state stored in database before the save.
+ */
+public class OrderChanges {
+
+    private final Entity order;
+
+    private final Entity previousOrder;
+
+    OrderChanges(final Entity order, final Entity previousOrder) {
+        this.order = order;
+        this.previousOrder = previousOrder;
+    }
+
+    /**
+     * @return true if order is not stored in database yet
+     */
+    public boolean isNew() {
+        return previousOrder == null;
+    }
+
+    /**
+     * @return order state stored in database before the save, or null for new order
+     */
+    public Entity getPreviousOrder() {
+        return previousOrder;
+    }
+
+    public Object getOldValue(final String fieldName) {
+        if (previousOrder == null) {
+            return null;
+        }
+
+        return previousOrder.getField(fieldName);
+    }
+
+    public Object getNewValue(final String fieldName) {
+        return order.getField(fieldName);
+    }
+
+    /**
+     * Checks if field value differs from the stored one. Decimals are compared by value, belongs to fields by id, collections
+     * are never reported as changed. Nothing is changed for new order.
+     */
+    public boolean isChanged(final String fieldName) {
+        if (previousOrder == null) {
+            return false;
+        }
+
+        return !valuesEqual(getOldValue(fieldName), getNewValue(fieldName));
+    }
+
+    public Set<String> getChangedFields() {
+        Set<String> changedFields = Sets.newHashSet();
+
+        if (previousOrder == null) {
+            return changedFields;
+        }
+
+        for (Map.Entry<String, Object> field : previousOrder.getFields().entrySet()) {
+            if (!valuesEqual(field.getValue(), getNewValue(field.getKey()))) {
+                changedFields.add(field.getKey());
+            }
+        }
+
+        return changedFields;
+    }
+
+    private boolean valuesEqual(final Object oldValue, final Object newValue) {
+        if ((oldValue instanceof Collection) || (newValue instanceof Collection)) {
+            return true;
+        }
+
+        Object oldComparable = toComparable(oldValue);
+        Object newComparable = toComparable(newValue);
+
+        if ((oldComparable instanceof BigDecimal) && (newComparable instanceof BigDecimal)) {
+            return ((BigDecimal) oldComparable).compareTo((BigDecimal) newComparable) == 0;
+        }
+
+        return Objects.equals(oldComparable, newComparable);
+    }
+
+    private Object toComparable(final Object value) {
+        if (value instanceof Entity) {
+            return ((Entity) value).getId();
+        } else if (value instanceof Date) {
+            return ((Date) value).getTime();
+        }
+
+        return value;
+    }
+
+}
@@ -0,0 +1,96 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.orders;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Gives order hooks the state of saved order from before the save, read from database once per save.
+ */
+@Service
+public class OrderPreviousStateService {
+
+    private final Object previousOrdersKey = new Object();
+
+    /**
+     * Returns changes of order being saved. Within a transaction the stored order is read once for each saved order entity and
+     * shared by all hooks, outside of it is read on every call.
+     * 
+     * @param orderDD
+     *            order data definition
+     * @param order
+     *            order being saved
+     * 
+     * @return order changes
+     */
+    public OrderChanges getChanges(final DataDefinition orderDD, final Entity order) {
+        if (order.getId() == null) {
+            return new OrderChanges(order, null);
+        }
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return new OrderChanges(order, orderDD.get(order.getId()));
+        }
+
+        Map<Entity, Entity> previousOrders = getPreviousOrders();
+
+        if (!previousOrders.containsKey(order)) {
+            previousOrders.put(order, orderDD.get(order.getId()));
+        }
+
+        return new OrderChanges(order, previousOrders.get(order));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Entity, Entity> getPreviousOrders() {
+        Map<Entity, Entity> previousOrders = (Map<Entity, Entity>) TransactionSynchronizationManager
+                .getResource(previousOrdersKey);
+
+        if (previousOrders == null) {
+            // entities are compared by identity, so each save of an order gets its own previous state
+            previousOrders = new IdentityHashMap<Entity, Entity>();
+
+            TransactionSynchronizationManager.bindResource(previousOrdersKey, previousOrders);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(final int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(previousOrdersKey);
+                }
+
+            });
+        }
+
+        return previousOrders;
+    }
+
+}
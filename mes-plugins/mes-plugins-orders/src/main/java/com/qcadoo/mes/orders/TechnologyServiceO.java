@@ -24,6 +24,7 @@
 package com.qcadoo.mes.orders;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.qcadoo.mes.basic.ShiftsService;
 import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.mes.orders.constants.OrderFields;
@@ -31,11 +32,13 @@ import com.qcadoo.mes.orders.constants.OrderType;
 import com.qcadoo.mes.states.StateChangeContext;
 import com.qcadoo.mes.states.constants.StateChangeStatus;
 import com.qcadoo.mes.states.service.StateChangeContextBuilder;
+import com.qcadoo.mes.states.service.StateChangeEntityBuilder;
 import com.qcadoo.mes.technologies.BarcodeOperationComponentService;
 import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
 import com.qcadoo.mes.technologies.constants.TechnologyFields;
 import com.qcadoo.mes.technologies.constants.TechnologyType;
 import com.qcadoo.mes.technologies.states.aop.TechnologyStateChangeAspect;
+import com.qcadoo.mes.technologies.states.constants.TechnologyState;
 import com.qcadoo.mes.technologies.states.constants.TechnologyStateChangeFields;
 import com.qcadoo.mes.technologies.states.constants.TechnologyStateStringValues;
 import com.qcadoo.model.api.*;
@@ -44,15 +47,19 @@ import com.qcadoo.model.api.search.SearchResult;
 import com.qcadoo.security.api.SecurityService;
 import com.qcadoo.view.api.utils.NumberGeneratorService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Date;
+import java.util.Map;
 import java.util.Objects;
 
 @Service
 public class TechnologyServiceO {
 
+    private static final String L_COPY_TECHNOLOGY_QUERY = "SELECT technologies_copytechnology(:technologyId, :number)";
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
@@ -65,6 +72,9 @@ public class TechnologyServiceO {
     @Autowired
     private StateChangeContextBuilder stateChangeContextBuilder;
 
+    @Autowired
+    private StateChangeEntityBuilder stateChangeEntityBuilder;
+
     @Autowired
     private ShiftsService shiftsService;
 
@@ -74,9 +84,15 @@ public class TechnologyServiceO {
     @Autowired
     private OrderService orderService;
 
+    @Autowired
+    private OrderPreviousStateService orderPreviousStateService;
+
     @Autowired
     private BarcodeOperationComponentService barcodeOperationComponentService;
 
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
     @Transactional
     public void createOrUpdateTechnology(final DataDefinition orderDD, final Entity order) {
         OrderType orderType = OrderType.of(order);
@@ -110,23 +126,37 @@ public class TechnologyServiceO {
         }
     }
 
+    /**
+     * Without PKT orders with pattern technology share the accepted pattern technology until its tree has to be edited.
+     * Materializes private copy of the technology for such order, which is then edited instead of the pattern. With PKT every
+     * order already has its private copy, because per order data (progress for days, time calculations) hangs off its
+     * operation components.
+     */
     @Transactional
-    public Entity createTechnologyIfPktDisabled(final DataDefinition orderDD, Entity order) {
+    public Entity createTechnologyIfNotCopied(final DataDefinition orderDD, Entity order) {
         OrderType orderType = OrderType.of(order);
         Entity technologyPrototype = order.getBelongsToField(OrderFields.TECHNOLOGY_PROTOTYPE);
 
-        if (!orderService.isPktEnabled() && !isTechnologyCopied(order)) {
+        if (isTechnologyShared(order)) {
             if (orderType == OrderType.WITH_PATTERN_TECHNOLOGY) {
                 order = createTechnologyForWithPatternTechnology(order, technologyPrototype, false);
                 order = order.getDataDefinition().save(order);
             } else {
-                throw new IllegalStateException("Without pkt orderType must be set to WITH_PATTERN_TECHNOLOGY");
+                throw new IllegalStateException("Only orders with pattern technology can share technology");
             }
         }
         barcodeOperationComponentService.removeBarcode(order);
         return order;
     }
 
+    public boolean isTechnologyShared(final Entity order) {
+        Entity technology = order.getBelongsToField(OrderFields.TECHNOLOGY);
+        Entity technologyPrototype = order.getBelongsToField(OrderFields.TECHNOLOGY_PROTOTYPE);
+
+        return (technology != null) && (technologyPrototype != null)
+                && Objects.equals(technology.getId(), technologyPrototype.getId());
+    }
+
     private void removeTechnologyFromOrder(final Entity order) {
         Entity orderTechnology = order.getBelongsToField(OrderFields.TECHNOLOGY);
         deleteTechnology(orderTechnology);
@@ -134,48 +164,49 @@ public class TechnologyServiceO {
         order.setField(OrderFields.TECHNOLOGY, null);
     }
 
-    private Entity createTechnologyForWithPatternTechnology(final Entity order, final Entity technologyPrototype, boolean changeTechnologyStateToChecked) {
+    private Entity createTechnologyForWithPatternTechnology(final Entity order, final Entity technologyPrototype,
+            final boolean changeTechnologyStateToChecked) {
         order.setField(OrderFields.TECHNOLOGY, copyTechnology(order, technologyPrototype, changeTechnologyStateToChecked));
         return order;
     }
 
-    private void createOrUpdateTechnologyForWithPatternTechnology(final Entity order, final Entity technologyPrototype, boolean changeTechnologyStateToChecked) {
-        Entity existingOrder = getExistingOrder(order);
-
+    private void createOrUpdateTechnologyForWithPatternTechnology(final Entity order, final Entity technologyPrototype,
+            final boolean changeTechnologyStateToChecked) {
         if (isTechnologyCopied(order)) {
-            if (isOrderTypeChangedToWithPatternTechnology(order)) {
-                Entity technology = order.getBelongsToField(OrderFields.TECHNOLOGY);
-
-                deleteTechnology(technology);
-
-                order.setField(OrderFields.TECHNOLOGY, copyTechnology(order, technologyPrototype, changeTechnologyStateToChecked));
-                barcodeOperationComponentService.removeBarcode(order);
-
-            } else if (technologyWasChanged(order)) {
+            if (isOrderTypeChangedToWithPatternTechnology(order) || technologyWasChanged(order)) {
                 Entity technology = order.getBelongsToField(OrderFields.TECHNOLOGY);
 
                 deleteTechnology(technology);
 
-                if (orderService.isPktEnabled()) {
-                    order.setField(OrderFields.TECHNOLOGY, copyTechnology(order, technologyPrototype, changeTechnologyStateToChecked));
-                } else {
-                    order.setField(OrderFields.TECHNOLOGY, technologyPrototype);
-                }
+                order.setField(OrderFields.TECHNOLOGY,
+                        getTechnologyForPatternTechnology(order, technologyPrototype, changeTechnologyStateToChecked));
                 barcodeOperationComponentService.removeBarcode(order);
             }
         } else {
-                if (orderService.isPktEnabled()) {
-                    order.setField(OrderFields.TECHNOLOGY, copyTechnology(order, technologyPrototype,
-                            changeTechnologyStateToChecked));
-                } else {
-                    order.setField(OrderFields.TECHNOLOGY, technologyPrototype);
-                }
+            order.setField(OrderFields.TECHNOLOGY,
+                    getTechnologyForPatternTechnology(order, technologyPrototype, changeTechnologyStateToChecked));
+        }
+    }
+
+    private Entity getTechnologyForPatternTechnology(final Entity order, final Entity technologyPrototype,
+            final boolean changeTechnologyStateToChecked) {
+        if (orderService.isPktEnabled()) {
+            return copyTechnology(order, technologyPrototype, changeTechnologyStateToChecked);
+        } else {
+            return technologyPrototype;
         }
     }
 
     private void createOrUpdateForOwnTechnology(final Entity order, final Entity technologyPrototype) {
         Entity existingOrder = getExistingOrder(order);
 
+        if (isTechnologyShared(order)) {
+            order.setField(OrderFields.TECHNOLOGY, createTechnology(order));
+            order.setField(OrderFields.TECHNOLOGY_PROTOTYPE, null);
+
+            return;
+        }
+
         if (isTechnologyCopied(order)) {
             if (technologyPrototype != null) {
                 Entity technology = order.getBelongsToField(OrderFields.TECHNOLOGY);
@@ -209,11 +240,7 @@ public class TechnologyServiceO {
     }
 
     private Entity getExistingOrder(final Entity order) {
-        if (order.getId() == null) {
-            return null;
-        }
-
-        return order.getDataDefinition().get(order.getId());
+        return orderPreviousStateService.getChanges(order.getDataDefinition(), order).getPreviousOrder();
     }
 
     private boolean isTechnologyCopied(final Entity order) {
@@ -312,16 +339,20 @@ public class TechnologyServiceO {
         return newTechnology;
     }
 
-    private Entity copyTechnology(final Entity order, final Entity technologyPrototype, boolean changeTechnologyStateToChecked) {
-        Entity copyOfTechnology = getTechnologyDD().create();
-
+    private Entity copyTechnology(final Entity order, final Entity technologyPrototype,
+            final boolean changeTechnologyStateToChecked) {
         String number = generateNumberForTechnologyInOrder(order, technologyPrototype);
 
-        copyOfTechnology = copyOfTechnology.getDataDefinition().copy(technologyPrototype.getId()).get(0);
+        Map<String, Object> params = Maps.newHashMap();
+        params.put("technologyId", technologyPrototype.getId());
+        params.put("number", number);
+
+        Long copyOfTechnologyId = jdbcTemplate.queryForObject(L_COPY_TECHNOLOGY_QUERY, params, Long.class);
+
+        Entity copyOfTechnology = getTechnologyDD().get(copyOfTechnologyId);
 
-        copyOfTechnology.setField(TechnologyFields.NUMBER, number);
-        copyOfTechnology.setField(TechnologyFields.TECHNOLOGY_PROTOTYPE, technologyPrototype);
-        copyOfTechnology.setField(TechnologyFields.TECHNOLOGY_TYPE, TechnologyType.WITH_PATTERN_TECHNOLOGY.getStringValue());
+        stateChangeEntityBuilder.buildInitial(technologyStateChangeAspect.getChangeEntityDescriber(), copyOfTechnology,
+                TechnologyState.DRAFT);
 
         copyOfTechnology = copyOfTechnology.getDataDefinition().save(copyOfTechnology);
         if (changeTechnologyStateToChecked) {
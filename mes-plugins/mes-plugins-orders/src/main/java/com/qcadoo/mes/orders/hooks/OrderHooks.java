@@ -29,6 +29,7 @@ import com.qcadoo.commons.dateTime.DateRange;
 import com.qcadoo.localization.api.utils.DateUtils;
 import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.basic.ProductService;
+import com.qcadoo.mes.orders.OrderPreviousStateService;
 import com.qcadoo.mes.orders.OrderService;
 import com.qcadoo.mes.orders.OrderStateChangeReasonService;
 import com.qcadoo.mes.orders.TechnologyServiceO;
@@ -89,6 +90,9 @@ public class OrderHooks {
     @Autowired
     private OrderService orderService;
 
+    @Autowired
+    private OrderPreviousStateService orderPreviousStateService;
+
     @Autowired
     private OrderDatesService orderDatesService;
 
@@ -227,7 +231,7 @@ public class OrderHooks {
 
     private void backupTechnology(final Entity order) {
         Entity technology = order.getBelongsToField(OrderFields.TECHNOLOGY);
-        if (technology != null && orderService.isPktEnabled()) {
+        if (technology != null && orderService.isPktEnabled() && !technologyServiceO.isTechnologyShared(order)) {
             String bNumber = BACKUP_TECHNOLOGY_PREFIX + new Date().getTime() + "_"
                     + technology.getStringField(TechnologyFields.NUMBER);
             bNumber = bNumber.substring(0, Math.min(bNumber.length(), 255));
@@ -375,7 +379,7 @@ public class OrderHooks {
             return;
         }
 
-        Entity orderFromDB = orderService.getOrder(orderId);
+        Entity orderFromDB = orderPreviousStateService.getChanges(order.getDataDefinition(), order).getPreviousOrder();
 
         String state = order.getStringField(OrderFields.STATE);
 
@@ -407,7 +411,7 @@ public class OrderHooks {
             return;
         }
 
-        Entity orderFromDB = orderService.getOrder(orderId);
+        Entity orderFromDB = orderPreviousStateService.getChanges(order.getDataDefinition(), order).getPreviousOrder();
 
         String state = order.getStringField(OrderFields.STATE);
 
@@ -472,7 +476,7 @@ public class OrderHooks {
             return;
         }
 
-        Entity orderFromDB = orderService.getOrder(orderId);
+        Entity orderFromDB = orderPreviousStateService.getChanges(order.getDataDefinition(), order).getPreviousOrder();
 
         BigDecimal plannedQuantity = order.getDecimalField(OrderFields.PLANNED_QUANTITY);
         BigDecimal commissionedPlannedQuantity = order.getDecimalField(OrderFields.COMMISSIONED_PLANNED_QUANTITY);
@@ -533,7 +537,7 @@ public class OrderHooks {
         if (OrderState.ACCEPTED.getStringValue().equals(state) || OrderState.IN_PROGRESS.getStringValue().equals(state)
                 || OrderState.INTERRUPTED.getStringValue().equals(state)) {
 
-            Entity orderFromDB = orderService.getOrder(orderId);
+            Entity orderFromDB = orderPreviousStateService.getChanges(order.getDataDefinition(), order).getPreviousOrder();
 
             BigDecimal commissionedCorrectedQuantity = order.getDecimalField(OrderFields.COMMISSIONED_CORRECTED_QUANTITY);
             BigDecimal commissionedCorrectedQuantityFromDB = orderFromDB
@@ -596,7 +600,7 @@ public class OrderHooks {
     }
 
     void setCopyOfTechnology(final Entity order) {
-        if (orderService.isPktEnabled()) {
+        if (orderService.isPktEnabled() && !technologyServiceO.isTechnologyShared(order)) {
             order.setField(OrderFields.TECHNOLOGY, copyTechnology(order).orNull());
         } else {
             Entity prototypeTechnology = order.getBelongsToField(OrderFields.TECHNOLOGY_PROTOTYPE);
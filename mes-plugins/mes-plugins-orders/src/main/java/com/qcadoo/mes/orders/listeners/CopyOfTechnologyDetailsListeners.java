@@ -75,23 +75,23 @@ public class CopyOfTechnologyDetailsListeners {
             Entity technologyPrototype = technologyPrototypeLookup.getEntity();
 
             if (technologyAndOrderPrototypesAreDifferent(orderTechnologyPrototype, technologyPrototype)) {
-                Entity copyOfTechnology = copyTechnology(technologyPrototype, order);
+                boolean isTechnologyCopied = !technologyServiceO.isTechnologyShared(order);
 
-                if (copyOfTechnology.isValid()) {
-                    order.setField(OrderFields.TECHNOLOGY, null);
+                order.setField(OrderFields.TECHNOLOGY, technologyPrototype);
+                order.setField(OrderFields.TECHNOLOGY_PROTOTYPE, technologyPrototype);
 
-                    order = order.getDataDefinition().save(order);
-
-                    deleteTechnology(technology);
+                order = order.getDataDefinition().save(order);
 
-                    order.setField(OrderFields.TECHNOLOGY, copyOfTechnology);
-                    order.setField(OrderFields.TECHNOLOGY_PROTOTYPE, technologyPrototype);
+                if (order.isValid()) {
+                    if (isTechnologyCopied) {
+                        deleteTechnology(technology);
+                    }
 
-                    order.getDataDefinition().save(order);
+                    Entity orderTechnology = order.getBelongsToField(OrderFields.TECHNOLOGY);
 
-                    state.setFieldValue(copyOfTechnology.getId());
+                    state.setFieldValue(orderTechnology.getId());
 
-                    technologyForm.setEntity(copyOfTechnology);
+                    technologyForm.setEntity(orderTechnology);
                 }
             }
         }
@@ -112,7 +112,7 @@ public class CopyOfTechnologyDetailsListeners {
             Entity technology1 = technologyServiceO.getTechnologyDD().get(technologyId);
             Entity order = getOrderWithTechnology(view);
 
-            order = technologyServiceO.createTechnologyIfPktDisabled(order.getDataDefinition(), order);
+            order = technologyServiceO.createTechnologyIfNotCopied(order.getDataDefinition(), order);
 
             Entity technology2 = order.getBelongsToField(OrderFields.TECHNOLOGY);
 
@@ -179,18 +179,23 @@ public class CopyOfTechnologyDetailsListeners {
         Entity order = getOrderWithTechnology(view);
 
         Entity orderTechnologyPrototype = order.getBelongsToField(OrderFields.TECHNOLOGY_PROTOTYPE);
-        Entity copyOfTechnology = copyTechnology(orderTechnologyPrototype, order);
-        if (copyOfTechnology.isValid()) {
+        boolean isTechnologyCopied = !technologyServiceO.isTechnologyShared(order);
+
+        order.setField(OrderFields.TECHNOLOGY, orderTechnologyPrototype);
+        order = order.getDataDefinition().save(order);
+        if (order.isValid()) {
+            Entity orderTechnology = order.getBelongsToField(OrderFields.TECHNOLOGY);
 
-            order.setField(OrderFields.TECHNOLOGY, copyOfTechnology);
-            order.getDataDefinition().save(order);
-            state.setFieldValue(copyOfTechnology.getId());
-            technologyForm.setEntity(copyOfTechnology);
+            state.setFieldValue(orderTechnology.getId());
+            technologyForm.setEntity(orderTechnology);
         } else {
             technologyForm.addMessage("orders.copyOfTechnology.reloadFromPattern.failure.validationError",
                     ComponentState.MessageType.FAILURE);
             return;
         }
+        if (!isTechnologyCopied) {
+            return;
+        }
         EntityOpResult deleteResult = deleteTechnology(technology);
         if (!deleteResult.isSuccessfull()) {
             technologyForm.addMessage("orders.copyOfTechnology.reloadFromPattern.failure.deletePrevented",
@@ -231,19 +236,6 @@ public class CopyOfTechnologyDetailsListeners {
         return newTechnology;
     }
 
-    private Entity copyTechnology(final Entity technologyPrototype, final Entity order) {
-        String number = technologyServiceO.generateNumberForTechnologyInOrder(order, technologyPrototype);
-
-        Entity copyOfTechnology = technologyServiceO.getTechnologyDD().copy(technologyPrototype.getId()).get(0);
-
-        copyOfTechnology.setField(TechnologyFields.NUMBER, number);
-        copyOfTechnology.setField(TechnologyFields.TECHNOLOGY_PROTOTYPE, technologyPrototype);
-        copyOfTechnology.setField(TechnologyFields.TECHNOLOGY_TYPE, getTechnologyType(order));
-        copyOfTechnology = copyOfTechnology.getDataDefinition().save(copyOfTechnology);
-
-        return copyOfTechnology;
-    }
-
     private EntityOpResult deleteTechnology(final Entity technology) {
         return technology.getDataDefinition().delete(technology.getId());
     }
@@ -0,0 +1,159 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.orders;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+
+public class OrderPreviousStateServiceTest {
+
+    private static final Long L_ORDER_ID = 1L;
+
+    private OrderPreviousStateService orderPreviousStateService;
+
+    @Mock
+    private DataDefinition orderDD;
+
+    @Mock
+    private Entity order, orderFromDB, productionLine, productionLineFromDB;
+
+    @Before
+    public final void init() {
+        MockitoAnnotations.initMocks(this);
+
+        orderPreviousStateService = new OrderPreviousStateService();
+
+        given(order.getId()).willReturn(L_ORDER_ID);
+        given(orderDD.get(L_ORDER_ID)).willReturn(orderFromDB);
+    }
+
+    @After
+    public final void clearTransaction() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            }
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void shouldReadPreviousOrderOncePerSaveWithinTransaction() {
+        // given
+        TransactionSynchronizationManager.initSynchronization();
+
+        // when
+        for (int i = 0; i < 10; i++) {
+            orderPreviousStateService.getChanges(orderDD, order);
+        }
+        Entity previousOrder = orderPreviousStateService.getChanges(orderDD, order).getPreviousOrder();
+
+        // then
+        assertEquals(orderFromDB, previousOrder);
+        verify(orderDD, times(1)).get(L_ORDER_ID);
+    }
+
+    @Test
+    public void shouldReadPreviousOrderAgainForAnotherSavedEntity() {
+        // given
+        TransactionSynchronizationManager.initSynchronization();
+
+        Entity savedAgainOrder = mock(Entity.class);
+        given(savedAgainOrder.getId()).willReturn(L_ORDER_ID);
+
+        // when
+        orderPreviousStateService.getChanges(orderDD, order);
+        orderPreviousStateService.getChanges(orderDD, savedAgainOrder);
+
+        // then
+        verify(orderDD, times(2)).get(L_ORDER_ID);
+    }
+
+    @Test
+    public void shouldNotReadAnythingForNewOrder() {
+        // given
+        given(order.getId()).willReturn(null);
+
+        // when
+        OrderChanges orderChanges = orderPreviousStateService.getChanges(orderDD, order);
+
+        // then
+        assertTrue(orderChanges.isNew());
+        assertFalse(orderChanges.isChanged(OrderFields.PLANNED_QUANTITY));
+        verify(orderDD, times(0)).get(L_ORDER_ID);
+    }
+
+    @Test
+    public void shouldCompareDecimalsByValueAndBelongsToFieldsById() {
+        // given
+        given(productionLine.getId()).willReturn(5L);
+        given(productionLineFromDB.getId()).willReturn(5L);
+
+        Map<String, Object> fieldsFromDB = Maps.newHashMap();
+        fieldsFromDB.put(OrderFields.PLANNED_QUANTITY, new BigDecimal("10.00000"));
+        fieldsFromDB.put(OrderFields.PRODUCTION_LINE, productionLineFromDB);
+        fieldsFromDB.put(OrderFields.NAME, "order");
+
+        for (Map.Entry<String, Object> field : fieldsFromDB.entrySet()) {
+            given(orderFromDB.getField(field.getKey())).willReturn(field.getValue());
+        }
+        given(orderFromDB.getFields()).willReturn(fieldsFromDB);
+
+        given(order.getField(OrderFields.PLANNED_QUANTITY)).willReturn(new BigDecimal("10"));
+        given(order.getField(OrderFields.PRODUCTION_LINE)).willReturn(productionLine);
+        given(order.getField(OrderFields.NAME)).willReturn("changed order");
+
+        // when
+        OrderChanges orderChanges = orderPreviousStateService.getChanges(orderDD, order);
+
+        // then
+        assertFalse(orderChanges.isChanged(OrderFields.PLANNED_QUANTITY));
+        assertFalse(orderChanges.isChanged(OrderFields.PRODUCTION_LINE));
+        assertTrue(orderChanges.isChanged(OrderFields.NAME));
+        assertEquals(Sets.newHashSet(OrderFields.NAME), orderChanges.getChangedFields());
+    }
+
+}
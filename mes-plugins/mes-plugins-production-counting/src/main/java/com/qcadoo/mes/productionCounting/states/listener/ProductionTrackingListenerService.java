@@ -30,16 +30,23 @@ import static com.qcadoo.mes.orders.states.constants.OrderState.COMPLETED;
 import java.math.BigDecimal;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.stereotype.Service;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.basicProductionCounting.BasicProductionCountingService;
+import com.qcadoo.mes.basicProductionCounting.constants.BasicProductionCountingConstants;
 import com.qcadoo.mes.basicProductionCounting.constants.BasicProductionCountingFields;
-import com.qcadoo.mes.basicProductionCounting.constants.OrderFieldsBPC;
 import com.qcadoo.mes.orders.constants.OrderFields;
 import com.qcadoo.mes.orders.states.aop.OrderStateChangeAspect;
 import com.qcadoo.mes.orders.states.constants.OrderState;
@@ -54,9 +61,14 @@ import com.qcadoo.mes.productionCounting.utils.OrderClosingHelper;
 import com.qcadoo.mes.states.StateChangeContext;
 import com.qcadoo.mes.states.constants.StateChangeStatus;
 import com.qcadoo.mes.states.service.StateChangeContextBuilder;
+import com.qcadoo.model.api.BigDecimalUtils;
+import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
+import com.qcadoo.model.api.search.JoinType;
 import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchOrders;
+import com.qcadoo.model.api.search.SearchProjections;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.model.api.validators.ErrorMessage;
 
@@ -65,6 +77,20 @@ public final class ProductionTrackingListenerService {
 
     private static final String L_PRODUCT = "product";
 
+    private static final String L_ID = "id";
+
+    private static final String L_DOT = ".";
+
+    private static final String L_PRODUCT_ID = "productId";
+
+    // like the basic production counting validators, leaves the whole row unchanged when any of its quantities would be negative
+    static final String UPDATE_BASIC_PRODUCTION_COUNTING_QUERY = "UPDATE basicproductioncounting_basicproductioncounting SET "
+            + "usedquantity = CASE WHEN :usedQuantity = 0 THEN usedquantity ELSE COALESCE(usedquantity, 0) + :usedQuantity END, "
+            + "producedquantity = CASE WHEN :producedQuantity = 0 THEN producedquantity "
+            + "ELSE COALESCE(producedquantity, 0) + :producedQuantity END "
+            + "WHERE id = :id AND COALESCE(usedquantity, 0) + :usedQuantity >= 0 "
+            + "AND COALESCE(producedquantity, 0) + :producedQuantity >= 0";
+
     @Autowired
     private NumberService numberService;
 
@@ -89,6 +115,12 @@ public final class ProductionTrackingListenerService {
     @Autowired
     private ParameterService parameterService;
 
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
     public void onChangeFromDraftToAny(final Entity productionTracking) {
         productionTracking.setField(ProductionTrackingFields.LAST_STATE_CHANGE_FAILS, false);
         productionTracking.setField(ProductionTrackingFields.LAST_STATE_CHANGE_FAIL_CAUSE, null);
@@ -253,48 +285,89 @@ public final class ProductionTrackingListenerService {
     private void updateBasicProductionCounting(final Entity productionTracking, final Operation operation) {
         final Entity order = productionTracking.getBelongsToField(ProductionTrackingFields.ORDER);
 
-        final List<Entity> basicProductionCountings = order.getHasManyField(OrderFieldsBPC.BASIC_PRODUCTION_COUNTINGS);
+        final List<SqlParameterSource> updates = getBasicProductionCountingUpdates(getBasicProductionCountingIdsByProduct(order),
+                productionTracking.getHasManyField(ProductionTrackingFields.TRACKING_OPERATION_PRODUCT_IN_COMPONENTS),
+                productionTracking.getHasManyField(ProductionTrackingFields.TRACKING_OPERATION_PRODUCT_OUT_COMPONENTS),
+                operation);
 
-        final List<Entity> trackingOperationProductInComponents = productionTracking
-                .getHasManyField(ProductionTrackingFields.TRACKING_OPERATION_PRODUCT_IN_COMPONENTS);
-        final List<Entity> trackingOperationProductOutComponents = productionTracking
-                .getHasManyField(ProductionTrackingFields.TRACKING_OPERATION_PRODUCT_OUT_COMPONENTS);
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPDATE_BASIC_PRODUCTION_COUNTING_QUERY,
+                    updates.toArray(new SqlParameterSource[updates.size()]));
+        }
+    }
 
-        for (Entity trackingOperationProductInComponent : trackingOperationProductInComponents) {
-            Entity basicProductionCounting;
+    private Map<Long, Long> getBasicProductionCountingIdsByProduct(final Entity order) {
+        List<Entity> rows = dataDefinitionService
+                .get(BasicProductionCountingConstants.PLUGIN_IDENTIFIER,
+                        BasicProductionCountingConstants.MODEL_BASIC_PRODUCTION_COUNTING)
+                .find()
+                .createAlias(BasicProductionCountingFields.PRODUCT, BasicProductionCountingFields.PRODUCT, JoinType.INNER)
+                .add(SearchRestrictions.belongsTo(BasicProductionCountingFields.ORDER, order))
+                .setProjection(SearchProjections.list().add(SearchProjections.alias(SearchProjections.id(), L_ID))
+                        .add(SearchProjections.alias(
+                                SearchProjections.field(BasicProductionCountingFields.PRODUCT + L_DOT + L_ID), L_PRODUCT_ID)))
+                .addOrder(SearchOrders.asc(L_ID)).list().getEntities();
 
-            try {
-                basicProductionCounting = getBasicProductionCounting(trackingOperationProductInComponent,
-                        basicProductionCountings);
-            } catch (IllegalStateException e) {
-                continue;
+        Map<Long, Long> basicProductionCountingIdsByProduct = Maps.newHashMap();
+
+        for (Entity row : rows) {
+            Long productId = (Long) row.getField(L_PRODUCT_ID);
+
+            if (!basicProductionCountingIdsByProduct.containsKey(productId)) {
+                basicProductionCountingIdsByProduct.put(productId, (Long) row.getField(L_ID));
             }
+        }
 
-            final BigDecimal usedQuantity = basicProductionCounting.getDecimalField(BasicProductionCountingFields.USED_QUANTITY);
-            final BigDecimal productQuantity = trackingOperationProductInComponent
-                    .getDecimalField(TrackingOperationProductInComponentFields.USED_QUANTITY);
-            final BigDecimal result = operation.perform(usedQuantity, productQuantity);
+        return basicProductionCountingIdsByProduct;
+    }
 
-            basicProductionCounting.setField(BasicProductionCountingFields.USED_QUANTITY, result);
-            basicProductionCounting = basicProductionCounting.getDataDefinition().save(basicProductionCounting);
+    /**
+     * Sums quantities of tracking components per basic production counting, returns one update per counting ordered by id, so
+     * that concurrent trackings of the same order lock rows in the same order.
+     */
+    List<SqlParameterSource> getBasicProductionCountingUpdates(final Map<Long, Long> basicProductionCountingIdsByProduct,
+            final List<Entity> trackingOperationProductInComponents, final List<Entity> trackingOperationProductOutComponents,
+            final Operation operation) {
+        Map<Long, BigDecimal> usedQuantities = Maps.newTreeMap();
+        Map<Long, BigDecimal> producedQuantities = Maps.newTreeMap();
+
+        addQuantities(usedQuantities, basicProductionCountingIdsByProduct, trackingOperationProductInComponents,
+                TrackingOperationProductInComponentFields.USED_QUANTITY, operation);
+        addQuantities(producedQuantities, basicProductionCountingIdsByProduct, trackingOperationProductOutComponents,
+                TrackingOperationProductOutComponentFields.USED_QUANTITY, operation);
+
+        Set<Long> basicProductionCountingIds = Sets.newTreeSet(usedQuantities.keySet());
+        basicProductionCountingIds.addAll(producedQuantities.keySet());
+
+        List<SqlParameterSource> updates = Lists.newArrayList();
+
+        for (Long basicProductionCountingId : basicProductionCountingIds) {
+            MapSqlParameterSource params = new MapSqlParameterSource();
+
+            params.addValue(L_ID, basicProductionCountingId);
+            params.addValue(BasicProductionCountingFields.USED_QUANTITY,
+                    BigDecimalUtils.convertNullToZero(usedQuantities.get(basicProductionCountingId)));
+            params.addValue(BasicProductionCountingFields.PRODUCED_QUANTITY,
+                    BigDecimalUtils.convertNullToZero(producedQuantities.get(basicProductionCountingId)));
+
+            updates.add(params);
         }
 
-        for (Entity trackingOperationProductOutComponent : trackingOperationProductOutComponents) {
-            Entity productionCounting;
+        return updates;
+    }
+
+    private void addQuantities(final Map<Long, BigDecimal> quantities, final Map<Long, Long> basicProductionCountingIdsByProduct,
+            final List<Entity> trackingOperationProductComponents, final String quantityField, final Operation operation) {
+        for (Entity trackingOperationProductComponent : trackingOperationProductComponents) {
+            Entity product = trackingOperationProductComponent.getBelongsToField(L_PRODUCT);
+            Long basicProductionCountingId = basicProductionCountingIdsByProduct.get(product.getId());
 
-            try {
-                productionCounting = getBasicProductionCounting(trackingOperationProductOutComponent, basicProductionCountings);
-            } catch (IllegalStateException e) {
+            if (basicProductionCountingId == null) {
                 continue;
             }
 
-            final BigDecimal usedQuantity = productionCounting.getDecimalField(BasicProductionCountingFields.PRODUCED_QUANTITY);
-            final BigDecimal productQuantity = trackingOperationProductOutComponent
-                    .getDecimalField(TrackingOperationProductOutComponentFields.USED_QUANTITY);
-            final BigDecimal result = operation.perform(usedQuantity, productQuantity);
-
-            productionCounting.setField(BasicProductionCountingFields.PRODUCED_QUANTITY, result);
-            productionCounting = productionCounting.getDataDefinition().save(productionCounting);
+            quantities.put(basicProductionCountingId, operation.perform(quantities.get(basicProductionCountingId),
+                    trackingOperationProductComponent.getDecimalField(quantityField)));
         }
     }
 
@@ -317,30 +390,17 @@ public final class ProductionTrackingListenerService {
 
     }
 
-    private Entity getBasicProductionCounting(final Entity trackingOperationProductComponent,
-            final List<Entity> basicProductionCountings) {
-        Entity product = trackingOperationProductComponent.getBelongsToField(L_PRODUCT);
-
-        for (Entity basicProductionCounting : basicProductionCountings) {
-            if (basicProductionCounting.getBelongsToField(BasicProductionCountingFields.PRODUCT).getId().equals(product.getId())) {
-                return basicProductionCounting;
-            }
-        }
-
-        throw new IllegalStateException("No basic production counting found for product");
-    }
-
     public void onCorrected(final Entity productionTracking) {
         updateBasicProductionCounting(productionTracking, new Substraction());
         setOrderDoneAndWastesQuantity(productionTracking, new Substraction());
     }
 
-    private interface Operation {
+    interface Operation {
 
         BigDecimal perform(BigDecimal argument1, BigDecimal argument2);
     }
 
-    private class Addition implements Operation {
+    class Addition implements Operation {
 
         @Override
         public BigDecimal perform(final BigDecimal orginalValue, final BigDecimal addition) {
@@ -362,7 +422,7 @@ public final class ProductionTrackingListenerService {
 
     }
 
-    private class Substraction implements Operation {
+    class Substraction implements Operation {
 
         @Override
         public BigDecimal perform(final BigDecimal orginalValue, final BigDecimal substrahend) {
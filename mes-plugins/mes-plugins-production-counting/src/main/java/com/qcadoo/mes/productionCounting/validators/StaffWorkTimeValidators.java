@@ -29,6 +29,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.basic.ParameterSnapshot;
 import com.qcadoo.mes.productionCounting.constants.ParameterFieldsPC;
 import com.qcadoo.mes.productionCounting.constants.ProductionTrackingFields;
 import com.qcadoo.mes.productionCounting.constants.StaffWorkTimeFields;
@@ -48,7 +49,7 @@ public class StaffWorkTimeValidators {
             return false;
         }
 
-        Entity parameter = parameterService.getParameter();
+        ParameterSnapshot parameter = parameterService.getParameterSnapshot();
 
         if (!parameter.getBooleanField(ParameterFieldsPC.ALLOW_MULTIPLE_REGISTERING_TIME_FOR_WORKER)) {
             Entity productionTracking = staffWorkTime.getBelongsToField(StaffWorkTimeFields.PRODUCTION_RECORD);
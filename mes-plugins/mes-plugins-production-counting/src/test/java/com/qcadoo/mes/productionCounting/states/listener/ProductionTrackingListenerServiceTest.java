@@ -0,0 +1,136 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionCounting.states.listener;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basicProductionCounting.constants.BasicProductionCountingFields;
+import com.qcadoo.mes.productionCounting.constants.TrackingOperationProductInComponentFields;
+import com.qcadoo.mes.productionCounting.constants.TrackingOperationProductOutComponentFields;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.NumberService;
+
+public class ProductionTrackingListenerServiceTest {
+
+    private ProductionTrackingListenerService productionTrackingListenerService;
+
+    @Mock
+    private NumberService numberService;
+
+    @Mock
+    private Entity firstProduct, secondProduct, otherProduct;
+
+    private Map<Long, Long> basicProductionCountingIdsByProduct;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        productionTrackingListenerService = new ProductionTrackingListenerService();
+
+        ReflectionTestUtils.setField(productionTrackingListenerService, "numberService", numberService);
+
+        given(numberService.getMathContext()).willReturn(MathContext.DECIMAL64);
+        given(firstProduct.getId()).willReturn(1L);
+        given(secondProduct.getId()).willReturn(2L);
+        given(otherProduct.getId()).willReturn(3L);
+
+        basicProductionCountingIdsByProduct = ImmutableMap.of(1L, 20L, 2L, 10L);
+    }
+
+    @Test
+    public final void shouldSumQuantitiesPerBasicProductionCountingOrderedById() {
+        // given
+        List<Entity> inComponents = Lists.newArrayList(
+                mockComponent(firstProduct, TrackingOperationProductInComponentFields.USED_QUANTITY, "2"),
+                mockComponent(firstProduct, TrackingOperationProductInComponentFields.USED_QUANTITY, "3"),
+                mockComponent(otherProduct, TrackingOperationProductInComponentFields.USED_QUANTITY, "7"));
+        List<Entity> outComponents = Lists.newArrayList(
+                mockComponent(secondProduct, TrackingOperationProductOutComponentFields.USED_QUANTITY, "4"),
+                mockComponent(firstProduct, TrackingOperationProductOutComponentFields.USED_QUANTITY, null));
+
+        // when
+        List<SqlParameterSource> updates = productionTrackingListenerService.getBasicProductionCountingUpdates(
+                basicProductionCountingIdsByProduct, inComponents, outComponents,
+                productionTrackingListenerService.new Addition());
+
+        // then
+        assertEquals(2, updates.size());
+        assertUpdate(updates.get(0), 10L, "0", "4");
+        assertUpdate(updates.get(1), 20L, "5", "0");
+    }
+
+    @Test
+    public final void shouldNegateQuantitiesOnSubstraction() {
+        // given
+        List<Entity> inComponents = Lists.newArrayList(
+                mockComponent(secondProduct, TrackingOperationProductInComponentFields.USED_QUANTITY, "1.5"));
+        List<Entity> outComponents = Lists.newArrayList(
+                mockComponent(secondProduct, TrackingOperationProductOutComponentFields.USED_QUANTITY, "6"));
+
+        // when
+        List<SqlParameterSource> updates = productionTrackingListenerService.getBasicProductionCountingUpdates(
+                basicProductionCountingIdsByProduct, inComponents, outComponents,
+                productionTrackingListenerService.new Substraction());
+
+        // then
+        assertEquals(1, updates.size());
+        assertUpdate(updates.get(0), 10L, "-1.5", "-6");
+    }
+
+    private Entity mockComponent(final Entity product, final String quantityField, final String quantity) {
+        Entity component = mock(Entity.class);
+
+        given(component.getBelongsToField("product")).willReturn(product);
+        given(component.getDecimalField(quantityField)).willReturn(quantity == null ? null : new BigDecimal(quantity));
+
+        return component;
+    }
+
+    private void assertUpdate(final SqlParameterSource update, final Long id, final String usedQuantity,
+            final String producedQuantity) {
+        assertEquals(id, update.getValue("id"));
+        assertEquals(0, new BigDecimal(usedQuantity).compareTo(
+                (BigDecimal) update.getValue(BasicProductionCountingFields.USED_QUANTITY)));
+        assertEquals(0, new BigDecimal(producedQuantity).compareTo(
+                (BigDecimal) update.getValue(BasicProductionCountingFields.PRODUCED_QUANTITY)));
+    }
+
+}
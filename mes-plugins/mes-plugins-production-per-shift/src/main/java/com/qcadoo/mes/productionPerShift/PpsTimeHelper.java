@@ -80,7 +80,12 @@ public class PpsTimeHelper {
     }
 
     public List<DateTimeRange> manageExceptions(List<DateTimeRange> shiftWorkDateTime, Entity shiftEntity, Date dateOfDay) {
-        List<Entity> exceptions = Lists.newArrayList(shiftEntity.getHasManyField(ShiftFields.TIMETABLE_EXCEPTIONS));
+        return manageExceptions(shiftWorkDateTime, shiftEntity.getHasManyField(ShiftFields.TIMETABLE_EXCEPTIONS), dateOfDay);
+    }
+
+    public List<DateTimeRange> manageExceptions(List<DateTimeRange> shiftWorkDateTime, List<Entity> shiftExceptions,
+            Date dateOfDay) {
+        List<Entity> exceptions = Lists.newArrayList(shiftExceptions);
         if (!exceptions.isEmpty()) {
             trimWorkExceptions(exceptions, dateOfDay);
 
@@ -100,6 +105,14 @@ public class PpsTimeHelper {
         return shiftWorkDateTime;
     }
 
+    /**
+     * Creates a calendar of shift work ranges for a single generation run. Timetable exceptions of each shift are read
+     * once, work ranges of each shift and day are resolved at most once.
+     */
+    public ShiftWorkCalendar createShiftWorkCalendar(final List<Shift> shifts) {
+        return new ShiftWorkCalendar(this, shifts);
+    }
+
     private void trimWorkExceptions(final List<Entity> exceptions, Date dateOfDay) {
         Date dayStart = new Date(dateOfDay.getYear(), dateOfDay.getMonth(), dateOfDay.getDate());
         Date dayEnd = new Date(dayStart.getTime() + TimeUnit.DAYS.toMillis(1));
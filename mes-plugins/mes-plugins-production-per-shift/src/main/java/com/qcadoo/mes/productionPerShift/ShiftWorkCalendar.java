@@ -0,0 +1,84 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionPerShift;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.commons.dateTime.TimeRange;
+import com.qcadoo.mes.basic.constants.ShiftFields;
+import com.qcadoo.mes.basic.shift.Shift;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Work ranges of the given shifts, day by day, with timetable exceptions already applied. Instances are confined to a single
+ * generation run and are not thread safe.
+ */
+public class ShiftWorkCalendar {
+
+    private final PpsTimeHelper ppsTimeHelper;
+
+    private final Map<Long, List<Entity>> exceptionsByShiftId;
+
+    private final Map<Long, Map<LocalDate, List<DateTimeRange>>> workRangesByShiftId = Maps.newHashMap();
+
+    ShiftWorkCalendar(final PpsTimeHelper ppsTimeHelper, final List<Shift> shifts) {
+        this.ppsTimeHelper = ppsTimeHelper;
+        ImmutableMap.Builder<Long, List<Entity>> exceptions = ImmutableMap.builder();
+        for (Shift shift : shifts) {
+            exceptions.put(shift.getId(),
+                    ImmutableList.copyOf(shift.getEntity().getHasManyField(ShiftFields.TIMETABLE_EXCEPTIONS)));
+        }
+        this.exceptionsByShiftId = exceptions.build();
+    }
+
+    public List<DateTimeRange> getWorkRanges(final Shift shift, final DateTime dayStart) {
+        Map<LocalDate, List<DateTimeRange>> workRangesByDay = workRangesByShiftId.computeIfAbsent(shift.getId(),
+                shiftId -> Maps.newHashMap());
+        return workRangesByDay.computeIfAbsent(dayStart.toLocalDate(), day -> resolveWorkRanges(shift, dayStart));
+    }
+
+    private List<DateTimeRange> resolveWorkRanges(final Shift shift, final DateTime dayStart) {
+        List<DateTimeRange> workRanges = Lists.newArrayList();
+        if (shift.worksAt(dayStart.dayOfWeek().get())) {
+            for (TimeRange range : shift.findWorkTimeAt(dayStart.toLocalDate())) {
+                workRanges.add(new DateTimeRange(dayStart, range));
+            }
+        }
+        List<Entity> exceptions = exceptionsByShiftId.get(shift.getId());
+        if (exceptions == null) {
+            exceptions = shift.getEntity().getHasManyField(ShiftFields.TIMETABLE_EXCEPTIONS);
+        }
+        return Collections.unmodifiableList(ppsTimeHelper.manageExceptions(workRanges, exceptions, dayStart.toDate()));
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.qcadoo.mes.productionPerShift.domain;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.joda.time.DateTime;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.shift.Shift;
+import com.qcadoo.mes.productionPerShift.DateTimeRange;
+import com.qcadoo.mes.productionPerShift.ShiftWorkCalendar;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Everything a single production per shift generation run reads but never changes. It is created for each run, so
+ * algorithm services keep no state between calls.
+ */
+public final class PpsAlgorithmContext {
+
+    private final Entity productionPerShift;
+
+    private final Entity order;
+
+    private final Date orderStartDate;
+
+    private final List<Shift> shifts;
+
+    private final ShiftWorkCalendar shiftWorkCalendar;
+
+    private final Map<DailyProgressKey, Entity> dailyProgressesWithTrackingRecords;
+
+    private final boolean shouldBeCorrected;
+
+    public PpsAlgorithmContext(final Entity productionPerShift, final Entity order, final Date orderStartDate,
+            final List<Shift> shifts, final ShiftWorkCalendar shiftWorkCalendar,
+            final Map<DailyProgressKey, Entity> dailyProgressesWithTrackingRecords, final boolean shouldBeCorrected) {
+        this.productionPerShift = productionPerShift;
+        this.order = order;
+        this.orderStartDate = new Date(orderStartDate.getTime());
+        this.shifts = ImmutableList.copyOf(shifts);
+        this.shiftWorkCalendar = shiftWorkCalendar;
+        this.dailyProgressesWithTrackingRecords = Collections
+                .unmodifiableMap(Maps.newHashMap(dailyProgressesWithTrackingRecords));
+        this.shouldBeCorrected = shouldBeCorrected;
+    }
+
+    public Entity getProductionPerShift() {
+        return productionPerShift;
+    }
+
+    public Entity getOrder() {
+        return order;
+    }
+
+    public Date getOrderStartDate() {
+        return new Date(orderStartDate.getTime());
+    }
+
+    public List<Shift> getShifts() {
+        return shifts;
+    }
+
+    public List<DateTimeRange> getWorkRanges(final Shift shift, final DateTime dayStart) {
+        return shiftWorkCalendar.getWorkRanges(shift, dayStart);
+    }
+
+    public Entity getDailyProgressWithTrackingRecords(final Shift shift, final DateTime dayStart) {
+        return dailyProgressesWithTrackingRecords.get(new DailyProgressKey(shift.getId(), dayStart));
+    }
+
+    public Map<DailyProgressKey, Entity> getDailyProgressesWithTrackingRecords() {
+        return dailyProgressesWithTrackingRecords;
+    }
+
+    public boolean isShouldBeCorrected() {
+        return shouldBeCorrected;
+    }
+
+}
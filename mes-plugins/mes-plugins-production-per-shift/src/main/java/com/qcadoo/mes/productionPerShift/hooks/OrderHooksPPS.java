@@ -26,6 +26,8 @@ package com.qcadoo.mes.productionPerShift.hooks;
 import com.google.common.collect.Sets;
 import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.basicProductionCounting.BasicProductionCountingService;
+import com.qcadoo.mes.orders.OrderChanges;
+import com.qcadoo.mes.orders.OrderPreviousStateService;
 import com.qcadoo.mes.orders.constants.OrderFields;
 import com.qcadoo.mes.orders.states.constants.OrderState;
 import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftConstants;
@@ -77,6 +79,9 @@ public class OrderHooksPPS {
     @Autowired
     private AutomaticPpsParametersService automaticPpsParametersService;
 
+    @Autowired
+    private OrderPreviousStateService orderPreviousStateService;
+
     public void onUpdate(final DataDefinition orderDD, final Entity order) {
         setUpPpsDaysAndDatesFor(order);
         regenerateProductionPerShift(orderDD, order);
@@ -103,9 +108,10 @@ public class OrderHooksPPS {
         if (order.getId() == null) {
             return;
         }
-        Entity orderFromDB = orderDD.get(order.getId());
+        OrderChanges orderChanges = orderPreviousStateService.getChanges(orderDD, order);
+        Entity orderFromDB = orderChanges.getPreviousOrder();
 
-        if (isOrderFieldsChanged(order, orderFromDB)) {
+        if (orderChanges.isChanged(OrderFields.PLANNED_QUANTITY) || orderChanges.isChanged(OrderFields.START_DATE)) {
             Entity productionPerShift = dataDefinitionService
                     .get(ProductionPerShiftConstants.PLUGIN_IDENTIFIER, ProductionPerShiftConstants.MODEL_PRODUCTION_PER_SHIFT)
                     .find().add(SearchRestrictions.belongsTo(ProductionPerShiftFields.ORDER, order)).setMaxResults(1)
@@ -190,38 +196,4 @@ public class OrderHooksPPS {
 
     }
 
-    private boolean isOrderFieldsChanged(Entity order, Entity orderFromDB) {
-        BigDecimal plannedQuantity1 = order.getDecimalField(OrderFields.PLANNED_QUANTITY);
-        BigDecimal plannedQuantity2 = orderFromDB.getDecimalField(OrderFields.PLANNED_QUANTITY);
-
-        if (plannedQuantity1 == null && plannedQuantity2 != null) {
-            return true;
-        }
-
-        if (plannedQuantity2 == null && plannedQuantity1 != null) {
-            return true;
-        }
-
-        if (plannedQuantity1 != null && plannedQuantity2 != null && plannedQuantity1.compareTo(plannedQuantity2) != 0) {
-            return true;
-        }
-
-        Date startDate1 = order.getDateField(OrderFields.START_DATE);
-        Date startDate2 = orderFromDB.getDateField(OrderFields.START_DATE);
-
-        if (startDate1 == null && startDate2 != null) {
-            return true;
-        }
-
-        if (startDate2 == null && startDate1 != null) {
-            return true;
-        }
-
-        if (startDate1 != null && startDate2 != null && startDate1.compareTo(startDate2) != 0) {
-            return true;
-        }
-
-        return false;
-    }
-
 }
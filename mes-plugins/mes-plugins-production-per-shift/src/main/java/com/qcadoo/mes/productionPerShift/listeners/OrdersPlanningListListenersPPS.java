@@ -0,0 +1,86 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionPerShift.listeners;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.productionPerShift.domain.ProgressForDaysContainer;
+import com.qcadoo.mes.productionPerShift.services.AutomaticPpsParametersService;
+import com.qcadoo.mes.productionPerShift.services.ParallelPpsGenerationService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.validators.ErrorMessage;
+import com.qcadoo.view.api.ComponentState;
+import com.qcadoo.view.api.ViewDefinitionState;
+import com.qcadoo.view.api.components.GridComponent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+
+@Service
+public class OrdersPlanningListListenersPPS {
+
+    @Autowired
+    private AutomaticPpsParametersService automaticPpsParametersService;
+
+    @Autowired
+    private ParallelPpsGenerationService parallelPpsGenerationService;
+
+    public void generateProgressForDays(final ViewDefinitionState view, final ComponentState state, final String[] args) {
+        if (!automaticPpsParametersService.isAutomaticPlanForShiftOn()) {
+            view.addMessage(new ErrorMessage("productionPerShift.automaticAlgorithm.error.ppsOff", false));
+            return;
+        }
+        GridComponent ordersGrid = (GridComponent) state;
+        List<Entity> orders = ordersGrid.getSelectedEntities();
+        List<Long> orderIds = Lists.newArrayList();
+        for (Entity order : orders) {
+            orderIds.add(order.getId());
+        }
+
+        Map<Long, ProgressForDaysContainer> progressForDaysContainers = parallelPpsGenerationService
+                .generateProgressForOrders(orderIds);
+
+        int generatedPlans = 0;
+        for (Entity order : orders) {
+            ProgressForDaysContainer progressForDaysContainer = progressForDaysContainers.get(order.getId());
+            if (progressForDaysContainer.isCalculationError() || !progressForDaysContainer.getErrors().isEmpty()) {
+                view.addMessage("productionPerShift.ordersPlanningList.generateProgressForDays.failure",
+                        ComponentState.MessageType.FAILURE, false, order.getStringField(OrderFields.NUMBER));
+                for (ErrorMessage errorMessage : progressForDaysContainer.getErrors()) {
+                    view.addMessage(errorMessage.getMessage(), ComponentState.MessageType.FAILURE, false,
+                            errorMessage.getVars());
+                }
+            } else {
+                generatedPlans++;
+            }
+        }
+        if (generatedPlans > 0) {
+            view.addMessage("productionPerShift.ordersPlanningList.generateProgressForDays.success",
+                    ComponentState.MessageType.SUCCESS, String.valueOf(generatedPlans));
+        }
+    }
+
+}
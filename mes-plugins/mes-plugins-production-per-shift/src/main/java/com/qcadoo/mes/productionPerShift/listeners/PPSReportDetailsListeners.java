@@ -32,14 +32,13 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
 import com.lowagie.text.DocumentException;
-import com.lowagie.text.PageSize;
+import com.qcadoo.mes.basic.print.xls.XlsxReportPrintService;
 import com.qcadoo.mes.productionPerShift.constants.PPSReportFields;
 import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftConstants;
 import com.qcadoo.mes.productionPerShift.report.print.PPSReportXlsService;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.file.FileService;
-import com.qcadoo.report.api.ReportService;
 import com.qcadoo.view.api.ComponentState;
 import com.qcadoo.view.api.ComponentState.MessageType;
 import com.qcadoo.view.api.ViewDefinitionState;
@@ -57,10 +56,10 @@ public class PPSReportDetailsListeners {
     private FileService fileService;
 
     @Autowired
-    private ReportService reportService;
+    private XlsxReportPrintService xlsxReportPrintService;
 
     public void printReport(final ViewDefinitionState viewDefinitionState, final ComponentState state, final String[] args) {
-        reportService.printGeneratedReport(viewDefinitionState, state, new String[] { args[0],
+        xlsxReportPrintService.printGeneratedReport(viewDefinitionState, state, new String[] { args[0],
                 ProductionPerShiftConstants.PLUGIN_IDENTIFIER, ProductionPerShiftConstants.MODEL_PPS_REPORT });
     }
 
@@ -105,7 +104,7 @@ public class PPSReportDetailsListeners {
         Entity reportWithFileName = fileService.updateReportFileName(goodFoodReport, PPSReportFields.CREATE_DATE, localePrefix);
 
         try {
-            ppsReportXlsService.generateDocument(reportWithFileName, locale, PageSize.A3);
+            ppsReportXlsService.generateDocument(reportWithFileName, locale);
 
         } catch (IOException e) {
             throw new IllegalStateException("Problem with saving goodFood report");
@@ -33,12 +33,10 @@ import java.util.Map;
 import java.util.Optional;
 
 import org.apache.commons.lang3.time.DurationFormatUtils;
-import org.apache.poi.hssf.usermodel.HSSFCell;
-import org.apache.poi.hssf.usermodel.HSSFPrintSetup;
-import org.apache.poi.hssf.usermodel.HSSFRow;
-import org.apache.poi.hssf.usermodel.HSSFSheet;
-import org.apache.poi.ss.usermodel.CreationHelper;
-import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.PrintSetup;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
 import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
 import org.joda.time.LocalTime;
@@ -51,6 +49,8 @@ import com.google.common.collect.Maps;
 import com.qcadoo.commons.dateTime.TimeRange;
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.mes.basic.constants.ShiftFields;
+import com.qcadoo.mes.basic.print.xls.StreamingXlsxReportService;
+import com.qcadoo.mes.basic.print.xls.XlsRowWriter;
 import com.qcadoo.mes.basic.shift.Shift;
 import com.qcadoo.mes.lineChangeoverNorms.constants.LineChangeoverNormsFields;
 import com.qcadoo.mes.orders.constants.OrderFields;
@@ -64,10 +64,9 @@ import com.qcadoo.mes.productionPerShift.report.print.utils.DayShiftHolder;
 import com.qcadoo.mes.productionPerShift.report.print.utils.EntityProductionPerShiftsComparator;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
-import com.qcadoo.report.api.xls.XlsDocumentService;
 
 @Service
-public class PPSReportXlsService extends XlsDocumentService {
+public class PPSReportXlsService extends StreamingXlsxReportService {
 
     private DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", LocaleContextHolder.getLocale());
 
@@ -94,46 +93,58 @@ public class PPSReportXlsService extends XlsDocumentService {
     }
 
     @Override
-    protected void addHeader(final HSSFSheet sheet, final Locale locale, final Entity report) {
-        PPSReportXlsStyleContainer styleContainer = new PPSReportXlsStyleContainer(sheet);
-        createHeaderForAuthor(sheet, locale, styleContainer);
+    protected void buildSheet(final XlsRowWriter writer, final Entity report, final Locale locale) {
+        Sheet sheet = writer.getSheet();
+        sheet.getPrintSetup().setLandscape(true);
+        sheet.getPrintSetup().setPaperSize(PrintSetup.A3_PAPERSIZE);
+        sheet.getPrintSetup().setHResolution((short) 1);
+        PPSReportXlsStyleContainer styleContainer = new PPSReportXlsStyleContainer(writer.getStyles());
 
-        HSSFRow headerMainLine = sheet.createRow(3);
-        HSSFRow headerProduction = sheet.createRow(4);
         List<ReportColumn> columns = ppsReportColumnHelper.getReportColumns();
-        createHeaderLineForProduction(sheet, locale, headerMainLine, headerProduction, styleContainer, columns);
-        createHeaderLineForDaysWithShifts(sheet, locale, headerMainLine, headerProduction, report, styleContainer, columns);
+        addHeader(writer, locale, report, styleContainer, columns);
+        addSeriesOfProductionLine(writer, report, styleContainer, columns);
+        setColumnWidths(sheet, report, columns);
+    }
+
+    private void addHeader(final XlsRowWriter writer, final Locale locale, final Entity report,
+            final PPSReportXlsStyleContainer styleContainer, final List<ReportColumn> columns) {
+        createHeaderForAuthor(writer, locale, report, styleContainer);
+
+        Row headerMainLine = writer.skipRows(1).nextRow();
+        Row headerProduction = writer.nextRow();
+        Row headerShifts = writer.nextRow();
+        createHeaderLineForProduction(writer, locale, headerMainLine, headerProduction, styleContainer, columns);
+        createHeaderLineForDaysWithShifts(locale, headerMainLine, headerProduction, headerShifts, report, styleContainer,
+                columns);
     }
 
-    private void createHeaderForAuthor(final HSSFSheet sheet, final Locale locale,
+    private void createHeaderForAuthor(final XlsRowWriter writer, final Locale locale, final Entity report,
             final PPSReportXlsStyleContainer styleContainer) {
-        HSSFRow headerAuthorLine = sheet.createRow(0);
+        Row headerAuthorLine = writer.nextRow();
 
-        HSSFCell updateDateCell = headerAuthorLine.createCell(0);
+        Cell updateDateCell = headerAuthorLine.createCell(0);
         updateDateCell.setCellValue(translationService.translate(PPSReportConstants.COLUMN_HEADER_UPDATE_DATE, locale));
 
-        HSSFCell authorCell = headerAuthorLine.createCell(2);
+        Cell authorCell = headerAuthorLine.createCell(2);
         authorCell.setCellValue(translationService.translate(PPSReportConstants.COLUMN_HEADER_AUTHOR, locale));
 
-        sheet.addMergedRegion(new CellRangeAddress(0, 0, 0, 1));
-        sheet.addMergedRegion(new CellRangeAddress(0, 0, 2, 4));
+        writer.mergeCells(headerAuthorLine.getRowNum(), headerAuthorLine.getRowNum(), 0, 1);
+        writer.mergeCells(headerAuthorLine.getRowNum(), headerAuthorLine.getRowNum(), 2, 4);
 
         ppsReportXlsStyleHelper.setGreyDataStyle(updateDateCell, styleContainer);
         ppsReportXlsStyleHelper.setGreyDataStyle(authorCell, styleContainer);
-    }
 
-    private void createHeaderLineForProduction(final HSSFSheet sheet, final Locale locale, final HSSFRow headerMainLine,
-            final HSSFRow headerProduction, final PPSReportXlsStyleContainer styleContainer, List<ReportColumn> columns) {
-
-        CreationHelper helper = sheet.getWorkbook().getCreationHelper();
-        helper.createDataFormat();
+        addSeriesOfReportAuthorAndDate(writer, report, styleContainer);
+    }
 
-        appendHeaderMainLine(sheet, locale, headerMainLine, styleContainer);
+    private void createHeaderLineForProduction(final XlsRowWriter writer, final Locale locale, final Row headerMainLine,
+            final Row headerProduction, final PPSReportXlsStyleContainer styleContainer, List<ReportColumn> columns) {
+        appendHeaderMainLine(locale, headerMainLine, styleContainer);
 
         int columnNumber = 0;
 
         for (ReportColumn column : columns) {
-            HSSFCell cell = headerProduction.createCell(columnNumber);
+            Cell cell = headerProduction.createCell(columnNumber);
             cell.setCellValue(column.getHeader(locale));
             column.setHeaderStyle(cell, styleContainer);
 
@@ -142,35 +153,35 @@ public class PPSReportXlsService extends XlsDocumentService {
 
         headerProduction.setHeightInPoints(20);
 
-        mergeHeaderCells(sheet, columns.size());
+        mergeHeaderCells(writer, headerMainLine.getRowNum(), columns.size());
     }
 
-    private void appendHeaderMainLine(final HSSFSheet sheet, final Locale locale, final HSSFRow headerMainLine,
+    private void appendHeaderMainLine(final Locale locale, final Row headerMainLine,
             PPSReportXlsStyleContainer styleContainer) {
-        HSSFCell cell = headerMainLine.createCell(0);
+        Cell cell = headerMainLine.createCell(0);
         cell.setCellValue(translationService.translate(PPSReportConstants.COLUMN_HEADER_PLANNED_PRODUCTION, locale));
         ppsReportXlsStyleHelper.setHeaderStyle1(cell, styleContainer);
     }
 
-    private void mergeHeaderCells(final HSSFSheet sheet, int numberOfColumns) {
-        sheet.addMergedRegion(new CellRangeAddress(3, 3, 0, numberOfColumns - 1));
-        sheet.addMergedRegion(new CellRangeAddress(3, 3, numberOfColumns, 24));
+    private void mergeHeaderCells(final XlsRowWriter writer, final int headerMainLineNumber, int numberOfColumns) {
+        writer.mergeCells(headerMainLineNumber, headerMainLineNumber, 0, numberOfColumns - 1);
+        writer.mergeCells(headerMainLineNumber, headerMainLineNumber, numberOfColumns, 24);
 
         for (int columnNumber = 0; columnNumber < numberOfColumns; columnNumber++) {
-            sheet.addMergedRegion(new CellRangeAddress(4, 5, columnNumber, columnNumber));
+            writer.mergeCells(headerMainLineNumber + 1, headerMainLineNumber + 2, columnNumber, columnNumber);
         }
     }
 
-    private void createHeaderLineForDaysWithShifts(final HSSFSheet sheet, final Locale locale, final HSSFRow headerMainLine,
-            final HSSFRow headerProductionLine, final Entity report, final PPSReportXlsStyleContainer styleContainer,
-            List<ReportColumn> columns) {
+    private void createHeaderLineForDaysWithShifts(final Locale locale, final Row headerMainLine,
+            final Row headerProductionLine, final Row headerShifts, final Entity report,
+            final PPSReportXlsStyleContainer styleContainer, List<ReportColumn> columns) {
 
         List<Entity> shifts = ppsReportXlsHelper.getShifts();
         List<DateTime> days = ppsReportXlsHelper.getDaysBetweenGivenDates(report);
         int columnNumber = columns.size();
 
-        HSSFCell cell = headerMainLine.createCell(columnNumber);
-        HSSFCell merge = headerMainLine.createCell(columnNumber + 1);
+        Cell cell = headerMainLine.createCell(columnNumber);
+        Cell merge = headerMainLine.createCell(columnNumber + 1);
         cell.setCellValue(translationService.translate(PPSReportConstants.COLUMN_HEADER_PRODUCTION_PER_SHIFT, locale));
 
         merge.setCellValue("");
@@ -178,10 +189,8 @@ public class PPSReportXlsService extends XlsDocumentService {
         ppsReportXlsStyleHelper.setHeaderStyle1(cell, styleContainer);
         ppsReportXlsStyleHelper.setHeaderStyle1(merge, styleContainer);
 
-        HSSFRow headerShifts = sheet.createRow(5);
-
         for (DateTime day : days) {
-            HSSFCell cellDay = headerProductionLine.createCell(columnNumber);
+            Cell cellDay = headerProductionLine.createCell(columnNumber);
             cellDay.setCellValue(translationService.translate(PPSReportConstants.COLUMN_HEADER_DAY, locale,
 
                     dateFormat.format(new Date(day.getMillis()))));
@@ -192,7 +201,7 @@ public class PPSReportXlsService extends XlsDocumentService {
             for (Entity shift : shifts) {
                 columnNumber++;
 
-                HSSFCell cellColumnNumber = headerShifts.createCell(shiftColumnNumber);
+                Cell cellColumnNumber = headerShifts.createCell(shiftColumnNumber);
                 cellColumnNumber.setCellValue(translationService.translate(PPSReportConstants.COLUMN_HEADER_SHIFT_NUMBER, locale,
                         shift.getStringField(ShiftFields.NAME)));
 
@@ -203,35 +212,23 @@ public class PPSReportXlsService extends XlsDocumentService {
         }
     }
 
-    @Override
-    protected void addSeries(final HSSFSheet sheet, final Entity report) {
-        sheet.getPrintSetup().setLandscape(true);
-        sheet.getPrintSetup().setPaperSize(HSSFPrintSetup.A3_PAPERSIZE);
-        sheet.getPrintSetup().setHResolution((short) 1);
-        PPSReportXlsStyleContainer styleContainer = new PPSReportXlsStyleContainer(sheet);
-
-        List<ReportColumn> columns = ppsReportColumnHelper.getReportColumns();
-        addSeriesOfReportAuthorAndDate(sheet, report, styleContainer);
-        addSeriesOfProductionLine(sheet, report, styleContainer, columns);
-    }
-
-    private void addSeriesOfReportAuthorAndDate(final HSSFSheet sheet, final Entity report,
+    private void addSeriesOfReportAuthorAndDate(final XlsRowWriter writer, final Entity report,
             final PPSReportXlsStyleContainer styleContainer) {
-        HSSFRow row = sheet.createRow(1);
+        Row row = writer.nextRow();
 
-        HSSFCell updateDateCell = row.createCell(0);
+        Cell updateDateCell = row.createCell(0);
         updateDateCell.setCellValue(updateFormat.format(report.getDateField(PPSReportFields.UPDATE_DATE)));
 
-        HSSFCell authorCell = row.createCell(2);
+        Cell authorCell = row.createCell(2);
         authorCell.setCellValue(ppsReportXlsHelper.getDocumentAuthor(report.getStringField(PPSReportFields.CREATE_USER)));
 
-        sheet.addMergedRegion(new CellRangeAddress(1, 1, 0, 1));
-        sheet.addMergedRegion(new CellRangeAddress(1, 1, 2, 4));
+        writer.mergeCells(row.getRowNum(), row.getRowNum(), 0, 1);
+        writer.mergeCells(row.getRowNum(), row.getRowNum(), 2, 4);
         ppsReportXlsStyleHelper.setHeaderStyle2(updateDateCell, styleContainer);
         ppsReportXlsStyleHelper.setHeaderStyle2(authorCell, styleContainer);
     }
 
-    private void addSeriesOfProductionLine(final HSSFSheet sheet, final Entity report,
+    private void addSeriesOfProductionLine(final XlsRowWriter writer, final Entity report,
             final PPSReportXlsStyleContainer styleContainer, List<ReportColumn> columns) {
 
         List<Entity> productionPerShifts = ppsReportXlsHelper.getProductionPerShiftForReport(report);
@@ -249,7 +246,6 @@ public class PPSReportXlsService extends XlsDocumentService {
         String oldProductionLineNumber = "";
         String newProductionLineNumber;
 
-        int rowNum = 6;
         boolean isFirstRow;
         boolean greyBg = false;
 
@@ -265,10 +261,10 @@ public class PPSReportXlsService extends XlsDocumentService {
                 greyBg = !greyBg;
             }
             if (changeover != null && isChangeOverOnThisPrint(order, report, startTime)) {
-                HSSFRow row = sheet.createRow(rowNum++);
+                Row row = writer.nextRow();
                 int colIndex = 0;
                 for (ReportColumn column : columns) {
-                    HSSFCell cell = row.createCell(colIndex);
+                    Cell cell = row.createCell(colIndex);
 
                     if (isFirstRow) {
                         cell.setCellValue(column.getFirstRowChangeoverValue(productionPerShift));
@@ -278,12 +274,12 @@ public class PPSReportXlsService extends XlsDocumentService {
                     colIndex++;
                 }
                 isFirstRow = false;
-                addSeriesForChangeOver(sheet, report, row, changeover, order, styleContainer, columns);
+                addSeriesForChangeOver(report, row, changeover, order, styleContainer, columns);
             }
-            HSSFRow row = sheet.createRow(rowNum++);
+            Row row = writer.nextRow();
             int colIndex = 0;
             for (ReportColumn column : columns) {
-                HSSFCell cell = row.createCell(colIndex);
+                Cell cell = row.createCell(colIndex);
                 if (isFirstRow) {
                     cell.setCellValue(column.getFirstRowValue(productionPerShift));
                 } else {
@@ -307,12 +303,10 @@ public class PPSReportXlsService extends XlsDocumentService {
                 colIndex++;
             }
 
-            addSeriesOfDailyProgress(sheet, report, row, productionPerShift, greyBg, styleContainer, columns);
+            addSeriesOfDailyProgress(report, row, productionPerShift, greyBg, styleContainer, columns);
 
             oldProductionLineNumber = newProductionLineNumber;
         }
-
-        setColumnWidths(sheet, columns);
     }
 
     private boolean isChangeOverOnThisPrint(final Entity order, final Entity report, final LocalTime startTime) {
@@ -322,7 +316,7 @@ public class PPSReportXlsService extends XlsDocumentService {
         return startOrderDate.after(date.toDate());
     }
 
-    private void addSeriesOfDailyProgress(final HSSFSheet sheet, final Entity entity, final HSSFRow row,
+    private void addSeriesOfDailyProgress(final Entity entity, final Row row,
             final Entity productionPerShift, final boolean rowNumberIsEven, PPSReportXlsStyleContainer styleContainer,
             List<ReportColumn> columns) {
 
@@ -333,7 +327,7 @@ public class PPSReportXlsService extends XlsDocumentService {
 
         for (DateTime day : days) {
             for (Entity shift : shifts) {
-                HSSFCell cellDailyProgress = row.createCell(columnNumber);
+                Cell cellDailyProgress = row.createCell(columnNumber);
                 Entity dailyProgress = ppsReportXlsHelper.getDailyProgress(productionPerShift, day.toDate(), shift);
 
                 if (dailyProgress == null) {
@@ -350,14 +344,12 @@ public class PPSReportXlsService extends XlsDocumentService {
                 }
 
                 columnNumber++;
-
-                sheet.autoSizeColumn((short) columnNumber);
             }
         }
     }
 
-    private void addSeriesForChangeOver(final HSSFSheet sheet, final Entity entity, final HSSFRow row, final Entity changeover,
-            final Entity order, PPSReportXlsStyleContainer styleContainer, List<ReportColumn> columns) {
+    private void addSeriesForChangeOver(final Entity entity, final Row row, final Entity changeover, final Entity order,
+            PPSReportXlsStyleContainer styleContainer, List<ReportColumn> columns) {
         Map<Integer, DayShiftHolder> mapCells = Maps.newHashMap();
         List<Entity> shifts = ppsReportXlsHelper.getShifts();
         List<DateTime> days = ppsReportXlsHelper.getDaysBetweenGivenDates(entity);
@@ -373,17 +365,16 @@ public class PPSReportXlsService extends XlsDocumentService {
         if (new DateTime(startDateOrder).minusSeconds(1).toDate().before(firstStartShitTime.toDate())) {
             for (DateTime day : days) {
                 for (Entity shift : shifts) {
-                    HSSFCell cellDailyProgress = row.createCell(columnNumber);
+                    Cell cellDailyProgress = row.createCell(columnNumber);
                     cellDailyProgress.setCellValue("");
                     ppsReportXlsStyleHelper.setChangeoverDataStyle(cellDailyProgress, styleContainer);
                     columnNumber++;
-                    sheet.autoSizeColumn((short) columnNumber);
                 }
             }
         } else {
             for (DateTime day : days) {
                 for (Entity shift : shifts) {
-                    HSSFCell cell = row.createCell(columnNumber);
+                    Cell cell = row.createCell(columnNumber);
                     cell.setCellValue("");
                     DayShiftHolder holder = new DayShiftHolder(shift, day, cell);
                     ppsReportXlsStyleHelper.setChangeoverDataStyle(cell, styleContainer);
@@ -391,8 +382,6 @@ public class PPSReportXlsService extends XlsDocumentService {
                     mapCells.put(columnNumber, holder);
 
                     columnNumber++;
-
-                    sheet.autoSizeColumn((short) columnNumber);
                 }
             }
             columnNumber = columns.size();
@@ -400,7 +389,7 @@ public class PPSReportXlsService extends XlsDocumentService {
                 for (Entity shift : shifts) {
                     Optional<DateTime> maybeShiftStart = getShiftStartDate(day, shift);
                     Optional<DateTime> maybeShiftEnd = getShiftEndDate(day, shift);
-                    HSSFCell cell = mapCells.get(columnNumber).getCell();
+                    Cell cell = mapCells.get(columnNumber).getCell();
                     if (!maybeShiftStart.isPresent() || !maybeShiftEnd.isPresent()) {
                         cell.setCellValue("");
                         columnNumber++;
@@ -427,7 +416,7 @@ public class PPSReportXlsService extends XlsDocumentService {
                             if (currentIndex >= columns.size()) {
 
                                 while (durationToMark > 0) {
-                                    HSSFCell cellBefore = mapCells.get(currentIndex).getCell();
+                                    Cell cellBefore = mapCells.get(currentIndex).getCell();
                                     Optional<DateTime> maybeStart = getShiftStartDate(day, shift);
                                     Optional<DateTime> maybeEnd = getShiftEndDate(day, shift);
                                     if (!maybeStart.isPresent() || !maybeEnd.isPresent()) {
@@ -500,7 +489,9 @@ public class PPSReportXlsService extends XlsDocumentService {
         return Optional.of(startShitTime);
     }
 
-    private void setColumnWidths(final HSSFSheet sheet, List<ReportColumn> columns) {
+    private void setColumnWidths(final Sheet sheet, final Entity report, final List<ReportColumn> columns) {
+        int numberOfShiftColumns = Math.max(21,
+                ppsReportXlsHelper.getDaysBetweenGivenDates(report).size() * ppsReportXlsHelper.getShifts().size());
 
         int index = 0;
         for (ReportColumn column : columns) {
@@ -508,7 +499,7 @@ public class PPSReportXlsService extends XlsDocumentService {
             index++;
         }
 
-        for (int columnNumber = columns.size(); columnNumber < columns.size() + 21; columnNumber++) {
+        for (int columnNumber = columns.size(); columnNumber < columns.size() + numberOfShiftColumns; columnNumber++) {
             sheet.setColumnWidth(columnNumber, 6 * 256);
         }
     }
@@ -2,13 +2,13 @@ package com.qcadoo.mes.productionPerShift.report.print;
 
 import java.util.Map;
 
-import org.apache.poi.hssf.usermodel.HSSFCellStyle;
-import org.apache.poi.hssf.usermodel.HSSFFont;
-import org.apache.poi.hssf.usermodel.HSSFSheet;
-import org.apache.poi.hssf.util.HSSFColor;
+import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.IndexedColors;
 
 import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.print.xls.XlsStyle;
+import com.qcadoo.mes.basic.print.xls.XlsStyleRegistry;
 
 /**
  * Styles and style identifiers
@@ -39,259 +39,41 @@ public class PPSReportXlsStyleContainer {
 
     public static final String I_HeaderStyle2Red = "headerStyle2Red";
 
-    private Map<String, HSSFCellStyle> styles = Maps.newHashMap();
+    private static final XlsStyle DATA_STYLE = XlsStyle.DEFAULT.bold().withFontHeight((short) 9).withBorders()
+            .withAlignment(CellStyle.ALIGN_CENTER).withVerticalAlignment(CellStyle.VERTICAL_CENTER).wrapped();
 
-    private Font fontNormal;
+    private static final XlsStyle DATA_STYLE_SMALL = DATA_STYLE.withFontHeight((short) 7);
 
-    private Font fontRed;
+    private static final XlsStyle HEADER_STYLE = DATA_STYLE.withBorders(CellStyle.BORDER_MEDIUM);
 
-    private Font fontSmall;
+    private static final short GREY = IndexedColors.GREY_25_PERCENT.getIndex();
 
-    private Font fontSmallRed;
+    private Map<String, CellStyle> styles = Maps.newHashMap();
 
-    public PPSReportXlsStyleContainer(HSSFSheet sheet) {
-        initStyle(sheet);
+    public PPSReportXlsStyleContainer(final XlsStyleRegistry registry) {
+        initStyle(registry);
     }
 
-    private void initStyle(final HSSFSheet sheet) {
-        this.fontNormal = sheet.getWorkbook().createFont();
-        fontNormal.setFontName(HSSFFont.FONT_ARIAL);
-        fontNormal.setBoldweight(Font.BOLDWEIGHT_BOLD);
-        fontNormal.setFontHeightInPoints((short) 9);
-        fontNormal.setColor(HSSFFont.COLOR_NORMAL);
-
-        this.fontRed = sheet.getWorkbook().createFont();
-        fontRed.setFontName(HSSFFont.FONT_ARIAL);
-        fontRed.setBoldweight(Font.BOLDWEIGHT_BOLD);
-        fontRed.setFontHeightInPoints((short) 9);
-        fontRed.setColor(HSSFFont.COLOR_NORMAL);
-        fontRed.setColor(HSSFFont.COLOR_RED);
-
-        this.fontSmall = sheet.getWorkbook().createFont();
-        fontSmall.setFontName(HSSFFont.FONT_ARIAL);
-        fontSmall.setBoldweight(Font.BOLDWEIGHT_BOLD);
-        fontSmall.setFontHeightInPoints((short) 7);
-        fontSmall.setColor(HSSFFont.COLOR_NORMAL);
-
-        this.fontSmallRed = sheet.getWorkbook().createFont();
-        fontSmallRed.setFontName(HSSFFont.FONT_ARIAL);
-        fontSmallRed.setBoldweight(Font.BOLDWEIGHT_BOLD);
-        fontSmallRed.setFontHeightInPoints((short) 7);
-        fontSmallRed.setColor(HSSFFont.COLOR_NORMAL);
-        fontSmallRed.setColor(HSSFFont.COLOR_RED);
-
-        initWhiteDataStyleSmall(sheet);
-        greyDataStyleSmall(sheet);
-        whiteDataStyleEnd(sheet);
-        greyDataStyleEnd(sheet);
-        whiteDataStyle(sheet);
-        greyDataStyle(sheet);
-        changeoverDataStyle(sheet);
-        whiteDataStyleRed(sheet);
-        greyDataStyleRed(sheet);
-        headerStyle1(sheet);
-        headerStyle2(sheet);
-        headerStyle2Red(sheet);
-    }
-
-    private void headerStyle2Red(HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
-        style.setBorderTop(HSSFCellStyle.BORDER_MEDIUM);
-        style.setBorderLeft(HSSFCellStyle.BORDER_MEDIUM);
-        style.setBorderRight(HSSFCellStyle.BORDER_MEDIUM);
-        style.setBorderBottom(HSSFCellStyle.BORDER_MEDIUM);
-
-        style.setAlignment(HSSFCellStyle.ALIGN_CENTER);
-        style.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
-        style.setWrapText(true);
-        style.setFont(fontSmallRed);
-        styles.put(I_HeaderStyle2Red, style);
-
-    }
-
-    private void headerStyle2(HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
-        style.setBorderTop(HSSFCellStyle.BORDER_MEDIUM);
-        style.setBorderLeft(HSSFCellStyle.BORDER_MEDIUM);
-        style.setBorderRight(HSSFCellStyle.BORDER_MEDIUM);
-        style.setBorderBottom(HSSFCellStyle.BORDER_MEDIUM);
-
-        style.setAlignment(HSSFCellStyle.ALIGN_CENTER);
-        style.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
-        style.setWrapText(true);
-        style.setFont(fontSmall);
-        styles.put(I_HeaderStyle2, style);
-    }
-
-    private void headerStyle1(HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
-        style.setBorderTop(HSSFCellStyle.BORDER_MEDIUM);
-        style.setBorderLeft(HSSFCellStyle.BORDER_MEDIUM);
-        style.setBorderRight(HSSFCellStyle.BORDER_MEDIUM);
-        style.setBorderBottom(HSSFCellStyle.BORDER_MEDIUM);
-        style.setFillForegroundColor(HSSFColor.GREY_50_PERCENT.index);
-        style.setFillPattern(HSSFCellStyle.SOLID_FOREGROUND);
-        style.setAlignment(HSSFCellStyle.ALIGN_LEFT);
-        style.setAlignment(HSSFCellStyle.ALIGN_CENTER);
-        style.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
-        style.setWrapText(true);
-        style.setFont(fontNormal);
-        styles.put(I_HeaderStyle1, style);
-    }
-
-    private void greyDataStyleRed(HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
-        style.setBorderTop(HSSFCellStyle.BORDER_THIN);
-        style.setBorderLeft(HSSFCellStyle.BORDER_THIN);
-        style.setBorderRight(HSSFCellStyle.BORDER_THIN);
-        style.setBorderBottom(HSSFCellStyle.BORDER_THIN);
-        style.setFillForegroundColor(HSSFColor.GREY_25_PERCENT.index);
-        style.setFillPattern(HSSFCellStyle.SOLID_FOREGROUND);
-        style.setAlignment(HSSFCellStyle.ALIGN_CENTER);
-        style.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
-        style.setWrapText(true);
-        style.setFont(fontRed);
-        styles.put(I_GreyDataStyleRed, style);
-    }
-
-    private void whiteDataStyleRed(HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
-        style.setBorderTop(HSSFCellStyle.BORDER_THIN);
-        style.setBorderLeft(HSSFCellStyle.BORDER_THIN);
-        style.setBorderRight(HSSFCellStyle.BORDER_THIN);
-        style.setBorderBottom(HSSFCellStyle.BORDER_THIN);
-
-        style.setAlignment(HSSFCellStyle.ALIGN_CENTER);
-        style.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
-        style.setWrapText(true);
-        style.setFont(fontRed);
-        styles.put(I_WhiteDataStyleRed, style);
-    }
-
-    private void changeoverDataStyle(HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
-
-
-        style.setBorderTop(HSSFCellStyle.BORDER_THIN);
-        style.setBorderLeft(HSSFCellStyle.BORDER_THIN);
-        style.setBorderRight(HSSFCellStyle.BORDER_THIN);
-        style.setBorderBottom(HSSFCellStyle.BORDER_THIN);
-
-        style.setAlignment(HSSFCellStyle.ALIGN_CENTER);
-        style.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
-        style.setWrapText(true);
-
-
-
-        style.setFont(fontNormal);
-
-        style.setFillForegroundColor(HSSFColor.PALE_BLUE.index);
-        style.setFillPattern(HSSFCellStyle.SOLID_FOREGROUND);
-        styles.put(I_ChangeoverDataStyle, style);
-    }
-
-    private void whiteDataStyle(HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
-
-        style.setBorderTop(HSSFCellStyle.BORDER_THIN);
-        style.setBorderLeft(HSSFCellStyle.BORDER_THIN);
-        style.setBorderRight(HSSFCellStyle.BORDER_THIN);
-        style.setBorderBottom(HSSFCellStyle.BORDER_THIN);
-
-        style.setAlignment(HSSFCellStyle.ALIGN_CENTER);
-        style.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
-        style.setWrapText(true);
-        style.setFont(fontNormal);
-        styles.put(I_WhiteDataStyle, style);
-    }
-
-    private void greyDataStyle(HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
-        style.setBorderTop(HSSFCellStyle.BORDER_THIN);
-        style.setBorderLeft(HSSFCellStyle.BORDER_THIN);
-        style.setBorderRight(HSSFCellStyle.BORDER_THIN);
-        style.setBorderBottom(HSSFCellStyle.BORDER_THIN);
-
-        style.setAlignment(HSSFCellStyle.ALIGN_CENTER);
-        style.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
-        style.setWrapText(true);
-        style.setFillForegroundColor(HSSFColor.GREY_25_PERCENT.index);
-        style.setFillPattern(HSSFCellStyle.SOLID_FOREGROUND);
-        style.setFont(fontNormal);
-        styles.put(I_GreyDataStyle, style);
-    }
-
-    private void greyDataStyleEnd(HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
-        style.setBorderTop(HSSFCellStyle.BORDER_THIN);
-        style.setBorderLeft(HSSFCellStyle.BORDER_THIN);
-        style.setBorderRight(HSSFCellStyle.BORDER_THIN);
-        style.setBorderBottom(HSSFCellStyle.BORDER_THIN);
-
-        style.setAlignment(HSSFCellStyle.ALIGN_CENTER);
-        style.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
-        style.setWrapText(true);
-        style.setFillForegroundColor(HSSFColor.GREY_25_PERCENT.index);
-        style.setFillPattern(HSSFCellStyle.SOLID_FOREGROUND);
-        style.setBorderRight(HSSFCellStyle.BORDER_MEDIUM);
-        style.setFont(fontNormal);
-        styles.put(I_GreyDataStyleEnd, style);
-    }
-
-    private void whiteDataStyleEnd(HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
-
-        style.setBorderTop(HSSFCellStyle.BORDER_THIN);
-        style.setBorderLeft(HSSFCellStyle.BORDER_THIN);
-        style.setBorderRight(HSSFCellStyle.BORDER_THIN);
-        style.setBorderBottom(HSSFCellStyle.BORDER_THIN);
-
-        style.setAlignment(HSSFCellStyle.ALIGN_CENTER);
-        style.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
-        style.setWrapText(true);
-        style.setFont(fontNormal);
-        style.setBorderRight(HSSFCellStyle.BORDER_MEDIUM);
-
-        styles.put(I_WhiteDataStyleEnd, style);
-    }
-
-    private void greyDataStyleSmall(HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
-
-        style.setBorderTop(HSSFCellStyle.BORDER_THIN);
-        style.setBorderLeft(HSSFCellStyle.BORDER_THIN);
-        style.setBorderRight(HSSFCellStyle.BORDER_THIN);
-        style.setBorderBottom(HSSFCellStyle.BORDER_THIN);
-
-        style.setAlignment(HSSFCellStyle.ALIGN_CENTER);
-        style.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
-        style.setWrapText(true);
-        style.setFillForegroundColor(HSSFColor.GREY_25_PERCENT.index);
-        style.setFillPattern(HSSFCellStyle.SOLID_FOREGROUND);
-        style.setFont(fontSmall);
-        styles.put(I_GreyDataStyleSmall, style);
-    }
-
-    private void initWhiteDataStyleSmall(HSSFSheet sheet) {
-        HSSFCellStyle style = sheet.getWorkbook().createCellStyle();
-
-        style.setBorderTop(HSSFCellStyle.BORDER_THIN);
-        style.setBorderLeft(HSSFCellStyle.BORDER_THIN);
-        style.setBorderRight(HSSFCellStyle.BORDER_THIN);
-        style.setBorderBottom(HSSFCellStyle.BORDER_THIN);
-
-        style.setAlignment(HSSFCellStyle.ALIGN_CENTER);
-        style.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
-        style.setWrapText(true);
-        style.setFont(fontSmall);
-        styles.put(I_WhiteDataStyleSmall, style);
+    private void initStyle(final XlsStyleRegistry registry) {
+        styles.put(I_WhiteDataStyleSmall, registry.get(DATA_STYLE_SMALL));
+        styles.put(I_GreyDataStyleSmall, registry.get(DATA_STYLE_SMALL.withFill(GREY)));
+        styles.put(I_WhiteDataStyleEnd, registry.get(DATA_STYLE.withRightBorder(CellStyle.BORDER_MEDIUM)));
+        styles.put(I_GreyDataStyleEnd, registry.get(DATA_STYLE.withFill(GREY).withRightBorder(CellStyle.BORDER_MEDIUM)));
+        styles.put(I_WhiteDataStyle, registry.get(DATA_STYLE));
+        styles.put(I_GreyDataStyle, registry.get(DATA_STYLE.withFill(GREY)));
+        styles.put(I_ChangeoverDataStyle, registry.get(DATA_STYLE.withFill(IndexedColors.PALE_BLUE.getIndex())));
+        styles.put(I_WhiteDataStyleRed, registry.get(DATA_STYLE.withFontColor(Font.COLOR_RED)));
+        styles.put(I_GreyDataStyleRed, registry.get(DATA_STYLE.withFontColor(Font.COLOR_RED).withFill(GREY)));
+        styles.put(I_HeaderStyle1, registry.get(HEADER_STYLE.withFill(IndexedColors.GREY_50_PERCENT.getIndex())));
+        styles.put(I_HeaderStyle2, registry.get(HEADER_STYLE.withFontHeight((short) 7)));
+        styles.put(I_HeaderStyle2Red, registry.get(HEADER_STYLE.withFontHeight((short) 7).withFontColor(Font.COLOR_RED)));
     }
 
-    public Map<String, HSSFCellStyle> getStyles() {
+    public Map<String, CellStyle> getStyles() {
         return styles;
     }
 
-    public void setStyles(Map<String, HSSFCellStyle> styles) {
+    public void setStyles(Map<String, CellStyle> styles) {
         this.styles = styles;
     }
 }
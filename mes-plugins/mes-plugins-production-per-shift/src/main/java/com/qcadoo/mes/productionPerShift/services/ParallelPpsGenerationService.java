@@ -0,0 +1,112 @@
+package com.qcadoo.mes.productionPerShift.services;
+
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.qcadoo.mes.productionPerShift.domain.ProgressForDaysContainer;
+import com.qcadoo.model.api.validators.ErrorMessage;
+import com.qcadoo.tenant.api.MultiTenantCallback;
+import com.qcadoo.tenant.api.MultiTenantService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.i18n.LocaleContext;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generates production per shift plans of many orders on a bounded pool. Each order is generated and saved in its own
+ * transaction by {@link PpsOrderGenerationService}, in the tenant, locale and security context of the caller.
+ */
+@Service
+public class ParallelPpsGenerationService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelPpsGenerationService.class);
+
+    private static final int GENERATION_PARALLELISM = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), 4));
+
+    private final ExecutorService generationPool = Executors.newFixedThreadPool(GENERATION_PARALLELISM,
+            new ThreadFactoryBuilder().setNameFormat("pps-generation-%d").setDaemon(true).build());
+
+    @Autowired
+    private PpsOrderGenerationService ppsOrderGenerationService;
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    @PreDestroy
+    public void shutdownGenerationPool() {
+        generationPool.shutdownNow();
+    }
+
+    /**
+     * Returns the generation result of each order, in the order of the given ids. Failed orders have their errors in the
+     * container and nothing saved.
+     */
+    public Map<Long, ProgressForDaysContainer> generateProgressForOrders(final List<Long> orderIds) {
+        int tenantId = multiTenantService.getCurrentTenantId();
+        LocaleContext localeContext = LocaleContextHolder.getLocaleContext();
+        SecurityContext securityContext = SecurityContextHolder.getContext();
+
+        Map<Long, ProgressForDaysContainer> containers = Maps.newLinkedHashMap();
+        Map<Long, Future<?>> generations = Maps.newLinkedHashMap();
+        for (Long orderId : orderIds) {
+            ProgressForDaysContainer progressForDaysContainer = new ProgressForDaysContainer();
+            containers.put(orderId, progressForDaysContainer);
+            generations.put(orderId, generationPool.submit(
+                    () -> generateInContext(orderId, progressForDaysContainer, tenantId, localeContext, securityContext)));
+        }
+        for (Map.Entry<Long, Future<?>> generation : generations.entrySet()) {
+            awaitGeneration(generation.getKey(), generation.getValue(), containers.get(generation.getKey()));
+        }
+        return containers;
+    }
+
+    private void generateInContext(final Long orderId, final ProgressForDaysContainer progressForDaysContainer,
+            final int tenantId, final LocaleContext localeContext, final SecurityContext securityContext) {
+        LocaleContext previousLocaleContext = LocaleContextHolder.getLocaleContext();
+        SecurityContext previousSecurityContext = SecurityContextHolder.getContext();
+        LocaleContextHolder.setLocaleContext(localeContext);
+        SecurityContextHolder.setContext(securityContext);
+        try {
+            multiTenantService.doInMultiTenantContext(tenantId, new MultiTenantCallback() {
+
+                @Override
+                public void invoke() {
+                    ppsOrderGenerationService.generateAndSave(orderId, progressForDaysContainer);
+                }
+
+            });
+        } finally {
+            LocaleContextHolder.setLocaleContext(previousLocaleContext);
+            SecurityContextHolder.setContext(previousSecurityContext);
+        }
+    }
+
+    private void awaitGeneration(final Long orderId, final Future<?> generation,
+            final ProgressForDaysContainer progressForDaysContainer) {
+        try {
+            generation.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("PPS generation interrupted", e);
+        } catch (ExecutionException e) {
+            if (progressForDaysContainer.getErrors().isEmpty()) {
+                LOG.error("PPS generation error for order " + orderId, e.getCause());
+                progressForDaysContainer.addError(new ErrorMessage("productionPerShift.automaticAlgorithm.error.generation",
+                        false));
+            }
+            progressForDaysContainer.setCalculationError(true);
+        }
+    }
+
+}
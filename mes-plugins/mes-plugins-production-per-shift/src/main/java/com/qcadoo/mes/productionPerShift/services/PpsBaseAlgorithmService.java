@@ -3,7 +3,6 @@ package com.qcadoo.mes.productionPerShift.services;
 import com.google.common.base.Function;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.Lists;
-import com.qcadoo.commons.dateTime.TimeRange;
 import com.qcadoo.localization.api.utils.DateUtils;
 import com.qcadoo.mes.basic.shift.Shift;
 import com.qcadoo.mes.basicProductionCounting.BasicProductionCountingService;
@@ -17,6 +16,7 @@ import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftFields;
 import com.qcadoo.mes.productionPerShift.constants.ProgressForDayFields;
 import com.qcadoo.mes.productionPerShift.domain.DailyProgressContainer;
 import com.qcadoo.mes.productionPerShift.domain.DailyProgressKey;
+import com.qcadoo.mes.productionPerShift.domain.PpsAlgorithmContext;
 import com.qcadoo.mes.productionPerShift.domain.ProgressForDaysContainer;
 import com.qcadoo.mes.productionPerShift.domain.ShiftEfficiencyCalculationHolder;
 import com.qcadoo.model.api.DataDefinitionService;
@@ -50,8 +50,6 @@ public abstract class PpsBaseAlgorithmService {
     @Autowired
     private PpsTimeHelper ppsTimeHelper;
 
-    private Map<DailyProgressKey, Entity> dailyProgressesWithTrackingRecords;
-
     public void generateProgressForDays(ProgressForDaysContainer progressForDaysContainer, Entity productionPerShift) {
         Entity order = productionPerShift.getBelongsToField(ProductionPerShiftFields.ORDER);
         if (progressForDaysContainer.getOrder() != null) {
@@ -84,22 +82,24 @@ public abstract class PpsBaseAlgorithmService {
         if (order.getBooleanField(OrderFields.FINAL_PRODUCTION_TRACKING)) {
             plannedQuantity = basicProductionCountingService.getProducedQuantityFromBasicProductionCountings(order);
         }
-        calculateRegisteredQuantity(progressForDaysContainer, order, operationComponent, plannedQuantity);
+        Map<DailyProgressKey, Entity> dailyProgressesWithTrackingRecords = calculateRegisteredQuantity(progressForDaysContainer,
+                order, operationComponent, plannedQuantity);
+        PpsAlgorithmContext context = new PpsAlgorithmContext(productionPerShift, order, orderStartDate, shifts,
+                ppsTimeHelper.createShiftWorkCalendar(shifts), dailyProgressesWithTrackingRecords,
+                progressForDaysContainer.isShouldBeCorrected());
 
-        BigDecimal alreadyPlannedQuantity = BigDecimal.ZERO;
         List<Entity> progressForDays = Lists.newLinkedList();
 
         DateTime currentDate = new DateTime(orderStartDate);
         currentDate = currentDate.minusDays(1);
         currentDate = currentDate.toLocalDate().toDateTimeAtStartOfDay();
-        boolean shouldBeCorrected = progressForDaysContainer.isShouldBeCorrected();
+        boolean shouldBeCorrected = context.isShouldBeCorrected();
         int realizationDayNumber = 0;
         while (progressForDaysContainer.getPlannedQuantity().compareTo(BigDecimal.ZERO) > 0
                 || progressForDaysContainer.getAlreadyRegisteredQuantity().compareTo(BigDecimal.ZERO) > 0) {
 
-            DailyProgressContainer dailyProgressContainer = fillDailyProgressWithShifts(progressForDaysContainer,
-                    productionPerShift, order, shifts, currentDate, orderStartDate, shouldBeCorrected, progressForDays.size(),
-                    alreadyPlannedQuantity);
+            DailyProgressContainer dailyProgressContainer = fillDailyProgressWithShifts(progressForDaysContainer, context,
+                    currentDate, progressForDays.size());
             if (dailyProgressContainer.isCalculationError()) {
                 progressForDaysContainer.setCalculationError(true);
                 return;
@@ -118,17 +118,16 @@ public abstract class PpsBaseAlgorithmService {
     }
 
     private DailyProgressContainer fillDailyProgressWithShifts(ProgressForDaysContainer progressForDaysContainer,
-            Entity productionPerShift, Entity order, List<Shift> shifts, DateTime dateOfDay, Date orderStartDate,
-            boolean shouldBeCorrected, int progressForDayQuantity, BigDecimal alreadyPlannedQuantity) {
+            PpsAlgorithmContext context, DateTime dateOfDay, int progressForDayQuantity) {
         DailyProgressContainer dailyProgressContainer = new DailyProgressContainer();
         List<Entity> dailyProgressWithShifts = Lists.newLinkedList();
+        Entity productionPerShift = context.getProductionPerShift();
+        Entity order = context.getOrder();
+        Date orderStartDate = context.getOrderStartDate();
+        boolean shouldBeCorrected = context.isShouldBeCorrected();
 
-        for (Shift shift : shifts) {
-            Entity dailyProgress = null;
-            if (dailyProgressesWithTrackingRecords != null) {
-                DailyProgressKey key = new DailyProgressKey(shift.getId(), dateOfDay);
-                dailyProgress = dailyProgressesWithTrackingRecords.get(key);
-            }
+        for (Shift shift : context.getShifts()) {
+            Entity dailyProgress = context.getDailyProgressWithTrackingRecords(shift, dateOfDay);
             if (dailyProgress != null) {
                 BigDecimal producedQuantity = dailyProgress.getDecimalField(DailyProgressFields.QUANTITY);
                 progressForDaysContainer.setAlreadyRegisteredQuantity(progressForDaysContainer.getAlreadyRegisteredQuantity()
@@ -147,7 +146,7 @@ public abstract class PpsBaseAlgorithmService {
                 DateTime orderStartDateDT = new DateTime(orderStartDate, DateTimeZone.getDefault());
                 BigDecimal shiftEfficiency = BigDecimal.ZERO;
                 int time = 0;
-                for (DateTimeRange range : getShiftWorkDateTimes(shift, dateOfDay, orderStartDate)) {
+                for (DateTimeRange range : context.getWorkRanges(shift, dateOfDay)) {
                     if (orderStartDate.after(dateOfDay.toDate())) {
                         range = range.trimBefore(orderStartDateDT);
                     }
@@ -163,7 +162,6 @@ public abstract class PpsBaseAlgorithmService {
                     shiftEfficiency = progressForDaysContainer.getPlannedQuantity();
                     progressForDaysContainer.setPlannedQuantity(BigDecimal.ZERO);
                 } else {
-                    alreadyPlannedQuantity = alreadyPlannedQuantity.add(shiftEfficiency, numberService.getMathContext());
                     progressForDaysContainer.setPlannedQuantity(progressForDaysContainer.getPlannedQuantity().subtract(
                             shiftEfficiency, numberService.getMathContext()));
                 }
@@ -182,22 +180,6 @@ public abstract class PpsBaseAlgorithmService {
         return dailyProgressContainer;
     }
 
-    private List<DateTimeRange> getShiftWorkDateTimes(final Shift shift, DateTime dateOfDay, final Date orderStartDate) {
-        DateTime dateOfDayDT = dateOfDay;
-        List<TimeRange> shiftWorkTime = Lists.newArrayList();
-        List<DateTimeRange> shiftWorkDateTime = Lists.newArrayList();
-        if (shift.worksAt(dateOfDay.dayOfWeek().get())) {
-            shiftWorkTime = shift.findWorkTimeAt(dateOfDay.toLocalDate());
-        }
-        for (TimeRange range : shiftWorkTime) {
-            shiftWorkDateTime.add(new DateTimeRange(dateOfDayDT, range));
-        }
-
-        shiftWorkDateTime = ppsTimeHelper.manageExceptions(shiftWorkDateTime, shift.getEntity(), dateOfDay.toDate());
-
-        return shiftWorkDateTime;
-    }
-
     private Entity createComponent(final int dayNumber, Date realizationDate, final List<Entity> dailyProgress,
             boolean shouldBeCorrected) {
         Entity progressForDay = dataDefinitionService.get(ProductionPerShiftConstants.PLUGIN_IDENTIFIER,
@@ -226,9 +208,10 @@ public abstract class PpsBaseAlgorithmService {
         }).toList();
     }
 
-    private BigDecimal calculateRegisteredQuantity(final ProgressForDaysContainer progressForDaysContainer, final Entity order,
-            final Entity operationComponent, BigDecimal plannedQuantity) {
+    private Map<DailyProgressKey, Entity> calculateRegisteredQuantity(final ProgressForDaysContainer progressForDaysContainer,
+            final Entity order, final Entity operationComponent, BigDecimal plannedQuantity) {
         BigDecimal alreadyRegisteredQuantity = progressForDaysContainer.getAlreadyRegisteredQuantity();
+        Map<DailyProgressKey, Entity> dailyProgressesWithTrackingRecords = Collections.emptyMap();
         if (operationComponent != null) {
             dailyProgressesWithTrackingRecords = dailyProgressService.getDailyProgressesWithTrackingRecords(order,
                     operationComponent);
@@ -237,12 +220,10 @@ public abstract class PpsBaseAlgorithmService {
                         .getDecimalField(DailyProgressFields.QUANTITY));
             }
             progressForDaysContainer.setAlreadyRegisteredQuantity(alreadyRegisteredQuantity);
-        } else {
-            dailyProgressesWithTrackingRecords = null;
         }
         progressForDaysContainer.setPlannedQuantity(plannedQuantity.subtract(alreadyRegisteredQuantity,
                 numberService.getMathContext()));
-        return progressForDaysContainer.getPlannedQuantity();
+        return dailyProgressesWithTrackingRecords;
     }
 
     protected abstract ShiftEfficiencyCalculationHolder calculateShiftEfficiency(
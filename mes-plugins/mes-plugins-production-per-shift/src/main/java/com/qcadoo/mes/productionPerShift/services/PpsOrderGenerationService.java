@@ -0,0 +1,93 @@
+package com.qcadoo.mes.productionPerShift.services;
+
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.orders.constants.OrdersConstants;
+import com.qcadoo.mes.orders.states.constants.OrderState;
+import com.qcadoo.mes.productionPerShift.PPSHelper;
+import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftConstants;
+import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftFields;
+import com.qcadoo.mes.productionPerShift.constants.ProgressForDayFields;
+import com.qcadoo.mes.productionPerShift.constants.TechnologyOperationComponentFieldsPPS;
+import com.qcadoo.mes.productionPerShift.domain.ProgressForDaysContainer;
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchRestrictions;
+import com.qcadoo.model.api.validators.ErrorMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Generates and saves the plan of a single order in its own transaction, so a failing order does not roll back plans of
+ * the others.
+ */
+@Service
+public class PpsOrderGenerationService {
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private AutomaticPpsExecutorService automaticPpsExecutorService;
+
+    @Autowired
+    private AutomaticPpsParametersService automaticPpsParametersService;
+
+    @Autowired
+    private PPSHelper ppsHelper;
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void generateAndSave(final Long orderId, final ProgressForDaysContainer progressForDaysContainer) {
+        if (!automaticPpsParametersService.isAutomaticPlanForShiftOn()) {
+            progressForDaysContainer.addError(new ErrorMessage("productionPerShift.automaticAlgorithm.error.ppsOff", false));
+            progressForDaysContainer.setCalculationError(true);
+            return;
+        }
+        Entity order = dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER).get(orderId);
+        if (order == null) {
+            throw new IllegalArgumentException("Order " + orderId + " does not exist");
+        }
+        DataDefinition productionPerShiftDD = dataDefinitionService.get(ProductionPerShiftConstants.PLUGIN_IDENTIFIER,
+                ProductionPerShiftConstants.MODEL_PRODUCTION_PER_SHIFT);
+        Entity productionPerShift = productionPerShiftDD.find()
+                .add(SearchRestrictions.belongsTo(ProductionPerShiftFields.ORDER, order)).setMaxResults(1).uniqueResult();
+        if (productionPerShift == null) {
+            // created in this transaction, the caller's one is not committed yet and not visible here
+            productionPerShift = productionPerShiftDD.get(ppsHelper.createPpsForOrderAndReturnId(orderId));
+        }
+        Entity toc = order.getBelongsToField(OrderFields.TECHNOLOGY).getTreeField(TechnologyFields.OPERATION_COMPONENTS)
+                .getRoot();
+        boolean shouldBeCorrected = OrderState.of(order).compareTo(OrderState.PENDING) != 0;
+
+        progressForDaysContainer.setShouldBeCorrected(shouldBeCorrected);
+        progressForDaysContainer.setOperationComponent(toc);
+        progressForDaysContainer.setOrder(order);
+        automaticPpsExecutorService.generateProgressForDays(progressForDaysContainer, productionPerShift);
+        if (progressForDaysContainer.isCalculationError()) {
+            progressForDaysContainer.addErrors(productionPerShift.getGlobalErrors());
+            return;
+        }
+
+        List<Entity> progressForDays = progressForDaysContainer.getProgressForDays();
+        if (!progressForDaysContainer.isPartCalculation()) {
+            Date orderFinishDate = automaticPpsExecutorService.calculateOrderFinishDate(order, progressForDays);
+            productionPerShift.setField(ProductionPerShiftFields.ORDER_FINISH_DATE, orderFinishDate);
+            productionPerShift.getDataDefinition().save(productionPerShift);
+        }
+        if (shouldBeCorrected) {
+            progressForDays.addAll(toc.getHasManyField(TechnologyOperationComponentFieldsPPS.PROGRESS_FOR_DAYS).stream()
+                    .filter(progressForDay -> !progressForDay.getBooleanField(ProgressForDayFields.CORRECTED))
+                    .collect(Collectors.toList()));
+        }
+        toc.setField(TechnologyOperationComponentFieldsPPS.PROGRESS_FOR_DAYS, progressForDays);
+        toc.getDataDefinition().save(toc);
+    }
+
+}
@@ -0,0 +1,125 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionPerShift;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.joda.time.LocalTime;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.qcadoo.commons.dateTime.TimeRange;
+import com.qcadoo.mes.basic.constants.ShiftFields;
+import com.qcadoo.mes.basic.constants.ShiftTimetableExceptionFields;
+import com.qcadoo.mes.basic.constants.TimetableExceptionType;
+import com.qcadoo.mes.basic.shift.Shift;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.testing.model.EntityListMock;
+
+public class ShiftWorkCalendarTest {
+
+    private static final DateTime MONDAY = new DateTime(2017, 5, 8, 0, 0, 0);
+
+    private PpsTimeHelper ppsTimeHelper;
+
+    private Shift shift;
+
+    private Entity shiftEntity;
+
+    @Before
+    public void init() {
+        ppsTimeHelper = new PpsTimeHelper();
+
+        shiftEntity = mock(Entity.class);
+        shift = mock(Shift.class);
+        given(shift.getId()).willReturn(1L);
+        given(shift.getEntity()).willReturn(shiftEntity);
+        given(shift.worksAt(anyInt())).willReturn(true);
+        given(shift.findWorkTimeAt(any(LocalDate.class))).willReturn(
+                ImmutableList.of(new TimeRange(new LocalTime(6, 0, 0), new LocalTime(14, 0, 0))));
+    }
+
+    @Test
+    public final void shouldReadExceptionsAndWorkTimeOnce() {
+        // given
+        given(shiftEntity.getHasManyField(ShiftFields.TIMETABLE_EXCEPTIONS)).willReturn(
+                EntityListMock.create(Collections.<Entity> emptyList()));
+        ShiftWorkCalendar calendar = ppsTimeHelper.createShiftWorkCalendar(ImmutableList.of(shift));
+
+        // when
+        List<DateTimeRange> firstRead = calendar.getWorkRanges(shift, MONDAY);
+        calendar.getWorkRanges(shift, MONDAY.plusDays(1));
+        List<DateTimeRange> secondRead = calendar.getWorkRanges(shift, MONDAY);
+
+        // then
+        assertSame(firstRead, secondRead);
+        assertEquals(1, firstRead.size());
+        assertEquals(480L, firstRead.get(0).durationInMins());
+        verify(shiftEntity, times(1)).getHasManyField(ShiftFields.TIMETABLE_EXCEPTIONS);
+        verify(shift, times(2)).findWorkTimeAt(any(LocalDate.class));
+    }
+
+    @Test
+    public final void shouldApplyFreeTimeExceptionOnlyToItsDay() {
+        // given
+        Entity freeTime = mock(Entity.class);
+        given(freeTime.getStringField(ShiftTimetableExceptionFields.TYPE)).willReturn(
+                TimetableExceptionType.FREE_TIME.getStringValue());
+        given(freeTime.getDateField(ShiftTimetableExceptionFields.FROM_DATE)).willReturn(MONDAY.withHourOfDay(10).toDate());
+        given(freeTime.getDateField(ShiftTimetableExceptionFields.TO_DATE)).willReturn(MONDAY.withHourOfDay(12).toDate());
+        given(shiftEntity.getHasManyField(ShiftFields.TIMETABLE_EXCEPTIONS)).willReturn(
+                EntityListMock.create(ImmutableList.of(freeTime)));
+        ShiftWorkCalendar calendar = ppsTimeHelper.createShiftWorkCalendar(ImmutableList.of(shift));
+
+        // when
+        long mondayMinutes = sumMinutes(calendar.getWorkRanges(shift, MONDAY));
+        long tuesdayMinutes = sumMinutes(calendar.getWorkRanges(shift, MONDAY.plusDays(1)));
+
+        // then
+        assertEquals(360L, mondayMinutes);
+        assertEquals(480L, tuesdayMinutes);
+    }
+
+    private long sumMinutes(final List<DateTimeRange> ranges) {
+        long minutes = 0;
+        for (DateTimeRange range : ranges) {
+            minutes += range.durationInMins();
+        }
+        return minutes;
+    }
+
+}
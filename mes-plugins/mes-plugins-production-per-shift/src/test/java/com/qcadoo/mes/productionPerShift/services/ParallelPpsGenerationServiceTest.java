@@ -0,0 +1,155 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionPerShift.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.productionPerShift.domain.ProgressForDaysContainer;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.tenant.api.MultiTenantCallback;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+public class ParallelPpsGenerationServiceTest {
+
+    private static final int TENANT_ID = 7;
+
+    private static final List<Long> ORDER_IDS = Lists.newArrayList(3L, 1L, 4L, 2L, 5L);
+
+    private ParallelPpsGenerationService parallelPpsGenerationService;
+
+    @Mock
+    private PpsOrderGenerationService ppsOrderGenerationService;
+
+    @Mock
+    private MultiTenantService multiTenantService;
+
+    @Mock
+    private Entity progressForDay;
+
+    private final Set<Integer> tenantIds = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    private final Set<Locale> locales = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        parallelPpsGenerationService = new ParallelPpsGenerationService();
+
+        ReflectionTestUtils.setField(parallelPpsGenerationService, "ppsOrderGenerationService", ppsOrderGenerationService);
+        ReflectionTestUtils.setField(parallelPpsGenerationService, "multiTenantService", multiTenantService);
+
+        LocaleContextHolder.setLocale(Locale.GERMAN);
+
+        given(multiTenantService.getCurrentTenantId()).willReturn(TENANT_ID);
+        doAnswer(invocation -> {
+            tenantIds.add((Integer) invocation.getArguments()[0]);
+            ((MultiTenantCallback) invocation.getArguments()[1]).invoke();
+            return null;
+        }).when(multiTenantService).doInMultiTenantContext(anyInt(), any(MultiTenantCallback.class));
+        doAnswer(invocation -> {
+            Long orderId = (Long) invocation.getArguments()[0];
+            ProgressForDaysContainer progressForDaysContainer = (ProgressForDaysContainer) invocation.getArguments()[1];
+            locales.add(LocaleContextHolder.getLocale());
+            progressForDaysContainer.setProgressForDays(createProgressForDays(orderId.intValue()));
+            return null;
+        }).when(ppsOrderGenerationService).generateAndSave(anyLong(), any(ProgressForDaysContainer.class));
+    }
+
+    @After
+    public void cleanUp() {
+        parallelPpsGenerationService.shutdownGenerationPool();
+        LocaleContextHolder.resetLocaleContext();
+    }
+
+    @Test
+    public void shouldGenerateOrdersInCallerContextAndReturnResultsInGivenOrder() {
+        // when
+        Map<Long, ProgressForDaysContainer> progressForDaysContainers = parallelPpsGenerationService
+                .generateProgressForOrders(ORDER_IDS);
+
+        // then
+        assertEquals(ORDER_IDS, Lists.newArrayList(progressForDaysContainers.keySet()));
+        for (Long orderId : ORDER_IDS) {
+            assertEquals(orderId.intValue(), progressForDaysContainers.get(orderId).getProgressForDays().size());
+            assertFalse(progressForDaysContainers.get(orderId).isCalculationError());
+        }
+        assertEquals(Collections.singleton(TENANT_ID), tenantIds);
+        assertEquals(Collections.singleton(Locale.GERMAN), locales);
+        verify(multiTenantService, times(ORDER_IDS.size())).doInMultiTenantContext(eq(TENANT_ID),
+                any(MultiTenantCallback.class));
+    }
+
+    @Test
+    public void shouldMarkOnlyFailedOrder() {
+        // given
+        doAnswer(invocation -> {
+            throw new IllegalStateException("No production line in order");
+        }).when(ppsOrderGenerationService).generateAndSave(eq(4L), any(ProgressForDaysContainer.class));
+
+        // when
+        Map<Long, ProgressForDaysContainer> progressForDaysContainers = parallelPpsGenerationService
+                .generateProgressForOrders(ORDER_IDS);
+
+        // then
+        ProgressForDaysContainer failedContainer = progressForDaysContainers.get(4L);
+        assertTrue(failedContainer.isCalculationError());
+        assertEquals("productionPerShift.automaticAlgorithm.error.generation", failedContainer.getErrors().get(0).getMessage());
+        for (Long orderId : Lists.newArrayList(3L, 1L, 2L, 5L)) {
+            assertFalse(progressForDaysContainers.get(orderId).isCalculationError());
+            assertEquals(orderId.intValue(), progressForDaysContainers.get(orderId).getProgressForDays().size());
+        }
+    }
+
+    private List<Entity> createProgressForDays(final int days) {
+        return Lists.newArrayList(Collections.nCopies(days, progressForDay));
+    }
+
+}
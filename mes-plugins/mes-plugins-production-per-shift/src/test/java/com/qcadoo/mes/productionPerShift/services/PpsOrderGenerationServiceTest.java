@@ -0,0 +1,162 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionPerShift.services;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.orders.constants.OrdersConstants;
+import com.qcadoo.mes.orders.states.constants.OrderStateStringValues;
+import com.qcadoo.mes.productionPerShift.PPSHelper;
+import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftConstants;
+import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftFields;
+import com.qcadoo.mes.productionPerShift.constants.TechnologyOperationComponentFieldsPPS;
+import com.qcadoo.mes.productionPerShift.domain.ProgressForDaysContainer;
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityTree;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+
+public class PpsOrderGenerationServiceTest {
+
+    private static final Long L_ORDER_ID = 1L;
+
+    private static final Long L_PPS_ID = 5L;
+
+    private PpsOrderGenerationService ppsOrderGenerationService;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private AutomaticPpsExecutorService automaticPpsExecutorService;
+
+    @Mock
+    private AutomaticPpsParametersService automaticPpsParametersService;
+
+    @Mock
+    private PPSHelper ppsHelper;
+
+    @Mock
+    private DataDefinition orderDD, productionPerShiftDD, tocDD;
+
+    @Mock
+    private SearchCriteriaBuilder searchCriteriaBuilder;
+
+    @Mock
+    private Entity order, technology, toc, productionPerShift;
+
+    @Mock
+    private EntityTree operationComponents;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        ppsOrderGenerationService = new PpsOrderGenerationService();
+
+        ReflectionTestUtils.setField(ppsOrderGenerationService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(ppsOrderGenerationService, "automaticPpsExecutorService", automaticPpsExecutorService);
+        ReflectionTestUtils.setField(ppsOrderGenerationService, "automaticPpsParametersService",
+                automaticPpsParametersService);
+        ReflectionTestUtils.setField(ppsOrderGenerationService, "ppsHelper", ppsHelper);
+
+        given(automaticPpsParametersService.isAutomaticPlanForShiftOn()).willReturn(true);
+
+        given(dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER)).willReturn(orderDD);
+        given(orderDD.get(L_ORDER_ID)).willReturn(order);
+        given(order.getId()).willReturn(L_ORDER_ID);
+        given(order.getStringField(OrderFields.STATE)).willReturn(OrderStateStringValues.PENDING);
+        given(order.getBelongsToField(OrderFields.TECHNOLOGY)).willReturn(technology);
+        given(technology.getTreeField(TechnologyFields.OPERATION_COMPONENTS)).willReturn(operationComponents);
+        given(operationComponents.getRoot()).willReturn(toc);
+        given(toc.getDataDefinition()).willReturn(tocDD);
+
+        given(dataDefinitionService.get(ProductionPerShiftConstants.PLUGIN_IDENTIFIER,
+                ProductionPerShiftConstants.MODEL_PRODUCTION_PER_SHIFT)).willReturn(productionPerShiftDD);
+        given(productionPerShiftDD.find()).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.add(any(SearchCriterion.class))).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.setMaxResults(anyInt())).willReturn(searchCriteriaBuilder);
+        given(productionPerShift.getDataDefinition()).willReturn(productionPerShiftDD);
+        given(automaticPpsExecutorService.calculateOrderFinishDate(any(Entity.class), anyListOf(Entity.class))).willReturn(
+                new Date());
+    }
+
+    @Test
+    public void shouldCreateProductionPerShiftInOwnTransactionWhenOrderHasNone() {
+        // given
+        ProgressForDaysContainer progressForDaysContainer = new ProgressForDaysContainer();
+
+        given(searchCriteriaBuilder.uniqueResult()).willReturn(null);
+        given(ppsHelper.createPpsForOrderAndReturnId(L_ORDER_ID)).willReturn(L_PPS_ID);
+        given(productionPerShiftDD.get(L_PPS_ID)).willReturn(productionPerShift);
+
+        // when
+        ppsOrderGenerationService.generateAndSave(L_ORDER_ID, progressForDaysContainer);
+
+        // then
+        verify(ppsHelper).createPpsForOrderAndReturnId(L_ORDER_ID);
+        verify(automaticPpsExecutorService).generateProgressForDays(progressForDaysContainer, productionPerShift);
+        verify(productionPerShift).setField(eq(ProductionPerShiftFields.ORDER_FINISH_DATE), any(Date.class));
+        verify(productionPerShiftDD).save(productionPerShift);
+        verify(toc).setField(TechnologyOperationComponentFieldsPPS.PROGRESS_FOR_DAYS,
+                progressForDaysContainer.getProgressForDays());
+        verify(tocDD).save(toc);
+    }
+
+    @Test
+    public void shouldUseExistingProductionPerShift() {
+        // given
+        ProgressForDaysContainer progressForDaysContainer = new ProgressForDaysContainer();
+
+        given(searchCriteriaBuilder.uniqueResult()).willReturn(productionPerShift);
+
+        // when
+        ppsOrderGenerationService.generateAndSave(L_ORDER_ID, progressForDaysContainer);
+
+        // then
+        verify(ppsHelper, never()).createPpsForOrderAndReturnId(anyLong());
+        verify(automaticPpsExecutorService).generateProgressForDays(progressForDaysContainer, productionPerShift);
+        verify(tocDD).save(toc);
+    }
+
+}
@@ -0,0 +1,216 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionPerShift.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.util.ReflectionUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.constants.ShiftFields;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.productionLines.constants.ProductionLineFields;
+import com.qcadoo.mes.productionPerShift.PpsTimeHelper;
+import com.qcadoo.mes.productionPerShift.constants.DailyProgressFields;
+import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftConstants;
+import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftFields;
+import com.qcadoo.mes.productionPerShift.constants.ProgressForDayFields;
+import com.qcadoo.mes.productionPerShift.domain.ProgressForDaysContainer;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.NumberService;
+import com.qcadoo.testing.model.EntityListMock;
+
+public class PpsTechNormAlgorithmServiceTest {
+
+    private static final DateTime START_DATE = new DateTime(2017, 5, 8, 10, 0, 0);
+
+    private static final BigDecimal NORM = new BigDecimal("0.5");
+
+    private static final int GENERATIONS_PER_ORDER = 10;
+
+    private PpsTechNormAlgorithmService ppsTechNormAlgorithmService;
+
+    private ExecutorService executorService;
+
+    private Entity productionLine;
+
+    @Before
+    public void init() {
+        NumberService numberService = mock(NumberService.class);
+        given(numberService.getMathContext()).willReturn(MathContext.DECIMAL64);
+        given(numberService.setScale(any(BigDecimal.class))).willAnswer(
+                invocation -> ((BigDecimal) invocation.getArguments()[0]).setScale(5, RoundingMode.HALF_EVEN));
+
+        DataDefinitionService dataDefinitionService = mock(DataDefinitionService.class);
+        for (String modelName : Lists.newArrayList(ProductionPerShiftConstants.MODEL_DAILY_PROGRESS,
+                ProductionPerShiftConstants.MODEL_PROGRESS_FOR_DAY)) {
+            DataDefinition dataDefinition = mock(DataDefinition.class);
+            given(dataDefinition.create()).willAnswer(invocation -> createEntity());
+            given(dataDefinitionService.get(ProductionPerShiftConstants.PLUGIN_IDENTIFIER, modelName)).willReturn(
+                    dataDefinition);
+        }
+
+        ppsTechNormAlgorithmService = new PpsTechNormAlgorithmService();
+        inject(PpsTechNormAlgorithmService.class, "numberService", numberService);
+        inject(PpsBaseAlgorithmService.class, "numberService", numberService);
+        inject(PpsBaseAlgorithmService.class, "dataDefinitionService", dataDefinitionService);
+        inject(PpsBaseAlgorithmService.class, "ppsTimeHelper", new PpsTimeHelper());
+
+        List<Entity> shifts = Lists.newArrayList(mockShift(2L, "14:00-22:00"), mockShift(1L, "06:00-14:00"));
+        productionLine = mock(Entity.class);
+        given(productionLine.getManyToManyField(ProductionLineFields.SHIFTS)).willAnswer(
+                invocation -> Lists.newArrayList(shifts));
+
+        executorService = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void cleanUp() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void shouldGenerateSamePlansInParallelAsSequentially() throws Exception {
+        // given
+        List<Entity> productionPerShifts = Lists.newArrayList(mockProductionPerShift("1000", START_DATE),
+                mockProductionPerShift("2500", START_DATE.plusDays(3)), mockProductionPerShift("700", START_DATE.plusHours(5)));
+
+        Map<Entity, List<String>> sequentialPlans = Maps.newHashMap();
+        for (Entity productionPerShift : productionPerShifts) {
+            sequentialPlans.put(productionPerShift, generate(productionPerShift));
+        }
+
+        // when
+        List<Future<List<String>>> parallelPlans = Lists.newArrayList();
+        for (int i = 0; i < GENERATIONS_PER_ORDER; i++) {
+            for (Entity productionPerShift : productionPerShifts) {
+                parallelPlans.add(executorService.submit(() -> generate(productionPerShift)));
+            }
+        }
+
+        // then
+        assertTrue(sequentialPlans.get(productionPerShifts.get(1)).size() > 1);
+        for (int i = 0; i < parallelPlans.size(); i++) {
+            Entity productionPerShift = productionPerShifts.get(i % productionPerShifts.size());
+            assertEquals(sequentialPlans.get(productionPerShift), parallelPlans.get(i).get());
+        }
+    }
+
+    private List<String> generate(final Entity productionPerShift) {
+        ProgressForDaysContainer progressForDaysContainer = new ProgressForDaysContainer();
+        ppsTechNormAlgorithmService.generateProgressForDays(progressForDaysContainer, productionPerShift);
+
+        List<String> plan = Lists.newArrayList();
+        for (Entity progressForDay : progressForDaysContainer.getProgressForDays()) {
+            StringBuilder day = new StringBuilder();
+            day.append(progressForDay.getField(ProgressForDayFields.DAY)).append(' ')
+                    .append(progressForDay.getField(ProgressForDayFields.DATE_OF_DAY));
+            @SuppressWarnings("unchecked")
+            List<Entity> dailyProgresses = (List<Entity>) progressForDay.getField(ProgressForDayFields.DAILY_PROGRESS);
+            for (Entity dailyProgress : dailyProgresses) {
+                day.append(' ').append(((Entity) dailyProgress.getField(DailyProgressFields.SHIFT)).getId()).append(':')
+                        .append(dailyProgress.getField(DailyProgressFields.QUANTITY)).append('/')
+                        .append(dailyProgress.getField(DailyProgressFields.EFFICIENCY_TIME));
+            }
+            plan.add(day.toString());
+        }
+        return plan;
+    }
+
+    private Entity mockProductionPerShift(final String plannedQuantity, final DateTime startDate) {
+        Entity technology = mock(Entity.class);
+        given(technology.getDecimalField("standardPerformanceTechnology")).willReturn(NORM);
+
+        Entity order = mock(Entity.class);
+        given(order.getDateField(OrderFields.START_DATE)).willReturn(startDate.toDate());
+        given(order.getDecimalField(OrderFields.PLANNED_QUANTITY)).willReturn(new BigDecimal(plannedQuantity));
+        given(order.getBelongsToField(OrderFields.PRODUCTION_LINE)).willReturn(productionLine);
+        given(order.getBelongsToField(OrderFields.TECHNOLOGY)).willReturn(technology);
+
+        Entity productionPerShift = mock(Entity.class);
+        given(productionPerShift.getBelongsToField(ProductionPerShiftFields.ORDER)).willReturn(order);
+        return productionPerShift;
+    }
+
+    private Entity mockShift(final Long id, final String hours) {
+        Entity shift = mock(Entity.class);
+        given(shift.getId()).willReturn(id);
+        given(shift.copy()).willReturn(shift);
+        given(shift.getBooleanField(anyString())).willReturn(true);
+        given(shift.getStringField(anyString())).willReturn(hours);
+        given(shift.getHasManyField(ShiftFields.TIMETABLE_EXCEPTIONS)).willReturn(
+                EntityListMock.create(Collections.<Entity> emptyList()));
+        return shift;
+    }
+
+    private void inject(final Class<?> type, final String fieldName, final Object value) {
+        Field field = ReflectionUtils.findField(type, fieldName);
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, ppsTechNormAlgorithmService, value);
+    }
+
+    private Entity createEntity() {
+        Map<String, Object> fields = Maps.newHashMap();
+        return (Entity) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Entity.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "setField":
+                            return fields.put((String) args[0], args[1]);
+                        case "getField":
+                            return fields.get(args[0]);
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+}
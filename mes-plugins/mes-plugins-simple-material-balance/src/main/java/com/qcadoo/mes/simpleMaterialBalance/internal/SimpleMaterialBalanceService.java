@@ -36,6 +36,7 @@ import org.springframework.util.StringUtils;
 
 import com.lowagie.text.DocumentException;
 import com.qcadoo.localization.api.utils.DateUtils;
+import com.qcadoo.mes.basic.print.xls.XlsxReportPrintService;
 import com.qcadoo.mes.simpleMaterialBalance.internal.constants.SimpleMaterialBalanceConstants;
 import com.qcadoo.mes.simpleMaterialBalance.internal.print.SimpleMaterialBalancePdfService;
 import com.qcadoo.mes.simpleMaterialBalance.internal.print.SimpleMaterialBalanceXlsService;
@@ -43,7 +44,6 @@ import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.file.FileService;
-import com.qcadoo.report.api.ReportService;
 import com.qcadoo.security.api.SecurityService;
 import com.qcadoo.view.api.ComponentState;
 import com.qcadoo.view.api.ComponentState.MessageType;
@@ -84,7 +84,7 @@ public class SimpleMaterialBalanceService {
     private FileService fileService;
 
     @Autowired
-    private ReportService reportService;
+    private XlsxReportPrintService xlsxReportPrintService;
 
     public boolean clearGeneratedOnCopy(final DataDefinition dataDefinition, final Entity entity) {
         entity.setField(L_DATE, null);
@@ -237,7 +237,7 @@ public class SimpleMaterialBalanceService {
 
     public void printSimpleMaterialBalance(final ViewDefinitionState viewDefinitionState, final ComponentState state,
             final String[] args) {
-        reportService.printGeneratedReport(viewDefinitionState, state, new String[] { args[0],
+        xlsxReportPrintService.printGeneratedReport(viewDefinitionState, state, new String[] { args[0],
                 SimpleMaterialBalanceConstants.PLUGIN_IDENTIFIER, SimpleMaterialBalanceConstants.MODEL_SIMPLE_MATERIAL_BALANCE });
     }
 
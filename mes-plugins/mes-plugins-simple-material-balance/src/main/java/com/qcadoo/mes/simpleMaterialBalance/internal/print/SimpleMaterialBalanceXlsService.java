@@ -29,24 +29,25 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
-import org.apache.poi.hssf.usermodel.HSSFCell;
-import org.apache.poi.hssf.usermodel.HSSFRow;
-import org.apache.poi.hssf.usermodel.HSSFSheet;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.Sets;
+import com.google.common.collect.Table;
 import com.qcadoo.localization.api.TranslationService;
+import com.qcadoo.mes.basic.print.xls.StreamingXlsxReportService;
+import com.qcadoo.mes.basic.print.xls.XlsRowWriter;
+import com.qcadoo.mes.basic.print.xls.XlsStyle;
 import com.qcadoo.mes.materialFlow.MaterialFlowService;
 import com.qcadoo.mes.technologies.ProductQuantitiesService;
 import com.qcadoo.mes.technologies.constants.MrpAlgorithm;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
-import com.qcadoo.report.api.xls.XlsDocumentService;
-import com.qcadoo.report.api.xls.XlsHelper;
 
 @Service
-public final class SimpleMaterialBalanceXlsService extends XlsDocumentService {
+public final class SimpleMaterialBalanceXlsService extends StreamingXlsxReportService {
 
     private static final String L_NUMBER = "number";
 
@@ -74,40 +75,24 @@ public final class SimpleMaterialBalanceXlsService extends XlsDocumentService {
     @Autowired
     private TranslationService translationService;
 
-    @Autowired
-    private XlsHelper xlsHelper;
-
     @Override
-    protected void addHeader(final HSSFSheet sheet, final Locale locale, final Entity entity) {
-        HSSFRow header = sheet.createRow(0);
-        HSSFCell cell0 = header.createCell(0);
-        cell0.setCellValue(translationService.translate("simpleMaterialBalance.simpleMaterialBalance.report.columnHeader.number",
-                locale));
-        xlsHelper.setCellStyle(sheet, cell0);
-        HSSFCell cell1 = header.createCell(1);
-        cell1.setCellValue(translationService.translate("simpleMaterialBalance.simpleMaterialBalance.report.columnHeader.name",
-                locale));
-        xlsHelper.setCellStyle(sheet, cell1);
-        HSSFCell cell2 = header.createCell(2);
-        cell2.setCellValue(translationService.translate("basic.product.unit.label", locale));
-        xlsHelper.setCellStyle(sheet, cell2);
-        HSSFCell cell3 = header.createCell(3);
-        cell3.setCellValue(translationService.translate("simpleMaterialBalance.simpleMaterialBalance.report.columnHeader.needed",
-                locale));
-        xlsHelper.setCellStyle(sheet, cell3);
-        HSSFCell cell4 = header.createCell(4);
-        cell4.setCellValue(translationService.translate(
-                "simpleMaterialBalance.simpleMaterialBalance.report.columnHeader.inLocation", locale));
-        xlsHelper.setCellStyle(sheet, cell4);
-        HSSFCell cell5 = header.createCell(5);
-        cell5.setCellValue(translationService.translate(
-                "simpleMaterialBalance.simpleMaterialBalance.report.columnHeader.balance", locale));
-        xlsHelper.setCellStyle(sheet, cell5);
+    protected void buildSheet(final XlsRowWriter writer, final Entity simpleMaterialBalance, final Locale locale) {
+        addHeader(writer, locale);
+        addSeries(writer, simpleMaterialBalance);
     }
 
-    @Override
-    protected void addSeries(final HSSFSheet sheet, final Entity simpleMaterialBalance) {
-        int rowNum = 1;
+    private void addHeader(final XlsRowWriter writer, final Locale locale) {
+        writer.writeRow(XlsStyle.HEADER,
+                translationService.translate("simpleMaterialBalance.simpleMaterialBalance.report.columnHeader.number", locale),
+                translationService.translate("simpleMaterialBalance.simpleMaterialBalance.report.columnHeader.name", locale),
+                translationService.translate("basic.product.unit.label", locale),
+                translationService.translate("simpleMaterialBalance.simpleMaterialBalance.report.columnHeader.needed", locale),
+                translationService.translate("simpleMaterialBalance.simpleMaterialBalance.report.columnHeader.inLocation",
+                        locale),
+                translationService.translate("simpleMaterialBalance.simpleMaterialBalance.report.columnHeader.balance", locale));
+    }
+
+    private void addSeries(final XlsRowWriter writer, final Entity simpleMaterialBalance) {
         List<Entity> simpleMaterialBalanceOrdersComponents = simpleMaterialBalance
                 .getHasManyField(L_SIMPLE_MATERIAL_BALANCE_ORDERS_COMPONENTS);
         MrpAlgorithm mrpAlgorithm = MrpAlgorithm.parseString(simpleMaterialBalance.getStringField("mrpAlgorithm"));
@@ -118,32 +103,35 @@ public final class SimpleMaterialBalanceXlsService extends XlsDocumentService {
         List<Entity> simpleMaterialBalanceLocationComponents = simpleMaterialBalance
                 .getHasManyField(L_SIMPLE_MATERIAL_BALANCE_LOCATIONS_COMPONENTS);
 
+        Set<Long> locationIds = Sets.newHashSet();
+
+        for (Entity simpleMaterialBalanceLocationComponent : simpleMaterialBalanceLocationComponents) {
+            locationIds.add(simpleMaterialBalanceLocationComponent.getBelongsToField(L_LOCATION).getId());
+        }
+
+        Table<Long, Long, BigDecimal> quantitiesInLocations = materialFlowService.calculateShouldBeInLocations(locationIds,
+                neededProductQuantities.keySet(), (Date) simpleMaterialBalance.getField(L_DATE));
+
         for (Entry<Long, BigDecimal> neededProductQuantity : neededProductQuantities.entrySet()) {
             Entity product = productQuantitiesService.getProduct(neededProductQuantity.getKey());
 
-            HSSFRow row = sheet.createRow(rowNum++);
-            row.createCell(0).setCellValue(product.getField(L_NUMBER).toString());
-            row.createCell(1).setCellValue(product.getField(L_NAME).toString());
-            row.createCell(2).setCellValue(product.getField(L_UNIT).toString());
-            row.createCell(3).setCellValue(numberService.format(neededProductQuantity.getValue()));
             BigDecimal available = BigDecimal.ZERO;
             for (Entity simpleMaterialBalanceLocationComponent : simpleMaterialBalanceLocationComponents) {
-                available = available.add(materialFlowService.calculateShouldBeInLocation(simpleMaterialBalanceLocationComponent
-                        .getBelongsToField(L_LOCATION).getId(), product.getId(), (Date) simpleMaterialBalance.getField(L_DATE)),
-                        numberService.getMathContext());
+                BigDecimal quantity = quantitiesInLocations.get(
+                        simpleMaterialBalanceLocationComponent.getBelongsToField(L_LOCATION).getId(), product.getId());
+
+                if (quantity != null) {
+                    available = available.add(quantity, numberService.getMathContext());
+                }
             }
-            row.createCell(4).setCellValue(numberService.format(available));
-            row.createCell(5)
-                    .setCellValue(
-                            numberService.format(available.subtract(neededProductQuantity.getValue(),
-                                    numberService.getMathContext())));
+
+            writer.writeRow(XlsStyle.DEFAULT, product.getField(L_NUMBER).toString(), product.getField(L_NAME).toString(),
+                    product.getField(L_UNIT).toString(), numberService.format(neededProductQuantity.getValue()),
+                    numberService.format(available),
+                    numberService.format(available.subtract(neededProductQuantity.getValue(), numberService.getMathContext())));
         }
-        sheet.autoSizeColumn((short) 0);
-        sheet.autoSizeColumn((short) 1);
-        sheet.autoSizeColumn((short) 2);
-        sheet.autoSizeColumn((short) 3);
-        sheet.autoSizeColumn((short) 4);
-        sheet.autoSizeColumn((short) 5);
+
+        writer.setColumnWidths(5000, 10000, 2500, 4000, 4000, 4000);
     }
 
     @Override
@@ -8,7 +8,10 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import org.apache.log4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,10 +21,14 @@ import org.springframework.context.annotation.Scope;
 import org.springframework.context.annotation.ScopedProxyMode;
 import org.springframework.core.annotation.AnnotationAwareOrderComparator;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.UnexpectedRollbackException;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.qcadoo.mes.basic.ShiftsService;
 import com.qcadoo.mes.states.StateChangeEntityDescriber;
@@ -29,6 +36,7 @@ import com.qcadoo.mes.states.StateEnum;
 import com.qcadoo.mes.states.constants.StateChangeStatus;
 import com.qcadoo.mes.states.exception.AnotherChangeInProgressException;
 import com.qcadoo.mes.states.exception.StateTransitionNotAlloweException;
+import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.exception.EntityRuntimeException;
 import com.qcadoo.model.api.search.SearchCriteriaBuilder;
@@ -50,6 +58,8 @@ public class StateExecutorService {
 
     private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(StateExecutorService.class);
 
+    public static final int DEFAULT_CHUNK_SIZE = 50;
+
     @Autowired
     private ApplicationContext applicationContext;
 
@@ -61,20 +71,21 @@ public class StateExecutorService {
 
     private ComponentMessagesHolder componentMessagesHolder;
 
+    private List<Consumer<ComponentMessagesHolder>> bufferedMessages;
+
     private static final Logger LOGGER = Logger.getLogger(StateExecutorService.class);
 
+    private static final String L_NUMBER = "number";
+
     public <M extends StateService> void changeState(Class<M> serviceMarker, final ViewDefinitionState view, String[] args) {
         componentMessagesHolder = view;
 
         Optional<GridComponent> maybeGridComponent = view.tryFindComponentByReference("grid");
         if (maybeGridComponent.isPresent()) {
-            maybeGridComponent.get().getSelectedEntities().forEach(entity -> {
-                entity = entity.getDataDefinition().getMasterModelEntity(entity.getId());
-                entity = changeState(serviceMarker, entity, args[0]);
-
-                copyMessages(entity);
-            });
+            List<Entity> entities = Lists.newArrayList(maybeGridComponent.get().getSelectedEntities());
+            Map<Long, StateChangeStatus> outcomes = changeStates(serviceMarker, entities, args[0], DEFAULT_CHUNK_SIZE);
 
+            addFailedEntitiesMessage(entities, outcomes);
         } else {
             Optional<FormComponent> maybeForm = view.tryFindComponentByReference("form");
             if (maybeForm.isPresent()) {
@@ -88,17 +99,130 @@ public class StateExecutorService {
         }
     }
 
+    private void addFailedEntitiesMessage(final List<Entity> entities, final Map<Long, StateChangeStatus> outcomes) {
+        String failedEntities = entities.stream()
+                .filter(entity -> !StateChangeStatus.SUCCESSFUL.equals(outcomes.get(entity.getId())))
+                .map(this::getEntityLabel).collect(Collectors.joining(", "));
+
+        if (!failedEntities.isEmpty()) {
+            componentMessagesHolder.addMessage("states.messages.change.failure.entities", ComponentState.MessageType.FAILURE,
+                    false, failedEntities);
+        }
+    }
+
+    private String getEntityLabel(final Entity entity) {
+        Object number = entity.getField(L_NUMBER);
+
+        return number == null ? String.valueOf(entity.getId()) : number.toString();
+    }
+
     public <M extends StateService> Entity changeState(Class<M> serviceMarker, Entity entity, String targetState) {
         List<M> services = lookupChangeStateServices(serviceMarker);
         StateChangeEntityDescriber describer = services.stream().findFirst().get().getChangeEntityDescriber();
+        Entity shift = shiftsService.getShiftFromDateWithTime(new Date());
+
+        return changeState(services, describer, shift, entity, targetState, hasUnfinishedStateChange(describer, entity))
+                .getEntity();
+    }
+
+    /**
+     * Changes state of given entities (or their master model entities), the same way as it's done for single entity. Services,
+     * describer and selected entities are loaded once, state changes are applied in chunks of given size, each chunk in its own
+     * transaction. When any entity of chunk fails, chunk is rolled back and its entities are changed one by one, so that
+     * outcome and messages of each entity stay the same as in case of changing them separately. Unfinished state changes of
+     * owners are checked for each chunk, at the time it's changed.
+     * 
+     * @return state change status of each entity, by entity id, in order of given entities
+     */
+    public <M extends StateService> Map<Long, StateChangeStatus> changeStates(final Class<M> serviceMarker,
+            final List<Entity> entities, final String targetState, final int chunkSize) {
+        Preconditions.checkArgument(chunkSize > 0, "Chunk size has to be positive");
+
+        Map<Long, StateChangeStatus> outcomes = Maps.newLinkedHashMap();
+
+        if (entities.isEmpty()) {
+            return outcomes;
+        }
+
+        List<M> services = lookupChangeStateServices(serviceMarker);
+        StateChangeEntityDescriber describer = services.stream().findFirst().get().getChangeEntityDescriber();
+        Entity shift = shiftsService.getShiftFromDateWithTime(new Date());
+
+        List<Entity> masterModelEntities = getMasterModelEntities(entities);
+
+        for (List<Entity> chunk : Lists.partition(masterModelEntities, chunkSize)) {
+            Map<Long, StateChangeStatus> chunkOutcomes = Maps.newLinkedHashMap();
+            Set<Long> ownersWithUnfinishedStateChange = getOwnersWithUnfinishedStateChange(describer, chunk);
+
+            bufferedMessages = Lists.newArrayList();
+
+            boolean chunkChanged = false;
+
+            try {
+                changeStatesInTransaction(services, describer, shift, chunk, targetState, ownersWithUnfinishedStateChange,
+                        chunkOutcomes);
+
+                chunkChanged = true;
+            } catch (ChunkRollbackException | UnexpectedRollbackException e) {
+                LOG.debug("State change of chunk rolled back, entities will be changed one by one", e);
+            } finally {
+                List<Consumer<ComponentMessagesHolder>> chunkMessages = bufferedMessages;
+
+                bufferedMessages = null;
+
+                if (chunkChanged) {
+                    chunkMessages.forEach(this::addMessage);
+                }
+            }
+
+            if (!chunkChanged) {
+                chunkOutcomes.clear();
+
+                for (Entity entity : chunk) {
+                    Entity reloadedEntity = entity.getDataDefinition().get(entity.getId());
+
+                    StateChangeResult result = changeState(services, describer, shift, reloadedEntity, targetState,
+                            hasUnfinishedStateChange(describer, reloadedEntity));
+
+                    copyMessages(result.getEntity());
+                    chunkOutcomes.put(entity.getId(), result.getStatus());
+                }
+            }
+
+            outcomes.putAll(chunkOutcomes);
+        }
+
+        return outcomes;
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    private <M extends StateService> void changeStatesInTransaction(final List<M> services,
+            final StateChangeEntityDescriber describer, final Entity shift, final List<Entity> chunk, final String targetState,
+            final Set<Long> ownersWithUnfinishedStateChange, final Map<Long, StateChangeStatus> outcomes) {
+        for (Entity entity : chunk) {
+            StateChangeResult result = changeState(services, describer, shift, entity, targetState,
+                    ownersWithUnfinishedStateChange.contains(entity.getId()));
+
+            if (!StateChangeStatus.SUCCESSFUL.equals(result.getStatus())) {
+                throw new ChunkRollbackException();
+            }
+
+            copyMessages(result.getEntity());
+            outcomes.put(entity.getId(), result.getStatus());
+        }
+    }
+
+    private <M extends StateService> StateChangeResult changeState(final List<M> services,
+            final StateChangeEntityDescriber describer, final Entity shift, Entity entity, final String targetState,
+            final boolean anotherChangeInProgress) {
         String sourceState = entity.getStringField(describer.getOwnerStateFieldName());
 
-        Entity stateChangeEntity = buildStateChangeEntity(describer, entity, sourceState, targetState);
+        Entity stateChangeEntity = buildStateChangeEntity(describer, entity, sourceState, targetState, shift);
 
         try {
 
             stateChangeEntity = saveStateChangeContext(entity, stateChangeEntity, describer, sourceState, targetState,
-                    StateChangeStatus.IN_PROGRESS);
+                    StateChangeStatus.IN_PROGRESS, anotherChangeInProgress);
 
             entity = performChangeState(services, entity, stateChangeEntity, describer);
 
@@ -106,16 +230,16 @@ public class StateExecutorService {
                 copyMessages(entity);
                 saveStateChangeEntity(stateChangeEntity, StateChangeStatus.SUCCESSFUL);
                 message("states.messages.change.successful", ComponentState.MessageType.SUCCESS);
-                LOG.info(String.format("Change state successful. Entity name : %S id : %d. Target state : %S", entity
-                        .getDataDefinition().getName(), entity.getId(), stateChangeEntity.getStringField(describer
-                        .getTargetStateFieldName())));
+                logStateChange("Change state successful", entity,
+                        stateChangeEntity.getStringField(describer.getTargetStateFieldName()));
+
+                return new StateChangeResult(entity, StateChangeStatus.SUCCESSFUL);
             } else {
                 saveStateChangeEntity(stateChangeEntity, StateChangeStatus.FAILURE);
                 entity = rollbackStateChange(entity, sourceState);
                 message("states.messages.change.failure", ComponentState.MessageType.FAILURE);
-                LOG.info(String.format("Change state failure. Entity name : %S id : %d. Target state : %S", entity
-                        .getDataDefinition().getName(), entity.getId(), stateChangeEntity.getStringField(describer
-                        .getTargetStateFieldName())));
+                logStateChange("Change state failure", entity,
+                        stateChangeEntity.getStringField(describer.getTargetStateFieldName()));
             }
 
         } catch (EntityRuntimeException entityException) {
@@ -123,47 +247,64 @@ public class StateExecutorService {
             entity = rollbackStateChange(entity, sourceState);
             saveStateChangeEntity(stateChangeEntity, StateChangeStatus.FAILURE);
             message("states.messages.change.failure", ComponentState.MessageType.FAILURE);
-            return entity;
 
         } catch (AnotherChangeInProgressException e) {
             entity = rollbackStateChange(entity, sourceState);
             saveStateChangeEntity(stateChangeEntity, StateChangeStatus.FAILURE);
             message("states.messages.change.failure", ComponentState.MessageType.FAILURE);
             message("states.messages.change.failure.anotherChangeInProgress", ComponentState.MessageType.FAILURE);
-            LOG.info(String.format("Another state change in progress. Entity name : %S id : %d. Target state : %S", entity
-                    .getDataDefinition().getName(), entity.getId(), targetState));
+            logStateChange("Another state change in progress", entity, targetState);
         } catch (StateTransitionNotAlloweException e) {
             entity = rollbackStateChange(entity, sourceState);
             saveStateChangeEntity(stateChangeEntity, StateChangeStatus.FAILURE);
             message("states.messages.change.failure", ComponentState.MessageType.FAILURE);
             message("states.messages.change.failure.transitionNotAllowed", ComponentState.MessageType.FAILURE);
-            LOG.info(String.format("State change - transition not allowed. Entity name : %S id : %d. Target state : %S", entity
-                    .getDataDefinition().getName(), entity.getId(), targetState));
+            logStateChange("State change - transition not allowed", entity, targetState);
         } catch (Exception exception) {
             entity = rollbackStateChange(entity, sourceState);
             saveStateChangeEntity(stateChangeEntity, StateChangeStatus.FAILURE);
             message("states.messages.change.failure", ComponentState.MessageType.FAILURE);
             message("states.messages.change.failure.internalServerError", ComponentState.MessageType.FAILURE);
-            LOG.info(String.format("State change exception. Entity name : %S id : %d. Target state : %S", entity
-                    .getDataDefinition().getName(), entity.getId(), targetState));
+            logStateChange("State change exception", entity, targetState);
             LOG.warn("Can't perform state change", exception);
         }
 
-        return entity;
+        return new StateChangeResult(entity, StateChangeStatus.FAILURE);
+    }
+
+    private void logStateChange(final String message, final Entity entity, final String targetState) {
+        if (LOG.isInfoEnabled()) {
+            LOG.info(String.format("%s. Entity name : %S id : %d. Target state : %S", message, entity.getDataDefinition()
+                    .getName(), entity.getId(), targetState));
+        }
     }
 
     private Entity saveStateChangeContext(Entity entity, Entity stateChangeEntity, StateChangeEntityDescriber describer,
-            String _sourceState, String _targetState, StateChangeStatus status) {
+            String _sourceState, String _targetState, StateChangeStatus status, boolean anotherChangeInProgress) {
         final StateEnum sourceState = describer.parseStateEnum(_sourceState);
         final StateEnum targetState = describer.parseStateEnum(_targetState);
         if (sourceState != null && !sourceState.canChangeTo(targetState)) {
             throw new StateTransitionNotAlloweException(sourceState, targetState);
         }
-        checkForUnfinishedStateChange(describer, entity);
+        if (anotherChangeInProgress) {
+            throw new AnotherChangeInProgressException();
+        }
         stateChangeEntity = saveStateChangeEntity(stateChangeEntity, status);
         return stateChangeEntity;
     }
 
+    private List<Entity> getMasterModelEntities(final List<Entity> entities) {
+        Entity firstEntity = entities.get(0);
+        DataDefinition masterModelDD = firstEntity.getDataDefinition().getMasterModelEntity(firstEntity.getId())
+                .getDataDefinition();
+
+        List<Long> ids = entities.stream().map(Entity::getId).collect(Collectors.toList());
+        Map<Long, Entity> masterModelEntitiesById = masterModelDD.find().add(SearchRestrictions.in("id", ids)).list()
+                .getEntities().stream().collect(Collectors.toMap(Entity::getId, entity -> entity));
+
+        return ids.stream().map(masterModelEntitiesById::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
     @Transactional
     private <M extends StateService> Entity performChangeState(List<M> services, Entity entity, Entity stateChangeEntity,
             StateChangeEntityDescriber describer) {
@@ -206,8 +347,13 @@ public class StateExecutorService {
 
     private Entity buildStateChangeEntity(StateChangeEntityDescriber describer, Entity owner, String sourceState,
             String targetState) {
+        return buildStateChangeEntity(describer, owner, sourceState, targetState,
+                shiftsService.getShiftFromDateWithTime(new Date()));
+    }
+
+    private Entity buildStateChangeEntity(StateChangeEntityDescriber describer, Entity owner, String sourceState,
+            String targetState, Entity shift) {
         final Entity stateChangeEntity = describer.getDataDefinition().create();
-        final Entity shift = shiftsService.getShiftFromDateWithTime(new Date());
 
         stateChangeEntity.setField(describer.getDateTimeFieldName(), new Date());
         stateChangeEntity.setField(describer.getSourceStateFieldName(), sourceState);
@@ -322,14 +468,14 @@ public class StateExecutorService {
         }
 
         for (ErrorMessage errorMessage : entity.getGlobalErrors()) {
-            componentMessagesHolder.addMessage(errorMessage);
+            addMessage(messagesHolder -> messagesHolder.addMessage(errorMessage));
         }
         for (ErrorMessage errorMessage : entity.getErrors().values()) {
-            componentMessagesHolder.addMessage(errorMessage);
+            addMessage(messagesHolder -> messagesHolder.addMessage(errorMessage));
         }
 
         for (GlobalMessage globalMessage : entity.getGlobalMessages()) {
-            componentMessagesHolder.addMessage(globalMessage);
+            addMessage(messagesHolder -> messagesHolder.addMessage(globalMessage));
         }
     }
 
@@ -351,11 +497,19 @@ public class StateExecutorService {
 
     private void message(String msg, ComponentState.MessageType messageType) {
         if (componentMessagesHolder != null) {
-            componentMessagesHolder.addMessage(msg, messageType);
+            addMessage(messagesHolder -> messagesHolder.addMessage(msg, messageType));
+        }
+    }
+
+    private void addMessage(final Consumer<ComponentMessagesHolder> message) {
+        if (bufferedMessages == null) {
+            message.accept(componentMessagesHolder);
+        } else {
+            bufferedMessages.add(message);
         }
     }
 
-    private void checkForUnfinishedStateChange(final StateChangeEntityDescriber describer, final Entity owner) {
+    private boolean hasUnfinishedStateChange(final StateChangeEntityDescriber describer, final Entity owner) {
         final String ownerFieldName = describer.getOwnerFieldName();
         final String statusFieldName = describer.getStatusFieldName();
         final Set<String> unfinishedStatuses = Sets.newHashSet(IN_PROGRESS.getStringValue(), PAUSED.getStringValue());
@@ -364,8 +518,56 @@ public class StateExecutorService {
         searchCriteria.createAlias(ownerFieldName, ownerFieldName);
         searchCriteria.add(SearchRestrictions.eq(ownerFieldName + ".id", owner.getId()));
         searchCriteria.add(SearchRestrictions.in(statusFieldName, unfinishedStatuses));
-        if (searchCriteria.list().getTotalNumberOfEntities() > 0) {
-            throw new AnotherChangeInProgressException();
+        return searchCriteria.list().getTotalNumberOfEntities() > 0;
+    }
+
+    private Set<Long> getOwnersWithUnfinishedStateChange(final StateChangeEntityDescriber describer, final List<Entity> owners) {
+        final String ownerFieldName = describer.getOwnerFieldName();
+        final String statusFieldName = describer.getStatusFieldName();
+        final Set<String> unfinishedStatuses = Sets.newHashSet(IN_PROGRESS.getStringValue(), PAUSED.getStringValue());
+
+        if (owners.isEmpty()) {
+            return Sets.newHashSet();
         }
+
+        final SearchCriteriaBuilder searchCriteria = describer.getDataDefinition().find();
+        searchCriteria.createAlias(ownerFieldName, ownerFieldName);
+        searchCriteria.add(SearchRestrictions.in(ownerFieldName + ".id",
+                owners.stream().map(Entity::getId).collect(Collectors.toList())));
+        searchCriteria.add(SearchRestrictions.in(statusFieldName, unfinishedStatuses));
+        return searchCriteria.list().getEntities().stream()
+                .map(stateChangeEntity -> stateChangeEntity.getBelongsToField(ownerFieldName).getId())
+                .collect(Collectors.toSet());
     }
+
+    /**
+     * Thrown to roll back transaction of chunk, when state of any of its entities can't be changed.
+     */
+    private static final class ChunkRollbackException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+    }
+
+    private static final class StateChangeResult {
+
+        private final Entity entity;
+
+        private final StateChangeStatus status;
+
+        private StateChangeResult(final Entity entity, final StateChangeStatus status) {
+            this.entity = entity;
+            this.status = status;
+        }
+
+        public Entity getEntity() {
+            return entity;
+        }
+
+        public StateChangeStatus getStatus() {
+            return status;
+        }
+
+    }
+
 }
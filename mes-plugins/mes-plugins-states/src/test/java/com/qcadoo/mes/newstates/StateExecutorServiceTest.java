@@ -0,0 +1,290 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.newstates;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.basic.ShiftsService;
+import com.qcadoo.mes.states.StateChangeEntityDescriber;
+import com.qcadoo.mes.states.TestState;
+import com.qcadoo.mes.states.constants.StateChangeStatus;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.model.api.search.SearchResult;
+import com.qcadoo.security.api.SecurityService;
+import com.qcadoo.view.api.ComponentState;
+import com.qcadoo.view.api.ViewDefinitionState;
+import com.qcadoo.view.api.components.GridComponent;
+
+public class StateExecutorServiceTest {
+
+    private static final String L_STATE = "state";
+
+    private static final String L_NUMBER = "number";
+
+    interface TestStateService extends StateService {
+    }
+
+    private StateExecutorService stateExecutorService;
+
+    @Mock
+    private ApplicationContext applicationContext;
+
+    @Mock
+    private ShiftsService shiftsService;
+
+    @Mock
+    private SecurityService securityService;
+
+    @Mock
+    private TestStateService stateService;
+
+    @Mock
+    private StateChangeEntityDescriber describer;
+
+    @Mock
+    private DataDefinition ownerDD;
+
+    @Mock
+    private DataDefinition stateChangeDD;
+
+    @Mock
+    private SearchCriteriaBuilder ownerSearchCriteriaBuilder;
+
+    @Mock
+    private SearchCriteriaBuilder stateChangeSearchCriteriaBuilder;
+
+    @Mock
+    private SearchResult ownerSearchResult;
+
+    @Mock
+    private SearchResult stateChangeSearchResult;
+
+    private final Set<Long> invalidOwnerIds = Sets.newHashSet();
+
+    private final Map<Long, Entity> reloadedOwners = Maps.newHashMap();
+
+    @Before
+    public final void init() {
+        MockitoAnnotations.initMocks(this);
+
+        stateExecutorService = new StateExecutorService();
+        ReflectionTestUtils.setField(stateExecutorService, "applicationContext", applicationContext);
+        ReflectionTestUtils.setField(stateExecutorService, "shiftsService", shiftsService);
+        ReflectionTestUtils.setField(stateExecutorService, "securityService", securityService);
+
+        given(applicationContext.getBeansOfType(TestStateService.class)).willReturn(
+                ImmutableMap.of("testStateService", stateService));
+        given(stateService.getChangeEntityDescriber()).willReturn(describer);
+        given(stateService.onValidate(any(Entity.class), anyString(), anyString(), any(Entity.class),
+                any(StateChangeEntityDescriber.class))).willAnswer(invocation -> invocation.getArguments()[0]);
+        given(stateService.onBeforeSave(any(Entity.class), anyString(), anyString(), any(Entity.class),
+                any(StateChangeEntityDescriber.class))).willAnswer(invocation -> invocation.getArguments()[0]);
+        given(stateService.onAfterSave(any(Entity.class), anyString(), anyString(), any(Entity.class),
+                any(StateChangeEntityDescriber.class))).willAnswer(invocation -> invocation.getArguments()[0]);
+
+        given(describer.getDataDefinition()).willReturn(stateChangeDD);
+        given(describer.getOwnerFieldName()).willReturn("owner");
+        given(describer.getOwnerStateFieldName()).willReturn(L_STATE);
+        given(describer.getSourceStateFieldName()).willReturn("sourceState");
+        given(describer.getTargetStateFieldName()).willReturn("targetState");
+        given(describer.getStatusFieldName()).willReturn("status");
+        given(describer.parseStateEnum(anyString())).willAnswer(
+                invocation -> TestState.parseString((String) invocation.getArguments()[0]));
+
+        given(stateChangeDD.create()).willAnswer(invocation -> mockEntity(null, stateChangeDD));
+        given(stateChangeDD.save(any(Entity.class))).willAnswer(invocation -> invocation.getArguments()[0]);
+        given(stateChangeDD.find()).willReturn(stateChangeSearchCriteriaBuilder);
+        given(stateChangeSearchCriteriaBuilder.createAlias(anyString(), anyString())).willReturn(
+                stateChangeSearchCriteriaBuilder);
+        given(stateChangeSearchCriteriaBuilder.add(any(SearchCriterion.class))).willReturn(stateChangeSearchCriteriaBuilder);
+        given(stateChangeSearchCriteriaBuilder.list()).willReturn(stateChangeSearchResult);
+        given(stateChangeSearchResult.getEntities()).willReturn(Collections.<Entity> emptyList());
+
+        given(ownerDD.save(any(Entity.class))).willAnswer(invocation -> invocation.getArguments()[0]);
+        given(ownerDD.find()).willReturn(ownerSearchCriteriaBuilder);
+        given(ownerSearchCriteriaBuilder.add(any(SearchCriterion.class))).willReturn(ownerSearchCriteriaBuilder);
+        given(ownerSearchCriteriaBuilder.list()).willReturn(ownerSearchResult);
+    }
+
+    private Entity mockEntity(final Long id, final DataDefinition dataDefinition) {
+        Entity entity = mock(Entity.class);
+        Map<String, Object> fields = Maps.newHashMap();
+
+        given(entity.getId()).willReturn(id);
+        given(entity.getDataDefinition()).willReturn(dataDefinition);
+        given(entity.getField(anyString())).willAnswer(invocation -> fields.get(invocation.getArguments()[0]));
+        given(entity.getStringField(anyString())).willAnswer(invocation -> (String) fields.get(invocation.getArguments()[0]));
+        given(entity.isValid()).willAnswer(invocation -> !invalidOwnerIds.contains(id));
+        willAnswer(invocation -> fields.put((String) invocation.getArguments()[0], invocation.getArguments()[1])).given(entity)
+                .setField(anyString(), any());
+
+        return entity;
+    }
+
+    private Entity mockOwner(final Long id) {
+        Entity owner = mockEntity(id, ownerDD);
+
+        owner.setField(L_STATE, TestState.DRAFT.getStringValue());
+        owner.setField(L_NUMBER, "O" + id);
+
+        return owner;
+    }
+
+    private List<Entity> mockOwners(final Long... ids) {
+        List<Entity> owners = Lists.newArrayList();
+
+        for (Long id : ids) {
+            Entity owner = mockOwner(id);
+            Entity reloadedOwner = mockOwner(id);
+
+            given(ownerDD.get(id)).willReturn(reloadedOwner);
+            reloadedOwners.put(id, reloadedOwner);
+            owners.add(owner);
+        }
+
+        given(ownerDD.getMasterModelEntity(anyLong())).willReturn(owners.get(0));
+        given(ownerSearchResult.getEntities()).willReturn(owners);
+
+        return owners;
+    }
+
+    private Map<Long, StateChangeStatus> changeStates(final List<Entity> owners, final int chunkSize) {
+        return stateExecutorService.changeStates(TestStateService.class, owners, TestState.ACCEPTED.getStringValue(),
+                chunkSize);
+    }
+
+    @Test
+    public void shouldChangeStatesOfAllEntitiesOfChunkInItsTransaction() {
+        // given
+        List<Entity> owners = mockOwners(1L, 2L, 3L);
+
+        // when
+        Map<Long, StateChangeStatus> outcomes = changeStates(owners, 3);
+
+        // then
+        assertEquals(ImmutableMap.of(1L, StateChangeStatus.SUCCESSFUL, 2L, StateChangeStatus.SUCCESSFUL, 3L,
+                StateChangeStatus.SUCCESSFUL), outcomes);
+        assertEquals(TestState.ACCEPTED.getStringValue(), owners.get(1).getStringField(L_STATE));
+        verify(ownerDD, never()).get(anyLong());
+    }
+
+    @Test
+    public void shouldRollBackChunkAndChangeItsEntitiesOneByOneWhenAnyEntityFails() {
+        // given
+        List<Entity> owners = mockOwners(1L, 2L, 3L);
+        invalidOwnerIds.add(2L);
+
+        // when
+        Map<Long, StateChangeStatus> outcomes = changeStates(owners, 3);
+
+        // then
+        assertEquals(ImmutableMap.of(1L, StateChangeStatus.SUCCESSFUL, 2L, StateChangeStatus.FAILURE, 3L,
+                StateChangeStatus.SUCCESSFUL), outcomes);
+        verify(ownerDD).get(1L);
+        verify(ownerDD).get(2L);
+        verify(ownerDD).get(3L);
+        verify(ownerDD).save(owners.get(0));
+        verify(ownerDD).save(reloadedOwners.get(1L));
+        verify(ownerDD).save(reloadedOwners.get(3L));
+        verify(ownerDD, never()).save(owners.get(2));
+    }
+
+    @Test
+    public void shouldChangeSingleEntityChunkInItsTransaction() {
+        // given
+        List<Entity> owners = mockOwners(1L, 2L);
+        invalidOwnerIds.add(2L);
+
+        // when
+        Map<Long, StateChangeStatus> outcomes = changeStates(owners, 1);
+
+        // then
+        assertEquals(ImmutableMap.of(1L, StateChangeStatus.SUCCESSFUL, 2L, StateChangeStatus.FAILURE), outcomes);
+        verify(ownerDD, never()).get(1L);
+        verify(ownerDD).get(2L);
+    }
+
+    @Test
+    public void shouldCheckUnfinishedStateChangesForEachChunk() {
+        // given
+        List<Entity> owners = mockOwners(1L, 2L, 3L, 4L);
+
+        // when
+        changeStates(owners, 2);
+
+        // then
+        verify(stateChangeDD, times(2)).find();
+    }
+
+    @Test
+    public void shouldReportFailedEntitiesToView() {
+        // given
+        List<Entity> owners = mockOwners(1L, 2L, 3L);
+        invalidOwnerIds.add(2L);
+
+        ViewDefinitionState view = mock(ViewDefinitionState.class);
+        GridComponent grid = mock(GridComponent.class);
+
+        given(view.<GridComponent> tryFindComponentByReference("grid")).willReturn(Optional.of(grid));
+        given(grid.getSelectedEntities()).willReturn(owners);
+
+        // when
+        stateExecutorService.changeState(TestStateService.class, view, new String[] { TestState.ACCEPTED.getStringValue() });
+
+        // then
+        verify(view).addMessage(eq("states.messages.change.failure.entities"), eq(ComponentState.MessageType.FAILURE), eq(false),
+                eq("O2"));
+    }
+
+}
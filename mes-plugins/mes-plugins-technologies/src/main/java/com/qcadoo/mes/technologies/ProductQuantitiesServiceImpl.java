@@ -24,11 +24,16 @@
 package com.qcadoo.mes.technologies;
 
 import java.math.BigDecimal;
+import java.math.MathContext;
 import java.math.RoundingMode;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import javax.annotation.PreDestroy;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -48,6 +53,9 @@ import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
 import com.qcadoo.mes.technologies.dto.OperationProductComponentHolder;
 import com.qcadoo.mes.technologies.dto.OperationProductComponentWithQuantityContainer;
 import com.qcadoo.mes.technologies.dto.ProductQuantitiesHolder;
+import com.qcadoo.mes.technologies.dto.TechnologyProductQuantities;
+import com.qcadoo.mes.technologies.tree.CompiledTechnology;
+import com.qcadoo.mes.technologies.tree.CompiledTechnologyService;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
@@ -66,12 +74,24 @@ public class ProductQuantitiesServiceImpl implements ProductQuantitiesService {
 
     private static final String L_QUANTITY = "quantity";
 
+    private static final int EXPLOSION_PARALLELISM = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), 8));
+
+    private final ForkJoinPool explosionPool = new ForkJoinPool(EXPLOSION_PARALLELISM);
+
     @Autowired
     private NumberService numberService;
 
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private CompiledTechnologyService compiledTechnologyService;
+
+    @PreDestroy
+    public void shutdownExplosionPool() {
+        explosionPool.shutdownNow();
+    }
+
     @Override
     public ProductQuantitiesHolder getProductComponentQuantities(final Entity technology, final BigDecimal givenQuantity) {
         Map<Long, BigDecimal> operationRuns = Maps.newHashMap();
@@ -209,21 +229,228 @@ public class ProductQuantitiesServiceImpl implements ProductQuantitiesService {
             final Set<OperationProductComponentHolder> nonComponents) {
         OperationProductComponentWithQuantityContainer operationProductComponentWithQuantityContainer = new OperationProductComponentWithQuantityContainer();
 
-        EntityTree operationComponents = getOperationComponentsFromTechnology(technology);
-        Entity root = operationComponents.getRoot();
+        CompiledTechnology compiledTechnology = compiledTechnologyService.getCompiledTechnology(technology);
+        CompiledTechnology.Operation root = compiledTechnology.getRoot();
 
         if (root != null) {
-            preloadProductQuantitiesAndOperationRuns(operationComponents, operationProductComponentWithQuantityContainer,
+            preloadProductQuantitiesAndOperationRuns(compiledTechnology, operationProductComponentWithQuantityContainer,
                     operationRuns);
-            traverseProductQuantitiesAndOperationRuns(technology, givenQuantity, root, null,
-                    operationProductComponentWithQuantityContainer, nonComponents, operationRuns);
+            traverseProductQuantitiesAndOperationRuns(compiledTechnology, givenQuantity, root, null,
+                    operationProductComponentWithQuantityContainer, nonComponents, operationRuns, numberService.getMathContext());
         }
 
         return operationProductComponentWithQuantityContainer;
     }
 
-    private EntityTree getOperationComponentsFromTechnology(final Entity technology) {
-        return technology.getTreeField(TechnologyFields.OPERATION_COMPONENTS);
+    /**
+     * Explodes given technologies for given quantities, element by element. Technologies are compiled in the calling thread,
+     * distinct (technology, quantity) pairs are exploded once each, in parallel when there is more than one of them.
+     * 
+     * @return explosion results in order of given technologies, each of them in its own containers, so that results of equal
+     *         pairs can be changed independently
+     */
+    public List<TechnologyProductQuantities> getProductComponentWithQuantitiesForTechnologies(final List<Entity> technologies,
+            final List<BigDecimal> givenQuantities) {
+        MathContext mathContext = numberService.getMathContext();
+
+        Map<Long, CompiledTechnology> compiledTechnologies = Maps.newHashMap();
+        Map<Entry<Long, BigDecimal>, ForkJoinTask<TechnologyProductQuantities>> explosionsByKey = Maps.newHashMap();
+        List<ForkJoinTask<TechnologyProductQuantities>> explosions = Lists.newArrayListWithCapacity(technologies.size());
+        List<ForkJoinTask<TechnologyProductQuantities>> distinctExplosions = Lists.newArrayList();
+
+        for (int i = 0; i < technologies.size(); i++) {
+            Entity technology = technologies.get(i);
+            BigDecimal givenQuantity = givenQuantities.get(i);
+
+            Entry<Long, BigDecimal> key = null;
+            ForkJoinTask<TechnologyProductQuantities> explosion = null;
+
+            if (technology.getId() != null) {
+                // BigDecimal equality takes scale into account, so that results are identical for shared explosions
+                key = Maps.immutableEntry(technology.getId(), givenQuantity);
+                explosion = explosionsByKey.get(key);
+            }
+
+            if (explosion == null) {
+                CompiledTechnology compiledTechnology = getCompiledTechnology(compiledTechnologies, technology);
+
+                explosion = ForkJoinTask.adapt(() -> explodeTechnology(compiledTechnology, givenQuantity, mathContext));
+                distinctExplosions.add(explosion);
+
+                if (key != null) {
+                    explosionsByKey.put(key, explosion);
+                }
+            }
+
+            explosions.add(explosion);
+        }
+
+        if (distinctExplosions.size() > 1) {
+            for (ForkJoinTask<TechnologyProductQuantities> explosion : distinctExplosions) {
+                explosionPool.execute(explosion);
+            }
+        } else {
+            for (ForkJoinTask<TechnologyProductQuantities> explosion : distinctExplosions) {
+                explosion.invoke();
+            }
+        }
+
+        List<TechnologyProductQuantities> productQuantities = Lists.newArrayListWithCapacity(explosions.size());
+        Set<ForkJoinTask<TechnologyProductQuantities>> joinedExplosions = Sets.newIdentityHashSet();
+
+        for (ForkJoinTask<TechnologyProductQuantities> explosion : explosions) {
+            TechnologyProductQuantities explosionResult = explosion.join();
+
+            if (joinedExplosions.add(explosion)) {
+                productQuantities.add(explosionResult);
+            } else {
+                productQuantities.add(explosionResult.copy());
+            }
+        }
+
+        return productQuantities;
+    }
+
+    private CompiledTechnology getCompiledTechnology(final Map<Long, CompiledTechnology> compiledTechnologies,
+            final Entity technology) {
+        if (technology.getId() == null) {
+            return compiledTechnologyService.getCompiledTechnology(technology);
+        }
+
+        CompiledTechnology compiledTechnology = compiledTechnologies.get(technology.getId());
+
+        if (compiledTechnology == null) {
+            compiledTechnology = compiledTechnologyService.getCompiledTechnology(technology);
+            compiledTechnologies.put(technology.getId(), compiledTechnology);
+        }
+
+        return compiledTechnology;
+    }
+
+    private TechnologyProductQuantities explodeTechnology(final CompiledTechnology compiledTechnology,
+            final BigDecimal givenQuantity, final MathContext mathContext) {
+        OperationProductComponentWithQuantityContainer operationProductComponentWithQuantityContainer = new OperationProductComponentWithQuantityContainer();
+        Map<Long, BigDecimal> operationRuns = Maps.newHashMap();
+        Set<OperationProductComponentHolder> nonComponents = Sets.newHashSet();
+
+        CompiledTechnology.Operation root = compiledTechnology.getRoot();
+
+        if (root != null) {
+            preloadProductQuantitiesAndOperationRuns(compiledTechnology, operationProductComponentWithQuantityContainer,
+                    operationRuns);
+            traverseProductQuantitiesAndOperationRuns(compiledTechnology, givenQuantity, root, null,
+                    operationProductComponentWithQuantityContainer, nonComponents, operationRuns, mathContext);
+        }
+
+        return new TechnologyProductQuantities(operationProductComponentWithQuantityContainer, operationRuns, nonComponents);
+    }
+
+    private void preloadProductQuantitiesAndOperationRuns(final CompiledTechnology compiledTechnology,
+            final OperationProductComponentWithQuantityContainer operationProductComponentWithQuantityContainer,
+            final Map<Long, BigDecimal> operationRuns) {
+        for (CompiledTechnology.Operation operation : compiledTechnology.getOperations()) {
+            if (operation.isReferenceTechnology()) {
+                preloadProductQuantitiesAndOperationRuns(operation.getReferenceTechnology(),
+                        operationProductComponentWithQuantityContainer, operationRuns);
+
+                continue;
+            }
+
+            for (CompiledTechnology.ProductComponent inComponent : operation.getInComponents()) {
+                operationProductComponentWithQuantityContainer.put(inComponent.getHolder(), inComponent.getQuantity());
+            }
+            for (CompiledTechnology.ProductComponent outComponent : operation.getOutComponents()) {
+                operationProductComponentWithQuantityContainer.put(outComponent.getHolder(), outComponent.getQuantity());
+            }
+
+            operationRuns.put(operation.getId(), BigDecimal.ONE);
+        }
+    }
+
+    private void traverseProductQuantitiesAndOperationRuns(final CompiledTechnology compiledTechnology,
+            final BigDecimal givenQuantity, final CompiledTechnology.Operation operation,
+            final CompiledTechnology.Operation previousOperation,
+            final OperationProductComponentWithQuantityContainer operationProductComponentWithQuantityContainer,
+            final Set<OperationProductComponentHolder> nonComponents, final Map<Long, BigDecimal> operationRuns,
+            final MathContext mathContext) {
+        if (operation.isReferenceTechnology()) {
+            CompiledTechnology referenceTechnology = operation.getReferenceTechnology();
+
+            traverseProductQuantitiesAndOperationRuns(referenceTechnology, givenQuantity, referenceTechnology.getRoot(),
+                    previousOperation, operationProductComponentWithQuantityContainer, nonComponents, operationRuns, mathContext);
+
+            return;
+        }
+
+        if (previousOperation == null) {
+            CompiledTechnology.ProductComponent outComponent = operation.getOutComponent(compiledTechnology.getProductId());
+
+            if (outComponent != null) {
+                BigDecimal outQuantity = operationProductComponentWithQuantityContainer.get(outComponent.getHolder());
+
+                multiplyProductQuantitiesAndAddOperationRuns(operation, givenQuantity, outQuantity,
+                        operationProductComponentWithQuantityContainer, operationRuns, mathContext);
+            }
+        } else {
+            for (CompiledTechnology.ProductComponent inComponent : previousOperation.getInComponents()) {
+                CompiledTechnology.ProductComponent outComponent = operation.getOutComponent(inComponent.getProductId());
+
+                if (outComponent != null) {
+                    BigDecimal outQuantity = operationProductComponentWithQuantityContainer.get(outComponent.getHolder());
+                    BigDecimal inQuantity = operationProductComponentWithQuantityContainer.get(inComponent.getHolder());
+
+                    multiplyProductQuantitiesAndAddOperationRuns(operation, inQuantity, outQuantity,
+                            operationProductComponentWithQuantityContainer, operationRuns, mathContext);
+
+                    nonComponents.add(inComponent.getHolder());
+                }
+            }
+        }
+
+        for (CompiledTechnology.Operation child : operation.getChildren()) {
+            traverseProductQuantitiesAndOperationRuns(compiledTechnology, givenQuantity, child, operation,
+                    operationProductComponentWithQuantityContainer, nonComponents, operationRuns, mathContext);
+        }
+    }
+
+    private void multiplyProductQuantitiesAndAddOperationRuns(final CompiledTechnology.Operation operation,
+            final BigDecimal needed, final BigDecimal actual,
+            final OperationProductComponentWithQuantityContainer operationProductComponentWithQuantityContainer,
+            final Map<Long, BigDecimal> operationRuns, final MathContext mathContext) {
+        BigDecimal multiplier = needed.divide(actual, mathContext);
+
+        if (!operation.areProductQuantitiesDivisible()) {
+            // It's intentional to round up the operation runs
+            multiplier = multiplier.setScale(0, RoundingMode.CEILING);
+        }
+
+        BigDecimal runs = multiplier;
+
+        if (!operation.isTjDivisible()) {
+            runs = multiplier.setScale(0, RoundingMode.CEILING);
+        }
+
+        operationRuns.put(operation.getId(), runs);
+
+        for (CompiledTechnology.ProductComponent inComponent : operation.getInComponents()) {
+            multiplyOperationProductComponentQuantity(inComponent.getHolder(), multiplier,
+                    operationProductComponentWithQuantityContainer, mathContext);
+        }
+        for (CompiledTechnology.ProductComponent outComponent : operation.getOutComponents()) {
+            multiplyOperationProductComponentQuantity(outComponent.getHolder(), multiplier,
+                    operationProductComponentWithQuantityContainer, mathContext);
+        }
+    }
+
+    private void multiplyOperationProductComponentQuantity(final OperationProductComponentHolder operationProductComponentHolder,
+            final BigDecimal multiplier,
+            final OperationProductComponentWithQuantityContainer operationProductComponentWithQuantityContainer,
+            final MathContext mathContext) {
+        BigDecimal addedQuantity = operationProductComponentWithQuantityContainer.get(operationProductComponentHolder);
+        BigDecimal quantity = addedQuantity.multiply(multiplier, mathContext);
+
+        operationProductComponentWithQuantityContainer.put(operationProductComponentHolder,
+                quantity.setScale(5, RoundingMode.CEILING));
     }
 
     private OperationProductComponentWithQuantityContainer getProductComponentWithQuantitiesForOrders(final List<Entity> orders,
@@ -231,17 +458,30 @@ public class ProductQuantitiesServiceImpl implements ProductQuantitiesService {
             final boolean onTheFly) {
         Map<Long, OperationProductComponentWithQuantityContainer> productComponentWithQuantitiesForOrders = Maps.newHashMap();
 
-        for (Entity order : orders) {
-            BigDecimal plannedQuantity = order.getDecimalField(L_PLANNED_QUANTITY);
+        List<Entity> technologies = Lists.newArrayListWithCapacity(orders.size());
+        List<BigDecimal> plannedQuantities = Lists.newArrayListWithCapacity(orders.size());
 
+        for (Entity order : orders) {
             Entity technology = order.getBelongsToField(L_TECHNOLOGY);
 
             if (technology == null) {
                 throw new IllegalStateException("Order doesn't contain technology.");
             }
 
-            productComponentWithQuantitiesForOrders.put(order.getId(),
-                    getProductComponentWithQuantitiesForTechnology(technology, plannedQuantity, operationRuns, nonComponents));
+            technologies.add(technology);
+            plannedQuantities.add(order.getDecimalField(L_PLANNED_QUANTITY));
+        }
+
+        List<TechnologyProductQuantities> productQuantitiesForOrders = getProductComponentWithQuantitiesForTechnologies(
+                technologies, plannedQuantities);
+
+        // applied in order sequence, so that operation runs shared between orders end up as in sequential explosion
+        for (int i = 0; i < orders.size(); i++) {
+            TechnologyProductQuantities productQuantities = productQuantitiesForOrders.get(i);
+
+            productComponentWithQuantitiesForOrders.put(orders.get(i).getId(), productQuantities.getProductQuantities());
+            operationRuns.putAll(productQuantities.getOperationRuns());
+            nonComponents.addAll(productQuantities.getNonComponents());
         }
 
         return groupOperationProductComponentWithQuantities(productComponentWithQuantitiesForOrders);
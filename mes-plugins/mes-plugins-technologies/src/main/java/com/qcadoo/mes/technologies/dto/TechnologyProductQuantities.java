@@ -0,0 +1,76 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies.dto;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Result of a single technology explosion for given quantity: product quantities, operation runs and non components.
+ */
+public class TechnologyProductQuantities {
+
+    private final OperationProductComponentWithQuantityContainer productQuantities;
+
+    private final Map<Long, BigDecimal> operationRuns;
+
+    private final Set<OperationProductComponentHolder> nonComponents;
+
+    public TechnologyProductQuantities(final OperationProductComponentWithQuantityContainer productQuantities,
+            final Map<Long, BigDecimal> operationRuns, final Set<OperationProductComponentHolder> nonComponents) {
+        this.productQuantities = productQuantities;
+        this.operationRuns = operationRuns;
+        this.nonComponents = nonComponents;
+    }
+
+    public OperationProductComponentWithQuantityContainer getProductQuantities() {
+        return productQuantities;
+    }
+
+    public Map<Long, BigDecimal> getOperationRuns() {
+        return operationRuns;
+    }
+
+    public Set<OperationProductComponentHolder> getNonComponents() {
+        return nonComponents;
+    }
+
+    /**
+     * @return result equal to this one, with its own product quantities container, operation runs and non components
+     */
+    public TechnologyProductQuantities copy() {
+        OperationProductComponentWithQuantityContainer quantities = new OperationProductComponentWithQuantityContainer();
+
+        for (Map.Entry<OperationProductComponentHolder, BigDecimal> productQuantity : productQuantities.asMap().entrySet()) {
+            quantities.put(productQuantity.getKey(), productQuantity.getValue());
+        }
+
+        return new TechnologyProductQuantities(quantities, Maps.newHashMap(operationRuns), Sets.newHashSet(nonComponents));
+    }
+
+}
@@ -1,15 +1,20 @@
 package com.qcadoo.mes.technologies.hooks;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.qcadoo.mes.technologies.constants.OperationProductOutComponentFields;
 import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
+import com.qcadoo.mes.technologies.tree.CompiledTechnologyService;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
 
 @Service
 public class OPOCHooks {
 
+    @Autowired
+    private CompiledTechnologyService compiledTechnologyService;
+
     public void onSave(final DataDefinition dataDefinition, final Entity opoc) {
         Boolean set = (Boolean) opoc.getField(OperationProductOutComponentFields.SET);
         Entity toc = opoc.getBelongsToField(OperationProductOutComponentFields.OPERATION_COMPONENT);
@@ -17,6 +22,24 @@ public class OPOCHooks {
 
             opoc.setField(OperationProductOutComponentFields.SET, false);
         }
+
+        invalidateCompiledTechnology(toc);
+    }
+
+    public boolean onDelete(final DataDefinition dataDefinition, final Entity opoc) {
+        invalidateCompiledTechnology(opoc.getBelongsToField(OperationProductOutComponentFields.OPERATION_COMPONENT));
+
+        return true;
+    }
+
+    private void invalidateCompiledTechnology(final Entity toc) {
+        if (toc != null) {
+            Entity technology = toc.getBelongsToField(TechnologyOperationComponentFields.TECHNOLOGY);
+
+            if (technology != null) {
+                compiledTechnologyService.invalidate(technology.getId());
+            }
+        }
     }
 
     public void onCreate(final DataDefinition dataDefinition, final Entity opoc) {
@@ -29,6 +29,7 @@ import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
 import com.qcadoo.mes.technologies.constants.TechnologyFields;
 import com.qcadoo.mes.technologies.states.constants.TechnologyState;
 import com.qcadoo.mes.technologies.states.constants.TechnologyStateChangeDescriber;
+import com.qcadoo.mes.technologies.tree.CompiledTechnologyService;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
@@ -60,6 +61,9 @@ public class TechnologyModelHooks {
     @Autowired
     private TreeNumberingService treeNumberingService;
 
+    @Autowired
+    private CompiledTechnologyService compiledTechnologyService;
+
     public void onCreate(final DataDefinition technologyDD, final Entity technology) {
         setInitialState(technology);
     }
@@ -75,6 +79,7 @@ public class TechnologyModelHooks {
             technology.setField(TechnologyFields.TEMPLATE, false);
         }
         setNewMasterTechnology(technologyDD, technology);
+        compiledTechnologyService.invalidate(technology.getId());
     }
 
     public void onUpdate(final DataDefinition technologyDD, final Entity technology) {
@@ -41,6 +41,7 @@ import com.qcadoo.mes.technologies.constants.TechnologyFields;
 import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
 import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentReferenceMode;
 import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentType;
+import com.qcadoo.mes.technologies.tree.CompiledTechnologyService;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
@@ -57,6 +58,9 @@ public class TechnologyOperationComponentHooks {
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private CompiledTechnologyService compiledTechnologyService;
+
     public void onCreate(final DataDefinition technologyOperationComponentDD, final Entity technologyOperationComponent) {
         copyCommentAndAttachmentFromOperation(technologyOperationComponent);
         setParentIfRootNodeAlreadyExists(technologyOperationComponent);
@@ -226,6 +230,20 @@ public class TechnologyOperationComponentHooks {
                 clearSet(opocDD, opoc, technologyOperationComponent);
             }
         }
+
+        Entity technology = technologyOperationComponent.getBelongsToField(TechnologyOperationComponentFields.TECHNOLOGY);
+        if (technology != null) {
+            compiledTechnologyService.invalidate(technology.getId());
+        }
+    }
+
+    public boolean onDelete(final DataDefinition technologyOperationComponentDD, final Entity technologyOperationComponent) {
+        Entity technology = technologyOperationComponent.getBelongsToField(TechnologyOperationComponentFields.TECHNOLOGY);
+        if (technology != null) {
+            compiledTechnologyService.invalidate(technology.getId());
+        }
+
+        return true;
     }
 
     private void clearSet(final DataDefinition dataDefinition, final Entity opoc, final Entity toc) {
@@ -0,0 +1,208 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies.tree;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentHolder;
+
+/**
+ * Immutable, database independent form of technology operation components tree, used for product quantities calculation.
+ * Operations are kept in a flat list in the order of technology tree iteration, reference technologies are resolved.
+ */
+public final class CompiledTechnology {
+
+    private final Long technologyId;
+
+    private final String state;
+
+    private final Long productId;
+
+    private final List<Operation> operations;
+
+    private final int rootIndex;
+
+    private final Set<Long> referencedTechnologyIds;
+
+    private final boolean cacheable;
+
+    CompiledTechnology(final Long technologyId, final String state, final Long productId, final List<Operation> operations,
+            final int rootIndex, final Set<Long> referencedTechnologyIds, final boolean cacheable) {
+        this.technologyId = technologyId;
+        this.state = state;
+        this.productId = productId;
+        this.operations = ImmutableList.copyOf(operations);
+        this.rootIndex = rootIndex;
+        this.referencedTechnologyIds = ImmutableSet.copyOf(referencedTechnologyIds);
+        this.cacheable = cacheable;
+    }
+
+    public Long getTechnologyId() {
+        return technologyId;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public List<Operation> getOperations() {
+        return operations;
+    }
+
+    public Operation getRoot() {
+        return rootIndex < 0 ? null : operations.get(rootIndex);
+    }
+
+    /**
+     * @return ids of all technologies referenced from this technology, directly or indirectly
+     */
+    public Set<Long> getReferencedTechnologyIds() {
+        return referencedTechnologyIds;
+    }
+
+    /**
+     * @return true if neither this technology nor any referenced technology can be edited any more
+     */
+    public boolean isCacheable() {
+        return cacheable;
+    }
+
+    public static final class Operation {
+
+        private final Long id;
+
+        private final CompiledTechnology referenceTechnology;
+
+        private final boolean areProductQuantitiesDivisible;
+
+        private final boolean isTjDivisible;
+
+        private final List<ProductComponent> inComponents;
+
+        private final List<ProductComponent> outComponents;
+
+        private final Map<Long, ProductComponent> outComponentsByProductId;
+
+        private List<Operation> children = Collections.emptyList();
+
+        Operation(final Long id, final CompiledTechnology referenceTechnology, final boolean areProductQuantitiesDivisible,
+                final boolean isTjDivisible, final List<ProductComponent> inComponents,
+                final List<ProductComponent> outComponents) {
+            this.id = id;
+            this.referenceTechnology = referenceTechnology;
+            this.areProductQuantitiesDivisible = areProductQuantitiesDivisible;
+            this.isTjDivisible = isTjDivisible;
+            this.inComponents = ImmutableList.copyOf(inComponents);
+            this.outComponents = ImmutableList.copyOf(outComponents);
+
+            Map<Long, ProductComponent> outComponentsByProductId = Maps.newLinkedHashMap();
+            for (ProductComponent outComponent : outComponents) {
+                outComponentsByProductId.putIfAbsent(outComponent.getProductId(), outComponent);
+            }
+            this.outComponentsByProductId = ImmutableMap.copyOf(outComponentsByProductId);
+        }
+
+        void setChildren(final List<Operation> children) {
+            this.children = ImmutableList.copyOf(children);
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public boolean isReferenceTechnology() {
+            return referenceTechnology != null;
+        }
+
+        public CompiledTechnology getReferenceTechnology() {
+            return referenceTechnology;
+        }
+
+        public boolean areProductQuantitiesDivisible() {
+            return areProductQuantitiesDivisible;
+        }
+
+        public boolean isTjDivisible() {
+            return isTjDivisible;
+        }
+
+        public List<ProductComponent> getInComponents() {
+            return inComponents;
+        }
+
+        public List<ProductComponent> getOutComponents() {
+            return outComponents;
+        }
+
+        /**
+         * @return first out component with given product or null
+         */
+        public ProductComponent getOutComponent(final Long productId) {
+            return outComponentsByProductId.get(productId);
+        }
+
+        public List<Operation> getChildren() {
+            return children;
+        }
+
+    }
+
+    public static final class ProductComponent {
+
+        private final OperationProductComponentHolder holder;
+
+        private final BigDecimal quantity;
+
+        ProductComponent(final OperationProductComponentHolder holder, final BigDecimal quantity) {
+            this.holder = holder;
+            this.quantity = quantity;
+        }
+
+        public OperationProductComponentHolder getHolder() {
+            return holder;
+        }
+
+        public Long getProductId() {
+            return holder.getProductId();
+        }
+
+        public BigDecimal getQuantity() {
+            return quantity;
+        }
+
+    }
+
+}
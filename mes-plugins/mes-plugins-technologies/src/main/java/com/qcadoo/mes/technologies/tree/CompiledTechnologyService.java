@@ -0,0 +1,237 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies.tree;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentEntityType;
+import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentHolder;
+import com.qcadoo.mes.technologies.states.constants.TechnologyStateStringValues;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityTree;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+/**
+ * Compiles technology trees into {@link CompiledTechnology} and caches them for technologies, which can't be edited any more.
+ * Cache is kept per tenant, cached entry is used only if technology is still in the state it was compiled in.
+ */
+@Service
+public class CompiledTechnologyService {
+
+    private static final Set<String> CACHED_STATES = ImmutableSet.of(TechnologyStateStringValues.ACCEPTED,
+            TechnologyStateStringValues.CHECKED, TechnologyStateStringValues.OUTDATED);
+
+    private static final String L_QUANTITY = "quantity";
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    private final ConcurrentMap<Integer, ConcurrentMap<Long, CompiledTechnology>> compiledTechnologies = Maps
+            .newConcurrentMap();
+
+    private final AtomicLong compiledTechnologiesVersion = new AtomicLong();
+
+    public CompiledTechnology getCompiledTechnology(final Entity technology) {
+        return getCompiledTechnology(technology, Collections.<Long> emptySet());
+    }
+
+    private CompiledTechnology getCompiledTechnology(final Entity technology, final Set<Long> compiledPath) {
+        Long technologyId = technology.getId();
+        String state = technology.getStringField(TechnologyFields.STATE);
+
+        ConcurrentMap<Long, CompiledTechnology> tenantCompiledTechnologies = getTenantCompiledTechnologies();
+
+        if (technologyId != null && CACHED_STATES.contains(state)) {
+            CompiledTechnology compiledTechnology = tenantCompiledTechnologies.get(technologyId);
+
+            if (compiledTechnology != null && state.equals(compiledTechnology.getState())) {
+                return compiledTechnology;
+            }
+        }
+
+        long version = compiledTechnologiesVersion.get();
+        CompiledTechnology compiledTechnology = compile(technology, compiledPath);
+
+        if (technologyId != null && compiledTechnology.isCacheable()) {
+            synchronized (compiledTechnologiesVersion) {
+                // don't publish technology compiled from data, which was changed in the meantime
+                if (version == compiledTechnologiesVersion.get()) {
+                    tenantCompiledTechnologies.put(technologyId, compiledTechnology);
+                }
+            }
+        }
+
+        return compiledTechnology;
+    }
+
+    private ConcurrentMap<Long, CompiledTechnology> getTenantCompiledTechnologies() {
+        return compiledTechnologies.computeIfAbsent(multiTenantService.getCurrentTenantId(),
+                tenantId -> new ConcurrentHashMap<>());
+    }
+
+    private CompiledTechnology compile(final Entity technology, final Set<Long> compiledPath) {
+        Long technologyId = technology.getId();
+        String state = technology.getStringField(TechnologyFields.STATE);
+
+        if (technologyId != null && compiledPath.contains(technologyId)) {
+            throw new IllegalStateException("Technology " + technologyId + " references itself.");
+        }
+
+        Set<Long> path = Sets.newHashSet(compiledPath);
+        if (technologyId != null) {
+            path.add(technologyId);
+        }
+
+        EntityTree operationComponents = technology.getTreeField(TechnologyFields.OPERATION_COMPONENTS);
+        List<Entity> operationComponentEntities = Lists.newArrayList(operationComponents);
+        List<CompiledTechnology.Operation> operations = Lists.newArrayListWithCapacity(operationComponentEntities.size());
+        Map<Long, CompiledTechnology.Operation> operationsById = Maps.newHashMap();
+        Set<Long> referencedTechnologyIds = Sets.newHashSet();
+        boolean cacheable = CACHED_STATES.contains(state);
+
+        for (Entity operationComponent : operationComponentEntities) {
+            CompiledTechnology.Operation operation;
+
+            if (isReferenceTechnology(operationComponent)) {
+                Entity referenceTechnology = operationComponent
+                        .getBelongsToField(TechnologyOperationComponentFields.REFERENCE_TECHNOLOGY);
+                CompiledTechnology compiledReferenceTechnology = getCompiledTechnology(referenceTechnology, path);
+
+                referencedTechnologyIds.add(compiledReferenceTechnology.getTechnologyId());
+                referencedTechnologyIds.addAll(compiledReferenceTechnology.getReferencedTechnologyIds());
+                cacheable &= compiledReferenceTechnology.isCacheable();
+
+                operation = new CompiledTechnology.Operation(operationComponent.getId(), compiledReferenceTechnology, false,
+                        false,
+                        Collections.<CompiledTechnology.ProductComponent> emptyList(),
+                        Collections.<CompiledTechnology.ProductComponent> emptyList());
+            } else {
+                operation = new CompiledTechnology.Operation(operationComponent.getId(), null,
+                        operationComponent.getBooleanField(TechnologyOperationComponentFields.ARE_PRODUCT_QUANTITIES_DIVISIBLE),
+                        operationComponent.getBooleanField(TechnologyOperationComponentFields.IS_TJ_DIVISIBLE),
+                        compileProductComponents(operationComponent
+                                .getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS)),
+                        compileProductComponents(operationComponent
+                                .getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS)));
+            }
+
+            operations.add(operation);
+            operationsById.put(operationComponent.getId(), operation);
+        }
+
+        for (Entity operationComponent : operationComponentEntities) {
+            List<CompiledTechnology.Operation> children = Lists.newArrayList();
+
+            for (Entity child : operationComponent.getHasManyField(TechnologyOperationComponentFields.CHILDREN)) {
+                CompiledTechnology.Operation childOperation = operationsById.get(child.getId());
+
+                if (childOperation != null) {
+                    children.add(childOperation);
+                }
+            }
+
+            operationsById.get(operationComponent.getId()).setChildren(children);
+        }
+
+        Entity root = operationComponents.getRoot();
+        int rootIndex = root == null ? -1 : operations.indexOf(operationsById.get(root.getId()));
+        Entity product = technology.getBelongsToField(TechnologyFields.PRODUCT);
+
+        return new CompiledTechnology(technologyId, state, product == null ? null : product.getId(), operations, rootIndex,
+                referencedTechnologyIds, cacheable);
+    }
+
+    private List<CompiledTechnology.ProductComponent> compileProductComponents(final List<Entity> operationProductComponents) {
+        List<CompiledTechnology.ProductComponent> productComponents = Lists
+                .newArrayListWithCapacity(operationProductComponents.size());
+
+        for (Entity operationProductComponent : operationProductComponents) {
+            BigDecimal quantity = operationProductComponent.getDecimalField(L_QUANTITY);
+
+            productComponents.add(new CompiledTechnology.ProductComponent(
+                    new OperationProductComponentHolder(operationProductComponent), quantity));
+        }
+
+        return productComponents;
+    }
+
+    private boolean isReferenceTechnology(final Entity operationComponent) {
+        return TechnologyOperationComponentEntityType.REFERENCE_TECHNOLOGY.getStringValue().equals(
+                operationComponent.getStringField(TechnologyOperationComponentFields.ENTITY_TYPE));
+    }
+
+    /**
+     * Drops compiled form of given technology and of all technologies referencing it in caches of all tenants, again after
+     * transaction completion.
+     */
+    public void invalidate(final Long technologyId) {
+        if (technologyId == null) {
+            return;
+        }
+
+        evict(technologyId);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(final int status) {
+                    evict(technologyId);
+                }
+
+            });
+        }
+    }
+
+    private void evict(final Long technologyId) {
+        synchronized (compiledTechnologiesVersion) {
+            compiledTechnologiesVersion.incrementAndGet();
+
+            for (ConcurrentMap<Long, CompiledTechnology> tenantCompiledTechnologies : compiledTechnologies.values()) {
+                tenantCompiledTechnologies.remove(technologyId);
+                tenantCompiledTechnologies.values().removeIf(
+                        compiledTechnology -> compiledTechnology.getReferencedTechnologyIds().contains(technologyId));
+            }
+        }
+    }
+
+}
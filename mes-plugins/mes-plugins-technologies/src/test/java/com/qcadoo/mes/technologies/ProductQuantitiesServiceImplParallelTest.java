@@ -0,0 +1,255 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentEntityType;
+import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentHolder;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentWithQuantityContainer;
+import com.qcadoo.mes.technologies.dto.TechnologyProductQuantities;
+import com.qcadoo.mes.technologies.states.constants.TechnologyStateStringValues;
+import com.qcadoo.mes.technologies.tree.CompiledTechnologyService;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityTree;
+import com.qcadoo.model.api.NumberService;
+import com.qcadoo.tenant.api.MultiTenantService;
+import com.qcadoo.testing.model.EntityListMock;
+
+public class ProductQuantitiesServiceImplParallelTest {
+
+    private ProductQuantitiesServiceImpl productQuantitiesService;
+
+    @Mock
+    private NumberService numberService;
+
+    @Mock
+    private MultiTenantService multiTenantService;
+
+    @Mock
+    private DataDefinition productDD, technologyOperationComponentDD, operationProductInComponentDD,
+            operationProductOutComponentDD;
+
+    @Mock
+    private Entity finalProduct, intermediateProduct, firstRawProduct, secondRawProduct;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        CompiledTechnologyService compiledTechnologyService = new CompiledTechnologyService();
+        ReflectionTestUtils.setField(compiledTechnologyService, "multiTenantService", multiTenantService);
+
+        productQuantitiesService = new ProductQuantitiesServiceImpl();
+        ReflectionTestUtils.setField(productQuantitiesService, "numberService", numberService);
+        ReflectionTestUtils.setField(productQuantitiesService, "compiledTechnologyService", compiledTechnologyService);
+
+        given(numberService.getMathContext()).willReturn(MathContext.DECIMAL64);
+        given(multiTenantService.getCurrentTenantId()).willReturn(1);
+
+        given(operationProductInComponentDD.getName()).willReturn("operationProductInComponent");
+        given(operationProductOutComponentDD.getName()).willReturn("operationProductOutComponent");
+
+        stubProduct(finalProduct, 1L);
+        stubProduct(intermediateProduct, 2L);
+        stubProduct(firstRawProduct, 3L);
+        stubProduct(secondRawProduct, 4L);
+    }
+
+    @After
+    public void shutdown() {
+        productQuantitiesService.shutdownExplosionPool();
+    }
+
+    private void stubProduct(final Entity product, final Long id) {
+        given(product.getId()).willReturn(id);
+        given(product.getDataDefinition()).willReturn(productDD);
+    }
+
+    private Entity mockOperationProductComponent(final DataDefinition dataDefinition, final Entity operationComponent,
+            final Entity product, final String quantity) {
+        Entity operationProductComponent = mock(Entity.class);
+
+        given(operationProductComponent.getDataDefinition()).willReturn(dataDefinition);
+        given(operationProductComponent.getBelongsToField("operationComponent")).willReturn(operationComponent);
+        given(operationProductComponent.getBelongsToField("product")).willReturn(product);
+        given(operationProductComponent.getDecimalField("quantity")).willReturn(new BigDecimal(quantity));
+
+        return operationProductComponent;
+    }
+
+    private Entity mockOperationComponent(final Long id, final boolean divisible, final List<Entity> children) {
+        Entity operationComponent = mock(Entity.class);
+
+        given(operationComponent.getId()).willReturn(id);
+        given(operationComponent.getDataDefinition()).willReturn(technologyOperationComponentDD);
+        given(operationComponent.getStringField(TechnologyOperationComponentFields.ENTITY_TYPE)).willReturn(
+                TechnologyOperationComponentEntityType.OPERATION.getStringValue());
+        given(operationComponent.getBooleanField(TechnologyOperationComponentFields.ARE_PRODUCT_QUANTITIES_DIVISIBLE))
+                .willReturn(divisible);
+        given(operationComponent.getBooleanField(TechnologyOperationComponentFields.IS_TJ_DIVISIBLE)).willReturn(divisible);
+        given(operationComponent.getHasManyField(TechnologyOperationComponentFields.CHILDREN)).willReturn(
+                EntityListMock.create(children));
+
+        return operationComponent;
+    }
+
+    private void stubProductComponents(final Entity operationComponent, final List<Entity> inComponents,
+            final List<Entity> outComponents) {
+        given(operationComponent.getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS))
+                .willReturn(EntityListMock.create(inComponents));
+        given(operationComponent.getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS))
+                .willReturn(EntityListMock.create(outComponents));
+    }
+
+    /**
+     * Technology of final product made of intermediate and first raw product, with intermediate product made of second raw
+     * product by child operation.
+     */
+    private Entity mockTechnology(final Long id, final String intermediateQuantity, final String firstRawQuantity,
+            final String secondRawQuantity, final boolean divisible) {
+        Entity childOperationComponent = mockOperationComponent(id * 10 + 2, divisible, Collections.<Entity> emptyList());
+        Entity rootOperationComponent = mockOperationComponent(id * 10 + 1, divisible,
+                Collections.singletonList(childOperationComponent));
+
+        Entity intermediateIn = mockOperationProductComponent(operationProductInComponentDD, rootOperationComponent,
+                intermediateProduct, intermediateQuantity);
+        Entity firstRawIn = mockOperationProductComponent(operationProductInComponentDD, rootOperationComponent, firstRawProduct,
+                firstRawQuantity);
+        Entity finalOut = mockOperationProductComponent(operationProductOutComponentDD, rootOperationComponent, finalProduct,
+                "1");
+        Entity secondRawIn = mockOperationProductComponent(operationProductInComponentDD, childOperationComponent,
+                secondRawProduct, secondRawQuantity);
+        Entity intermediateOut = mockOperationProductComponent(operationProductOutComponentDD, childOperationComponent,
+                intermediateProduct, "2");
+
+        stubProductComponents(rootOperationComponent, Arrays.asList(intermediateIn, firstRawIn),
+                Collections.singletonList(finalOut));
+        stubProductComponents(childOperationComponent, Collections.singletonList(secondRawIn),
+                Collections.singletonList(intermediateOut));
+
+        List<Entity> operationComponents = Arrays.asList(rootOperationComponent, childOperationComponent);
+        EntityTree operationComponentsTree = mock(EntityTree.class);
+
+        given(operationComponentsTree.iterator()).willAnswer(invocation -> operationComponents.iterator());
+        given(operationComponentsTree.toArray()).willAnswer(invocation -> operationComponents.toArray());
+        given(operationComponentsTree.getRoot()).willReturn(rootOperationComponent);
+
+        Entity technology = mock(Entity.class);
+
+        given(technology.getId()).willReturn(id);
+        given(technology.getStringField(TechnologyFields.STATE)).willReturn(TechnologyStateStringValues.ACCEPTED);
+        given(technology.getBelongsToField(TechnologyFields.PRODUCT)).willReturn(finalProduct);
+        given(technology.getTreeField(TechnologyFields.OPERATION_COMPONENTS)).willReturn(operationComponentsTree);
+
+        return technology;
+    }
+
+    @Test
+    public void shouldExplodeTechnologiesInParallelAsSequentially() {
+        // given
+        Entity firstTechnology = mockTechnology(1L, "3", "1.5", "4", true);
+        Entity secondTechnology = mockTechnology(2L, "5", "2", "3", false);
+        Entity thirdTechnology = mockTechnology(3L, "1", "0.25", "7", false);
+
+        List<Entity> technologies = Arrays.asList(firstTechnology, secondTechnology, firstTechnology, thirdTechnology,
+                secondTechnology, firstTechnology);
+        List<BigDecimal> givenQuantities = Arrays.asList(new BigDecimal("10"), new BigDecimal("7"), new BigDecimal("10"),
+                new BigDecimal("3"), new BigDecimal("2.5"), new BigDecimal("4"));
+
+        // when
+        List<TechnologyProductQuantities> productQuantities = productQuantitiesService
+                .getProductComponentWithQuantitiesForTechnologies(technologies, givenQuantities);
+
+        // then
+        assertEquals(technologies.size(), productQuantities.size());
+
+        for (int i = 0; i < technologies.size(); i++) {
+            Map<Long, BigDecimal> operationRuns = Maps.newHashMap();
+            Set<OperationProductComponentHolder> nonComponents = Sets.newHashSet();
+            OperationProductComponentWithQuantityContainer sequentialProductQuantities = productQuantitiesService
+                    .getProductComponentWithQuantitiesForTechnology(technologies.get(i), givenQuantities.get(i), operationRuns,
+                            nonComponents);
+
+            assertEquals(sequentialProductQuantities, productQuantities.get(i).getProductQuantities());
+            assertEquals(operationRuns, productQuantities.get(i).getOperationRuns());
+            assertEquals(nonComponents, productQuantities.get(i).getNonComponents());
+        }
+    }
+
+    @Test
+    public void shouldGiveEqualTechnologiesAndQuantitiesTheirOwnResults() {
+        // given
+        Entity technology = mockTechnology(1L, "3", "1.5", "4", false);
+        Entity otherTechnology = mockTechnology(2L, "5", "2", "3", false);
+
+        List<Entity> technologies = Arrays.asList(technology, otherTechnology, technology);
+        List<BigDecimal> givenQuantities = Lists.newArrayList(BigDecimal.TEN, BigDecimal.ONE, BigDecimal.TEN);
+
+        // when
+        List<TechnologyProductQuantities> productQuantities = productQuantitiesService
+                .getProductComponentWithQuantitiesForTechnologies(technologies, givenQuantities);
+
+        // then
+        TechnologyProductQuantities first = productQuantities.get(0);
+        TechnologyProductQuantities second = productQuantities.get(2);
+
+        assertNotSame(first.getProductQuantities(), second.getProductQuantities());
+        assertNotSame(first.getOperationRuns(), second.getOperationRuns());
+        assertNotSame(first.getNonComponents(), second.getNonComponents());
+        assertEquals(first.getProductQuantities(), second.getProductQuantities());
+
+        OperationProductComponentHolder holder = first.getProductQuantities().asMap().keySet().iterator().next();
+        BigDecimal quantity = second.getProductQuantities().get(holder);
+
+        first.getProductQuantities().put(holder, BigDecimal.ZERO);
+
+        assertEquals(quantity, second.getProductQuantities().get(holder));
+    }
+
+}
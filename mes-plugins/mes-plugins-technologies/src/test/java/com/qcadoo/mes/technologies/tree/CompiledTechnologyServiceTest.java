@@ -0,0 +1,193 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies.tree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentEntityType;
+import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
+import com.qcadoo.mes.technologies.states.constants.TechnologyStateStringValues;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityTree;
+import com.qcadoo.tenant.api.MultiTenantService;
+import com.qcadoo.testing.model.EntityListMock;
+
+public class CompiledTechnologyServiceTest {
+
+    private CompiledTechnologyService compiledTechnologyService;
+
+    @Mock
+    private MultiTenantService multiTenantService;
+
+    private int currentTenantId;
+
+    @Before
+    public final void init() {
+        MockitoAnnotations.initMocks(this);
+
+        compiledTechnologyService = new CompiledTechnologyService();
+        ReflectionTestUtils.setField(compiledTechnologyService, "multiTenantService", multiTenantService);
+
+        currentTenantId = 1;
+        given(multiTenantService.getCurrentTenantId()).willAnswer(invocation -> currentTenantId);
+    }
+
+    private Entity mockTechnology(final Long id, final String state, final Entity... operationComponents) {
+        Entity technology = mock(Entity.class);
+        EntityTree operationComponentsTree = mock(EntityTree.class);
+        List<Entity> operationComponentsList = Arrays.asList(operationComponents);
+
+        given(technology.getId()).willReturn(id);
+        given(technology.getStringField(TechnologyFields.STATE)).willReturn(state);
+        given(technology.getTreeField(TechnologyFields.OPERATION_COMPONENTS)).willReturn(operationComponentsTree);
+        given(operationComponentsTree.iterator()).willAnswer(invocation -> operationComponentsList.iterator());
+        given(operationComponentsTree.toArray()).willAnswer(invocation -> operationComponentsList.toArray());
+        given(operationComponentsTree.getRoot()).willReturn(operationComponentsList.isEmpty() ? null : operationComponents[0]);
+
+        return technology;
+    }
+
+    private Entity mockReferenceOperationComponent(final Long id, final Entity referenceTechnology) {
+        Entity operationComponent = mock(Entity.class);
+        given(operationComponent.getId()).willReturn(id);
+        given(operationComponent.getStringField(TechnologyOperationComponentFields.ENTITY_TYPE)).willReturn(
+                TechnologyOperationComponentEntityType.REFERENCE_TECHNOLOGY.getStringValue());
+        given(operationComponent.getBelongsToField(TechnologyOperationComponentFields.REFERENCE_TECHNOLOGY)).willReturn(
+                referenceTechnology);
+        given(operationComponent.getHasManyField(TechnologyOperationComponentFields.CHILDREN)).willReturn(
+                EntityListMock.create(Collections.<Entity> emptyList()));
+
+        return operationComponent;
+    }
+
+    @Test
+    public void shouldReturnCachedCompiledTechnologyOfAcceptedTechnology() {
+        // given
+        Entity technology = mockTechnology(1L, TechnologyStateStringValues.ACCEPTED);
+
+        // when
+        CompiledTechnology first = compiledTechnologyService.getCompiledTechnology(technology);
+        CompiledTechnology second = compiledTechnologyService.getCompiledTechnology(technology);
+
+        // then
+        assertSame(first, second);
+        assertEquals(Long.valueOf(1L), first.getTechnologyId());
+    }
+
+    @Test
+    public void shouldNotCacheCompiledTechnologyOfDraftTechnology() {
+        // given
+        Entity technology = mockTechnology(1L, TechnologyStateStringValues.DRAFT);
+
+        // when
+        CompiledTechnology first = compiledTechnologyService.getCompiledTechnology(technology);
+        CompiledTechnology second = compiledTechnologyService.getCompiledTechnology(technology);
+
+        // then
+        assertNotSame(first, second);
+    }
+
+    @Test
+    public void shouldCompileTechnologyAgainAfterStateChange() {
+        // given
+        Entity acceptedTechnology = mockTechnology(1L, TechnologyStateStringValues.ACCEPTED);
+        Entity checkedTechnology = mockTechnology(1L, TechnologyStateStringValues.CHECKED);
+
+        // when
+        CompiledTechnology accepted = compiledTechnologyService.getCompiledTechnology(acceptedTechnology);
+        CompiledTechnology checked = compiledTechnologyService.getCompiledTechnology(checkedTechnology);
+
+        // then
+        assertNotSame(accepted, checked);
+        assertEquals(TechnologyStateStringValues.CHECKED, checked.getState());
+    }
+
+    @Test
+    public void shouldCompileTechnologyAgainAfterInvalidation() {
+        // given
+        Entity technology = mockTechnology(1L, TechnologyStateStringValues.ACCEPTED);
+        CompiledTechnology first = compiledTechnologyService.getCompiledTechnology(technology);
+
+        // when
+        compiledTechnologyService.invalidate(1L);
+        CompiledTechnology second = compiledTechnologyService.getCompiledTechnology(technology);
+
+        // then
+        assertNotSame(first, second);
+        assertSame(second, compiledTechnologyService.getCompiledTechnology(technology));
+    }
+
+    @Test
+    public void shouldCompileReferencingTechnologyAgainAfterInvalidationOfReferencedTechnology() {
+        // given
+        Entity referencedTechnology = mockTechnology(2L, TechnologyStateStringValues.ACCEPTED);
+        Entity technology = mockTechnology(1L, TechnologyStateStringValues.ACCEPTED,
+                mockReferenceOperationComponent(11L, referencedTechnology));
+        Entity otherTechnology = mockTechnology(3L, TechnologyStateStringValues.ACCEPTED);
+
+        CompiledTechnology first = compiledTechnologyService.getCompiledTechnology(technology);
+        CompiledTechnology other = compiledTechnologyService.getCompiledTechnology(otherTechnology);
+
+        // when
+        compiledTechnologyService.invalidate(2L);
+
+        // then
+        assertNotSame(first, compiledTechnologyService.getCompiledTechnology(technology));
+        assertSame(other, compiledTechnologyService.getCompiledTechnology(otherTechnology));
+    }
+
+    @Test
+    public void shouldKeepCompiledTechnologiesOfEachTenant() {
+        // given
+        Entity technology = mockTechnology(1L, TechnologyStateStringValues.ACCEPTED);
+
+        // when
+        currentTenantId = 1;
+        CompiledTechnology firstTenantTechnology = compiledTechnologyService.getCompiledTechnology(technology);
+        currentTenantId = 2;
+        CompiledTechnology secondTenantTechnology = compiledTechnologyService.getCompiledTechnology(technology);
+
+        // then
+        assertNotSame(firstTenantTechnology, secondTenantTechnology);
+        assertSame(secondTenantTechnology, compiledTechnologyService.getCompiledTechnology(technology));
+        currentTenantId = 1;
+        assertSame(firstTenantTechnology, compiledTechnologyService.getCompiledTechnology(technology));
+    }
+
+}
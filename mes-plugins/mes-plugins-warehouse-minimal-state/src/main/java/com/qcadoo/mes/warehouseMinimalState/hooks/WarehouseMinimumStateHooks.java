@@ -23,8 +23,13 @@
  */
 package com.qcadoo.mes.warehouseMinimalState.hooks;
 
+import java.math.BigDecimal;
+import java.util.Objects;
+
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.qcadoo.mes.materialFlowResources.service.WarehouseStockService;
 import com.qcadoo.mes.warehouseMinimalState.constants.WarehouseMinimumStateFields;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
@@ -33,6 +38,9 @@ import com.qcadoo.model.api.search.SearchRestrictions;
 @Service
 public class WarehouseMinimumStateHooks {
 
+    @Autowired
+    private WarehouseStockService warehouseStockService;
+
     public boolean validatesWith(final DataDefinition locationMinimumStateDD, final Entity locationMinimumState) {
 
         Entity lms = getLocationMinimumStateByProductAndLocation(locationMinimumStateDD,
@@ -52,6 +60,38 @@ public class WarehouseMinimumStateHooks {
         return true;
     }
 
+    public void onSave(final DataDefinition locationMinimumStateDD, final Entity locationMinimumState) {
+        Long locationId = getId(locationMinimumState, WarehouseMinimumStateFields.LOCATION);
+        Long productId = getId(locationMinimumState, WarehouseMinimumStateFields.PRODUCT);
+
+        if (locationMinimumState.getId() != null) {
+            Entity locationMinimumStateFromDB = locationMinimumStateDD.get(locationMinimumState.getId());
+
+            Long oldLocationId = getId(locationMinimumStateFromDB, WarehouseMinimumStateFields.LOCATION);
+            Long oldProductId = getId(locationMinimumStateFromDB, WarehouseMinimumStateFields.PRODUCT);
+
+            if (!Objects.equals(oldLocationId, locationId) || !Objects.equals(oldProductId, productId)) {
+                warehouseStockService.updateMinimumState(oldLocationId, oldProductId, locationMinimumState.getId(),
+                        BigDecimal.ZERO);
+            }
+        }
+
+        warehouseStockService.updateMinimumState(locationId, productId, locationMinimumState.getId(),
+                locationMinimumState.getDecimalField(WarehouseMinimumStateFields.MINIMUM_STATE));
+    }
+
+    public boolean onDelete(final DataDefinition locationMinimumStateDD, final Entity locationMinimumState) {
+        warehouseStockService.updateMinimumState(getId(locationMinimumState, WarehouseMinimumStateFields.LOCATION),
+                getId(locationMinimumState, WarehouseMinimumStateFields.PRODUCT), locationMinimumState.getId(), BigDecimal.ZERO);
+        return true;
+    }
+
+    private Long getId(final Entity locationMinimumState, final String belongsToField) {
+        Entity entity = locationMinimumState.getBelongsToField(belongsToField);
+
+        return entity == null ? null : entity.getId();
+    }
+
     private Entity getLocationMinimumStateByProductAndLocation(final DataDefinition locationMinimumStateDD, final Entity product,
             final Entity location) {
         return locationMinimumStateDD.find().add(SearchRestrictions.belongsTo(WarehouseMinimumStateFields.PRODUCT, product))
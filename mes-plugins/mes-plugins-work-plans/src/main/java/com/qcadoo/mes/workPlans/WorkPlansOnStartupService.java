@@ -23,6 +23,7 @@
  */
 package com.qcadoo.mes.workPlans;
 
+import com.qcadoo.mes.workPlans.print.ColumnFetcher;
 import com.qcadoo.mes.workPlans.workPlansColumnExtension.WorkPlansColumnLoader;
 import com.qcadoo.plugin.api.Module;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -35,12 +36,16 @@ public class WorkPlansOnStartupService extends Module {
     @Autowired
     private WorkPlansColumnLoader workPlansColumnLoader;
 
+    @Autowired
+    private ColumnFetcher columnFetcher;
+
     @Override
     @Transactional
     public void multiTenantEnable() {
         workPlansColumnLoader.setDefaulValues();
         workPlansColumnLoader.addWorkPlansColumnsForOrders();
         workPlansColumnLoader.addWorkPlansColumnsForProducts();
+        columnFetcher.compileColumnFillers();
     }
 
     @Override
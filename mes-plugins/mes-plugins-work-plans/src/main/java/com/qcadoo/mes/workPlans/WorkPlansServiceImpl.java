@@ -246,7 +246,7 @@ public class WorkPlansServiceImpl implements WorkPlansService {
 
     @Override
     public int getAdditionalRowsFromParameter(String field) {
-        Integer rows = parameterService.getParameter().getIntegerField(field);
+        Integer rows = parameterService.getParameterSnapshot().getIntegerField(field);
         return rows != null ? rows : 0;
     }
 
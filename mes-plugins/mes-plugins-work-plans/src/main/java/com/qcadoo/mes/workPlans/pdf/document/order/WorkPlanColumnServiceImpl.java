@@ -23,6 +23,7 @@
  */
 package com.qcadoo.mes.workPlans.pdf.document.order;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -109,8 +110,9 @@ public class WorkPlanColumnServiceImpl implements WorkPlanColumnService {
         Map<Long, Map<OperationProductColumn, ColumnAlignment>> operationComponentIdWithOperationProductColumnAndAlignment = Maps
                 .newHashMap();
 
-        Map<String, OperationProductColumn> identifierOperationProductColumn = applicationContext
-                .getBeansOfType(OperationProductColumn.class);
+        // columns come from parameters, so they are the same for every operation component
+        Map<OperationProductColumn, ColumnAlignment> operationProductColumnWithAlignment = Collections
+                .unmodifiableMap(getOperationProductColumnsWithAlignment(productDirection));
 
         List<Entity> orders = getWorkPlanOrders(workPlan);
 
@@ -120,27 +122,33 @@ public class WorkPlanColumnServiceImpl implements WorkPlanColumnService {
             List<Entity> operationComponents = getSortedTechnologyOperationComponents(technology);
 
             for (Entity operationComponent : operationComponents) {
-                List<Entity> columns = getOperationProductColumns(productDirection);
+                operationComponentIdWithOperationProductColumnAndAlignment.put(operationComponent.getId(),
+                        operationProductColumnWithAlignment);
+            }
+        }
+
+        return operationComponentIdWithOperationProductColumnAndAlignment;
+    }
 
-                Map<OperationProductColumn, ColumnAlignment> operationProductColumnWithAlignment = Maps.newLinkedHashMap();
+    private Map<OperationProductColumn, ColumnAlignment> getOperationProductColumnsWithAlignment(
+            final ProductDirection productDirection) {
+        Map<String, OperationProductColumn> identifierOperationProductColumn = applicationContext
+                .getBeansOfType(OperationProductColumn.class);
 
-                for (Entity column : columns) {
-                    String identifier = getIdentifier(column);
-                    ColumnAlignment alignment = getColumnAlignment(column);
+        Map<OperationProductColumn, ColumnAlignment> operationProductColumnWithAlignment = Maps.newLinkedHashMap();
 
-                    OperationProductColumn key = identifierOperationProductColumn.get(identifier);
+        for (Entity column : getOperationProductColumns(productDirection)) {
+            String identifier = getIdentifier(column);
+            ColumnAlignment alignment = getColumnAlignment(column);
 
-                    if (key != null) {
-                        operationProductColumnWithAlignment.put(key, alignment);
-                    }
-                }
+            OperationProductColumn key = identifierOperationProductColumn.get(identifier);
 
-                operationComponentIdWithOperationProductColumnAndAlignment.put(operationComponent.getId(),
-                        operationProductColumnWithAlignment);
+            if (key != null) {
+                operationProductColumnWithAlignment.put(key, alignment);
             }
         }
 
-        return operationComponentIdWithOperationProductColumnAndAlignment;
+        return operationProductColumnWithAlignment;
     }
 
     private List<Entity> getWorkPlanOrderColumns(final Entity workPlan) {
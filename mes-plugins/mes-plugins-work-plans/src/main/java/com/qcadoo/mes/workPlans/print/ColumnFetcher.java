@@ -29,6 +29,8 @@ import com.qcadoo.mes.workPlans.constants.WorkPlansConstants;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Service;
@@ -37,43 +39,112 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
 
 @Service
 public class ColumnFetcher {
 
+    private static final Logger LOG = LoggerFactory.getLogger(ColumnFetcher.class);
+
     private static final String L_COLUMN_FILLER = "columnFiller";
 
+    private static final String L_GET_ORDER_VALUES = "getOrderValues";
+
+    private static final String L_GET_VALUES = "getValues";
+
+    private final ConcurrentMap<String, Function<List<Entity>, Map<Entity, Map<String, String>>>> orderFillers = Maps
+            .newConcurrentMap();
+
+    private final ConcurrentMap<String, Function<List<Entity>, Map<Long, Map<Entity, Map<String, String>>>>> productFillers = Maps
+            .newConcurrentMap();
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
     @Autowired
     private ApplicationContext applicationContext;
 
+    /**
+     * Resolves fillers of all work plan column definitions up front, so that printing does not look them up.
+     */
+    public void compileColumnFillers() {
+        try {
+            getOrderFillers();
+            getProductFillers();
+        } catch (IllegalStateException e) {
+            LOG.warn("Work plan column fillers will be resolved when printing", e);
+        }
+    }
+
     public Map<Entity, Map<String, String>> getOrderColumnValues(final List<Entity> orders) {
         Map<Entity, Map<String, String>> valuesMap = new HashMap<Entity, Map<String, String>>();
 
-        fetchColumnValues(valuesMap, WorkPlansConstants.MODEL_COLUMN_FOR_ORDERS, "getOrderValues", orders);
+        for (Function<List<Entity>, Map<Entity, Map<String, String>>> filler : getOrderFillers()) {
+            mergeColumnValues(valuesMap, filler.apply(orders));
+        }
 
         return valuesMap;
     }
 
+    /**
+     * Calls every product column filler once for all orders. Values of each order are merged in the same sequence of fillers
+     * as when the fillers were called order by order, so they stay the same.
+     */
     public Map<Long, Map<Entity, Map<String, String>>> getColumnValues(final List<Entity> orders) {
         final Map<Long, Map<Entity, Map<String, String>>> order2opColumnValues = Maps.newHashMap();
-        for (final Entity order : orders) {
-            Map<Entity, Map<String, String>> valuesMap = new HashMap<Entity, Map<String, String>>();
-            for (final String columnsModel : Arrays.asList(WorkPlansConstants.MODEL_COLUMN_FOR_INPUT_PRODUCTS,
-                    WorkPlansConstants.MODEL_COLUMN_FOR_OUTPUT_PRODUCTS)) {
-                fetchColumnValues(valuesMap, columnsModel, "getValues", Lists.newArrayList(order));
+
+        for (Entity order : orders) {
+            order2opColumnValues.put(order.getId(), new HashMap<Entity, Map<String, String>>());
+        }
+
+        for (Function<List<Entity>, Map<Long, Map<Entity, Map<String, String>>>> filler : getProductFillers()) {
+            Map<Long, Map<Entity, Map<String, String>>> valuesForOrders = filler.apply(orders);
+
+            for (Entry<Long, Map<Entity, Map<String, String>>> valuesForOrder : order2opColumnValues.entrySet()) {
+                Map<Entity, Map<String, String>> values = valuesForOrders.get(valuesForOrder.getKey());
+
+                if (values != null) {
+                    mergeColumnValues(valuesForOrder.getValue(), values);
+                }
             }
-            order2opColumnValues.put(order.getId(), valuesMap);
         }
 
         return order2opColumnValues;
     }
 
-    @SuppressWarnings("unchecked")
-    private void fetchColumnValues(final Map<Entity, Map<String, String>> valuesMap, final String columnsModelName,
-            final String methodName, final List<Entity> orders) {
+    private List<Function<List<Entity>, Map<Entity, Map<String, String>>>> getOrderFillers() {
+        List<Function<List<Entity>, Map<Entity, Map<String, String>>>> fillers = Lists.newArrayList();
+
+        for (String className : getFillerClassNames(WorkPlansConstants.MODEL_COLUMN_FOR_ORDERS)) {
+            fillers.add(orderFillers.computeIfAbsent(className, this::compileOrderFiller));
+        }
+
+        return fillers;
+    }
+
+    private List<Function<List<Entity>, Map<Long, Map<Entity, Map<String, String>>>>> getProductFillers() {
+        List<String> classNames = Lists.newArrayList();
+
+        for (String columnsModel : Arrays.asList(WorkPlansConstants.MODEL_COLUMN_FOR_INPUT_PRODUCTS,
+                WorkPlansConstants.MODEL_COLUMN_FOR_OUTPUT_PRODUCTS)) {
+            for (String className : getFillerClassNames(columnsModel)) {
+                // a filler called again gives the same values, only its last call decides which values win
+                classNames.remove(className);
+                classNames.add(className);
+            }
+        }
+
+        List<Function<List<Entity>, Map<Long, Map<Entity, Map<String, String>>>>> fillers = Lists.newArrayList();
+
+        for (String className : classNames) {
+            fillers.add(productFillers.computeIfAbsent(className, this::compileProductFiller));
+        }
+
+        return fillers;
+    }
+
+    private Set<String> getFillerClassNames(final String columnsModelName) {
         DataDefinition columnsModelDD = dataDefinitionService.get(WorkPlansConstants.PLUGIN_IDENTIFIER, columnsModelName);
 
         List<Entity> columnDefinitions = columnsModelDD.find().list().getEntities();
@@ -85,35 +156,73 @@ public class ColumnFetcher {
             classNames.add(className);
         }
 
-        for (String className : classNames) {
-            Class<?> clazz;
-            try {
-                clazz = Thread.currentThread().getContextClassLoader().loadClass(className);
-            } catch (ClassNotFoundException e) {
-                throw new IllegalStateException("Failed to find class: " + className, e);
-            }
+        return classNames;
+    }
 
-            Object bean = applicationContext.getBean(clazz);
+    private Function<List<Entity>, Map<Entity, Map<String, String>>> compileOrderFiller(final String className) {
+        Object bean = getFillerBean(className);
 
-            if (bean == null) {
-                throw new IllegalStateException("Failed to find bean for class: " + className);
-            }
+        if (bean instanceof ColumnFiller) {
+            return ((ColumnFiller) bean)::getOrderValues;
+        }
 
-            Method method;
+        return compileReflectiveFiller(bean, className, L_GET_ORDER_VALUES);
+    }
 
-            try {
-                method = clazz.getMethod(methodName, List.class);
-            } catch (SecurityException e) {
-                throw new IllegalStateException("Failed to find column evaulator method in class: " + className, e);
-            } catch (NoSuchMethodException e) {
-                throw new IllegalStateException("Failed to find column evaulator method in class: " + className, e);
+    private Function<List<Entity>, Map<Long, Map<Entity, Map<String, String>>>> compileProductFiller(final String className) {
+        Object bean = getFillerBean(className);
+
+        if (bean instanceof ColumnFiller) {
+            return ((ColumnFiller) bean)::getValuesForOrders;
+        }
+
+        Function<List<Entity>, Map<Entity, Map<String, String>>> filler = compileReflectiveFiller(bean, className, L_GET_VALUES);
+
+        return orders -> {
+            Map<Long, Map<Entity, Map<String, String>>> valuesForOrders = Maps.newHashMap();
+
+            for (Entity order : orders) {
+                valuesForOrders.put(order.getId(), filler.apply(Lists.newArrayList(order)));
             }
 
-            Map<Entity, Map<String, String>> values;
+            return valuesForOrders;
+        };
+    }
+
+    private Object getFillerBean(final String className) {
+        Class<?> clazz;
+        try {
+            clazz = Thread.currentThread().getContextClassLoader().loadClass(className);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Failed to find class: " + className, e);
+        }
+
+        Object bean = applicationContext.getBean(clazz);
+
+        if (bean == null) {
+            throw new IllegalStateException("Failed to find bean for class: " + className);
+        }
+
+        return bean;
+    }
 
+    @SuppressWarnings("unchecked")
+    private Function<List<Entity>, Map<Entity, Map<String, String>>> compileReflectiveFiller(final Object bean,
+            final String className, final String methodName) {
+        Method method;
+
+        try {
+            method = bean.getClass().getMethod(methodName, List.class);
+        } catch (SecurityException e) {
+            throw new IllegalStateException("Failed to find column evaulator method in class: " + className, e);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Failed to find column evaulator method in class: " + className, e);
+        }
+
+        return orders -> {
             String invokeMethodError = "Failed to invoke column evaulator method";
             try {
-                values = (Map<Entity, Map<String, String>>) method.invoke(bean, orders);
+                return (Map<Entity, Map<String, String>>) method.invoke(bean, orders);
             } catch (IllegalArgumentException e) {
                 throw new IllegalStateException(invokeMethodError, e);
             } catch (IllegalAccessException e) {
@@ -121,15 +230,18 @@ public class ColumnFetcher {
             } catch (InvocationTargetException e) {
                 throw new IllegalStateException(invokeMethodError, e);
             }
+        };
+    }
 
-            for (Entry<Entity, Map<String, String>> entry : values.entrySet()) {
-                if (valuesMap.containsKey(entry.getKey())) {
-                    for (Entry<String, String> deepEntry : entry.getValue().entrySet()) {
-                        valuesMap.get(entry.getKey()).put(deepEntry.getKey(), deepEntry.getValue());
-                    }
-                } else {
-                    valuesMap.put(entry.getKey(), entry.getValue());
+    private void mergeColumnValues(final Map<Entity, Map<String, String>> valuesMap,
+            final Map<Entity, Map<String, String>> values) {
+        for (Entry<Entity, Map<String, String>> entry : values.entrySet()) {
+            if (valuesMap.containsKey(entry.getKey())) {
+                for (Entry<String, String> deepEntry : entry.getValue().entrySet()) {
+                    valuesMap.get(entry.getKey()).put(deepEntry.getKey(), deepEntry.getValue());
                 }
+            } else {
+                valuesMap.put(entry.getKey(), entry.getValue());
             }
         }
     }
@@ -23,8 +23,10 @@
  */
 package com.qcadoo.mes.workPlans.print;
 
+import com.google.common.collect.Lists;
 import com.qcadoo.model.api.Entity;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -46,4 +48,20 @@ public interface ColumnFiller {
      */
     Map<Entity, Map<String, String>> getValues(final List<Entity> orders);
 
+    /**
+     * 
+     * @param orders
+     *            List of orders
+     * @return The Keys of the map are order ids, values are what {@link #getValues(List)} returns for that order alone
+     */
+    default Map<Long, Map<Entity, Map<String, String>>> getValuesForOrders(final List<Entity> orders) {
+        Map<Long, Map<Entity, Map<String, String>>> valuesForOrders = new HashMap<Long, Map<Entity, Map<String, String>>>();
+
+        for (Entity order : orders) {
+            valuesForOrders.put(order.getId(), getValues(Lists.newArrayList(order)));
+        }
+
+        return valuesForOrders;
+    }
+
 }
@@ -86,16 +86,35 @@ public class WorkPlansColumnFiller implements ColumnFiller {
         Map<Entity, Map<String, String>> values = new HashMap<Entity, Map<String, String>>();
 
         for (Entity order : orders) {
-            OperationProductComponentWithQuantityContainer productQuantities = productQuantitiesService
-                    .getProductComponentQuantities(order);
-            Entity technology = order.getBelongsToField(OrderFields.TECHNOLOGY);
-            fillProductNames(technology, values);
-            fillPlannedQuantities(technology, productQuantities, values);
+            fillProductValues(order, values);
         }
 
         return values;
     }
 
+    @Override
+    public Map<Long, Map<Entity, Map<String, String>>> getValuesForOrders(final List<Entity> orders) {
+        Map<Long, Map<Entity, Map<String, String>>> valuesForOrders = new HashMap<Long, Map<Entity, Map<String, String>>>();
+
+        for (Entity order : orders) {
+            Map<Entity, Map<String, String>> values = new HashMap<Entity, Map<String, String>>();
+
+            fillProductValues(order, values);
+
+            valuesForOrders.put(order.getId(), values);
+        }
+
+        return valuesForOrders;
+    }
+
+    private void fillProductValues(final Entity order, final Map<Entity, Map<String, String>> values) {
+        OperationProductComponentWithQuantityContainer productQuantities = productQuantitiesService
+                .getProductComponentQuantities(order);
+        Entity technology = order.getBelongsToField(OrderFields.TECHNOLOGY);
+
+        fillProductNamesAndPlannedQuantities(technology, productQuantities, values);
+    }
+
     private void initMap(final Map<Entity, Map<String, String>> valuesMap, final Entity order) {
         if (valuesMap.get(order) == null) {
             valuesMap.put(order, new HashMap<String, String>());
@@ -150,7 +169,9 @@ public class WorkPlansColumnFiller implements ColumnFiller {
         valuesMap.get(order).put(L_PRODUCT_NAME, name);
     }
 
-    private void fillProductNames(final Entity technology, final Map<Entity, Map<String, String>> valuesMap) {
+    private void fillProductNamesAndPlannedQuantities(final Entity technology,
+            final OperationProductComponentWithQuantityContainer productQuantities,
+            final Map<Entity, Map<String, String>> valuesMap) {
         EntityTree operationComponents = technology.getTreeField(TechnologyFields.OPERATION_COMPONENTS);
 
         for (Entity operationComponent : operationComponents) {
@@ -159,7 +180,7 @@ public class WorkPlansColumnFiller implements ColumnFiller {
                 Entity referenceTechnology = operationComponent
                         .getBelongsToField(TechnologyOperationComponentFields.REFERENCE_TECHNOLOGY);
 
-                fillProductNames(referenceTechnology, valuesMap);
+                fillProductNamesAndPlannedQuantities(referenceTechnology, productQuantities, valuesMap);
 
                 continue;
             }
@@ -170,56 +191,23 @@ public class WorkPlansColumnFiller implements ColumnFiller {
                     .getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS);
 
             for (Entity operationProductInComponent : operationProductInComponents) {
-                initMap(valuesMap, operationProductInComponent);
-
-                valuesMap.get(operationProductInComponent).put(L_PRODUCT_NAME,
-                        getProductNameAndNumber(operationProductInComponent));
+                fillProductNameAndPlannedQuantity(operationProductInComponent, productQuantities, valuesMap);
             }
 
             for (Entity operationProductOutComponent : operationProductOutComponents) {
-                initMap(valuesMap, operationProductOutComponent);
-
-                valuesMap.get(operationProductOutComponent).put(L_PRODUCT_NAME,
-                        getProductNameAndNumber(operationProductOutComponent));
+                fillProductNameAndPlannedQuantity(operationProductOutComponent, productQuantities, valuesMap);
             }
         }
     }
 
-    private void fillPlannedQuantities(final Entity technology,
+    private void fillProductNameAndPlannedQuantity(final Entity operationProductComponent,
             final OperationProductComponentWithQuantityContainer productQuantities,
             final Map<Entity, Map<String, String>> valuesMap) {
-        EntityTree operationComponents = technology.getTreeField(TechnologyFields.OPERATION_COMPONENTS);
-
-        for (Entity operationComponent : operationComponents) {
-            if (TechnologyOperationComponentEntityType.REFERENCE_TECHNOLOGY.getStringValue().equals(
-                    operationComponent.getStringField(TechnologyOperationComponentFields.ENTITY_TYPE))) {
-                Entity referenceTechnology = operationComponent
-                        .getBelongsToField(TechnologyOperationComponentFields.REFERENCE_TECHNOLOGY);
-
-                fillPlannedQuantities(referenceTechnology, productQuantities, valuesMap);
-
-                continue;
-            }
-
-            EntityList operationProductInComponents = operationComponent
-                    .getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS);
-            EntityList operationProductOutComponents = operationComponent
-                    .getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS);
-
-            for (Entity operationProductInComponent : operationProductInComponents) {
-                initMap(valuesMap, operationProductInComponent);
-
-                valuesMap.get(operationProductInComponent).put(L_PLANNED_QUANTITY,
-                        getProductQuantityAndUnit(operationProductInComponent, productQuantities));
-            }
-
-            for (Entity operationProductOutComponent : operationProductOutComponents) {
-                initMap(valuesMap, operationProductOutComponent);
+        initMap(valuesMap, operationProductComponent);
 
-                valuesMap.get(operationProductOutComponent).put(L_PLANNED_QUANTITY,
-                        getProductQuantityAndUnit(operationProductOutComponent, productQuantities));
-            }
-        }
+        valuesMap.get(operationProductComponent).put(L_PRODUCT_NAME, getProductNameAndNumber(operationProductComponent));
+        valuesMap.get(operationProductComponent).put(L_PLANNED_QUANTITY,
+                getProductQuantityAndUnit(operationProductComponent, productQuantities));
     }
 
     private String getProductNameAndNumber(final Entity operationProductComponent) {
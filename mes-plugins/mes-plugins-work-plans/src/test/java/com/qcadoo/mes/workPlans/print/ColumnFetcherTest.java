@@ -0,0 +1,360 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.workPlans.print;
+
+import static com.qcadoo.mes.workPlans.constants.WorkPlansConstants.MODEL_COLUMN_FOR_INPUT_PRODUCTS;
+import static com.qcadoo.mes.workPlans.constants.WorkPlansConstants.MODEL_COLUMN_FOR_OUTPUT_PRODUCTS;
+import static com.qcadoo.mes.workPlans.constants.WorkPlansConstants.PLUGIN_IDENTIFIER;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.Phrase;
+import com.lowagie.text.pdf.PdfPTable;
+import com.lowagie.text.pdf.PdfWriter;
+import com.qcadoo.mes.basic.constants.ProductFields;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.technologies.ProductQuantitiesService;
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentEntityType;
+import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentWithQuantityContainer;
+import com.qcadoo.mes.workPlans.workPlansColumnExtension.WorkPlansColumnFiller;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityList;
+import com.qcadoo.model.api.EntityTree;
+import com.qcadoo.model.api.NumberService;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchResult;
+
+public class ColumnFetcherTest {
+
+    private static final String L_PRODUCT_NAME = "productName";
+
+    private static final String L_PLANNED_QUANTITY = "plannedQuantity";
+
+    private ColumnFetcher columnFetcher;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private ApplicationContext applicationContext;
+
+    @Mock
+    private WorkPlansColumnFiller columnFiller;
+
+    @Mock
+    private DataDefinition inputProductsDD, outputProductsDD;
+
+    @Mock
+    private SearchCriteriaBuilder inputProductsCriteria, outputProductsCriteria;
+
+    @Mock
+    private Entity order1, order2, operationProductComponent1, operationProductComponent2;
+
+    @Mock
+    private NumberService numberService;
+
+    @Mock
+    private ProductQuantitiesService productQuantitiesService;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        columnFetcher = new ColumnFetcher();
+
+        ReflectionTestUtils.setField(columnFetcher, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(columnFetcher, "applicationContext", applicationContext);
+
+        given(dataDefinitionService.get(PLUGIN_IDENTIFIER, MODEL_COLUMN_FOR_INPUT_PRODUCTS)).willReturn(inputProductsDD);
+        given(dataDefinitionService.get(PLUGIN_IDENTIFIER, MODEL_COLUMN_FOR_OUTPUT_PRODUCTS)).willReturn(outputProductsDD);
+
+        mockColumnDefinitions(inputProductsDD, inputProductsCriteria);
+        mockColumnDefinitions(outputProductsDD, outputProductsCriteria);
+
+        given(applicationContext.getBean(WorkPlansColumnFiller.class)).willReturn(columnFiller);
+
+        given(order1.getId()).willReturn(1L);
+        given(order2.getId()).willReturn(2L);
+
+        given(numberService.format(any(BigDecimal.class))).willAnswer(
+                invocation -> ((BigDecimal) invocation.getArguments()[0]).setScale(5).toPlainString());
+    }
+
+    private void mockColumnDefinitions(final DataDefinition columnsDD, final SearchCriteriaBuilder criteria) {
+        Entity columnDefinition = mock(Entity.class);
+        SearchResult searchResult = mock(SearchResult.class);
+
+        given(columnDefinition.getStringField("columnFiller")).willReturn(WorkPlansColumnFiller.class.getName());
+        given(columnsDD.find()).willReturn(criteria);
+        given(criteria.list()).willReturn(searchResult);
+        given(searchResult.getEntities()).willReturn(Lists.newArrayList(columnDefinition));
+    }
+
+    private Map<Entity, Map<String, String>> values(final Entity operationProductComponent, final String productName) {
+        Map<Entity, Map<String, String>> values = Maps.newHashMap();
+
+        values.put(operationProductComponent, Maps.newHashMap(ImmutableMap.of(L_PRODUCT_NAME, productName)));
+
+        return values;
+    }
+
+    @Test
+    public void shouldCallEveryFillerOnceForAllOrders() {
+        // given
+        List<Entity> orders = Lists.newArrayList(order1, order2);
+
+        Map<Long, Map<Entity, Map<String, String>>> valuesForOrders = Maps.newHashMap();
+        valuesForOrders.put(1L, values(operationProductComponent1, "A (1)"));
+        valuesForOrders.put(2L, values(operationProductComponent2, "B (2)"));
+
+        given(columnFiller.getValuesForOrders(orders)).willReturn(valuesForOrders);
+
+        // when
+        Map<Long, Map<Entity, Map<String, String>>> values = columnFetcher.getColumnValues(orders);
+
+        // then
+        assertEquals("A (1)", values.get(1L).get(operationProductComponent1).get(L_PRODUCT_NAME));
+        assertEquals("B (2)", values.get(2L).get(operationProductComponent2).get(L_PRODUCT_NAME));
+
+        verify(inputProductsDD, times(1)).find();
+        verify(outputProductsDD, times(1)).find();
+        verify(applicationContext, times(1)).getBean(WorkPlansColumnFiller.class);
+        verify(columnFiller, times(1)).getValuesForOrders(anyListOf(Entity.class));
+        verify(columnFiller, never()).getValues(anyListOf(Entity.class));
+    }
+
+    @Test
+    public void shouldPrintSamePdfAsWhenFillingOrderByOrder() throws DocumentException {
+        // given
+        WorkPlansColumnFiller workPlansColumnFiller = new WorkPlansColumnFiller();
+
+        ReflectionTestUtils.setField(workPlansColumnFiller, "numberService", numberService);
+        ReflectionTestUtils.setField(workPlansColumnFiller, "productQuantitiesService", productQuantitiesService);
+
+        given(applicationContext.getBean(WorkPlansColumnFiller.class)).willReturn(workPlansColumnFiller);
+
+        Entity screw = product("Screw", "S1", "pcs");
+        Entity plate = product("Plate", "P2", "kg");
+        Entity frame = product("Frame", "F3", "pcs");
+
+        Entity screwIn = operationProductComponent(screw);
+        Entity plateIn = operationProductComponent(plate);
+        Entity frameOut = operationProductComponent(frame);
+        Entity plateInReferenced = operationProductComponent(plate);
+        Entity screwOutReferenced = operationProductComponent(screw);
+
+        Entity referencedTechnology = technology(operationComponent(Lists.newArrayList(plateInReferenced),
+                Lists.newArrayList(screwOutReferenced)));
+        Entity technology = technology(
+                operationComponent(Lists.newArrayList(screwIn, plateIn), Lists.newArrayList(frameOut)),
+                referenceOperationComponent(referencedTechnology));
+
+        Entity order3 = mock(Entity.class);
+        given(order3.getId()).willReturn(3L);
+
+        // two orders share the technology, their quantities differ
+        mockOrder(order1, technology, ImmutableMap.of(screwIn, "4", plateIn, "2.5", frameOut, "1", plateInReferenced, "3",
+                screwOutReferenced, "3"));
+        mockOrder(order2, technology, ImmutableMap.of(screwIn, "40", plateIn, "25", frameOut, "10", plateInReferenced, "30",
+                screwOutReferenced, "30"));
+        mockOrder(order3, referencedTechnology, ImmutableMap.of(plateInReferenced, "7", screwOutReferenced, "7"));
+
+        List<Entity> orders = Lists.newArrayList(order1, order2, order3);
+        List<Entity> operationProductComponents = Lists.newArrayList(screwIn, plateIn, frameOut, plateInReferenced,
+                screwOutReferenced);
+
+        // when
+        Map<Long, Map<Entity, Map<String, String>>> values = columnFetcher.getColumnValues(orders);
+
+        // then
+        verify(productQuantitiesService, times(3)).getProductComponentQuantities(any(Entity.class));
+        verify(technology, times(2)).getTreeField(TechnologyFields.OPERATION_COMPONENTS);
+        verify(referencedTechnology, times(3)).getTreeField(TechnologyFields.OPERATION_COMPONENTS);
+
+        Map<Long, Map<Entity, Map<String, String>>> expectedValues = fillOrderByOrder(workPlansColumnFiller, orders);
+
+        assertEquals(expectedValues, values);
+        assertEquals("2.50000 kg", values.get(1L).get(plateIn).get(L_PLANNED_QUANTITY));
+        assertEquals("25.00000 kg", values.get(2L).get(plateIn).get(L_PLANNED_QUANTITY));
+        assertArrayEquals(print(expectedValues, orders, operationProductComponents),
+                print(values, orders, operationProductComponents));
+    }
+
+    // the way column values were filled before fillers were called once per print
+    private Map<Long, Map<Entity, Map<String, String>>> fillOrderByOrder(final ColumnFiller filler, final List<Entity> orders) {
+        Map<Long, Map<Entity, Map<String, String>>> valuesForOrders = Maps.newHashMap();
+
+        for (Entity order : orders) {
+            Map<Entity, Map<String, String>> valuesMap = Maps.newHashMap();
+
+            for (int columnsModel = 0; columnsModel < 2; columnsModel++) {
+                for (Map.Entry<Entity, Map<String, String>> entry : filler.getValues(Lists.newArrayList(order)).entrySet()) {
+                    if (valuesMap.containsKey(entry.getKey())) {
+                        valuesMap.get(entry.getKey()).putAll(entry.getValue());
+                    } else {
+                        valuesMap.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+
+            valuesForOrders.put(order.getId(), valuesMap);
+        }
+
+        return valuesForOrders;
+    }
+
+    private byte[] print(final Map<Long, Map<Entity, Map<String, String>>> values, final List<Entity> orders,
+            final List<Entity> operationProductComponents) throws DocumentException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        Document document = new Document();
+
+        PdfWriter.getInstance(document, outputStream);
+
+        document.open();
+
+        for (Entity order : orders) {
+            PdfPTable table = new PdfPTable(2);
+
+            for (Entity operationProductComponent : operationProductComponents) {
+                Map<String, String> columnValues = values.get(order.getId()).get(operationProductComponent);
+
+                if (columnValues != null) {
+                    table.addCell(new Phrase(columnValues.get(L_PRODUCT_NAME)));
+                    table.addCell(new Phrase(columnValues.get(L_PLANNED_QUANTITY)));
+                }
+            }
+
+            document.add(table);
+        }
+
+        document.close();
+
+        // creation date and file identifier differ between runs
+        String pdf = new String(outputStream.toByteArray(), StandardCharsets.ISO_8859_1)
+                .replaceAll("/(CreationDate|ModDate)\\s*\\([^)]*\\)", "").replaceAll("/ID\\s*\\[[^\\]]*\\]", "");
+
+        return pdf.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private Entity product(final String name, final String number, final String unit) {
+        Entity product = mock(Entity.class);
+
+        given(product.getStringField(ProductFields.NAME)).willReturn(name);
+        given(product.getStringField(ProductFields.NUMBER)).willReturn(number);
+        given(product.getStringField(ProductFields.UNIT)).willReturn(unit);
+
+        return product;
+    }
+
+    private Entity operationProductComponent(final Entity product) {
+        Entity operationProductComponent = mock(Entity.class);
+
+        given(operationProductComponent.getBelongsToField("product")).willReturn(product);
+
+        return operationProductComponent;
+    }
+
+    private Entity operationComponent(final List<Entity> operationProductInComponents,
+            final List<Entity> operationProductOutComponents) {
+        Entity operationComponent = mock(Entity.class);
+
+        given(operationComponent.getStringField(TechnologyOperationComponentFields.ENTITY_TYPE)).willReturn(
+                TechnologyOperationComponentEntityType.OPERATION.getStringValue());
+
+        EntityList inComponents = mock(EntityList.class);
+        EntityList outComponents = mock(EntityList.class);
+
+        given(inComponents.iterator()).willAnswer(invocation -> operationProductInComponents.iterator());
+        given(outComponents.iterator()).willAnswer(invocation -> operationProductOutComponents.iterator());
+        given(operationComponent.getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS))
+                .willReturn(inComponents);
+        given(operationComponent.getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS))
+                .willReturn(outComponents);
+
+        return operationComponent;
+    }
+
+    private Entity referenceOperationComponent(final Entity referenceTechnology) {
+        Entity operationComponent = mock(Entity.class);
+
+        given(operationComponent.getStringField(TechnologyOperationComponentFields.ENTITY_TYPE)).willReturn(
+                TechnologyOperationComponentEntityType.REFERENCE_TECHNOLOGY.getStringValue());
+        given(operationComponent.getBelongsToField(TechnologyOperationComponentFields.REFERENCE_TECHNOLOGY)).willReturn(
+                referenceTechnology);
+
+        return operationComponent;
+    }
+
+    private Entity technology(final Entity... operationComponents) {
+        Entity technology = mock(Entity.class);
+        EntityTree tree = mock(EntityTree.class);
+
+        given(tree.iterator()).willAnswer(invocation -> Lists.newArrayList(operationComponents).iterator());
+        given(technology.getTreeField(TechnologyFields.OPERATION_COMPONENTS)).willReturn(tree);
+
+        return technology;
+    }
+
+    private void mockOrder(final Entity order, final Entity technology, final Map<Entity, String> quantities) {
+        OperationProductComponentWithQuantityContainer productQuantities = mock(
+                OperationProductComponentWithQuantityContainer.class);
+
+        for (Map.Entry<Entity, String> quantity : quantities.entrySet()) {
+            given(productQuantities.get(quantity.getKey())).willReturn(new BigDecimal(quantity.getValue()));
+        }
+
+        given(order.getBelongsToField(OrderFields.TECHNOLOGY)).willReturn(technology);
+        given(productQuantitiesService.getProductComponentQuantities(order)).willReturn(productQuantities);
+    }
+
+}